@@ -145,6 +145,18 @@ android {
 //    }
 configurations.forEach { it.exclude(group = "org.apache.httpcomponents") }
 
+// Our timing benchmarks are excluded from the unit tests. Run them via "./gradlew testDebugUnitTest -Pbenchmarks"
+tasks.withType<Test>().configureEach {
+    useJUnit {
+        if (project.hasProperty("benchmarks")) {
+            includeCategories("com.wops.receiptsgo.benchmark.Benchmark")
+        } else {
+            excludeCategories("com.wops.receiptsgo.benchmark.Benchmark")
+        }
+    }
+    systemProperty("benchmark.reportDirectory", layout.buildDirectory.dir("reports/benchmarks").get().asFile.absolutePath)
+}
+
 dependencies {
 
     implementation(
@@ -0,0 +1,225 @@
+package com.wops.receiptsgo.autocomplete
+
+import com.wops.receiptsgo.autocomplete.distance.DistanceAutoCompleteField
+import com.wops.receiptsgo.autocomplete.receipt.ReceiptAutoCompleteField
+import com.wops.receiptsgo.autocomplete.trip.TripAutoCompleteField
+import com.wops.receiptsgo.model.Distance
+import com.wops.receiptsgo.model.Keyed
+import com.wops.receiptsgo.model.Receipt
+import com.wops.receiptsgo.model.Trip
+import com.wops.receiptsgo.persistence.database.controllers.TableEventsListener
+import com.wops.receiptsgo.persistence.database.operations.DatabaseOperationMetadata
+import java.util.*
+
+/**
+ * Maintains an in-memory index of the distinct values of each [AutoCompleteField] across all items of [Type], so that
+ * we can answer prefix queries without loading and scanning the entire table each time that the user types.
+ *
+ * Each distinct value tracks the items that use it (its frequency) and the most recent date of these items (its
+ * recency), which we use to rank our results. The index is (re)built from any full table read (ie [onGetSuccess]) and
+ * is otherwise kept up to date incrementally via the insert, update, and delete callbacks of our [TableEventsListener].
+ * Since these callbacks are skipped by anything that writes to our table directly (eg restoring a backup), the index
+ * must be [reset] whenever the table's cache is cleared.
+ *
+ * All methods are synchronized, since our table events arrive on the main thread while queries run in the background.
+ */
+class AutoCompleteIndex<Type>(private val resultsChecker: AutoCompleteResultsChecker<Type>,
+                              private val fields: List<AutoCompleteField>) : TableEventsListener<Type> {
+
+    /**
+     * The values of each field, sorted so that all values with a given prefix are adjacent
+     */
+    private val values = fields.associate { it to TreeMap<String, Entry<Type>>() }
+
+    /**
+     * @return true if this index has been built from the full table. false otherwise
+     */
+    @get:Synchronized
+    var isBuilt = false
+        private set
+
+    /**
+     * Replaces the contents of this index with the values of these [items]
+     */
+    @Synchronized
+    fun build(items: List<Type>) {
+        values.values.forEach { it.clear() }
+        items.forEach { add(it) }
+        isBuilt = true
+    }
+
+    /**
+     * Empties this index, so that it will be rebuilt from the next full table read
+     */
+    @Synchronized
+    fun reset() {
+        values.values.forEach { it.clear() }
+        isBuilt = false
+    }
+
+    /**
+     * Finds the values of a [field] that start with a given [input], ranked by their frequency and then by their recency
+     *
+     * @param field the [AutoCompleteField] to query
+     * @param input the user input [CharSequence]
+     * @param maxResults the maximum number of results to return
+     *
+     * @return a [MutableList] of at most [maxResults] [AutoCompleteResult] instances with unique display names
+     */
+    @Synchronized
+    fun query(field: AutoCompleteField, input: CharSequence, maxResults: Int): MutableList<AutoCompleteResult<Type>> {
+        val fieldValues = values[field] ?: return mutableListOf()
+        val prefix = input.toString()
+
+        // Note: We keep a bounded heap of our best entries (with the worst at its head), rather than sorting every match
+        val heap = PriorityQueue<Entry<Type>>(maxResults + 1, Collections.reverseOrder(RANKING))
+        fieldValues.subMap(prefix, true, prefix + Char.MAX_VALUE, true).values.forEach { entry ->
+            heap.add(entry)
+            if (heap.size > maxResults) {
+                heap.poll()
+            }
+        }
+
+        return heap.sortedWith(RANKING)
+            .mapTo(mutableListOf()) { entry ->
+                AutoCompleteResult(entry.displayName, entry.items.first(), entry.items.drop(1).toMutableList())
+            }
+    }
+
+    @Synchronized
+    override fun onGetSuccess(list: List<Type>) {
+        build(list)
+    }
+
+    override fun onGetFailure(e: Throwable?) {
+    }
+
+    @Synchronized
+    override fun onInsertSuccess(t: Type, databaseOperationMetadata: DatabaseOperationMetadata) {
+        if (isBuilt) {
+            add(t)
+        }
+    }
+
+    override fun onInsertFailure(t: Type, e: Throwable?, databaseOperationMetadata: DatabaseOperationMetadata) {
+    }
+
+    @Synchronized
+    override fun onUpdateSuccess(oldT: Type, newT: Type, databaseOperationMetadata: DatabaseOperationMetadata) {
+        if (isBuilt) {
+            remove(oldT)
+            add(newT)
+        }
+    }
+
+    override fun onUpdateFailure(oldT: Type, e: Throwable?, databaseOperationMetadata: DatabaseOperationMetadata) {
+    }
+
+    @Synchronized
+    override fun onDeleteSuccess(t: Type, databaseOperationMetadata: DatabaseOperationMetadata) {
+        if (isBuilt) {
+            remove(t)
+        }
+    }
+
+    override fun onDeleteFailure(t: Type, e: Throwable?, databaseOperationMetadata: DatabaseOperationMetadata) {
+    }
+
+    private fun add(item: Type) {
+        fields.forEach { field ->
+            val displayName = getDisplayName(field, item)
+            if (displayName != null && !isHiddenFromAutoComplete(field, item)) {
+                val entry = values.getValue(field).getOrPut(displayName) { Entry(displayName) }
+                entry.items.add(item)
+                entry.lastUsed = Math.max(entry.lastUsed, getRecency(item))
+            }
+        }
+    }
+
+    private fun remove(item: Type) {
+        fields.forEach { field ->
+            val displayName = getDisplayName(field, item)
+            val fieldValues = values.getValue(field)
+            val entry = if (displayName != null) fieldValues[displayName] else null
+            if (entry != null) {
+                // Note: The caller may hold a different (but equivalent) instance, so we fall back to the primary key
+                var index = entry.items.indexOf(item)
+                if (index < 0 && item is Keyed) {
+                    index = entry.items.indexOfFirst { it is Keyed && it.id == item.id }
+                }
+                if (index >= 0) {
+                    entry.items.removeAt(index)
+                    if (entry.items.isEmpty()) {
+                        fieldValues.remove(displayName)
+                    } else {
+                        entry.lastUsed = entry.items.fold(0L) { lastUsed, it -> Math.max(lastUsed, getRecency(it)) }
+                    }
+                }
+            }
+        }
+    }
+
+    private fun getDisplayName(field: AutoCompleteField, item: Type): String? {
+        val displayName: CharSequence? = resultsChecker.getValue(field, item)
+        return if (displayName.isNullOrBlank()) null else displayName.toString()
+    }
+
+    /**
+     * A single distinct value, alongside the items that use it
+     */
+    private class Entry<T>(val displayName: String) {
+        val items = mutableListOf<T>()
+        var lastUsed = 0L
+    }
+
+    companion object {
+
+        /**
+         * Orders our entries from best to worst: most frequent first, then most recent, and then alphabetically
+         */
+        private val RANKING = Comparator<Entry<*>> { lhs, rhs ->
+            when {
+                lhs.items.size != rhs.items.size -> rhs.items.size.compareTo(lhs.items.size)
+                lhs.lastUsed != rhs.lastUsed -> rhs.lastUsed.compareTo(lhs.lastUsed)
+                else -> lhs.displayName.compareTo(rhs.displayName)
+            }
+        }
+
+        /**
+         * @return true if the user has explicitly removed this value from the auto-completion results. false otherwise
+         */
+        private fun isHiddenFromAutoComplete(field: AutoCompleteField, item: Any?): Boolean {
+            return when (item) {
+                is Receipt -> when (field) {
+                    ReceiptAutoCompleteField.Name -> item.autoCompleteMetadata.isNameHiddenFromAutoComplete
+                    ReceiptAutoCompleteField.Comment -> item.autoCompleteMetadata.isCommentHiddenFromAutoComplete
+                    else -> false
+                }
+                is Trip -> when (field) {
+                    TripAutoCompleteField.Name -> item.autoCompleteMetadata.isNameHiddenFromAutoComplete
+                    TripAutoCompleteField.Comment -> item.autoCompleteMetadata.isCommentHiddenFromAutoComplete
+                    TripAutoCompleteField.CostCenter -> item.autoCompleteMetadata.isCostCenterHiddenFromAutoComplete
+                    else -> false
+                }
+                is Distance -> when (field) {
+                    DistanceAutoCompleteField.Location -> item.autoCompleteMetadata.isLocationHiddenFromAutoComplete
+                    DistanceAutoCompleteField.Comment -> item.autoCompleteMetadata.isCommentHiddenFromAutoComplete
+                    else -> false
+                }
+                else -> false
+            }
+        }
+
+        /**
+         * @return the time at which this item was last used (ie its date), which we use to rank equally common values
+         */
+        private fun getRecency(item: Any?): Long {
+            return when (item) {
+                is Receipt -> item.date.time
+                is Trip -> item.startDate.time
+                is Distance -> item.date.time
+                else -> 0L
+            }
+        }
+    }
+}
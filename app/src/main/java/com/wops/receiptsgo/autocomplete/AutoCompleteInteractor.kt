@@ -1,16 +1,11 @@
 package com.wops.receiptsgo.autocomplete
 
-import com.wops.receiptsgo.autocomplete.distance.DistanceAutoCompleteField
-import com.wops.receiptsgo.autocomplete.receipt.ReceiptAutoCompleteField
-import com.wops.receiptsgo.autocomplete.trip.TripAutoCompleteField
-import com.wops.receiptsgo.model.Distance
-import com.wops.receiptsgo.model.Receipt
-import com.wops.receiptsgo.model.Trip
 import com.wops.receiptsgo.settings.UserPreferenceManager
 import com.wops.receiptsgo.settings.catalog.UserPreference
 import com.wops.analytics.log.Logger
 import io.reactivex.Maybe
 import io.reactivex.Scheduler
+import io.reactivex.Single
 import io.reactivex.schedulers.Schedulers
 
 /**
@@ -21,6 +16,18 @@ class AutoCompleteInteractor<Type> constructor(private val provider: AutoComplet
                                                private val userPreferenceManager: UserPreferenceManager,
                                                private val backgroundScheduler: Scheduler) {
 
+    /**
+     * An index of the values of each supported field, which saves us from scanning the entire table on each query
+     */
+    private val index = AutoCompleteIndex(resultsChecker, provider.supportedAutoCompleteFields)
+
+    init {
+        provider.tableController.subscribe(index)
+        // Note: Restores (and other direct table writes) bypass our table events, so we start over once the cache is cleared
+        provider.tableController.cacheClearedStream()
+                .subscribe { index.reset() }
+    }
+
     constructor(provider: AutoCompletionProvider<Type>,
                 resultsChecker: AutoCompleteResultsChecker<Type>,
                 userPreferenceManager: UserPreferenceManager) : this(provider, resultsChecker, userPreferenceManager, Schedulers.io())
@@ -31,6 +38,9 @@ class AutoCompleteInteractor<Type> constructor(private val provider: AutoComplet
      * removal and additions to the adapter, but it is expected that all [AutoCompleteResult] instances
      * will have a unique [AutoCompleteResult.displayName].
      *
+     * Our results are ranked by how often each value was used and then by how recently it was used, and are limited
+     * to the best [MAX_RESULTS] of these.
+     *
      * We return a [Maybe] from this, since we except to either have a valid list of nothing,
      * depending on if the user has enabled the [UserPreference.Receipts.EnableAutoCompleteSuggestions]
      * suggestion and if (s)he has only typed a single character. Once the user has typed more than
@@ -47,49 +57,19 @@ class AutoCompleteInteractor<Type> constructor(private val provider: AutoComplet
         if (userPreferenceManager[UserPreference.Receipts.EnableAutoCompleteSuggestions]) {
             // And that we've typed this exact amount of characters (as the adapters manage filtering afterwards)
             if (input.length >= TEXT_LENGTH_TO_FETCH_RESULTS) {
-                return provider.tableController.get()
+                val indexSingle = if (index.isBuilt) {
+                    Single.just(index)
+                } else {
+                    // Note: We only need to read the full table once. Our index keeps itself up to date after this
+                    provider.tableController.get().map { results ->
+                        index.build(results)
+                        index
+                    }
+                }
+                return indexSingle
                         .subscribeOn(backgroundScheduler)
-                        .flatMapMaybe { getResults ->
-                            val results = mutableListOf<AutoCompleteResult<Type>>()
-                            val resultsSet = mutableMapOf<CharSequence, AutoCompleteResult<Type>>()
-                            getResults.forEach {
-                                if (resultsChecker.matchesInput(input, field, it)) {
-                                    // make sure value wasn't removed by user
-                                    val removedByUser = when (it) {
-                                        is Receipt -> when (field) {
-                                            ReceiptAutoCompleteField.Name -> it.autoCompleteMetadata.isNameHiddenFromAutoComplete
-                                            ReceiptAutoCompleteField.Comment -> it.autoCompleteMetadata.isCommentHiddenFromAutoComplete
-                                            else -> false
-                                        }
-                                        is Trip -> when (field) {
-                                            TripAutoCompleteField.Name -> it.autoCompleteMetadata.isNameHiddenFromAutoComplete
-                                            TripAutoCompleteField.Comment -> it.autoCompleteMetadata.isCommentHiddenFromAutoComplete
-                                            TripAutoCompleteField.CostCenter -> it.autoCompleteMetadata.isCostCenterHiddenFromAutoComplete
-                                            else -> false
-                                        }
-                                        is Distance -> when (field) {
-                                            DistanceAutoCompleteField.Location -> it.autoCompleteMetadata.isLocationHiddenFromAutoComplete
-                                            DistanceAutoCompleteField.Comment -> it.autoCompleteMetadata.isCommentHiddenFromAutoComplete
-                                            else -> false
-                                        }
-                                        else -> false
-                                    }
-
-                                    if (!removedByUser) {
-                                        val displayName = resultsChecker.getValue(field, it)
-                                        // Only allow input with new display names
-                                        if (!resultsSet.contains(displayName)) {
-                                            val result = AutoCompleteResult(displayName, it)
-                                            resultsSet[displayName] = result
-                                            results.add(result)
-                                        } else {
-                                            resultsSet[displayName]!!.additionalItems.add(it)
-                                        }
-                                    }
-                                }
-                            }
-                            Maybe.just(results)
-                        }
+                        .map { it.query(field, input, MAX_RESULTS) }
+                        .toMaybe()
                         .onErrorReturn {
                             mutableListOf()
                         }
@@ -112,5 +92,10 @@ class AutoCompleteInteractor<Type> constructor(private val provider: AutoComplet
          * We only fetch results when the user has entered a single character
          */
         private const val TEXT_LENGTH_TO_FETCH_RESULTS = 1
+
+        /**
+         * The maximum number of results that we return for a single query
+         */
+        const val MAX_RESULTS = 50
     }
 }
\ No newline at end of file
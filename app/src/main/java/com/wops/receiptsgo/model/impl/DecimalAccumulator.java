@@ -0,0 +1,131 @@
+package com.wops.receiptsgo.model.impl;
+
+import androidx.annotation.NonNull;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * An allocation-light, exact accumulator for summing large numbers of {@link BigDecimal} values.
+ * <p>
+ * Values are summed as primitive {@code long}s, which are scaled to {@link #COMPACT_SCALE} decimal places, so adding a
+ * typical price does not allocate any intermediate {@link BigDecimal} (or {@link org.joda.money.BigMoney}) results.
+ * Any value that cannot be represented at this scale (or that would overflow our {@code long} sum) is instead added to
+ * a {@link BigDecimal} fallback sum, so the final result is always exact.
+ * </p>
+ * <p>
+ * We also track the largest scale of any value that was added, so {@link #toBigDecimal()} returns the same value
+ * (with the same scale) as summing each value via {@link BigDecimal#add(BigDecimal)}.
+ * </p>
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ */
+final class DecimalAccumulator {
+
+    /**
+     * The scale of our compact {@code long} sum. This allows us to exactly sum both currency values (which typically
+     * have 0-3 decimal places) and these values multiplied by an exchange rate (which have a few more)
+     */
+    static final int COMPACT_SCALE = 9;
+
+    /**
+     * To guarantee that products cannot overflow, we only multiply compact values that fit within this many bits
+     */
+    private static final int MAX_COMPACT_MULTIPLICAND_BITS = 31;
+
+    private static final long[] POWERS_OF_TEN = new long[COMPACT_SCALE + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private long compactSum = 0;
+    private BigDecimal overflowSum = null;
+    private int maxScale = 0;
+    private int count = 0;
+
+    /**
+     * Adds a value to this sum
+     *
+     * @param value the {@link BigDecimal} to add
+     */
+    void add(@NonNull BigDecimal value) {
+        final int scale = value.scale();
+        onValueAdded(scale);
+        if (scale >= 0 && scale <= COMPACT_SCALE) {
+            final BigInteger unscaledValue = value.unscaledValue();
+            if (unscaledValue.bitLength() < Long.SIZE && addCompact(unscaledValue.longValue(), COMPACT_SCALE - scale)) {
+                return;
+            }
+        }
+        addOverflow(value);
+    }
+
+    /**
+     * Adds the product of two values to this sum (ie a price that was converted via an exchange rate)
+     *
+     * @param value      the {@link BigDecimal} to add
+     * @param multiplier the {@link BigDecimal} multiplier to apply to this value first
+     */
+    void addProduct(@NonNull BigDecimal value, @NonNull BigDecimal multiplier) {
+        final int scale = value.scale() + multiplier.scale();
+        onValueAdded(scale);
+        if (value.scale() >= 0 && multiplier.scale() >= 0 && scale <= COMPACT_SCALE) {
+            final BigInteger unscaledValue = value.unscaledValue();
+            final BigInteger unscaledMultiplier = multiplier.unscaledValue();
+            if (unscaledValue.bitLength() <= MAX_COMPACT_MULTIPLICAND_BITS && unscaledMultiplier.bitLength() <= MAX_COMPACT_MULTIPLICAND_BITS
+                    && addCompact(unscaledValue.longValue() * unscaledMultiplier.longValue(), COMPACT_SCALE - scale)) {
+                return;
+            }
+        }
+        addOverflow(value.multiply(multiplier));
+    }
+
+    /**
+     * @return the number of values that were added to this sum
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the exact sum of all values, using the largest scale of any of these values
+     */
+    @NonNull
+    BigDecimal toBigDecimal() {
+        BigDecimal sum = BigDecimal.valueOf(compactSum, COMPACT_SCALE);
+        if (overflowSum != null) {
+            sum = sum.add(overflowSum);
+        }
+        // Note: This is exact, since none of our values had more than maxScale decimal places
+        return sum.setScale(maxScale, RoundingMode.UNNECESSARY);
+    }
+
+    private void onValueAdded(int scale) {
+        maxScale = Math.max(maxScale, scale);
+        count++;
+    }
+
+    private boolean addCompact(long unscaledValue, int exponent) {
+        final long multiplier = POWERS_OF_TEN[exponent];
+        if (unscaledValue > Long.MAX_VALUE / multiplier || unscaledValue < Long.MIN_VALUE / multiplier) {
+            return false;
+        }
+        final long scaledValue = unscaledValue * multiplier;
+        final long sum = compactSum + scaledValue;
+        if (((compactSum ^ sum) & (scaledValue ^ sum)) < 0) {
+            return false; // We overflowed
+        }
+        compactSum = sum;
+        return true;
+    }
+
+    private void addOverflow(@NonNull BigDecimal value) {
+        overflowSum = overflowSum == null ? value : overflowSum.add(value);
+    }
+}
@@ -43,63 +43,52 @@ public final class MultiplePriceImpl extends AbstractPriceImpl {
 
     private final Map<CurrencyUnit, BigMoney> notExchangedPriceMap;
 
-    private final String decimalFormattedPrice; // Note: We create/cache this as it's common, slower operation
-    private final String currencyFormattedPrice; // Note: We create/cache this as it's common, slower operation
-    private final String currencyCodeFormattedPrice; // Note: We create/cache this as it's common, slower operation
+    // Note: These are slow to create (due to the NumberFormats behind the scenes), so we lazily create/cache them
+    private String decimalFormattedPrice;
+    private String currencyFormattedPrice;
+    private String currencyCodeFormattedPrice;
 
     public MultiplePriceImpl(@NonNull CurrencyUnit baseCurrency, @NonNull List<Price> prices) {
-
-        notExchangedPriceMap = new HashMap<>();
-        currencyToPriceMap = new HashMap<>();
-
-        BigMoney total = BigMoney.zero(baseCurrency);
-
-        BigMoney possiblyIncorrectTotalPrice = BigMoney.zero(baseCurrency);
+        // Sum each of our prices via primitive accumulators, so we only create a single BigMoney per currency at the end
+        final Map<CurrencyUnit, DecimalAccumulator> notExchangedSums = new HashMap<>();
+        final Map<CurrencyUnit, DecimalAccumulator> currencyToPriceSums = new HashMap<>();
+        final DecimalAccumulator total = new DecimalAccumulator();
+        final DecimalAccumulator possiblyIncorrectTotal = new DecimalAccumulator();
         boolean areAllExchangeRatesValid = true;
 
-        for (final Price price : prices) {
-
-            notExchangedPriceMap.put(price.getCurrency(),
-                    notExchangedPriceMap.containsKey(price.getCurrency()) ?
-                            notExchangedPriceMap.get(price.getCurrency()).plus(price.getMoney()) :
-                            price.getMoney());
-
-            final BigMoney moneyToAdd;
-            final CurrencyUnit currencyForPriceToAdd;
-            if (price.getExchangeRate().supportsExchangeRateFor(baseCurrency)) {
-
-                final BigDecimal exchangeRate = price.getExchangeRate().getExchangeRate(baseCurrency.getCode());
-
-                moneyToAdd = price.getCurrency().equals(baseCurrency) ? price.getMoney() : price.getMoney().convertedTo(baseCurrency, exchangeRate);
-                currencyForPriceToAdd = baseCurrency;
-
-                total = total.plus(moneyToAdd);
-
+        for (int i = 0; i < prices.size(); i++) {
+            final Price price = prices.get(i);
+            final CurrencyUnit currency = price.getCurrency();
+            final BigDecimal amount = price.getPrice();
+
+            getSum(notExchangedSums, currency).add(amount);
+
+            final ExchangeRate exchangeRate = price.getExchangeRate();
+            if (exchangeRate.supportsExchangeRateFor(baseCurrency)) {
+                if (currency.equals(baseCurrency)) {
+                    total.add(amount);
+                    possiblyIncorrectTotal.add(amount);
+                    getSum(currencyToPriceSums, baseCurrency).add(amount);
+                } else {
+                    final BigDecimal rate = exchangeRate.getExchangeRate(baseCurrency.getCode());
+                    total.addProduct(amount, rate);
+                    possiblyIncorrectTotal.addProduct(amount, rate);
+                    getSum(currencyToPriceSums, baseCurrency).addProduct(amount, rate);
+                }
             } else {
                 // If not, let's just hope for the best with whatever we have to add
-                moneyToAdd = price.getMoney();
-                currencyForPriceToAdd = price.getCurrency();
-
+                possiblyIncorrectTotal.add(amount);
+                getSum(currencyToPriceSums, currency).add(amount);
                 areAllExchangeRatesValid = false;
             }
-
-            possiblyIncorrectTotalPrice = possiblyIncorrectTotalPrice.plus(moneyToAdd.getAmount());
-
-            final BigMoney priceForCurrency = currencyToPriceMap.containsKey(currencyForPriceToAdd) ?
-                    currencyToPriceMap.get(currencyForPriceToAdd).plus(moneyToAdd) : moneyToAdd;
-            currencyToPriceMap.put(currencyForPriceToAdd, priceForCurrency);
         }
 
-        this.totalMoney = total.withCurrencyScale(RoundingMode.HALF_EVEN);
-        this.possiblyIncorrectTotalPrice = possiblyIncorrectTotalPrice.withCurrencyScale(RoundingMode.HALF_EVEN);
+        this.totalMoney = BigMoney.of(baseCurrency, total.toBigDecimal()).withCurrencyScale(RoundingMode.HALF_EVEN);
+        this.possiblyIncorrectTotalPrice = BigMoney.of(baseCurrency, possiblyIncorrectTotal.toBigDecimal()).withCurrencyScale(RoundingMode.HALF_EVEN);
         this.areAllExchangeRatesValid = areAllExchangeRatesValid;
         this.exchangeRate = new ExchangeRateBuilderFactory().setBaseCurrency(baseCurrency).build();
-
-        // Pre-cache formatted values here
-        MoneyFormatter formatter = Companion.getMoneyFormatter();
-        this.decimalFormattedPrice = calculateDecimalFormattedPrice(formatter);
-        this.currencyFormattedPrice = calculateCurrencyFormattedPrice(formatter);
-        this.currencyCodeFormattedPrice = calculateCurrencyCodeFormattedPrice(formatter);
+        this.currencyToPriceMap = toMoneyMap(currencyToPriceSums);
+        this.notExchangedPriceMap = toMoneyMap(notExchangedSums);
     }
 
     @SuppressWarnings("unchecked")
@@ -124,24 +113,21 @@ public final class MultiplePriceImpl extends AbstractPriceImpl {
         writeMapToParcel(dest, notExchangedPriceMap);
     }
 
-    private MultiplePriceImpl(@NonNull BigMoney totalMoney,
-                              @NonNull BigMoney possiblyIncorrectTotalPrice,
-                              @NonNull ExchangeRate exchangeRate,
-                              boolean areAllExchangeRatesValid,
-                              @NonNull Map<CurrencyUnit, BigMoney> currencyToPriceMap,
-                              @NonNull Map<CurrencyUnit, BigMoney> notExchangedPrices) {
+    /**
+     * Creates a {@link MultiplePriceImpl} from values that were already aggregated elsewhere (ie via {@link PriceTotals})
+     */
+    MultiplePriceImpl(@NonNull BigMoney totalMoney,
+                      @NonNull BigMoney possiblyIncorrectTotalPrice,
+                      @NonNull ExchangeRate exchangeRate,
+                      boolean areAllExchangeRatesValid,
+                      @NonNull Map<CurrencyUnit, BigMoney> currencyToPriceMap,
+                      @NonNull Map<CurrencyUnit, BigMoney> notExchangedPrices) {
         this.totalMoney = Preconditions.checkNotNull(totalMoney);
         this.possiblyIncorrectTotalPrice = Preconditions.checkNotNull(possiblyIncorrectTotalPrice);
         this.exchangeRate = Preconditions.checkNotNull(exchangeRate);
         this.areAllExchangeRatesValid = areAllExchangeRatesValid;
         this.currencyToPriceMap = Preconditions.checkNotNull(currencyToPriceMap);
         this.notExchangedPriceMap = Preconditions.checkNotNull(notExchangedPrices);
-
-        // Note: The actual model utils stuff is somewhat slow due to the NumberFormats behind the scenes. We pre-cache here
-        MoneyFormatter formatter = Companion.getMoneyFormatter();
-        this.decimalFormattedPrice = calculateDecimalFormattedPrice(formatter);
-        this.currencyFormattedPrice = calculateCurrencyFormattedPrice(formatter);
-        this.currencyCodeFormattedPrice = calculateCurrencyCodeFormattedPrice(formatter);
     }
 
     @Override
@@ -176,18 +162,28 @@ public final class MultiplePriceImpl extends AbstractPriceImpl {
     @NonNull
     @Override
     public String getDecimalFormattedPrice() {
+        // Note: Racing threads may both format this, but they'll produce the same (immutable) result
+        if (decimalFormattedPrice == null) {
+            decimalFormattedPrice = calculateDecimalFormattedPrice(Companion.getMoneyFormatter());
+        }
         return decimalFormattedPrice;
     }
 
     @NonNull
     @Override
     public String getCurrencyFormattedPrice() {
-        return this.currencyFormattedPrice;
+        if (currencyFormattedPrice == null) {
+            currencyFormattedPrice = calculateCurrencyFormattedPrice(Companion.getMoneyFormatter());
+        }
+        return currencyFormattedPrice;
     }
 
     @NonNull
     @Override
     public String getCurrencyCodeFormattedPrice() {
+        if (currencyCodeFormattedPrice == null) {
+            currencyCodeFormattedPrice = calculateCurrencyCodeFormattedPrice(Companion.getMoneyFormatter());
+        }
         return currencyCodeFormattedPrice;
     }
 
@@ -279,6 +275,25 @@ public final class MultiplePriceImpl extends AbstractPriceImpl {
         return getCurrencyCodeFormattedStringFromMap(notExchangedPriceMap, formatter);
     }
 
+    @NonNull
+    private static DecimalAccumulator getSum(@NonNull Map<CurrencyUnit, DecimalAccumulator> sums, @NonNull CurrencyUnit currency) {
+        DecimalAccumulator sum = sums.get(currency);
+        if (sum == null) {
+            sum = new DecimalAccumulator();
+            sums.put(currency, sum);
+        }
+        return sum;
+    }
+
+    @NonNull
+    private static Map<CurrencyUnit, BigMoney> toMoneyMap(@NonNull Map<CurrencyUnit, DecimalAccumulator> sums) {
+        final Map<CurrencyUnit, BigMoney> moneyMap = new HashMap<>();
+        for (final Map.Entry<CurrencyUnit, DecimalAccumulator> entry : sums.entrySet()) {
+            moneyMap.put(entry.getKey(), BigMoney.of(entry.getKey(), entry.getValue().toBigDecimal()));
+        }
+        return moneyMap;
+    }
+
     private void writeMapToParcel(@NonNull Parcel dest, @NonNull Map<CurrencyUnit, BigMoney> map) {
         dest.writeInt(map.size());
         for (final Map.Entry<CurrencyUnit, BigMoney> entry : map.entrySet()) {
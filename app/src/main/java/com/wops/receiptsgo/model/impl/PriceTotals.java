@@ -0,0 +1,188 @@
+package com.wops.receiptsgo.model.impl;
+
+import androidx.annotation.NonNull;
+
+import com.google.common.base.Preconditions;
+
+import org.joda.money.BigMoney;
+import org.joda.money.CurrencyUnit;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.wops.receiptsgo.model.Price;
+import com.wops.receiptsgo.model.factory.ExchangeRateBuilderFactory;
+import com.wops.receiptsgo.model.gson.ExchangeRate;
+
+/**
+ * A mutable, running total of a collection of {@link Price} objects in a particular base currency. Unlike
+ * {@link MultiplePriceImpl}, which must be rebuilt from the full list of prices whenever one of them changes, this
+ * allows us to both add and subtract individual prices, so a total can be kept up to date as its underlying items are
+ * inserted, updated, or deleted. We track the same sums as {@link MultiplePriceImpl} (and apply the same exchange rate
+ * rules), so {@link #toPrice()} produces the same result as building a {@link MultiplePriceImpl} from scratch.
+ * <p>
+ * All sums are tracked at full precision and are only rounded to the currency scale in {@link #toPrice()}, so
+ * subtracting a previously added price is always exact.
+ * </p>
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ */
+public final class PriceTotals {
+
+    private final CurrencyUnit baseCurrency;
+
+    private final Map<CurrencyUnit, CurrencyTotal> exchangedTotals = new HashMap<>();
+    private final Map<CurrencyUnit, CurrencyTotal> notExchangedTotals = new HashMap<>();
+
+    private BigMoney exchangedTotal;
+    private BigDecimal possiblyIncorrectTotal = BigDecimal.ZERO;
+    private int invalidExchangeRateCount = 0;
+    private int count = 0;
+
+    public PriceTotals(@NonNull CurrencyUnit baseCurrency) {
+        this.baseCurrency = Preconditions.checkNotNull(baseCurrency);
+        this.exchangedTotal = BigMoney.zero(baseCurrency);
+    }
+
+    /**
+     * @return a copy of this {@link PriceTotals}, which may be modified independently of this one
+     */
+    @NonNull
+    public PriceTotals copy() {
+        final PriceTotals copy = new PriceTotals(baseCurrency);
+        copy.addAll(this);
+        return copy;
+    }
+
+    @NonNull
+    public CurrencyUnit getBaseCurrency() {
+        return baseCurrency;
+    }
+
+    /**
+     * @return the number of prices that currently make up this total
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Adds a price to this total
+     *
+     * @param price the {@link Price} to add
+     */
+    public void add(@NonNull Price price) {
+        apply(price, 1);
+    }
+
+    /**
+     * Subtracts a price that was previously added to this total
+     *
+     * @param price the {@link Price} to subtract
+     */
+    public void subtract(@NonNull Price price) {
+        apply(price, -1);
+    }
+
+    /**
+     * Adds all prices that make up another total to this one
+     *
+     * @param other the other {@link PriceTotals}, which must share the same base currency as this one
+     */
+    public void addAll(@NonNull PriceTotals other) {
+        Preconditions.checkArgument(baseCurrency.equals(other.baseCurrency), "Cannot combine totals in %s with totals in %s", baseCurrency, other.baseCurrency);
+        exchangedTotal = exchangedTotal.plus(other.exchangedTotal);
+        possiblyIncorrectTotal = possiblyIncorrectTotal.add(other.possiblyIncorrectTotal);
+        invalidExchangeRateCount += other.invalidExchangeRateCount;
+        count += other.count;
+        for (final Map.Entry<CurrencyUnit, CurrencyTotal> entry : other.exchangedTotals.entrySet()) {
+            addToCurrencyTotal(exchangedTotals, entry.getValue().total, entry.getValue().count);
+        }
+        for (final Map.Entry<CurrencyUnit, CurrencyTotal> entry : other.notExchangedTotals.entrySet()) {
+            addToCurrencyTotal(notExchangedTotals, entry.getValue().total, entry.getValue().count);
+        }
+    }
+
+    /**
+     * @return an immutable {@link Price} that represents the current state of this total
+     */
+    @NonNull
+    public Price toPrice() {
+        final ExchangeRate exchangeRate = new ExchangeRateBuilderFactory().setBaseCurrency(baseCurrency).build();
+        if (count == 0) {
+            return new SinglePriceImpl(BigDecimal.ZERO, baseCurrency, exchangeRate);
+        }
+
+        final Map<CurrencyUnit, BigMoney> currencyToPriceMap = new HashMap<>();
+        for (final Map.Entry<CurrencyUnit, CurrencyTotal> entry : exchangedTotals.entrySet()) {
+            currencyToPriceMap.put(entry.getKey(), entry.getValue().total);
+        }
+        final Map<CurrencyUnit, BigMoney> notExchangedPriceMap = new HashMap<>();
+        for (final Map.Entry<CurrencyUnit, CurrencyTotal> entry : notExchangedTotals.entrySet()) {
+            notExchangedPriceMap.put(entry.getKey(), entry.getValue().total);
+        }
+
+        return new MultiplePriceImpl(exchangedTotal.withCurrencyScale(RoundingMode.HALF_EVEN),
+                BigMoney.zero(baseCurrency).plus(possiblyIncorrectTotal).withCurrencyScale(RoundingMode.HALF_EVEN),
+                exchangeRate,
+                invalidExchangeRateCount == 0,
+                currencyToPriceMap,
+                notExchangedPriceMap);
+    }
+
+    private void apply(@NonNull Price price, int sign) {
+        final BigMoney originalMoney = price.getMoney();
+        addToCurrencyTotal(notExchangedTotals, negateIfNeeded(originalMoney, sign), sign);
+
+        final BigMoney moneyToAdd;
+        if (price.getExchangeRate().supportsExchangeRateFor(baseCurrency)) {
+            final BigDecimal exchangeRate = price.getExchangeRate().getExchangeRate(baseCurrency.getCode());
+            moneyToAdd = negateIfNeeded(price.getCurrency().equals(baseCurrency) ? originalMoney : originalMoney.convertedTo(baseCurrency, exchangeRate), sign);
+            exchangedTotal = exchangedTotal.plus(moneyToAdd);
+        } else {
+            // Mirror MultiplePriceImpl here, where we just hope for the best with whatever we have to add
+            moneyToAdd = negateIfNeeded(originalMoney, sign);
+            invalidExchangeRateCount += sign;
+        }
+
+        possiblyIncorrectTotal = possiblyIncorrectTotal.add(moneyToAdd.getAmount());
+        addToCurrencyTotal(exchangedTotals, moneyToAdd, sign);
+        count += sign;
+    }
+
+    private static void addToCurrencyTotal(@NonNull Map<CurrencyUnit, CurrencyTotal> totals, @NonNull BigMoney money, int count) {
+        final CurrencyTotal currencyTotal = totals.get(money.getCurrencyUnit());
+        if (currencyTotal == null) {
+            totals.put(money.getCurrencyUnit(), new CurrencyTotal(money, count));
+        } else {
+            currencyTotal.total = currencyTotal.total.plus(money);
+            currencyTotal.count += count;
+            if (currencyTotal.count == 0) {
+                // Drop currencies that no longer have any prices, so these aren't included in our currency codes
+                totals.remove(money.getCurrencyUnit());
+            }
+        }
+    }
+
+    @NonNull
+    private static BigMoney negateIfNeeded(@NonNull BigMoney money, int sign) {
+        return sign < 0 ? money.negated() : money;
+    }
+
+    private static final class CurrencyTotal {
+        private BigMoney total;
+        private int count;
+
+        CurrencyTotal(@NonNull BigMoney total, int count) {
+            this.total = total;
+            this.count = count;
+        }
+    }
+}
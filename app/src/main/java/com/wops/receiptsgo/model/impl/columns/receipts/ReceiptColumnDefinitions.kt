@@ -10,6 +10,7 @@ import com.wops.receiptsgo.model.impl.columns.BlankColumn
 import com.wops.receiptsgo.model.impl.columns.SettingUserIdColumn
 import com.wops.receiptsgo.model.impl.columns.receipts.ReceiptColumnDefinitions.ActualDefinition.*
 import com.wops.receiptsgo.settings.UserPreferenceManager
+import com.wops.receiptsgo.utils.cache.FileHashStore
 import com.wops.core.sync.model.SyncState
 import com.wops.core.sync.model.impl.DefaultSyncState
 import com.wops.receiptsgo.workers.reports.ReportResourcesManager
@@ -23,7 +24,8 @@ import kotlin.collections.ArrayList
 class ReceiptColumnDefinitions @Inject constructor(
     private val reportResourcesManager: ReportResourcesManager,
     private val preferences: UserPreferenceManager,
-    private val dateFormatter: DateFormatter
+    private val dateFormatter: DateFormatter,
+    private val fileHashStore: FileHashStore
 ) : ColumnDefinitions<Receipt>, ColumnFinder {
 
     private val actualDefinitions = values()
@@ -202,7 +204,7 @@ class ReceiptColumnDefinitions @Inject constructor(
             INDEX -> ReceiptIndexColumn(id, syncState, customOrderId, uuid)
             ID -> ReceiptIdColumn(id, syncState, customOrderId, uuid)
             PAYMENT_METHOD -> ReceiptPaymentMethodColumn(id, syncState, customOrderId, uuid)
-            IMAGE_HASH -> ReceiptFileHashColumn(id, syncState, customOrderId, uuid)
+            IMAGE_HASH -> ReceiptFileHashColumn(id, syncState, fileHashStore, customOrderId, uuid)
             EXTRA_EDITTEXT_1 -> ReceiptExtra1Column(id, syncState, customOrderId, uuid)
             EXTRA_EDITTEXT_2 -> ReceiptExtra2Column(id, syncState, customOrderId, uuid)
             EXTRA_EDITTEXT_3 -> ReceiptExtra3Column(id, syncState, customOrderId, uuid)
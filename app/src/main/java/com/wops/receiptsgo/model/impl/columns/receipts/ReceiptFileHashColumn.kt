@@ -2,18 +2,15 @@ package com.wops.receiptsgo.model.impl.columns.receipts
 
 import com.wops.receiptsgo.model.Receipt
 import com.wops.receiptsgo.model.impl.columns.AbstractColumnImpl
+import com.wops.receiptsgo.utils.cache.FileHashStore
 import com.wops.core.sync.model.SyncState
-import okhttp3.internal.and
-import java.io.File
-import java.io.FileInputStream
-import java.security.MessageDigest
-import java.security.NoSuchAlgorithmException
 import java.util.*
 
 /**
- * Provides a column that returns the file path for a particular receipt
+ * Provides a column that returns the (shortened) hash of the file for a particular receipt. Since we read each cell
+ * several times while generating our reports, we fetch these hashes from our [FileHashStore]
  */
-class ReceiptFileHashColumn(id: Int, syncState: SyncState, customOrderId: Long, uuid: UUID) :
+class ReceiptFileHashColumn(id: Int, syncState: SyncState, private val fileHashStore: FileHashStore, customOrderId: Long, uuid: UUID) :
     AbstractColumnImpl<Receipt>(
         id,
         ReceiptColumnDefinitions.ActualDefinition.IMAGE_HASH,
@@ -24,37 +21,9 @@ class ReceiptFileHashColumn(id: Int, syncState: SyncState, customOrderId: Long,
 
     override fun getValue(rowItem: Receipt): String {
         return if (rowItem.file != null) {
-            hashImgFile(rowItem.file)
+            fileHashStore.getHash(rowItem.file).takeLast(16).toUpperCase(Locale.ENGLISH)
         } else {
             ""
         }
     }
-
-    private fun hashImgFile(file: File): String {
-        try {
-            FileInputStream(file).use { inputStream ->
-                val buffer = ByteArray(1024)
-                val digest = MessageDigest.getInstance("SHA-256")
-                var numRead = 0
-                while (numRead != -1) {
-                    numRead = inputStream.read(buffer)
-                    if (numRead > 0)
-                        digest.update(buffer, 0, numRead)
-                }
-                val hashedBytes = digest.digest()
-                return convertHashToString(hashedBytes)
-            }
-        } catch (e: NoSuchAlgorithmException) {
-            return ""
-        }
-
-    }
-
-    private fun convertHashToString(hashedBytes: ByteArray): String {
-        val returnVal = StringBuilder()
-        for (hashedByte in hashedBytes) {
-            returnVal.append(((hashedByte and 0xff) + 0x100).toString(16).substring(1))
-        }
-        return returnVal.toString().takeLast(16).toUpperCase(Locale.ENGLISH)
-    }
 }
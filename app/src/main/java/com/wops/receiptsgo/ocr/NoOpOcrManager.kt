@@ -1,5 +1,6 @@
 package com.wops.receiptsgo.ocr
 
+import com.wops.aws.s3.S3UploadProgress
 import com.wops.receiptsgo.ocr.apis.model.OcrResponse
 import com.wops.receiptsgo.ocr.widget.alert.OcrProcessingStatus
 import com.wops.core.di.scopes.ApplicationScope
@@ -15,4 +16,6 @@ class  NoOpOcrManager @Inject constructor(): OcrManager {
     override fun scan(file: File): Observable<OcrResponse> = Observable.just( OcrResponse())
 
     override fun getOcrProcessingStatus(): Observable<OcrProcessingStatus> = Observable.empty()
+
+    override fun getOcrUploadProgress(): Observable<S3UploadProgress> = Observable.empty()
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package com.wops.receiptsgo.ocr
 
+import com.wops.aws.s3.S3UploadProgress
 import com.wops.receiptsgo.ocr.apis.model.OcrResponse
 import com.wops.receiptsgo.ocr.widget.alert.OcrProcessingStatus
 import io.reactivex.Observable
@@ -12,4 +13,9 @@ interface OcrManager {
     fun scan(file: File): Observable<OcrResponse>
 
     fun getOcrProcessingStatus(): Observable<OcrProcessingStatus>
+
+    /**
+     * @return an [Observable] that emits the [S3UploadProgress] of each image that we upload for scanning
+     */
+    fun getOcrUploadProgress(): Observable<S3UploadProgress>
 }
\ No newline at end of file
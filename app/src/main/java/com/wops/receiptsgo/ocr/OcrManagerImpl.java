@@ -6,6 +6,7 @@ import androidx.annotation.VisibleForTesting;
 import com.google.common.base.Preconditions;
 
 import java.io.File;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.inject.Inject;
 
@@ -18,6 +19,7 @@ import com.wops.receiptsgo.config.ConfigurationManager;
 import com.wops.receiptsgo.ocr.apis.OcrService;
 import com.wops.receiptsgo.ocr.apis.model.OcrResponse;
 import com.wops.receiptsgo.ocr.apis.model.RecognitionRequest;
+import com.wops.receiptsgo.ocr.preprocessing.OcrImagePreprocessor;
 import com.wops.receiptsgo.ocr.purchases.OcrPurchaseTracker;
 import com.wops.receiptsgo.ocr.widget.alert.OcrProcessingStatus;
 import com.wops.receiptsgo.ocr.widget.tooltip.OcrInformationalTooltipInteractor;
@@ -25,6 +27,7 @@ import com.wops.receiptsgo.settings.UserPreferenceManager;
 import com.wops.receiptsgo.settings.catalog.UserPreference;
 import com.wops.receiptsgo.utils.ConfigurableResourceFeature;
 import com.wops.aws.s3.S3Manager;
+import com.wops.aws.s3.S3UploadProgress;
 import com.wops.core.di.scopes.ApplicationScope;
 import com.wops.core.identity.IdentityManager;
 import com.wops.analytics.log.Logger;
@@ -50,7 +53,9 @@ public class OcrManagerImpl implements OcrManager {
     private final OcrInformationalTooltipInteractor ocrInformationalTooltipInteractor;
     private final OcrPushMessageReceiverFactory pushMessageReceiverFactory;
     private final ConfigurationManager configurationManager;
+    private final OcrImagePreprocessor ocrImagePreprocessor;
     private final BehaviorSubject<OcrProcessingStatus> ocrProcessingStatusSubject = BehaviorSubject.createDefault(OcrProcessingStatus.Idle);
+    private final AtomicReference<File> currentScanFile = new AtomicReference<>();
 
     @Inject
     public OcrManagerImpl(@NonNull S3Manager s3Manager,
@@ -61,9 +66,10 @@ public class OcrManagerImpl implements OcrManager {
                           @NonNull OcrInformationalTooltipInteractor ocrInformationalTooltipInteractor,
                           @NonNull UserPreferenceManager userPreferenceManager,
                           @NonNull Analytics analytics,
-                          @NonNull ConfigurationManager configurationManager) {
+                          @NonNull ConfigurationManager configurationManager,
+                          @NonNull OcrImagePreprocessor ocrImagePreprocessor) {
         this(s3Manager, identityManager, webServiceManager, pushManager, ocrPurchaseTracker, ocrInformationalTooltipInteractor,
-                userPreferenceManager, analytics, new OcrPushMessageReceiverFactory(), configurationManager);
+                userPreferenceManager, analytics, new OcrPushMessageReceiverFactory(), configurationManager, ocrImagePreprocessor);
     }
 
     @VisibleForTesting
@@ -76,7 +82,8 @@ public class OcrManagerImpl implements OcrManager {
                    @NonNull UserPreferenceManager userPreferenceManager,
                    @NonNull Analytics analytics,
                    @NonNull OcrPushMessageReceiverFactory pushMessageReceiverFactory,
-                   @NonNull ConfigurationManager configurationManager) {
+                   @NonNull ConfigurationManager configurationManager,
+                   @NonNull OcrImagePreprocessor ocrImagePreprocessor) {
         this.s3Manager = Preconditions.checkNotNull(s3Manager);
         this.identityManager = Preconditions.checkNotNull(identityManager);
         this.ocrWebServiceManager = Preconditions.checkNotNull(webServiceManager);
@@ -87,6 +94,7 @@ public class OcrManagerImpl implements OcrManager {
         this.analytics = Preconditions.checkNotNull(analytics);
         this.pushMessageReceiverFactory = Preconditions.checkNotNull(pushMessageReceiverFactory);
         this.configurationManager = Preconditions.checkNotNull(configurationManager);
+        this.ocrImagePreprocessor = Preconditions.checkNotNull(ocrImagePreprocessor);
     }
 
     @Override
@@ -106,7 +114,13 @@ public class OcrManagerImpl implements OcrManager {
             Logger.info(OcrManagerImpl.this, "Initiating scan of {}.", file);
             final OcrPushMessageReceiver ocrPushMessageReceiver = pushMessageReceiverFactory.get();
             ocrProcessingStatusSubject.onNext(OcrProcessingStatus.UploadingImage);
-            return s3Manager.upload(file, OCR_FOLDER)
+            final AtomicReference<File> uploadFile = new AtomicReference<>(file);
+            return ocrImagePreprocessor.process(file)
+                    .flatMapObservable(preprocessedFile -> {
+                        uploadFile.set(preprocessedFile);
+                        currentScanFile.set(preprocessedFile);
+                        return s3Manager.upload(preprocessedFile, OCR_FOLDER);
+                    })
                     .doOnSubscribe(disposable -> {
                         pushManager.registerReceiver(ocrPushMessageReceiver);
                         analytics.record(Events.Ocr.OcrRequestStarted);
@@ -170,6 +184,7 @@ public class OcrManagerImpl implements OcrManager {
                     })
                     .onErrorReturnItem(new OcrResponse())
                     .doOnTerminate(() -> {
+                        currentScanFile.compareAndSet(uploadFile.get(), null);
                         ocrProcessingStatusSubject.onNext(OcrProcessingStatus.Idle);
                         pushManager.unregisterReceiver(ocrPushMessageReceiver);
                     });
@@ -184,4 +199,11 @@ public class OcrManagerImpl implements OcrManager {
     public Observable<OcrProcessingStatus> getOcrProcessingStatus() {
         return ocrProcessingStatusSubject.subscribeOn(Schedulers.computation());
     }
+
+    @Override
+    @NonNull
+    public Observable<S3UploadProgress> getOcrUploadProgress() {
+        return s3Manager.getUploadProgress()
+                .filter(progress -> progress.getFile().equals(currentScanFile.get()));
+    }
 }
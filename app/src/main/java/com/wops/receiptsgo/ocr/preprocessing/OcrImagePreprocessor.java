@@ -0,0 +1,267 @@
+package com.wops.receiptsgo.ocr.preprocessing;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.graphics.pdf.PdfRenderer;
+import android.os.ParcelFileDescriptor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.exifinterface.media.ExifInterface;
+
+import com.google.common.base.Preconditions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Locale;
+
+import javax.inject.Inject;
+
+import com.wops.analytics.log.Logger;
+import com.wops.core.di.scopes.ApplicationScope;
+import com.wops.receiptsgo.utils.ImageUtils;
+import com.wops.receiptsgo.utils.cache.FileHashStore;
+import io.reactivex.Single;
+
+/**
+ * Prepares a receipt file for OCR before we upload it. Our recognition service only needs a legible, grayscale copy
+ * of the receipt, so we produce a JPEG whose longest side is at most {@link #DEFAULT_MAX_DIMENSION} pixels and whose
+ * size is (where possible) at most {@link #DEFAULT_MAX_BYTES}. For PDF files, we rasterize the first page.
+ * <p>
+ * The results are cached by the SHA-256 hash of the source file (via our {@link FileHashStore}), so retrying a failed scan (or re-scanning the same
+ * receipt) does not decode and re-encode the image again. If anything goes wrong, we fall back to the original file.
+ * </p>
+ */
+@ApplicationScope
+public class OcrImagePreprocessor {
+
+    @VisibleForTesting
+    static final int DEFAULT_MAX_DIMENSION = 2048;
+
+    @VisibleForTesting
+    static final long DEFAULT_MAX_BYTES = 750 * 1024;
+
+    @VisibleForTesting
+    static final int DEFAULT_MAX_CACHED_FILES = 20;
+
+    private static final String CACHE_FOLDER = "ocr";
+    private static final String PDF_EXTENSION = ".pdf";
+    private static final int INITIAL_QUALITY = 85;
+    private static final int MIN_QUALITY = 45;
+    private static final int QUALITY_STEP = 10;
+
+    private final File cacheDirectory;
+    private final int maxDimension;
+    private final long maxBytes;
+    private final int maxCachedFiles;
+    private final FileHashStore fileHashStore;
+
+    @Inject
+    public OcrImagePreprocessor(@NonNull Context context, @NonNull FileHashStore fileHashStore) {
+        this(new File(context.getCacheDir(), CACHE_FOLDER), DEFAULT_MAX_DIMENSION, DEFAULT_MAX_BYTES, DEFAULT_MAX_CACHED_FILES, fileHashStore);
+    }
+
+    @VisibleForTesting
+    OcrImagePreprocessor(@NonNull File cacheDirectory, int maxDimension, long maxBytes, int maxCachedFiles, @NonNull FileHashStore fileHashStore) {
+        Preconditions.checkArgument(maxDimension > 0, "The maximum dimension must be positive");
+        Preconditions.checkArgument(maxCachedFiles > 0, "We must cache at least one file");
+        this.cacheDirectory = Preconditions.checkNotNull(cacheDirectory);
+        this.maxDimension = maxDimension;
+        this.maxBytes = maxBytes;
+        this.maxCachedFiles = maxCachedFiles;
+        this.fileHashStore = Preconditions.checkNotNull(fileHashStore);
+    }
+
+    /**
+     * Prepares a file for OCR
+     *
+     * @param file the receipt image or PDF
+     * @return a {@link Single}, which will emit the file that should be uploaded for OCR. This will be the original
+     * file if we were unable to process it
+     */
+    @NonNull
+    public Single<File> process(@NonNull File file) {
+        return Single.fromCallable(() -> processBlocking(file))
+                .onErrorReturn(throwable -> {
+                    Logger.warn(OcrImagePreprocessor.this, "Failed to pre-process {} for OCR. Using the original file", file.getName(), throwable);
+                    return file;
+                });
+    }
+
+    @NonNull
+    @VisibleForTesting
+    synchronized File processBlocking(@NonNull File file) throws IOException {
+        final String hash = fileHashStore.getHash(file);
+        final File cachedFile = new File(cacheDirectory, hash + ".jpg");
+        if (cachedFile.exists()) {
+            Logger.debug(this, "Using our cached OCR image for {}", file.getName());
+            // Note: We bump the modification time, since we prune our cache by the least recently used files
+            //noinspection ResultOfMethodCallIgnored
+            cachedFile.setLastModified(System.currentTimeMillis());
+            return cachedFile;
+        }
+
+        final long startTime = System.currentTimeMillis();
+        Bitmap bitmap = isPdf(file) ? renderFirstPdfPage(file) : decodeImage(file);
+        if (bitmap == null) {
+            throw new IOException("Failed to decode " + file.getName());
+        }
+
+        try {
+            bitmap = scaleToMaxDimension(bitmap);
+            bitmap = ImageUtils.convertToGrayScale(bitmap);
+            final byte[] jpeg = encode(bitmap);
+            write(jpeg, cachedFile);
+            Logger.info(this, "Pre-processed {} for OCR ({} -> {} bytes, {}x{}) in {}ms", file.getName(), file.length(), jpeg.length,
+                    bitmap.getWidth(), bitmap.getHeight(), System.currentTimeMillis() - startTime);
+        } finally {
+            bitmap.recycle();
+        }
+        pruneCache();
+        return cachedFile;
+    }
+
+    /**
+     * Calculates the largest power of two sample size that keeps the longest side of our decoded image at or above
+     * our maximum dimension (as the decoder only supports power of two sampling). We scale the remainder ourselves
+     *
+     * @param width  the width of the source image
+     * @param height the height of the source image
+     * @param maxDimension the maximum dimension of our result
+     * @return the sample size to decode with
+     */
+    @VisibleForTesting
+    static int calculateSampleSize(int width, int height, int maxDimension) {
+        final int longestSide = Math.max(width, height);
+        int sampleSize = 1;
+        while (longestSide / (sampleSize * 2) >= maxDimension) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    @Nullable
+    private Bitmap decodeImage(@NonNull File file) throws IOException {
+        final BitmapFactory.Options boundsOptions = new BitmapFactory.Options();
+        boundsOptions.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getAbsolutePath(), boundsOptions);
+        if (boundsOptions.outWidth <= 0 || boundsOptions.outHeight <= 0) {
+            return null;
+        }
+
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = calculateSampleSize(boundsOptions.outWidth, boundsOptions.outHeight, maxDimension);
+        final Bitmap bitmap = BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        if (bitmap == null) {
+            return null;
+        }
+
+        // Note: Images that were not imported via our ImageImportProcessor may not have been rotated upright yet
+        final int orientation = new ExifInterface(file.getAbsolutePath()).getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_UNDEFINED);
+        return ImageUtils.rotateBitmap(bitmap, orientation);
+    }
+
+    @NonNull
+    private Bitmap renderFirstPdfPage(@NonNull File file) throws IOException {
+        try (ParcelFileDescriptor parcelFileDescriptor = ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY)) {
+            final PdfRenderer pdfRenderer = new PdfRenderer(parcelFileDescriptor);
+            try {
+                if (pdfRenderer.getPageCount() <= 0) {
+                    throw new IOException(file.getName() + " does not contain any pages");
+                }
+                final PdfRenderer.Page page = pdfRenderer.openPage(0);
+                try {
+                    // Note: We render directly at our target resolution instead of rendering at full size and scaling
+                    final float scale = (float) maxDimension / Math.max(page.getWidth(), page.getHeight());
+                    final int width = Math.max(1, Math.round(page.getWidth() * scale));
+                    final int height = Math.max(1, Math.round(page.getHeight() * scale));
+                    final Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                    bitmap.eraseColor(Color.WHITE);
+                    page.render(bitmap, null, null, PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY);
+                    return bitmap;
+                } finally {
+                    page.close();
+                }
+            } finally {
+                pdfRenderer.close();
+            }
+        }
+    }
+
+    @NonNull
+    private Bitmap scaleToMaxDimension(@NonNull Bitmap bitmap) {
+        final int longestSide = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (longestSide <= maxDimension) {
+            return bitmap;
+        }
+        final float scale = (float) maxDimension / longestSide;
+        final int width = Math.max(1, Math.round(bitmap.getWidth() * scale));
+        final int height = Math.max(1, Math.round(bitmap.getHeight() * scale));
+        final Bitmap scaledBitmap = Bitmap.createScaledBitmap(bitmap, width, height, true);
+        if (scaledBitmap != bitmap) {
+            bitmap.recycle();
+        }
+        return scaledBitmap;
+    }
+
+    /**
+     * Encodes our bitmap as a JPEG, stepping the quality down until we fit within our maximum size (or until we reach
+     * our minimum quality, beneath which the text becomes too noisy to recognize reliably)
+     */
+    @NonNull
+    private byte[] encode(@NonNull Bitmap bitmap) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        for (int quality = INITIAL_QUALITY; quality >= MIN_QUALITY; quality -= QUALITY_STEP) {
+            outputStream.reset();
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, quality, outputStream)) {
+                throw new IOException("Failed to encode our OCR image");
+            }
+            if (outputStream.size() <= maxBytes) {
+                break;
+            }
+        }
+        return outputStream.toByteArray();
+    }
+
+    private void write(@NonNull byte[] bytes, @NonNull File destination) throws IOException {
+        if (!cacheDirectory.exists() && !cacheDirectory.mkdirs()) {
+            throw new IOException("Failed to create " + cacheDirectory);
+        }
+        final File tempFile = new File(cacheDirectory, destination.getName() + ".tmp");
+        try (OutputStream outputStream = new FileOutputStream(tempFile)) {
+            outputStream.write(bytes);
+        }
+        if (!tempFile.renameTo(destination)) {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            throw new IOException("Failed to write " + destination);
+        }
+    }
+
+    /**
+     * Deletes the least recently used files from our cache, once it grows beyond its maximum size
+     */
+    private void pruneCache() {
+        final File[] cachedFiles = cacheDirectory.listFiles((dir, name) -> name.endsWith(".jpg"));
+        if (cachedFiles == null || cachedFiles.length <= maxCachedFiles) {
+            return;
+        }
+        Arrays.sort(cachedFiles, (lhs, rhs) -> Long.compare(rhs.lastModified(), lhs.lastModified()));
+        for (int i = maxCachedFiles; i < cachedFiles.length; i++) {
+            if (!cachedFiles[i].delete()) {
+                Logger.warn(this, "Failed to delete cached OCR image {}", cachedFiles[i].getName());
+            }
+        }
+    }
+
+    private static boolean isPdf(@NonNull File file) {
+        return file.getName().toLowerCase(Locale.US).endsWith(PDF_EXTENSION);
+    }
+}
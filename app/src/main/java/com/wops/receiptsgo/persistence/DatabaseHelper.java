@@ -21,10 +21,12 @@ import com.wops.analytics.log.Logger;
 import com.wops.receiptsgo.database.DatabaseContext;
 import com.wops.receiptsgo.date.DateUtils;
 import com.wops.receiptsgo.model.Distance;
+import com.wops.receiptsgo.model.Price;
 import com.wops.receiptsgo.model.Priceable;
 import com.wops.receiptsgo.model.Receipt;
 import com.wops.receiptsgo.model.Trip;
 import com.wops.receiptsgo.model.factory.PriceBuilderFactory;
+import com.wops.receiptsgo.model.impl.PriceTotals;
 import com.wops.receiptsgo.model.impl.columns.receipts.ReceiptColumnDefinitions;
 import com.wops.receiptsgo.model.utils.CurrencyUtils;
 import com.wops.receiptsgo.model.utils.CurrencyWithDecimalPlaces;
@@ -51,7 +53,7 @@ import wb.android.storage.StorageManager;
 public class DatabaseHelper extends SQLiteOpenHelper {
 
     // Database Info
-    public static final int DATABASE_VERSION = 21;
+    public static final int DATABASE_VERSION = 22;
 
     @Deprecated
     public static final String NO_DATA = "null"; // TODO: Just set to null
@@ -211,23 +213,63 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     // //////////////////////////////////////////////////////////////////////////////////////////////////
 
     /**
-     * This class is not synchronized! Sync outside of it
+     * Updates the price and daily sub-total of a trip. These are derived from the running totals that our receipts and
+     * distance tables maintain for each trip, so this does not need to re-load all receipts after each edit. This
+     * class is not synchronized! Sync outside of it
      *
      * @param trip The trip we want the prices of
      */
     public void getTripPriceAndDailyPrice(final Trip trip) {
-        queryTripPrice(trip);
-        queryTripDailyPrice(trip);
+        final boolean onlyUseReimbursable = mPreferences.get(UserPreference.Receipts.OnlyIncludeReimbursable);
+        final PriceTotals priceTotals = mReceiptsTable.getPriceTotalsBlocking(trip, onlyUseReimbursable);
+        final PriceTotals dailyPriceTotals = mReceiptsTable.getDailyPriceTotalsBlocking(trip, onlyUseReimbursable);
+
+        if (mPreferences.get(UserPreference.Distance.IncludeDistancePriceInReports)) {
+            priceTotals.addAll(mDistanceTable.getPriceTotalsBlocking(trip, false));
+            dailyPriceTotals.addAll(mDistanceTable.getDailyPriceTotalsBlocking(trip, false));
+        }
+
+        trip.setPrice(priceTotals.toPrice());
+        trip.setDailySubTotal(dailyPriceTotals.toPrice());
     }
 
     /**
-     * Queries the trips price and updates this object. This class is not synchronized! Sync outside of it
+     * Checks that the running price totals of a trip match the prices that we get by summing all of its receipts and
+     * distances from scratch (as read directly from the database). If these differ, the running totals are discarded (so
+     * they will be rebuilt) and the trip is updated with the fully re-calculated prices. This class is not synchronized!
+     * Sync outside of it
      *
      * @param trip the trip, which will be updated
+     * @return {@code true} if our running totals were consistent. {@code false} if they had to be rebuilt
+     */
+    public boolean verifyTripPriceAndDailyPrice(final Trip trip) {
+        getTripPriceAndDailyPrice(trip);
+
+        final Price price = calculateTripPrice(trip);
+        final Price dailySubTotal = calculateTripDailyPrice(trip);
+        if (price.equals(trip.getPrice()) && dailySubTotal.equals(trip.getDailySubTotal())) {
+            return true;
+        } else {
+            Logger.warn(this, "The running totals for trip {} were inconsistent. Rebuilding them", trip.getId());
+            mReceiptsTable.invalidatePriceTotals(trip);
+            mDistanceTable.invalidatePriceTotals(trip);
+            trip.setPrice(price);
+            trip.setDailySubTotal(dailySubTotal);
+            return false;
+        }
+    }
+
+    /**
+     * Calculates the trips price by summing all of its receipts (and distances) from scratch
+     *
+     * @param trip the trip to calculate the price for
+     * @return the total {@link Price} of this trip
      */
-    private void queryTripPrice(final Trip trip) {
+    @NonNull
+    private Price calculateTripPrice(final Trip trip) {
         final boolean onlyUseReimbursable = mPreferences.get(UserPreference.Receipts.OnlyIncludeReimbursable);
-        final List<Receipt> receipts = mReceiptsTable.getBlocking(trip, true);
+        // Note: Ascending reads always bypass our table caches, so this reflects what is stored in the database
+        final List<Receipt> receipts = mReceiptsTable.getBlocking(trip, false);
         final List<Priceable> prices = new ArrayList<>(receipts.size());
         for (final Receipt receipt : receipts) {
             if (!onlyUseReimbursable || receipt.isReimbursable()) {
@@ -236,21 +278,24 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         }
 
         if (mPreferences.get(UserPreference.Distance.IncludeDistancePriceInReports)) {
-            final List<Distance> distances = mDistanceTable.getBlocking(trip, true);
+            final List<Distance> distances = mDistanceTable.getBlocking(trip, false);
             prices.addAll(distances);
         }
 
-        trip.setPrice(new PriceBuilderFactory().setPriceables(prices, trip.getTripCurrency()).build());
+        return new PriceBuilderFactory().setPriceables(prices, trip.getTripCurrency()).build();
     }
 
     /**
-     * Queries the trips daily total price and updates this object. This class is not synchronized! Sync outside of it
+     * Calculates the trips daily total price by summing all of its receipts (and distances) from scratch
      *
-     * @param trip the trip, which will be updated
+     * @param trip the trip to calculate the daily price for
+     * @return the daily sub-total {@link Price} of this trip
      */
-    private void queryTripDailyPrice(final Trip trip) {
+    @NonNull
+    private Price calculateTripDailyPrice(final Trip trip) {
         final boolean onlyUseReimbursable = mPreferences.get(UserPreference.Receipts.OnlyIncludeReimbursable);
-        final List<Receipt> receipts = mReceiptsTable.getBlocking(trip, true);
+        // Note: Ascending reads always bypass our table caches, so this reflects what is stored in the database
+        final List<Receipt> receipts = mReceiptsTable.getBlocking(trip, false);
         final List<Priceable> prices = new ArrayList<>(receipts.size());
         for (final Receipt receipt : receipts) {
             if (!onlyUseReimbursable || receipt.isReimbursable()) {
@@ -261,7 +306,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         }
 
         if (mPreferences.get(UserPreference.Distance.IncludeDistancePriceInReports)) {
-            final List<Distance> distances = mDistanceTable.getBlocking(trip, true);
+            final List<Distance> distances = mDistanceTable.getBlocking(trip, false);
             for (final Distance distance : distances) {
                 if (DateUtils.isToday(distance.getDate())) {
                     prices.add(distance);
@@ -269,7 +314,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             }
         }
 
-        trip.setDailySubTotal(new PriceBuilderFactory().setPriceables(prices, trip.getTripCurrency()).build());
+        return new PriceBuilderFactory().setPriceables(prices, trip.getTripCurrency()).build();
     }
 
     public Single<Integer> getNextReceiptAutoIncrementIdHelper() {
@@ -300,55 +345,56 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         return mFullCurrencyList;
     }
 
+    /**
+     * Performs a simple {@code LIKE} search against one of our (smaller) tables. All user input is bound as a selection
+     * argument rather than being concatenated into the query. The {@link TripsTable}, {@link ReceiptsTable}, and
+     * {@link DistanceTable} should instead be queried via their full-text search indices (ie {@link ReceiptsTable#search(String, String, int)}),
+     * which avoid a full table scan for each query
+     *
+     * @param input         the user's search input
+     * @param tableName     the table to search
+     * @param resultColumn  the column to return for each matching row
+     * @param orderByColumn an optional column to order the results by
+     * @param searchColumns the columns to search. The {@link ReceiptsTable#COLUMN_COMMENT} is matched anywhere within its
+     *                      value, whereas all other columns are matched by their prefix
+     * @return a {@link Single} with: the {@code resultColumn} values of all matching rows
+     */
     public Single<List<String>> search(@NonNull String input, @Nonnull String tableName, @Nonnull String resultColumn,
                                        @Nullable String orderByColumn, @Nonnull String... searchColumns) {
-        String fixedInput = input.replace("'", "");
+        final String escapedInput = input.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
 
         return Single.fromCallable(() -> {
                     final List<String> results = new ArrayList<>();
 
                     synchronized (mDatabaseLock) {
-                        Cursor cursor = null;
-
-                        try {
-                            final SQLiteDatabase db = getReadableDatabase();
-                            final String baseQuery = String.format("SELECT DISTINCT %s FROM %s WHERE ", resultColumn, tableName);
-                            StringBuilder builder = new StringBuilder(baseQuery);
-
-                            for (int i = 0; i < searchColumns.length; i++) {
-                                if (i != 0) {
-                                    builder.append(" OR ");
-                                }
-
-                                if (searchColumns[i].equals(ReceiptsTable.COLUMN_COMMENT)) {
-                                    builder.append(searchColumns[i])
-                                            .append(" like '%")
-                                            .append(fixedInput)
-                                            .append("%' ");
-                                } else {
-                                    builder.append(searchColumns[i])
-                                            .append(" like '")
-                                            .append(fixedInput)
-                                            .append("%' ");
-                                }
+                        final SQLiteDatabase db = getReadableDatabase();
+                        final StringBuilder builder = new StringBuilder(String.format("SELECT DISTINCT %s FROM %s WHERE ", resultColumn, tableName));
+                        final String[] selectionArgs = new String[searchColumns.length];
+
+                        for (int i = 0; i < searchColumns.length; i++) {
+                            if (i != 0) {
+                                builder.append(" OR ");
                             }
+                            builder.append(searchColumns[i]).append(" LIKE ? ESCAPE '\\'");
 
-                            if (orderByColumn != null) {
-                                builder.append(" ORDER BY ")
-                                        .append(orderByColumn);
+                            if (searchColumns[i].equals(ReceiptsTable.COLUMN_COMMENT)) {
+                                selectionArgs[i] = "%" + escapedInput + "%";
+                            } else {
+                                selectionArgs[i] = escapedInput + "%";
                             }
+                        }
+
+                        if (orderByColumn != null) {
+                            builder.append(" ORDER BY ")
+                                    .append(orderByColumn);
+                        }
 
-                            cursor = db.rawQuery(builder.toString(), null);
+                        try (Cursor cursor = db.rawQuery(builder.toString(), selectionArgs)) {
                             if (cursor != null && cursor.moveToFirst()) {
                                 do {
                                     results.add(cursor.getString(0));
                                 } while (cursor.moveToNext());
                             }
-
-                        } finally {
-                            if (cursor != null) {
-                                cursor.close();
-                            }
                         }
                     }
                     return results;
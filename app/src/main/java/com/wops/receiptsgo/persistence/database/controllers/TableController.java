@@ -110,4 +110,83 @@ public interface TableController<ModelType> {
      */
     @NonNull
     Observable<DeleteResult<ModelType>> deleteStream();
+
+    /**
+     * Inserts a batch of new objects of type {@link ModelType} into this table within a single transaction. Listeners
+     * will be notified once for the entire batch
+     *
+     * @param modelTypes the objects to insert
+     * @param databaseOperationMetadata metadata about this particular database operation
+     * @return a hot {@link Single} that will return the inserted items or an error if the batch failed
+     */
+    @NonNull
+    Single<List<ModelType>> insertAll(@NonNull List<ModelType> modelTypes, @NonNull DatabaseOperationMetadata databaseOperationMetadata);
+
+    /**
+     * Returns a stream of all batch insertions submitted to {@link #insertAll(List, DatabaseOperationMetadata)}
+     * <p>
+     * Please note that this will never call {@link Subscriber#onError(Throwable)} or {@link Subscriber#onComplete()},
+     * since we want to ensure that this stream never ends in order to allow listeners to observe this for the app lifetime
+     * </p>
+     * @return an {@link Observable} that will emit an {@link InsertResult} for each batch of this {@link ModelType}
+     */
+    @NonNull
+    Observable<InsertResult<List<ModelType>>> insertAllStream();
+
+    /**
+     * Updates a batch of existing objects of type {@link ModelType} in this table within a single transaction. Listeners
+     * will be notified once for the entire batch
+     *
+     * @param oldModelTypes the old objects that will be replaced
+     * @param newModelTypes the new objects that will take the place of the old ones (at the same indices)
+     * @param databaseOperationMetadata metadata about this particular database operation
+     * @return a hot {@link Single} that will return the updated items or an error if the batch failed
+     */
+    @NonNull
+    Single<List<ModelType>> updateAll(@NonNull List<ModelType> oldModelTypes, @NonNull List<ModelType> newModelTypes, @NonNull DatabaseOperationMetadata databaseOperationMetadata);
+
+    /**
+     * Returns a stream of all batch updates submitted to {@link #updateAll(List, List, DatabaseOperationMetadata)}
+     * <p>
+     * Please note that this will never call {@link Subscriber#onError(Throwable)} or {@link Subscriber#onComplete()},
+     * since we want to ensure that this stream never ends in order to allow listeners to observe this for the app lifetime
+     * </p>
+     * @return an {@link Observable} that will emit an {@link UpdateResult} for each batch of this {@link ModelType}
+     */
+    @NonNull
+    Observable<UpdateResult<List<ModelType>>> updateAllStream();
+
+    /**
+     * Removes a batch of existing objects of type {@link ModelType} from this table within a single transaction. Listeners
+     * will be notified once for the entire batch
+     *
+     * @param modelTypes the objects to remove
+     * @param databaseOperationMetadata metadata about this particular database operation
+     * @return a hot {@link Single} that will return the deleted items or an error if the batch failed
+     */
+    @NonNull
+    Single<List<ModelType>> deleteAll(@NonNull List<ModelType> modelTypes, @NonNull DatabaseOperationMetadata databaseOperationMetadata);
+
+    /**
+     * Returns a stream of all batch deletions submitted to {@link #deleteAll(List, DatabaseOperationMetadata)}
+     * <p>
+     * Please note that this will never call {@link Subscriber#onError(Throwable)} or {@link Subscriber#onComplete()},
+     * since we want to ensure that this stream never ends in order to allow listeners to observe this for the app lifetime
+     * </p>
+     * @return an {@link Observable} that will emit a {@link DeleteResult} for each batch of this {@link ModelType}
+     */
+    @NonNull
+    Observable<DeleteResult<List<ModelType>>> deleteAllStream();
+
+    /**
+     * Returns a stream that emits each time that the cache of our underlying table is cleared, which happens after its
+     * rows were written directly (eg when restoring a backup) instead of through this controller. Listeners that
+     * maintain state derived from our table events should rebuild it when this emits
+     * <p>
+     * Please note that this will never call {@link Subscriber#onError(Throwable)} or {@link Subscriber#onComplete()}
+     * </p>
+     * @return an {@link Observable} that emits each time that our table's cache is cleared
+     */
+    @NonNull
+    Observable<Object> cacheClearedStream();
 }
@@ -25,4 +25,55 @@ public interface TableEventsListener<T> {
 
     void onDeleteFailure(@NonNull T t, @Nullable Throwable e, @NonNull DatabaseOperationMetadata databaseOperationMetadata);
 
+    /**
+     * Called once after a batch of items was successfully inserted in a single transaction. By default, this
+     * notifies {@link #onInsertSuccess(Object, DatabaseOperationMetadata)} for each item, but listeners that only need
+     * to react once per change (eg to refresh their data) should override this
+     */
+    default void onInsertAllSuccess(@NonNull List<T> list, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        for (final T t : list) {
+            onInsertSuccess(t, databaseOperationMetadata);
+        }
+    }
+
+    default void onInsertAllFailure(@NonNull List<T> list, @Nullable Throwable e, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        for (final T t : list) {
+            onInsertFailure(t, e, databaseOperationMetadata);
+        }
+    }
+
+    /**
+     * Called once after a batch of items was successfully updated in a single transaction. By default, this
+     * notifies {@link #onUpdateSuccess(Object, Object, DatabaseOperationMetadata)} for each pair of items, but listeners
+     * that only need to react once per change (eg to refresh their data) should override this
+     */
+    default void onUpdateAllSuccess(@NonNull List<T> oldList, @NonNull List<T> newList, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        for (int i = 0; i < oldList.size(); i++) {
+            onUpdateSuccess(oldList.get(i), newList.get(i), databaseOperationMetadata);
+        }
+    }
+
+    default void onUpdateAllFailure(@NonNull List<T> oldList, @Nullable Throwable e, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        for (final T oldT : oldList) {
+            onUpdateFailure(oldT, e, databaseOperationMetadata);
+        }
+    }
+
+    /**
+     * Called once after a batch of items was successfully deleted in a single transaction. By default, this
+     * notifies {@link #onDeleteSuccess(Object, DatabaseOperationMetadata)} for each item, but listeners that only need
+     * to react once per change (eg to refresh their data) should override this
+     */
+    default void onDeleteAllSuccess(@NonNull List<T> list, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        for (final T t : list) {
+            onDeleteSuccess(t, databaseOperationMetadata);
+        }
+    }
+
+    default void onDeleteAllFailure(@NonNull List<T> list, @Nullable Throwable e, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        for (final T t : list) {
+            onDeleteFailure(t, e, databaseOperationMetadata);
+        }
+    }
+
 }
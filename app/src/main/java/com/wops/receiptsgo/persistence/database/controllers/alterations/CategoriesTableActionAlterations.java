@@ -21,7 +21,10 @@ public class CategoriesTableActionAlterations extends StubTableActionAlterations
     @Override
     public Single<Category> postUpdate(@NonNull Category oldCategory, @Nullable Category newCategory) {
         return super.postUpdate(oldCategory, newCategory)
-                .doOnSuccess(ignored -> receiptsTable.clearCache());
+                .doOnSuccess(updatedCategory -> {
+                    receiptsTable.reindexCategoryBlocking(updatedCategory);
+                    receiptsTable.clearCache();
+                });
     }
 
     @NonNull
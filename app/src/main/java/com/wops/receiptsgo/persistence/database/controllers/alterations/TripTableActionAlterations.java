@@ -8,6 +8,7 @@ import com.google.common.base.Preconditions;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.wops.receiptsgo.date.DateUtils;
 import com.wops.receiptsgo.model.Trip;
@@ -27,11 +28,18 @@ import wb.android.storage.StorageManager;
 
 public class TripTableActionAlterations extends StubTableActionAlterations<Trip> {
 
+    /**
+     * Our trip prices are derived from running totals, which are kept up to date incrementally. As a safeguard against
+     * these drifting, we verify them against a full re-calculation on the first trip load and every Nth one after it
+     */
+    private static final int PRICE_TOTALS_VERIFICATION_INTERVAL = 25;
+
     private final Table<Trip> mTripsTable;
     private final ReceiptsTable mReceiptsTable;
     private final DistanceTable mDistanceTable;
     private final DatabaseHelper mDatabaseHelper;
     private final StorageManager mStorageManager;
+    private final AtomicInteger mPostGetCount = new AtomicInteger();
 
     public TripTableActionAlterations(@NonNull PersistenceManager persistenceManager) {
         this(Preconditions.checkNotNull(persistenceManager).getDatabase(), Preconditions.checkNotNull(persistenceManager).getStorageManager());
@@ -53,9 +61,16 @@ public class TripTableActionAlterations extends StubTableActionAlterations<Trip>
     @NonNull
     @Override
     public Single<List<Trip>> postGet(@NonNull final List<Trip> trips) {
+        final boolean verifyPriceTotals = mPostGetCount.getAndIncrement() % PRICE_TOTALS_VERIFICATION_INTERVAL == 0;
         return Observable.just(trips)
                 .flatMapIterable(trips1 -> trips1)
-                .doOnNext(mDatabaseHelper::getTripPriceAndDailyPrice)
+                .doOnNext(trip -> {
+                    if (verifyPriceTotals) {
+                        mDatabaseHelper.verifyTripPriceAndDailyPrice(trip);
+                    } else {
+                        mDatabaseHelper.getTripPriceAndDailyPrice(trip);
+                    }
+                })
                 .toList();
     }
 
@@ -2,24 +2,32 @@ package com.wops.receiptsgo.persistence.database.controllers.grouping;
 
 import android.content.Context;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
 import com.github.mikephil.charting.data.Entry;
+import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.hadisatrio.optional.Optional;
 
 import org.joda.money.CurrencyUnit;
 
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
 
 import javax.inject.Inject;
 
 import com.wops.receiptsgo.R;
 import com.wops.receiptsgo.graphs.entry.LabeledGraphEntry;
+import com.wops.receiptsgo.model.Category;
 import com.wops.receiptsgo.model.PaymentMethod;
 import com.wops.receiptsgo.model.Price;
 import com.wops.receiptsgo.model.Receipt;
 import com.wops.receiptsgo.model.Trip;
+import com.wops.receiptsgo.model.factory.CategoryBuilderFactory;
 import com.wops.receiptsgo.model.factory.PriceBuilderFactory;
 import com.wops.receiptsgo.model.impl.MultiplePriceImpl;
 import com.wops.receiptsgo.persistence.DatabaseHelper;
@@ -41,93 +49,120 @@ public class GroupingController {
     private final DatabaseHelper databaseHelper;
     private final Context context;
     private final UserPreferenceManager preferenceManager;
+    private final GroupingQueryEngine queryEngine;
 
     @Inject
     public GroupingController(DatabaseHelper databaseHelper, Context context, UserPreferenceManager preferenceManager) {
+        this(databaseHelper, context, preferenceManager, new GroupingQueryEngine(databaseHelper));
+    }
+
+    @VisibleForTesting
+    GroupingController(DatabaseHelper databaseHelper, Context context, UserPreferenceManager preferenceManager,
+                       GroupingQueryEngine queryEngine) {
         this.databaseHelper = databaseHelper;
         this.context = context;
         this.preferenceManager = preferenceManager;
+        this.queryEngine = queryEngine;
     }
 
     public Observable<CategoryGroupingResult> getReceiptsGroupedByCategory(Trip trip) {
+        return groupByCategory(getReceiptsStream(trip));
+    }
 
-        return getReceiptsStream(trip)
-                .filter(receipt -> !preferenceManager.get(UserPreference.Receipts.OnlyIncludeReimbursable) || receipt.isReimbursable())
-                .groupBy(Receipt::getCategory)
-                .flatMap(categoryReceiptGroupedObservable -> categoryReceiptGroupedObservable
-                        .toList()
-                        .map(receipts -> new CategoryGroupingResult(categoryReceiptGroupedObservable.getKey(), receipts))
-                        .toObservable());
+    /**
+     * Groups an already loaded list of receipts by their category, allowing callers that already hold the receipts
+     * for a trip to avoid re-querying them
+     *
+     * @param receipts the {@link List} of {@link Receipt}s to group
+     * @return an {@link Observable} of {@link CategoryGroupingResult}s
+     */
+    public Observable<CategoryGroupingResult> getReceiptsGroupedByCategory(List<Receipt> receipts) {
+        return groupByCategory(Observable.fromIterable(receipts));
     }
 
     public Observable<SumCategoryGroupingResult> getSummationByCategory(Trip trip) {
-        return getReceiptsGroupedByCategory(trip)
-                .map(categoryGroupingResult -> {
-                    List<Price> prices = new ArrayList<>();
-                    List<Price> taxes = new ArrayList<>();
-
-                    for (Receipt receipt : categoryGroupingResult.getReceipts()) {
-                        prices.add(receipt.getPrice());
-                        taxes.add(receipt.getTax());
-                        taxes.add(receipt.getTax2());
-                    }
-
-                    final Price price = new PriceBuilderFactory().setPrices(prices, trip.getTripCurrency()).build();
-                    Preconditions.checkArgument(price instanceof MultiplePriceImpl);
-                    MultiplePriceImpl priceNet = (MultiplePriceImpl) price;
+        return Observable.fromCallable(() -> getSummationByCategoryBlocking(trip))
+                .subscribeOn(Schedulers.io())
+                .flatMapIterable(results -> results);
+    }
 
-                    final Price tax = new PriceBuilderFactory().setPrices(taxes, trip.getTripCurrency()).build();
-                    Preconditions.checkArgument(tax instanceof MultiplePriceImpl);
-                    MultiplePriceImpl taxNet = (MultiplePriceImpl) tax;
+    /**
+     * Sums the prices and taxes of each category in a trip. This grouping is performed in SQLite, so we only ever
+     * read one row per category (and currency) rather than every receipt
+     *
+     * @param trip the {@link Trip} to sum, whose currency we'll sum into
+     * @return a {@link List} of {@link SumCategoryGroupingResult}s
+     */
+    public List<SumCategoryGroupingResult> getSummationByCategoryBlocking(Trip trip) {
+        final Map<Category, List<GroupingQueryEngine.GroupedPrices>> groups =
+                groupByKey(queryEngine.getGroupedPrices(trip, GroupingQueryEngine.GroupBy.Category, isOnlyReimbursable()), this::findCategory);
 
-                    return new SumCategoryGroupingResult(categoryGroupingResult.getCategory(), trip.getTripCurrency(),
-                            priceNet, taxNet, categoryGroupingResult.getReceipts().size());
-                });
+        final List<SumCategoryGroupingResult> results = new ArrayList<>(groups.size());
+        for (final Map.Entry<Category, List<GroupingQueryEngine.GroupedPrices>> entry : groups.entrySet()) {
+            final List<Price> prices = new ArrayList<>();
+            final List<Price> taxes = new ArrayList<>();
+            int receiptsCount = 0;
+            for (final GroupingQueryEngine.GroupedPrices groupedPrices : entry.getValue()) {
+                prices.addAll(groupedPrices.getPrices());
+                taxes.addAll(groupedPrices.getTaxes());
+                receiptsCount += groupedPrices.getReceiptCount();
+            }
+            results.add(new SumCategoryGroupingResult(entry.getKey(), trip.getTripCurrency(),
+                    sum(prices, trip.getTripCurrency()), sum(taxes, trip.getTripCurrency()), receiptsCount));
+        }
+        return results;
     }
 
-    private Observable<SumPaymentMethodGroupingResult> getSummationByPaymentMethod(Trip trip) {
-        return getReceiptsStream(trip)
-                .filter(receipt -> !preferenceManager.get(UserPreference.Receipts.OnlyIncludeReimbursable) || receipt.isReimbursable())
-                .filter(receipt -> !receipt.getPaymentMethod().equals(PaymentMethod.Companion.getNONE())) // thus, we ignore receipts without defined payment method
-                .groupBy(Receipt::getPaymentMethod)
-                .flatMap(paymentMethodReceiptGroupedObservable -> paymentMethodReceiptGroupedObservable
+    private Observable<CategoryGroupingResult> groupByCategory(Observable<Receipt> receiptsStream) {
+        // Note: We read this preference once up front, rather than once per receipt
+        final boolean onlyReimbursable = isOnlyReimbursable();
+        return receiptsStream
+                .filter(receipt -> !onlyReimbursable || receipt.isReimbursable())
+                .groupBy(Receipt::getCategory)
+                .flatMap(categoryReceiptGroupedObservable -> categoryReceiptGroupedObservable
                         .toList()
-                        .map(receipts -> {
-                            Price price = getReceiptsPriceSum(receipts, trip.getTripCurrency());
-                            return new SumPaymentMethodGroupingResult(paymentMethodReceiptGroupedObservable.getKey(), price);
-                        })
+                        .map(receipts -> new CategoryGroupingResult(categoryReceiptGroupedObservable.getKey(), receipts))
                         .toObservable());
     }
 
+    private Observable<SumPaymentMethodGroupingResult> getSummationByPaymentMethod(Trip trip) {
+        return Observable.fromCallable(() -> {
+            final Map<PaymentMethod, List<GroupingQueryEngine.GroupedPrices>> groups =
+                    groupByKey(queryEngine.getGroupedPrices(trip, GroupingQueryEngine.GroupBy.PaymentMethod, isOnlyReimbursable()), this::findPaymentMethod);
+
+            final List<SumPaymentMethodGroupingResult> results = new ArrayList<>(groups.size());
+            for (final Map.Entry<PaymentMethod, List<GroupingQueryEngine.GroupedPrices>> entry : groups.entrySet()) {
+                // Note: We ignore receipts without a defined payment method
+                if (!entry.getKey().equals(PaymentMethod.Companion.getNONE())) {
+                    results.add(new SumPaymentMethodGroupingResult(entry.getKey(), sumPrices(entry.getValue(), trip.getTripCurrency())));
+                }
+            }
+            return results;
+        })
+                .subscribeOn(Schedulers.io())
+                .flatMapIterable(results -> results);
+    }
+
     private Observable<SumReimbursementGroupingResult> getSummationByReimbursement(Trip trip) {
-        return getReceiptsStream(trip)
-                .groupBy(Receipt::isReimbursable)
-                .flatMap(booleanReceiptGroupedObservable -> booleanReceiptGroupedObservable
-                        .toList()
-                        .map(receipts -> {
-                            Price price = getReceiptsPriceSum(receipts, trip.getTripCurrency());
-                            return new SumReimbursementGroupingResult(booleanReceiptGroupedObservable.getKey(), price);
-                        })
-                        .toObservable())
+        return Observable.fromCallable(() -> {
+            final List<SumReimbursementGroupingResult> results = new ArrayList<>();
+            for (final GroupingQueryEngine.GroupedPrices groupedPrices : queryEngine.getGroupedPrices(trip, GroupingQueryEngine.GroupBy.Reimbursement, false)) {
+                results.add(new SumReimbursementGroupingResult(groupedPrices.getKey() > 0,
+                        sumPrices(Collections.singletonList(groupedPrices), trip.getTripCurrency())));
+            }
+            return results;
+        })
+                .subscribeOn(Schedulers.io())
+                .flatMapIterable(results -> results)
                 .sorted((o1, o2) -> Boolean.compare(o1.isReimbursable(), o2.isReimbursable())); // non-reimbursable must be the first
     }
 
     public Single<List<Entry>> getSummationByDateAsGraphEntries(Trip trip) {
-        return getReceiptsStream(trip)
-                .filter(receipt -> !preferenceManager.get(UserPreference.Receipts.OnlyIncludeReimbursable) || receipt.isReimbursable())
-                .groupBy(receipt -> {
-                    Calendar calendar = Calendar.getInstance();
-                    calendar.setTime(receipt.getDate());
-                    calendar.setTimeZone(receipt.getTimeZone());
-                    return (int) TimeUnit.MILLISECONDS.toDays(calendar.getTimeInMillis());
-                })
-                .flatMap(dateReceiptGroupedObservable -> dateReceiptGroupedObservable
-                        .toList()
-                        .map(receipts -> {
-                            Price price = getReceiptsPriceSum(receipts, trip.getTripCurrency());
-                            return new SumDateResult(dateReceiptGroupedObservable.getKey(), price);
-                        })
-                        .toObservable())
+        return Observable.fromCallable(() -> queryEngine.getGroupedPrices(trip, GroupingQueryEngine.GroupBy.Day, isOnlyReimbursable()))
+                .subscribeOn(Schedulers.io())
+                .flatMapIterable(groups -> groups)
+                .map(groupedPrices -> new SumDateResult((int) groupedPrices.getKey(),
+                        sumPrices(Collections.singletonList(groupedPrices), trip.getTripCurrency())))
                 .sorted((o1, o2) -> Integer.compare(o1.getDay(), o2.getDay()))
                 .map(sumDateResult -> new Entry(sumDateResult.getDay(), sumDateResult.getPrice().getPriceAsFloat()))
                 .toList();
@@ -169,11 +204,65 @@ public class GroupingController {
                 .flatMapIterable(receipts -> receipts);
     }
 
-    private Price getReceiptsPriceSum(List<Receipt> receipts, CurrencyUnit desiredCurrency) {
+    private boolean isOnlyReimbursable() {
+        return preferenceManager.get(UserPreference.Receipts.OnlyIncludeReimbursable);
+    }
+
+    @NonNull
+    private Category findCategory(long categoryId) {
+        // Note: Receipts without a (valid) category are treated as having the default one, as they are when loaded
+        final Category category = databaseHelper.getCategoriesTable().findByPrimaryKey((int) categoryId)
+                .map(Optional::of)
+                .onErrorReturn(ignored -> Optional.absent())
+                .blockingGet()
+                .orNull();
+        return category != null ? category : new CategoryBuilderFactory().build();
+    }
+
+    @NonNull
+    private PaymentMethod findPaymentMethod(long paymentMethodId) {
+        final PaymentMethod paymentMethod = databaseHelper.getPaymentMethodsTable().findByPrimaryKey((int) paymentMethodId)
+                .map(Optional::of)
+                .onErrorReturn(ignored -> Optional.absent())
+                .blockingGet()
+                .orNull();
+        return paymentMethod != null ? paymentMethod : PaymentMethod.Companion.getNONE();
+    }
+
+    /**
+     * Multiple raw keys may resolve to the same model object (e.g. receipts with a deleted category), so we merge these
+     * groups together, whilst preserving the order in which they first appear
+     */
+    @NonNull
+    private static <K> Map<K, List<GroupingQueryEngine.GroupedPrices>> groupByKey(@NonNull List<GroupingQueryEngine.GroupedPrices> groups,
+                                                                                  @NonNull Function<Long, K> keyResolver) {
+        final Map<K, List<GroupingQueryEngine.GroupedPrices>> results = new LinkedHashMap<>();
+        for (final GroupingQueryEngine.GroupedPrices group : groups) {
+            final K key = keyResolver.apply(group.getKey());
+            List<GroupingQueryEngine.GroupedPrices> keyGroups = results.get(key);
+            if (keyGroups == null) {
+                keyGroups = new ArrayList<>();
+                results.put(key, keyGroups);
+            }
+            keyGroups.add(group);
+        }
+        return results;
+    }
+
+    @NonNull
+    private static Price sumPrices(@NonNull List<GroupingQueryEngine.GroupedPrices> groups, @NonNull CurrencyUnit desiredCurrency) {
+        final List<Price> prices = new ArrayList<>();
+        for (final GroupingQueryEngine.GroupedPrices group : groups) {
+            prices.addAll(group.getPrices());
+        }
+        return sum(prices, desiredCurrency);
+    }
 
-        return new PriceBuilderFactory()
-                .setPriceables(receipts, desiredCurrency)
-                .build();
+    @NonNull
+    private static MultiplePriceImpl sum(@NonNull List<Price> prices, @NonNull CurrencyUnit desiredCurrency) {
+        final Price price = new PriceBuilderFactory().setPrices(prices, desiredCurrency).build();
+        Preconditions.checkArgument(price instanceof MultiplePriceImpl);
+        return (MultiplePriceImpl) price;
     }
 
 }
@@ -0,0 +1,204 @@
+package com.wops.receiptsgo.persistence.database.controllers.grouping;
+
+import android.database.Cursor;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+
+import com.google.common.base.Preconditions;
+
+import org.joda.money.CurrencyUnit;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.wops.receiptsgo.model.ExchangeRate;
+import com.wops.receiptsgo.model.Price;
+import com.wops.receiptsgo.model.Trip;
+import com.wops.receiptsgo.model.factory.ExchangeRateBuilderFactory;
+import com.wops.receiptsgo.model.impl.SinglePriceImpl;
+import com.wops.receiptsgo.model.utils.CurrencyUtils;
+import com.wops.receiptsgo.persistence.DatabaseHelper;
+import com.wops.receiptsgo.persistence.database.tables.ReceiptsTable;
+
+/**
+ * Pushes the grouping and summation of a trip's receipts down into SQLite, so we only ever read one row per group (and
+ * per distinct currency/exchange rate within each group) instead of loading and hydrating every receipt in the trip.
+ * <p>
+ * Each group is returned as a list of per-currency {@link Price}s (with the exchange rate of that currency), which
+ * callers may then total into their trip currency. As a result, exchange rates are only applied to the grouped rows.
+ * </p>
+ * <p>
+ * Please note that SQLite sums our prices as doubles. As our prices are stored with the precision of their currency,
+ * we round each sum back to this precision, which matches the sum of the individual receipts.
+ * </p>
+ */
+public class GroupingQueryEngine {
+
+    /**
+     * The different columns that we can group our receipts by
+     */
+    public enum GroupBy {
+        Category(ReceiptsTable.COLUMN_CATEGORY_ID),
+        PaymentMethod(ReceiptsTable.COLUMN_PAYMENT_METHOD_ID),
+        Reimbursement("CASE WHEN " + ReceiptsTable.COLUMN_REIMBURSABLE + " > 0 THEN 1 ELSE 0 END"),
+        Day(ReceiptsTable.COLUMN_DATE + " / " + TimeUnit.DAYS.toMillis(1));
+
+        private final String expression;
+
+        GroupBy(@NonNull String expression) {
+            this.expression = expression;
+        }
+    }
+
+    private static final String KEY = "group_key";
+    private static final String PRICE_SUM = "price_sum";
+    private static final String TAX_SUM = "tax_sum";
+    private static final String TAX2_SUM = "tax2_sum";
+    private static final String RECEIPT_COUNT = "receipt_count";
+
+    private final DatabaseHelper databaseHelper;
+
+    public GroupingQueryEngine(@NonNull DatabaseHelper databaseHelper) {
+        this.databaseHelper = Preconditions.checkNotNull(databaseHelper);
+    }
+
+    /**
+     * Groups and sums the receipts of a particular trip. Groups are returned in the order in which they first appear
+     * in our (descending) list of receipts
+     *
+     * @param trip             the {@link Trip} whose receipts we should group
+     * @param groupBy          the {@link GroupBy} column
+     * @param onlyReimbursable {@code true} if we should only include reimbursable receipts
+     * @return a {@link List} of {@link GroupedPrices}, one per distinct value of the {@link GroupBy} column
+     */
+    @NonNull
+    public List<GroupedPrices> getGroupedPrices(@NonNull Trip trip, @NonNull GroupBy groupBy, boolean onlyReimbursable) {
+        final String sql = "SELECT " + groupBy.expression + " AS " + KEY + ", "
+                + ReceiptsTable.COLUMN_ISO4217 + ", "
+                + ReceiptsTable.COLUMN_EXCHANGE_RATE + ", "
+                + sum(ReceiptsTable.COLUMN_PRICE) + " AS " + PRICE_SUM + ", "
+                + sum(ReceiptsTable.COLUMN_TAX) + " AS " + TAX_SUM + ", "
+                + sum(ReceiptsTable.COLUMN_TAX2) + " AS " + TAX2_SUM + ", "
+                + "COUNT(*) AS " + RECEIPT_COUNT
+                + " FROM " + ReceiptsTable.TABLE_NAME
+                + " WHERE " + ReceiptsTable.COLUMN_PARENT_TRIP_ID + " = ?"
+                + " AND " + ReceiptsTable.COLUMN_DRIVE_MARKED_FOR_DELETION + " = 0"
+                + (onlyReimbursable ? " AND " + ReceiptsTable.COLUMN_REIMBURSABLE + " > 0" : "")
+                + " GROUP BY " + KEY + ", " + ReceiptsTable.COLUMN_ISO4217 + ", " + ReceiptsTable.COLUMN_EXCHANGE_RATE
+                + " ORDER BY MAX(" + ReceiptsTable.COLUMN_CUSTOM_ORDER_ID + ") DESC, MAX(" + ReceiptsTable.COLUMN_DATE + ") DESC";
+
+        final Map<Long, GroupedPrices> groups = new LinkedHashMap<>();
+        try (Cursor cursor = databaseHelper.getReceiptsTable().getReadableDatabase().rawQuery(sql, new String[]{Integer.toString(trip.getId())})) {
+            if (cursor != null && cursor.moveToFirst()) {
+                final int keyIndex = cursor.getColumnIndex(KEY);
+                final int currencyIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_ISO4217);
+                final int exchangeRateIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_EXCHANGE_RATE);
+                final int priceIndex = cursor.getColumnIndex(PRICE_SUM);
+                final int taxIndex = cursor.getColumnIndex(TAX_SUM);
+                final int tax2Index = cursor.getColumnIndex(TAX2_SUM);
+                final int countIndex = cursor.getColumnIndex(RECEIPT_COUNT);
+                do {
+                    final long key = cursor.getLong(keyIndex);
+                    GroupedPrices group = groups.get(key);
+                    if (group == null) {
+                        group = new GroupedPrices(key);
+                        groups.put(key, group);
+                    }
+
+                    final String currencyCode = cursor.getString(currencyIndex);
+                    final CurrencyUnit currency = CurrencyUtils.INSTANCE.isCurrencySupported(currencyCode) ?
+                            CurrencyUnit.of(currencyCode) : CurrencyUtils.INSTANCE.getDefaultCurrency();
+                    final ExchangeRate exchangeRate = readExchangeRate(cursor, exchangeRateIndex, currencyCode, trip);
+
+                    group.prices.add(new SinglePriceImpl(readSum(cursor, priceIndex, currency), currency, exchangeRate));
+                    group.taxes.add(new SinglePriceImpl(readSum(cursor, taxIndex, currency), currency, exchangeRate));
+                    group.taxes.add(new SinglePriceImpl(readSum(cursor, tax2Index, currency), currency, exchangeRate));
+                    group.receiptCount += cursor.getInt(countIndex);
+                }
+                while (cursor.moveToNext());
+            }
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    /**
+     * Older versions of the app may have stored decimal values with a comma separator, so we swap these before summing
+     */
+    @NonNull
+    private static String sum(@NonNull String column) {
+        return "SUM(CAST(REPLACE(" + column + ", ',', '.') AS REAL))";
+    }
+
+    /**
+     * Rounds a summed column back to the precision of its currency, which drops any floating point error from SQLite
+     * (e.g. 0.1 + 0.2 = 0.30000000000000004)
+     */
+    @NonNull
+    private static BigDecimal readSum(@NonNull Cursor cursor, int index, @NonNull CurrencyUnit currency) {
+        final BigDecimal sum = BigDecimal.valueOf(cursor.getDouble(index));
+        // Note: Pseudo-currencies (e.g. XAU) have no decimal places (ie -1), so we leave these as is
+        return currency.getDecimalPlaces() >= 0 ? sum.setScale(currency.getDecimalPlaces(), RoundingMode.HALF_EVEN) : sum;
+    }
+
+    @NonNull
+    private static ExchangeRate readExchangeRate(@NonNull Cursor cursor, int exchangeRateIndex, @NonNull String currencyCode, @NonNull Trip trip) {
+        // Note: This mirrors how the ReceiptDatabaseAdapter reads the exchange rate for each receipt
+        final String exchangeRateString = cursor.getString(exchangeRateIndex);
+        final ExchangeRateBuilderFactory exchangeRateBuilder = new ExchangeRateBuilderFactory().setBaseCurrency(currencyCode);
+        if (!TextUtils.isEmpty(exchangeRateString) && exchangeRateString.contains(",")) {
+            exchangeRateBuilder.setRate(trip.getTripCurrency(), exchangeRateString);
+        } else {
+            exchangeRateBuilder.setRate(trip.getTripCurrency(), cursor.getDouble(exchangeRateIndex));
+        }
+        return exchangeRateBuilder.build();
+    }
+
+    /**
+     * The summed prices and taxes of a single group of receipts
+     */
+    public static final class GroupedPrices {
+
+        private final long key;
+        private final List<Price> prices = new ArrayList<>();
+        private final List<Price> taxes = new ArrayList<>();
+        private int receiptCount = 0;
+
+        GroupedPrices(long key) {
+            this.key = key;
+        }
+
+        /**
+         * @return the value of the {@link GroupBy} column for this group (e.g. the category id)
+         */
+        public long getKey() {
+            return key;
+        }
+
+        /**
+         * @return the summed prices in this group, with one {@link Price} per distinct currency and exchange rate
+         */
+        @NonNull
+        public List<Price> getPrices() {
+            return Collections.unmodifiableList(prices);
+        }
+
+        /**
+         * @return the summed taxes (including both tax fields) in this group
+         */
+        @NonNull
+        public List<Price> getTaxes() {
+            return Collections.unmodifiableList(taxes);
+        }
+
+        public int getReceiptCount() {
+            return receiptCount;
+        }
+    }
+}
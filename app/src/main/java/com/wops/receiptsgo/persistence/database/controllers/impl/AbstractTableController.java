@@ -61,6 +61,9 @@ abstract class AbstractTableController<ModelType extends Keyed & Syncable> imple
     private final Subject<InsertResult<ModelType>> insertStreamSubject = PublishSubject.<InsertResult<ModelType>>create().toSerialized();
     private final Subject<UpdateResult<ModelType>> updateStreamSubject = PublishSubject.<UpdateResult<ModelType>>create().toSerialized();
     private final Subject<DeleteResult<ModelType>> deleteStreamSubject = PublishSubject.<DeleteResult<ModelType>>create().toSerialized();
+    private final Subject<InsertResult<List<ModelType>>> insertAllStreamSubject = PublishSubject.<InsertResult<List<ModelType>>>create().toSerialized();
+    private final Subject<UpdateResult<List<ModelType>>> updateAllStreamSubject = PublishSubject.<UpdateResult<List<ModelType>>>create().toSerialized();
+    private final Subject<DeleteResult<List<ModelType>>> deleteAllStreamSubject = PublishSubject.<DeleteResult<List<ModelType>>>create().toSerialized();
 
     protected CompositeDisposable compositeDisposable = new CompositeDisposable();
 
@@ -230,6 +233,119 @@ abstract class AbstractTableController<ModelType extends Keyed & Syncable> imple
         return deleteStreamSubject;
     }
 
+    @NonNull
+    @Override
+    public Single<List<ModelType>> insertAll(@NonNull final List<ModelType> modelTypes, @NonNull final DatabaseOperationMetadata databaseOperationMetadata) {
+        Logger.info(this, "#insertAll: {} items", modelTypes.size());
+
+        final SingleSubject<List<ModelType>> insertAllSubject = SingleSubject.create();
+
+        Observable.fromIterable(modelTypes)
+                .concatMapSingle(mTableActionAlterations::preInsert)
+                .toList()
+                .subscribeOn(mSubscribeOnScheduler)
+                .flatMap(insertedItems -> mTable.insertAll(insertedItems, databaseOperationMetadata))
+                .flatMap(insertedItems -> Observable.fromIterable(insertedItems)
+                        .concatMapSingle(mTableActionAlterations::postInsert)
+                        .toList())
+                .doOnSuccess(insertedItems -> {
+                    Logger.debug(AbstractTableController.this, "#onInsertAllSuccess - onNext");
+                    insertAllStreamSubject.onNext(new InsertResult<>(insertedItems, databaseOperationMetadata));
+                })
+                .doOnError(throwable -> {
+                    Logger.error(AbstractTableController.this, "#onInsertAllFailure - onError", throwable);
+                    mAnalytics.record(new ErrorEvent(AbstractTableController.this, throwable));
+                    insertAllStreamSubject.onNext(new InsertResult<>(modelTypes, throwable, databaseOperationMetadata));
+                })
+                .subscribe(insertAllSubject);
+
+        return insertAllSubject;
+    }
+
+    @NonNull
+    @Override
+    public Observable<InsertResult<List<ModelType>>> insertAllStream() {
+        return insertAllStreamSubject;
+    }
+
+    @NonNull
+    @Override
+    public Single<List<ModelType>> updateAll(@NonNull final List<ModelType> oldModelTypes, @NonNull final List<ModelType> newModelTypes,
+                                             @NonNull final DatabaseOperationMetadata databaseOperationMetadata) {
+        Preconditions.checkArgument(oldModelTypes.size() == newModelTypes.size(), "Each old item must be paired with a new item");
+        Logger.info(this, "#updateAll: {} items", oldModelTypes.size());
+
+        final SingleSubject<List<ModelType>> updateAllSubject = SingleSubject.create();
+
+        Observable.range(0, oldModelTypes.size())
+                .concatMapSingle(index -> mTableActionAlterations.preUpdate(oldModelTypes.get(index), newModelTypes.get(index)))
+                .toList()
+                .subscribeOn(mSubscribeOnScheduler)
+                .flatMap(updatedItems -> mTable.updateAll(oldModelTypes, updatedItems, databaseOperationMetadata))
+                .flatMap(updatedItems -> Observable.range(0, updatedItems.size())
+                        .concatMapSingle(index -> mTableActionAlterations.postUpdate(oldModelTypes.get(index), updatedItems.get(index)))
+                        .toList())
+                .doOnSuccess(updatedItems -> {
+                    Logger.debug(AbstractTableController.this, "#onUpdateAllSuccess - onNext");
+                    updateAllStreamSubject.onNext(new UpdateResult<>(oldModelTypes, updatedItems, databaseOperationMetadata));
+                })
+                .doOnError(throwable -> {
+                    Logger.error(AbstractTableController.this, "#onUpdateAllFailure - onError", throwable);
+                    mAnalytics.record(new ErrorEvent(AbstractTableController.this, throwable));
+                    updateAllStreamSubject.onNext(new UpdateResult<>(oldModelTypes, null, throwable, databaseOperationMetadata));
+                })
+                .subscribe(updateAllSubject);
+
+        return updateAllSubject;
+    }
+
+    @NonNull
+    @Override
+    public Observable<UpdateResult<List<ModelType>>> updateAllStream() {
+        return updateAllStreamSubject;
+    }
+
+    @NonNull
+    @Override
+    public Single<List<ModelType>> deleteAll(@NonNull final List<ModelType> modelTypes, @NonNull final DatabaseOperationMetadata databaseOperationMetadata) {
+        Logger.info(this, "#deleteAll: {} items", modelTypes.size());
+
+        final SingleSubject<List<ModelType>> deleteAllSubject = SingleSubject.create();
+
+        Observable.fromIterable(modelTypes)
+                .concatMapSingle(mTableActionAlterations::preDelete)
+                .toList()
+                .subscribeOn(mSubscribeOnScheduler)
+                .flatMap(deletedItems -> mTable.deleteAll(deletedItems, databaseOperationMetadata))
+                .flatMap(deletedItems -> Observable.fromIterable(deletedItems)
+                        .concatMapSingle(mTableActionAlterations::postDelete)
+                        .toList())
+                .doOnSuccess(deletedItems -> {
+                    Logger.debug(AbstractTableController.this, "#onDeleteAllSuccess - onNext");
+                    deleteAllStreamSubject.onNext(new DeleteResult<>(deletedItems, databaseOperationMetadata));
+                })
+                .doOnError(throwable -> {
+                    Logger.error(AbstractTableController.this, "#onDeleteAllFailure - onError", throwable);
+                    mAnalytics.record(new ErrorEvent(AbstractTableController.this, throwable));
+                    deleteAllStreamSubject.onNext(new DeleteResult<>(modelTypes, throwable, databaseOperationMetadata));
+                })
+                .subscribe(deleteAllSubject);
+
+        return deleteAllSubject;
+    }
+
+    @NonNull
+    @Override
+    public Observable<DeleteResult<List<ModelType>>> deleteAllStream() {
+        return deleteAllStreamSubject;
+    }
+
+    @NonNull
+    @Override
+    public Observable<Object> cacheClearedStream() {
+        return mTable.cacheClearedStream();
+    }
+
     protected void unsubscribeReference(@NonNull AtomicReference<Disposable> disposableReference) {
         final Disposable disposable = disposableReference.get();
         if (disposable != null && !disposable.isDisposed()) {
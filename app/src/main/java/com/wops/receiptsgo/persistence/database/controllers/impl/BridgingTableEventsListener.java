@@ -76,6 +76,41 @@ public class BridgingTableEventsListener<ModelType> {
                         listener.onDeleteFailure(modelTypeDeleteResult.get(), modelTypeDeleteResult.getThrowable(), modelTypeDeleteResult.getDatabaseOperationMetadata());
                     }
                 }));
+
+        compositeDisposable.add(this.tableController.insertAllStream()
+                .observeOn(observeOnScheduler)
+                .subscribe(modelTypesInsertResult -> {
+                    if (modelTypesInsertResult.getThrowable() == null) {
+                        if (modelTypesInsertResult.getDatabaseOperationMetadata().getOperationFamilyType() != OperationFamilyType.Silent) {
+                            listener.onInsertAllSuccess(modelTypesInsertResult.get(), modelTypesInsertResult.getDatabaseOperationMetadata());
+                        }
+                    } else {
+                        listener.onInsertAllFailure(modelTypesInsertResult.get(), modelTypesInsertResult.getThrowable(), modelTypesInsertResult.getDatabaseOperationMetadata());
+                    }
+                }));
+
+        compositeDisposable.add(this.tableController.updateAllStream()
+                .observeOn(observeOnScheduler)
+                .subscribe(modelTypesUpdateResult -> {
+                    if (modelTypesUpdateResult.getThrowable() == null) {
+                        if (modelTypesUpdateResult.getDatabaseOperationMetadata().getOperationFamilyType() != OperationFamilyType.Silent) {
+                            //noinspection ConstantConditions
+                            listener.onUpdateAllSuccess(modelTypesUpdateResult.getOld(), modelTypesUpdateResult.getNew(), modelTypesUpdateResult.getDatabaseOperationMetadata());
+                        }
+                    } else {
+                        listener.onUpdateAllFailure(modelTypesUpdateResult.getOld(), modelTypesUpdateResult.getThrowable(), modelTypesUpdateResult.getDatabaseOperationMetadata());
+                    }
+                }));
+
+        compositeDisposable.add(this.tableController.deleteAllStream()
+                .observeOn(observeOnScheduler)
+                .subscribe(modelTypesDeleteResult -> {
+                    if (modelTypesDeleteResult.getThrowable() == null) {
+                        listener.onDeleteAllSuccess(modelTypesDeleteResult.get(), modelTypesDeleteResult.getDatabaseOperationMetadata());
+                    } else {
+                        listener.onDeleteAllFailure(modelTypesDeleteResult.get(), modelTypesDeleteResult.getThrowable(), modelTypesDeleteResult.getDatabaseOperationMetadata());
+                    }
+                }));
     }
 
     @CallSuper
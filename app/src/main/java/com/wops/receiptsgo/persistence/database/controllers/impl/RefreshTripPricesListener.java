@@ -72,4 +72,26 @@ class RefreshTripPricesListener<ModelType> implements TableEventsListener<ModelT
     public void onDeleteFailure(@NonNull ModelType modelType, @Nullable Throwable e, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
 
     }
+
+    @Override
+    public void onInsertAllSuccess(@NonNull List<ModelType> list, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        // Note: We only need to refresh our prices once for the entire batch
+        if (databaseOperationMetadata.getOperationFamilyType() != OperationFamilyType.Sync) {
+            mTripTableController.get();
+        }
+    }
+
+    @Override
+    public void onUpdateAllSuccess(@NonNull List<ModelType> oldList, @NonNull List<ModelType> newList, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        if (databaseOperationMetadata.getOperationFamilyType() != OperationFamilyType.Sync) {
+            mTripTableController.get();
+        }
+    }
+
+    @Override
+    public void onDeleteAllSuccess(@NonNull List<ModelType> list, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        if (databaseOperationMetadata.getOperationFamilyType() != OperationFamilyType.Sync) {
+            mTripTableController.get();
+        }
+    }
 }
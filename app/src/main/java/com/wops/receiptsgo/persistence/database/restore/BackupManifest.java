@@ -0,0 +1,216 @@
+package com.wops.receiptsgo.persistence.database.restore;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+import com.hadisatrio.optional.Optional;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Describes the complete set of files that were captured by a single incremental backup. Each file is identified by
+ * its path (relative to our storage root) and the SHA-256 hash of its content.
+ * <p>
+ * An incremental backup archive only contains the blobs (ie file contents) that were not already present in its
+ * parent backup, so a manifest alone does not guarantee that all files can be restored. Please refer to
+ * {@link IncrementalBackupChain} for how a full restore is rebuilt from a chain of backups.
+ * </p>
+ */
+public final class BackupManifest {
+
+    /**
+     * The name of the zip entry that contains the manifest json
+     */
+    public static final String FILE_NAME = "backup_manifest.json";
+
+    /**
+     * The prefix of the zip entries that contain the content of each file, which are named by the hash of this content
+     */
+    public static final String BLOB_PREFIX = "blobs/";
+
+    private static final int VERSION = 1;
+
+    private static final String KEY_VERSION = "version";
+    private static final String KEY_ID = "id";
+    private static final String KEY_PARENT_ID = "parent_id";
+    private static final String KEY_CREATED_AT = "created_at";
+    private static final String KEY_CHAIN_LENGTH = "chain_length";
+    private static final String KEY_FILES = "files";
+    private static final String KEY_PATH = "path";
+    private static final String KEY_HASH = "hash";
+    private static final String KEY_SIZE = "size";
+    private static final String KEY_LAST_MODIFIED = "last_modified";
+
+    private final String id;
+    private final String parentId;
+    private final long createdAt;
+    private final int chainLength;
+    private final Map<String, Entry> entries;
+
+    public BackupManifest(@NonNull String id, @Nullable String parentId, long createdAt, int chainLength, @NonNull List<Entry> entries) {
+        Preconditions.checkArgument(chainLength > 0, "The chain length must be positive");
+        this.id = Preconditions.checkNotNull(id);
+        this.parentId = parentId;
+        this.createdAt = createdAt;
+        this.chainLength = chainLength;
+        this.entries = new LinkedHashMap<>();
+        for (final Entry entry : entries) {
+            this.entries.put(entry.getPath(), entry);
+        }
+    }
+
+    /**
+     * @return the unique id of this backup
+     */
+    @NonNull
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the id of the backup that this one was built on top of or {@link Optional#absent()} if this is a full
+     * backup (ie one that contains the content of all files)
+     */
+    @NonNull
+    public Optional<String> getParentId() {
+        return Optional.ofNullable(parentId);
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * @return the number of backups (including this one) that must be present in order to restore this one
+     */
+    public int getChainLength() {
+        return chainLength;
+    }
+
+    @NonNull
+    public Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    @NonNull
+    public Optional<Entry> getEntry(@NonNull String path) {
+        return Optional.ofNullable(entries.get(path));
+    }
+
+    /**
+     * @return the set of all content hashes that are referenced by this manifest
+     */
+    @NonNull
+    public Set<String> getHashes() {
+        final Set<String> hashes = new HashSet<>();
+        for (final Entry entry : entries.values()) {
+            hashes.add(entry.getHash());
+        }
+        return hashes;
+    }
+
+    @NonNull
+    public String toJson() throws JSONException {
+        final JSONArray files = new JSONArray();
+        for (final Entry entry : entries.values()) {
+            final JSONObject file = new JSONObject();
+            file.put(KEY_PATH, entry.getPath());
+            file.put(KEY_HASH, entry.getHash());
+            file.put(KEY_SIZE, entry.getSize());
+            file.put(KEY_LAST_MODIFIED, entry.getLastModified());
+            files.put(file);
+        }
+
+        final JSONObject json = new JSONObject();
+        json.put(KEY_VERSION, VERSION);
+        json.put(KEY_ID, id);
+        if (parentId != null) {
+            json.put(KEY_PARENT_ID, parentId);
+        }
+        json.put(KEY_CREATED_AT, createdAt);
+        json.put(KEY_CHAIN_LENGTH, chainLength);
+        json.put(KEY_FILES, files);
+        return json.toString();
+    }
+
+    @NonNull
+    public static BackupManifest fromJson(@NonNull String jsonString) throws JSONException {
+        final JSONObject json = new JSONObject(jsonString);
+        final int version = json.getInt(KEY_VERSION);
+        if (version > VERSION) {
+            throw new JSONException("Unsupported backup manifest version: " + version);
+        }
+
+        final JSONArray files = json.getJSONArray(KEY_FILES);
+        final List<Entry> entries = new ArrayList<>(files.length());
+        for (int i = 0; i < files.length(); i++) {
+            final JSONObject file = files.getJSONObject(i);
+            entries.add(new Entry(file.getString(KEY_PATH), file.getString(KEY_HASH), file.getLong(KEY_SIZE), file.getLong(KEY_LAST_MODIFIED)));
+        }
+        final String parentId = json.has(KEY_PARENT_ID) ? json.getString(KEY_PARENT_ID) : null;
+        return new BackupManifest(json.getString(KEY_ID), parentId, json.getLong(KEY_CREATED_AT), json.getInt(KEY_CHAIN_LENGTH), entries);
+    }
+
+    /**
+     * @param hash the content hash of a file
+     * @return the name of the zip entry, which contains this content
+     */
+    @NonNull
+    public static String getBlobName(@NonNull String hash) {
+        return BLOB_PREFIX + hash;
+    }
+
+    /**
+     * A single file within a backup
+     */
+    public static final class Entry {
+
+        private final String path;
+        private final String hash;
+        private final long size;
+        private final long lastModified;
+
+        public Entry(@NonNull String path, @NonNull String hash, long size, long lastModified) {
+            this.path = Preconditions.checkNotNull(path);
+            this.hash = Preconditions.checkNotNull(hash);
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * @return the path of this file, relative to our storage root
+         */
+        @NonNull
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return the hex-encoded SHA-256 hash of the content of this file
+         */
+        @NonNull
+        public String getHash() {
+            return hash;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.wops.receiptsgo.persistence.database.restore;
+
+import androidx.annotation.NonNull;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.wops.receiptsgo.model.Keyed;
+import com.wops.receiptsgo.persistence.database.operations.DatabaseOperationMetadata;
+import com.wops.receiptsgo.persistence.database.tables.AbstractSqlTable;
+import com.wops.core.sync.model.Syncable;
+
+/**
+ * Buffers the inserts and updates for a particular table, so these can be written via our batch operations (ie a
+ * single transaction and compiled statement per batch) instead of row-by-row. Callers must call {@link #flush()} once
+ * they are finished in order to write any remaining items.
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ *
+ * @param <ModelType> the model object type that we will write
+ */
+final class BatchedTableWriter<ModelType extends Keyed & Syncable> {
+
+    private final AbstractSqlTable<ModelType> table;
+    private final DatabaseOperationMetadata databaseOperationMetadata;
+    private final int batchSize;
+
+    private final List<ModelType> itemsToInsert = new ArrayList<>();
+    private final List<ModelType> oldItemsToUpdate = new ArrayList<>();
+    private final List<ModelType> newItemsToUpdate = new ArrayList<>();
+
+    private int insertCount = 0;
+    private int updateCount = 0;
+
+    BatchedTableWriter(@NonNull AbstractSqlTable<ModelType> table, @NonNull DatabaseOperationMetadata databaseOperationMetadata, int batchSize) {
+        Preconditions.checkArgument(batchSize > 0, "The batch size must be positive");
+        this.table = Preconditions.checkNotNull(table);
+        this.databaseOperationMetadata = Preconditions.checkNotNull(databaseOperationMetadata);
+        this.batchSize = batchSize;
+    }
+
+    void insert(@NonNull ModelType item) {
+        itemsToInsert.add(item);
+        if (itemsToInsert.size() >= batchSize) {
+            flushInserts();
+        }
+    }
+
+    void update(@NonNull ModelType oldItem, @NonNull ModelType newItem) {
+        oldItemsToUpdate.add(oldItem);
+        newItemsToUpdate.add(newItem);
+        if (oldItemsToUpdate.size() >= batchSize) {
+            flushUpdates();
+        }
+    }
+
+    /**
+     * Writes all buffered items to the table
+     */
+    void flush() {
+        flushInserts();
+        flushUpdates();
+    }
+
+    int getInsertCount() {
+        return insertCount;
+    }
+
+    int getUpdateCount() {
+        return updateCount;
+    }
+
+    private void flushInserts() {
+        if (!itemsToInsert.isEmpty()) {
+            insertCount += table.insertAllBlocking(itemsToInsert, databaseOperationMetadata).size();
+            itemsToInsert.clear();
+        }
+    }
+
+    private void flushUpdates() {
+        if (!oldItemsToUpdate.isEmpty()) {
+            updateCount += table.updateAllBlocking(oldItemsToUpdate, newItemsToUpdate, databaseOperationMetadata).size();
+            oldItemsToUpdate.clear();
+            newItemsToUpdate.clear();
+        }
+    }
+}
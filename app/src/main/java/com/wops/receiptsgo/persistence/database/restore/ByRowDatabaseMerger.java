@@ -2,7 +2,10 @@ package com.wops.receiptsgo.persistence.database.restore;
 
 import androidx.annotation.NonNull;
 
+import com.google.common.base.Function;
+
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -10,6 +13,7 @@ import java.util.Map;
 import com.wops.receiptsgo.model.Category;
 import com.wops.receiptsgo.model.Column;
 import com.wops.receiptsgo.model.Distance;
+import com.wops.receiptsgo.model.Keyed;
 import com.wops.receiptsgo.model.PaymentMethod;
 import com.wops.receiptsgo.model.Receipt;
 import com.wops.receiptsgo.model.Trip;
@@ -18,6 +22,8 @@ import com.wops.receiptsgo.model.factory.ReceiptBuilderFactory;
 import com.wops.receiptsgo.persistence.DatabaseHelper;
 import com.wops.receiptsgo.persistence.database.operations.DatabaseOperationMetadata;
 import com.wops.receiptsgo.persistence.database.operations.OperationFamilyType;
+import com.wops.receiptsgo.persistence.database.tables.AbstractSqlTable;
+import com.wops.core.sync.model.Syncable;
 import com.wops.analytics.log.Logger;
 import io.reactivex.Completable;
 
@@ -27,23 +33,29 @@ import io.reactivex.Completable;
  * database, avoiding conflicts
  * </p>
  * <p>
- * Note: I was lazy and built an O(n^2) import process when comparing old vs new. We should probably
- * change to a Map approach at some point to improve manual import times, but I didn't push for this
- * as imports are relatively rare.
+ * In order to keep large imports fast, we index the existing items of each table by their natural key (or UUID) via
+ * a {@link HashMap}, which allows us to check each imported item for a duplicate in constant time. Imported receipts
+ * and distances are streamed directly from the backup's cursor (rather than being loaded into a list up front), and
+ * all inserts and updates are written in batches.
  * </p>
  */
 public class ByRowDatabaseMerger implements DatabaseMerger {
 
     private static final int DATABASE_VERSION_WITH_UUIDS = 19;
 
+    /**
+     * The number of rows that we write per transaction
+     */
+    private static final int BATCH_SIZE = 250;
+
     @NonNull
     @Override
     public Completable merge(@NonNull DatabaseHelper currentDatabase, @NonNull DatabaseHelper importedBackupDatabase) {
-        // TODO:  31.08.2018 review merging process due to tables changes (new uuid column)
         return Completable.fromAction(() -> {
             Logger.info(ByRowDatabaseMerger.this, "Importing database entries by row, preferring the existing item where appropriate");
 
             final DatabaseOperationMetadata databaseOperationMetadata = new DatabaseOperationMetadata(OperationFamilyType.Import);
+            final boolean hasUuids = importedBackupDatabase.getDatabaseStartingVersion() >= DATABASE_VERSION_WITH_UUIDS;
 
             Logger.info(ByRowDatabaseMerger.this, "Removing all existing pdf entries as we lack a good conflict resolution tool.");
             currentDatabase.getPDFTable().deleteAllTableRowsBlocking();
@@ -53,166 +65,164 @@ public class ByRowDatabaseMerger implements DatabaseMerger {
 
             final List<Column<Receipt>> pdfColumns = importedBackupDatabase.getPDFTable().getBlocking();
             Logger.info(ByRowDatabaseMerger.this, "Importing {} pdf column entries", pdfColumns.size());
-            for (final Column<Receipt> pdfColumn : pdfColumns) {
-                currentDatabase.getPDFTable().insertBlocking(pdfColumn, databaseOperationMetadata);
-            }
-            
+            currentDatabase.getPDFTable().insertAllBlocking(pdfColumns, databaseOperationMetadata);
+
             final List<Column<Receipt>> csvColumns = importedBackupDatabase.getCSVTable().getBlocking();
             Logger.info(ByRowDatabaseMerger.this, "Importing {} csv column entries", csvColumns.size());
-            for (final Column<Receipt> csvColumn : csvColumns) {
-                currentDatabase.getCSVTable().insertBlocking(csvColumn, databaseOperationMetadata);
-            }
+            currentDatabase.getCSVTable().insertAllBlocking(csvColumns, databaseOperationMetadata);
 
             // Note: This attempts to map an "imported" payment method to a current one in the case in which an import is not required (ie a match)
-            final Map<PaymentMethod, PaymentMethod> paymentMethodMap = new HashMap<>();
-            final List<PaymentMethod> existingPaymentMethods = new ArrayList<>(currentDatabase.getPaymentMethodsTable().getBlocking());
-            final List<PaymentMethod> importedPaymentMethods = new ArrayList<>(importedBackupDatabase.getPaymentMethodsTable().getBlocking());
-            Logger.info(ByRowDatabaseMerger.this, "Importing {} payment method entries", importedPaymentMethods.size());
-            for (final PaymentMethod importedPaymentMethod : importedPaymentMethods) {
-                boolean wasDuplicateFound = false;
-                for (final PaymentMethod existingPaymentMethod : existingPaymentMethods) {
-                    if (importedPaymentMethod.getMethod().equals(existingPaymentMethod.getMethod())) {
-                        wasDuplicateFound = true;
-                        Logger.debug(ByRowDatabaseMerger.this, "Found a situation in which both databases have a payment method with the same attributes: {}. Ignoring import...", importedPaymentMethod);
-                        paymentMethodMap.put(importedPaymentMethod, existingPaymentMethod);
-                        break; // To exit inner loop early
-                    }
-                }
-                if (!wasDuplicateFound) {
-                    Logger.debug(ByRowDatabaseMerger.this, "Importing payment method: {}", importedPaymentMethod.getMethod());
-                    final PaymentMethod result = currentDatabase.getPaymentMethodsTable().insertBlocking(importedPaymentMethod, databaseOperationMetadata).get();
-                    paymentMethodMap.put(importedPaymentMethod, result);
-                }
+            final Map<String, PaymentMethod> existingPaymentMethods = new HashMap<>();
+            for (final PaymentMethod existingPaymentMethod : currentDatabase.getPaymentMethodsTable().getBlocking()) {
+                putIfAbsent(existingPaymentMethods, existingPaymentMethod.getMethod(), existingPaymentMethod);
             }
+            final List<PaymentMethod> importedPaymentMethods = importedBackupDatabase.getPaymentMethodsTable().getBlocking();
+            Logger.info(ByRowDatabaseMerger.this, "Importing {} payment method entries", importedPaymentMethods.size());
+            final Map<PaymentMethod, PaymentMethod> paymentMethodMap = mapOrInsert(importedPaymentMethods, existingPaymentMethods,
+                    PaymentMethod::getMethod, currentDatabase.getPaymentMethodsTable(), databaseOperationMetadata);
 
             // Note: This attempts to map an "imported" category to a current one in the case in which an import is not required (ie a match)
-            final Map<Category, Category> categoryMap = new HashMap<>();
-            final List<Category> existingCategories = new ArrayList<>(currentDatabase.getCategoriesTable().getBlocking());
-            final List<Category> importedCategories = new ArrayList<>(importedBackupDatabase.getCategoriesTable().getBlocking());
-            Logger.info(ByRowDatabaseMerger.this, "Importing {} category entries", importedCategories.size());
-            for (final Category importedCategory : importedCategories) {
-                boolean wasDuplicateFound = false;
-                for (final Category existingCategory : existingCategories) {
-                    if (importedCategory.getCode().equals(existingCategory.getCode()) && 
-                            importedCategory.getName().equals(existingCategory.getName())) {
-                        wasDuplicateFound = true;
-                        Logger.debug(ByRowDatabaseMerger.this, "Found a situation in which both databases have a category with the same attributes: {}. Ignoring import...", importedCategory);
-                        categoryMap.put(importedCategory, existingCategory);
-                        break; // To exit inner loop early
-                    }
-                }
-                if (!wasDuplicateFound) {
-                    Logger.debug(ByRowDatabaseMerger.this, "Importing category: {}", importedCategory);
-                    final Category result = currentDatabase.getCategoriesTable().insertBlocking(importedCategory, databaseOperationMetadata).get();
-                    categoryMap.put(importedCategory, result);
-                }
+            final Map<List<String>, Category> existingCategories = new HashMap<>();
+            for (final Category existingCategory : currentDatabase.getCategoriesTable().getBlocking()) {
+                putIfAbsent(existingCategories, getCategoryKey(existingCategory), existingCategory);
             }
+            final List<Category> importedCategories = importedBackupDatabase.getCategoriesTable().getBlocking();
+            Logger.info(ByRowDatabaseMerger.this, "Importing {} category entries", importedCategories.size());
+            final Map<Category, Category> categoryMap = mapOrInsert(importedCategories, existingCategories,
+                    ByRowDatabaseMerger::getCategoryKey, currentDatabase.getCategoriesTable(), databaseOperationMetadata);
 
             // Note: This attempts to map an "imported" trip to the inserted one
-            final Map<Trip, Trip> tripMap = new HashMap<>();
-            final List<Trip> existingTrips = new ArrayList<>(currentDatabase.getTripsTable().getBlocking());
-            final List<Trip> importedTrips = new ArrayList<>(importedBackupDatabase.getTripsTable().getBlocking());
-            Logger.info(ByRowDatabaseMerger.this, "Importing {} trip entries", importedTrips.size());
-            for (final Trip importedTrip : importedTrips) {
-                boolean wasDuplicateFound = false;
-                for (final Trip existingTrip : existingTrips) {
-                    if (importedTrip.getName().equals(existingTrip.getName())) {
-                        wasDuplicateFound = true;
-                        Logger.debug(ByRowDatabaseMerger.this, "Found a situation in which both databases have a trip with the same attributes: {}. Ignoring import...", importedTrip);
-                        tripMap.put(importedTrip, existingTrip);
-                        break; // To exit inner loop early
-                    }
-                }
-                if (!wasDuplicateFound) {
-                    Logger.debug(ByRowDatabaseMerger.this, "Importing trip: {}", importedTrip);
-                    final Trip result = currentDatabase.getTripsTable().insertBlocking(importedTrip, databaseOperationMetadata).get();
-                    tripMap.put(importedTrip, result);
-                }
+            final Map<String, Trip> existingTrips = new HashMap<>();
+            for (final Trip existingTrip : currentDatabase.getTripsTable().getBlocking()) {
+                putIfAbsent(existingTrips, existingTrip.getName(), existingTrip);
             }
+            final List<Trip> importedTrips = importedBackupDatabase.getTripsTable().getBlocking();
+            Logger.info(ByRowDatabaseMerger.this, "Importing {} trip entries", importedTrips.size());
+            final Map<Trip, Trip> tripMap = mapOrInsert(importedTrips, existingTrips, Trip::getName,
+                    currentDatabase.getTripsTable(), databaseOperationMetadata);
 
-            final List<Distance> existingDistances = new ArrayList<>(currentDatabase.getDistanceTable().getBlocking());
-            final List<Distance> importedDistances = new ArrayList<>(importedBackupDatabase.getDistanceTable().getBlocking());
-            Logger.info(ByRowDatabaseMerger.this, "Importing {} distance entries", importedDistances.size());
-            for (final Distance importedDistance : importedDistances) {
-                boolean wasDuplicateFound = false;
-                for (final Distance existingDistance : existingDistances) {
-                    if (importedBackupDatabase.getDatabaseStartingVersion() < DATABASE_VERSION_WITH_UUIDS) {
-                        // If we didn't have UUIDs in the old database, we need to use our old way
-                        if (importedDistance.getTrip().getName().equals(existingDistance.getTrip().getName()) &&
-                                importedDistance.getLocation().equals(existingDistance.getLocation()) &&
-                                importedDistance.getDate().equals(existingDistance.getDate())) {
-                            Logger.debug(ByRowDatabaseMerger.this, "Pre-UUID: Found a situation in which both databases have a distance with the same attributes: {}. Ignoring import...", importedDistance);
-                            wasDuplicateFound = true;
-                            break; // To exit inner loop early
+            final Map<List<Object>, Distance> existingDistances = new HashMap<>();
+            currentDatabase.getDistanceTable().forEachBlocking(existingDistance ->
+                    putIfAbsent(existingDistances, getDistanceKey(existingDistance, hasUuids), existingDistance));
+            final BatchedTableWriter<Distance> distanceWriter = new BatchedTableWriter<>(currentDatabase.getDistanceTable(), databaseOperationMetadata, BATCH_SIZE);
+            importedBackupDatabase.getDistanceTable().forEachBlocking(importedDistance -> {
+                final Distance existingDistance = existingDistances.get(getDistanceKey(importedDistance, hasUuids));
+                if (existingDistance != null) {
+                    if (hasUuids) {
+                        Logger.debug(ByRowDatabaseMerger.this, "Post-UUID: Found a situation in which both databases have a distance with the same attributes: {}. Ignoring import...", importedDistance);
+                        if (importedDistance.getSyncState().getLastLocalModificationTime().after(existingDistance.getSyncState().getLastLocalModificationTime())) {
+                            Logger.info(ByRowDatabaseMerger.this, "The imported distance is more recent. Updating the original one");
+                            final Distance distanceToUpdate = new DistanceBuilderFactory(importedDistance).setTrip(tripMap.get(importedDistance.getTrip())).build();
+                            distanceWriter.update(existingDistance, distanceToUpdate);
                         }
                     } else {
-                        // If we do have UUIDs, let's use those instead
-                        if (importedDistance.getTrip().getName().equals(existingDistance.getTrip().getName()) &&
-                                importedDistance.getUuid().equals(existingDistance.getUuid())) {
-                            Logger.debug(ByRowDatabaseMerger.this, "Post-UUID: Found a situation in which both databases have a distance with the same attributes: {}. Ignoring import...", importedDistance);
-                            wasDuplicateFound = true;
-                            if (importedDistance.getSyncState().getLastLocalModificationTime().after(existingDistance.getSyncState().getLastLocalModificationTime())) {
-                                Logger.info(ByRowDatabaseMerger.this, "The imported receipt is more recent. Updating the original one");
-                                final Distance distanceToUpdate = new DistanceBuilderFactory(importedDistance).setTrip(tripMap.get(importedDistance.getTrip())).build();
-                                currentDatabase.getDistanceTable().update(existingDistance, distanceToUpdate, databaseOperationMetadata);
-                            }
-                            break; // To exit inner loop early
-                        }
+                        Logger.debug(ByRowDatabaseMerger.this, "Pre-UUID: Found a situation in which both databases have a distance with the same attributes: {}. Ignoring import...", importedDistance);
                     }
-                }
-                if (!wasDuplicateFound) {
+                } else {
                     Logger.debug(ByRowDatabaseMerger.this, "Importing distance: {}", importedDistance);
-                    final Distance distanceToInsert = new DistanceBuilderFactory(importedDistance).setTrip(tripMap.get(importedDistance.getTrip())).build();
-                    currentDatabase.getDistanceTable().insertBlocking(distanceToInsert, databaseOperationMetadata);
+                    distanceWriter.insert(new DistanceBuilderFactory(importedDistance).setTrip(tripMap.get(importedDistance.getTrip())).build());
                 }
-            }
+            });
+            distanceWriter.flush();
+            existingDistances.clear();
+            Logger.info(ByRowDatabaseMerger.this, "Imported {} and updated {} distance entries", distanceWriter.getInsertCount(), distanceWriter.getUpdateCount());
 
-            final List<Receipt> existingReceipts = new ArrayList<>(currentDatabase.getReceiptsTable().getBlocking());
-            final List<Receipt> importedReceipts = new ArrayList<>(importedBackupDatabase.getReceiptsTable().getBlocking());
-            Logger.info(ByRowDatabaseMerger.this, "Importing {} receipt entries", importedReceipts.size());
-            for (final Receipt importedReceipt : importedReceipts) {
-                boolean wasDuplicateFound = false;
-                for (final Receipt existingReceipt : existingReceipts) {
-                    if (importedBackupDatabase.getDatabaseStartingVersion() < DATABASE_VERSION_WITH_UUIDS) {
-                        // If we didn't have UUIDs in the old database, we need to use our old way
-                        if (importedReceipt.getTrip().getName().equals(existingReceipt.getTrip().getName()) &&
-                                importedReceipt.getName().equals(existingReceipt.getName()) &&
-                                importedReceipt.getDate().equals(existingReceipt.getDate())) {
-                            Logger.debug(ByRowDatabaseMerger.this, "Pre-UUID: FFound a situation in which both databases have a receipt with the same attributes: {}. Ignoring import...", importedReceipt);
-                            wasDuplicateFound = true;
-                            break; // To exit inner loop early
+            final Map<List<Object>, Receipt> existingReceipts = new HashMap<>();
+            currentDatabase.getReceiptsTable().forEachBlocking(existingReceipt ->
+                    putIfAbsent(existingReceipts, getReceiptKey(existingReceipt, hasUuids), existingReceipt));
+            final BatchedTableWriter<Receipt> receiptWriter = new BatchedTableWriter<>(currentDatabase.getReceiptsTable(), databaseOperationMetadata, BATCH_SIZE);
+            importedBackupDatabase.getReceiptsTable().forEachBlocking(importedReceipt -> {
+                final Receipt existingReceipt = existingReceipts.get(getReceiptKey(importedReceipt, hasUuids));
+                if (existingReceipt != null) {
+                    if (hasUuids) {
+                        Logger.debug(ByRowDatabaseMerger.this, "Post-UUID: Found a situation in which both databases have a receipt with the same attributes: {}. Ignoring import...", importedReceipt);
+                        if (importedReceipt.getSyncState().getLastLocalModificationTime().after(existingReceipt.getSyncState().getLastLocalModificationTime())) {
+                            Logger.info(ByRowDatabaseMerger.this, "The imported receipt is more recent. Updating the original one");
+                            final ReceiptBuilderFactory builder = new ReceiptBuilderFactory(importedReceipt)
+                                    .setTrip(tripMap.get(importedReceipt.getTrip()))
+                                    .setCategory(categoryMap.get(importedReceipt.getCategory()))
+                                    .setPaymentMethod(paymentMethodMap.get(importedReceipt.getPaymentMethod()))
+                                    .setCustomOrderId(existingReceipt.getCustomOrderId()); // Keep the same custom order id for simplicity
+                            receiptWriter.update(existingReceipt, builder.build());
                         }
                     } else {
-                        // If we do have UUIDs, let's use those instead
-                        if (importedReceipt.getTrip().getName().equals(existingReceipt.getTrip().getName()) &&
-                                importedReceipt.getUuid().equals(existingReceipt.getUuid())) {
-                            Logger.debug(ByRowDatabaseMerger.this, "Post-UUID: Found a situation in which both databases have a receipt with the same attributes: {}. Ignoring import...", importedReceipt);
-                            wasDuplicateFound = true;
-                            if (importedReceipt.getSyncState().getLastLocalModificationTime().after(existingReceipt.getSyncState().getLastLocalModificationTime())) {
-                                Logger.info(ByRowDatabaseMerger.this, "The imported receipt is more recent. Updating the original one");
-                                final ReceiptBuilderFactory builder = new ReceiptBuilderFactory(importedReceipt)
-                                        .setTrip(tripMap.get(importedReceipt.getTrip()))
-                                        .setCategory(categoryMap.get(importedReceipt.getCategory()))
-                                        .setPaymentMethod(paymentMethodMap.get(importedReceipt.getPaymentMethod()))
-                                        .setCustomOrderId(existingReceipt.getCustomOrderId()); // Keep the same custom order id for simplicity
-                                final Receipt receiptToUpdate = builder.build();
-                                currentDatabase.getReceiptsTable().updateBlocking(existingReceipt, receiptToUpdate, databaseOperationMetadata);
-                            }
-                            break; // To exit inner loop early
-                        }
+                        Logger.debug(ByRowDatabaseMerger.this, "Pre-UUID: Found a situation in which both databases have a receipt with the same attributes: {}. Ignoring import...", importedReceipt);
                     }
-                }
-                if (!wasDuplicateFound) {
+                } else {
                     Logger.debug(ByRowDatabaseMerger.this, "Importing receipt: {}", importedReceipt);
                     // Here we explicitly map these "mapped" values to the new result set before importing
                     final ReceiptBuilderFactory builder = new ReceiptBuilderFactory(importedReceipt)
                             .setTrip(tripMap.get(importedReceipt.getTrip()))
                             .setCategory(categoryMap.get(importedReceipt.getCategory()))
                             .setPaymentMethod(paymentMethodMap.get(importedReceipt.getPaymentMethod()));
-                    final Receipt receiptToInsert = builder.build();
-                    currentDatabase.getReceiptsTable().insertBlocking(receiptToInsert, databaseOperationMetadata);
+                    receiptWriter.insert(builder.build());
                 }
-            }
+            });
+            receiptWriter.flush();
+            Logger.info(ByRowDatabaseMerger.this, "Imported {} and updated {} receipt entries", receiptWriter.getInsertCount(), receiptWriter.getUpdateCount());
         });
     }
+
+    /**
+     * Maps each imported item to an existing item with the same key. Items without a match are inserted (in a single
+     * batch) and mapped to the resulting item instead
+     */
+    @NonNull
+    private static <ModelType extends Keyed & Syncable, Key> Map<ModelType, ModelType> mapOrInsert(@NonNull List<ModelType> importedItems,
+                                                                                                 @NonNull Map<Key, ModelType> existingItems,
+                                                                                                 @NonNull Function<ModelType, Key> keyFunction,
+                                                                                                 @NonNull AbstractSqlTable<ModelType> table,
+                                                                                                 @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        final Map<ModelType, ModelType> results = new HashMap<>();
+        final List<ModelType> itemsToInsert = new ArrayList<>();
+        for (final ModelType importedItem : importedItems) {
+            final ModelType existingItem = existingItems.get(keyFunction.apply(importedItem));
+            if (existingItem != null) {
+                Logger.debug(ByRowDatabaseMerger.class, "Found a situation in which both databases have an item with the same attributes: {}. Ignoring import...", importedItem);
+                results.put(importedItem, existingItem);
+            } else {
+                itemsToInsert.add(importedItem);
+            }
+        }
+
+        final List<ModelType> insertedItems = table.insertAllBlocking(itemsToInsert, databaseOperationMetadata);
+        for (int i = 0; i < insertedItems.size(); i++) {
+            results.put(itemsToInsert.get(i), insertedItems.get(i));
+        }
+        return results;
+    }
+
+    /**
+     * As with our previous approach, we prefer the first existing item that matches a particular key
+     */
+    private static <Key, ModelType> void putIfAbsent(@NonNull Map<Key, ModelType> map, @NonNull Key key, @NonNull ModelType item) {
+        if (!map.containsKey(key)) {
+            map.put(key, item);
+        }
+    }
+
+    @NonNull
+    private static List<String> getCategoryKey(@NonNull Category category) {
+        return Arrays.asList(category.getCode(), category.getName());
+    }
+
+    @NonNull
+    private static List<Object> getDistanceKey(@NonNull Distance distance, boolean hasUuids) {
+        if (hasUuids) {
+            return Arrays.asList(distance.getTrip().getName(), distance.getUuid());
+        } else {
+            // If we didn't have UUIDs in the old database, we need to use our old way
+            return Arrays.asList(distance.getTrip().getName(), distance.getLocation(), distance.getDate().getTime());
+        }
+    }
+
+    @NonNull
+    private static List<Object> getReceiptKey(@NonNull Receipt receipt, boolean hasUuids) {
+        if (hasUuids) {
+            return Arrays.asList(receipt.getTrip().getName(), receipt.getUuid());
+        } else {
+            // If we didn't have UUIDs in the old database, we need to use our old way
+            return Arrays.asList(receipt.getTrip().getName(), receipt.getName(), receipt.getDate().getTime());
+        }
+    }
 }
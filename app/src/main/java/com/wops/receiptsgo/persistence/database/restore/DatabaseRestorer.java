@@ -19,6 +19,7 @@ import com.wops.receiptsgo.settings.UserPreferenceManager;
 import com.wops.analytics.log.Logger;
 import io.reactivex.Completable;
 import io.reactivex.CompletableEmitter;
+import io.reactivex.Single;
 import wb.android.storage.StorageManager;
 
 /**
@@ -64,7 +65,27 @@ public class DatabaseRestorer {
      */
     @NonNull
     public Completable restoreDatabase(@NonNull File importedDatabaseBackupFile, boolean overwriteExistingData) {
-        return importedDatabaseFetcher.getDatabase(importedDatabaseBackupFile)
+        return restoreDatabase(importedDatabaseFetcher.getDatabase(importedDatabaseBackupFile), overwriteExistingData);
+    }
+
+    /**
+     * Restores the database from a chain of incremental backups, so that database data is now
+     * reflected in our current file-system
+     *
+     * @param backupChain the {@link IncrementalBackupChain}, containing the database to restore
+     * @param overwriteExistingData if we should overwrite our existing data or not
+     *
+     * @return a {@link Completable} that will emit {@link CompletableEmitter#onComplete()} if this
+     * process completed successfully or {@link CompletableEmitter#onError(Throwable)} if not
+     */
+    @NonNull
+    public Completable restoreDatabase(@NonNull IncrementalBackupChain backupChain, boolean overwriteExistingData) {
+        return restoreDatabase(importedDatabaseFetcher.getDatabase(backupChain), overwriteExistingData);
+    }
+
+    @NonNull
+    private Completable restoreDatabase(@NonNull Single<DatabaseHelper> importedDatabase, boolean overwriteExistingData) {
+        return importedDatabase
                 .flatMapCompletable(importedBackupDatabase -> {
                     final DatabaseMerger databaseMerger = databaseMergerFactory.get(overwriteExistingData);
 
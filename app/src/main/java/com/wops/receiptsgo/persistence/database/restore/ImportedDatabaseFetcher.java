@@ -14,6 +14,7 @@ import com.wops.receiptsgo.persistence.database.defaults.TableDefaultsCustomizer
 import com.wops.receiptsgo.persistence.database.tables.ordering.OrderingPreferencesManager;
 import com.wops.receiptsgo.settings.UserPreferenceManager;
 import com.wops.analytics.log.Logger;
+import com.wops.core.persistence.DatabaseConstants;
 import io.reactivex.Single;
 import wb.android.storage.StorageManager;
 
@@ -58,4 +59,20 @@ class ImportedDatabaseFetcher {
             return databaseHelper;
         });
     }
+
+    /**
+     * Rebuilds the database of a chain of incremental backups and then attempts to open a handle to it
+     *
+     * @param backupChain the {@link IncrementalBackupChain} to restore the database from
+     * @return a {@link Single}, which will emit the database if successfully rebuilt and opened
+     */
+    @NonNull
+    public Single<DatabaseHelper> getDatabase(@NonNull IncrementalBackupChain backupChain) {
+        return Single.fromCallable(() -> {
+            final File databaseFile = storageManager.getFile(DatabaseConstants.DATABASE_EXPORT_NAME);
+            Logger.debug(ImportedDatabaseFetcher.this, "Rebuilding our import database from backup {}", backupChain.getHeadManifest().getId());
+            backupChain.extractDatabase(databaseFile);
+            return databaseFile;
+        }).flatMap(this::getDatabase);
+    }
 }
@@ -0,0 +1,262 @@
+package com.wops.receiptsgo.persistence.database.restore;
+
+import androidx.annotation.NonNull;
+
+import com.google.common.base.Preconditions;
+
+import org.json.JSONException;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.wops.analytics.log.Logger;
+import com.wops.core.persistence.DatabaseConstants;
+
+/**
+ * Rebuilds a full restore from a chain of incremental backup archives. The newest backup in the chain (ie the one that
+ * is not the parent of any other) defines the complete set of files to restore, and the content of each file is read
+ * from the newest archive in the chain that contains its blob.
+ * <p>
+ * Archives may be provided in any order. If a blob cannot be found in any of them (eg because the user did not select
+ * one of the older backups), we fail with an {@link IOException} instead of performing a partial restore.
+ * </p>
+ */
+public final class IncrementalBackupChain implements Closeable {
+
+    /**
+     * The path of the write-ahead log for our backup database (if any), which we restore alongside the database
+     */
+    private static final String DATABASE_WAL = DatabaseConstants.DATABASE_EXPORT_NAME + "-wal";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final List<ZipFile> archives;
+    private final BackupManifest headManifest;
+    private final Map<String, ZipFile> blobArchives;
+
+    private IncrementalBackupChain(@NonNull List<ZipFile> archives, @NonNull BackupManifest headManifest, @NonNull Map<String, ZipFile> blobArchives) {
+        this.archives = Preconditions.checkNotNull(archives);
+        this.headManifest = Preconditions.checkNotNull(headManifest);
+        this.blobArchives = Preconditions.checkNotNull(blobArchives);
+    }
+
+    /**
+     * Checks if a particular file was created as an incremental backup (as opposed to our legacy, full zip backups)
+     *
+     * @param archive the backup {@link File}
+     * @return {@code true} if this archive contains a {@link BackupManifest}. {@code false} otherwise
+     */
+    public static boolean isIncrementalBackup(@NonNull File archive) {
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            return zipFile.getEntry(BackupManifest.FILE_NAME) != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Opens a chain of incremental backups
+     *
+     * @param archiveFiles the backup archives, in any order
+     * @return the {@link IncrementalBackupChain}, which must be closed once the restore completes
+     * @throws IOException if any archive cannot be read or if these archives do not form a single chain
+     */
+    @NonNull
+    public static IncrementalBackupChain open(@NonNull List<File> archiveFiles) throws IOException {
+        Preconditions.checkArgument(!archiveFiles.isEmpty(), "At least one backup is required");
+
+        final List<ZipFile> archives = new ArrayList<>();
+        try {
+            final Map<String, ZipFile> archivesById = new HashMap<>();
+            final Map<String, BackupManifest> manifestsById = new HashMap<>();
+            final Set<String> parentIds = new HashSet<>();
+            for (final File archiveFile : archiveFiles) {
+                final ZipFile archive = new ZipFile(archiveFile);
+                archives.add(archive);
+                final BackupManifest manifest = readManifest(archive);
+                archivesById.put(manifest.getId(), archive);
+                manifestsById.put(manifest.getId(), manifest);
+                if (manifest.getParentId().isPresent()) {
+                    parentIds.add(manifest.getParentId().get());
+                }
+            }
+
+            BackupManifest headManifest = null;
+            for (final BackupManifest manifest : manifestsById.values()) {
+                if (!parentIds.contains(manifest.getId())) {
+                    if (headManifest != null) {
+                        throw new IOException("The provided backups do not belong to a single chain");
+                    }
+                    headManifest = manifest;
+                }
+            }
+            if (headManifest == null) {
+                throw new IOException("Failed to find the most recent backup in this chain");
+            }
+
+            // Walk from the newest backup to the oldest, so the newest copy of each blob wins
+            final Map<String, ZipFile> blobArchives = new HashMap<>();
+            BackupManifest manifest = headManifest;
+            while (manifest != null) {
+                final ZipFile archive = archivesById.get(manifest.getId());
+                final Enumeration<? extends ZipEntry> entries = archive.entries();
+                while (entries.hasMoreElements()) {
+                    final String name = entries.nextElement().getName();
+                    if (name.startsWith(BackupManifest.BLOB_PREFIX)) {
+                        final String hash = name.substring(BackupManifest.BLOB_PREFIX.length());
+                        if (!blobArchives.containsKey(hash)) {
+                            blobArchives.put(hash, archive);
+                        }
+                    }
+                }
+                if (manifest.getParentId().isPresent()) {
+                    manifest = manifestsById.get(manifest.getParentId().get());
+                    if (manifest == null) {
+                        // Note: We fail before restoring anything, since some files would otherwise be missing
+                        throw new IOException("The backup chain is incomplete. Failed to find the parent of a provided backup");
+                    }
+                } else {
+                    manifest = null;
+                }
+            }
+
+            Logger.info(IncrementalBackupChain.class, "Opened a chain of {} backups, containing {} files", archives.size(), headManifest.getEntries().size());
+            return new IncrementalBackupChain(archives, headManifest, blobArchives);
+        } catch (IOException | RuntimeException e) {
+            closeAll(archives);
+            throw e;
+        }
+    }
+
+    /**
+     * @return the {@link BackupManifest} of the newest backup in this chain
+     */
+    @NonNull
+    public BackupManifest getHeadManifest() {
+        return headManifest;
+    }
+
+    /**
+     * Restores our backup database (and its write-ahead log, if one was included) to a particular location
+     *
+     * @param destination the {@link File} to write the database to
+     * @throws IOException if the chain does not contain a database or if we failed to write it
+     */
+    public void extractDatabase(@NonNull File destination) throws IOException {
+        if (!headManifest.getEntry(DatabaseConstants.DATABASE_EXPORT_NAME).isPresent()) {
+            throw new IOException("This backup does not contain a database");
+        }
+        extract(DatabaseConstants.DATABASE_EXPORT_NAME, destination);
+
+        final File walDestination = new File(destination.getParentFile(), destination.getName() + "-wal");
+        if (headManifest.getEntry(DATABASE_WAL).isPresent()) {
+            extract(DATABASE_WAL, walDestination);
+        } else {
+            //noinspection ResultOfMethodCallIgnored
+            walDestination.delete();
+        }
+    }
+
+    /**
+     * Restores all files (excluding our database, which is restored via {@link #extractDatabase(File)}) to a root
+     * directory, preserving their relative paths
+     *
+     * @param root      the root directory to restore to
+     * @param overwrite {@code true} if we should overwrite existing files. {@code false} otherwise
+     * @return the number of files that were written
+     * @throws IOException if any file could not be restored
+     */
+    public int extractFiles(@NonNull File root, boolean overwrite) throws IOException {
+        final String rootPath = root.getCanonicalPath();
+        int count = 0;
+        for (final BackupManifest.Entry entry : headManifest.getEntries()) {
+            if (DatabaseConstants.DATABASE_EXPORT_NAME.equals(entry.getPath()) || DATABASE_WAL.equals(entry.getPath())) {
+                continue;
+            }
+            final File file = new File(root, entry.getPath());
+            if (!file.getCanonicalPath().startsWith(rootPath)) {
+                throw new SecurityException("Directory does not match expected path: " + entry.getPath());
+            }
+            if (!overwrite && file.exists()) {
+                continue;
+            }
+            extract(entry.getPath(), file);
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public void close() {
+        closeAll(archives);
+    }
+
+    private void extract(@NonNull String path, @NonNull File destination) throws IOException {
+        final BackupManifest.Entry entry = headManifest.getEntry(path).get();
+        final ZipFile archive = blobArchives.get(entry.getHash());
+        if (archive == null) {
+            throw new IOException("The backup chain is incomplete. Failed to find the content of " + path);
+        }
+
+        final File parent = destination.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Failed to create " + parent);
+        }
+        try (InputStream inputStream = archive.getInputStream(archive.getEntry(BackupManifest.getBlobName(entry.getHash())));
+             OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(destination))) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        destination.setLastModified(entry.getLastModified());
+    }
+
+    @NonNull
+    private static BackupManifest readManifest(@NonNull ZipFile archive) throws IOException {
+        final ZipEntry manifestEntry = archive.getEntry(BackupManifest.FILE_NAME);
+        if (manifestEntry == null) {
+            throw new IOException(archive.getName() + " is not an incremental backup");
+        }
+        try (Reader reader = new InputStreamReader(archive.getInputStream(manifestEntry), Charset.forName("UTF-8"))) {
+            final StringBuilder builder = new StringBuilder();
+            final char[] buffer = new char[BUFFER_SIZE];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                builder.append(buffer, 0, read);
+            }
+            return BackupManifest.fromJson(builder.toString());
+        } catch (JSONException e) {
+            throw new IOException("Failed to parse the manifest of " + archive.getName(), e);
+        }
+    }
+
+    private static void closeAll(@NonNull List<ZipFile> archives) {
+        for (final ZipFile archive : archives) {
+            try {
+                archive.close();
+            } catch (IOException e) {
+                Logger.warn(IncrementalBackupChain.class, "Failed to close {}", archive.getName());
+            }
+        }
+    }
+}
@@ -2,16 +2,21 @@ package com.wops.receiptsgo.persistence.database.tables;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.google.common.base.Preconditions;
 import com.hadisatrio.optional.Optional;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import com.wops.receiptsgo.model.Keyed;
@@ -22,10 +27,16 @@ import com.wops.receiptsgo.persistence.database.tables.adapters.DatabaseAdapter;
 import com.wops.receiptsgo.persistence.database.tables.adapters.SyncStateAdapter;
 import com.wops.receiptsgo.persistence.database.tables.ordering.OrderBy;
 import com.wops.receiptsgo.persistence.database.tables.ordering.OrderByDatabaseDefault;
+import com.wops.receiptsgo.persistence.database.tables.search.FullTextSearchIndex;
+import com.wops.receiptsgo.persistence.database.tables.search.SearchQuery;
 import com.wops.core.sync.model.Syncable;
 import com.wops.core.sync.provider.SyncProvider;
 import com.wops.analytics.log.Logger;
+import io.reactivex.Observable;
 import io.reactivex.Single;
+import io.reactivex.functions.Consumer;
+import io.reactivex.subjects.PublishSubject;
+import io.reactivex.subjects.Subject;
 
 /**
  * Abstracts out the core CRUD database operations in order to ensure that each of our core table instances
@@ -50,7 +61,8 @@ public abstract class AbstractSqlTable<ModelType extends Keyed & Syncable> imple
     private final OrderBy orderBy;
 
     private SQLiteDatabase initialNonRecursivelyCalledDatabase;
-    private List<ModelType> cachedResults;
+    private EntityCache<ModelType> cachedResults;
+    private final Subject<Object> cacheClearedSubject = PublishSubject.create().toSerialized();
 
 
     public AbstractSqlTable(@NonNull SQLiteOpenHelper sqLiteOpenHelper,
@@ -235,6 +247,25 @@ public abstract class AbstractSqlTable<ModelType extends Keyed & Syncable> imple
                 });
     }
 
+    @NonNull
+    @Override
+    public final Single<List<ModelType>> insertAll(@NonNull final List<ModelType> modelTypes, @NonNull final DatabaseOperationMetadata databaseOperationMetadata) {
+        return Single.fromCallable(() -> AbstractSqlTable.this.insertAllBlocking(modelTypes, databaseOperationMetadata));
+    }
+
+    @NonNull
+    @Override
+    public final Single<List<ModelType>> updateAll(@NonNull final List<ModelType> oldModelTypes, @NonNull final List<ModelType> newModelTypes,
+                                                   @NonNull final DatabaseOperationMetadata databaseOperationMetadata) {
+        return Single.fromCallable(() -> AbstractSqlTable.this.updateAllBlocking(oldModelTypes, newModelTypes, databaseOperationMetadata));
+    }
+
+    @NonNull
+    @Override
+    public final Single<List<ModelType>> deleteAll(@NonNull final List<ModelType> modelTypes, @NonNull final DatabaseOperationMetadata databaseOperationMetadata) {
+        return Single.fromCallable(() -> AbstractSqlTable.this.deleteAllBlocking(modelTypes, databaseOperationMetadata));
+    }
+
     @NonNull
     public Single<Boolean> deleteSyncData(@NonNull final SyncProvider syncProvider) {
         return Single.fromCallable(() -> AbstractSqlTable.this.deleteSyncDataBlocking(syncProvider));
@@ -243,20 +274,21 @@ public abstract class AbstractSqlTable<ModelType extends Keyed & Syncable> imple
     @NonNull
     public synchronized List<ModelType> getBlocking() {
         if (cachedResults != null) {
-            return cachedResults;
+            return cachedResults.toList();
         }
 
         Cursor cursor = null;
         try {
-            cachedResults = new ArrayList<>();
+            final List<ModelType> results = new ArrayList<>();
             cursor = getReadableDatabase().query(getTableName(), null, COLUMN_DRIVE_MARKED_FOR_DELETION + " = ?", new String[]{Integer.toString(0)}, null, null, orderBy.getOrderByPredicate());
             if (cursor != null && cursor.moveToFirst()) {
                 do {
-                    cachedResults.add(databaseAdapter.read(cursor));
+                    results.add(databaseAdapter.read(cursor));
                 }
                 while (cursor.moveToNext());
             }
-            return new ArrayList<>(cachedResults);
+            cachedResults = EntityCache.fromSorted(results);
+            return cachedResults.toList();
         } finally {
             if (cursor != null) {
                 cursor.close();
@@ -264,43 +296,109 @@ public abstract class AbstractSqlTable<ModelType extends Keyed & Syncable> imple
         }
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Reads each (non-deleted) item in this table directly from the database cursor, one row at a time. Unlike
+     * {@link #getBlocking()}, this neither materializes the full list of items nor populates our cache, which makes it
+     * better suited to bulk operations over large tables (e.g. importing a backup). No particular order is guaranteed
+     *
+     * @param consumer the {@link Consumer} that will receive each item
+     * @throws Exception if the consumer throws any {@link Exception}, which will stop the iteration
+     */
+    public synchronized void forEachBlocking(@NonNull Consumer<ModelType> consumer) throws Exception {
+        try (Cursor cursor = getReadableDatabase().query(getTableName(), null, COLUMN_DRIVE_MARKED_FOR_DELETION + " = ?",
+                new String[]{Integer.toString(0)}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                do {
+                    consumer.accept(databaseAdapter.read(cursor));
+                }
+                while (cursor.moveToNext());
+            }
+        }
+    }
+
     @NonNull
     public synchronized Optional<ModelType> insertBlocking(@NonNull ModelType modelType, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
-        final ContentValues values = databaseAdapter.write(modelType, databaseOperationMetadata);
+        final ContentValues values = getInsertValues(modelType, databaseOperationMetadata);
+        final UUID uuid = UUID.fromString(values.getAsString(COLUMN_UUID));
 
-        // to be sure that entity_uuid is not missed
-        if (!values.containsKey(COLUMN_UUID) || UUID.fromString(values.getAsString(COLUMN_UUID)).equals(Keyed.Companion.getMISSING_UUID())) {
-            Logger.warn(this, "Assigning random UUID to new model before inserting");
-            values.put(COLUMN_UUID, UUID.randomUUID().toString());
+        final SQLiteDatabase db = getWritableDatabase();
+        final ModelType insertedItem;
+        db.beginTransaction();
+        try {
+            // Note: Our primary key is an alias for the row id, so we don't need to query for last_insert_rowid() separately
+            final long id = db.insertOrThrow(getTableName(), null, values);
+            insertedItem = databaseAdapter.build(modelType, (int) id, uuid, databaseOperationMetadata);
+            final Optional<FullTextSearchIndex<ModelType>> searchIndex = getFullTextSearchIndex();
+            if (searchIndex.isPresent()) {
+                searchIndex.get().index(db, insertedItem);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
-        UUID uuid = UUID.fromString(values.getAsString(COLUMN_UUID));
 
-        if (getWritableDatabase().insertOrThrow(getTableName(), null, values) != -1) {
-            try (Cursor cursor = getReadableDatabase().rawQuery("SELECT last_insert_rowid()", null)) {
+        if (cachedResults != null) {
+            cachedResults.add(insertedItem);
+        }
+        return Optional.of(insertedItem);
+    }
 
-                final int id;
-                if (cursor != null && cursor.moveToFirst() && cursor.getColumnCount() > 0) {
-                    id = cursor.getInt(0);
-                } else {
-                    id = -1;
+    /**
+     * Inserts a batch of items within a single database transaction, re-using the same compiled statement for each row.
+     * If any insert fails, the entire transaction will be rolled back and our cache will remain untouched
+     *
+     * @param modelTypes                the {@link List} of items to insert
+     * @param databaseOperationMetadata metadata about this particular database operation
+     * @return a {@link List} of the inserted items (in the same order as the input)
+     * @throws SQLException if any of the inserts failed
+     */
+    @NonNull
+    public synchronized List<ModelType> insertAllBlocking(@NonNull List<ModelType> modelTypes, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        if (modelTypes.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        final List<ModelType> insertedItems = new ArrayList<>(modelTypes.size());
+        final SQLiteDatabase db = getWritableDatabase();
+        final Map<String, SQLiteStatement> compiledStatements = new HashMap<>();
+        db.beginTransaction();
+        try {
+            for (final ModelType modelType : modelTypes) {
+                final ContentValues values = getInsertValues(modelType, databaseOperationMetadata);
+                final UUID uuid = UUID.fromString(values.getAsString(COLUMN_UUID));
+                final List<String> columns = getSortedColumns(values);
+
+                final String sql = buildInsertSql(columns);
+                SQLiteStatement statement = compiledStatements.get(sql);
+                if (statement == null) {
+                    statement = db.compileStatement(sql);
+                    compiledStatements.put(sql, statement);
                 }
+                statement.clearBindings();
+                bindValues(statement, values, columns);
 
-                final ModelType insertedItem = databaseAdapter.build(modelType, id, uuid, databaseOperationMetadata);
-                if (cachedResults != null) {
-                    cachedResults.add(insertedItem);
-                    if (insertedItem instanceof Comparable<?>) {
-                        Collections.sort((List<? extends Comparable>) cachedResults);
-                    }
+                final long id = statement.executeInsert();
+                if (id == -1) {
+                    throw new SQLException("Failed to insert item with uuid " + uuid + " into " + getTableName());
                 }
-                return Optional.of(insertedItem);
-            } // Close the cursor and db to avoid memory leaks
-        } else {
-            return Optional.absent();
+                insertedItems.add(databaseAdapter.build(modelType, (int) id, uuid, databaseOperationMetadata));
+            }
+            final Optional<FullTextSearchIndex<ModelType>> searchIndex = getFullTextSearchIndex();
+            if (searchIndex.isPresent()) {
+                searchIndex.get().indexAll(db, insertedItems);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            closeStatements(compiledStatements);
         }
+
+        if (cachedResults != null) {
+            cachedResults.addAll(insertedItems);
+        }
+        return insertedItems;
     }
 
-    @SuppressWarnings("unchecked")
     public synchronized Optional<ModelType> updateBlocking(@NonNull ModelType oldModelType, @NonNull ModelType newModelType, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
 
         final ContentValues values = databaseAdapter.write(newModelType, databaseOperationMetadata);
@@ -310,69 +408,271 @@ public abstract class AbstractSqlTable<ModelType extends Keyed & Syncable> imple
             Logger.warn(this, "Removing UUID to avoid influence on the existing value");
             values.remove(COLUMN_UUID);
         }
+        stampLocalModificationTime(values, databaseOperationMetadata);
 
-        final boolean updateSuccess;
         final String oldPrimaryKeyValue = String.valueOf(oldModelType.getId());
+        final SQLiteDatabase db = getWritableDatabase();
+        final ModelType updatedItem;
+        db.beginTransaction();
+        try {
+            final boolean updateSuccess;
+            if (databaseOperationMetadata.getOperationFamilyType() == OperationFamilyType.Sync) {
+                // For sync operations, ensure that this only succeeds if we haven't already updated this item more recently
+                final Syncable syncableOldModel = oldModelType;
+                updateSuccess = db.update(getTableName(), values, COLUMN_ID +
+                                " = ? AND " + AbstractSqlTable.COLUMN_LAST_LOCAL_MODIFICATION_TIME + " >= ?",
+                        new String[]{oldPrimaryKeyValue, Long.toString(syncableOldModel.getSyncState().getLastLocalModificationTime().getTime())}) > 0;
+            } else {
+                updateSuccess = db.update(getTableName(), values, COLUMN_ID + " = ?",
+                        new String[]{oldPrimaryKeyValue}) > 0;
+            }
 
-        if (databaseOperationMetadata.getOperationFamilyType() == OperationFamilyType.Sync) {
-            // For sync operations, ensure that this only succeeds if we haven't already updated this item more recently
-            final Syncable syncableOldModel = oldModelType;
-            updateSuccess = getWritableDatabase().update(getTableName(), values, COLUMN_ID +
-                            " = ? AND " + AbstractSqlTable.COLUMN_LAST_LOCAL_MODIFICATION_TIME + " >= ?",
-                    new String[]{oldPrimaryKeyValue, Long.toString(syncableOldModel.getSyncState().getLastLocalModificationTime().getTime())}) > 0;
-        } else {
-            updateSuccess = getWritableDatabase().update(getTableName(), values, COLUMN_ID + " = ?",
-                    new String[]{oldPrimaryKeyValue}) > 0;
+            if (!updateSuccess) {
+                return Optional.absent();
+            }
+
+            // ensure we're re-using the same id as the old key and the same uuid
+            updatedItem = databaseAdapter.build(newModelType, oldModelType.getId(), oldModelType.getUuid(), databaseOperationMetadata);
+            final Optional<FullTextSearchIndex<ModelType>> searchIndex = getFullTextSearchIndex();
+            if (searchIndex.isPresent()) {
+                if (newModelType.getSyncState().isMarkedForDeletion(SyncProvider.GoogleDrive)) {
+                    searchIndex.get().remove(db, updatedItem);
+                } else {
+                    searchIndex.get().index(db, updatedItem);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
 
-        if (updateSuccess) {
-            final ModelType updatedItem;
+        if (cachedResults != null) {
+            // Note: our cache indexes by primary key, so this succeeds even if the old model instance is stale
+            if (!cachedResults.remove(oldModelType)) {
+                Logger.warn(this, "Primary key {} was never found in our cache.", oldModelType.getId());
+            }
+
+            if (!newModelType.getSyncState().isMarkedForDeletion(SyncProvider.GoogleDrive)) {
+                cachedResults.add(updatedItem);
+            }
+        }
+        return Optional.of(updatedItem);
+    }
 
+    public synchronized Optional<ModelType> deleteBlocking(@NonNull ModelType modelType, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        final String primaryKeyValue = String.valueOf(modelType.getId());
+        final SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            if (db.delete(getTableName(), COLUMN_ID + " = ?", new String[]{primaryKeyValue}) <= 0) {
+                return Optional.absent();
+            }
+            final Optional<FullTextSearchIndex<ModelType>> searchIndex = getFullTextSearchIndex();
+            if (searchIndex.isPresent()) {
+                searchIndex.get().remove(db, modelType);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if (cachedResults != null) {
+            cachedResults.remove(modelType);
+        }
+        return Optional.of(modelType);
+    }
+
+    /**
+     * Updates a batch of items within a single database transaction, re-using the same compiled statement for each row.
+     * If any update fails, the entire transaction will be rolled back and our cache will remain untouched
+     *
+     * @param oldModelTypes             the {@link List} of items that will be replaced
+     * @param newModelTypes             the {@link List} of items that will take the place of the old ones (at the same indices)
+     * @param databaseOperationMetadata metadata about this particular database operation
+     * @return a {@link List} of the updated items (in the same order as the input)
+     * @throws SQLException if any of the updates failed
+     */
+    @NonNull
+    public synchronized List<ModelType> updateAllBlocking(@NonNull List<ModelType> oldModelTypes, @NonNull List<ModelType> newModelTypes,
+                                                          @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        Preconditions.checkArgument(oldModelTypes.size() == newModelTypes.size(), "Each old item must be paired with a new item");
+        if (oldModelTypes.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        final SQLiteDatabase db = getWritableDatabase();
+        final List<ModelType> updatedItems;
+        db.beginTransaction();
+        try {
+            updatedItems = updateAllInTransaction(db, oldModelTypes, newModelTypes, databaseOperationMetadata);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        onUpdateAllCommitted(oldModelTypes, updatedItems);
+        return updatedItems;
+    }
+
+    /**
+     * Performs the database writes of {@link #updateAllBlocking(List, List, DatabaseOperationMetadata)} within a
+     * transaction that the caller has already begun. Callers must call {@link #onUpdateAllCommitted(List, List)} once
+     * this transaction has been committed
+     *
+     * @return a {@link List} of the updated items (in the same order as the input)
+     * @throws SQLException if any of the updates failed
+     */
+    @NonNull
+    protected List<ModelType> updateAllInTransaction(@NonNull SQLiteDatabase db, @NonNull List<ModelType> oldModelTypes,
+                                                     @NonNull List<ModelType> newModelTypes,
+                                                     @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        final boolean isSyncOperation = databaseOperationMetadata.getOperationFamilyType() == OperationFamilyType.Sync;
+        final List<ModelType> updatedItems = new ArrayList<>(newModelTypes.size());
+        final Map<String, SQLiteStatement> compiledStatements = new HashMap<>();
+        try {
+            for (int i = 0; i < oldModelTypes.size(); i++) {
+                final ModelType oldModelType = oldModelTypes.get(i);
+                final ModelType newModelType = newModelTypes.get(i);
+
+                final ContentValues values = databaseAdapter.write(newModelType, databaseOperationMetadata);
+                // to be sure that entity_uuid will never be changed
+                values.remove(COLUMN_UUID);
+                stampLocalModificationTime(values, databaseOperationMetadata);
+                final List<String> columns = getSortedColumns(values);
+
+                final String sql = buildUpdateSql(columns, isSyncOperation);
+                SQLiteStatement statement = compiledStatements.get(sql);
+                if (statement == null) {
+                    statement = db.compileStatement(sql);
+                    compiledStatements.put(sql, statement);
+                }
+                statement.clearBindings();
+                bindValues(statement, values, columns);
+                statement.bindLong(columns.size() + 1, oldModelType.getId());
+                if (isSyncOperation) {
+                    // For sync operations, ensure that this only succeeds if we haven't already updated this item more recently
+                    statement.bindLong(columns.size() + 2, oldModelType.getSyncState().getLastLocalModificationTime().getTime());
+                }
+
+                if (statement.executeUpdateDelete() <= 0) {
+                    throw new SQLException("Failed to update item with primary key " + oldModelType.getId() + " in " + getTableName());
+                }
                 // ensure we're re-using the same id as the old key and the same uuid
-                updatedItem = databaseAdapter.build(newModelType, oldModelType.getId(), oldModelType.getUuid(), databaseOperationMetadata);
-            if (cachedResults != null) {
-                boolean wasCachedResultRemoved = cachedResults.remove(oldModelType);
-                if (!wasCachedResultRemoved) {
-                    // If our cache is wrong, let's use the actual primary key to see if we can find it
-                    final int primaryKeyValue = newModelType.getId();
-                    Logger.debug(this, "Failed to remove {} with primary key {} from our cache. Searching through to manually remove...", newModelType.getClass(), primaryKeyValue);
-                    for (final ModelType cachedResult : cachedResults) {
-                        if (primaryKeyValue == cachedResult.getId()) {
-                            wasCachedResultRemoved = cachedResults.remove(cachedResult);
-                            if (wasCachedResultRemoved) {
-                                break;
-                            }
-                        }
-                    }
-                    if (!wasCachedResultRemoved) {
-                        Logger.warn(this, "Primary key {} was never found in our cache.", primaryKeyValue);
+                updatedItems.add(databaseAdapter.build(newModelType, oldModelType.getId(), oldModelType.getUuid(), databaseOperationMetadata));
+            }
+
+            final Optional<FullTextSearchIndex<ModelType>> searchIndex = getFullTextSearchIndex();
+            if (searchIndex.isPresent()) {
+                final List<ModelType> itemsToIndex = new ArrayList<>(updatedItems.size());
+                final List<ModelType> itemsToRemove = new ArrayList<>();
+                for (final ModelType updatedItem : updatedItems) {
+                    if (updatedItem.getSyncState().isMarkedForDeletion(SyncProvider.GoogleDrive)) {
+                        itemsToRemove.add(updatedItem);
+                    } else {
+                        itemsToIndex.add(updatedItem);
                     }
                 }
+                searchIndex.get().removeAll(db, itemsToRemove);
+                searchIndex.get().indexAll(db, itemsToIndex);
+            }
+        } finally {
+            closeStatements(compiledStatements);
+        }
+        return updatedItems;
+    }
 
-                if (!newModelType.getSyncState().isMarkedForDeletion(SyncProvider.GoogleDrive)) {
-                    cachedResults.add(updatedItem);
+    /**
+     * Updates our caches after the transaction of an {@link #updateAllInTransaction} call was committed
+     *
+     * @param oldModelTypes the {@link List} of items that were replaced
+     * @param updatedItems  the {@link List} of updated items (at the same indices)
+     */
+    protected void onUpdateAllCommitted(@NonNull List<ModelType> oldModelTypes, @NonNull List<ModelType> updatedItems) {
+        if (cachedResults != null) {
+            for (int i = 0; i < updatedItems.size(); i++) {
+                cachedResults.remove(oldModelTypes.get(i));
+                if (!updatedItems.get(i).getSyncState().isMarkedForDeletion(SyncProvider.GoogleDrive)) {
+                    cachedResults.add(updatedItems.get(i));
                 }
+            }
+        }
+    }
+
+    /**
+     * Deletes a batch of items within a single database transaction, re-using the same compiled statement for each row.
+     * If any delete fails, the entire transaction will be rolled back and our cache will remain untouched
+     *
+     * @param modelTypes                the {@link List} of items to delete
+     * @param databaseOperationMetadata metadata about this particular database operation
+     * @return a {@link List} of the deleted items
+     * @throws SQLException if any of the deletes failed
+     */
+    @NonNull
+    public synchronized List<ModelType> deleteAllBlocking(@NonNull List<ModelType> modelTypes, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        if (modelTypes.isEmpty()) {
+            return new ArrayList<>();
+        }
 
-                if (updatedItem instanceof Comparable<?>) {
-                    Collections.sort((List<? extends Comparable>) cachedResults);
+        final SQLiteDatabase db = getWritableDatabase();
+        final List<ModelType> deletedItems;
+        db.beginTransaction();
+        try {
+            deletedItems = deleteAllInTransaction(db, modelTypes);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        onDeleteAllCommitted(deletedItems);
+        return deletedItems;
+    }
+
+    /**
+     * Performs the database writes of {@link #deleteAllBlocking(List, DatabaseOperationMetadata)} within a transaction
+     * that the caller has already begun. Callers must call {@link #onDeleteAllCommitted(List)} once this transaction
+     * has been committed
+     *
+     * @return a {@link List} of the deleted items
+     * @throws SQLException if any of the deletes failed
+     */
+    @NonNull
+    protected List<ModelType> deleteAllInTransaction(@NonNull SQLiteDatabase db, @NonNull List<ModelType> modelTypes) {
+        if (modelTypes.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        final Map<String, SQLiteStatement> compiledStatements = new HashMap<>();
+        try {
+            final String sql = "DELETE FROM " + getTableName() + " WHERE " + COLUMN_ID + " = ?";
+            final SQLiteStatement statement = db.compileStatement(sql);
+            compiledStatements.put(sql, statement);
+            for (final ModelType modelType : modelTypes) {
+                statement.clearBindings();
+                statement.bindLong(1, modelType.getId());
+                if (statement.executeUpdateDelete() <= 0) {
+                    throw new SQLException("Failed to delete item with primary key " + modelType.getId() + " from " + getTableName());
                 }
             }
-            return Optional.of(updatedItem);
-
-        } else {
-            return Optional.absent();
+            final Optional<FullTextSearchIndex<ModelType>> searchIndex = getFullTextSearchIndex();
+            if (searchIndex.isPresent()) {
+                searchIndex.get().removeAll(db, modelTypes);
+            }
+        } finally {
+            closeStatements(compiledStatements);
         }
+        return new ArrayList<>(modelTypes);
     }
 
-    public synchronized Optional<ModelType> deleteBlocking(@NonNull ModelType modelType, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
-        final String primaryKeyValue = String.valueOf(modelType.getId());
-        if (getWritableDatabase().delete(getTableName(), COLUMN_ID + " = ?", new String[]{primaryKeyValue}) > 0) {
-            if (cachedResults != null) {
-                cachedResults.remove(modelType);
+    /**
+     * Updates our caches after the transaction of a {@link #deleteAllInTransaction} call was committed
+     *
+     * @param deletedItems the {@link List} of deleted items
+     */
+    protected void onDeleteAllCommitted(@NonNull List<ModelType> deletedItems) {
+        if (cachedResults != null) {
+            for (final ModelType deletedItem : deletedItems) {
+                cachedResults.remove(deletedItem);
             }
-            return Optional.of(modelType);
-        } else {
-            return Optional.absent();
         }
     }
 
@@ -396,29 +696,67 @@ public abstract class AbstractSqlTable<ModelType extends Keyed & Syncable> imple
 
     @NonNull
     public synchronized Optional<ModelType> findByPrimaryKeyBlocking(int primaryKeyValue) {
-        if (cachedResults != null) {
-            for (final ModelType cachedResult : cachedResults) {
-                if (cachedResult.getId() == primaryKeyValue) {
-                    return Optional.of(cachedResult);
-                }
-            }
-            return Optional.absent();
-        } else {
-            final List<ModelType> entries = new ArrayList<>(getBlocking());
-            final int size = entries.size();
-            for (int i = 0; i < size; i++) {
-                final ModelType modelType = entries.get(i);
-                if (modelType.getId() == primaryKeyValue) {
-                    return Optional.of(modelType);
+        if (cachedResults == null) {
+            // Populate our cache
+            getBlocking();
+        }
+        return Optional.ofNullable(cachedResults.findByPrimaryKey(primaryKeyValue));
+    }
+
+    /**
+     * Performs a ranked, prefix-aware full-text search of this table
+     *
+     * @param input  the raw user input. Each word in this input is treated as a prefix, and all words must match
+     * @param column the {@link FullTextSearchIndex#getIndexedColumns()} column to restrict this search to or {@code null}
+     *               to search across all of them
+     * @param limit  the maximum number of results to return
+     * @return a {@link Single} with: a {@link List} of matching items, with the best matches first
+     */
+    @NonNull
+    public Single<List<ModelType>> search(@NonNull final String input, @Nullable final String column, final int limit) {
+        return Single.fromCallable(() -> AbstractSqlTable.this.searchBlocking(input, column, limit));
+    }
+
+    @NonNull
+    public synchronized List<ModelType> searchBlocking(@NonNull String input, @Nullable String column, int limit) {
+        final Optional<FullTextSearchIndex<ModelType>> searchIndex = getFullTextSearchIndex();
+        Preconditions.checkState(searchIndex.isPresent(), "%s does not support full-text searches", getTableName());
+
+        final List<ModelType> results = new ArrayList<>();
+        final SearchQuery searchQuery = searchIndex.get().buildSearchQuery(input, column, limit);
+        if (searchQuery == null) {
+            return results;
+        }
+
+        try (Cursor cursor = getReadableDatabase().rawQuery(searchQuery.getSql(), searchQuery.getSelectionArgs())) {
+            if (cursor != null && cursor.moveToFirst()) {
+                do {
+                    results.add(databaseAdapter.read(cursor));
                 }
+                while (cursor.moveToNext());
             }
-            return Optional.absent();
         }
+        return results;
+    }
+
+    /**
+     * Tables that support full-text searches should override this method to return the {@link FullTextSearchIndex} that
+     * mirrors their text columns. We will then keep this index in sync as part of each of our write operations
+     *
+     * @return an {@link Optional} containing the {@link FullTextSearchIndex} for this table or {@link Optional#absent()}
+     */
+    @NonNull
+    protected Optional<FullTextSearchIndex<ModelType>> getFullTextSearchIndex() {
+        return Optional.absent();
     }
 
     @Override
     public synchronized void deleteAllTableRowsBlocking() {
         getWritableDatabase().execSQL("DELETE FROM " + getTableName());
+        final Optional<FullTextSearchIndex<ModelType>> searchIndex = getFullTextSearchIndex();
+        if (searchIndex.isPresent()) {
+            searchIndex.get().clear(getWritableDatabase());
+        }
         clearCache();
     }
 
@@ -428,6 +766,104 @@ public abstract class AbstractSqlTable<ModelType extends Keyed & Syncable> imple
             cachedResults.clear();
             cachedResults = null;
         }
+        cacheClearedSubject.onNext(new Object());
+    }
+
+    @NonNull
+    @Override
+    public Observable<Object> cacheClearedStream() {
+        return cacheClearedSubject;
+    }
+
+    @NonNull
+    private ContentValues getInsertValues(@NonNull ModelType modelType, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        final ContentValues values = databaseAdapter.write(modelType, databaseOperationMetadata);
+
+        // to be sure that entity_uuid is not missed
+        if (!values.containsKey(COLUMN_UUID) || UUID.fromString(values.getAsString(COLUMN_UUID)).equals(Keyed.Companion.getMISSING_UUID())) {
+            Logger.warn(this, "Assigning random UUID to new model before inserting");
+            values.put(COLUMN_UUID, UUID.randomUUID().toString());
+        }
+        stampLocalModificationTime(values, databaseOperationMetadata);
+        return values;
+    }
+
+    /**
+     * Stamps the current time as the last local modification time of each local (ie non-sync) change, so our Drive
+     * journal includes it. Note: We can't rely on the model for this, since it carries the sync state of the item
+     * that it was copied from
+     */
+    private void stampLocalModificationTime(@NonNull ContentValues values, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        if (databaseOperationMetadata.getOperationFamilyType() != OperationFamilyType.Sync) {
+            values.put(COLUMN_LAST_LOCAL_MODIFICATION_TIME, System.currentTimeMillis());
+        }
+    }
+
+    @NonNull
+    private String buildInsertSql(@NonNull List<String> columns) {
+        final StringBuilder columnsBuilder = new StringBuilder();
+        final StringBuilder valuesBuilder = new StringBuilder();
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                columnsBuilder.append(", ");
+                valuesBuilder.append(", ");
+            }
+            columnsBuilder.append(columns.get(i));
+            valuesBuilder.append("?");
+        }
+        return "INSERT INTO " + getTableName() + " (" + columnsBuilder + ") VALUES (" + valuesBuilder + ")";
+    }
+
+    @NonNull
+    private String buildUpdateSql(@NonNull List<String> columns, boolean isSyncOperation) {
+        final StringBuilder builder = new StringBuilder("UPDATE ").append(getTableName()).append(" SET ");
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(columns.get(i)).append(" = ?");
+        }
+        builder.append(" WHERE ").append(COLUMN_ID).append(" = ?");
+        if (isSyncOperation) {
+            builder.append(" AND ").append(COLUMN_LAST_LOCAL_MODIFICATION_TIME).append(" >= ?");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return the column names of these {@link ContentValues} in a stable order, so we can key our compiled statements by them
+     */
+    @NonNull
+    private static List<String> getSortedColumns(@NonNull ContentValues values) {
+        final List<String> columns = new ArrayList<>(values.keySet());
+        Collections.sort(columns);
+        return columns;
+    }
+
+    private static void bindValues(@NonNull SQLiteStatement statement, @NonNull ContentValues values, @NonNull List<String> columns) {
+        for (int i = 0; i < columns.size(); i++) {
+            final int bindIndex = i + 1;
+            final Object value = values.get(columns.get(i));
+            if (value == null) {
+                statement.bindNull(bindIndex);
+            } else if (value instanceof Float || value instanceof Double) {
+                statement.bindDouble(bindIndex, ((Number) value).doubleValue());
+            } else if (value instanceof Number) {
+                statement.bindLong(bindIndex, ((Number) value).longValue());
+            } else if (value instanceof Boolean) {
+                statement.bindLong(bindIndex, (Boolean) value ? 1 : 0);
+            } else if (value instanceof byte[]) {
+                statement.bindBlob(bindIndex, (byte[]) value);
+            } else {
+                statement.bindString(bindIndex, value.toString());
+            }
+        }
+    }
+
+    private static void closeStatements(@NonNull Map<String, SQLiteStatement> compiledStatements) {
+        for (final SQLiteStatement statement : compiledStatements.values()) {
+            statement.close();
+        }
     }
 
 }
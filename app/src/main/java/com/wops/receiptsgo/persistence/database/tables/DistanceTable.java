@@ -7,14 +7,20 @@ import android.text.TextUtils;
 import androidx.annotation.NonNull;
 
 import com.google.common.base.Preconditions;
+import com.hadisatrio.optional.Optional;
+
+import java.util.Arrays;
+import java.util.Date;
 
 import com.wops.analytics.log.Logger;
 import com.wops.receiptsgo.model.Distance;
 import com.wops.receiptsgo.model.PaymentMethod;
+import com.wops.receiptsgo.model.Price;
 import com.wops.receiptsgo.model.Trip;
 import com.wops.receiptsgo.persistence.database.defaults.TableDefaultsCustomizer;
 import com.wops.receiptsgo.persistence.database.tables.adapters.DistanceDatabaseAdapter;
 import com.wops.receiptsgo.persistence.database.tables.ordering.OrderByColumn;
+import com.wops.receiptsgo.persistence.database.tables.search.FullTextSearchIndex;
 import com.wops.receiptsgo.settings.UserPreferenceManager;
 import com.wops.receiptsgo.settings.catalog.UserPreference;
 
@@ -38,16 +44,46 @@ public class DistanceTable extends TripForeignKeyAbstractSqlTable<Distance> {
     public static final String COLUMN_LOCATION_HIDDEN_AUTO_COMPLETE = "location_hidden_auto_complete";
     public static final String COLUMN_COMMENT_HIDDEN_AUTO_COMPLETE = "comment_hidden_auto_complete";
 
+    // Full-text search index columns:
+    public static final String SEARCH_COLUMN_LOCATION = "location";
+    public static final String SEARCH_COLUMN_COMMENT = "comment";
+
     @Deprecated
     public static final String COLUMN_PARENT = "parent";
 
     private final UserPreferenceManager userPreferenceManager;
+    private final FullTextSearchIndex<Distance> fullTextSearchIndex;
+    private final TripPriceTotalsCache<Distance> tripPriceTotalsCache;
 
     public DistanceTable(@NonNull SQLiteOpenHelper sqLiteOpenHelper, @NonNull Table<Trip> tripsTable,
                          @NonNull Table<PaymentMethod> paymentMethodTable, @NonNull UserPreferenceManager userPreferenceManager) {
         super(sqLiteOpenHelper, TABLE_NAME, new DistanceDatabaseAdapter(tripsTable, paymentMethodTable), COLUMN_PARENT_TRIP_ID,
                 new OrderByColumn(COLUMN_DATE, true));
         this.userPreferenceManager = Preconditions.checkNotNull(userPreferenceManager);
+        this.fullTextSearchIndex = new FullTextSearchIndex<>(TABLE_NAME,
+                Arrays.asList(SEARCH_COLUMN_LOCATION, SEARCH_COLUMN_COMMENT),
+                "SELECT " + TABLE_NAME + "." + COLUMN_ID + ", " + TABLE_NAME + "." + COLUMN_LOCATION + ", "
+                        + TABLE_NAME + "." + COLUMN_COMMENT + " FROM " + TABLE_NAME,
+                distance -> new String[]{distance.getLocation(), distance.getComment()});
+        this.tripPriceTotalsCache = new TripPriceTotalsCache<>(new TripPriceTotalsCache.Adapter<Distance>() {
+            @NonNull
+            @Override
+            public Price getPrice(@NonNull Distance distance) {
+                return distance.getPrice();
+            }
+
+            @NonNull
+            @Override
+            public Date getDate(@NonNull Distance distance) {
+                return distance.getDate();
+            }
+
+            @Override
+            public boolean isReimbursable(@NonNull Distance distance) {
+                // Note: Our reimbursable-only preference only applies to receipts
+                return true;
+            }
+        });
     }
 
     @Override
@@ -74,6 +110,7 @@ public class DistanceTable extends TripForeignKeyAbstractSqlTable<Distance> {
                 + ");";
         Logger.debug(this, sql);
         db.execSQL(sql);
+        fullTextSearchIndex.onCreate(db);
     }
 
     @Override
@@ -178,6 +215,22 @@ public class DistanceTable extends TripForeignKeyAbstractSqlTable<Distance> {
             db.execSQL(alterDistance2);
             db.execSQL(alterDistance3);
         }
+
+        if (oldVersion <= 21) { // Added a full-text search index
+            fullTextSearchIndex.onUpgrade(db);
+        }
+    }
+
+    @NonNull
+    @Override
+    protected Optional<FullTextSearchIndex<Distance>> getFullTextSearchIndex() {
+        return Optional.of(fullTextSearchIndex);
+    }
+
+    @NonNull
+    @Override
+    protected Optional<TripPriceTotalsCache<Distance>> getTripPriceTotalsCache() {
+        return Optional.of(tripPriceTotalsCache);
     }
 
     @NonNull
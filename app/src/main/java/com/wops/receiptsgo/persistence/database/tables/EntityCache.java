@@ -0,0 +1,275 @@
+package com.wops.receiptsgo.persistence.database.tables;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import com.wops.receiptsgo.model.Keyed;
+
+/**
+ * An in-memory cache of table entities, which we use to back both our full table results and our per-trip results.
+ * <p>
+ * Entities are kept in their natural sort order (if they implement {@link Comparable}) by using a binary search to
+ * find the insertion point of each new item, so an edit no longer needs to re-sort the entire list. We also maintain
+ * hash indices for both the primary key and the {@link UUID} of each entity, allowing us to perform constant time
+ * lookups and removals instead of scanning the full list.
+ * </p>
+ * <p>
+ * This class is not thread-safe. Callers are expected to synchronize access to it (as our tables already do).
+ * </p>
+ *
+ * @param <ModelType> the model object that is cached here
+ */
+public final class EntityCache<ModelType extends Keyed> {
+
+    private final ArrayList<ModelType> sortedEntities;
+    private final Map<Integer, ModelType> primaryKeyIndex;
+    private final Map<UUID, ModelType> uuidIndex;
+
+    public EntityCache() {
+        this(Collections.emptyList());
+    }
+
+    public EntityCache(@NonNull Collection<ModelType> entities) {
+        this(entities, false);
+    }
+
+    private EntityCache(@NonNull Collection<ModelType> entities, boolean isSorted) {
+        Preconditions.checkNotNull(entities);
+        this.sortedEntities = new ArrayList<>(entities.size());
+        this.primaryKeyIndex = new HashMap<>(Math.max(16, entities.size() * 2));
+        this.uuidIndex = new HashMap<>(Math.max(16, entities.size() * 2));
+        if (isSorted) {
+            for (final ModelType entity : entities) {
+                sortedEntities.add(entity);
+                index(entity);
+            }
+        } else {
+            addAll(entities);
+        }
+    }
+
+    /**
+     * Creates a cache from a collection of unique entities that are already in their sorted order (eg the results of
+     * a query whose ORDER BY matches their natural order), so we can skip re-sorting them here
+     *
+     * @param sortedEntities the sorted {@link Collection} of entities to cache
+     * @return a new {@link EntityCache} of these entities in the provided order
+     */
+    @NonNull
+    public static <ModelType extends Keyed> EntityCache<ModelType> fromSorted(@NonNull Collection<ModelType> sortedEntities) {
+        return new EntityCache<>(sortedEntities, true);
+    }
+
+    /**
+     * Adds a new entity to this cache at the appropriate sorted position. If an entity with the same primary key
+     * already exists in this cache, it will be replaced.
+     *
+     * @param entity the {@link ModelType} to add
+     */
+    public void add(@NonNull ModelType entity) {
+        Preconditions.checkNotNull(entity);
+        remove(entity);
+
+        final int insertionIndex = findInsertionIndex(entity);
+        sortedEntities.add(insertionIndex, entity);
+        index(entity);
+    }
+
+    /**
+     * Adds a collection of entities to this cache. Unlike repeated calls to {@link #add(Keyed)}, this appends all
+     * items and performs a single sort afterwards, which is cheaper when loading many entities at once
+     *
+     * @param entities the {@link Collection} of entities to add
+     */
+    public void addAll(@NonNull Collection<ModelType> entities) {
+        if (entities.isEmpty()) {
+            return;
+        }
+        for (final ModelType entity : entities) {
+            final ModelType existing = primaryKeyIndex.get(entity.getId());
+            if (existing != null) {
+                removeFromSortedEntities(existing);
+                unindex(existing);
+            }
+            sortedEntities.add(entity);
+            index(entity);
+        }
+        sortIfComparable();
+    }
+
+    /**
+     * Removes an entity from this cache. We first use the primary key index to find the cached instance of this item,
+     * so this will still succeed if the provided instance differs from our cached one (eg it's been modified)
+     *
+     * @param entity the {@link ModelType} to remove
+     * @return {@code true} if this item was removed. {@code false} if it was never cached
+     */
+    public boolean remove(@NonNull ModelType entity) {
+        ModelType cachedEntity = primaryKeyIndex.get(entity.getId());
+        if (cachedEntity == null) {
+            cachedEntity = uuidIndex.get(entity.getUuid());
+        }
+        if (cachedEntity == null) {
+            return false;
+        }
+        removeFromSortedEntities(cachedEntity);
+        unindex(cachedEntity);
+        return true;
+    }
+
+    /**
+     * Removes an entity from this cache by its primary key
+     *
+     * @param primaryKeyValue the primary key of the item to remove
+     * @return the removed {@link ModelType} or {@code null} if it was never cached
+     */
+    @Nullable
+    public ModelType removeByPrimaryKey(int primaryKeyValue) {
+        final ModelType cachedEntity = primaryKeyIndex.get(primaryKeyValue);
+        if (cachedEntity != null) {
+            removeFromSortedEntities(cachedEntity);
+            unindex(cachedEntity);
+        }
+        return cachedEntity;
+    }
+
+    @Nullable
+    public ModelType findByPrimaryKey(int primaryKeyValue) {
+        return primaryKeyIndex.get(primaryKeyValue);
+    }
+
+    @Nullable
+    public ModelType findByUuid(@NonNull UUID uuid) {
+        return uuidIndex.get(uuid);
+    }
+
+    public boolean containsPrimaryKey(int primaryKeyValue) {
+        return primaryKeyIndex.containsKey(primaryKeyValue);
+    }
+
+    public int size() {
+        return sortedEntities.size();
+    }
+
+    public boolean isEmpty() {
+        return sortedEntities.isEmpty();
+    }
+
+    /**
+     * @return a new, mutable {@link List} copy of all cached entities in their sorted order
+     */
+    @NonNull
+    public List<ModelType> toList() {
+        return new ArrayList<>(sortedEntities);
+    }
+
+    public void clear() {
+        sortedEntities.clear();
+        primaryKeyIndex.clear();
+        uuidIndex.clear();
+    }
+
+    private void index(@NonNull ModelType entity) {
+        primaryKeyIndex.put(entity.getId(), entity);
+        if (!Keyed.Companion.getMISSING_UUID().equals(entity.getUuid())) {
+            uuidIndex.put(entity.getUuid(), entity);
+        }
+    }
+
+    private void unindex(@NonNull ModelType entity) {
+        primaryKeyIndex.remove(entity.getId());
+        if (uuidIndex.get(entity.getUuid()) == entity) {
+            uuidIndex.remove(entity.getUuid());
+        }
+    }
+
+    private void removeFromSortedEntities(@NonNull ModelType cachedEntity) {
+        final Comparator<ModelType> comparator = getComparator(cachedEntity);
+        if (comparator != null) {
+            // Binary search to the first item that sorts equally and then walk the (typically tiny) run of equal items
+            int index = findFirstIndexNotLessThan(cachedEntity, comparator);
+            final int size = sortedEntities.size();
+            while (index < size && comparator.compare(sortedEntities.get(index), cachedEntity) == 0) {
+                if (sortedEntities.get(index) == cachedEntity) {
+                    sortedEntities.remove(index);
+                    return;
+                }
+                index++;
+            }
+        }
+
+        // Fallback to a linear identity scan if our sort order was not consistent
+        for (int i = 0; i < sortedEntities.size(); i++) {
+            if (sortedEntities.get(i) == cachedEntity) {
+                sortedEntities.remove(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Finds the index after the last item that sorts equal to or before this one. This mirrors the behaviour of a
+     * stable sort after appending the item to the end of our list
+     */
+    private int findInsertionIndex(@NonNull ModelType entity) {
+        final Comparator<ModelType> comparator = getComparator(entity);
+        if (comparator == null) {
+            return sortedEntities.size();
+        }
+
+        int low = 0;
+        int high = sortedEntities.size();
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (comparator.compare(sortedEntities.get(mid), entity) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int findFirstIndexNotLessThan(@NonNull ModelType entity, @NonNull Comparator<ModelType> comparator) {
+        int low = 0;
+        int high = sortedEntities.size();
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (comparator.compare(sortedEntities.get(mid), entity) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void sortIfComparable() {
+        if (!sortedEntities.isEmpty() && sortedEntities.get(0) instanceof Comparable<?>) {
+            Collections.sort((List<? extends Comparable>) sortedEntities);
+        }
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    private Comparator<ModelType> getComparator(@NonNull ModelType entity) {
+        if (entity instanceof Comparable<?>) {
+            return (first, second) -> ((Comparable<ModelType>) first).compareTo(second);
+        } else {
+            return null;
+        }
+    }
+
+}
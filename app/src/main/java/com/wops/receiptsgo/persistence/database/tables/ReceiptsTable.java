@@ -7,17 +7,24 @@ import android.database.sqlite.SQLiteOpenHelper;
 import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
 
 import com.google.common.base.Preconditions;
 import com.hadisatrio.optional.Optional;
 
 import java.io.File;
+import java.math.BigDecimal;
 import java.sql.Date;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 
 import com.wops.analytics.log.Logger;
 import com.wops.receiptsgo.model.Category;
 import com.wops.receiptsgo.model.PaymentMethod;
+import com.wops.receiptsgo.model.Price;
 import com.wops.receiptsgo.model.Receipt;
 import com.wops.receiptsgo.model.Trip;
 import com.wops.receiptsgo.model.factory.ReceiptBuilderFactory;
@@ -28,6 +35,7 @@ import com.wops.receiptsgo.persistence.database.tables.adapters.ReceiptDatabaseA
 import com.wops.receiptsgo.persistence.database.tables.ordering.OrderByColumn;
 import com.wops.receiptsgo.persistence.database.tables.ordering.OrderByOrderingPreference;
 import com.wops.receiptsgo.persistence.database.tables.ordering.OrderingPreferencesManager;
+import com.wops.receiptsgo.persistence.database.tables.search.FullTextSearchIndex;
 import com.wops.receiptsgo.settings.UserPreferenceManager;
 import com.wops.receiptsgo.settings.catalog.UserPreference;
 import com.wops.core.sync.model.SyncState;
@@ -68,10 +76,24 @@ public class ReceiptsTable extends TripForeignKeyAbstractSqlTable<Receipt> {
     public static final String COLUMN_EXTRA_EDITTEXT_2 = "extra_edittext_2";
     public static final String COLUMN_EXTRA_EDITTEXT_3 = "extra_edittext_3";
 
+    // Full-text search index columns:
+    public static final String SEARCH_COLUMN_NAME = "name";
+    public static final String SEARCH_COLUMN_COMMENT = "comment";
+    public static final String SEARCH_COLUMN_CATEGORY = "category"; // Contains both the category name and code
+    public static final String SEARCH_COLUMN_PRICE = "price";
+
+    /**
+     * Prices are indexed with two decimal places and a '.' separator. We apply this format both when writing a receipt
+     * and when rebuilding the index from SQL, so each receipt is indexed in the same manner regardless of the path taken
+     */
+    private static final String SEARCH_PRICE_FORMAT = "%.2f";
+
     @Deprecated
     public static final String COLUMN_PARENT = "parent";
 
     private final UserPreferenceManager userPreferenceManager;
+    private final FullTextSearchIndex<Receipt> fullTextSearchIndex;
+    private final TripPriceTotalsCache<Receipt> tripPriceTotalsCache;
 
     public ReceiptsTable(@NonNull SQLiteOpenHelper sqLiteOpenHelper,
                          @NonNull Table<Trip> tripsTable,
@@ -85,6 +107,47 @@ public class ReceiptsTable extends TripForeignKeyAbstractSqlTable<Receipt> {
                 new OrderByOrderingPreference(orderingPreferencesManager, ReceiptsTable.class, new OrderByColumn(COLUMN_CUSTOM_ORDER_ID, true), new OrderByColumn(COLUMN_DATE, true)));
 
         this.userPreferenceManager = Preconditions.checkNotNull(preferences);
+        this.fullTextSearchIndex = new FullTextSearchIndex<>(TABLE_NAME,
+                Arrays.asList(SEARCH_COLUMN_NAME, SEARCH_COLUMN_COMMENT, SEARCH_COLUMN_CATEGORY, SEARCH_COLUMN_PRICE),
+                "SELECT " + TABLE_NAME + "." + COLUMN_ID + ", " + TABLE_NAME + "." + COLUMN_NAME + ", " + TABLE_NAME + "." + COLUMN_COMMENT + ", "
+                        + "IFNULL(" + CategoriesTable.TABLE_NAME + "." + CategoriesTable.COLUMN_NAME + ", '') || ' ' || IFNULL(" + CategoriesTable.TABLE_NAME + "." + CategoriesTable.COLUMN_CODE + ", ''), "
+                        // Note: Older rows may have stored their price as text with a locale-specific ',' separator
+                        + "printf('" + SEARCH_PRICE_FORMAT + "', REPLACE(" + TABLE_NAME + "." + COLUMN_PRICE + ", ',', '.'))"
+                        + " FROM " + TABLE_NAME + " LEFT JOIN " + CategoriesTable.TABLE_NAME
+                        + " ON " + TABLE_NAME + "." + COLUMN_CATEGORY_ID + " = " + CategoriesTable.TABLE_NAME + "." + CategoriesTable.COLUMN_ID,
+                receipt -> new String[]{receipt.getName(), receipt.getComment(), receipt.getCategory().getName() + " " + receipt.getCategory().getCode(),
+                        formatSearchPrice(receipt.getPrice().getPrice())});
+        this.tripPriceTotalsCache = new TripPriceTotalsCache<>(new TripPriceTotalsCache.Adapter<Receipt>() {
+            @NonNull
+            @Override
+            public Price getPrice(@NonNull Receipt receipt) {
+                return receipt.getPrice();
+            }
+
+            @NonNull
+            @Override
+            public java.util.Date getDate(@NonNull Receipt receipt) {
+                return receipt.getDate();
+            }
+
+            @Override
+            public boolean isReimbursable(@NonNull Receipt receipt) {
+                return receipt.isReimbursable();
+            }
+        });
+    }
+
+    /**
+     * Formats a price for our full-text search index in the same manner as our SQL rebuild statement does
+     *
+     * @param price the {@link BigDecimal} price of a receipt
+     * @return the indexed representation of this price (eg "12.50")
+     */
+    @NonNull
+    @VisibleForTesting
+    static String formatSearchPrice(@NonNull BigDecimal price) {
+        // Note: We store our prices as doubles, so we format the same double that SQLite will read back
+        return String.format(Locale.US, SEARCH_PRICE_FORMAT, price.doubleValue());
     }
 
     @Override
@@ -122,6 +185,7 @@ public class ReceiptsTable extends TripForeignKeyAbstractSqlTable<Receipt> {
                 + ");";
         Logger.debug(this, receipts);
         db.execSQL(receipts);
+        fullTextSearchIndex.onCreate(db);
     }
 
 
@@ -362,6 +426,39 @@ public class ReceiptsTable extends TripForeignKeyAbstractSqlTable<Receipt> {
             db.execSQL(addTax2Column);
         }
 
+        if (oldVersion <= 21) { // Added a full-text search index
+            fullTextSearchIndex.onUpgrade(db);
+        }
+
+    }
+
+    /**
+     * Since the name of each {@link Category} is included in our full-text search index, we need to refresh the indexed
+     * values for all receipts that reference a category after it has been renamed
+     *
+     * @param category the {@link Category} that was updated
+     */
+    public synchronized void reindexCategoryBlocking(@NonNull Category category) {
+        final SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            fullTextSearchIndex.reindexWhere(db, TABLE_NAME + "." + COLUMN_CATEGORY_ID + " = ?", new String[]{Integer.toString(category.getId())});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @NonNull
+    @Override
+    protected Optional<FullTextSearchIndex<Receipt>> getFullTextSearchIndex() {
+        return Optional.of(fullTextSearchIndex);
+    }
+
+    @NonNull
+    @Override
+    protected Optional<TripPriceTotalsCache<Receipt>> getTripPriceTotalsCache() {
+        return Optional.of(tripPriceTotalsCache);
     }
 
     private void moveDataToCopyTableAndRename(@NonNull SQLiteDatabase db, String dataColumns) {
@@ -390,14 +487,55 @@ public class ReceiptsTable extends TripForeignKeyAbstractSqlTable<Receipt> {
         if (receipt.getSyncState().isMarkedForDeletion(SyncProvider.GoogleDrive)) {
             return super.deleteBlocking(receipt, databaseOperationMetadata);
         } else {
-            // TODO: Generalize this in a more generic, less drive specific way
-            final SyncState oldSyncState = receipt.getSyncState();
-            final SyncState newSyncState = new DefaultSyncState(new IdentifierMap(Collections.singletonMap(SyncProvider.GoogleDrive, oldSyncState.getSyncId(SyncProvider.GoogleDrive))),
-                    new SyncStatusMap(Collections.singletonMap(SyncProvider.GoogleDrive, false)),
-                    new MarkedForDeletionMap(Collections.singletonMap(SyncProvider.GoogleDrive, true)),
-                    new Date(System.currentTimeMillis()));
-            final Receipt newReceipt = new ReceiptBuilderFactory(receipt).setSyncState(newSyncState).build();
-            return super.updateBlocking(receipt, newReceipt, databaseOperationMetadata);
+            return super.updateBlocking(receipt, buildMarkedForDeletionReceipt(receipt), databaseOperationMetadata);
+        }
+    }
+
+    @NonNull
+    @Override
+    public synchronized List<Receipt> deleteAllBlocking(@NonNull List<Receipt> receipts, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        final List<Receipt> receiptsToDelete = new ArrayList<>();
+        final List<Receipt> receiptsToMarkForDeletion = new ArrayList<>();
+        final List<Receipt> receiptsMarkedForDeletion = new ArrayList<>();
+        for (final Receipt receipt : receipts) {
+            if (receipt.getSyncState().isMarkedForDeletion(SyncProvider.GoogleDrive)) {
+                receiptsToDelete.add(receipt);
+            } else {
+                receiptsToMarkForDeletion.add(receipt);
+                receiptsMarkedForDeletion.add(buildMarkedForDeletionReceipt(receipt));
+            }
         }
+
+        // Note: We only update our caches once both steps have been committed, so a rollback leaves them untouched
+        final SQLiteDatabase db = getWritableDatabase();
+        final List<Receipt> deletedReceipts;
+        final List<Receipt> updatedReceipts;
+        db.beginTransaction();
+        try {
+            deletedReceipts = deleteAllInTransaction(db, receiptsToDelete);
+            updatedReceipts = updateAllInTransaction(db, receiptsToMarkForDeletion, receiptsMarkedForDeletion, databaseOperationMetadata);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        onDeleteAllCommitted(deletedReceipts);
+        onUpdateAllCommitted(receiptsToMarkForDeletion, updatedReceipts);
+
+        final List<Receipt> results = new ArrayList<>(receipts.size());
+        results.addAll(deletedReceipts);
+        results.addAll(updatedReceipts);
+        return results;
+    }
+
+    @NonNull
+    private Receipt buildMarkedForDeletionReceipt(@NonNull Receipt receipt) {
+        // TODO: Generalize this in a more generic, less drive specific way
+        final SyncState oldSyncState = receipt.getSyncState();
+        final SyncState newSyncState = new DefaultSyncState(new IdentifierMap(Collections.singletonMap(SyncProvider.GoogleDrive, oldSyncState.getSyncId(SyncProvider.GoogleDrive))),
+                new SyncStatusMap(Collections.singletonMap(SyncProvider.GoogleDrive, false)),
+                new MarkedForDeletionMap(Collections.singletonMap(SyncProvider.GoogleDrive, true)),
+                new Date(System.currentTimeMillis()));
+        return new ReceiptBuilderFactory(receipt).setSyncState(newSyncState).build();
     }
 }
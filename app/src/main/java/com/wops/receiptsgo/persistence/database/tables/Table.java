@@ -8,6 +8,7 @@ import java.util.List;
 import com.wops.receiptsgo.model.Keyed;
 import com.wops.receiptsgo.persistence.database.defaults.TableDefaultsCustomizer;
 import com.wops.receiptsgo.persistence.database.operations.DatabaseOperationMetadata;
+import io.reactivex.Observable;
 import io.reactivex.Single;
 
 /**
@@ -96,6 +97,40 @@ public interface Table<ModelType extends Keyed> {
     @NonNull
     Single<ModelType> delete(@NonNull ModelType modelType, @NonNull DatabaseOperationMetadata databaseOperationMetadata);
 
+    /**
+     * Inserts a batch of objects of type {@link ModelType} into this table within a single transaction. Please note
+     * that this is a blocking operation
+     *
+     * @param modelTypes                the objects to insert
+     * @param databaseOperationMetadata metadata about this particular database operation
+     * @return a {@link Single} with: the inserted objects of type {@link ModelType} or {@link Exception} if any insert failed
+     */
+    @NonNull
+    Single<List<ModelType>> insertAll(@NonNull List<ModelType> modelTypes, @NonNull DatabaseOperationMetadata databaseOperationMetadata);
+
+    /**
+     * Updates a batch of existing objects of type {@link ModelType} in this table within a single transaction. Please note
+     * that this is a blocking operation
+     *
+     * @param oldModelTypes             the old objects that will be replaced
+     * @param newModelTypes             the new objects that will take the place of the old ones (at the same indices)
+     * @param databaseOperationMetadata metadata about this particular database operation
+     * @return a {@link Single} with: the updated objects of type {@link ModelType} or {@link Exception} if any update failed
+     */
+    @NonNull
+    Single<List<ModelType>> updateAll(@NonNull List<ModelType> oldModelTypes, @NonNull List<ModelType> newModelTypes, @NonNull DatabaseOperationMetadata databaseOperationMetadata);
+
+    /**
+     * Removes a batch of existing objects of type {@link ModelType} from this table within a single transaction. Please
+     * note that this is a blocking operation
+     *
+     * @param modelTypes                the objects to remove
+     * @param databaseOperationMetadata metadata about this particular database operation
+     * @return a {@link Single} with: the deleted objects of type {@link ModelType} or {@link Exception} if any delete failed
+     */
+    @NonNull
+    Single<List<ModelType>> deleteAll(@NonNull List<ModelType> modelTypes, @NonNull DatabaseOperationMetadata databaseOperationMetadata);
+
     /**
      * Deletes all row entries in this table
      */
@@ -105,4 +140,14 @@ public interface Table<ModelType extends Keyed> {
      * Clears any cached data in our table
      */
     void clearCache();
+
+    /**
+     * Returns a stream that emits each time that {@link #clearCache()} is called. Since we only clear our caches after
+     * the underlying rows were written directly (eg when restoring a backup), anything that is derived from this table
+     * should be rebuilt when this emits
+     *
+     * @return an {@link Observable} that emits (on the calling thread) each time that our cache is cleared
+     */
+    @NonNull
+    Observable<Object> cacheClearedStream();
 }
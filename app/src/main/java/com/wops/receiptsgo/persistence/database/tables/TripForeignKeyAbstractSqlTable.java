@@ -2,6 +2,7 @@ package com.wops.receiptsgo.persistence.database.tables;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import androidx.annotation.NonNull;
 
@@ -16,10 +17,12 @@ import java.util.Map;
 
 import com.wops.receiptsgo.model.Keyed;
 import com.wops.receiptsgo.model.Trip;
+import com.wops.receiptsgo.model.impl.PriceTotals;
 import com.wops.receiptsgo.persistence.database.operations.DatabaseOperationMetadata;
 import com.wops.receiptsgo.persistence.database.tables.adapters.SelectionBackedDatabaseAdapter;
 import com.wops.receiptsgo.persistence.database.tables.ordering.OrderBy;
 import com.wops.receiptsgo.persistence.database.tables.ordering.OrderByColumn;
+import com.wops.receiptsgo.persistence.database.tables.search.FullTextSearchIndex;
 import com.wops.core.sync.model.Syncable;
 import com.wops.core.sync.provider.SyncProvider;
 import com.wops.analytics.log.Logger;
@@ -34,7 +37,7 @@ import io.reactivex.Single;
  */
 public abstract class TripForeignKeyAbstractSqlTable<ModelType extends Keyed & Syncable> extends AbstractSqlTable<ModelType> {
 
-    private final HashMap<Trip, List<ModelType>> mPerTripCache = new HashMap<>();
+    private final HashMap<Trip, EntityCache<ModelType>> mPerTripCache = new HashMap<>();
     private final SelectionBackedDatabaseAdapter<ModelType, Trip> mSelectionBackedDatabaseAdapter;
     private final String mTripForeignKeyReferenceColumnName;
     private final OrderBy mOrderBy;
@@ -108,23 +111,22 @@ public abstract class TripForeignKeyAbstractSqlTable<ModelType extends Keyed & S
         final boolean cacheResults = isDescending;
 
         if (mPerTripCache.containsKey(trip) && cacheResults) {
-            return new ArrayList<>(mPerTripCache.get(trip));
+            return mPerTripCache.get(trip).toList();
         }
 
         Cursor cursor = null;
         try {
-            final List<ModelType> results = new ArrayList<>();
             cursor = getReadableDatabase().query(getTableName(), null, mTripForeignKeyReferenceColumnName + "= ? AND "
                     + COLUMN_DRIVE_MARKED_FOR_DELETION + " = ?", new String[]{ Integer.toString(trip.getId()), Integer.toString(0) },
                     null, null, new OrderByColumn(mOrderBy.getOrderByColumn(), isDescending).getOrderByPredicate());
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    results.add(mSelectionBackedDatabaseAdapter.readForSelection(cursor, trip, isDescending));
-                }
-                while (cursor.moveToNext());
+            final List<ModelType> results;
+            if (cursor != null) {
+                results = mSelectionBackedDatabaseAdapter.readAllForSelection(cursor, trip, isDescending);
+            } else {
+                results = new ArrayList<>();
             }
             if (cacheResults) {
-                mPerTripCache.put(trip, results);
+                mPerTripCache.put(trip, EntityCache.fromSorted(results));
             }
             return new ArrayList<>(results);
         } finally {
@@ -138,43 +140,43 @@ public abstract class TripForeignKeyAbstractSqlTable<ModelType extends Keyed & S
     @Override
     public synchronized List<ModelType> getBlocking() {
         final List<ModelType> results = super.getBlocking();
-        final HashMap<Trip, List<ModelType>> localCache = new HashMap<>();
+        final HashMap<Trip, List<ModelType>> localResults = new HashMap<>();
         for (int i = 0; i < results.size(); i++) {
             final ModelType modelType = results.get(i);
             final Trip trip = getTripFor(modelType);
             if (!mPerTripCache.containsKey(trip)) {
                 // Note: we only populate items here that haven't been previously added to the cache
-                if (localCache.containsKey(trip)) {
-                    final List<ModelType> perTripResults = localCache.get(trip);
+                if (localResults.containsKey(trip)) {
+                    final List<ModelType> perTripResults = localResults.get(trip);
                     perTripResults.add(modelType);
                 } else {
-                    localCache.put(trip, new ArrayList<>(Collections.singletonList(modelType)));
+                    localResults.put(trip, new ArrayList<>(Collections.singletonList(modelType)));
                 }
             }
         }
-        mPerTripCache.putAll(localCache);
+        for (final Map.Entry<Trip, List<ModelType>> tripListEntry : localResults.entrySet()) {
+            mPerTripCache.put(tripListEntry.getKey(), EntityCache.fromSorted(tripListEntry.getValue()));
+        }
         return results;
     }
 
     @NonNull
-    @SuppressWarnings("unchecked")
     @Override
     public synchronized Optional<ModelType> insertBlocking(@NonNull ModelType modelType, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
         final Optional<ModelType> insertedItem = super.insertBlocking(modelType, databaseOperationMetadata);
         if (insertedItem.isPresent()) {
             final Trip trip = getTripFor(insertedItem.get());
             if (mPerTripCache.containsKey(trip)) {
-                final List<ModelType> perTripResults = mPerTripCache.get(trip);
-                perTripResults.add(insertedItem.get());
-                if (insertedItem.get() instanceof Comparable<?>) {
-                    Collections.sort((List<? extends Comparable>)perTripResults);
-                }
+                mPerTripCache.get(trip).add(insertedItem.get());
+            }
+            final Optional<TripPriceTotalsCache<ModelType>> priceTotalsCache = getTripPriceTotalsCache();
+            if (priceTotalsCache.isPresent()) {
+                priceTotalsCache.get().add(trip.getId(), insertedItem.get());
             }
         }
         return insertedItem;
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public synchronized Optional<ModelType> updateBlocking(@NonNull ModelType oldModelType, @NonNull ModelType newModelType, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
         final Optional<ModelType> updatedItem = super.updateBlocking(oldModelType, newModelType, databaseOperationMetadata);
@@ -182,27 +184,12 @@ public abstract class TripForeignKeyAbstractSqlTable<ModelType extends Keyed & S
             Logger.debug(this, "Successfully updated this item in our table");
             final Trip oldTrip = getTripFor(oldModelType);
             if (mPerTripCache.containsKey(oldTrip)) {
-                final List<ModelType> perTripResults = mPerTripCache.get(oldTrip);
-                boolean wasCachedResultRemoved = perTripResults.remove(oldModelType);
-                if (!wasCachedResultRemoved) {
-                    // If our cache is wrong, let's use the actual primary key to see if we can find it
-                    final int primaryKeyValue = newModelType.getId();
-                    Logger.debug(this, "Failed to remove {} with primary key {} from our cache. Searching through to manually remove...", newModelType.getClass(), primaryKeyValue);
-                    for (final ModelType cachedResult : perTripResults) {
-                        if (primaryKeyValue == cachedResult.getId()) {
-                            wasCachedResultRemoved = perTripResults.remove(cachedResult);
-                            if (wasCachedResultRemoved) {
-                                break;
-                            }
-                        }
-                    }
-                    if (!wasCachedResultRemoved) {
-                        Logger.warn(this, "Primary key {} was never found in our cache.", primaryKeyValue);
-                    }
-                } else {
+                final EntityCache<ModelType> perTripResults = mPerTripCache.get(oldTrip);
+                if (perTripResults.remove(oldModelType)) {
                     Logger.debug(this, "Found this item in our cache during update. Removing it");
+                } else {
+                    Logger.warn(this, "Primary key {} was never found in our cache.", oldModelType.getId());
                 }
-
             }
 
             boolean isMarkedForDeletion = false;
@@ -216,10 +203,14 @@ public abstract class TripForeignKeyAbstractSqlTable<ModelType extends Keyed & S
             final Trip newTrip = getTripFor(updatedItem.get());
             if (!isMarkedForDeletion && mPerTripCache.containsKey(newTrip)) {
                 Logger.debug(this, "This item is not marked for deletion. Adding it to our cache");
-                final List<ModelType> perTripResults = mPerTripCache.get(newTrip);
-                perTripResults.add(updatedItem.get());
-                if (updatedItem.get() instanceof Comparable<?>) {
-                    Collections.sort((List<? extends Comparable>)perTripResults);
+                mPerTripCache.get(newTrip).add(updatedItem.get());
+            }
+
+            final Optional<TripPriceTotalsCache<ModelType>> priceTotalsCache = getTripPriceTotalsCache();
+            if (priceTotalsCache.isPresent()) {
+                priceTotalsCache.get().remove(oldTrip.getId(), oldModelType);
+                if (!isMarkedForDeletion) {
+                    priceTotalsCache.get().add(newTrip.getId(), updatedItem.get());
                 }
             }
         }
@@ -232,6 +223,11 @@ public abstract class TripForeignKeyAbstractSqlTable<ModelType extends Keyed & S
         getWritableDatabase().update(getTableName(), contentValues, mTripForeignKeyReferenceColumnName + "= ?",
                 new String[]{ Integer.toString(oldTrip.getId()) });
         mPerTripCache.remove(oldTrip);
+        final Optional<TripPriceTotalsCache<ModelType>> priceTotalsCache = getTripPriceTotalsCache();
+        if (priceTotalsCache.isPresent()) {
+            priceTotalsCache.get().invalidate(oldTrip.getId());
+            priceTotalsCache.get().invalidate(newTrip.getId());
+        }
     }
 
     @Override
@@ -240,16 +236,99 @@ public abstract class TripForeignKeyAbstractSqlTable<ModelType extends Keyed & S
         if (deleteResult.isPresent()) {
             final Trip trip = getTripFor(modelType);
             if (mPerTripCache.containsKey(trip)) {
-                final List<ModelType> perTripResults = mPerTripCache.get(trip);
-                perTripResults.remove(modelType);
+                mPerTripCache.get(trip).remove(modelType);
+            }
+            final Optional<TripPriceTotalsCache<ModelType>> priceTotalsCache = getTripPriceTotalsCache();
+            if (priceTotalsCache.isPresent()) {
+                priceTotalsCache.get().remove(trip.getId(), modelType);
             }
         }
         return deleteResult;
     }
 
+    @NonNull
+    @Override
+    public synchronized List<ModelType> insertAllBlocking(@NonNull List<ModelType> modelTypes, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        final List<ModelType> insertedItems = super.insertAllBlocking(modelTypes, databaseOperationMetadata);
+        final Optional<TripPriceTotalsCache<ModelType>> priceTotalsCache = getTripPriceTotalsCache();
+        for (final ModelType insertedItem : insertedItems) {
+            final Trip trip = getTripFor(insertedItem);
+            final EntityCache<ModelType> perTripResults = mPerTripCache.get(trip);
+            if (perTripResults != null) {
+                perTripResults.add(insertedItem);
+            }
+            if (priceTotalsCache.isPresent()) {
+                priceTotalsCache.get().add(trip.getId(), insertedItem);
+            }
+        }
+        return insertedItems;
+    }
+
+    @Override
+    protected void onUpdateAllCommitted(@NonNull List<ModelType> oldModelTypes, @NonNull List<ModelType> updatedItems) {
+        super.onUpdateAllCommitted(oldModelTypes, updatedItems);
+        final Optional<TripPriceTotalsCache<ModelType>> priceTotalsCache = getTripPriceTotalsCache();
+        for (int i = 0; i < updatedItems.size(); i++) {
+            final ModelType oldModelType = oldModelTypes.get(i);
+            final ModelType updatedItem = updatedItems.get(i);
+            final Trip oldTrip = getTripFor(oldModelType);
+            final Trip newTrip = getTripFor(updatedItem);
+            final boolean isMarkedForDeletion = updatedItem.getSyncState().isMarkedForDeletion(SyncProvider.GoogleDrive);
+
+            final EntityCache<ModelType> oldPerTripResults = mPerTripCache.get(oldTrip);
+            if (oldPerTripResults != null) {
+                oldPerTripResults.remove(oldModelType);
+            }
+
+            final EntityCache<ModelType> newPerTripResults = mPerTripCache.get(newTrip);
+            if (newPerTripResults != null && !isMarkedForDeletion) {
+                newPerTripResults.add(updatedItem);
+            }
+
+            if (priceTotalsCache.isPresent()) {
+                priceTotalsCache.get().remove(oldTrip.getId(), oldModelType);
+                if (!isMarkedForDeletion) {
+                    priceTotalsCache.get().add(newTrip.getId(), updatedItem);
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void onDeleteAllCommitted(@NonNull List<ModelType> deletedItems) {
+        super.onDeleteAllCommitted(deletedItems);
+        final Optional<TripPriceTotalsCache<ModelType>> priceTotalsCache = getTripPriceTotalsCache();
+        for (final ModelType deletedItem : deletedItems) {
+            final Trip trip = getTripFor(deletedItem);
+            final EntityCache<ModelType> perTripResults = mPerTripCache.get(trip);
+            if (perTripResults != null) {
+                perTripResults.remove(deletedItem);
+            }
+            if (priceTotalsCache.isPresent()) {
+                priceTotalsCache.get().remove(trip.getId(), deletedItem);
+            }
+        }
+    }
+
     public synchronized void deleteParentBlocking(@NonNull Trip trip) {
-        getWritableDatabase().delete(getTableName(), mTripForeignKeyReferenceColumnName + "= ?", new String[]{ Integer.toString(trip.getId()) });
+        final String[] whereArgs = new String[]{ Integer.toString(trip.getId()) };
+        final SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            final Optional<FullTextSearchIndex<ModelType>> searchIndex = getFullTextSearchIndex();
+            if (searchIndex.isPresent()) {
+                searchIndex.get().removeWhere(db, getTableName() + "." + mTripForeignKeyReferenceColumnName + " = ?", whereArgs);
+            }
+            db.delete(getTableName(), mTripForeignKeyReferenceColumnName + "= ?", whereArgs);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
         mPerTripCache.remove(trip);
+        final Optional<TripPriceTotalsCache<ModelType>> priceTotalsCache = getTripPriceTotalsCache();
+        if (priceTotalsCache.isPresent()) {
+            priceTotalsCache.get().invalidate(trip.getId());
+        }
     }
 
     @Override
@@ -258,17 +337,17 @@ public abstract class TripForeignKeyAbstractSqlTable<ModelType extends Keyed & S
         if (success) {
             // Clear out our cached data, so we're not out of sync
             mPerTripCache.clear();
+            clearTripPriceTotals();
         }
         return success;
     }
 
     @NonNull
     public synchronized Optional<ModelType> findByPrimaryKeyBlocking(int primaryKeyValue) {
-        for (final Map.Entry<Trip, List<ModelType>> tripListEntry : mPerTripCache.entrySet()) {
-            for (final ModelType cachedResult : tripListEntry.getValue()) {
-                if (cachedResult.getId() == primaryKeyValue) {
-                    return Optional.of(cachedResult);
-                }
+        for (final EntityCache<ModelType> perTripResults : mPerTripCache.values()) {
+            final ModelType cachedResult = perTripResults.findByPrimaryKey(primaryKeyValue);
+            if (cachedResult != null) {
+                return Optional.of(cachedResult);
             }
         }
 
@@ -277,11 +356,11 @@ public abstract class TripForeignKeyAbstractSqlTable<ModelType extends Keyed & S
             cursor = getReadableDatabase().query(getTableName(), null, COLUMN_ID + " = ? AND " + COLUMN_DRIVE_MARKED_FOR_DELETION + " = ?", new String[]{String.valueOf(primaryKeyValue), Integer.toString(0)}, null, null, null);
             if (cursor != null && cursor.moveToFirst()) {
                 final ModelType foundModel = databaseAdapter.read(cursor);
-                final List<ModelType> cachedResultsList = getBlocking(getTripFor(foundModel), true); // Note: We do this b/c of issues with the receipt index field
-                for (final ModelType cachedResult : cachedResultsList) {
-                    if (cachedResult.getId() == primaryKeyValue) {
-                        return Optional.of(cachedResult);
-                    }
+                final Trip trip = getTripFor(foundModel);
+                getBlocking(trip, true); // Note: We do this b/c of issues with the receipt index field
+                final EntityCache<ModelType> perTripResults = mPerTripCache.get(trip);
+                if (perTripResults != null) {
+                    return Optional.ofNullable(perTripResults.findByPrimaryKey(primaryKeyValue));
                 }
             }
         } finally {
@@ -295,8 +374,77 @@ public abstract class TripForeignKeyAbstractSqlTable<ModelType extends Keyed & S
 
     @Override
     public synchronized void clearCache() {
-        super.clearCache();
         mPerTripCache.clear();
+        clearTripPriceTotals();
+        // Note: We clear our base cache last, since this notifies our cache cleared stream
+        super.clearCache();
+    }
+
+    /**
+     * Gets the running total of the prices of all items in a particular trip. The first call for a given trip loads all
+     * of its items, after which the total is maintained incrementally as items are inserted, updated, or deleted
+     *
+     * @param trip             the {@link Trip} to get the total for (in its trip currency)
+     * @param onlyReimbursable {@code true} if we should only include reimbursable items
+     * @return a copy of the current {@link PriceTotals} for this trip
+     */
+    @NonNull
+    public synchronized PriceTotals getPriceTotalsBlocking(@NonNull Trip trip, boolean onlyReimbursable) {
+        return getLoadedTripPriceTotalsCache(trip).getTotals(trip.getId(), trip.getTripCurrency(), onlyReimbursable);
+    }
+
+    /**
+     * Gets the running total of the prices of all items in a particular trip that occur on the current day
+     *
+     * @param trip             the {@link Trip} to get the total for (in its trip currency)
+     * @param onlyReimbursable {@code true} if we should only include reimbursable items
+     * @return a copy of the current daily {@link PriceTotals} for this trip
+     */
+    @NonNull
+    public synchronized PriceTotals getDailyPriceTotalsBlocking(@NonNull Trip trip, boolean onlyReimbursable) {
+        return getLoadedTripPriceTotalsCache(trip).getDailyTotals(trip.getId(), trip.getTripCurrency(), onlyReimbursable);
+    }
+
+    /**
+     * Discards the running price totals (and cached items) for a particular trip, so these will be rebuilt in full from
+     * the database the next time that they're requested
+     *
+     * @param trip the {@link Trip} to invalidate
+     */
+    public synchronized void invalidatePriceTotals(@NonNull Trip trip) {
+        mPerTripCache.remove(trip);
+        final Optional<TripPriceTotalsCache<ModelType>> priceTotalsCache = getTripPriceTotalsCache();
+        if (priceTotalsCache.isPresent()) {
+            priceTotalsCache.get().invalidate(trip.getId());
+        }
+    }
+
+    /**
+     * Tables whose items have a price should override this method to return a {@link TripPriceTotalsCache}, which we
+     * will then keep up to date as part of each of our write operations
+     *
+     * @return an {@link Optional} containing the {@link TripPriceTotalsCache} for this table or {@link Optional#absent()}
+     */
+    @NonNull
+    protected Optional<TripPriceTotalsCache<ModelType>> getTripPriceTotalsCache() {
+        return Optional.absent();
+    }
+
+    @NonNull
+    private TripPriceTotalsCache<ModelType> getLoadedTripPriceTotalsCache(@NonNull Trip trip) {
+        final Optional<TripPriceTotalsCache<ModelType>> priceTotalsCache = getTripPriceTotalsCache();
+        Preconditions.checkState(priceTotalsCache.isPresent(), "%s does not support price totals", getTableName());
+        if (!priceTotalsCache.get().contains(trip.getId())) {
+            priceTotalsCache.get().put(trip.getId(), getBlocking(trip, true));
+        }
+        return priceTotalsCache.get();
+    }
+
+    private void clearTripPriceTotals() {
+        final Optional<TripPriceTotalsCache<ModelType>> priceTotalsCache = getTripPriceTotalsCache();
+        if (priceTotalsCache.isPresent()) {
+            priceTotalsCache.get().clear();
+        }
     }
 
     /**
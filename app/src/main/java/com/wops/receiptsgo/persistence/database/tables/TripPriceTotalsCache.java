@@ -0,0 +1,254 @@
+package com.wops.receiptsgo.persistence.database.tables;
+
+import androidx.annotation.NonNull;
+
+import com.google.common.base.Preconditions;
+
+import org.joda.money.CurrencyUnit;
+
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+import com.wops.receiptsgo.model.Keyed;
+import com.wops.receiptsgo.model.Price;
+import com.wops.receiptsgo.model.impl.PriceTotals;
+
+/**
+ * Maintains running, per-trip price totals for the items of a particular table, so we can determine the total price and
+ * daily sub-total of a trip without re-loading and re-summing all of its items after every single edit.
+ * <p>
+ * Each trip is loaded in full once (via {@link #put(int, Collection)}), after which all inserts, updates, and deletes
+ * are applied as deltas against the current totals. We track the contribution of each item by its primary key, so an
+ * update always subtracts exactly what was previously added for that item, even if the caller's "old" model is stale.
+ * Totals are kept both for all items and for reimbursable items only, and are further broken down by day in order to
+ * support our daily sub-totals.
+ * </p>
+ * <p>
+ * As with our {@link EntityCache}, mutations for trips that have not been loaded are ignored. This class is not
+ * thread-safe. Callers are expected to synchronize access to it (as our tables already do).
+ * </p>
+ *
+ * @param <ModelType> the model object type, whose prices we total
+ */
+public final class TripPriceTotalsCache<ModelType extends Keyed> {
+
+    /**
+     * Determines how each {@link ModelType} contributes to our totals
+     *
+     * @param <ModelType> the model object type, whose prices we total
+     */
+    public interface Adapter<ModelType> {
+
+        @NonNull
+        Price getPrice(@NonNull ModelType modelType);
+
+        @NonNull
+        Date getDate(@NonNull ModelType modelType);
+
+        boolean isReimbursable(@NonNull ModelType modelType);
+    }
+
+    private final Adapter<ModelType> adapter;
+    private final Map<Integer, TripTotals> tripTotals = new HashMap<>();
+
+    public TripPriceTotalsCache(@NonNull Adapter<ModelType> adapter) {
+        this.adapter = Preconditions.checkNotNull(adapter);
+    }
+
+    /**
+     * @param tripId the primary key of a trip
+     * @return {@code true} if this trip has been loaded into this cache. {@code false} otherwise
+     */
+    public boolean contains(int tripId) {
+        return tripTotals.containsKey(tripId);
+    }
+
+    /**
+     * (Re-)loads the full set of items for a particular trip, replacing any totals that we were previously tracking
+     *
+     * @param tripId the primary key of the trip
+     * @param items  all (non-deleted) items for this trip
+     */
+    public void put(int tripId, @NonNull Collection<ModelType> items) {
+        final TripTotals totals = new TripTotals();
+        for (final ModelType item : items) {
+            totals.contributions.put(item.getId(), new Contribution(adapter.getPrice(item), adapter.getDate(item), adapter.isReimbursable(item)));
+        }
+        tripTotals.put(tripId, totals);
+    }
+
+    /**
+     * Adds an item to the totals of a trip (or replaces the previous contribution of an item with the same primary key)
+     *
+     * @param tripId the primary key of the parent trip
+     * @param item   the {@link ModelType} to add
+     */
+    public void add(int tripId, @NonNull ModelType item) {
+        final TripTotals totals = tripTotals.get(tripId);
+        if (totals != null) {
+            totals.remove(item.getId());
+            totals.add(item.getId(), new Contribution(adapter.getPrice(item), adapter.getDate(item), adapter.isReimbursable(item)));
+        }
+    }
+
+    /**
+     * Removes an item from the totals of a trip
+     *
+     * @param tripId the primary key of the parent trip
+     * @param item   the {@link ModelType} to remove
+     */
+    public void remove(int tripId, @NonNull ModelType item) {
+        final TripTotals totals = tripTotals.get(tripId);
+        if (totals != null) {
+            totals.remove(item.getId());
+        }
+    }
+
+    /**
+     * Forgets all totals for a particular trip, so these will be fully reloaded the next time that they're required
+     *
+     * @param tripId the primary key of the trip
+     */
+    public void invalidate(int tripId) {
+        tripTotals.remove(tripId);
+    }
+
+    public void clear() {
+        tripTotals.clear();
+    }
+
+    /**
+     * Gets the total price of all items in a trip. The trip must have been loaded via {@link #put(int, Collection)} first
+     *
+     * @param tripId            the primary key of the trip
+     * @param baseCurrency      the currency of this trip, which we will total our prices in
+     * @param onlyReimbursable  {@code true} if we should only include reimbursable items
+     * @return a copy of the current {@link PriceTotals} for this trip
+     */
+    @NonNull
+    public PriceTotals getTotals(int tripId, @NonNull CurrencyUnit baseCurrency, boolean onlyReimbursable) {
+        final TripTotals totals = getLoadedTripTotals(tripId, baseCurrency);
+        return (onlyReimbursable ? totals.reimbursableTotals : totals.allTotals).copy();
+    }
+
+    /**
+     * Gets the total price of all items in a trip that occur on the current day. The trip must have been loaded via
+     * {@link #put(int, Collection)} first
+     *
+     * @param tripId            the primary key of the trip
+     * @param baseCurrency      the currency of this trip, which we will total our prices in
+     * @param onlyReimbursable  {@code true} if we should only include reimbursable items
+     * @return a copy of the current daily {@link PriceTotals} for this trip
+     */
+    @NonNull
+    public PriceTotals getDailyTotals(int tripId, @NonNull CurrencyUnit baseCurrency, boolean onlyReimbursable) {
+        final TripTotals totals = getLoadedTripTotals(tripId, baseCurrency);
+        final int today = getDayKey(new Date(System.currentTimeMillis()), totals.timeZone);
+        final Map<Integer, PriceTotals> dailyTotals = onlyReimbursable ? totals.reimbursableDailyTotals : totals.allDailyTotals;
+        final PriceTotals todaysTotals = dailyTotals.get(today);
+        return todaysTotals != null ? todaysTotals.copy() : new PriceTotals(baseCurrency);
+    }
+
+    @NonNull
+    private TripTotals getLoadedTripTotals(int tripId, @NonNull CurrencyUnit baseCurrency) {
+        final TripTotals totals = tripTotals.get(tripId);
+        Preconditions.checkState(totals != null, "Trip %s has not been loaded", tripId);
+
+        // Our sums depend on both the trip currency and the time zone, so rebuild these (in memory) if either changes
+        final TimeZone timeZone = TimeZone.getDefault();
+        if (!baseCurrency.equals(totals.baseCurrency) || !timeZone.equals(totals.timeZone)) {
+            totals.rebuild(baseCurrency, timeZone);
+        }
+        return totals;
+    }
+
+    private static int getDayKey(@NonNull Date date, @NonNull TimeZone timeZone) {
+        final Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.setTime(date);
+        return calendar.get(Calendar.YEAR) * 10000 + (calendar.get(Calendar.MONTH) + 1) * 100 + calendar.get(Calendar.DAY_OF_MONTH);
+    }
+
+    private static final class Contribution {
+        private final Price price;
+        private final Date date;
+        private final boolean isReimbursable;
+
+        Contribution(@NonNull Price price, @NonNull Date date, boolean isReimbursable) {
+            this.price = price;
+            this.date = date;
+            this.isReimbursable = isReimbursable;
+        }
+    }
+
+    private static final class TripTotals {
+        private final Map<Integer, Contribution> contributions = new HashMap<>();
+        private final Map<Integer, PriceTotals> allDailyTotals = new HashMap<>();
+        private final Map<Integer, PriceTotals> reimbursableDailyTotals = new HashMap<>();
+
+        // Note: These remain null until we're first asked for our totals in a particular currency
+        private CurrencyUnit baseCurrency;
+        private TimeZone timeZone;
+        private PriceTotals allTotals;
+        private PriceTotals reimbursableTotals;
+
+        void add(int id, @NonNull Contribution contribution) {
+            contributions.put(id, contribution);
+            apply(contribution, true);
+        }
+
+        void remove(int id) {
+            final Contribution contribution = contributions.remove(id);
+            if (contribution != null) {
+                apply(contribution, false);
+            }
+        }
+
+        void rebuild(@NonNull CurrencyUnit baseCurrency, @NonNull TimeZone timeZone) {
+            this.baseCurrency = baseCurrency;
+            this.timeZone = timeZone;
+            this.allTotals = new PriceTotals(baseCurrency);
+            this.reimbursableTotals = new PriceTotals(baseCurrency);
+            this.allDailyTotals.clear();
+            this.reimbursableDailyTotals.clear();
+            for (final Contribution contribution : contributions.values()) {
+                apply(contribution, true);
+            }
+        }
+
+        private void apply(@NonNull Contribution contribution, boolean isAddition) {
+            if (baseCurrency == null) {
+                return; // We'll build these totals in full once they're first requested
+            }
+
+            final int dayKey = getDayKey(contribution.date, timeZone);
+            apply(allTotals, contribution.price, isAddition);
+            apply(getDailyTotals(allDailyTotals, dayKey), contribution.price, isAddition);
+            if (contribution.isReimbursable) {
+                apply(reimbursableTotals, contribution.price, isAddition);
+                apply(getDailyTotals(reimbursableDailyTotals, dayKey), contribution.price, isAddition);
+            }
+        }
+
+        private void apply(@NonNull PriceTotals totals, @NonNull Price price, boolean isAddition) {
+            if (isAddition) {
+                totals.add(price);
+            } else {
+                totals.subtract(price);
+            }
+        }
+
+        @NonNull
+        private PriceTotals getDailyTotals(@NonNull Map<Integer, PriceTotals> dailyTotals, int dayKey) {
+            PriceTotals totals = dailyTotals.get(dayKey);
+            if (totals == null) {
+                totals = new PriceTotals(baseCurrency);
+                dailyTotals.put(dayKey, totals);
+            }
+            return totals;
+        }
+    }
+}
@@ -7,13 +7,17 @@ import android.database.sqlite.SQLiteOpenHelper;
 import androidx.annotation.NonNull;
 import android.text.TextUtils;
 
+import com.hadisatrio.optional.Optional;
+
 import java.io.File;
+import java.util.Arrays;
 
 import com.wops.receiptsgo.model.Trip;
 import com.wops.receiptsgo.persistence.database.defaults.TableDefaultsCustomizer;
 import com.wops.receiptsgo.persistence.database.tables.adapters.SyncStateAdapter;
 import com.wops.receiptsgo.persistence.database.tables.adapters.TripDatabaseAdapter;
 import com.wops.receiptsgo.persistence.database.tables.ordering.OrderByColumn;
+import com.wops.receiptsgo.persistence.database.tables.search.FullTextSearchIndex;
 import com.wops.receiptsgo.settings.UserPreferenceManager;
 import com.wops.analytics.log.Logger;
 import wb.android.storage.StorageManager;
@@ -37,13 +41,26 @@ public class TripsTable extends AbstractSqlTable<Trip> {
     public static final String COLUMN_COMMENT_HIDDEN_AUTO_COMPLETE = "comment_hidden_auto_complete";
     public static final String COLUMN_COSTCENTER_HIDDEN_AUTO_COMPLETE = "costcenter_hidden_auto_complete";
 
+    // Full-text search index columns:
+    public static final String SEARCH_COLUMN_NAME = "name";
+    public static final String SEARCH_COLUMN_COMMENT = "comment";
+    public static final String SEARCH_COLUMN_COST_CENTER = "cost_center";
+
     @SuppressWarnings("unused")
     @Deprecated
     private static final String COLUMN_PRICE = "price"; // Once used but keeping to avoid future name conflicts
 
+    private final FullTextSearchIndex<Trip> fullTextSearchIndex;
+
     public TripsTable(@NonNull SQLiteOpenHelper sqLiteOpenHelper, @NonNull StorageManager storageManager, @NonNull UserPreferenceManager preferences) {
         super(sqLiteOpenHelper, TABLE_NAME, new TripDatabaseAdapter(storageManager, preferences, new SyncStateAdapter()),
                 new OrderByColumn(TripsTable.COLUMN_TO, true));
+
+        this.fullTextSearchIndex = new FullTextSearchIndex<>(TABLE_NAME,
+                Arrays.asList(SEARCH_COLUMN_NAME, SEARCH_COLUMN_COMMENT, SEARCH_COLUMN_COST_CENTER),
+                "SELECT " + TABLE_NAME + "." + COLUMN_ID + ", " + TABLE_NAME + "." + COLUMN_NAME + ", "
+                        + TABLE_NAME + "." + COLUMN_COMMENT + ", " + TABLE_NAME + "." + COLUMN_COST_CENTER + " FROM " + TABLE_NAME,
+                trip -> new String[]{trip.getName(), trip.getComment(), trip.getCostCenter()});
     }
 
     @Override
@@ -72,6 +89,7 @@ public class TripsTable extends AbstractSqlTable<Trip> {
                 + ");";
         Logger.debug(this, trips);
         db.execSQL(trips);
+        fullTextSearchIndex.onCreate(db);
     }
 
     @Override
@@ -209,6 +227,16 @@ public class TripsTable extends AbstractSqlTable<Trip> {
             db.execSQL(alterReceipts3);
         }
 
+        if (oldVersion <= 21) { // Added a full-text search index
+            fullTextSearchIndex.onUpgrade(db);
+        }
+
+    }
+
+    @NonNull
+    @Override
+    protected Optional<FullTextSearchIndex<Trip>> getFullTextSearchIndex() {
+        return Optional.of(fullTextSearchIndex);
     }
 
 }
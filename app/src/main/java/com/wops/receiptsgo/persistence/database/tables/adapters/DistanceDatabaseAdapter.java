@@ -11,6 +11,8 @@ import com.hadisatrio.optional.Optional;
 import org.joda.money.CurrencyUnit;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 import com.wops.receiptsgo.model.Distance;
@@ -108,6 +110,19 @@ public final class DistanceDatabaseAdapter implements SelectionBackedDatabaseAda
         return builder.build();
     }
 
+    @NonNull
+    @Override
+    public List<Distance> readAllForSelection(@NonNull Cursor cursor, @NonNull Trip trip, boolean isDescending) {
+        final List<Distance> distances = new ArrayList<>(Math.max(cursor.getCount(), 0));
+        if (cursor.moveToFirst()) {
+            do {
+                distances.add(readForSelection(cursor, trip, isDescending));
+            }
+            while (cursor.moveToNext());
+        }
+        return distances;
+    }
+
     @NonNull
     @Override
     public ContentValues write(@NonNull Distance distance, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
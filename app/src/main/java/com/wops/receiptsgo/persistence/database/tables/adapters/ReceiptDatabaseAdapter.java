@@ -5,6 +5,7 @@ import android.database.Cursor;
 import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.google.common.base.Preconditions;
 import com.hadisatrio.optional.Optional;
@@ -14,9 +15,18 @@ import org.joda.money.CurrencyUnit;
 import java.io.File;
 import java.math.BigDecimal;
 import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import com.wops.receiptsgo.model.Category;
+import com.wops.receiptsgo.model.Keyed;
 import com.wops.receiptsgo.model.PaymentMethod;
 import com.wops.receiptsgo.model.Receipt;
 import com.wops.receiptsgo.model.Trip;
@@ -69,146 +79,29 @@ public final class ReceiptDatabaseAdapter implements SelectionBackedDatabaseAdap
     @NonNull
     @Override
     public Receipt readForSelection(@NonNull Cursor cursor, @NonNull Trip trip, boolean isDescending) {
+        return new ReceiptCursorReader(cursor, trip, isDescending, false).read();
+    }
 
-        final int idIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_ID);
-        final int uuidIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_UUID);
-        final int pathIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_PATH);
-        final int nameIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_NAME);
-        final int categoryIdIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_CATEGORY_ID);
-        final int priceIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_PRICE);
-        final int taxIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_TAX);
-        final int tax2Index = cursor.getColumnIndex(ReceiptsTable.COLUMN_TAX2);
-        final int exchangeRateIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_EXCHANGE_RATE);
-        final int dateIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_DATE);
-        final int timeZoneIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_TIMEZONE);
-        final int commentIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_COMMENT);
-        final int reimbursableIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_REIMBURSABLE);
-        final int currencyIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_ISO4217);
-        final int fullPageIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_NOTFULLPAGEIMAGE);
-        final int paymentMethodIdIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_PAYMENT_METHOD_ID);
-        final int nameHiddenFromAutoCompleteIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_NAME_HIDDEN_AUTO_COMPLETE);
-        final int commentHiddenFromAutoCompleteIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_COMMENT_HIDDEN_AUTO_COMPLETE);
-        final int extra_editText_1_Index = cursor.getColumnIndex(ReceiptsTable.COLUMN_EXTRA_EDITTEXT_1);
-        final int extra_editText_2_Index = cursor.getColumnIndex(ReceiptsTable.COLUMN_EXTRA_EDITTEXT_2);
-        final int extra_editText_3_Index = cursor.getColumnIndex(ReceiptsTable.COLUMN_EXTRA_EDITTEXT_3);
-        final int orderIdIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_CUSTOM_ORDER_ID);
-
-        final int id = cursor.getInt(idIndex);
-        final UUID uuid = UUID.fromString(cursor.getString(uuidIndex));
-        final String path = cursor.getString(pathIndex);
-        final String name = cursor.getString(nameIndex);
-
-        final int categoryId = cursor.getInt(categoryIdIndex);
-        final double priceDouble = cursor.getDouble(priceIndex);
-        final double taxDouble = cursor.getDouble(taxIndex);
-        final double tax2Double = cursor.getDouble(tax2Index);
-        final double exchangeRateDouble = cursor.getDouble(exchangeRateIndex);
-        final String priceString = cursor.getString(priceIndex);
-        final String taxString = cursor.getString(taxIndex);
-        final String tax2String = cursor.getString(tax2Index);
-        final String exchangeRateString = cursor.getString(exchangeRateIndex);
-        final long date = cursor.getLong(dateIndex);
-        final String timezone = (timeZoneIndex > 0) ? cursor.getString(timeZoneIndex) : null;
-        final String possiblyNullComment = cursor.getString(commentIndex);
-        final String comment = possiblyNullComment != null ? possiblyNullComment : "";
-        final boolean reimbursable = cursor.getInt(reimbursableIndex) > 0;
-        final String currency = cursor.getString(currencyIndex);
-        final boolean fullPage = !(cursor.getInt(fullPageIndex) > 0);
-        final int paymentMethodId = cursor.getInt(paymentMethodIdIndex);
-        final boolean isNameHiddenFromAutoComplete = cursor.getInt(nameHiddenFromAutoCompleteIndex) > 0;
-        final boolean isCommentHiddenFromAutoComplete = cursor.getInt(commentHiddenFromAutoCompleteIndex) > 0;
-        final String extra_editText_1 = cursor.getString(extra_editText_1_Index);
-        final String extra_editText_2 = cursor.getString(extra_editText_2_Index);
-        final String extra_editText_3 = cursor.getString(extra_editText_3_Index);
-        final long orderId = cursor.getLong(orderIdIndex);
-        File file = null;
-        if (!TextUtils.isEmpty(path) && !DatabaseHelper.NO_DATA.equals(path)) {
-            file = mStorageManager.getFile(trip.getDirectory(), path);
-            if (!file.exists()) {
-                file = null;
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Loading a trip may require us to read thousands of receipts, so we resolve all of our per-query state a single
+     * time here instead of once per row: the column indices of this cursor, the categories and payment methods that
+     * we reference, and the list of files in the trip directory (instead of checking whether each receipt file exists)
+     * </p>
+     */
+    @NonNull
+    @Override
+    public List<Receipt> readAllForSelection(@NonNull Cursor cursor, @NonNull Trip trip, boolean isDescending) {
+        final List<Receipt> receipts = new ArrayList<>(Math.max(cursor.getCount(), 0));
+        if (cursor.moveToFirst()) {
+            final ReceiptCursorReader reader = new ReceiptCursorReader(cursor, trip, isDescending, true);
+            do {
+                receipts.add(reader.read());
             }
+            while (cursor.moveToNext());
         }
-        final SyncState syncState = mSyncStateAdapter.read(cursor);
-
-        // TODO: How to use JOINs w/o blocking
-        final Category category = mCategoriesTable.findByPrimaryKey(categoryId)
-                .map(Optional::of)
-                .onErrorReturn(ignored -> Optional.absent())
-                .blockingGet()
-                .orNull();
-
-        final PaymentMethod paymentMethod = mPaymentMethodTable.findByPrimaryKey(paymentMethodId)
-                .map(Optional::of)
-                .onErrorReturn(ignored -> Optional.absent())
-                .blockingGet()
-                .orNull();
-
-        final int index = isDescending ? cursor.getCount() - cursor.getPosition() : cursor.getPosition() + 1;
-
-        final ReceiptBuilderFactory builder = new ReceiptBuilderFactory(id);
-        builder.setUuid(uuid)
-                .setTrip(trip)
-                .setName(name)
-                .setFile(file)
-                .setDate(date)
-                .setTimeZone(timezone)
-                .setComment(comment)
-                .setIsReimbursable(reimbursable)
-                .setCurrency(CurrencyUtils.INSTANCE.isCurrencySupported(currency) ? CurrencyUnit.of(currency) : CurrencyUtils.INSTANCE.getDefaultCurrency())
-                .setIsFullPage(fullPage)
-                .setIndex(index)
-                .setNameHiddenFromAutoComplete(isNameHiddenFromAutoComplete)
-                .setCommentHiddenFromAutoComplete(isCommentHiddenFromAutoComplete)
-                .setExtraEditText1(extra_editText_1)
-                .setExtraEditText2(extra_editText_2)
-                .setExtraEditText3(extra_editText_3)
-                .setSyncState(syncState)
-                .setCustomOrderId(orderId);
-
-        if (category != null) {
-            builder.setCategory(category);
-        }
-
-        if (paymentMethod != null) {
-            builder.setPaymentMethod(paymentMethod);
-        }
-
-
-        /*
-         * Please note that a very frustrating bug exists here. Android cursors only return the first 6
-         * characters of a price string if that string contains a '.' character. It returns all of them
-         * if not. This means we'll break for prices over 5 digits unless we are using a comma separator,
-         * which we'd do in the EU. Stupid check below to un-break this. Stupid Android.
-         *
-         * TODO: Longer term, everything should be saved with a decimal point
-         * https://code.google.com/p/android/issues/detail?id=22219
-         */
-        final String decimalSeparator = String.valueOf(DecimalFormatSymbols.getInstance().getDecimalSeparator());
-
-        if (!TextUtils.isEmpty(priceString) && priceString.contains(",")) {
-            builder.setPrice(priceString.replace(",", decimalSeparator));
-        } else {
-            builder.setPrice(priceDouble);
-        }
-        if (!TextUtils.isEmpty(taxString) && taxString.contains(",")) {
-            builder.setTax(taxString.replace(",", decimalSeparator));
-        } else {
-            builder.setTax(taxDouble);
-        }
-        if (!TextUtils.isEmpty(tax2String) && tax2String.contains(",")) {
-            builder.setTax2(tax2String.replace(",", decimalSeparator));
-        } else {
-            builder.setTax2(tax2Double);
-        }
-        final ExchangeRateBuilderFactory exchangeRateBuilder = new ExchangeRateBuilderFactory().setBaseCurrency(currency);
-        if (!TextUtils.isEmpty(exchangeRateString) && exchangeRateString.contains(",")) {
-            exchangeRateBuilder.setRate(trip.getTripCurrency(), exchangeRateString.replace(",", decimalSeparator));
-        } else {
-            exchangeRateBuilder.setRate(trip.getTripCurrency(), exchangeRateDouble);
-        }
-        builder.setExchangeRate(exchangeRateBuilder.build());
-
-        return builder.build();
+        return receipts;
     }
 
     @NonNull
@@ -276,5 +169,239 @@ public final class ReceiptDatabaseAdapter implements SelectionBackedDatabaseAdap
                 .setSyncState(mSyncStateAdapter.get(receipt.getSyncState(), databaseOperationMetadata)).build();
     }
 
+    /**
+     * Reads receipts from a particular {@link Cursor}, caching the column indices (and any other per-query state) that
+     * we would otherwise have to resolve for each row
+     */
+    private final class ReceiptCursorReader {
+
+        private final Cursor cursor;
+        private final Trip trip;
+        private final boolean isDescending;
+        private final int count;
+        private final String decimalSeparator;
+
+        private final int idIndex;
+        private final int uuidIndex;
+        private final int pathIndex;
+        private final int nameIndex;
+        private final int categoryIdIndex;
+        private final int priceIndex;
+        private final int taxIndex;
+        private final int tax2Index;
+        private final int exchangeRateIndex;
+        private final int dateIndex;
+        private final int timeZoneIndex;
+        private final int commentIndex;
+        private final int reimbursableIndex;
+        private final int currencyIndex;
+        private final int fullPageIndex;
+        private final int paymentMethodIdIndex;
+        private final int nameHiddenFromAutoCompleteIndex;
+        private final int commentHiddenFromAutoCompleteIndex;
+        private final int extra_editText_1_Index;
+        private final int extra_editText_2_Index;
+        private final int extra_editText_3_Index;
+        private final int orderIdIndex;
+
+        private final Map<Integer, Category> categories;
+        private final Map<Integer, PaymentMethod> paymentMethods;
+        private final Set<String> existingFileNames;
+
+        /**
+         * @param cursor       the {@link Cursor} to read from
+         * @param trip         the parent {@link Trip} of each receipt in this cursor
+         * @param isDescending {@code true} for descending order, {@code false} for ascending
+         * @param isBulkRead   {@code true} if we're reading multiple rows, in which case we resolve our categories,
+         *                     payment methods, and existing files up front. Otherwise, we look these up as needed
+         */
+        ReceiptCursorReader(@NonNull Cursor cursor, @NonNull Trip trip, boolean isDescending, boolean isBulkRead) {
+            this.cursor = cursor;
+            this.trip = trip;
+            this.isDescending = isDescending;
+            this.count = cursor.getCount();
+            this.decimalSeparator = String.valueOf(DecimalFormatSymbols.getInstance().getDecimalSeparator());
+
+            idIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_ID);
+            uuidIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_UUID);
+            pathIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_PATH);
+            nameIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_NAME);
+            categoryIdIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_CATEGORY_ID);
+            priceIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_PRICE);
+            taxIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_TAX);
+            tax2Index = cursor.getColumnIndex(ReceiptsTable.COLUMN_TAX2);
+            exchangeRateIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_EXCHANGE_RATE);
+            dateIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_DATE);
+            timeZoneIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_TIMEZONE);
+            commentIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_COMMENT);
+            reimbursableIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_REIMBURSABLE);
+            currencyIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_ISO4217);
+            fullPageIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_NOTFULLPAGEIMAGE);
+            paymentMethodIdIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_PAYMENT_METHOD_ID);
+            nameHiddenFromAutoCompleteIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_NAME_HIDDEN_AUTO_COMPLETE);
+            commentHiddenFromAutoCompleteIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_COMMENT_HIDDEN_AUTO_COMPLETE);
+            extra_editText_1_Index = cursor.getColumnIndex(ReceiptsTable.COLUMN_EXTRA_EDITTEXT_1);
+            extra_editText_2_Index = cursor.getColumnIndex(ReceiptsTable.COLUMN_EXTRA_EDITTEXT_2);
+            extra_editText_3_Index = cursor.getColumnIndex(ReceiptsTable.COLUMN_EXTRA_EDITTEXT_3);
+            orderIdIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_CUSTOM_ORDER_ID);
+
+            if (isBulkRead) {
+                categories = toMap(mCategoriesTable);
+                paymentMethods = toMap(mPaymentMethodTable);
+                existingFileNames = listFileNames(trip.getDirectory());
+            } else {
+                categories = null;
+                paymentMethods = null;
+                existingFileNames = null;
+            }
+        }
+
+        @NonNull
+        Receipt read() {
+            final int id = cursor.getInt(idIndex);
+            final UUID uuid = UUID.fromString(cursor.getString(uuidIndex));
+            final String path = cursor.getString(pathIndex);
+            final String name = cursor.getString(nameIndex);
+
+            final int categoryId = cursor.getInt(categoryIdIndex);
+            final double priceDouble = cursor.getDouble(priceIndex);
+            final double taxDouble = cursor.getDouble(taxIndex);
+            final double tax2Double = cursor.getDouble(tax2Index);
+            final double exchangeRateDouble = cursor.getDouble(exchangeRateIndex);
+            final String priceString = cursor.getString(priceIndex);
+            final String taxString = cursor.getString(taxIndex);
+            final String tax2String = cursor.getString(tax2Index);
+            final String exchangeRateString = cursor.getString(exchangeRateIndex);
+            final long date = cursor.getLong(dateIndex);
+            final String timezone = (timeZoneIndex > 0) ? cursor.getString(timeZoneIndex) : null;
+            final String possiblyNullComment = cursor.getString(commentIndex);
+            final String comment = possiblyNullComment != null ? possiblyNullComment : "";
+            final boolean reimbursable = cursor.getInt(reimbursableIndex) > 0;
+            final String currency = cursor.getString(currencyIndex);
+            final boolean fullPage = !(cursor.getInt(fullPageIndex) > 0);
+            final int paymentMethodId = cursor.getInt(paymentMethodIdIndex);
+            final boolean isNameHiddenFromAutoComplete = cursor.getInt(nameHiddenFromAutoCompleteIndex) > 0;
+            final boolean isCommentHiddenFromAutoComplete = cursor.getInt(commentHiddenFromAutoCompleteIndex) > 0;
+            final String extra_editText_1 = cursor.getString(extra_editText_1_Index);
+            final String extra_editText_2 = cursor.getString(extra_editText_2_Index);
+            final String extra_editText_3 = cursor.getString(extra_editText_3_Index);
+            final long orderId = cursor.getLong(orderIdIndex);
+            File file = null;
+            if (!TextUtils.isEmpty(path) && !DatabaseHelper.NO_DATA.equals(path)) {
+                file = mStorageManager.getFile(trip.getDirectory(), path);
+                if (!exists(file, path)) {
+                    file = null;
+                }
+            }
+            final SyncState syncState = mSyncStateAdapter.read(cursor);
+
+            final Category category = categories != null ? categories.get(categoryId) : findByPrimaryKey(mCategoriesTable, categoryId);
+            final PaymentMethod paymentMethod = paymentMethods != null ? paymentMethods.get(paymentMethodId) : findByPrimaryKey(mPaymentMethodTable, paymentMethodId);
+
+            final int index = isDescending ? count - cursor.getPosition() : cursor.getPosition() + 1;
+
+            final ReceiptBuilderFactory builder = new ReceiptBuilderFactory(id);
+            builder.setUuid(uuid)
+                    .setTrip(trip)
+                    .setName(name)
+                    .setFile(file)
+                    .setDate(date)
+                    .setTimeZone(timezone)
+                    .setComment(comment)
+                    .setIsReimbursable(reimbursable)
+                    .setCurrency(CurrencyUtils.INSTANCE.isCurrencySupported(currency) ? CurrencyUnit.of(currency) : CurrencyUtils.INSTANCE.getDefaultCurrency())
+                    .setIsFullPage(fullPage)
+                    .setIndex(index)
+                    .setNameHiddenFromAutoComplete(isNameHiddenFromAutoComplete)
+                    .setCommentHiddenFromAutoComplete(isCommentHiddenFromAutoComplete)
+                    .setExtraEditText1(extra_editText_1)
+                    .setExtraEditText2(extra_editText_2)
+                    .setExtraEditText3(extra_editText_3)
+                    .setSyncState(syncState)
+                    .setCustomOrderId(orderId);
+
+            if (category != null) {
+                builder.setCategory(category);
+            }
+
+            if (paymentMethod != null) {
+                builder.setPaymentMethod(paymentMethod);
+            }
+
+
+            /*
+             * Please note that a very frustrating bug exists here. Android cursors only return the first 6
+             * characters of a price string if that string contains a '.' character. It returns all of them
+             * if not. This means we'll break for prices over 5 digits unless we are using a comma separator,
+             * which we'd do in the EU. Stupid check below to un-break this. Stupid Android.
+             *
+             * TODO: Longer term, everything should be saved with a decimal point
+             * https://code.google.com/p/android/issues/detail?id=22219
+             */
+            if (!TextUtils.isEmpty(priceString) && priceString.contains(",")) {
+                builder.setPrice(priceString.replace(",", decimalSeparator));
+            } else {
+                builder.setPrice(priceDouble);
+            }
+            if (!TextUtils.isEmpty(taxString) && taxString.contains(",")) {
+                builder.setTax(taxString.replace(",", decimalSeparator));
+            } else {
+                builder.setTax(taxDouble);
+            }
+            if (!TextUtils.isEmpty(tax2String) && tax2String.contains(",")) {
+                builder.setTax2(tax2String.replace(",", decimalSeparator));
+            } else {
+                builder.setTax2(tax2Double);
+            }
+            final ExchangeRateBuilderFactory exchangeRateBuilder = new ExchangeRateBuilderFactory().setBaseCurrency(currency);
+            if (!TextUtils.isEmpty(exchangeRateString) && exchangeRateString.contains(",")) {
+                exchangeRateBuilder.setRate(trip.getTripCurrency(), exchangeRateString.replace(",", decimalSeparator));
+            } else {
+                exchangeRateBuilder.setRate(trip.getTripCurrency(), exchangeRateDouble);
+            }
+            builder.setExchangeRate(exchangeRateBuilder.build());
+
+            return builder.build();
+        }
+
+        private boolean exists(@NonNull File file, @NonNull String path) {
+            if (existingFileNames != null && path.indexOf(File.separatorChar) < 0) {
+                return existingFileNames.contains(path);
+            } else {
+                return file.exists();
+            }
+        }
+    }
+
+    @NonNull
+    private static <T extends Keyed> Map<Integer, T> toMap(@NonNull Table<T> table) {
+        final List<T> items = table.get()
+                .onErrorReturn(ignored -> Collections.emptyList())
+                .blockingGet();
+        final Map<Integer, T> map = new HashMap<>(items.size() * 2);
+        for (final T item : items) {
+            map.put(item.getId(), item);
+        }
+        return map;
+    }
+
+    @Nullable
+    private static <T extends Keyed> T findByPrimaryKey(@NonNull Table<T> table, int primaryKey) {
+        // TODO: How to use JOINs w/o blocking
+        return table.findByPrimaryKey(primaryKey)
+                .map(Optional::of)
+                .onErrorReturn(ignored -> Optional.absent())
+                .blockingGet()
+                .orNull();
+    }
 
+    @NonNull
+    private static Set<String> listFileNames(@NonNull File directory) {
+        final String[] fileNames = directory.list();
+        if (fileNames != null) {
+            return new HashSet<>(Arrays.asList(fileNames));
+        } else {
+            return Collections.emptySet();
+        }
+    }
 }
@@ -3,6 +3,8 @@ package com.wops.receiptsgo.persistence.database.tables.adapters;
 import android.database.Cursor;
 import androidx.annotation.NonNull;
 
+import java.util.List;
+
 /**
  * A slightly extended version of the {@link DatabaseAdapter} contract that supports a specific selection type
  *
@@ -22,4 +24,17 @@ public interface SelectionBackedDatabaseAdapter<ModelType, SelectionModelType> e
     @NonNull
     ModelType readForSelection(@NonNull Cursor cursor, @NonNull SelectionModelType selectionModelType, boolean isDescending);
 
+    /**
+     * Consumes a database cursor in order to read all entries for a given selection. Implementations should prefer
+     * this over repeated calls to {@link #readForSelection(Cursor, Object, boolean)}, since it allows them to resolve
+     * any per-query state (eg column indices) once instead of once per row
+     *
+     * @param cursor the {@link Cursor} connection to the database. This will be read from its first row
+     * @param selectionModelType the {@link SelectionModelType} that was treated as the parent for these {@link ModelType}s
+     * @param isDescending {@code true} for descending order, {@code false} for ascending
+     * @return a {@link List} of {@link ModelType}, representing each row of this cursor
+     */
+    @NonNull
+    List<ModelType> readAllForSelection(@NonNull Cursor cursor, @NonNull SelectionModelType selectionModelType, boolean isDescending);
+
 }
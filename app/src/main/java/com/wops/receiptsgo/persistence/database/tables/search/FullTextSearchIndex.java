@@ -0,0 +1,356 @@
+package com.wops.receiptsgo.persistence.database.tables.search;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import com.wops.analytics.log.Logger;
+import com.wops.receiptsgo.model.Keyed;
+import com.wops.receiptsgo.persistence.database.tables.AbstractSqlTable;
+
+/**
+ * Maintains an SQLite FTS4 "shadow" index over the free-text columns of one of our tables, allowing us to perform
+ * prefix-aware searches without needing to scan the full source table with a {@code LIKE '%input%'} predicate.
+ * <p>
+ * Each row in the index uses the primary key of the source row as its {@code docid}, which allows us to join the
+ * search results back against the source table. The first indexed column is treated as the "primary" column (eg the
+ * name of a receipt), and matches against this column are ranked ahead of matches against any of the others.
+ * </p>
+ * <p>
+ * All write methods here expect to be called from within the same transaction as the write to the source table, so
+ * the index can never drift from the data that it mirrors.
+ * </p>
+ *
+ * @param <ModelType> the model object that is indexed here
+ */
+public class FullTextSearchIndex<ModelType extends Keyed> {
+
+    /**
+     * Extracts the values that should be indexed for a particular model object
+     *
+     * @param <ModelType> the model object that is indexed
+     */
+    public interface DocumentBuilder<ModelType> {
+
+        /**
+         * @param modelType the model object to index
+         * @return the text values to index, which must be ordered in the same manner as our indexed columns
+         */
+        @NonNull
+        String[] getIndexedValues(@NonNull ModelType modelType);
+    }
+
+    private static final String INDEX_TABLE_SUFFIX = "_fts";
+    private static final String COLUMN_DOC_ID = "docid";
+    private static final String COLUMN_RANK = "search_rank";
+
+    private final String sourceTableName;
+    private final String indexTableName;
+    private final List<String> indexedColumns;
+    private final String sourceSelection;
+    private final DocumentBuilder<ModelType> documentBuilder;
+
+    /**
+     * @param sourceTableName the name of the table that we're indexing
+     * @param indexedColumns  the names of the columns in our index. The first column is treated as the primary one
+     * @param sourceSelection a {@code SELECT} statement (without a {@code WHERE} clause), which reads the primary key of each
+     *                        source row followed by the values to index (in the same order as our indexed columns). Columns
+     *                        should be qualified by their table name, so this may safely join against other tables
+     * @param documentBuilder the {@link DocumentBuilder} to use when indexing a model object
+     */
+    public FullTextSearchIndex(@NonNull String sourceTableName,
+                               @NonNull List<String> indexedColumns,
+                               @NonNull String sourceSelection,
+                               @NonNull DocumentBuilder<ModelType> documentBuilder) {
+        Preconditions.checkArgument(!indexedColumns.isEmpty(), "At least one column must be indexed");
+        this.sourceTableName = Preconditions.checkNotNull(sourceTableName);
+        this.indexTableName = sourceTableName + INDEX_TABLE_SUFFIX;
+        this.indexedColumns = Collections.unmodifiableList(new ArrayList<>(indexedColumns));
+        this.sourceSelection = Preconditions.checkNotNull(sourceSelection);
+        this.documentBuilder = Preconditions.checkNotNull(documentBuilder);
+    }
+
+    @NonNull
+    public final String getIndexTableName() {
+        return indexTableName;
+    }
+
+    @NonNull
+    public final List<String> getIndexedColumns() {
+        return indexedColumns;
+    }
+
+    /**
+     * Creates this (empty) index if it does not already exist
+     *
+     * @param db the {@link SQLiteDatabase} to use
+     */
+    public void onCreate(@NonNull SQLiteDatabase db) {
+        final String createIndex = "CREATE VIRTUAL TABLE IF NOT EXISTS " + indexTableName
+                + " USING fts4(" + TextUtils.join(", ", indexedColumns) + ", tokenize=unicode61);";
+        Logger.debug(this, createIndex);
+        db.execSQL(createIndex);
+    }
+
+    /**
+     * Creates this index if it does not already exist and populates it from the current contents of our source table
+     *
+     * @param db the {@link SQLiteDatabase} to use
+     */
+    public void onUpgrade(@NonNull SQLiteDatabase db) {
+        onCreate(db);
+        rebuild(db);
+    }
+
+    /**
+     * Discards all indexed values and re-populates them from our source table
+     *
+     * @param db the {@link SQLiteDatabase} to use
+     */
+    public void rebuild(@NonNull SQLiteDatabase db) {
+        clear(db);
+        final String populateIndex = "INSERT INTO " + indexTableName + " (" + COLUMN_DOC_ID + ", " + TextUtils.join(", ", indexedColumns) + ") "
+                + sourceSelection + " WHERE " + getNotMarkedForDeletionPredicate() + ";";
+        Logger.debug(this, populateIndex);
+        db.execSQL(populateIndex);
+    }
+
+    /**
+     * Re-indexes all rows in our source table that match a particular selection (eg because a joined value changed)
+     *
+     * @param db            the {@link SQLiteDatabase} to use
+     * @param whereClause   the {@code WHERE} clause to apply to our source table, using fully qualified column names
+     * @param whereArgs     the arguments to bind to the {@code whereClause}
+     */
+    public void reindexWhere(@NonNull SQLiteDatabase db, @NonNull String whereClause, @NonNull String[] whereArgs) {
+        removeWhere(db, whereClause, whereArgs);
+        db.execSQL("INSERT INTO " + indexTableName + " (" + COLUMN_DOC_ID + ", " + TextUtils.join(", ", indexedColumns) + ") "
+                + sourceSelection + " WHERE " + getNotMarkedForDeletionPredicate() + " AND (" + whereClause + ")", whereArgs);
+    }
+
+    /**
+     * Adds (or replaces) a single item in this index
+     *
+     * @param db        the {@link SQLiteDatabase} to use
+     * @param modelType the model object to index
+     */
+    public void index(@NonNull SQLiteDatabase db, @NonNull ModelType modelType) {
+        final SQLiteStatement insertStatement = compileInsertStatement(db);
+        final SQLiteStatement removeStatement = compileRemoveStatement(db);
+        try {
+            index(insertStatement, removeStatement, modelType);
+        } finally {
+            insertStatement.close();
+            removeStatement.close();
+        }
+    }
+
+    /**
+     * Adds (or replaces) a batch of items in this index, re-using the same compiled statements for each one
+     *
+     * @param db         the {@link SQLiteDatabase} to use
+     * @param modelTypes the {@link List} of model objects to index
+     */
+    public void indexAll(@NonNull SQLiteDatabase db, @NonNull List<ModelType> modelTypes) {
+        if (modelTypes.isEmpty()) {
+            return;
+        }
+        final SQLiteStatement insertStatement = compileInsertStatement(db);
+        final SQLiteStatement removeStatement = compileRemoveStatement(db);
+        try {
+            for (final ModelType modelType : modelTypes) {
+                index(insertStatement, removeStatement, modelType);
+            }
+        } finally {
+            insertStatement.close();
+            removeStatement.close();
+        }
+    }
+
+    /**
+     * Removes a single item from this index
+     *
+     * @param db        the {@link SQLiteDatabase} to use
+     * @param modelType the model object to remove
+     */
+    public void remove(@NonNull SQLiteDatabase db, @NonNull ModelType modelType) {
+        removeAll(db, Collections.singletonList(modelType));
+    }
+
+    /**
+     * Removes a batch of items from this index, re-using the same compiled statement for each one
+     *
+     * @param db         the {@link SQLiteDatabase} to use
+     * @param modelTypes the {@link List} of model objects to remove
+     */
+    public void removeAll(@NonNull SQLiteDatabase db, @NonNull List<ModelType> modelTypes) {
+        if (modelTypes.isEmpty()) {
+            return;
+        }
+        final SQLiteStatement removeStatement = compileRemoveStatement(db);
+        try {
+            for (final ModelType modelType : modelTypes) {
+                removeStatement.clearBindings();
+                removeStatement.bindLong(1, modelType.getId());
+                removeStatement.executeUpdateDelete();
+            }
+        } finally {
+            removeStatement.close();
+        }
+    }
+
+    /**
+     * Removes all items from this index whose source rows match a particular selection
+     *
+     * @param db          the {@link SQLiteDatabase} to use
+     * @param whereClause the {@code WHERE} clause to apply to our source table
+     * @param whereArgs   the arguments to bind to the {@code whereClause}
+     */
+    public void removeWhere(@NonNull SQLiteDatabase db, @NonNull String whereClause, @NonNull String[] whereArgs) {
+        db.execSQL("DELETE FROM " + indexTableName + " WHERE " + COLUMN_DOC_ID + " IN (SELECT " + AbstractSqlTable.COLUMN_ID
+                + " FROM " + sourceTableName + " WHERE " + whereClause + ")", whereArgs);
+    }
+
+    /**
+     * Removes all items from this index
+     *
+     * @param db the {@link SQLiteDatabase} to use
+     */
+    public void clear(@NonNull SQLiteDatabase db) {
+        db.execSQL("DELETE FROM " + indexTableName + ";");
+    }
+
+    /**
+     * Builds a parameterized query, which reads all source rows that match the user's input. Results are ranked, such that
+     * matches against our primary column are returned first. Within each rank, more recently created rows come first.
+     * <p>
+     * The returned {@link SearchQuery#getSql()} selects all columns of our source table, so it may be read by the table's
+     * standard database adapter.
+     * </p>
+     *
+     * @param input         the raw user input. Each word is treated as a prefix and all words must match
+     * @param column        the indexed column to restrict this search to or {@code null} to search all columns
+     * @param limit         the maximum number of results to return
+     * @return a {@link SearchQuery} or {@code null} if the input did not contain any searchable terms
+     */
+    @Nullable
+    public SearchQuery buildSearchQuery(@NonNull String input, @Nullable String column, int limit) {
+        Preconditions.checkArgument(limit > 0, "The limit must be positive");
+        Preconditions.checkArgument(column == null || indexedColumns.contains(column), "Column %s is not indexed", column);
+
+        final List<String> terms = tokenize(input);
+        if (terms.isEmpty()) {
+            return null;
+        }
+
+        final String primaryColumn = column != null ? column : indexedColumns.get(0);
+        final String primaryMatch = buildMatchExpression(terms, primaryColumn);
+        final String anyMatch = column != null ? primaryMatch : buildMatchExpression(terms, null);
+
+        final String ranked = "SELECT " + COLUMN_DOC_ID + ", 0 AS " + COLUMN_RANK + " FROM " + indexTableName + " WHERE " + indexTableName + " MATCH ?"
+                + " UNION ALL "
+                + "SELECT " + COLUMN_DOC_ID + ", 1 AS " + COLUMN_RANK + " FROM " + indexTableName + " WHERE " + indexTableName + " MATCH ?";
+
+        final String sql = "SELECT " + sourceTableName + ".* FROM " + sourceTableName
+                + " INNER JOIN (SELECT " + COLUMN_DOC_ID + ", MIN(" + COLUMN_RANK + ") AS " + COLUMN_RANK + " FROM (" + ranked + ") GROUP BY " + COLUMN_DOC_ID + ") AS matches"
+                + " ON " + sourceTableName + "." + AbstractSqlTable.COLUMN_ID + " = matches." + COLUMN_DOC_ID
+                + " WHERE " + getNotMarkedForDeletionPredicate()
+                + " ORDER BY matches." + COLUMN_RANK + " ASC, " + sourceTableName + "." + AbstractSqlTable.COLUMN_ID + " DESC"
+                + " LIMIT " + limit;
+
+        return new SearchQuery(sql, new String[]{primaryMatch, anyMatch});
+    }
+
+    private void index(@NonNull SQLiteStatement insertStatement, @NonNull SQLiteStatement removeStatement, @NonNull ModelType modelType) {
+        // Note: FTS tables don't support "INSERT OR REPLACE" semantics on their docid, so we delete first
+        removeStatement.clearBindings();
+        removeStatement.bindLong(1, modelType.getId());
+        removeStatement.executeUpdateDelete();
+
+        final String[] values = documentBuilder.getIndexedValues(modelType);
+        Preconditions.checkArgument(values.length == indexedColumns.size(), "Each indexed column requires a value");
+
+        insertStatement.clearBindings();
+        insertStatement.bindLong(1, modelType.getId());
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                insertStatement.bindNull(i + 2);
+            } else {
+                insertStatement.bindString(i + 2, values[i]);
+            }
+        }
+        insertStatement.executeInsert();
+    }
+
+    @NonNull
+    private SQLiteStatement compileInsertStatement(@NonNull SQLiteDatabase db) {
+        final StringBuilder placeholders = new StringBuilder("?");
+        for (int i = 0; i < indexedColumns.size(); i++) {
+            placeholders.append(", ?");
+        }
+        return db.compileStatement("INSERT INTO " + indexTableName + " (" + COLUMN_DOC_ID + ", " + TextUtils.join(", ", indexedColumns) + ") VALUES (" + placeholders + ")");
+    }
+
+    @NonNull
+    private SQLiteStatement compileRemoveStatement(@NonNull SQLiteDatabase db) {
+        return db.compileStatement("DELETE FROM " + indexTableName + " WHERE " + COLUMN_DOC_ID + " = ?");
+    }
+
+    @NonNull
+    private String getNotMarkedForDeletionPredicate() {
+        return sourceTableName + "." + AbstractSqlTable.COLUMN_DRIVE_MARKED_FOR_DELETION + " = 0";
+    }
+
+    /**
+     * Splits the user's input into a list of lower-case terms, dropping all characters that hold a special meaning within
+     * the FTS query syntax (eg quotes, asterisks, parentheses, and column filters)
+     *
+     * @param input the raw user input
+     * @return a {@link List} of searchable terms
+     */
+    @NonNull
+    static List<String> tokenize(@NonNull String input) {
+        final List<String> terms = new ArrayList<>();
+        final StringBuilder term = new StringBuilder();
+        for (int i = 0; i < input.length(); i++) {
+            final char c = input.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                term.append(c);
+            } else if (term.length() > 0) {
+                terms.add(term.toString().toLowerCase(Locale.US));
+                term.setLength(0);
+            }
+        }
+        if (term.length() > 0) {
+            terms.add(term.toString().toLowerCase(Locale.US));
+        }
+        return terms;
+    }
+
+    @NonNull
+    static String buildMatchExpression(@NonNull List<String> terms, @Nullable String column) {
+        final StringBuilder builder = new StringBuilder();
+        for (final String term : terms) {
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            if (column != null) {
+                builder.append(column).append(':');
+            }
+            // Note: Our terms are lower-case, so they are never confused for the upper-case AND/OR/NOT/NEAR operators
+            builder.append(term).append('*');
+        }
+        return builder.toString();
+    }
+
+}
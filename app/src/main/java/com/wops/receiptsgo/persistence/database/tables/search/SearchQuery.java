@@ -0,0 +1,37 @@
+package com.wops.receiptsgo.persistence.database.tables.search;
+
+import androidx.annotation.NonNull;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A parameterized SQL query, as built by {@link FullTextSearchIndex#buildSearchQuery(String, String, int)}. The user's
+ * input is only ever bound via the {@link #getSelectionArgs()} and never concatenated into the {@link #getSql()}
+ */
+public final class SearchQuery {
+
+    private final String sql;
+    private final String[] selectionArgs;
+
+    public SearchQuery(@NonNull String sql, @NonNull String[] selectionArgs) {
+        this.sql = Preconditions.checkNotNull(sql);
+        this.selectionArgs = Preconditions.checkNotNull(selectionArgs).clone();
+    }
+
+    @NonNull
+    public String getSql() {
+        return sql;
+    }
+
+    @NonNull
+    public String[] getSelectionArgs() {
+        return selectionArgs.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "SearchQuery{" +
+                "sql='" + sql + '\'' +
+                '}';
+    }
+}
@@ -553,6 +553,29 @@ public class ReceiptsListFragment extends ReceiptsFragment implements ReceiptsLi
         }
     }
 
+    @Override
+    public void onInsertAllSuccess(@NonNull List<Receipt> list, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        // Note: We only need to refresh our list once for the entire batch
+        if (isAdded()) {
+            receiptTableController.get(trip);
+        }
+    }
+
+    @Override
+    public void onUpdateAllSuccess(@NonNull List<Receipt> oldList, @NonNull List<Receipt> newList, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        // Note: Batched updates (eg re-orderings) never swap receipts or change their files, so we simply refresh once
+        if (isAdded()) {
+            receiptTableController.get(trip);
+        }
+    }
+
+    @Override
+    public void onDeleteAllSuccess(@NonNull List<Receipt> list, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        if (isAdded()) {
+            receiptTableController.get(trip);
+        }
+    }
+
     @Override
     public void onCopySuccess(@NonNull Receipt oldReceipt, @NonNull Receipt newReceipt) {
         if (isAdded()) {
@@ -137,6 +137,13 @@ public class CurrencyExchangeRateEditorPresenter extends BasePresenter<CurrencyE
                 .observeOn(mainThreadScheduler)
                 .subscribe(view.displayExchangeRate()));
 
+        // Prefetch the exchange rates for the other receipts in this trip, so that we can display these instantly (or offline)
+        this.compositeDisposable.add(databaseHelper.getReceiptsTable().get(trip)
+                .subscribeOn(ioScheduler)
+                .flatMapCompletable(receipts -> exchangeRateServiceManager.prefetchExchangeRates(receipts, trip.getDefaultCurrencyCode()))
+                .subscribe(() -> Logger.debug(CurrencyExchangeRateEditorPresenter.this, "Completed our exchange rate prefetch for this trip"),
+                        throwable -> Logger.warn(CurrencyExchangeRateEditorPresenter.this, "Failed to prefetch the exchange rates for this trip", throwable)));
+
         // Fetch the exchange rate whenever the user clicks the "retry" button. Note: This variant can also attempt a purchase
         this.compositeDisposable.add(currencyDatePairConnectableObservable
                 .switchMap(currencyDatePair -> view.getUserInitiatedExchangeRateRetries().map(userRetry -> currencyDatePair))
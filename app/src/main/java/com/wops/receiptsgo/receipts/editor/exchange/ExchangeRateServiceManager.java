@@ -3,12 +3,15 @@ package com.wops.receiptsgo.receipts.editor.exchange;
 import android.content.Context;
 
 import androidx.annotation.NonNull;
+import androidx.core.util.Pair;
 
 import com.google.common.base.Preconditions;
 import com.google.gson.GsonBuilder;
+import com.hadisatrio.optional.Optional;
 
 import java.sql.Date;
 import java.util.Calendar;
+import java.util.Collection;
 
 import javax.inject.Inject;
 
@@ -21,6 +24,7 @@ import com.wops.receiptsgo.apis.SmartReceiptsApisRxJavaCallAdapterFactory;
 import com.wops.receiptsgo.config.ConfigurationManager;
 import com.wops.receiptsgo.utils.ConfigurableResourceFeature;
 import com.wops.core.di.scopes.ApplicationScope;
+import com.wops.receiptsgo.model.Receipt;
 import com.wops.receiptsgo.model.gson.ExchangeRate;
 import com.wops.receiptsgo.purchases.PurchaseManager;
 import com.wops.receiptsgo.purchases.model.InAppPurchase;
@@ -28,36 +32,49 @@ import com.wops.receiptsgo.purchases.source.PurchaseSource;
 import com.wops.receiptsgo.purchases.wallet.PurchaseWallet;
 import com.wops.analytics.log.Logger;
 import com.wops.receiptsgo.widget.model.UiIndicator;
+import io.reactivex.Completable;
 import io.reactivex.Observable;
+import io.reactivex.Scheduler;
 import io.reactivex.schedulers.Schedulers;
 import retrofit2.Retrofit;
 import retrofit2.converter.gson.GsonConverterFactory;
 
 /**
- * This class maintains responsibility for fetching the exchange rate from the
+ * This class maintains responsibility for fetching the exchange rate from the network. Each response is persisted in
+ * our {@link ExchangeRateStore}, so that we can serve any later request for the same date and base currency locally
+ * (and while offline), as long as our {@link ExchangeRateStalenessPolicy} deems it fresh.
  */
 @ApplicationScope
 public class ExchangeRateServiceManager {
 
+    /**
+     * The maximum number of concurrent requests that we make while prefetching the rates for a trip
+     */
+    private static final int MAX_CONCURRENT_PREFETCHES = 2;
+
     private final Context context;
     private final PurchaseManager purchaseManager;
     private final PurchaseWallet purchaseWallet;
     private final Analytics analytics;
     private final ExchangeRateService exchangeRateService;
     private final ConfigurationManager configurationManager;
+    private final ExchangeRateStore exchangeRateStore;
+    private final ExchangeRateStalenessPolicy stalenessPolicy;
+    private final Scheduler ioScheduler;
 
     @Inject
     public ExchangeRateServiceManager(@NonNull Context context,
                                       @NonNull PurchaseManager purchaseManager,
                                       @NonNull PurchaseWallet purchaseWallet,
                                       @NonNull Analytics analytics,
-                                      @NonNull ConfigurationManager configurationManager) {
+                                      @NonNull ConfigurationManager configurationManager,
+                                      @NonNull ExchangeRateStore exchangeRateStore) {
         this(context, purchaseManager, purchaseWallet, analytics, configurationManager, new Retrofit.Builder()
                 .baseUrl("https://openexchangerates.org")
                 .addConverterFactory(GsonConverterFactory.create(new GsonBuilder().setDateFormat("yyyy-MM-dd").create()))
                 .addCallAdapterFactory(SmartReceiptsApisRxJavaCallAdapterFactory.createWithScheduler(Schedulers.io()))
                 .build()
-                .create(ExchangeRateService.class));
+                .create(ExchangeRateService.class), exchangeRateStore, new ExchangeRateStalenessPolicy(), Schedulers.io());
     }
 
     public ExchangeRateServiceManager(@NonNull Context context,
@@ -65,19 +82,26 @@ public class ExchangeRateServiceManager {
                                       @NonNull PurchaseWallet purchaseWallet,
                                       @NonNull Analytics analytics,
                                       @NonNull ConfigurationManager configurationManager,
-                                      @NonNull ExchangeRateService exchangeRateService) {
+                                      @NonNull ExchangeRateService exchangeRateService,
+                                      @NonNull ExchangeRateStore exchangeRateStore,
+                                      @NonNull ExchangeRateStalenessPolicy stalenessPolicy,
+                                      @NonNull Scheduler ioScheduler) {
         this.context = Preconditions.checkNotNull(context.getApplicationContext());
         this.purchaseManager = Preconditions.checkNotNull(purchaseManager);
         this.purchaseWallet = Preconditions.checkNotNull(purchaseWallet);
         this.exchangeRateService = Preconditions.checkNotNull(exchangeRateService);
         this.analytics = Preconditions.checkNotNull(analytics);
         this.configurationManager = Preconditions.checkNotNull(configurationManager);
+        this.exchangeRateStore = Preconditions.checkNotNull(exchangeRateStore);
+        this.stalenessPolicy = Preconditions.checkNotNull(stalenessPolicy);
+        this.ioScheduler = Preconditions.checkNotNull(ioScheduler);
     }
 
     /**
-     * Submits a network request to get the exchange rate for a particular currency on a given date. In an example of
-     * EUR/USD, EUR would refer to the base currency code (ie receipt one), and USD would refer to the quote currency
-     * code (ie trip one)
+     * Gets the exchange rate for a particular currency on a given date. If we have a fresh copy of this rate in our
+     * {@link ExchangeRateStore}, we return it immediately. Otherwise, we submit a network request for it (falling back
+     * to our stale copy if this request fails). In an example of EUR/USD, EUR would refer to the base currency code
+     * (ie receipt one), and USD would refer to the quote currency code (ie trip one)
      *
      * @param date              the desired {@link Date} to get the currency for. If this date is in the future, it will fetch
      *                          for the current one
@@ -88,48 +112,80 @@ public class ExchangeRateServiceManager {
      */
     @NonNull
     public Observable<UiIndicator<ExchangeRate>> getExchangeRate(@NonNull Date date, @NonNull String baseCurrencyCode, @NonNull String quoteCurrencyCode) {
-        return Observable.just(purchaseWallet.hasActivePurchase(InAppPurchase.SmartReceiptsPlus)
-                || purchaseWallet.hasActivePurchase(InAppPurchase.PremiumSubscriptionPlan))
+        return Observable.just(hasPlusSubscription())
                 .filter(hasPlusSubscription -> hasPlusSubscription)
-                .map(ignored -> {
-                    final Date today = new Date(Calendar.getInstance().getTimeInMillis());
-                    if (date.after(today)) {
-                        return today;
-                    } else {
-                        return date;
-                    }
-                })
-                .flatMap(dateAsTodayOrEarlier ->
-                        exchangeRateService.getExchangeRate(dateAsTodayOrEarlier, context.getString(R.string.exchange_rate_key), baseCurrencyCode)
-                                .doOnSubscribe(ignored -> {
-                                    Logger.info(ExchangeRateServiceManager.this, "Fetching the exchange rate for {} on {}", baseCurrencyCode, dateAsTodayOrEarlier);
-                                    analytics.record(Events.Receipts.RequestExchangeRate);
-                                })
-                                .flatMap(exchangeRate -> {
-                                    if (exchangeRate.supportsExchangeRateFor(quoteCurrencyCode)) {
-                                        return Observable.just(exchangeRate);
-                                    } else {
-                                        return Observable.error(new ApiValidationException("The API response failed to include our quote currency: " + quoteCurrencyCode));
-                                    }
-                                })
-                                .doOnError(throwable -> {
-                                    Logger.error(ExchangeRateServiceManager.this, "Failed to fetch the exchange for " + baseCurrencyCode, throwable);
-                                    if (throwable instanceof ApiValidationException) {
-                                        analytics.record(Events.Receipts.RequestExchangeRateFailedMissingQuoteCurrency);
-                                    } else {
-                                        analytics.record(Events.Receipts.RequestExchangeRateFailed);
-                                    }
-                                })
-                                .doOnNext(exchangeRate -> {
-                                    Logger.info(ExchangeRateServiceManager.this, "Successfully fetched the exchange rate for {} on {}", baseCurrencyCode, dateAsTodayOrEarlier);
-                                    analytics.record(Events.Receipts.RequestExchangeRateSuccess);
-                                })
-                                .map(UiIndicator::success)
-                                .onErrorReturn(ignore -> UiIndicator.error())
-                                .startWith(UiIndicator.loading())
+                .map(ignored -> asTodayOrEarlier(date))
+                .flatMap(dateAsTodayOrEarlier -> Observable.fromCallable(() -> exchangeRateStore.get(dateAsTodayOrEarlier, baseCurrencyCode))
+                        .subscribeOn(ioScheduler)
+                        .flatMap(storedExchangeRate -> {
+                            if (storedExchangeRate.isPresent() && !isStale(dateAsTodayOrEarlier, storedExchangeRate.get())) {
+                                Logger.debug(ExchangeRateServiceManager.this, "Using our stored exchange rate for {} on {}", baseCurrencyCode, dateAsTodayOrEarlier);
+                                return validate(storedExchangeRate.get().getExchangeRate(), quoteCurrencyCode)
+                                        .map(UiIndicator::success)
+                                        .onErrorReturn(ignore -> UiIndicator.error());
+                            }
+
+                            return fetchAndStore(dateAsTodayOrEarlier, baseCurrencyCode)
+                                    .doOnSubscribe(ignored -> analytics.record(Events.Receipts.RequestExchangeRate))
+                                    .flatMap(exchangeRate -> validate(exchangeRate, quoteCurrencyCode))
+                                    .doOnError(throwable -> {
+                                        Logger.error(ExchangeRateServiceManager.this, "Failed to fetch the exchange for " + baseCurrencyCode, throwable);
+                                        if (throwable instanceof ApiValidationException) {
+                                            analytics.record(Events.Receipts.RequestExchangeRateFailedMissingQuoteCurrency);
+                                        } else {
+                                            analytics.record(Events.Receipts.RequestExchangeRateFailed);
+                                        }
+                                    })
+                                    .doOnNext(exchangeRate -> analytics.record(Events.Receipts.RequestExchangeRateSuccess))
+                                    .map(UiIndicator::success)
+                                    .onErrorReturn(ignore -> {
+                                        // Note: A stale rate is still far more useful than no rate at all (e.g. while offline)
+                                        if (storedExchangeRate.isPresent() && storedExchangeRate.get().getExchangeRate().supportsExchangeRateFor(quoteCurrencyCode)) {
+                                            Logger.info(ExchangeRateServiceManager.this, "Falling back to our stale exchange rate for {} on {}", baseCurrencyCode, dateAsTodayOrEarlier);
+                                            return UiIndicator.success(storedExchangeRate.get().getExchangeRate());
+                                        } else {
+                                            return UiIndicator.error();
+                                        }
+                                    })
+                                    .startWith(UiIndicator.loading());
+                        })
                 );
     }
 
+    /**
+     * Fetches (in a single background batch) the exchange rates for each distinct date and currency across a set of
+     * receipts, so that the receipt editor can later display these instantly (and while offline). Rates that we've
+     * already stored (and that are still fresh) are skipped, as are receipts that are already in our quote currency.
+     * <p>
+     * Failures are logged and otherwise ignored, since the editor will simply fetch these rates on demand.
+     * </p>
+     *
+     * @param receipts          the {@link Receipt}s to prefetch the exchange rates for
+     * @param quoteCurrencyCode the quote currency code (ie the trip one)
+     * @return a {@link Completable} that completes once all of our requests have finished
+     */
+    @NonNull
+    public Completable prefetchExchangeRates(@NonNull Collection<Receipt> receipts, @NonNull String quoteCurrencyCode) {
+        return Observable.just(hasPlusSubscription())
+                .filter(hasPlusSubscription -> hasPlusSubscription)
+                .flatMapIterable(ignored -> receipts)
+                .filter(receipt -> !quoteCurrencyCode.equals(receipt.getPrice().getCurrencyCode()))
+                .map(receipt -> new Pair<>(asTodayOrEarlier(receipt.getDate()), receipt.getPrice().getCurrencyCode()))
+                .distinct(dateCurrencyPair -> dateCurrencyPair.second + "_" + dateCurrencyPair.first)
+                .filter(dateCurrencyPair -> {
+                    final Optional<ExchangeRateStore.Entry> storedExchangeRate = exchangeRateStore.get(dateCurrencyPair.first, dateCurrencyPair.second);
+                    return !storedExchangeRate.isPresent() || isStale(dateCurrencyPair.first, storedExchangeRate.get());
+                })
+                .toList()
+                .doOnSuccess(dateCurrencyPairs -> Logger.info(ExchangeRateServiceManager.this, "Prefetching {} exchange rates", dateCurrencyPairs.size()))
+                .flatMapObservable(Observable::fromIterable)
+                .flatMap(dateCurrencyPair -> fetchAndStore(dateCurrencyPair.first, dateCurrencyPair.second)
+                        .doOnError(throwable -> Logger.warn(ExchangeRateServiceManager.this, "Failed to prefetch the exchange rate for {} on {}", dateCurrencyPair.second, dateCurrencyPair.first, throwable))
+                        .onErrorResumeNext(Observable.empty()), MAX_CONCURRENT_PREFETCHES)
+                .ignoreElements()
+                .subscribeOn(ioScheduler);
+    }
+
     /**
      * <p>
      * A method that will first check if the user has a valid {@link InAppPurchase#SmartReceiptsPlus} subscription. If not,
@@ -146,8 +202,7 @@ public class ExchangeRateServiceManager {
      */
     @NonNull
     public Observable<UiIndicator<ExchangeRate>> getExchangeRateOrInitiatePurchase(@NonNull Date date, @NonNull String baseCurrencyCode, @NonNull String quoteCurrencyCode) {
-        return Observable.just(purchaseWallet.hasActivePurchase(InAppPurchase.SmartReceiptsPlus)
-                || purchaseWallet.hasActivePurchase(InAppPurchase.PremiumSubscriptionPlan))
+        return Observable.just(hasPlusSubscription())
                 .doOnNext(hasPlusSubscription -> {
                     if (!hasPlusSubscription) {
                         Logger.info(this, "Attempting to retry without valid subscription. Directing user to purchase intent");
@@ -158,4 +213,42 @@ public class ExchangeRateServiceManager {
                 })
                 .flatMap(hasPlusSubscription -> getExchangeRate(date, baseCurrencyCode, quoteCurrencyCode));
     }
+
+    @NonNull
+    private Observable<ExchangeRate> fetchAndStore(@NonNull Date date, @NonNull String baseCurrencyCode) {
+        return exchangeRateService.getExchangeRate(date, context.getString(R.string.exchange_rate_key), baseCurrencyCode)
+                .doOnSubscribe(ignored -> Logger.info(ExchangeRateServiceManager.this, "Fetching the exchange rate for {} on {}", baseCurrencyCode, date))
+                .doOnNext(exchangeRate -> {
+                    Logger.info(ExchangeRateServiceManager.this, "Successfully fetched the exchange rate for {} on {}", baseCurrencyCode, date);
+                    exchangeRateStore.put(date, exchangeRate, System.currentTimeMillis());
+                });
+    }
+
+    private boolean hasPlusSubscription() {
+        return purchaseWallet.hasActivePurchase(InAppPurchase.SmartReceiptsPlus)
+                || purchaseWallet.hasActivePurchase(InAppPurchase.PremiumSubscriptionPlan);
+    }
+
+    private boolean isStale(@NonNull Date date, @NonNull ExchangeRateStore.Entry storedExchangeRate) {
+        return stalenessPolicy.isStale(date, storedExchangeRate.getFetchedAtMillis(), System.currentTimeMillis());
+    }
+
+    @NonNull
+    private static Observable<ExchangeRate> validate(@NonNull ExchangeRate exchangeRate, @NonNull String quoteCurrencyCode) {
+        if (exchangeRate.supportsExchangeRateFor(quoteCurrencyCode)) {
+            return Observable.just(exchangeRate);
+        } else {
+            return Observable.error(new ApiValidationException("The API response failed to include our quote currency: " + quoteCurrencyCode));
+        }
+    }
+
+    @NonNull
+    private static Date asTodayOrEarlier(@NonNull Date date) {
+        final Date today = new Date(Calendar.getInstance().getTimeInMillis());
+        if (date.after(today)) {
+            return today;
+        } else {
+            return date;
+        }
+    }
 }
@@ -0,0 +1,79 @@
+package com.wops.receiptsgo.receipts.editor.exchange;
+
+import androidx.annotation.NonNull;
+
+import com.google.common.base.Preconditions;
+
+import java.sql.Date;
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Determines when a stored exchange rate should be re-fetched. The rates for a day that has already closed will never
+ * change, so we keep these for as long as {@link #getMaxAgeForClosedDaysMillis()} (forever, by default). The rates
+ * for a day that was still open when we fetched them are only provisional, so we refresh these once they are older
+ * than {@link #getMaxAgeForOpenDaysMillis()}.
+ * <p>
+ * Our exchange rate service closes each day in UTC, so we only consider a day closed once a full day has passed after
+ * the end of our local day. This keeps us correct for any time zone offset.
+ * </p>
+ */
+public class ExchangeRateStalenessPolicy {
+
+    public static final long DEFAULT_MAX_AGE_FOR_OPEN_DAYS_MILLIS = TimeUnit.HOURS.toMillis(1);
+    public static final long DEFAULT_MAX_AGE_FOR_CLOSED_DAYS_MILLIS = Long.MAX_VALUE;
+
+    private final long maxAgeForOpenDaysMillis;
+    private final long maxAgeForClosedDaysMillis;
+
+    public ExchangeRateStalenessPolicy() {
+        this(DEFAULT_MAX_AGE_FOR_OPEN_DAYS_MILLIS, DEFAULT_MAX_AGE_FOR_CLOSED_DAYS_MILLIS);
+    }
+
+    /**
+     * @param maxAgeForOpenDaysMillis   how long we keep a rate that was fetched before its day had closed
+     * @param maxAgeForClosedDaysMillis how long we keep a rate that was fetched after its day had closed
+     */
+    public ExchangeRateStalenessPolicy(long maxAgeForOpenDaysMillis, long maxAgeForClosedDaysMillis) {
+        Preconditions.checkArgument(maxAgeForOpenDaysMillis >= 0, "The maximum age cannot be negative");
+        Preconditions.checkArgument(maxAgeForClosedDaysMillis >= 0, "The maximum age cannot be negative");
+        this.maxAgeForOpenDaysMillis = maxAgeForOpenDaysMillis;
+        this.maxAgeForClosedDaysMillis = maxAgeForClosedDaysMillis;
+    }
+
+    public long getMaxAgeForOpenDaysMillis() {
+        return maxAgeForOpenDaysMillis;
+    }
+
+    public long getMaxAgeForClosedDaysMillis() {
+        return maxAgeForClosedDaysMillis;
+    }
+
+    /**
+     * @param date            the {@link Date} of the exchange rate
+     * @param fetchedAtMillis the time (in milliseconds) at which we fetched it
+     * @param nowMillis       the current time (in milliseconds)
+     * @return {@code true} if we should re-fetch this exchange rate. {@code false} otherwise
+     */
+    public boolean isStale(@NonNull Date date, long fetchedAtMillis, long nowMillis) {
+        final long ageMillis = nowMillis - fetchedAtMillis;
+        if (ageMillis < 0) {
+            // The clock has moved backwards, so we can't trust this entry
+            return true;
+        }
+
+        final Calendar closingTime = Calendar.getInstance();
+        closingTime.setTime(date);
+        closingTime.set(Calendar.HOUR_OF_DAY, 0);
+        closingTime.set(Calendar.MINUTE, 0);
+        closingTime.set(Calendar.SECOND, 0);
+        closingTime.set(Calendar.MILLISECOND, 0);
+        closingTime.add(Calendar.DAY_OF_MONTH, 2);
+
+        if (fetchedAtMillis >= closingTime.getTimeInMillis()) {
+            return ageMillis > maxAgeForClosedDaysMillis;
+        } else {
+            return ageMillis > maxAgeForOpenDaysMillis;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.wops.receiptsgo.receipts.editor.exchange;
+
+import android.content.Context;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.google.common.base.Preconditions;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.hadisatrio.optional.Optional;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.sql.Date;
+import java.util.Arrays;
+import java.util.Locale;
+
+import javax.inject.Inject;
+
+import com.wops.analytics.log.Logger;
+import com.wops.core.di.scopes.ApplicationScope;
+import com.wops.receiptsgo.model.gson.ExchangeRate;
+
+/**
+ * Persists the exchange rates that we've fetched, keyed by the date and base currency of each request. Since a single
+ * response from our exchange rate service contains the rate for every quote currency, one stored entry allows us to
+ * answer any subsequent request for that (date, base) pair without going back to the network (or while offline).
+ * <p>
+ * Each entry is written to its own small json file. We keep the most recently used entries in memory as well, so that
+ * toggling between currencies or dates in the receipt editor does not touch the disk.
+ * </p>
+ */
+@ApplicationScope
+public class ExchangeRateStore {
+
+    @VisibleForTesting
+    static final int DEFAULT_MAX_STORED_RATES = 500;
+
+    private static final String STORE_FOLDER = "exchange_rates";
+    private static final String EXTENSION = ".json";
+    private static final int MEMORY_CACHE_SIZE = 32;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File directory;
+    private final int maxStoredRates;
+    private final Gson gson = new Gson();
+    private final LruCache<String, Entry> memoryCache = new LruCache<>(MEMORY_CACHE_SIZE);
+
+    @Inject
+    public ExchangeRateStore(@NonNull Context context) {
+        this(new File(context.getFilesDir(), STORE_FOLDER), DEFAULT_MAX_STORED_RATES);
+    }
+
+    /**
+     * @param directory      the directory in which we persist our exchange rates
+     * @param maxStoredRates the maximum number of (date, base) entries to keep on disk
+     */
+    @VisibleForTesting
+    ExchangeRateStore(@NonNull File directory, int maxStoredRates) {
+        Preconditions.checkArgument(maxStoredRates > 0, "We must store at least one exchange rate");
+        this.directory = Preconditions.checkNotNull(directory);
+        this.maxStoredRates = maxStoredRates;
+    }
+
+    /**
+     * @param date             the {@link Date} of the exchange rate
+     * @param baseCurrencyCode the base currency code
+     * @return the stored {@link Entry} for this date and base currency or {@link Optional#absent()} if we have none
+     */
+    @NonNull
+    public synchronized Optional<Entry> get(@NonNull Date date, @NonNull String baseCurrencyCode) {
+        final String key = getKey(date, baseCurrencyCode);
+        final Entry cachedEntry = memoryCache.get(key);
+        if (cachedEntry != null) {
+            return Optional.of(cachedEntry);
+        }
+
+        final File file = new File(directory, key + EXTENSION);
+        if (!file.exists()) {
+            return Optional.absent();
+        }
+
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), UTF_8)) {
+            final Entry entry = gson.fromJson(reader, Entry.class);
+            if (entry == null || entry.getExchangeRate() == null) {
+                throw new IOException("Our stored exchange rate is empty");
+            }
+            memoryCache.put(key, entry);
+            return Optional.of(entry);
+        } catch (IOException | JsonParseException e) {
+            Logger.warn(this, "Failed to read our stored exchange rate for {}", key, e);
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            return Optional.absent();
+        }
+    }
+
+    /**
+     * Stores an exchange rate that was fetched from the network
+     *
+     * @param date            the {@link Date} that we requested the exchange rate for
+     * @param exchangeRate    the {@link ExchangeRate} table that we received
+     * @param fetchedAtMillis the time (in milliseconds) at which we fetched it
+     */
+    public synchronized void put(@NonNull Date date, @NonNull ExchangeRate exchangeRate, long fetchedAtMillis) {
+        final String baseCurrencyCode = exchangeRate.getBaseCurrencyCode();
+        if (baseCurrencyCode == null) {
+            Logger.warn(this, "Ignoring an exchange rate without a base currency");
+            return;
+        }
+
+        final String key = getKey(date, baseCurrencyCode);
+        final Entry entry = new Entry(exchangeRate, fetchedAtMillis);
+        memoryCache.put(key, entry);
+        try {
+            write(entry, new File(directory, key + EXTENSION));
+            prune();
+        } catch (IOException e) {
+            Logger.warn(this, "Failed to persist the exchange rate for {}", key, e);
+        }
+    }
+
+    private void write(@NonNull Entry entry, @NonNull File destination) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Failed to create " + directory);
+        }
+        final File tempFile = new File(directory, destination.getName() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), UTF_8)) {
+            gson.toJson(entry, writer);
+        }
+        if (!tempFile.renameTo(destination)) {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            throw new IOException("Failed to write " + destination);
+        }
+    }
+
+    /**
+     * Deletes the oldest entries from our store, once it grows beyond its maximum size
+     */
+    private void prune() {
+        final File[] files = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (files == null || files.length <= maxStoredRates) {
+            return;
+        }
+        Arrays.sort(files, (lhs, rhs) -> Long.compare(rhs.lastModified(), lhs.lastModified()));
+        for (int i = maxStoredRates; i < files.length; i++) {
+            if (!files[i].delete()) {
+                Logger.warn(this, "Failed to delete stored exchange rate {}", files[i].getName());
+            }
+        }
+    }
+
+    /**
+     * Note: {@link Date#toString()} yields the same "yyyy-MM-dd" format that we use in our exchange rate requests
+     */
+    @NonNull
+    private static String getKey(@NonNull Date date, @NonNull String baseCurrencyCode) {
+        return baseCurrencyCode.toUpperCase(Locale.US) + "_" + date.toString();
+    }
+
+    /**
+     * A stored exchange rate table, alongside the time at which we fetched it
+     */
+    public static final class Entry {
+
+        private final ExchangeRate exchangeRate;
+        private final long fetchedAtMillis;
+
+        Entry(@NonNull ExchangeRate exchangeRate, long fetchedAtMillis) {
+            this.exchangeRate = exchangeRate;
+            this.fetchedAtMillis = fetchedAtMillis;
+        }
+
+        @NonNull
+        public ExchangeRate getExchangeRate() {
+            return exchangeRate;
+        }
+
+        public long getFetchedAtMillis() {
+            return fetchedAtMillis;
+        }
+    }
+}
@@ -9,7 +9,6 @@ import com.wops.receiptsgo.model.factory.ReceiptBuilderFactory
 import com.wops.receiptsgo.persistence.database.controllers.impl.ReceiptTableController
 import com.wops.receiptsgo.persistence.database.controllers.impl.TripTableController
 import com.wops.receiptsgo.persistence.database.operations.DatabaseOperationMetadata
-import com.wops.receiptsgo.persistence.database.operations.OperationFamilyType
 import com.wops.receiptsgo.persistence.database.tables.ordering.OrderingPreferencesManager
 import com.wops.receiptsgo.receipts.ordering.ReceiptsOrderer.OrderingType.*
 import com.wops.analytics.log.Logger
@@ -20,7 +19,6 @@ import io.reactivex.Single
 import io.reactivex.schedulers.Schedulers
 import java.sql.Date
 import javax.inject.Inject
-import kotlin.math.min
 
 /**
  * Manages the ordering of receipts, helping us to ensure that they always maintain a consistent ordering.
@@ -206,27 +204,21 @@ class ReceiptsOrderer constructor(private val tripTableController: TripTableCont
                     return@fromCallable receiptsToUpdateList
                 }
                 .subscribeOn(backgroundScheduler)
+                .singleOrError()
                 .flatMap { receiptsToUpdateList ->
-                    return@flatMap Observable.fromIterable(receiptsToUpdateList)
-                            .concatMap {
-                                // Note: We use concatMap to preserve the list ordering
-                                if (it.second == null) {
-                                    // Return the original receipt if there's nothing to update
-                                    return@concatMap Observable.just(it.first)
-                                } else {
-                                    // Or if there's a change, apply this and update accordingly
-                                    return@concatMap receiptTableController.update(it.first, it.second!!, getDatabaseOperationMetadata(receiptsToUpdateList, it))
-                                            .flatMap { receiptOptional ->
-                                                if (receiptOptional.isPresent) {
-                                                    Observable.just(receiptOptional.get())
-                                                } else {
-                                                    Observable.error<Receipt>(Exception("Failed to update the receipt custom_order_id"))
-                                                }
-                                            }
-                                }
+                    val changedPairs = receiptsToUpdateList.filter { it.second != null }
+                    if (changedPairs.isEmpty()) {
+                        return@flatMap Single.just(receiptsToUpdateList.map { it.first })
+                    }
+
+                    // Apply all changes in a single transaction, so our listeners receive a single batched update callback
+                    return@flatMap receiptTableController.updateAll(changedPairs.map { it.first }, changedPairs.map { it.second!! }, DatabaseOperationMetadata())
+                            .map { updatedReceipts ->
+                                // Merge the updated receipts back into the full list, preserving the original ordering
+                                val updatedReceiptsIterator = updatedReceipts.iterator()
+                                receiptsToUpdateList.map { if (it.second == null) it.first else updatedReceiptsIterator.next() }
                             }
                 }
-                .toList()
                 .doOnSuccess {
                     Logger.info(this, "Successfully re-ordered this receipts list to the desired position")
                 }
@@ -263,19 +255,7 @@ class ReceiptsOrderer constructor(private val tripTableController: TripTableCont
                     }
                     return@fromCallable receiptPairs
                 }
-                .flatMap { list ->
-                    Observable.fromIterable(list)
-                            .flatMap {
-                                receiptTableController.update(it.first, it.second, getDatabaseOperationMetadata(list, it))
-                                        .flatMap { receiptOptional ->
-                                            if (receiptOptional.isPresent) {
-                                                Observable.just(receiptOptional.get())
-                                            } else {
-                                                Observable.error<Receipt>(Exception("Failed to update the receipt custom_order_id"))
-                                            }
-                                        }
-                            }
-                }
+                .flatMap { list -> updateAll(list) }
                 .doOnError {
                     Logger.info(this, "Failed re-ordered this receipts list by date to custom order id", it)
                 }
@@ -345,19 +325,7 @@ class ReceiptsOrderer constructor(private val tripTableController: TripTableCont
 
                     return@fromCallable receiptPairs
                 }
-                .flatMap { list ->
-                    Observable.fromIterable(list)
-                            .flatMap {
-                                receiptTableController.update(it.first, it.second, getDatabaseOperationMetadata(list, it))
-                                        .flatMap { receiptOptional ->
-                                            if (receiptOptional.isPresent) {
-                                                Observable.just(receiptOptional.get())
-                                            } else {
-                                                Observable.error<Receipt>(Exception("Failed to update the receipt custom_order_id"))
-                                            }
-                                        }
-                            }
-                }
+                .flatMap { list -> updateAll(list) }
                 .doOnError {
                     Logger.warn(this, "Failed re-ordered this receipts list by date to custom order id", it)
                 }
@@ -367,37 +335,18 @@ class ReceiptsOrderer constructor(private val tripTableController: TripTableCont
     }
 
     /**
-     * To help speed along the results, we don't want to update the UI when a single item is changed. To help manage this,
-     * we use this helper function to determine if this should be a "silent" operation or not. We use normal operations if
-     * this is the last item in a particular trip and a "silent" operation if it's any other one
+     * Applies all of the [Receipt] changes in [list] within a single batched transaction, so our listeners receive a
+     * single `onUpdateAllSuccess` callback instead of one `onUpdateSuccess` callback for each individual receipt
      *
-     * @param list a [List] of items
-     * @param item the item to check if it's the last one
-     * @return the appropriate [DatabaseOperationMetadata], usually [OperationFamilyType.Silent] but [OperationFamilyType.Default]
-     * if it's the last
+     * @param list a [List] of old and new [Receipt] pairs
+     * @return an [Observable], which will emit each updated [Receipt]
      */
-    private fun getDatabaseOperationMetadata(list: List<Pair<Receipt, Receipt?>>, item: Any) : DatabaseOperationMetadata {
-        // Find the index as either the next or "last" item
-        val nextItemIndex = min(list.indexOf(item) + 1, list.size - 1)
-        when {
-            list.last() == item -> {
-                // As the last item to update in this list, we'll update all listeners when it's done (ie non-Silent operation)
-                return DatabaseOperationMetadata()
-            }
-            list[nextItemIndex].second == null -> {
-                // If the next item index has a null value (i.e. it's not updating), check if this is true for the subsequent changes
-                for (index in nextItemIndex until list.size) {
-                    // If any subsequent items do require an update (i.e. the update/second item is NOT null), operate silently
-                    if (list[index].second != null) {
-                        return DatabaseOperationMetadata(OperationFamilyType.Silent)
-                    }
-                }
-                // Otherwise treat this as the final item and issue a non-silent update
-                return DatabaseOperationMetadata()
-            }
-            else -> {
-                return DatabaseOperationMetadata(OperationFamilyType.Silent)
-            }
+    private fun updateAll(list: List<Pair<Receipt, Receipt>>): Observable<Receipt> {
+        return if (list.isEmpty()) {
+            Observable.empty()
+        } else {
+            receiptTableController.updateAll(list.map { it.first }, list.map { it.second }, DatabaseOperationMetadata())
+                    .flatMapObservable { Observable.fromIterable(it) }
         }
     }
 
@@ -4,15 +4,13 @@ import com.wops.core.di.scopes.ApplicationScope
 import com.wops.receiptsgo.model.Receipt
 import com.wops.receiptsgo.model.Trip
 import com.wops.receiptsgo.persistence.DatabaseHelper
-import com.wops.receiptsgo.persistence.database.tables.CategoriesTable
 import com.wops.receiptsgo.persistence.database.tables.PaymentMethodsTable
 import com.wops.receiptsgo.persistence.database.tables.ReceiptsTable
-import com.wops.receiptsgo.persistence.database.tables.TripsTable
 import io.reactivex.Observable
 import io.reactivex.Scheduler
 import io.reactivex.Single
 import io.reactivex.android.schedulers.AndroidSchedulers
-import io.reactivex.functions.Function3
+import io.reactivex.functions.BiFunction
 import io.reactivex.schedulers.Schedulers
 import javax.inject.Inject
 
@@ -38,21 +36,13 @@ class SearchInteractor(
         }
 
         return Single.zip(
-            searchReceiptsByCategory(input),
-            searchReceiptsByPaymentMethod(input),
-            searchReceiptCommonly(input),
-
-            Function3<List<String>, List<String>, List<String>, List<String>> { byCategorySearch, byPaymentMethodSearch, byCommonSearch ->
-                val receipts = ArrayList<String>()
-                receipts.apply {
-                    addAll(byCategorySearch)
-                    addAll(byPaymentMethodSearch)
-                    addAll(byCommonSearch)
-                    distinct()
-                }
+            searchReceiptsByText(input),
+            searchReceiptsByPaymentMethod(input).flatMap { getReceiptsByIds(it) },
+
+            BiFunction<List<Receipt>, List<Receipt>, List<Receipt>> { byTextSearch, byPaymentMethodSearch ->
+                (byTextSearch + byPaymentMethodSearch).distinctBy { it.id }
             }
         )
-            .flatMap { getReceiptsByIds(it) }
             .flatMap { receipts ->
                 searchForTrips(input)
                     .map { trips ->
@@ -65,25 +55,10 @@ class SearchInteractor(
     }
 
     /**
-     * @return List of receipt's id's
+     * @return receipts found by name, comment, category, or price via the full-text search index
      */
-    private fun searchReceiptsByCategory(input: String): Single<List<String>> {
-        return databaseHelper.search(
-            input, CategoriesTable.TABLE_NAME, CategoriesTable.COLUMN_ID, null,
-            CategoriesTable.COLUMN_NAME, CategoriesTable.COLUMN_CODE
-        )
-            .flatMap { categories ->
-                Observable.fromIterable(categories)
-                    .flatMap { categoryId ->
-                        databaseHelper.search(
-                            categoryId, ReceiptsTable.TABLE_NAME, ReceiptsTable.COLUMN_ID, null,
-                            ReceiptsTable.COLUMN_CATEGORY_ID
-                        )
-                            .toObservable()
-                    }
-                    .flatMap { Observable.fromIterable(it) }
-                    .toList()
-            }
+    private fun searchReceiptsByText(input: String): Single<List<Receipt>> {
+        return databaseHelper.receiptsTable.search(input, null, SEARCH_RESULTS_LIMIT)
     }
 
     /**
@@ -108,14 +83,6 @@ class SearchInteractor(
             }
     }
 
-    private fun searchReceiptCommonly(input: String): Single<List<String>> {
-        // receipts found by receipt's name, comment, price
-        return databaseHelper.search(
-            input, ReceiptsTable.TABLE_NAME, ReceiptsTable.COLUMN_ID, ReceiptsTable.COLUMN_DATE,
-            ReceiptsTable.COLUMN_NAME, ReceiptsTable.COLUMN_COMMENT, ReceiptsTable.COLUMN_PRICE
-        )
-    }
-
     private fun getReceiptsByIds(ids: List<String>): Single<List<Receipt>> {
         return databaseHelper.receiptsTable.get()
             .map { allReceipts ->
@@ -132,25 +99,11 @@ class SearchInteractor(
     }
 
     private fun searchForTrips(input: String): Single<List<Trip>> {
-        // Single with the list of trips found by trip's name, comment
-        return databaseHelper.search(
-            input, TripsTable.TABLE_NAME, TripsTable.COLUMN_ID, TripsTable.COLUMN_FROM,
-            TripsTable.COLUMN_NAME, TripsTable.COLUMN_COMMENT
-        )
-            .flatMap { tripsIdList ->
-                databaseHelper.tripsTable.get()
-                    .map { allTrips ->
-                        val results = ArrayList<Trip>()
-
-                        for (trip in allTrips) {
-                            if (tripsIdList.contains(trip.id.toString())) {
-                                results.add(trip)
-                            }
-                        }
-
-                        return@map results
-                    }
-            }
+        // trips found by name, comment, or cost center via the full-text search index
+        return databaseHelper.tripsTable.search(input, null, SEARCH_RESULTS_LIMIT)
+    }
 
+    companion object {
+        private const val SEARCH_RESULTS_LIMIT = 500
     }
 }
\ No newline at end of file
@@ -29,6 +29,16 @@ class UserPreferenceManager constructor(private val context: Context,
 
     private val userPreferenceChangedPublishSubject = PublishSubject.create<UserPreference<*>>()
 
+    /**
+     * The keys and default values of our preferences, which we only resolve from our resources once
+     */
+    private val catalog by lazy { Catalog(context, UserPreference.values()) }
+
+    private val snapshotLock = Any()
+
+    @Volatile
+    private var currentSnapshot: UserPreferenceSnapshot? = null
+
     @Inject
     constructor(context: Context,
                 @Named(PREFERENCES_FILE_NAME) preferences: Lazy<SharedPreferences>) : this(context.applicationContext, preferences, Schedulers.io())
@@ -105,6 +115,10 @@ class UserPreferenceManager constructor(private val context: Context,
                             }
                         }
                     }
+                    // Don't wait for our (main thread) change listener to pick up these defaults
+                    if (currentSnapshot != null) {
+                        refreshSnapshot()
+                    }
                     Logger.debug(this@UserPreferenceManager, "Completed user preference initialization")
                 }
     }
@@ -139,22 +153,16 @@ class UserPreferenceManager constructor(private val context: Context,
      * @param preference a [UserPreference] to get the value of
      * @return a value of type [T] for a the param
      */
-    @Suppress("UNCHECKED_CAST")
     operator fun <T> get(preference: UserPreference<T>): T {
-        val name = context.getString(preference.name)
-        return when {
-            java.lang.Boolean::class.java == preference.type -> java.lang.Boolean.valueOf(preferences.get().getBoolean(name, context.resources.getBoolean(preference.defaultValue))) as T
-            java.lang.String::class.java == preference.type -> preferences.get().getString(name, context.getString(preference.defaultValue)) as T
-            java.lang.Float::class.java == preference.type -> {
-                val typedValue = TypedValue()
-                context.resources.getValue(preference.defaultValue, typedValue, true)
-                java.lang.Float.valueOf(preferences.get().getFloat(name, typedValue.float)) as T
-            }
-            java.lang.Integer::class.java == preference.type -> Integer.valueOf(preferences.get().getInt(name, context.resources.getInteger(preference.defaultValue))) as T
-            else -> throw IllegalArgumentException("Unsupported preference type: " + preference.type)
-        }
+        return snapshot[preference]
     }
 
+    /**
+     * @return an immutable [UserPreferenceSnapshot] of our current preference values. Callers that read the same
+     * preferences for many items (e.g. while filtering receipts) may hold onto this for the duration of their loop
+     */
+    val snapshot: UserPreferenceSnapshot get() = currentSnapshot ?: refreshSnapshot()
+
     /**
      * Sets the value of an [UserPreference] with a new value
      *
@@ -202,6 +210,7 @@ class UserPreferenceManager constructor(private val context: Context,
                 throw IllegalArgumentException("Unsupported preference type: " + preference.type)
             }
         }
+        refreshSnapshot(preference)
     }
 
     /**
@@ -211,11 +220,21 @@ class UserPreferenceManager constructor(private val context: Context,
      * @return the [String] key for this preference
      */
     fun name(preference: UserPreference<*>): String {
-        return context.getString(preference.name)
+        return catalog.keys[preference.index]!!
     }
 
     @SuppressLint("CheckResult")
     override fun onSharedPreferenceChanged(sharedPreferences: SharedPreferences?, key: String?) {
+        if (currentSnapshot != null) {
+            // Note: A null key indicates that our preferences were cleared
+            val changedPreference = if (key != null) catalog.preferencesByKey[key] else null
+            if (changedPreference != null) {
+                refreshSnapshot(changedPreference)
+            } else if (key == null) {
+                refreshSnapshot()
+            }
+        }
+
         userPreferencesSingle
                 .subscribeOn(this.initializationScheduler)
                 .subscribe { userPreferences ->
@@ -246,4 +265,87 @@ class UserPreferenceManager constructor(private val context: Context,
      */
     @Deprecated("We should prefer the UserPreferenceManager's getter/setter instead")
     val sharedPreferences: SharedPreferences get() = preferences.get()
+
+    /**
+     * Re-reads every preference into a new [UserPreferenceSnapshot], which we then swap in
+     */
+    private fun refreshSnapshot(): UserPreferenceSnapshot {
+        synchronized(snapshotLock) {
+            if (currentSnapshot == null) {
+                // Track all changes from here on, since we'll no longer query our shared preferences on each read
+                preferences.get().registerOnSharedPreferenceChangeListener(this)
+            }
+            val values = arrayOfNulls<Any>(catalog.size)
+            catalog.userPreferences.forEach { values[it.index] = read(it) }
+            val snapshot = UserPreferenceSnapshot(values)
+            currentSnapshot = snapshot
+            return snapshot
+        }
+    }
+
+    /**
+     * Re-reads a single [preference] into a copy of our current [UserPreferenceSnapshot], which we then swap in
+     */
+    private fun refreshSnapshot(preference: UserPreference<*>) {
+        synchronized(snapshotLock) {
+            val snapshot = currentSnapshot
+            if (snapshot != null) {
+                currentSnapshot = snapshot.with(preference, read(preference))
+            }
+        }
+    }
+
+    private fun read(preference: UserPreference<*>): Any? {
+        val key = catalog.keys[preference.index]
+        val defaultValue = catalog.defaultValues[preference.index]
+        return try {
+            when {
+                java.lang.Boolean::class.java == preference.type -> preferences.get().getBoolean(key, defaultValue as Boolean)
+                java.lang.String::class.java == preference.type -> preferences.get().getString(key, defaultValue as String?)
+                java.lang.Float::class.java == preference.type -> preferences.get().getFloat(key, defaultValue as Float)
+                java.lang.Integer::class.java == preference.type -> preferences.get().getInt(key, defaultValue as Int)
+                else -> throw IllegalArgumentException("Unsupported preference type: " + preference.type)
+            }
+        } catch (e: ClassCastException) {
+            Logger.warn(this, "Found a value of the wrong type for {}. Using the default instead", key, e)
+            defaultValue
+        }
+    }
+
+    /**
+     * The key and default value of each [UserPreference], which we store by [UserPreference.getIndex]
+     */
+    private class Catalog(context: Context, val userPreferences: List<UserPreference<*>>) {
+
+        val size = userPreferences.fold(0) { size, preference -> Math.max(size, preference.index + 1) }
+
+        val keys = arrayOfNulls<String>(size)
+
+        val defaultValues = arrayOfNulls<Any>(size)
+
+        val preferencesByKey = HashMap<String, UserPreference<*>>(size)
+
+        init {
+            userPreferences.forEach { preference ->
+                val key = context.getString(preference.name)
+                keys[preference.index] = key
+                defaultValues[preference.index] = getDefaultValue(context, preference)
+                preferencesByKey[key] = preference
+            }
+        }
+
+        private fun getDefaultValue(context: Context, preference: UserPreference<*>): Any? {
+            return when {
+                java.lang.Boolean::class.java == preference.type -> context.resources.getBoolean(preference.defaultValue)
+                java.lang.String::class.java == preference.type -> context.getString(preference.defaultValue)
+                java.lang.Float::class.java == preference.type -> {
+                    val typedValue = TypedValue()
+                    context.resources.getValue(preference.defaultValue, typedValue, true)
+                    typedValue.float
+                }
+                java.lang.Integer::class.java == preference.type -> context.resources.getInteger(preference.defaultValue)
+                else -> throw IllegalArgumentException("Unsupported preference type: " + preference.type)
+            }
+        }
+    }
 }
@@ -0,0 +1,34 @@
+package com.wops.receiptsgo.settings
+
+import com.wops.receiptsgo.settings.catalog.UserPreference
+
+/**
+ * An immutable, point-in-time copy of the value of every [UserPreference], which we store by [UserPreference.getIndex].
+ * This allows us to read a preference with a single array load, rather than resolving its key and default value (and
+ * then querying our [android.content.SharedPreferences]) each time.
+ *
+ * Note: We never modify a snapshot once it has been published. Changes are instead applied to a copy via [with], which
+ * the [UserPreferenceManager] then swaps in atomically.
+ */
+class UserPreferenceSnapshot internal constructor(private val values: Array<Any?>) {
+
+    /**
+     * @param preference a [UserPreference] to get the value of
+     * @return the value of type [T] for this preference at the time that this snapshot was taken
+     */
+    @Suppress("UNCHECKED_CAST")
+    operator fun <T> get(preference: UserPreference<T>): T {
+        return values[preference.index] as T
+    }
+
+    /**
+     * @param preference the [UserPreference] to update
+     * @param value the new value of this preference
+     * @return a copy of this snapshot, in which the [preference] has a new [value]
+     */
+    internal fun with(preference: UserPreference<*>, value: Any?): UserPreferenceSnapshot {
+        val copy = values.copyOf()
+        copy[preference.index] = value
+        return UserPreferenceSnapshot(copy)
+    }
+}
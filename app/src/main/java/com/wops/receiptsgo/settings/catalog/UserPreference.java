@@ -10,6 +10,7 @@ import com.google.common.base.Preconditions;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.wops.receiptsgo.R;
 import com.wops.analytics.log.Logger;
@@ -115,16 +116,20 @@ public final class UserPreference<T> {
         public static final UserPreference<Integer> ApplicationVersionCode = new UserPreference<>(Integer.class, R.string.pref_internal_app_version_code, R.integer.pref_internal_app_version_code_defaultValue);
     }
 
+    private static final AtomicInteger NEXT_INDEX = new AtomicInteger();
+
     private static List<UserPreference<?>> CACHED_VALUES;
 
     private final Class<T> type;
     private final int name;
     private final int defaultValue;
+    private final int index;
 
     private UserPreference(@NonNull Class<T> type, @StringRes int name, @AnyRes int defaultValue) {
         this.type = Preconditions.checkNotNull(type);
         this.name = name;
         this.defaultValue = defaultValue;
+        this.index = NEXT_INDEX.getAndIncrement();
     }
 
     @NonNull
@@ -142,6 +147,13 @@ public final class UserPreference<T> {
         return defaultValue;
     }
 
+    /**
+     * @return a unique, zero-based index for this preference, which allows us to store preference values in an array
+     */
+    public int getIndex() {
+        return index;
+    }
+
     @NonNull
     public static synchronized List<UserPreference<?>> values() {
         if (CACHED_VALUES == null) {
@@ -4,6 +4,8 @@ import androidx.annotation.NonNull;
 
 import com.google.common.base.Preconditions;
 
+import java.util.List;
+
 import com.wops.receiptsgo.persistence.database.controllers.impl.StubTableEventsListener;
 import com.wops.receiptsgo.persistence.database.operations.DatabaseOperationMetadata;
 import com.wops.receiptsgo.persistence.database.operations.OperationFamilyType;
@@ -37,4 +39,26 @@ public class DatabaseBackupListener<ModelType> extends StubTableEventsListener<M
             mDriveDatabaseManager.syncDatabase();
         }
     }
+
+    @Override
+    public void onInsertAllSuccess(@NonNull List<ModelType> list, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        // Note: We only need to sync our database once for the entire batch
+        if (databaseOperationMetadata.getOperationFamilyType() != OperationFamilyType.Sync) {
+            mDriveDatabaseManager.syncDatabase();
+        }
+    }
+
+    @Override
+    public void onUpdateAllSuccess(@NonNull List<ModelType> oldList, @NonNull List<ModelType> newList, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        if (databaseOperationMetadata.getOperationFamilyType() != OperationFamilyType.Sync) {
+            mDriveDatabaseManager.syncDatabase();
+        }
+    }
+
+    @Override
+    public void onDeleteAllSuccess(@NonNull List<ModelType> list, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        if (databaseOperationMetadata.getOperationFamilyType() != OperationFamilyType.Sync) {
+            mDriveDatabaseManager.syncDatabase();
+        }
+    }
 }
@@ -4,6 +4,8 @@ import androidx.annotation.NonNull;
 
 import com.google.common.base.Preconditions;
 
+import java.util.List;
+
 import com.wops.receiptsgo.model.Receipt;
 import com.wops.receiptsgo.persistence.database.operations.DatabaseOperationMetadata;
 import com.wops.receiptsgo.persistence.database.operations.OperationFamilyType;
@@ -44,4 +46,36 @@ public class ReceiptBackupListener extends DatabaseBackupListener<Receipt> {
             mDriveReceiptsManager.handleDelete(receipt);
         }
     }
+
+    @Override
+    public void onInsertAllSuccess(@NonNull List<Receipt> list, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        super.onInsertAllSuccess(list, databaseOperationMetadata);
+        if (databaseOperationMetadata.getOperationFamilyType() != OperationFamilyType.Sync) {
+            mDriveReceiptsManager.handleInsertOrUpdateAll(list);
+        }
+    }
+
+    @Override
+    public void onUpdateAllSuccess(@NonNull List<Receipt> oldList, @NonNull List<Receipt> newList, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        for (final Receipt newReceipt : newList) {
+            if (newReceipt.getFile() != null) {
+                // Note: We only need to sync our database once for the entire batch
+                mDriveDatabaseManager.syncDatabase();
+                break;
+            }
+        }
+        if (databaseOperationMetadata.getOperationFamilyType() != OperationFamilyType.Sync) {
+            mDriveReceiptsManager.handleInsertOrUpdateAll(newList);
+        }
+    }
+
+    @Override
+    public void onDeleteAllSuccess(@NonNull List<Receipt> list, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        super.onDeleteAllSuccess(list, databaseOperationMetadata);
+        if (databaseOperationMetadata.getOperationFamilyType() != OperationFamilyType.Sync) {
+            for (final Receipt receipt : list) {
+                mDriveReceiptsManager.handleDelete(receipt);
+            }
+        }
+    }
 }
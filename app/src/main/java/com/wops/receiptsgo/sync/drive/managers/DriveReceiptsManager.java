@@ -6,7 +6,7 @@ import androidx.annotation.VisibleForTesting;
 
 import com.google.common.base.Preconditions;
 
-import java.io.File;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.wops.analytics.Analytics;
@@ -21,13 +21,11 @@ import com.wops.receiptsgo.persistence.database.tables.TripsTable;
 import com.wops.automatic_backups.drive.managers.DriveDatabaseManager;
 import com.wops.automatic_backups.drive.rx.DriveStreamMappings;
 import com.wops.automatic_backups.drive.rx.DriveStreamsManager;
-import com.wops.core.sync.model.SyncState;
 import com.wops.receiptsgo.sync.network.NetworkManager;
 import com.wops.core.sync.provider.SyncProvider;
 import com.wops.analytics.log.Logger;
 import io.reactivex.Observable;
 import io.reactivex.Scheduler;
-import io.reactivex.Single;
 import io.reactivex.schedulers.Schedulers;
 
 public class DriveReceiptsManager {
@@ -35,14 +33,13 @@ public class DriveReceiptsManager {
     private final TableController<Receipt> mReceiptTableController;
     private final ReceiptsTable mReceiptsTable;
     private final TripsTable mTripsTable;
-    private final DriveStreamsManager mDriveTaskManager;
     private final DriveDatabaseManager mDriveDatabaseManager;
     private final NetworkManager mNetworkManager;
     private final Analytics mAnalytics;
-    private final DriveStreamMappings mDriveStreamMappings;
     private final ReceiptBuilderFactoryFactory mReceiptBuilderFactoryFactory;
     private final Scheduler mObserveOnScheduler;
     private final Scheduler mSubscribeOnScheduler;
+    private final DriveReceiptsSyncScheduler mSyncScheduler;
     private final AtomicBoolean mIsEnabled = new AtomicBoolean(true);
     private final AtomicBoolean mIsInitializing = new AtomicBoolean(false);
 
@@ -64,17 +61,35 @@ public class DriveReceiptsManager {
                                 @NonNull ReceiptBuilderFactoryFactory receiptBuilderFactoryFactory,
                                 @NonNull Scheduler observeOnScheduler,
                                 @NonNull Scheduler subscribeOnScheduler) {
+        this(receiptsTableController, tripsTable, receiptsTable, driveDatabaseManager, networkManager, analytics, receiptBuilderFactoryFactory,
+                observeOnScheduler, subscribeOnScheduler,
+                new DriveReceiptsSyncScheduler(receiptsTableController, receiptsTable, driveTaskManager, driveStreamMappings, receiptBuilderFactoryFactory, analytics,
+                        subscribeOnScheduler, Schedulers.computation(), DriveReceiptsSyncScheduler.DEFAULT_MAX_CONCURRENT_UPLOADS,
+                        DriveReceiptsSyncScheduler.DEFAULT_MAX_RETRIES, DriveReceiptsSyncScheduler.DEFAULT_INITIAL_BACKOFF_MILLIS,
+                        DriveReceiptsSyncScheduler.DEFAULT_BATCH_SIZE, DriveReceiptsSyncScheduler.DEFAULT_COMMIT_INTERVAL_MILLIS));
+    }
+
+    @VisibleForTesting
+    DriveReceiptsManager(@NonNull TableController<Receipt> receiptsTableController,
+                         @NonNull TripsTable tripsTable,
+                         @NonNull ReceiptsTable receiptsTable,
+                         @NonNull DriveDatabaseManager driveDatabaseManager,
+                         @NonNull NetworkManager networkManager,
+                         @NonNull Analytics analytics,
+                         @NonNull ReceiptBuilderFactoryFactory receiptBuilderFactoryFactory,
+                         @NonNull Scheduler observeOnScheduler,
+                         @NonNull Scheduler subscribeOnScheduler,
+                         @NonNull DriveReceiptsSyncScheduler syncScheduler) {
         mReceiptTableController = Preconditions.checkNotNull(receiptsTableController);
         mTripsTable = Preconditions.checkNotNull(tripsTable);
         mReceiptsTable = Preconditions.checkNotNull(receiptsTable);
-        mDriveTaskManager = Preconditions.checkNotNull(driveTaskManager);
         mDriveDatabaseManager = Preconditions.checkNotNull(driveDatabaseManager);
         mNetworkManager = Preconditions.checkNotNull(networkManager);
         mAnalytics = Preconditions.checkNotNull(analytics);
-        mDriveStreamMappings = Preconditions.checkNotNull(driveStreamMappings);
         mReceiptBuilderFactoryFactory = Preconditions.checkNotNull(receiptBuilderFactoryFactory);
         mObserveOnScheduler = Preconditions.checkNotNull(observeOnScheduler);
         mSubscribeOnScheduler = Preconditions.checkNotNull(subscribeOnScheduler);
+        mSyncScheduler = Preconditions.checkNotNull(syncScheduler);
     }
 
     @SuppressLint("CheckResult")
@@ -83,34 +98,37 @@ public class DriveReceiptsManager {
             if (mNetworkManager.isNetworkAvailable()) {
                 if (!mIsInitializing.getAndSet(true)) {
                     Logger.info(this, "Performing initialization of drive receipts");
-                    mTripsTable.get()
+                    final Observable<Receipt> unsyncedReceipts = mTripsTable.get()
                             .flatMapObservable(Observable::fromIterable)
-                            .flatMapSingle(trip -> mReceiptsTable.getUnsynced(trip, SyncProvider.GoogleDrive))
+                            .concatMapSingle(trip -> mReceiptsTable.getUnsynced(trip, SyncProvider.GoogleDrive))
                             .flatMap(Observable::fromIterable)
+                            .takeWhile(receipt -> mIsEnabled.get());
+
+                    mSyncScheduler.sync(unsyncedReceipts)
                             .subscribeOn(mSubscribeOnScheduler)
                             .observeOn(mObserveOnScheduler)
-                            .subscribe(receipt -> {
-                                Logger.info(DriveReceiptsManager.this, "Performing found unsynced receipt " + receipt.getId());
-                                if (receipt.getSyncState().isMarkedForDeletion(SyncProvider.GoogleDrive)) {
-                                    Logger.info(DriveReceiptsManager.this, "Handling delete action during initialization");
-                                    handleDeleteInternal(receipt);
-                                } else {
-                                    Logger.info(DriveReceiptsManager.this, "Handling insert/update action during initialization");
-                                    handleInsertOrUpdateInternal(receipt);
-                                }
+                            .subscribe(() -> {
+                                Logger.info(DriveReceiptsManager.this, "Completed the initialization of drive receipts: {}", mSyncScheduler.getProgress());
+                                mDriveDatabaseManager.syncDatabase();
+                                mIsInitializing.set(false);
                             }, throwable -> {
                                 mAnalytics.record(new ErrorEvent(DriveReceiptsManager.this, throwable));
                                 Logger.error(DriveReceiptsManager.this, "Failed to fetch our unsynced receipt data", throwable);
                                 mIsInitializing.set(false);
-                            }, () -> {
-                                mDriveDatabaseManager.syncDatabase();
-                                mIsInitializing.set(false);
                             });
                 }
             }
         }
     }
 
+    /**
+     * @return the combined {@link DriveReceiptsSyncScheduler.Progress} of our current syncs (or of our most recent one)
+     */
+    @NonNull
+    public DriveReceiptsSyncScheduler.Progress getSyncProgress() {
+        return mSyncScheduler.getProgress();
+    }
+
     public synchronized void enable() {
         Logger.info(this, "Enabling Drive Receipts Manager");
         mIsEnabled.set(true);
@@ -139,7 +157,7 @@ public class DriveReceiptsManager {
         Preconditions.checkArgument(!receipt.getSyncState().isMarkedForDeletion(SyncProvider.GoogleDrive), "Cannot insert/update a receipt that is marked for deletion");
 
         if (mNetworkManager.isNetworkAvailable()) {
-            onInsertOrUpdateObservable(receipt)
+            mSyncScheduler.getSyncState(receipt)
                     .observeOn(mObserveOnScheduler)
                     .subscribeOn(mSubscribeOnScheduler)
                     .map(syncState -> mReceiptBuilderFactoryFactory.build(receipt).setSyncState(syncState).build())
@@ -158,6 +176,42 @@ public class DriveReceiptsManager {
         }
     }
 
+    /**
+     * Handles a batch of receipts that were inserted or updated in a single transaction. Instead of syncing (and then
+     * committing the sync state of) each receipt individually, we pass the entire batch to our sync scheduler
+     *
+     * @param receipts the {@link List} of inserted or updated receipts
+     */
+    @SuppressLint("CheckResult")
+    public synchronized void handleInsertOrUpdateAll(@NonNull final List<Receipt> receipts) {
+        if (mIsInitializing.get()) {
+            return;
+        }
+        if (!mIsEnabled.get()) {
+            Logger.warn(this, "Ignoring batched insert or update as we're currently disabled");
+            return;
+        }
+
+        for (final Receipt receipt : receipts) {
+            Preconditions.checkArgument(!receipt.getSyncState().isSynced(SyncProvider.GoogleDrive), "Cannot sync an already synced receipt");
+            Preconditions.checkArgument(!receipt.getSyncState().isMarkedForDeletion(SyncProvider.GoogleDrive), "Cannot insert/update a receipt that is marked for deletion");
+        }
+
+        if (mNetworkManager.isNetworkAvailable()) {
+            mSyncScheduler.sync(Observable.fromIterable(receipts))
+                    .subscribeOn(mSubscribeOnScheduler)
+                    .observeOn(mObserveOnScheduler)
+                    .subscribe(() -> {
+                        Logger.info(DriveReceiptsManager.this, "Successfully synced a batch of {} receipts", receipts.size());
+                    }, throwable -> {
+                        mAnalytics.record(new ErrorEvent(DriveReceiptsManager.this, throwable));
+                        Logger.error(DriveReceiptsManager.this, "Failed to handle a batched insert/update of " + receipts.size() + " receipts", throwable);
+                    });
+        } else {
+            Logger.warn(this, "No network. Skipping batched insert/update");
+        }
+    }
+
     public synchronized void handleDelete(@NonNull final Receipt receipt) {
         if (!mIsInitializing.get()) {
             handleDeleteInternal(receipt);
@@ -176,15 +230,7 @@ public class DriveReceiptsManager {
         Preconditions.checkArgument(receipt.getSyncState().isMarkedForDeletion(SyncProvider.GoogleDrive), "Cannot delete a receipt that isn't marked for deletion");
 
         if (mNetworkManager.isNetworkAvailable()) {
-            mReceiptsTable.findByPrimaryKey(receipt.getId())
-                    .flatMap(queriedReceipt -> {
-                        if (receipt.equals(queriedReceipt) && receipt.getIndex() == queriedReceipt.getIndex()) {
-                            return mDriveTaskManager.deleteDriveFile(receipt.getSyncState(), true);
-                        } else {
-                            Logger.warn(this, "Receipt {} appears to no longer match the requested one for deletion. Ignoring...", receipt.getId());
-                            return Single.error(new Exception("Queued receipt for syncing is stale. Ignoring"));
-                        }
-                    })
+            mSyncScheduler.getSyncState(receipt)
                     .flatMapObservable(syncState -> Observable.just(mReceiptBuilderFactoryFactory.build(receipt).setSyncState(syncState).build()))
                     .observeOn(mObserveOnScheduler)
                     .subscribeOn(mSubscribeOnScheduler)
@@ -200,36 +246,4 @@ public class DriveReceiptsManager {
         }
     }
 
-    @NonNull
-    private Single<SyncState> onInsertOrUpdateObservable(@NonNull final Receipt receipt) {
-        final SyncState oldSyncState = receipt.getSyncState();
-        final File receiptFile = receipt.getFile();
-
-        return mReceiptsTable.findByPrimaryKey(receipt.getId())
-                .flatMap(queriedReceipt -> {
-                    if (receipt.equals(queriedReceipt)) {
-                        if (oldSyncState.getSyncId(SyncProvider.GoogleDrive) == null) {
-                            if (receiptFile != null && receiptFile.exists()) {
-                                Logger.info(this, "Found receipt {} with a non-uploaded file. Uploading", receipt.getId());
-                                return mDriveTaskManager.uploadFileToDrive(oldSyncState, receiptFile);
-                            } else {
-                                Logger.info(this, "Found receipt {} without a file. Marking as synced for Drive", receipt.getId());
-                                return Single.just(mDriveStreamMappings.postInsertSyncState());
-                            }
-                        } else {
-                            if (receiptFile != null) {
-                                Logger.info(this, "Found receipt {} with a new file. Updating", receipt.getId());
-                                return mDriveTaskManager.updateDriveFile(oldSyncState, receiptFile);
-                            } else {
-                                Logger.info(this, "Found receipt {} with a stale file reference. Removing", receipt.getId());
-                                return mDriveTaskManager.deleteDriveFile(oldSyncState, false);
-                            }
-                        }
-                    } else {
-                        Logger.warn(this, "Receipt {} appears to no longer match the requested one for upload. Ignoring...", receipt.getId());
-                        return Single.error(new Exception("Queued receipt for syncing is stale. Ignoring"));
-                    }
-                });
-    }
-
 }
@@ -0,0 +1,390 @@
+package com.wops.receiptsgo.sync.drive.managers;
+
+import androidx.annotation.NonNull;
+
+import com.google.common.base.Preconditions;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.wops.analytics.Analytics;
+import com.wops.analytics.events.ErrorEvent;
+import com.wops.analytics.log.Logger;
+import com.wops.automatic_backups.drive.rx.DriveStreamMappings;
+import com.wops.automatic_backups.drive.rx.DriveStreamsManager;
+import com.wops.core.sync.model.SyncState;
+import com.wops.core.sync.provider.SyncProvider;
+import com.wops.receiptsgo.model.Receipt;
+import com.wops.receiptsgo.model.factory.ReceiptBuilderFactoryFactory;
+import com.wops.receiptsgo.persistence.database.controllers.TableController;
+import com.wops.receiptsgo.persistence.database.operations.DatabaseOperationMetadata;
+import com.wops.receiptsgo.persistence.database.operations.OperationFamilyType;
+import com.wops.receiptsgo.persistence.database.tables.ReceiptsTable;
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Syncs a stream of unsynced receipts with Google Drive. Unlike handling each receipt on its own, this scheduler:
+ * <ul>
+ * <li>Limits the number of Drive uploads that may be in flight at any given time</li>
+ * <li>Retries each failed Drive operation with an exponential backoff</li>
+ * <li>Commits the resulting sync states to the {@link ReceiptsTable} in batched transactions</li>
+ * <li>Tracks the {@link Progress} of each sync, so that overlapping ones do not clobber each other's counts</li>
+ * </ul>
+ */
+public class DriveReceiptsSyncScheduler {
+
+    static final int DEFAULT_MAX_CONCURRENT_UPLOADS = 3;
+    static final int DEFAULT_MAX_RETRIES = 3;
+    static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 1000;
+    static final int DEFAULT_BATCH_SIZE = 25;
+    static final long DEFAULT_COMMIT_INTERVAL_MILLIS = 5000;
+
+    private final TableController<Receipt> mReceiptTableController;
+    private final ReceiptsTable mReceiptsTable;
+    private final DriveStreamsManager mDriveTaskManager;
+    private final DriveStreamMappings mDriveStreamMappings;
+    private final ReceiptBuilderFactoryFactory mReceiptBuilderFactoryFactory;
+    private final Analytics mAnalytics;
+    private final Scheduler mUploadScheduler;
+    private final Scheduler mTimerScheduler;
+    private final int mMaxConcurrentUploads;
+    private final int mMaxRetries;
+    private final long mInitialBackoffMillis;
+    private final int mBatchSize;
+    private final long mCommitIntervalMillis;
+
+    private final Set<SyncProgress> mActiveSyncs = new HashSet<>();
+    private Progress mLastProgress = new Progress(0, 0, 0, 0);
+
+    public DriveReceiptsSyncScheduler(@NonNull TableController<Receipt> receiptsTableController, @NonNull ReceiptsTable receiptsTable,
+                                      @NonNull DriveStreamsManager driveTaskManager, @NonNull DriveStreamMappings driveStreamMappings,
+                                      @NonNull ReceiptBuilderFactoryFactory receiptBuilderFactoryFactory, @NonNull Analytics analytics) {
+        this(receiptsTableController, receiptsTable, driveTaskManager, driveStreamMappings, receiptBuilderFactoryFactory, analytics,
+                Schedulers.io(), Schedulers.computation(), DEFAULT_MAX_CONCURRENT_UPLOADS, DEFAULT_MAX_RETRIES, DEFAULT_INITIAL_BACKOFF_MILLIS,
+                DEFAULT_BATCH_SIZE, DEFAULT_COMMIT_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param uploadScheduler      the {@link Scheduler} on which each Drive operation will run
+     * @param timerScheduler       the {@link Scheduler} that will drive our retry backoffs and commit intervals
+     * @param maxConcurrentUploads the maximum number of Drive operations that may be in flight at once
+     * @param maxRetries           the number of times that we will retry a failed Drive operation before giving up
+     * @param initialBackoffMillis the delay before our first retry, which doubles for each subsequent one
+     * @param batchSize            the maximum number of sync states to commit in a single transaction
+     * @param commitIntervalMillis the maximum amount of time that a completed upload will wait for its batch to fill up
+     */
+    public DriveReceiptsSyncScheduler(@NonNull TableController<Receipt> receiptsTableController, @NonNull ReceiptsTable receiptsTable,
+                                      @NonNull DriveStreamsManager driveTaskManager, @NonNull DriveStreamMappings driveStreamMappings,
+                                      @NonNull ReceiptBuilderFactoryFactory receiptBuilderFactoryFactory, @NonNull Analytics analytics,
+                                      @NonNull Scheduler uploadScheduler, @NonNull Scheduler timerScheduler,
+                                      int maxConcurrentUploads, int maxRetries, long initialBackoffMillis, int batchSize, long commitIntervalMillis) {
+        Preconditions.checkArgument(maxConcurrentUploads > 0, "We must allow at least one concurrent upload");
+        Preconditions.checkArgument(maxRetries >= 0, "The retry count cannot be negative");
+        Preconditions.checkArgument(batchSize > 0, "The batch size must be positive");
+        mReceiptTableController = Preconditions.checkNotNull(receiptsTableController);
+        mReceiptsTable = Preconditions.checkNotNull(receiptsTable);
+        mDriveTaskManager = Preconditions.checkNotNull(driveTaskManager);
+        mDriveStreamMappings = Preconditions.checkNotNull(driveStreamMappings);
+        mReceiptBuilderFactoryFactory = Preconditions.checkNotNull(receiptBuilderFactoryFactory);
+        mAnalytics = Preconditions.checkNotNull(analytics);
+        mUploadScheduler = Preconditions.checkNotNull(uploadScheduler);
+        mTimerScheduler = Preconditions.checkNotNull(timerScheduler);
+        mMaxConcurrentUploads = maxConcurrentUploads;
+        mMaxRetries = maxRetries;
+        mInitialBackoffMillis = initialBackoffMillis;
+        mBatchSize = batchSize;
+        mCommitIntervalMillis = commitIntervalMillis;
+    }
+
+    /**
+     * Syncs each of the receipts in this stream. A receipt that fails to sync is counted as failed and skipped, so
+     * that it can be retried during our next sync.
+     *
+     * @param unsyncedReceipts an {@link Observable} of receipts that are not yet synced with Drive
+     * @return a {@link Completable}, which will complete once every receipt has been handled
+     */
+    @NonNull
+    public Completable sync(@NonNull Observable<Receipt> unsyncedReceipts) {
+        return Completable.defer(() -> {
+            // Each sync tracks its own progress, since another one may start (eg for a batched update) while it's running
+            final SyncProgress progress = new SyncProgress();
+            synchronized (mActiveSyncs) {
+                mActiveSyncs.add(progress);
+            }
+
+            return unsyncedReceipts
+                    .doOnNext(receipt -> progress.queued.incrementAndGet())
+                    .flatMap(receipt -> syncDriveFile(receipt, progress).toObservable(), mMaxConcurrentUploads)
+                    .buffer(mCommitIntervalMillis, TimeUnit.MILLISECONDS, mTimerScheduler, mBatchSize)
+                    .filter(results -> !results.isEmpty())
+                    .concatMapCompletable(results -> commit(results, progress))
+                    .doOnComplete(() -> Logger.info(DriveReceiptsSyncScheduler.this, "Completed our receipt sync: {}", progress.snapshot()))
+                    .doFinally(() -> {
+                        synchronized (mActiveSyncs) {
+                            mActiveSyncs.remove(progress);
+                            mLastProgress = progress.snapshot();
+                        }
+                    });
+        });
+    }
+
+    /**
+     * @return a snapshot of the combined {@link Progress} of our current syncs or of our most recent one if none are running
+     */
+    @NonNull
+    public Progress getProgress() {
+        synchronized (mActiveSyncs) {
+            if (mActiveSyncs.isEmpty()) {
+                return mLastProgress;
+            }
+            int queued = 0, inFlight = 0, done = 0, failed = 0;
+            for (final SyncProgress progress : mActiveSyncs) {
+                queued += progress.queued.get();
+                inFlight += progress.inFlight.get();
+                done += progress.done.get();
+                failed += progress.failed.get();
+            }
+            return new Progress(queued, inFlight, done, failed);
+        }
+    }
+
+    /**
+     * Performs the Drive operation that is required to sync this receipt (ie an upload, update, or delete), retrying it
+     * with an exponential backoff as needed. We fail without retrying if this receipt has gone stale in the meantime.
+     *
+     * @param receipt the {@link Receipt} to sync
+     * @return a {@link Single} with the resulting {@link SyncState}
+     */
+    @NonNull
+    Single<SyncState> getSyncState(@NonNull final Receipt receipt) {
+        final boolean isDelete = receipt.getSyncState().isMarkedForDeletion(SyncProvider.GoogleDrive);
+        return mReceiptsTable.findByPrimaryKey(receipt.getId())
+                .flatMap(queriedReceipt -> {
+                    if (receipt.equals(queriedReceipt) && (!isDelete || receipt.getIndex() == queriedReceipt.getIndex())) {
+                        return getDriveOperation(receipt, isDelete).retryWhen(errors -> {
+                            final AtomicInteger attempts = new AtomicInteger();
+                            return errors.flatMap(throwable -> {
+                                final int attempt = attempts.incrementAndGet();
+                                if (attempt > mMaxRetries) {
+                                    return Flowable.error(throwable);
+                                }
+                                final long backoffMillis = mInitialBackoffMillis << (attempt - 1);
+                                Logger.warn(DriveReceiptsSyncScheduler.this, "Drive operation for receipt {} failed. Retrying in {}ms", receipt.getId(), backoffMillis);
+                                return Flowable.timer(backoffMillis, TimeUnit.MILLISECONDS, mTimerScheduler);
+                            });
+                        });
+                    } else {
+                        Logger.warn(this, "Receipt {} appears to no longer match the requested one for syncing. Ignoring...", receipt.getId());
+                        return Single.error(new Exception("Queued receipt for syncing is stale. Ignoring"));
+                    }
+                });
+    }
+
+    @NonNull
+    private Single<SyncState> getDriveOperation(@NonNull Receipt receipt, boolean isDelete) {
+        final SyncState oldSyncState = receipt.getSyncState();
+        final File receiptFile = receipt.getFile();
+
+        if (isDelete) {
+            Logger.info(this, "Found receipt {} that is marked for deletion. Deleting", receipt.getId());
+            return mDriveTaskManager.deleteDriveFile(oldSyncState, true);
+        } else if (oldSyncState.getSyncId(SyncProvider.GoogleDrive) == null) {
+            if (receiptFile != null && receiptFile.exists()) {
+                Logger.info(this, "Found receipt {} with a non-uploaded file. Uploading", receipt.getId());
+                return mDriveTaskManager.uploadFileToDrive(oldSyncState, receiptFile);
+            } else {
+                Logger.info(this, "Found receipt {} without a file. Marking as synced for Drive", receipt.getId());
+                return Single.just(mDriveStreamMappings.postInsertSyncState());
+            }
+        } else {
+            if (receiptFile != null) {
+                Logger.info(this, "Found receipt {} with a new file. Updating", receipt.getId());
+                return mDriveTaskManager.updateDriveFile(oldSyncState, receiptFile);
+            } else {
+                Logger.info(this, "Found receipt {} with a stale file reference. Removing", receipt.getId());
+                return mDriveTaskManager.deleteDriveFile(oldSyncState, false);
+            }
+        }
+    }
+
+    @NonNull
+    private Maybe<SyncResult> syncDriveFile(@NonNull final Receipt receipt, @NonNull final SyncProgress progress) {
+        final boolean isDelete = receipt.getSyncState().isMarkedForDeletion(SyncProvider.GoogleDrive);
+        return Single.defer(() -> {
+                    progress.queued.decrementAndGet();
+                    progress.inFlight.incrementAndGet();
+                    return getSyncState(receipt);
+                })
+                .subscribeOn(mUploadScheduler)
+                .map(syncState -> new SyncResult(receipt, mReceiptBuilderFactoryFactory.build(receipt).setSyncState(syncState).build(), isDelete))
+                .toMaybe()
+                .onErrorResumeNext(throwable -> {
+                    mAnalytics.record(new ErrorEvent(DriveReceiptsSyncScheduler.this, throwable));
+                    Logger.error(DriveReceiptsSyncScheduler.this, "Failed to sync receipt " + receipt.getId() + " with Drive", throwable);
+                    progress.onFailed(1);
+                    return Maybe.empty();
+                });
+    }
+
+    @NonNull
+    private Completable commit(@NonNull List<SyncResult> results, @NonNull SyncProgress progress) {
+        final List<Receipt> oldReceipts = new ArrayList<>(results.size());
+        final List<Receipt> newReceipts = new ArrayList<>(results.size());
+        final List<Receipt> deletedReceipts = new ArrayList<>();
+        for (final SyncResult result : results) {
+            if (result.isDelete) {
+                deletedReceipts.add(result.newReceipt);
+            } else {
+                oldReceipts.add(result.oldReceipt);
+                newReceipts.add(result.newReceipt);
+            }
+        }
+        Logger.info(this, "Committing the sync states of {} updated and {} deleted receipts", newReceipts.size(), deletedReceipts.size());
+        return commitUpdates(oldReceipts, newReceipts, progress).andThen(commitDeletes(deletedReceipts, progress));
+    }
+
+    @NonNull
+    private Completable commitUpdates(@NonNull final List<Receipt> oldReceipts, @NonNull final List<Receipt> newReceipts,
+                                      @NonNull final SyncProgress progress) {
+        if (oldReceipts.isEmpty()) {
+            return Completable.complete();
+        }
+        final DatabaseOperationMetadata metadata = new DatabaseOperationMetadata(OperationFamilyType.Sync);
+        return mReceiptTableController.updateAll(oldReceipts, newReceipts, metadata)
+                .doOnSuccess(updatedReceipts -> progress.onCommitted(updatedReceipts.size()))
+                .ignoreElement()
+                .onErrorResumeNext(throwable -> {
+                    if (oldReceipts.size() == 1) {
+                        Logger.error(DriveReceiptsSyncScheduler.this, "Failed to update receipt " + oldReceipts.get(0).getId() + " to reflect its sync state", throwable);
+                        progress.onFailed(1);
+                        return Completable.complete();
+                    }
+                    // Since a single stale receipt rolls back the entire transaction, we fall back to committing each individually
+                    Logger.warn(DriveReceiptsSyncScheduler.this, "Failed to commit a batch of {} sync states. Committing each individually", oldReceipts.size());
+                    return Observable.range(0, oldReceipts.size())
+                            .concatMapCompletable(index -> commitUpdates(Collections.singletonList(oldReceipts.get(index)), Collections.singletonList(newReceipts.get(index)), progress));
+                });
+    }
+
+    @NonNull
+    private Completable commitDeletes(@NonNull final List<Receipt> deletedReceipts, @NonNull final SyncProgress progress) {
+        if (deletedReceipts.isEmpty()) {
+            return Completable.complete();
+        }
+        return mReceiptTableController.deleteAll(deletedReceipts, new DatabaseOperationMetadata(OperationFamilyType.Sync))
+                .doOnSuccess(receipts -> progress.onCommitted(receipts.size()))
+                .ignoreElement()
+                .onErrorResumeNext(throwable -> {
+                    Logger.error(DriveReceiptsSyncScheduler.this, "Failed to fully delete " + deletedReceipts.size() + " receipts that are marked for deletion", throwable);
+                    progress.onFailed(deletedReceipts.size());
+                    return Completable.complete();
+                });
+    }
+
+    /**
+     * Tracks the number of receipts in each stage of a sync
+     */
+    public static final class Progress {
+
+        private final int queued;
+        private final int inFlight;
+        private final int done;
+        private final int failed;
+
+        public Progress(int queued, int inFlight, int done, int failed) {
+            this.queued = queued;
+            this.inFlight = inFlight;
+            this.done = done;
+            this.failed = failed;
+        }
+
+        /**
+         * @return the number of receipts that are waiting for an upload slot
+         */
+        public int getQueued() {
+            return queued;
+        }
+
+        /**
+         * @return the number of receipts that are being uploaded or that are waiting for their sync state to be committed
+         */
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        /**
+         * @return the number of receipts whose sync state was committed
+         */
+        public int getDone() {
+            return done;
+        }
+
+        /**
+         * @return the number of receipts that we failed to sync
+         */
+        public int getFailed() {
+            return failed;
+        }
+
+        @Override
+        public String toString() {
+            return "Progress{" +
+                    "queued=" + queued +
+                    ", inFlight=" + inFlight +
+                    ", done=" + done +
+                    ", failed=" + failed +
+                    '}';
+        }
+    }
+
+    /**
+     * The live counts behind the {@link Progress} of a single sync
+     */
+    private static final class SyncProgress {
+
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger done = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+
+        void onCommitted(int count) {
+            inFlight.addAndGet(-count);
+            done.addAndGet(count);
+        }
+
+        void onFailed(int count) {
+            inFlight.addAndGet(-count);
+            failed.addAndGet(count);
+        }
+
+        @NonNull
+        Progress snapshot() {
+            return new Progress(queued.get(), inFlight.get(), done.get(), failed.get());
+        }
+    }
+
+    private static final class SyncResult {
+
+        private final Receipt oldReceipt;
+        private final Receipt newReceipt;
+        private final boolean isDelete;
+
+        SyncResult(@NonNull Receipt oldReceipt, @NonNull Receipt newReceipt, boolean isDelete) {
+            this.oldReceipt = oldReceipt;
+            this.newReceipt = newReceipt;
+            this.isDelete = isDelete;
+        }
+    }
+}
@@ -25,9 +25,11 @@ import com.wops.receiptsgo.persistence.database.tables.TripsTable;
 import com.wops.receiptsgo.sync.errors.MissingFilesException;
 import com.wops.automatic_backups.drive.managers.DriveDatabaseManager;
 import com.wops.automatic_backups.drive.managers.DriveDownloader;
+import com.wops.automatic_backups.drive.journal.DatabaseChangeJournal;
 import com.wops.core.persistence.DatabaseConstants;
 import com.wops.core.sync.model.RemoteBackupMetadata;
 import com.wops.core.sync.model.impl.Identifier;
+import io.reactivex.Completable;
 import io.reactivex.Observable;
 import io.reactivex.Single;
 
@@ -99,6 +101,7 @@ public class DriveRestoreDataManager {
         return deletePreviousTemporaryDatabase(downloadLocation)
                 .filter(success -> success)
                 .flatMapSingle(ignored -> driveDownloader.downloadTmpDatabaseFile(remoteBackupMetadata, downloadLocation))
+                .flatMap(file -> replayDatabaseJournal(remoteBackupMetadata, downloadLocation, file.get()).toSingleDefault(file))
                 .flatMapObservable(file -> {
                     Logger.debug(DriveRestoreDataManager.this, "Retrieving partial receipts from our temporary drive database");
                     return getPartialReceipts(file.get());
@@ -148,6 +151,30 @@ public class DriveRestoreDataManager {
         });
     }
 
+    /**
+     * Our synced database is a periodic snapshot, so we replay the journal of any changes made since this snapshot (if
+     * one exists) on top of it
+     */
+    private Completable replayDatabaseJournal(@NonNull final RemoteBackupMetadata remoteBackupMetadata, @NonNull final File downloadLocation,
+                                              @NonNull final File temporaryDatabaseFile) {
+        return driveDownloader.downloadTmpDatabaseJournalFile(remoteBackupMetadata, downloadLocation)
+                .flatMapCompletable(journal -> {
+                    if (!journal.isPresent()) {
+                        Logger.debug(DriveRestoreDataManager.this, "No database journal exists for this backup");
+                        return Completable.complete();
+                    }
+                    return Completable.fromAction(() -> {
+                        try (SQLiteDatabase importDb = SQLiteDatabase.openDatabase(temporaryDatabaseFile.getAbsolutePath(), null, SQLiteDatabase.OPEN_READWRITE)) {
+                            final boolean didReplay = DatabaseChangeJournal.replay(journal.get(), importDb);
+                            Logger.info(DriveRestoreDataManager.this, "Replayed our database journal? {}", didReplay);
+                        } finally {
+                            //noinspection ResultOfMethodCallIgnored
+                            journal.get().delete();
+                        }
+                    });
+                });
+    }
+
     private Observable<PartialReceipt> getPartialReceipts(@NonNull final File temporaryDatabaseFile) {
         Preconditions.checkNotNull(temporaryDatabaseFile);
 
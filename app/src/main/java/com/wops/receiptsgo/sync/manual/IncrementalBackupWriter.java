@@ -0,0 +1,155 @@
+package com.wops.receiptsgo.sync.manual;
+
+import androidx.annotation.NonNull;
+
+import com.google.common.base.Preconditions;
+import com.hadisatrio.optional.Optional;
+
+import org.json.JSONException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.wops.analytics.log.Logger;
+import com.wops.receiptsgo.persistence.database.restore.BackupManifest;
+import com.wops.receiptsgo.utils.cache.FileHashStore;
+
+/**
+ * Writes a content-addressed, incremental backup archive. Each archive contains a {@link BackupManifest}, which lists
+ * every file in the backup, and a blob for each file whose content was not already captured by the previous backup.
+ * <p>
+ * The archive is streamed directly to its destination, so we never build an intermediate zip. We also re-use the hash
+ * of any file whose size and modification time match the previous manifest, so unchanged receipt images are neither
+ * read nor written. The hashes of any other files come from our {@link FileHashStore}, so a file that we've already
+ * hashed elsewhere (e.g. for a report) is only read once in order to copy it into the archive.
+ * </p>
+ * <p>
+ * Since restoring an incremental backup requires all of its ancestors, we write a full backup (ie one without a parent)
+ * once a chain reaches {@link #maxChainLength} backups.
+ * </p>
+ */
+final class IncrementalBackupWriter {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Optional<BackupManifest> previousManifest;
+    private final int maxChainLength;
+    private final FileHashStore fileHashStore;
+
+    /**
+     * @param previousManifest the {@link BackupManifest} of our last backup or {@link Optional#absent()} if none
+     * @param maxChainLength   the maximum number of backups that may be required to perform a restore
+     * @param fileHashStore    the {@link FileHashStore} that we use to hash any files that have changed since our last backup
+     */
+    IncrementalBackupWriter(@NonNull Optional<BackupManifest> previousManifest, int maxChainLength, @NonNull FileHashStore fileHashStore) {
+        Preconditions.checkArgument(maxChainLength > 0, "The max chain length must be positive");
+        this.previousManifest = Preconditions.checkNotNull(previousManifest);
+        this.maxChainLength = maxChainLength;
+        this.fileHashStore = Preconditions.checkNotNull(fileHashStore);
+    }
+
+    /**
+     * Writes a backup archive
+     *
+     * @param sources     the {@link Source} files to include in this backup
+     * @param destination the {@link File} to write the archive to
+     * @return the {@link BackupManifest} of this archive
+     * @throws IOException if we failed to read any source or to write the archive
+     */
+    @NonNull
+    BackupManifest write(@NonNull List<Source> sources, @NonNull File destination) throws IOException {
+        final boolean isIncremental = previousManifest.isPresent() && previousManifest.get().getChainLength() < maxChainLength;
+        final Set<String> writtenHashes = new HashSet<>();
+        if (isIncremental) {
+            writtenHashes.addAll(previousManifest.get().getHashes());
+        }
+
+        final List<BackupManifest.Entry> entries = new ArrayList<>(sources.size());
+        int blobCount = 0;
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        try (ZipOutputStream zipStream = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(destination)))) {
+            for (final Source source : sources) {
+                final long size = source.file.length();
+                final long lastModified = source.file.lastModified();
+                final String hash = getHash(source, size, lastModified);
+                entries.add(new BackupManifest.Entry(source.path, hash, size, lastModified));
+
+                if (writtenHashes.add(hash)) {
+                    zipStream.putNextEntry(new ZipEntry(BackupManifest.getBlobName(hash)));
+                    copy(source.file, zipStream, buffer);
+                    zipStream.closeEntry();
+                    blobCount++;
+                }
+            }
+
+            final BackupManifest manifest;
+            if (isIncremental) {
+                final BackupManifest parent = previousManifest.get();
+                manifest = new BackupManifest(UUID.randomUUID().toString(), parent.getId(), System.currentTimeMillis(), parent.getChainLength() + 1, entries);
+            } else {
+                manifest = new BackupManifest(UUID.randomUUID().toString(), null, System.currentTimeMillis(), 1, entries);
+            }
+
+            // Note: We write the manifest last, since we only know our hashes after reading each file
+            zipStream.putNextEntry(new ZipEntry(BackupManifest.FILE_NAME));
+            zipStream.write(manifest.toJson().getBytes(Charset.forName("UTF-8")));
+            zipStream.closeEntry();
+
+            Logger.info(this, "Wrote a backup with {} files and {} new blobs (incremental: {})", entries.size(), blobCount, isIncremental);
+            return manifest;
+        } catch (JSONException e) {
+            throw new IOException("Failed to write our backup manifest", e);
+        }
+    }
+
+    @NonNull
+    private String getHash(@NonNull Source source, long size, long lastModified) throws IOException {
+        if (previousManifest.isPresent()) {
+            final Optional<BackupManifest.Entry> previousEntry = previousManifest.get().getEntry(source.path);
+            if (previousEntry.isPresent() && previousEntry.get().getSize() == size && previousEntry.get().getLastModified() == lastModified) {
+                return previousEntry.get().getHash();
+            }
+        }
+        return fileHashStore.getHash(source.file);
+    }
+
+    private static void copy(@NonNull File file, @NonNull ZipOutputStream zipStream, @NonNull byte[] buffer) throws IOException {
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)) {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                zipStream.write(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * A single file to include in our backup
+     */
+    static final class Source {
+
+        private final String path;
+        private final File file;
+
+        /**
+         * @param path the path to restore this file to, relative to our storage root
+         * @param file the {@link File} to back up
+         */
+        Source(@NonNull String path, @NonNull File file) {
+            this.path = Preconditions.checkNotNull(path);
+            this.file = Preconditions.checkNotNull(file);
+        }
+    }
+}
@@ -1,18 +1,26 @@
 package com.wops.receiptsgo.sync.manual;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
 
 import com.google.common.base.Preconditions;
+import com.hadisatrio.optional.Optional;
+
+import org.json.JSONException;
 
 import java.io.File;
 import java.io.FileFilter;
-import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.inject.Inject;
 
 import com.wops.analytics.log.Logger;
 import com.wops.receiptsgo.date.DateUtils;
 import com.wops.receiptsgo.persistence.PersistenceManager;
+import com.wops.receiptsgo.persistence.database.restore.BackupManifest;
+import com.wops.receiptsgo.utils.cache.FileHashStore;
 import com.wops.receiptsgo.utils.cache.SmartReceiptsTemporaryFileCache;
 import com.wops.core.di.scopes.ApplicationScope;
 import com.wops.core.persistence.DatabaseConstants;
@@ -28,25 +36,39 @@ public class ManualBackupTask {
 
     private static final String EXPORT_FILENAME = DateUtils.getCurrentDateAsYYYY_MM_DDString() + "_SmartReceipts.smr";
     private static final String DATABASE_JOURNAL = "receipts.db-journal";
+    private static final String DATABASE_WAL = "receipts.db-wal";
+    private static final String SHARED_PREFERENCES_FOLDER = "shared_prefs";
+    private static final String LAST_BACKUP_MANIFEST = "last_backup_manifest.json";
+
+    /**
+     * The maximum number of backups that a user must select to perform a restore, after which we write a full backup
+     */
+    private static final int MAX_BACKUP_CHAIN_LENGTH = 10;
 
     private final Lazy<SmartReceiptsTemporaryFileCache> smartReceiptsTemporaryFileCacheLazy;
     private final PersistenceManager persistenceManager;
+    private final FileHashStore fileHashStore;
     private final Scheduler observeOnScheduler;
     private final Scheduler subscribeOnScheduler;
     private ReplaySubject<File> backupBehaviorSubject;
+    private BackupManifest unsavedBackupManifest;
 
     @Inject
     ManualBackupTask(@NonNull Lazy<SmartReceiptsTemporaryFileCache> smartReceiptsTemporaryFileCacheLazy,
-                     @NonNull PersistenceManager persistenceManager) {
-        this(smartReceiptsTemporaryFileCacheLazy, persistenceManager, Schedulers.io(), Schedulers.io());
+                     @NonNull PersistenceManager persistenceManager,
+                     @NonNull FileHashStore fileHashStore) {
+        this(smartReceiptsTemporaryFileCacheLazy, persistenceManager, fileHashStore, Schedulers.io(), Schedulers.io());
     }
 
-    private ManualBackupTask(@NonNull Lazy<SmartReceiptsTemporaryFileCache> smartReceiptsTemporaryFileCacheLazy,
-                             @NonNull PersistenceManager persistenceManager,
-                             @NonNull Scheduler observeOnScheduler,
-                             @NonNull Scheduler subscribeOnScheduler) {
+    @VisibleForTesting
+    ManualBackupTask(@NonNull Lazy<SmartReceiptsTemporaryFileCache> smartReceiptsTemporaryFileCacheLazy,
+                     @NonNull PersistenceManager persistenceManager,
+                     @NonNull FileHashStore fileHashStore,
+                     @NonNull Scheduler observeOnScheduler,
+                     @NonNull Scheduler subscribeOnScheduler) {
         this.smartReceiptsTemporaryFileCacheLazy = Preconditions.checkNotNull(smartReceiptsTemporaryFileCacheLazy);
         this.persistenceManager = Preconditions.checkNotNull(persistenceManager);
+        this.fileHashStore = Preconditions.checkNotNull(fileHashStore);
         this.observeOnScheduler = Preconditions.checkNotNull(observeOnScheduler);
         this.subscribeOnScheduler = Preconditions.checkNotNull(subscribeOnScheduler);
     }
@@ -64,7 +86,15 @@ public class ManualBackupTask {
         return backupBehaviorSubject;
     }
 
+    /**
+     * Marks our current backup as complete. Once the user has saved or shared this backup, our next one will only
+     * contain the files that were changed since this one was taken
+     */
     public synchronized void markBackupAsComplete() {
+        if (unsavedBackupManifest != null) {
+            saveManifest(unsavedBackupManifest);
+            unsavedBackupManifest = null;
+        }
         backupBehaviorSubject = null;
     }
 
@@ -76,49 +106,94 @@ public class ManualBackupTask {
             final StorageManager internal = persistenceManager.getInternalStorageManager();
             external.delete(external.getFile(EXPORT_FILENAME)); // Remove old export
 
-            external.copy(external.getFile(DatabaseConstants.DATABASE_NAME), external.getFile(DatabaseConstants.DATABASE_EXPORT_NAME), true);
-            final File internalSharedPreferencesFolder = internal.getFile(internal.getRoot().getParentFile(), "shared_prefs");
+            final List<IncrementalBackupWriter.Source> sources = new ArrayList<>();
+            sources.add(new IncrementalBackupWriter.Source(DatabaseConstants.DATABASE_EXPORT_NAME, external.getFile(DatabaseConstants.DATABASE_NAME)));
+            final File databaseWal = external.getFile(DATABASE_WAL);
+            if (databaseWal.exists()) {
+                sources.add(new IncrementalBackupWriter.Source(DatabaseConstants.DATABASE_EXPORT_NAME + "-wal", databaseWal));
+            }
 
             // Preferences File
+            final File internalSharedPreferencesFolder = internal.getFile(internal.getRoot().getParentFile(), SHARED_PREFERENCES_FOLDER);
             if (internalSharedPreferencesFolder != null && internalSharedPreferencesFolder.exists()) {
-                File backupSharedPreferencesFolder = external.getFile("shared_prefs");
-                // Delete this first to clear out any old instances of it before copying over
-                //noinspection ResultOfMethodCallIgnored
-                backupSharedPreferencesFolder.delete();
-                if (backupSharedPreferencesFolder.exists() || backupSharedPreferencesFolder.mkdir()) {
-                    final File smartReceiptsPreferencesFile = new File(internalSharedPreferencesFolder, "SmartReceiptsPrefFile.xml");
-                    final File backupSmartReceiptsPreferencesFile = new File(backupSharedPreferencesFolder, "SmartReceiptsPrefFile.xml");
-                    Logger.debug(ManualBackupTask.this, "Copying the prefs file from: {} to {}", smartReceiptsPreferencesFile.getAbsolutePath(), backupSmartReceiptsPreferencesFile.getAbsolutePath());
-                    if (external.copy(smartReceiptsPreferencesFile, backupSmartReceiptsPreferencesFile, true)) {
-                        Logger.debug(ManualBackupTask.this, "Successfully copied our preferences files");
-                    } else {
-                        throw new IOException("Failed to copy our shared prefs");
-                    }
-                } else {
-                    throw new IOException("Failed to create a folder for our shared prefs");
+                final File smartReceiptsPreferencesFile = new File(internalSharedPreferencesFolder, "SmartReceiptsPrefFile.xml");
+                if (smartReceiptsPreferencesFile.exists()) {
+                    sources.add(new IncrementalBackupWriter.Source(SHARED_PREFERENCES_FOLDER + "/" + smartReceiptsPreferencesFile.getName(), smartReceiptsPreferencesFile));
                 }
             }
 
+            // All receipt images, reports, etc
+            addSources(external, external.getRoot(), "", new BackupFileFilter(), sources);
+
             // Finish
-            File zip = external.zipBuffered(8192, new BackupFileFilter());
-            File backupFile = smartReceiptsTemporaryFileCacheLazy.get().getInternalCacheFile(EXPORT_FILENAME);
-            boolean copyBackup = external.copy(zip, backupFile, true);
-            external.delete(zip);
+            final IncrementalBackupWriter backupWriter = new IncrementalBackupWriter(readManifest(), MAX_BACKUP_CHAIN_LENGTH, fileHashStore);
+            final File backupFile = smartReceiptsTemporaryFileCacheLazy.get().getInternalCacheFile(EXPORT_FILENAME);
+            final BackupManifest manifest = backupWriter.write(sources, backupFile);
 
-            if (copyBackup) {
-                return backupFile;
-            } else {
-                throw new IOException("Failed to copy the backup file to: " + backupFile.getAbsolutePath());
+            // Note: We only keep this manifest once the user saves or shares this backup (see #markBackupAsComplete)
+            synchronized (ManualBackupTask.this) {
+                unsavedBackupManifest = manifest;
             }
+            return backupFile;
         });
     }
 
+    @NonNull
+    private Optional<BackupManifest> readManifest() {
+        final StorageManager internal = persistenceManager.getInternalStorageManager();
+        final File manifestFile = internal.getFile(LAST_BACKUP_MANIFEST);
+        if (manifestFile.exists()) {
+            final byte[] bytes = internal.read(manifestFile);
+            if (bytes != null) {
+                try {
+                    return Optional.of(BackupManifest.fromJson(new String(bytes, Charset.forName("UTF-8"))));
+                } catch (JSONException e) {
+                    Logger.warn(this, "Failed to read our last backup manifest. Writing a full backup instead", e);
+                }
+            }
+        }
+        return Optional.absent();
+    }
+
+    private void saveManifest(@NonNull BackupManifest manifest) {
+        final StorageManager internal = persistenceManager.getInternalStorageManager();
+        final File manifestFile = internal.getFile(LAST_BACKUP_MANIFEST);
+        try {
+            if (!internal.write(manifestFile.getParentFile(), manifestFile.getName(), manifest.toJson())) {
+                // Note: We don't fail here, since our next backup will simply be built on top of an older one
+                Logger.warn(this, "Failed to save our backup manifest");
+            }
+        } catch (JSONException e) {
+            Logger.warn(this, "Failed to save our backup manifest", e);
+        }
+    }
+
+    private static void addSources(@NonNull StorageManager storageManager, @NonNull File directory, @NonNull String relativePath,
+                                   @NonNull FileFilter filter, @NonNull List<IncrementalBackupWriter.Source> sources) {
+        final File[] files = storageManager.list(directory, filter);
+        if (files == null) {
+            return;
+        }
+        for (final File file : files) {
+            final String path = relativePath + file.getName();
+            if (file.isDirectory()) {
+                addSources(storageManager, file, path + "/", filter, sources);
+            } else {
+                sources.add(new IncrementalBackupWriter.Source(path, file));
+            }
+        }
+    }
+
     private static final class BackupFileFilter implements FileFilter {
 
         @Override
         public boolean accept(File file) {
+            // Note: We stream our database and preferences directly from their source files instead
             return !file.getName().equalsIgnoreCase(DatabaseConstants.DATABASE_NAME) &&
+                    !file.getName().equalsIgnoreCase(DatabaseConstants.DATABASE_EXPORT_NAME) &&
                     !file.getName().equalsIgnoreCase(DATABASE_JOURNAL) &&
+                    !file.getName().equalsIgnoreCase(DATABASE_WAL) &&
+                    !file.getName().equalsIgnoreCase(SHARED_PREFERENCES_FOLDER) &&
                     !file.getName().endsWith(".smr"); //Ignore previous backups
         }
     }
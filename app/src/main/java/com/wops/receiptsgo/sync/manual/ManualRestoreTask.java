@@ -4,13 +4,17 @@ import android.content.ContentResolver;
 import android.content.Context;
 import android.net.Uri;
 import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
 
 import com.google.common.base.Preconditions;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.inject.Inject;
@@ -18,6 +22,7 @@ import javax.inject.Inject;
 import com.wops.core.di.scopes.ApplicationScope;
 import com.wops.receiptsgo.persistence.PersistenceManager;
 import com.wops.receiptsgo.persistence.database.restore.DatabaseRestorer;
+import com.wops.receiptsgo.persistence.database.restore.IncrementalBackupChain;
 import com.wops.analytics.log.Logger;
 import com.wops.core.persistence.DatabaseConstants;
 import io.reactivex.Completable;
@@ -45,11 +50,12 @@ public class ManualRestoreTask {
         this(context, persistenceManager, databaseRestorer, Schedulers.io(), Schedulers.io());
     }
 
-    private ManualRestoreTask(@NonNull Context context,
-                              @NonNull PersistenceManager persistenceManager,
-                              @NonNull DatabaseRestorer databaseRestorer,
-                              @NonNull Scheduler observeOnScheduler,
-                              @NonNull Scheduler subscribeOnScheduler) {
+    @VisibleForTesting
+    ManualRestoreTask(@NonNull Context context,
+                      @NonNull PersistenceManager persistenceManager,
+                      @NonNull DatabaseRestorer databaseRestorer,
+                      @NonNull Scheduler observeOnScheduler,
+                      @NonNull Scheduler subscribeOnScheduler) {
         this.context = Preconditions.checkNotNull(context.getApplicationContext());
         this.persistenceManager = Preconditions.checkNotNull(persistenceManager);
         this.databaseRestorer = Preconditions.checkNotNull(databaseRestorer);
@@ -59,11 +65,24 @@ public class ManualRestoreTask {
 
     @NonNull
     public synchronized Completable restoreData(@NonNull Uri uri, boolean overwrite) {
-        final RestoreRequest restoreRequest = new RestoreRequest(uri, overwrite);
+        return restoreData(Collections.singletonList(uri), overwrite);
+    }
+
+    /**
+     * Restores our data from a chain of incremental backups (ie the most recent backup and each of the older backups
+     * that it was built on top of). These may be provided in any order
+     *
+     * @param uris the {@link Uri}s of each backup in the chain
+     * @param overwrite if we should overwrite our existing data or not
+     * @return a {@link Completable} for the restore process
+     */
+    @NonNull
+    public synchronized Completable restoreData(@NonNull List<Uri> uris, boolean overwrite) {
+        final RestoreRequest restoreRequest = new RestoreRequest(uris, overwrite);
         CompletableSubject restoreReplaySubject = restoreSubjectMap.get(restoreRequest);
         if (restoreReplaySubject == null) {
             restoreReplaySubject = CompletableSubject.create();
-            restoreDataToSingle(uri, overwrite)
+            restoreDataToSingle(uris, overwrite)
                     .observeOn(observeOnScheduler)
                     .subscribeOn(subscribeOnScheduler)
                     .subscribe(restoreReplaySubject);
@@ -73,21 +92,29 @@ public class ManualRestoreTask {
     }
 
     public synchronized void markRestorationAsComplete(@NonNull Uri uri, boolean overwrite) {
-        final RestoreRequest restoreRequest = new RestoreRequest(uri, overwrite);
+        markRestorationAsComplete(Collections.singletonList(uri), overwrite);
+    }
+
+    public synchronized void markRestorationAsComplete(@NonNull List<Uri> uris, boolean overwrite) {
+        final RestoreRequest restoreRequest = new RestoreRequest(uris, overwrite);
         restoreSubjectMap.remove(restoreRequest);
     }
 
     @NonNull
-    private Completable restoreDataToSingle(@NonNull final Uri uri, final boolean overwrite) {
-        return copyBackupToLocalPath(uri)
+    private Completable restoreDataToSingle(@NonNull final List<Uri> uris, final boolean overwrite) {
+        return copyBackupsToLocalPaths(uris)
                 .doOnSubscribe(ignored -> {
                     Logger.debug(this, "Starting log task at {}", System.currentTimeMillis());
-                    Logger.debug(this, "Uri: {}", uri);
+                    Logger.debug(this, "Uris: {}", uris);
                 })
-                .flatMapCompletable(localZipFile -> {
-                    //noinspection CodeBlock2Expr
-                    return unzipAllFilesAndGetImportDatabaseFile(localZipFile, overwrite)
-                            .flatMapCompletable(importDatabaseFile -> databaseRestorer.restoreDatabase(importDatabaseFile, overwrite));
+                .flatMapCompletable(localZipFiles -> {
+                    if (localZipFiles.size() == 1 && !IncrementalBackupChain.isIncrementalBackup(localZipFiles.get(0))) {
+                        // Legacy backups are a single zip of our entire storage root
+                        return unzipAllFilesAndGetImportDatabaseFile(localZipFiles.get(0), overwrite)
+                                .flatMapCompletable(importDatabaseFile -> databaseRestorer.restoreDatabase(importDatabaseFile, overwrite));
+                    } else {
+                        return restoreBackupChain(localZipFiles, overwrite);
+                    }
                 })
                 .doOnError(error ->
                         Logger.error(ManualRestoreTask.this, "Caught exception during import.", error));
@@ -95,59 +122,68 @@ public class ManualRestoreTask {
     }
 
     @NonNull
-    private Single<File> copyBackupToLocalPath(@NonNull final Uri uri) {
+    private Single<List<File>> copyBackupsToLocalPaths(@NonNull final List<Uri> uris) {
         return Single.fromCallable(() -> {
             Logger.debug(this, "Deleting existing backup database...");
             final SDCardFileManager external = persistenceManager.getExternalStorageManager();
             //noinspection ResultOfMethodCallIgnored
             external.getFile(DatabaseConstants.DATABASE_EXPORT_NAME).delete();
 
-            Logger.debug(this, "Deleting existing import zip...");
-            final File localZipFile = external.getFile("smart.zip");
-            //noinspection ResultOfMethodCallIgnored
-            external.delete(localZipFile);
-
-            final String scheme = uri.getScheme();
-            if (ContentResolver.SCHEME_CONTENT.equals(scheme)) {
-                Logger.debug(this, "Processing URI with content scheme.");
-                InputStream inputStream = null;
-                try {
-                    ContentResolver cr = context.getContentResolver();
-                    inputStream = cr.openInputStream(uri);
-
-                    if (!external.copy(inputStream, localZipFile, true)) {
-                        throw new IOException("Failed to copy our import data to " + localZipFile.getAbsolutePath());
-                    } else {
-                        return localZipFile;
-                    }
-                } finally {
-                    StorageManager.closeQuietly(inputStream);
-                }
-            } else {
-                Logger.debug(this, "Processing URI with unknown scheme.");
-                File src = null;
-
-                if (uri.getPath() != null) {
-                    src = new File(uri.getPath());
-                } else if (uri.getEncodedPath() != null) {
-                    src = new File(uri.getEncodedPath());
-                }
-
-                // Validate that we have a valid source
-                if (src == null || !src.exists()) {
-                    Logger.debug(ManualRestoreTask.this, "Failed to parse uri scheme: {}.", src);
-                    throw new IOException("Failed to validate the uri: " + uri);
-                }
+            final List<File> localZipFiles = new ArrayList<>();
+            for (int i = 0; i < uris.size(); i++) {
+                localZipFiles.add(copyBackupToLocalPath(external, uris.get(i), i == 0 ? "smart.zip" : "smart_" + i + ".zip"));
+            }
+            return localZipFiles;
+        })
+        .doOnSuccess(localZipFiles ->
+                Logger.info(ManualRestoreTask.this, "Successfully copied our backups to our local paths"));
+    }
 
-                if (!external.copy(src, localZipFile, true)) {
+    @NonNull
+    private File copyBackupToLocalPath(@NonNull SDCardFileManager external, @NonNull final Uri uri, @NonNull String localZipFileName) throws IOException {
+        Logger.debug(this, "Deleting existing import zip...");
+        final File localZipFile = external.getFile(localZipFileName);
+        //noinspection ResultOfMethodCallIgnored
+        external.delete(localZipFile);
+
+        final String scheme = uri.getScheme();
+        if (ContentResolver.SCHEME_CONTENT.equals(scheme)) {
+            Logger.debug(this, "Processing URI with content scheme.");
+            InputStream inputStream = null;
+            try {
+                ContentResolver cr = context.getContentResolver();
+                inputStream = cr.openInputStream(uri);
+
+                if (!external.copy(inputStream, localZipFile, true)) {
                     throw new IOException("Failed to copy our import data to " + localZipFile.getAbsolutePath());
                 } else {
                     return localZipFile;
                 }
+            } finally {
+                StorageManager.closeQuietly(inputStream);
             }
-        })
-        .doOnSuccess(wasCopySuccessful ->
-                Logger.info(ManualRestoreTask.this, "Successfully copied our backup to our local path"));
+        } else {
+            Logger.debug(this, "Processing URI with unknown scheme.");
+            File src = null;
+
+            if (uri.getPath() != null) {
+                src = new File(uri.getPath());
+            } else if (uri.getEncodedPath() != null) {
+                src = new File(uri.getEncodedPath());
+            }
+
+            // Validate that we have a valid source
+            if (src == null || !src.exists()) {
+                Logger.debug(ManualRestoreTask.this, "Failed to parse uri scheme: {}.", src);
+                throw new IOException("Failed to validate the uri: " + uri);
+            }
+
+            if (!external.copy(src, localZipFile, true)) {
+                throw new IOException("Failed to copy our import data to " + localZipFile.getAbsolutePath());
+            } else {
+                return localZipFile;
+            }
+        }
     }
 
     @NonNull
@@ -160,19 +196,7 @@ public class ManualRestoreTask {
                 throw new IOException("Failed to unzip file: " + localZipFile);
             }
 
-            Logger.info(ManualRestoreTask.this, "Importing shared preferences");
-            final File sdPrefs = external.getFile("shared_prefs");
-            final File prefs = internal.getFile(internal.getRoot().getParentFile(), "shared_prefs");
-            if (!internal.copy(sdPrefs, prefs, overwrite)) {
-                throw new IOException("Failed to import settings");
-            }
-
-            Logger.info(ManualRestoreTask.this, "Importing internal files");
-            final File internalDir = external.getFile("Internal");
-            if (!internal.copy(internalDir, internal.getRoot(), overwrite)) {
-                // Note: we don't treat this as a critical error that should stop our import process
-                Logger.error(ManualRestoreTask.this, "Failed to import local files");
-            }
+            importSettingsAndInternalFiles(external, internal, overwrite);
 
             final File importDatabaseFile = external.getFile(DatabaseConstants.DATABASE_EXPORT_NAME);
             if (!importDatabaseFile.exists()) {
@@ -188,13 +212,52 @@ public class ManualRestoreTask {
                 Logger.info(ManualRestoreTask.this, "Successfully unzipped our backup and configured all local files"));
     }
 
+    @NonNull
+    private Completable restoreBackupChain(@NonNull List<File> localZipFiles, final boolean overwrite) {
+        return Completable.using(
+                () -> IncrementalBackupChain.open(localZipFiles),
+                backupChain -> Completable.fromAction(() -> {
+                            final SDCardFileManager external = persistenceManager.getExternalStorageManager();
+                            final StorageManager internal = persistenceManager.getInternalStorageManager();
+
+                            final int fileCount = backupChain.extractFiles(external.getRoot(), overwrite);
+                            Logger.info(ManualRestoreTask.this, "Restored {} files from our backup chain", fileCount);
+                            importSettingsAndInternalFiles(external, internal, overwrite);
+                        })
+                        .andThen(databaseRestorer.restoreDatabase(backupChain, overwrite)),
+                IncrementalBackupChain::close)
+                .doOnComplete(() -> {
+                    // delete the zip files since we've successfully restored the data from them
+                    for (final File localZipFile : localZipFiles) {
+                        //noinspection ResultOfMethodCallIgnored
+                        localZipFile.delete();
+                    }
+                });
+    }
+
+    private void importSettingsAndInternalFiles(@NonNull StorageManager external, @NonNull StorageManager internal, boolean overwrite) throws IOException {
+        Logger.info(ManualRestoreTask.this, "Importing shared preferences");
+        final File sdPrefs = external.getFile("shared_prefs");
+        final File prefs = internal.getFile(internal.getRoot().getParentFile(), "shared_prefs");
+        if (!internal.copy(sdPrefs, prefs, overwrite)) {
+            throw new IOException("Failed to import settings");
+        }
+
+        Logger.info(ManualRestoreTask.this, "Importing internal files");
+        final File internalDir = external.getFile("Internal");
+        if (!internal.copy(internalDir, internal.getRoot(), overwrite)) {
+            // Note: we don't treat this as a critical error that should stop our import process
+            Logger.error(ManualRestoreTask.this, "Failed to import local files");
+        }
+    }
+
     private static final class RestoreRequest {
 
-        private final Uri uri;
+        private final List<Uri> uris;
         private final boolean overwrite;
 
-        RestoreRequest(@NonNull Uri uri, boolean overwrite) {
-            this.uri = Preconditions.checkNotNull(uri);
+        RestoreRequest(@NonNull List<Uri> uris, boolean overwrite) {
+            this.uris = new ArrayList<>(Preconditions.checkNotNull(uris));
             this.overwrite = overwrite;
         }
 
@@ -206,13 +269,13 @@ public class ManualRestoreTask {
             RestoreRequest that = (RestoreRequest) o;
 
             if (overwrite != that.overwrite) return false;
-            return uri.equals(that.uri);
+            return uris.equals(that.uris);
 
         }
 
         @Override
         public int hashCode() {
-            int result = uri.hashCode();
+            int result = uris.hashCode();
             result = 31 * result + (overwrite ? 1 : 0);
             return result;
         }
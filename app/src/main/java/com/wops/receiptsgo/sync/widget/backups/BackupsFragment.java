@@ -1,8 +1,10 @@
 package com.wops.receiptsgo.sync.widget.backups;
 
 import android.annotation.SuppressLint;
+import android.content.ClipData;
 import android.content.Context;
 import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -23,6 +25,8 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.util.ArrayList;
+
 import javax.inject.Inject;
 
 import com.wops.analytics.log.Logger;
@@ -139,6 +143,8 @@ public class BackupsFragment extends WBFragment implements BackupProviderChangeL
             final Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
             intent.addCategory(Intent.CATEGORY_OPENABLE);
             intent.setType("*/*");
+            // Note: Incremental backups can only be restored alongside each of the older backups that they depend on
+            intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
             try {
                 startActivityForResult(Intent.createChooser(intent, getString(R.string.import_string)), IMPORT_SMR_REQUEST_CODE);
             } catch (android.content.ActivityNotFoundException ex) {
@@ -212,6 +218,19 @@ public class BackupsFragment extends WBFragment implements BackupProviderChangeL
     @Override
     public void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
+        if (data != null && data.getClipData() != null) {
+            final ClipData clipData = data.getClipData();
+            final ArrayList<Uri> uris = new ArrayList<>(clipData.getItemCount());
+            for (int i = 0; i < clipData.getItemCount(); i++) {
+                uris.add(clipData.getItemAt(i).getUri());
+            }
+            if (uris.size() > 1) {
+                navigationHandler.showDialog(ImportLocalBackupDialogFragment.newInstance(uris));
+                return;
+            } else if (data.getData() == null && uris.size() == 1) {
+                data.setData(uris.get(0));
+            }
+        }
         if (data != null) {
             data.setAction(Intent.ACTION_VIEW);
             getActivity().setIntent(data);
@@ -18,6 +18,9 @@ import android.widget.CheckBox;
 
 import com.google.common.base.Preconditions;
 
+import java.util.ArrayList;
+import java.util.Collections;
+
 import javax.inject.Inject;
 
 import com.wops.receiptsgo.R;
@@ -27,20 +30,28 @@ import dagger.android.support.AndroidSupportInjection;
 
 public class ImportLocalBackupDialogFragment extends DialogFragment implements DialogInterface.OnClickListener {
 
-    private static final String ARG_SMR_URI = "arg_smr_uri";
+    private static final String ARG_SMR_URIS = "arg_smr_uris";
 
     @Inject
     NavigationHandler navigationHandler;
 
-    private Uri mUri;
+    private ArrayList<Uri> mUris;
     private CheckBox mOverwriteCheckBox;
     private ViewGroup container;
     private DialogImportBackupBinding binding;
 
     public static ImportLocalBackupDialogFragment newInstance(@NonNull Uri uri) {
+        return newInstance(new ArrayList<>(Collections.singletonList(uri)));
+    }
+
+    /**
+     * @param uris the {@link Uri}s of each backup to restore, which may include the older backups that an incremental
+     *             backup was built on top of
+     */
+    public static ImportLocalBackupDialogFragment newInstance(@NonNull ArrayList<Uri> uris) {
         final ImportLocalBackupDialogFragment fragment = new ImportLocalBackupDialogFragment();
         final Bundle args = new Bundle();
-        args.putParcelable(ARG_SMR_URI, uri);
+        args.putParcelableArrayList(ARG_SMR_URIS, uris);
         fragment.setArguments(args);
         return fragment;
     }
@@ -54,8 +65,8 @@ public class ImportLocalBackupDialogFragment extends DialogFragment implements D
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        mUri = getArguments().getParcelable(ARG_SMR_URI);
-        Preconditions.checkNotNull(mUri, "ImportBackupDialogFragment requires a valid SMR Uri");
+        mUris = getArguments().getParcelableArrayList(ARG_SMR_URIS);
+        Preconditions.checkNotNull(mUris, "ImportBackupDialogFragment requires a valid SMR Uri");
     }
 
     @Override
@@ -84,7 +95,7 @@ public class ImportLocalBackupDialogFragment extends DialogFragment implements D
     @Override
     public void onClick(DialogInterface dialogInterface, int which) {
         if (which == DialogInterface.BUTTON_POSITIVE) {
-            navigationHandler.showDialog(ImportLocalBackupWorkerProgressDialogFragment.newInstance(mUri, mOverwriteCheckBox.isChecked()));
+            navigationHandler.showDialog(ImportLocalBackupWorkerProgressDialogFragment.newInstance(mUris, mOverwriteCheckBox.isChecked()));
         }
         dismiss();
     }
@@ -13,6 +13,9 @@ import androidx.fragment.app.DialogFragment;
 
 import com.google.common.base.Preconditions;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.inject.Inject;
 
 import com.wops.analytics.Analytics;
@@ -29,7 +32,7 @@ import io.reactivex.disposables.CompositeDisposable;
 
 public class ImportLocalBackupWorkerProgressDialogFragment extends DialogFragment {
 
-    private static final String ARG_SMR_URI = "arg_smr_uri";
+    private static final String ARG_SMR_URIS = "arg_smr_uris";
     private static final String ARG_OVERWRITE = "arg_overwrite";
 
     @Inject
@@ -46,13 +49,13 @@ public class ImportLocalBackupWorkerProgressDialogFragment extends DialogFragmen
 
     private final CompositeDisposable compositeDisposable = new CompositeDisposable();
 
-    private Uri uri;
+    private List<Uri> uris;
     private boolean overwrite;
 
-    public static ImportLocalBackupWorkerProgressDialogFragment newInstance(@NonNull Uri uri, boolean overwrite) {
+    public static ImportLocalBackupWorkerProgressDialogFragment newInstance(@NonNull ArrayList<Uri> uris, boolean overwrite) {
         final ImportLocalBackupWorkerProgressDialogFragment fragment = new ImportLocalBackupWorkerProgressDialogFragment();
         final Bundle args = new Bundle();
-        args.putParcelable(ARG_SMR_URI, uri);
+        args.putParcelableArrayList(ARG_SMR_URIS, uris);
         args.putBoolean(ARG_OVERWRITE, overwrite);
         fragment.setArguments(args);
         return fragment;
@@ -68,9 +71,9 @@ public class ImportLocalBackupWorkerProgressDialogFragment extends DialogFragmen
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setCancelable(false);
-        uri = getArguments().getParcelable(ARG_SMR_URI);
+        uris = getArguments().getParcelableArrayList(ARG_SMR_URIS);
         overwrite = getArguments().getBoolean(ARG_OVERWRITE);
-        Preconditions.checkNotNull(uri, "ImportBackupDialogFragment requires a valid SMR Uri");
+        Preconditions.checkNotNull(uris, "ImportBackupDialogFragment requires a valid SMR Uri");
     }
 
     @NonNull
@@ -86,10 +89,10 @@ public class ImportLocalBackupWorkerProgressDialogFragment extends DialogFragmen
     @Override
     public void onStart() {
         super.onStart();
-        compositeDisposable.add(manualRestoreTask.restoreData(uri, overwrite)
+        compositeDisposable.add(manualRestoreTask.restoreData(uris, overwrite)
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(() -> {
-                    manualRestoreTask.markRestorationAsComplete(uri, overwrite);
+                    manualRestoreTask.markRestorationAsComplete(uris, overwrite);
                     for (final Table table : persistenceManager.getDatabase().getTables()) {
                         table.clearCache();
                     }
@@ -0,0 +1,231 @@
+package com.wops.receiptsgo.utils.cache;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.google.common.base.Preconditions;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import com.wops.analytics.log.Logger;
+import com.wops.core.di.scopes.ApplicationScope;
+
+/**
+ * Persists the SHA-256 hash of each file that we've hashed, keyed by its path, size, and modification time. This allows
+ * our reports, backups, and OCR cache to share a single hash of each receipt image instead of re-reading the entire file
+ * each time that they need it. Should a file change (ie its size or modification time), we simply hash it again.
+ * <p>
+ * Our hashes are stored in a single, append-only log file (with one line per hash), which we load lazily on first use.
+ * We rewrite this file without any superseded or evicted lines once it grows to twice the size of our live entries.
+ * </p>
+ */
+@ApplicationScope
+public class FileHashStore {
+
+    @VisibleForTesting
+    static final int DEFAULT_MAX_ENTRIES = 5000;
+
+    private static final String STORE_FILE = "file_hashes";
+    private static final String SEPARATOR = "\t";
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MIN_COMPACTION_LENGTH = 64;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final File storeFile;
+    private final int maxEntries;
+
+    private Map<String, Entry> entries;
+    private int logLength;
+
+    @Inject
+    public FileHashStore(@NonNull Context context) {
+        this(new File(context.getFilesDir(), STORE_FILE), DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param storeFile  the log file in which we persist our hashes
+     * @param maxEntries the maximum number of hashes to keep, after which we evict the least recently used ones
+     */
+    @VisibleForTesting
+    FileHashStore(@NonNull File storeFile, int maxEntries) {
+        Preconditions.checkArgument(maxEntries > 0, "We must store at least one hash");
+        this.storeFile = Preconditions.checkNotNull(storeFile);
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Gets the hash of a file, only reading its content if we have not already hashed this version of it
+     *
+     * @param file the {@link File} to hash
+     * @return the lower-case, hex-encoded SHA-256 hash of the content of this file
+     * @throws IOException if we failed to read this file
+     */
+    @NonNull
+    public String getHash(@NonNull File file) throws IOException {
+        final String path = file.getAbsolutePath();
+        final long size = file.length();
+        final long lastModified = file.lastModified();
+        synchronized (this) {
+            final Entry entry = getEntries().get(path);
+            if (entry != null && entry.size == size && entry.lastModified == lastModified) {
+                return entry.hash;
+            }
+        }
+
+        // Note: We hash outside of our lock, so callers may hash different files in parallel
+        final String hash = hash(file);
+
+        if (file.length() == size && file.lastModified() == lastModified) {
+            synchronized (this) {
+                put(path, new Entry(size, lastModified, hash));
+            }
+        } else {
+            Logger.debug(this, "{} changed while we were hashing it. Skipping our store", file.getName());
+        }
+        return hash;
+    }
+
+    /**
+     * Computes the hash of a file, without using (or updating) our store
+     *
+     * @param file the {@link File} to hash
+     * @return the lower-case, hex-encoded SHA-256 hash of the content of this file
+     * @throws IOException if we failed to read this file
+     */
+    @NonNull
+    public static String hash(@NonNull File file) throws IOException {
+        try (InputStream inputStream = new FileInputStream(file)) {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            final byte[] hashedBytes = digest.digest();
+            final char[] hash = new char[hashedBytes.length * 2];
+            for (int i = 0; i < hashedBytes.length; i++) {
+                hash[2 * i] = HEX_DIGITS[(hashedBytes[i] >> 4) & 0x0f];
+                hash[2 * i + 1] = HEX_DIGITS[hashedBytes[i] & 0x0f];
+            }
+            return new String(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 is not supported", e);
+        }
+    }
+
+    @NonNull
+    private Map<String, Entry> getEntries() {
+        if (entries == null) {
+            // Note: We use access order, so our eldest entry is always the least recently used one
+            entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+            load();
+        }
+        return entries;
+    }
+
+    private void load() {
+        if (!storeFile.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(storeFile), UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                logLength++;
+                // Note: The path is our last field, so we don't need to worry about any separators within it
+                final String[] fields = line.split(SEPARATOR, 4);
+                if (fields.length == 4) {
+                    try {
+                        entries.put(fields[3], new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[0]));
+                    } catch (NumberFormatException e) {
+                        Logger.warn(this, "Skipping a malformed file hash entry");
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Logger.warn(this, "Failed to read our stored file hashes", e);
+        }
+    }
+
+    private void put(@NonNull String path, @NonNull Entry entry) {
+        getEntries().put(path, entry);
+        if (path.indexOf('\n') >= 0) {
+            // We can't represent this path in our log, so we'll only keep its hash in memory
+            return;
+        }
+        if (logLength >= MIN_COMPACTION_LENGTH && logLength >= 2 * entries.size() && compact()) {
+            return;
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(storeFile, true), UTF_8)) {
+            write(writer, path, entry);
+            logLength++;
+        } catch (IOException e) {
+            Logger.warn(this, "Failed to persist the hash of {}", path, e);
+        }
+    }
+
+    /**
+     * Rewrites our log file with only our live entries
+     *
+     * @return {@code true} if we succeeded. {@code false} otherwise
+     */
+    private boolean compact() {
+        final File tempFile = new File(storeFile.getPath() + ".tmp");
+        try {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), UTF_8)) {
+                for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    write(writer, entry.getKey(), entry.getValue());
+                }
+            }
+            if (!tempFile.renameTo(storeFile)) {
+                throw new IOException("Failed to replace " + storeFile);
+            }
+            logLength = entries.size();
+            return true;
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            Logger.warn(this, "Failed to compact our stored file hashes", e);
+            return false;
+        }
+    }
+
+    private static void write(@NonNull Writer writer, @NonNull String path, @NonNull Entry entry) throws IOException {
+        writer.write(entry.hash + SEPARATOR + entry.size + SEPARATOR + entry.lastModified + SEPARATOR + path + "\n");
+    }
+
+    private static final class Entry {
+
+        private final long size;
+        private final long lastModified;
+        private final String hash;
+
+        Entry(long size, long lastModified, @NonNull String hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+}
@@ -1,17 +1,12 @@
 package com.wops.receiptsgo.workers
 
 import android.content.Context
-import android.graphics.*
-import android.graphics.Bitmap.CompressFormat
-import android.graphics.Paint.Align
 import com.wops.analytics.log.Logger
-import com.wops.receiptsgo.R
 import com.wops.receiptsgo.date.DateFormatter
 import com.wops.receiptsgo.filters.LegacyReceiptFilter
 import com.wops.receiptsgo.model.*
 import com.wops.receiptsgo.model.comparators.ReceiptDateComparator
 import com.wops.receiptsgo.model.converters.DistanceToReceiptsConverter
-import com.wops.receiptsgo.model.factory.PriceBuilderFactory
 import com.wops.receiptsgo.model.impl.columns.categories.CategoryColumnDefinitions
 import com.wops.receiptsgo.model.impl.columns.distance.DistanceColumnDefinitions
 import com.wops.receiptsgo.persistence.DatabaseHelper
@@ -19,20 +14,29 @@ import com.wops.receiptsgo.persistence.database.controllers.grouping.GroupingCon
 import com.wops.receiptsgo.purchases.wallet.PurchaseWallet
 import com.wops.receiptsgo.settings.UserPreferenceManager
 import com.wops.receiptsgo.settings.catalog.UserPreference
+import com.wops.receiptsgo.utils.PreFixedThreadFactory
 import com.wops.receiptsgo.workers.EmailAssistant.EmailOptions
-import com.wops.receiptsgo.workers.reports.Report
 import com.wops.receiptsgo.workers.reports.ReportGenerationException
 import com.wops.receiptsgo.workers.reports.ReportResourcesManager
+import com.wops.receiptsgo.workers.reports.ReportSnapshot
 import com.wops.receiptsgo.workers.reports.csv.CsvReportWriter
 import com.wops.receiptsgo.workers.reports.csv.CsvTableGenerator
 import com.wops.receiptsgo.workers.reports.pdf.PdfBoxFullPdfReport
 import com.wops.receiptsgo.workers.reports.pdf.PdfBoxImagesOnlyReport
 import com.wops.receiptsgo.workers.reports.pdf.misc.TooManyColumnsException
+import com.wops.receiptsgo.workers.reports.zip.StreamingZipArchiveBuilder
+import com.wops.receiptsgo.workers.stamping.ReceiptImageStamper
 import com.wops.core.di.scopes.ApplicationScope
 import wb.android.storage.StorageManager
 import java.io.File
 import java.io.IOException
 import java.util.*
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Future
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
 import javax.inject.Inject
 
 @ApplicationScope
@@ -47,24 +51,126 @@ class AttachmentFilesWriter @Inject constructor(
 ) {
 
     companion object {
-        private const val IMG_SCALE_FACTOR = 2.1f
-        private const val HW_RATIO = 0.75f
+
+        /**
+         * The maximum number of lightweight report formats (ie those that never decode an image) that we'll generate
+         * alongside our image-heavy one
+         */
+        private const val MAX_CONCURRENT_LIGHTWEIGHT_REPORTS = 2
+
+        /**
+         * Our PDF and stamped ZIP formats decode full-sized images, each within its own memory budget. We generate
+         * these one at a time, so our peak memory usage is that of the largest budget rather than the sum of them all
+         */
+        private val IMAGE_HEAVY_REPORTS: Set<EmailOptions> =
+            EnumSet.of(EmailOptions.PDF_FULL, EmailOptions.PDF_IMAGES_ONLY, EmailOptions.ZIP_WITH_METADATA)
     }
 
-    class WriterResults {
-        var didPDFFailCompletely = false
-        var didPDFFailTooManyColumns = false
-        var didCSVFailCompletely = false
-        var didZIPFailCompletely = false
-        var didMemoryErrorOccure = false
+    /**
+     * Tracks the progress of a single report format within a [write] operation
+     */
+    enum class ReportStatus {
+        NOT_REQUESTED, PENDING, RUNNING, SUCCEEDED, FAILED
+    }
+
+    /**
+     * Receives per-format progress updates as a [write] operation proceeds. Note that these callbacks will be
+     * triggered from our worker threads
+     */
+    interface ProgressListener {
+        fun onReportStatusChanged(option: EmailOptions, status: ReportStatus)
+    }
+
+    class WriterResults @JvmOverloads constructor(private val progressListener: ProgressListener? = null) {
+        @Volatile var didPDFFailCompletely = false
+        @Volatile var didPDFFailTooManyColumns = false
+        @Volatile var didCSVFailCompletely = false
+        @Volatile var didZIPFailCompletely = false
+        @Volatile var didMemoryErrorOccure = false
 
         val files: Array<File?> = arrayOfNulls(EmailOptions.values().size)
+
+        private val statuses = EnumMap<EmailOptions, ReportStatus>(EmailOptions::class.java)
+        private val failures = EnumMap<EmailOptions, Throwable>(EmailOptions::class.java)
+
+        @Synchronized
+        fun getStatus(option: EmailOptions): ReportStatus = statuses[option] ?: ReportStatus.NOT_REQUESTED
+
+        /**
+         * @return the [Throwable] that caused this format to fail or `null` if it did not fail (or failed without one)
+         */
+        @Synchronized
+        fun getFailure(option: EmailOptions): Throwable? = failures[option]
+
+        @Synchronized
+        fun getFailedOptions(): Set<EmailOptions> {
+            val failedOptions = EnumSet.noneOf(EmailOptions::class.java)
+            for ((option, status) in statuses) {
+                if (status == ReportStatus.FAILED) {
+                    failedOptions.add(option)
+                }
+            }
+            return failedOptions
+        }
+
+        fun setStatus(option: EmailOptions, status: ReportStatus) {
+            synchronized(this) {
+                if (statuses[option] == ReportStatus.FAILED) {
+                    return // Failures are terminal
+                }
+                statuses[option] = status
+            }
+            progressListener?.onReportStatusChanged(option, status)
+        }
+
+        fun setFailed(option: EmailOptions, failure: Throwable?) {
+            synchronized(this) {
+                if (failure != null) {
+                    failures[option] = failure
+                }
+            }
+            setStatus(option, ReportStatus.FAILED)
+        }
+    }
+
+    private val receiptImageStamper by lazy {
+        ReceiptImageStamper(storageManager, reportResourcesManager, preferenceManager, dateFormatter)
+    }
+
+    private val imageReportExecutor: ExecutorService by lazy {
+        newReportExecutor(1, javaClass.simpleName + "-Images")
+    }
+
+    private val lightweightReportExecutor: ExecutorService by lazy {
+        val threadCount = Math.max(1, Math.min(MAX_CONCURRENT_LIGHTWEIGHT_REPORTS, Runtime.getRuntime().availableProcessors() - 1))
+        newReportExecutor(threadCount, javaClass.simpleName)
+    }
+
+    private fun newReportExecutor(threadCount: Int, threadPrefix: String): ExecutorService {
+        val executor = ThreadPoolExecutor(
+            threadCount, threadCount, 30L, TimeUnit.SECONDS,
+            LinkedBlockingQueue(), PreFixedThreadFactory(threadPrefix)
+        )
+        executor.allowCoreThreadTimeOut(true)
+        return executor
     }
 
     fun write(trip: Trip, receiptsList: List<Receipt>, distancesList: List<Distance>, options: EnumSet<EmailOptions>): WriterResults {
+        return write(trip, receiptsList, distancesList, options, null)
+    }
+
+    /**
+     * Generates each of the requested report formats. We first load all of the data for this trip into an immutable
+     * [ReportSnapshot] and then generate each format from it. Our lightweight formats (ie CSV and ZIP) are generated
+     * in parallel with our image-heavy ones, but the latter run one at a time (see [IMAGE_HEAVY_REPORTS])
+     */
+    fun write(
+        trip: Trip, receiptsList: List<Receipt>, distancesList: List<Distance>, options: EnumSet<EmailOptions>,
+        progressListener: ProgressListener?
+    ): WriterResults {
         Logger.info(this, "Generating the following report types {}.", options)
 
-        val results = WriterResults()
+        val results = WriterResults(progressListener)
 
         // Make our trip output directory exists in a good state
         var dir = trip.directory
@@ -75,70 +181,122 @@ class AttachmentFilesWriter @Inject constructor(
             }
         }
 
+        val requestedOptions = EnumSet.noneOf(EmailOptions::class.java)
         if (options.contains(EmailOptions.PDF_FULL)) {
-            generateFullPdf(trip, results)
+            requestedOptions.add(EmailOptions.PDF_FULL)
         }
-
         if (options.contains(EmailOptions.PDF_IMAGES_ONLY) && receiptsList.isNotEmpty()) {
-            generateImagesPdf(trip, results)
+            requestedOptions.add(EmailOptions.PDF_IMAGES_ONLY)
         }
-
         if (options.contains(EmailOptions.ZIP) && receiptsList.isNotEmpty()) {
-            generateZip(trip, receiptsList, dir, results)
+            requestedOptions.add(EmailOptions.ZIP)
+        }
+        if (options.contains(EmailOptions.CSV)) {
+            requestedOptions.add(EmailOptions.CSV)
+        }
+        if (options.contains(EmailOptions.ZIP_WITH_METADATA) && receiptsList.isNotEmpty()) {
+            requestedOptions.add(EmailOptions.ZIP_WITH_METADATA)
+        }
+        for (option in requestedOptions) {
+            results.setStatus(option, ReportStatus.PENDING)
         }
 
-        val csvColumns by lazy { databaseHelper.csvTable.get().blockingGet() }
+        val snapshot = ReportSnapshot.load(
+            databaseHelper, GroupingController(databaseHelper, context, preferenceManager), preferenceManager,
+            trip, receiptsList, distancesList, requestedOptions
+        )
+        val isZipGenerationIncluded = options.contains(EmailOptions.ZIP)
 
-        if (options.contains(EmailOptions.CSV)) {
-            generateCsv(trip, receiptsList, distancesList, csvColumns, dir, results)
+        val futures = EnumMap<EmailOptions, Future<*>>(EmailOptions::class.java)
+        for (option in requestedOptions) {
+            val executor = if (IMAGE_HEAVY_REPORTS.contains(option)) imageReportExecutor else lightweightReportExecutor
+            futures[option] = executor.submit(Runnable { generate(option, snapshot, dir, isZipGenerationIncluded, results) })
         }
 
-        if (options.contains(EmailOptions.ZIP_WITH_METADATA) && receiptsList.isNotEmpty()) {
-            generateZipWithMetadata(trip, receiptsList, csvColumns, dir, options.contains(EmailOptions.ZIP), results)
+        for ((option, future) in futures) {
+            try {
+                future.get()
+            } catch (e: InterruptedException) {
+                Logger.warn(this, "Interrupted while waiting for our reports to generate", e)
+                futures.values.forEach { it.cancel(true) }
+                results.setFailed(option, e)
+                Thread.currentThread().interrupt()
+                break
+            } catch (e: ExecutionException) {
+                // We handle all failures in generate, so this should not happen
+                results.setFailed(option, e.cause)
+            }
         }
 
         return results
     }
 
-    private fun generateFullPdf(trip: Trip, results: WriterResults) {
-        val pdfFullReport: Report =
+    private fun generate(option: EmailOptions, snapshot: ReportSnapshot, dir: File, isZipGenerationIncluded: Boolean, results: WriterResults) {
+        results.setStatus(option, ReportStatus.RUNNING)
+        try {
+            when (option) {
+                EmailOptions.PDF_FULL -> generateFullPdf(snapshot, results)
+                EmailOptions.PDF_IMAGES_ONLY -> generateImagesPdf(snapshot, results)
+                EmailOptions.ZIP -> generateZip(snapshot, dir, results)
+                EmailOptions.CSV -> generateCsv(snapshot, dir, results)
+                EmailOptions.ZIP_WITH_METADATA -> generateZipWithMetadata(snapshot, dir, isZipGenerationIncluded, results)
+                EmailOptions.SAVE_TO_DEVICE -> { } // Not a report format
+            }
+            results.setStatus(option, ReportStatus.SUCCEEDED)
+        } catch (e: OutOfMemoryError) {
+            Logger.error(this, "Ran out of memory while generating our {} report", option)
+            results.didMemoryErrorOccure = true
+            results.setFailed(option, e)
+        } catch (e: Exception) {
+            Logger.error(this, "Failed to generate our $option report", e)
+            when (option) {
+                EmailOptions.PDF_FULL, EmailOptions.PDF_IMAGES_ONLY -> results.didPDFFailCompletely = true
+                EmailOptions.CSV -> results.didCSVFailCompletely = true
+                EmailOptions.ZIP, EmailOptions.ZIP_WITH_METADATA -> results.didZIPFailCompletely = true
+                EmailOptions.SAVE_TO_DEVICE -> { }
+            }
+            results.setFailed(option, e)
+        }
+    }
+
+    private fun generateFullPdf(snapshot: ReportSnapshot, results: WriterResults) {
+        val pdfFullReport =
             PdfBoxFullPdfReport(reportResourcesManager, databaseHelper, preferenceManager, storageManager, purchaseWallet, dateFormatter)
 
         try {
-            results.files[EmailOptions.PDF_FULL.index] = pdfFullReport.generate(trip)
+            results.files[EmailOptions.PDF_FULL.index] = pdfFullReport.generate(snapshot)
         } catch (e: ReportGenerationException) {
             if (e.cause is TooManyColumnsException) {
                 results.didPDFFailTooManyColumns = true
             }
             results.didPDFFailCompletely = true
+            results.setFailed(EmailOptions.PDF_FULL, e)
         }
     }
 
-    private fun generateImagesPdf(trip: Trip, results: WriterResults) {
-        val pdfImagesReport: Report =
+    private fun generateImagesPdf(snapshot: ReportSnapshot, results: WriterResults) {
+        val pdfImagesReport =
             PdfBoxImagesOnlyReport(reportResourcesManager, databaseHelper, preferenceManager, storageManager, dateFormatter)
 
         try {
-            results.files[EmailOptions.PDF_IMAGES_ONLY.index] = pdfImagesReport.generate(trip)
+            results.files[EmailOptions.PDF_IMAGES_ONLY.index] = pdfImagesReport.generate(snapshot)
         } catch (e: ReportGenerationException) {
             results.didPDFFailCompletely = true
+            results.setFailed(EmailOptions.PDF_IMAGES_ONLY, e)
         }
     }
 
-    private fun generateCsv(
-        trip: Trip, receiptsList: List<Receipt>, distancesList: List<Distance>, csvColumns: List<Column<Receipt>>, dir: File,
-        results: WriterResults
-    ) {
+    private fun generateCsv(snapshot: ReportSnapshot, dir: File, results: WriterResults) {
         val printFooters: Boolean = preferenceManager.get(UserPreference.ReportOutput.ShowTotalOnCSV)
 
         try {
             storageManager.delete(dir, dir.name + ".csv")
 
             val csvTableGenerator =
-                CsvTableGenerator(reportResourcesManager, csvColumns, true, printFooters, LegacyReceiptFilter(preferenceManager))
+                CsvTableGenerator(reportResourcesManager, snapshot.csvColumns, true, printFooters, LegacyReceiptFilter(preferenceManager))
 
-            val receipts: MutableList<Receipt> = ArrayList(receiptsList)
-            val distances: MutableList<Distance> = ArrayList(distancesList)
+            val receipts: MutableList<Receipt> = ArrayList(snapshot.receipts)
+            val distances: MutableList<Distance> = ArrayList(snapshot.distances)
 
             // Receipts table
             if (preferenceManager.get(UserPreference.Distance.PrintDistanceAsDailyReceiptInReports)) {
@@ -146,90 +304,95 @@ class AttachmentFilesWriter @Inject constructor(
                 Collections.sort(receipts, ReceiptDateComparator())
             }
 
-            var data = csvTableGenerator.generate(receipts)
-
-            // Distance table
-            if (preferenceManager.get(UserPreference.Distance.PrintDistanceTableInReports)) {
-                if (distances.isNotEmpty()) {
-                    distances.reverse() // Reverse the list, so we print the most recent one first
+            val csvFile = File(dir, dir.name + ".csv")
+            results.files[EmailOptions.CSV.index] = csvFile
 
-                    // CSVs cannot print special characters
-                    val distanceColumnDefinitions: ColumnDefinitions<Distance> =
-                        DistanceColumnDefinitions(reportResourcesManager, preferenceManager, dateFormatter, true)
-                    val distanceColumns = distanceColumnDefinitions.allColumns
-                    data += "\n\n"
-                    data += CsvTableGenerator(
-                        reportResourcesManager, distanceColumns,
-                        true, printFooters
-                    ).generate(distances)
+            // Stream each table directly to the file, so we never hold the full csv in memory
+            CsvReportWriter(csvFile).openWriter().use { writer ->
+                csvTableGenerator.write(receipts, writer)
+
+                // Distance table
+                if (preferenceManager.get(UserPreference.Distance.PrintDistanceTableInReports)) {
+                    if (distances.isNotEmpty()) {
+                        distances.reverse() // Reverse the list, so we print the most recent one first
+
+                        // CSVs cannot print special characters
+                        val distanceColumnDefinitions: ColumnDefinitions<Distance> =
+                            DistanceColumnDefinitions(reportResourcesManager, preferenceManager, dateFormatter, true)
+                        val distanceColumns = distanceColumnDefinitions.allColumns
+                        writer.write("\n\n")
+                        CsvTableGenerator(
+                            reportResourcesManager, distanceColumns,
+                            true, printFooters
+                        ).write(distances, writer)
+                    }
                 }
-            }
 
-            // Categorical summation table
-            if (preferenceManager.get(UserPreference.PlusSubscription.CategoricalSummationInReports)) {
-                val sumCategoryGroupingResults = GroupingController(databaseHelper, context, preferenceManager)
-                    .getSummationByCategory(trip)
-                    .toList()
-                    .blockingGet()
-                var isMultiCurrency = false
-                for (sumCategoryGroupingResult in sumCategoryGroupingResults) {
-                    if (sumCategoryGroupingResult.isMultiCurrency) {
-                        isMultiCurrency = true
-                        break
+                // Categorical summation table
+                if (preferenceManager.get(UserPreference.PlusSubscription.CategoricalSummationInReports)) {
+                    val sumCategoryGroupingResults = snapshot.categorySummations
+                    var isMultiCurrency = false
+                    for (sumCategoryGroupingResult in sumCategoryGroupingResults) {
+                        if (sumCategoryGroupingResult.isMultiCurrency) {
+                            isMultiCurrency = true
+                            break
+                        }
                     }
+                    val taxEnabled: Boolean = preferenceManager.get(UserPreference.Receipts.IncludeTaxField)
+                    val categoryColumns = CategoryColumnDefinitions(reportResourcesManager, isMultiCurrency, taxEnabled)
+                        .allColumns
+                    writer.write("\n\n")
+                    CsvTableGenerator(
+                        reportResourcesManager, categoryColumns,
+                        true, printFooters
+                    ).write(sumCategoryGroupingResults, writer)
                 }
-                val taxEnabled: Boolean = preferenceManager.get(UserPreference.Receipts.IncludeTaxField)
-                val categoryColumns = CategoryColumnDefinitions(reportResourcesManager, isMultiCurrency, taxEnabled)
-                    .allColumns
-                data += "\n\n"
-                data += CsvTableGenerator(
-                    reportResourcesManager, categoryColumns,
-                    true, printFooters
-                ).generate(sumCategoryGroupingResults)
-            }
 
-            // Separated tables for each category
-            if (preferenceManager.get(UserPreference.PlusSubscription.SeparateByCategoryInReports)) {
-                val groupingResults = GroupingController(databaseHelper, context, preferenceManager)
-                    .getReceiptsGroupedByCategory(trip)
-                    .toList()
-                    .blockingGet()
-                for (groupingResult in groupingResults) {
-                    data += "\n\n" + groupingResult.category.name + "\n";
-                    data += CsvTableGenerator(reportResourcesManager, csvColumns, true, printFooters).generate(groupingResult.receipts)
+                // Separated tables for each category
+                if (preferenceManager.get(UserPreference.PlusSubscription.SeparateByCategoryInReports)) {
+                    val groupingResults = snapshot.categoryGroupings
+                    val categoryTableGenerator = CsvTableGenerator(reportResourcesManager, snapshot.csvColumns, true, printFooters)
+                    for (groupingResult in groupingResults) {
+                        writer.write("\n\n" + groupingResult.category.name + "\n")
+                        categoryTableGenerator.write(groupingResult.receipts, writer)
+                    }
                 }
             }
 
-            val csvFile = File(dir, dir.name + ".csv")
-            results.files[EmailOptions.CSV.index] = csvFile
-            CsvReportWriter(csvFile).write(data)
-
         } catch (e: IOException) {
             Logger.error(this, "Failed to write the csv file", e)
-            results.didCSVFailCompletely = true;
+            results.didCSVFailCompletely = true
+            results.setFailed(EmailOptions.CSV, e)
         }
     }
 
-    private fun generateZip(trip: Trip, receiptsList: List<Receipt>, directory: File, results: WriterResults) {
-        var dir = directory
+    private fun generateZip(snapshot: ReportSnapshot, dir: File, results: WriterResults) {
+        val trip = snapshot.trip
+        val receiptsList = snapshot.receipts
         storageManager.delete(dir, dir.name + ".zip")
-        dir = storageManager.mkdir(trip.directory, trip.name)
-        for (i in receiptsList.indices) {
-            val receipt = receiptsList[i]
-            if (!filterOutReceipt(preferenceManager, receipt) && receipt.file != null && receipt.file.exists()) {
-                val data = storageManager.read(receipt.file)
-                if (data != null) storageManager.write(dir, receipt.file.name, data)
+        val zip = File(trip.directory, trip.name + ".zip")
+        try {
+            // Stream each receipt file straight into the archive instead of staging a copy of it first
+            StreamingZipArchiveBuilder(zip).use { zipArchiveBuilder ->
+                for (i in receiptsList.indices) {
+                    val receipt = receiptsList[i]
+                    if (!filterOutReceipt(preferenceManager, receipt) && receipt.file != null && receipt.file.exists()) {
+                        zipArchiveBuilder.addFile(receipt.file, receipt.file.name)
+                    }
+                }
             }
+            results.files[EmailOptions.ZIP.index] = zip
+        } catch (e: IOException) {
+            Logger.error(this, "Failed to write the zip file", e)
+            results.didZIPFailCompletely = true
+            results.setFailed(EmailOptions.ZIP, e)
         }
-        val zip: File = storageManager.zipBuffered(dir, 2048)
-        storageManager.deleteRecursively(dir)
-        results.files[EmailOptions.ZIP.index] = zip
     }
 
-    private fun generateZipWithMetadata(
-        trip: Trip, receiptsList: List<Receipt>, csvColumns: List<Column<Receipt>>,
-        dir: File, isZipGenerationIncluded: Boolean, results: WriterResults
-    ) {
+    private fun generateZipWithMetadata(snapshot: ReportSnapshot, dir: File, isZipGenerationIncluded: Boolean, results: WriterResults) {
+        val trip = snapshot.trip
+        val receiptsList = snapshot.receipts
+        val csvColumns = snapshot.csvColumns
         val zipDir = if (isZipGenerationIncluded) {
             storageManager.delete(dir, dir.name + "_stamped" + ".zip")
             storageManager.mkdir(trip.directory, trip.name + "_stamped")
@@ -237,6 +400,8 @@ class AttachmentFilesWriter @Inject constructor(
             storageManager.delete(dir, dir.name + ".zip")
             storageManager.mkdir(trip.directory, trip.name)
         }
+        val pdfFiles = ArrayList<File>()
+        val stampRequests = ArrayList<ReceiptImageStamper.StampRequest>()
         for (i in receiptsList.indices) {
             val receipt = receiptsList[i]
             if (!filterOutReceipt(preferenceManager, receipt)) {
@@ -248,38 +413,36 @@ class AttachmentFilesWriter @Inject constructor(
                         userCommentBuilder.append(col.getValue(receipt))
                         userCommentBuilder.append("\n")
                     }
-                    val userComment = userCommentBuilder.toString()
-                    try {
-                        val b: Bitmap? = stampImage(trip, receipt, Bitmap.Config.ARGB_8888)
-                        if (b != null) {
-                            storageManager.writeBitmap(zipDir, b, receipt.file!!.name, CompressFormat.JPEG, 85, userComment)
-                            b.recycle()
-                        }
-                    } catch (e: OutOfMemoryError) {
-                        Logger.error(this, "Trying to recover from OOM", e)
-                        System.gc()
-                        try {
-                            val b: Bitmap? = stampImage(trip, receipt, Bitmap.Config.RGB_565)
-                            if (b != null) {
-                                storageManager.writeBitmap(zipDir, b, receipt.file!!.name, CompressFormat.JPEG, 85, userComment)
-                                b.recycle()
-                            }
-                        } catch (e2: OutOfMemoryError) {
-                            Logger.error(this, "Failed to recover from OOM", e2)
-                            results.didZIPFailCompletely = true
-                            results.didMemoryErrorOccure = true
-                            break
-                        }
-                    }
+                    stampRequests.add(ReceiptImageStamper.StampRequest(receipt, userCommentBuilder.toString()))
                 } else if (receipt.hasPDF()) {
-                    val data = storageManager.read(receipt.file)
-                    if (data != null) storageManager.write(zipDir, receipt.file!!.name, data)
+                    // PDFs are unchanged, so we stream these directly from their source below
+                    pdfFiles.add(receipt.file!!)
                 }
             }
         }
-        val zipWithMetadata: File = storageManager.zipBuffered(zipDir, 2048)
+
+        val stampResults = receiptImageStamper.stampAll(trip, stampRequests, zipDir)
+        if (stampResults.didMemoryErrorOccur()) {
+            results.didZIPFailCompletely = true
+            results.didMemoryErrorOccure = true
+            results.setFailed(EmailOptions.ZIP_WITH_METADATA, null)
+        }
+
+        val zipWithMetadata = File(zipDir.parentFile, zipDir.name + ".zip")
+        try {
+            StreamingZipArchiveBuilder(zipWithMetadata).use { zipArchiveBuilder ->
+                zipArchiveBuilder.addDirectory(zipDir)
+                for (pdfFile in pdfFiles) {
+                    zipArchiveBuilder.addFile(pdfFile, pdfFile.name)
+                }
+            }
+            results.files[EmailOptions.ZIP_WITH_METADATA.index] = zipWithMetadata
+        } catch (e: IOException) {
+            Logger.error(this, "Failed to write the zip file with metadata", e)
+            results.didZIPFailCompletely = true
+            results.setFailed(EmailOptions.ZIP_WITH_METADATA, e)
+        }
         storageManager.deleteRecursively(zipDir)
-        results.files[EmailOptions.ZIP_WITH_METADATA.index] = zipWithMetadata
     }
 
     /**
@@ -296,161 +459,4 @@ class AttachmentFilesWriter @Inject constructor(
         } else receipt.price.priceAsFloat < preferences.get(UserPreference.Receipts.MinimumReceiptPrice)
     }
 
-    private fun stampImage(trip: Trip, receipt: Receipt, config: Bitmap.Config): Bitmap? {
-        if (!receipt.hasImage()) {
-            return null
-        }
-        var foreground: Bitmap? = storageManager.getMutableMemoryEfficientBitmap(receipt.file)
-        return if (foreground != null) { // It can be null if file not found
-            // Size the image
-            var foreWidth = foreground.width
-            var foreHeight = foreground.height
-            if (foreHeight > foreWidth) {
-                foreWidth = (foreHeight * HW_RATIO).toInt()
-            } else {
-                foreHeight = (foreWidth / HW_RATIO).toInt()
-            }
-
-            // Set up the padding
-            val xPad = (foreWidth / IMG_SCALE_FACTOR).toInt()
-            val yPad = (foreHeight / IMG_SCALE_FACTOR).toInt()
-
-            // Set up an all white background for our canvas
-            val background = Bitmap.createBitmap(foreWidth + xPad, foreHeight + yPad, config)
-            val canvas = Canvas(background)
-            canvas.drawARGB(0xFF, 0xFF, 0xFF, 0xFF) //This represents White color
-
-            // Set up the paint
-            val dither = Paint()
-            dither.isDither = true
-            dither.isFilterBitmap = false
-            canvas.drawBitmap(
-                foreground,
-                (background.width - foreground.width) / 2.toFloat(),
-                (background.height - foreground.height) / 2.toFloat(),
-                dither
-            )
-            val brush = Paint()
-            brush.isAntiAlias = true
-            brush.typeface = Typeface.SANS_SERIF
-            brush.color = Color.BLACK
-            brush.style = Paint.Style.FILL
-            brush.textAlign = Align.LEFT
-
-            // Set up the number of items to draw
-            var num = 5
-            if (preferenceManager.get(UserPreference.Receipts.IncludeTaxField)) {
-                num++
-            }
-            if (receipt.hasExtraEditText1()) {
-                num++
-            }
-            if (receipt.hasExtraEditText2()) {
-                num++
-            }
-            if (receipt.hasExtraEditText3()) {
-                num++
-            }
-            val spacing: Float = getOptimalSpacing(num, yPad / 2, brush)
-            var y = spacing * 4
-            canvas.drawText(trip.name, xPad / 2.toFloat(), y, brush)
-            y += spacing
-            canvas.drawText(
-                dateFormatter.getFormattedDate(trip.startDisplayableDate) + " -- " + dateFormatter.getFormattedDate(trip.endDisplayableDate),
-                xPad / 2.toFloat(),
-                y,
-                brush
-            )
-            y = background.height - yPad / 2 + spacing * 2
-            canvas.drawText(
-                reportResourcesManager.getFlexString(R.string.RECEIPTMENU_FIELD_NAME) + ": " + receipt.name,
-                xPad / 2.toFloat(),
-                y,
-                brush
-            )
-            y += spacing
-            canvas.drawText(
-                reportResourcesManager.getFlexString(R.string.RECEIPTMENU_FIELD_PRICE) + ": " + receipt.price.decimalFormattedPrice + " " + receipt.price.currencyCode,
-                xPad / 2.toFloat(),
-                y,
-                brush
-            )
-            y += spacing
-            if (preferenceManager.get(UserPreference.Receipts.IncludeTaxField)) {
-                val totalTax = PriceBuilderFactory(receipt.tax).setPrice(receipt.tax.price.add(receipt.tax2.price)).build()
-                canvas.drawText(
-                    reportResourcesManager.getFlexString(R.string.RECEIPTMENU_FIELD_TAX) + ": " + totalTax.decimalFormattedPrice + " " + receipt.price.currencyCode,
-                    xPad / 2.toFloat(),
-                    y,
-                    brush
-                )
-                y += spacing
-            }
-            canvas.drawText(
-                reportResourcesManager.getFlexString(R.string.RECEIPTMENU_FIELD_DATE) + ": " + dateFormatter.getFormattedDate(
-                    receipt.date,
-                    receipt.timeZone
-                ), xPad / 2.toFloat(), y, brush
-            )
-            y += spacing
-            canvas.drawText(
-                reportResourcesManager.getFlexString(R.string.RECEIPTMENU_FIELD_CATEGORY) + ": " + receipt.category.name,
-                xPad / 2.toFloat(),
-                y,
-                brush
-            )
-            y += spacing
-            canvas.drawText(
-                reportResourcesManager.getFlexString(R.string.RECEIPTMENU_FIELD_COMMENT) + ": " + receipt.comment,
-                xPad / 2.toFloat(),
-                y,
-                brush
-            )
-            y += spacing
-            if (receipt.hasExtraEditText1()) {
-                canvas.drawText(
-                    reportResourcesManager.getFlexString(R.string.RECEIPTMENU_FIELD_EXTRA_EDITTEXT_1) + ": " + receipt.extraEditText1,
-                    xPad / 2.toFloat(),
-                    y,
-                    brush
-                )
-                y += spacing
-            }
-            if (receipt.hasExtraEditText2()) {
-                canvas.drawText(
-                    reportResourcesManager.getFlexString(R.string.RECEIPTMENU_FIELD_EXTRA_EDITTEXT_2) + ": " + receipt.extraEditText2,
-                    xPad / 2.toFloat(),
-                    y,
-                    brush
-                )
-                y += spacing
-            }
-            if (receipt.hasExtraEditText3()) {
-                canvas.drawText(
-                    reportResourcesManager.getFlexString(R.string.RECEIPTMENU_FIELD_EXTRA_EDITTEXT_3) + ": " + receipt.extraEditText3,
-                    xPad / 2.toFloat(),
-                    y,
-                    brush
-                )
-            }
-
-            // Clear out the dead data here
-            foreground.recycle()
-            // And return
-            background
-        } else {
-            null
-        }
-    }
-
-    private fun getOptimalSpacing(count: Int, space: Int, brush: Paint): Float {
-        var fontSize = 8f //Seed
-        brush.textSize = fontSize
-        while (space > (count + 2) * brush.fontSpacing) {
-            brush.textSize = ++fontSize
-        }
-        brush.textSize = --fontSize
-        return brush.fontSpacing
-    }
-
-}
\ No newline at end of file
+}
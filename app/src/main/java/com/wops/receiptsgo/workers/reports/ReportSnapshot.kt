@@ -0,0 +1,118 @@
+package com.wops.receiptsgo.workers.reports
+
+import com.wops.receiptsgo.model.Column
+import com.wops.receiptsgo.model.Distance
+import com.wops.receiptsgo.model.Receipt
+import com.wops.receiptsgo.model.Trip
+import com.wops.receiptsgo.persistence.DatabaseHelper
+import com.wops.receiptsgo.persistence.database.controllers.grouping.GroupingController
+import com.wops.receiptsgo.persistence.database.controllers.grouping.results.CategoryGroupingResult
+import com.wops.receiptsgo.persistence.database.controllers.grouping.results.SumCategoryGroupingResult
+import com.wops.receiptsgo.settings.UserPreferenceManager
+import com.wops.receiptsgo.settings.catalog.UserPreference
+import com.wops.receiptsgo.workers.EmailAssistant.EmailOptions
+import java.util.*
+
+/**
+ * An immutable snapshot of all the data that is required to generate the reports for a particular [Trip]. This is
+ * loaded once up front via [load], which allows us to generate each report format in parallel without any of them
+ * re-querying the database. Data that is not required by any of the requested [EmailOptions] is left empty.
+ */
+class ReportSnapshot(
+    val trip: Trip,
+    receipts: List<Receipt>,
+    distances: List<Distance>,
+    ascendingReceipts: List<Receipt>,
+    ascendingDistances: List<Distance>,
+    csvColumns: List<Column<Receipt>>,
+    pdfColumns: List<Column<Receipt>>,
+    categoryGroupings: List<CategoryGroupingResult>,
+    categorySummations: List<SumCategoryGroupingResult>
+) {
+
+    /**
+     * The receipts for this trip in descending order, as shown in the app
+     */
+    val receipts: List<Receipt> = Collections.unmodifiableList(ArrayList(receipts))
+
+    /**
+     * The distances for this trip in descending order, as shown in the app
+     */
+    val distances: List<Distance> = Collections.unmodifiableList(ArrayList(distances))
+
+    /**
+     * The receipts for this trip in ascending order (with ascending indices), as used by our PDF reports
+     */
+    val ascendingReceipts: List<Receipt> = Collections.unmodifiableList(ArrayList(ascendingReceipts))
+
+    /**
+     * The distances for this trip in ascending order, as used by our PDF reports
+     */
+    val ascendingDistances: List<Distance> = Collections.unmodifiableList(ArrayList(ascendingDistances))
+
+    val csvColumns: List<Column<Receipt>> = Collections.unmodifiableList(ArrayList(csvColumns))
+
+    val pdfColumns: List<Column<Receipt>> = Collections.unmodifiableList(ArrayList(pdfColumns))
+
+    val categoryGroupings: List<CategoryGroupingResult> = Collections.unmodifiableList(ArrayList(categoryGroupings))
+
+    val categorySummations: List<SumCategoryGroupingResult> = Collections.unmodifiableList(ArrayList(categorySummations))
+
+    companion object {
+
+        /**
+         * Loads a [ReportSnapshot] with all data that is required to generate the requested [EmailOptions]
+         *
+         * @param trip the [Trip] to load the snapshot for
+         * @param receipts the receipts for this trip in descending order
+         * @param distances the distances for this trip in descending order
+         * @param options the [EmailOptions] that we will generate from this snapshot
+         * @return the loaded [ReportSnapshot]
+         */
+        @JvmStatic
+        fun load(
+            databaseHelper: DatabaseHelper,
+            groupingController: GroupingController,
+            preferenceManager: UserPreferenceManager,
+            trip: Trip,
+            receipts: List<Receipt>,
+            distances: List<Distance>,
+            options: Set<EmailOptions>
+        ): ReportSnapshot {
+            val isPdfRequested = options.contains(EmailOptions.PDF_FULL) || options.contains(EmailOptions.PDF_IMAGES_ONLY)
+            val isCsvRequested = options.contains(EmailOptions.CSV)
+            val areCategoryGroupingsRequired = options.contains(EmailOptions.PDF_FULL) || isCsvRequested &&
+                    preferenceManager.get(UserPreference.PlusSubscription.SeparateByCategoryInReports)
+            val areCategorySummationsRequired = options.contains(EmailOptions.PDF_FULL) || isCsvRequested &&
+                    preferenceManager.get(UserPreference.PlusSubscription.CategoricalSummationInReports)
+
+            val ascendingReceipts = if (isPdfRequested) databaseHelper.receiptsTable.getBlocking(trip, false) else emptyList()
+            val ascendingDistances = if (isPdfRequested) databaseHelper.distanceTable.getBlocking(trip, false) else emptyList()
+
+            val csvColumns = if (isCsvRequested || options.contains(EmailOptions.ZIP_WITH_METADATA)) {
+                databaseHelper.csvTable.get().blockingGet()
+            } else {
+                emptyList()
+            }
+            val pdfColumns = if (options.contains(EmailOptions.PDF_FULL)) databaseHelper.pdfTable.get().blockingGet() else emptyList()
+
+            val categoryGroupings = if (areCategoryGroupingsRequired) {
+                groupingController.getReceiptsGroupedByCategory(receipts).toList().blockingGet()
+            } else {
+                emptyList()
+            }
+
+            // The summations are grouped in SQLite, so these scale with the number of categories rather than receipts
+            val categorySummations = if (areCategorySummationsRequired) {
+                groupingController.getSummationByCategoryBlocking(trip)
+            } else {
+                emptyList()
+            }
+
+            return ReportSnapshot(
+                trip, receipts, distances, ascendingReceipts, ascendingDistances,
+                csvColumns, pdfColumns, categoryGroupings, categorySummations
+            )
+        }
+    }
+}
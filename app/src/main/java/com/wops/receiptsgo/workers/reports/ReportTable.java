@@ -0,0 +1,168 @@
+package com.wops.receiptsgo.workers.reports;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.wops.receiptsgo.filters.Filter;
+import com.wops.receiptsgo.model.Column;
+import com.wops.receiptsgo.workers.reports.pdf.utils.HeavyHandedReplaceIllegalCharacters;
+
+/**
+ * An immutable matrix of the cells in a report table, in which we evaluate {@link Column#getValue(Object)} for each
+ * accepted row and {@link Column#getFooter(List)} for each column exactly once. Our table generators can then measure,
+ * render, or write these cells as often as they need to without repeating any of this work.
+ *
+ * @param <DataType> the type of each row in this table
+ */
+public final class ReportTable<DataType> {
+
+    private final List<Column<DataType>> columns;
+    private final List<DataType> rows;
+    private final int[] sourceIndices;
+    private final String[][] values;
+    private final String[] footers;
+
+    private ReportTable(@NonNull List<Column<DataType>> columns, @NonNull List<DataType> rows, @NonNull int[] sourceIndices,
+                        @NonNull String[][] values, @Nullable String[] footers) {
+        this.columns = columns;
+        this.rows = rows;
+        this.sourceIndices = sourceIndices;
+        this.values = values;
+        this.footers = footers;
+    }
+
+    /**
+     * Evaluates every cell of a report table
+     *
+     * @param columns        the {@link List} of {@link Column}s in this table
+     * @param list           the {@link List} of {@link DataType} to build the table from
+     * @param filter         an optional {@link Filter}, which determines the rows that we include
+     * @param includeFooters {@code true} if we should evaluate the footer of each column. {@code false} otherwise
+     * @return the resulting {@link ReportTable}
+     */
+    @NonNull
+    public static <DataType> ReportTable<DataType> create(@NonNull List<Column<DataType>> columns, @NonNull List<DataType> list,
+                                                          @Nullable Filter<DataType> filter, boolean includeFooters) {
+        Preconditions.checkNotNull(columns);
+        Preconditions.checkNotNull(list);
+
+        final int columnCount = columns.size();
+        final List<DataType> rows = new ArrayList<>(list.size());
+        final int[] sourceIndices = new int[list.size()];
+        final List<String[]> values = new ArrayList<>(list.size());
+        for (int j = 0; j < list.size(); j++) {
+            final DataType data = list.get(j);
+            if (filter == null || filter.accept(data)) {
+                final String[] rowValues = new String[columnCount];
+                for (int i = 0; i < columnCount; i++) {
+                    rowValues[i] = columns.get(i).getValue(data);
+                }
+                sourceIndices[rows.size()] = j;
+                rows.add(data);
+                values.add(rowValues);
+            }
+        }
+
+        final String[] footers;
+        if (includeFooters) {
+            footers = new String[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                footers[i] = columns.get(i).getFooter(rows);
+            }
+        } else {
+            footers = null;
+        }
+
+        final int[] trimmedSourceIndices = new int[rows.size()];
+        System.arraycopy(sourceIndices, 0, trimmedSourceIndices, 0, rows.size());
+        return new ReportTable<>(Collections.unmodifiableList(new ArrayList<>(columns)), Collections.unmodifiableList(rows),
+                trimmedSourceIndices, values.toArray(new String[rows.size()][]), footers);
+    }
+
+    /**
+     * @return a copy of this table, in which each value and footer has been made safe for our PDF fonts via
+     * {@link HeavyHandedReplaceIllegalCharacters#getSafeString(String)}
+     */
+    @NonNull
+    public ReportTable<DataType> sanitized() {
+        final String[][] safeValues = new String[values.length][];
+        for (int j = 0; j < values.length; j++) {
+            safeValues[j] = new String[values[j].length];
+            for (int i = 0; i < values[j].length; i++) {
+                safeValues[j][i] = HeavyHandedReplaceIllegalCharacters.getSafeString(values[j][i]);
+            }
+        }
+
+        final String[] safeFooters;
+        if (footers != null) {
+            safeFooters = new String[footers.length];
+            for (int i = 0; i < footers.length; i++) {
+                safeFooters[i] = HeavyHandedReplaceIllegalCharacters.getSafeString(footers[i]);
+            }
+        } else {
+            safeFooters = null;
+        }
+        return new ReportTable<>(columns, rows, sourceIndices, safeValues, safeFooters);
+    }
+
+    @NonNull
+    public List<Column<DataType>> getColumns() {
+        return columns;
+    }
+
+    public int getColumnCount() {
+        return columns.size();
+    }
+
+    /**
+     * @return the rows that were accepted by our filter
+     */
+    @NonNull
+    public List<DataType> getRows() {
+        return rows;
+    }
+
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    /**
+     * @param row the index of a row in this table
+     * @return the index of this row in the original (ie unfiltered) list
+     */
+    public int getSourceIndex(int row) {
+        return sourceIndices[row];
+    }
+
+    /**
+     * @param row    the index of a row in this table
+     * @param column the index of a column in this table
+     * @return the value of this cell
+     */
+    public String getValue(int row, int column) {
+        return values[row][column];
+    }
+
+    /**
+     * @return {@code true} if this table includes a footer for each column. {@code false} otherwise
+     */
+    public boolean hasFooters() {
+        return footers != null;
+    }
+
+    /**
+     * @param column the index of a column in this table
+     * @return the footer of this column
+     * @throws IllegalStateException if this table was created without footers
+     */
+    public String getFooter(int column) {
+        Preconditions.checkState(footers != null, "This table does not include any footers");
+        return footers[column];
+    }
+}
@@ -0,0 +1,24 @@
+package com.wops.receiptsgo.workers.reports;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Extends the {@link TableGenerator} contract with a streaming mode, which allows us to write each row of the table
+ * directly to a {@link Writer} via {@link #write(List, Writer)} instead of first building the entire table in memory
+ */
+public interface StreamingTableGenerator<TableType, DataType> extends TableGenerator<TableType, DataType> {
+
+    /**
+     * Writes a report from a {@link List} of {@link DataType} directly to a {@link Writer}. Callers are responsible
+     * for both buffering and closing the {@link Writer}
+     *
+     * @param list a {@link List} of {@link DataType} to build the table from
+     * @param writer the {@link Writer} to stream each row of the table into
+     * @throws IOException if we failed to write to the {@link Writer}
+     */
+    void write(@NonNull List<DataType> list, @NonNull Writer writer) throws IOException;
+}
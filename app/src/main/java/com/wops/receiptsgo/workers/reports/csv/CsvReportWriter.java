@@ -7,9 +7,13 @@ import com.google.common.base.Preconditions;
 import org.apache.commons.io.ByteOrderMark;
 import org.apache.commons.io.IOUtils;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 
 /**
  * After having seen a few instances in which CSV files were failing for foreign languages when attempting
@@ -19,6 +23,9 @@ import java.io.IOException;
  */
 public class CsvReportWriter {
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 16 * 1024;
+
     private final File outputFile;
 
     public CsvReportWriter(@NonNull File outputFile) {
@@ -26,9 +33,27 @@ public class CsvReportWriter {
     }
 
     public void write(@NonNull String csv) throws IOException {
-        try (FileOutputStream fileOutputStream = new FileOutputStream(this.outputFile)) {
+        try (Writer writer = openWriter()) {
+            writer.write(csv);
+        }
+    }
+
+    /**
+     * Opens a buffered, UTF-8 {@link Writer} for our output file (after having first written the byte order mark),
+     * which allows callers to stream the csv contents directly to disk. Callers are responsible for closing it
+     *
+     * @return the {@link Writer} for our output file
+     * @throws IOException if we failed to open the file
+     */
+    @NonNull
+    public Writer openWriter() throws IOException {
+        final FileOutputStream fileOutputStream = new FileOutputStream(this.outputFile);
+        try {
             IOUtils.write(ByteOrderMark.UTF_8.getBytes(), fileOutputStream);
-            IOUtils.write(csv, fileOutputStream, "UTF-8");
+        } catch (IOException e) {
+            IOUtils.closeQuietly(fileOutputStream);
+            throw e;
         }
+        return new BufferedWriter(new OutputStreamWriter(fileOutputStream, UTF_8), BUFFER_SIZE);
     }
 }
@@ -3,11 +3,16 @@ package com.wops.receiptsgo.workers.reports.csv
 import com.wops.receiptsgo.filters.Filter
 import com.wops.receiptsgo.model.Column
 import com.wops.receiptsgo.workers.reports.ReportResourcesManager
+import com.wops.receiptsgo.workers.reports.ReportTable
+import com.wops.receiptsgo.workers.reports.StreamingTableGenerator
 import com.wops.receiptsgo.workers.reports.TableGenerator
+import java.io.StringWriter
+import java.io.Writer
 import java.util.*
 
 /**
- * Implements the [TableGenerator] contract to generate a CSV file as a [String]
+ * Implements the [TableGenerator] contract to generate a CSV file as a [String]. Larger reports should prefer to
+ * use the [write] method instead, which streams each row directly to a [Writer]
  */
 class CsvTableGenerator<DataType> @JvmOverloads constructor(
     private val reportResourceManager: ReportResourcesManager,
@@ -15,77 +20,97 @@ class CsvTableGenerator<DataType> @JvmOverloads constructor(
     private val printHeaders: Boolean,
     private val printFooters: Boolean,
     private val filter: Filter<DataType>? = null
-) : TableGenerator<String, DataType> {
+) : StreamingTableGenerator<String, DataType> {
 
     override fun generate(list: List<DataType>): String {
-        if (list.isNotEmpty()) {
-            val columnCount = columns.size
-            val csvBuilder = StringBuilder("")
+        val writer = StringWriter()
+        write(list, writer)
+        return writer.toString()
+    }
 
-            // Add the header
-            if (printHeaders) {
-                for (i in 0 until columnCount) {
-                    addCell(
-                        csvBuilder,
-                        reportResourceManager.getFlexString(columns[i].headerStringResId),
-                        i == columnCount - 1
-                    )
-                }
-                csvBuilder.append("\n")
+    override fun write(list: List<DataType>, writer: Writer) {
+        if (list.isEmpty()) {
+            return // Just write an empty csv if we don't have any objects
+        }
+        write(ReportTable.create(columns, list, filter, printFooters), writer)
+    }
+
+    /**
+     * Writes a [ReportTable], whose cells have already been evaluated, directly to a [Writer]
+     */
+    fun write(table: ReportTable<DataType>, writer: Writer) {
+        val columnCount = table.columnCount
+        val lastColumnIndex = columnCount - 1
+
+        // Add the header
+        if (printHeaders) {
+            for (i in 0 until columnCount) {
+                writeCell(writer, reportResourceManager.getFlexString(table.columns[i].headerStringResId), i == lastColumnIndex)
             }
+            writer.append(NEW_LINE)
+        }
 
-            // Add each row
-            val filteredList = ArrayList<DataType>()
-            for (j in list.indices) {
-                val data = list[j]
-                if (filter == null || filter.accept(data)) {
-                    for (i in 0 until columnCount) {
-                        addCell(csvBuilder, columns[i].getValue(data), i == columnCount - 1)
-                    }
-                    filteredList.add(data)
-                    csvBuilder.append("\n")
-                }
+        // Add each row
+        for (j in 0 until table.rowCount) {
+            for (i in 0 until columnCount) {
+                writeCell(writer, table.getValue(j, i), i == lastColumnIndex)
             }
+            writer.append(NEW_LINE)
+        }
 
-            // Add the footer
-            if (printFooters) {
-                for (i in 0 until columnCount) {
-                    addCell(csvBuilder, columns[i].getFooter(filteredList), i == columnCount - 1)
-                }
-                csvBuilder.append("\n")
+        // Add the footer
+        if (printFooters && table.hasFooters()) {
+            for (i in 0 until columnCount) {
+                writeCell(writer, table.getFooter(i), i == lastColumnIndex)
             }
-            return csvBuilder.toString()
-        } else {
-            return "" // Just return an empty csv if we don't have any objects
+            writer.append(NEW_LINE)
         }
     }
 
-    private fun addCell(csvBuilder: StringBuilder, value: String?, isLastElement: Boolean) {
-        value?.let {
-            var csvValue = it
-            if (csvValue.contains(QUOTE)) {
-                csvValue = csvValue.replace(QUOTE, ESCAPED_QUOTE)
-            }
-            for (stringToQuote in STRINGS_THAT_MUST_BE_QUOTED) {
-                if (csvValue.contains(stringToQuote)) {
-                    csvValue = QUOTE + csvValue + QUOTE
-                    break
+    private fun writeCell(writer: Writer, value: String?, isLastElement: Boolean) {
+        if (value != null) {
+            if (mustBeQuoted(value)) {
+                // Wrap the value in quotes, escaping any existing quotes as we go
+                writer.append(QUOTE)
+                var start = 0
+                var quoteIndex = value.indexOf(QUOTE)
+                while (quoteIndex >= 0) {
+                    writer.write(value, start, quoteIndex + 1 - start)
+                    writer.append(QUOTE)
+                    start = quoteIndex + 1
+                    quoteIndex = value.indexOf(QUOTE, start)
                 }
+                writer.write(value, start, value.length - start)
+                writer.append(QUOTE)
+            } else {
+                writer.write(value)
             }
-            csvBuilder.append(csvValue)
         }
 
         if (!isLastElement) {
-            // Only append a comma if this is the last element
-            csvBuilder.append(",")
+            // Only append a comma if this isn't the last element
+            writer.append(COMMA)
+        }
+    }
+
+    /**
+     * Checks if a value contains a comma, quote, or new line (including "\r\n") in a single pass
+     */
+    private fun mustBeQuoted(value: String): Boolean {
+        for (i in value.indices) {
+            val character = value[i]
+            if (character == COMMA || character == QUOTE || character == NEW_LINE) {
+                return true
+            }
         }
+        return false
     }
 
     companion object {
 
-        private const val QUOTE = "\""
-        private const val ESCAPED_QUOTE = "\"\""
-        private val STRINGS_THAT_MUST_BE_QUOTED = arrayOf(",", "\"", "\n", "\r\n")
+        private const val QUOTE = '"'
+        private const val COMMA = ','
+        private const val NEW_LINE = '\n'
     }
 
 }
@@ -6,34 +6,55 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.List;
+import java.util.EnumSet;
 
 import com.wops.analytics.log.Logger;
 import com.wops.receiptsgo.date.DateFormatter;
-import com.wops.receiptsgo.model.Distance;
-import com.wops.receiptsgo.model.Receipt;
 import com.wops.receiptsgo.model.Trip;
 import com.wops.receiptsgo.persistence.DatabaseHelper;
+import com.wops.receiptsgo.persistence.database.controllers.grouping.GroupingController;
 import com.wops.receiptsgo.settings.UserPreferenceManager;
+import com.wops.receiptsgo.workers.EmailAssistant;
 import com.wops.receiptsgo.workers.reports.AbstractReport;
 import com.wops.receiptsgo.workers.reports.ReportGenerationException;
 import com.wops.receiptsgo.workers.reports.ReportResourcesManager;
+import com.wops.receiptsgo.workers.reports.ReportSnapshot;
 import com.wops.receiptsgo.workers.reports.pdf.pdfbox.PdfBoxReportFile;
 import wb.android.storage.StorageManager;
 
 public abstract class PdfBoxAbstractReport extends AbstractReport {
 
+    private final GroupingController groupingController;
+
     public PdfBoxAbstractReport(@NonNull ReportResourcesManager reportResourcesManager,
                                 @NonNull DatabaseHelper db,
                                 @NonNull UserPreferenceManager preferences,
                                 @NonNull StorageManager storageManager,
                                 @NonNull DateFormatter dateFormatter) {
         super(reportResourcesManager, db, preferences, storageManager, dateFormatter);
+        this.groupingController = new GroupingController(db, reportResourcesManager.getLocalizedContext(), preferences);
     }
 
     @NonNull
     @Override
     public File generate(@NonNull Trip trip) throws ReportGenerationException {
+        final ReportSnapshot snapshot = ReportSnapshot.load(getDatabase(), groupingController, getPreferences(), trip,
+                getDatabase().getReceiptsTable().getBlocking(trip, true), getDatabase().getDistanceTable().getBlocking(trip, true),
+                EnumSet.of(getEmailOption()));
+        return generate(snapshot);
+    }
+
+    /**
+     * Builds this report from a previously loaded {@link ReportSnapshot}, allowing multiple reports to share the same
+     * data without re-querying it
+     *
+     * @param snapshot the {@link ReportSnapshot} to generate, which must include the data for {@link #getEmailOption()}
+     * @return a file containing the report
+     * @throws ReportGenerationException if we failed to generate the report
+     */
+    @NonNull
+    public File generate(@NonNull ReportSnapshot snapshot) throws ReportGenerationException {
+        final Trip trip = snapshot.getTrip();
         final String outputFileName = getFileName(trip);
         FileOutputStream pdfStream = null;
 
@@ -42,14 +63,13 @@ public abstract class PdfBoxAbstractReport extends AbstractReport {
 
             pdfStream = getStorageManager().getFOS(trip.getDirectory(), outputFileName);
 
-            PdfBoxReportFile pdfBoxReportFile = new PdfBoxReportFile(getReportResourcesManager(), getPreferences(), getDateFormatter());
+            // Note: We always stream, since smaller reports fit within our in-memory limit and are unaffected by this
+            PdfBoxReportFile pdfBoxReportFile = new PdfBoxReportFile(getReportResourcesManager(), getPreferences(), getDateFormatter(), true);
 
-            createSections(trip, pdfBoxReportFile);
+            createSections(snapshot, pdfBoxReportFile);
 
-            final List<Receipt> receipts = new ArrayList<>(getDatabase().getReceiptsTable().getBlocking(trip, false));
-            final List<Distance> distances = new ArrayList<>(getDatabase().getDistanceTable().getBlocking(trip, false));
-
-            pdfBoxReportFile.writeFile(pdfStream, trip, receipts, distances);
+            pdfBoxReportFile.writeFile(pdfStream, trip, new ArrayList<>(snapshot.getAscendingReceipts()),
+                    new ArrayList<>(snapshot.getAscendingDistances()));
 
             return getStorageManager().getFile(trip.getDirectory(), outputFileName);
 
@@ -64,7 +84,13 @@ public abstract class PdfBoxAbstractReport extends AbstractReport {
 
     }
 
-    public abstract void createSections(@NonNull Trip trip, PdfBoxReportFile pdfBoxReportFile);
+    public abstract void createSections(@NonNull ReportSnapshot snapshot, PdfBoxReportFile pdfBoxReportFile);
+
+    /**
+     * @return the {@link EmailAssistant.EmailOptions} that this report generates
+     */
+    @NonNull
+    protected abstract EmailAssistant.EmailOptions getEmailOption();
 
     protected String getFileName(Trip trip) {
         return trip.getDirectory().getName() + ".pdf";
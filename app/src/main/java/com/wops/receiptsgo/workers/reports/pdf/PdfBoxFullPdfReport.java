@@ -14,19 +14,19 @@ import com.wops.receiptsgo.model.Trip;
 import com.wops.receiptsgo.model.impl.columns.categories.CategoryColumnDefinitions;
 import com.wops.receiptsgo.model.impl.columns.distance.DistanceColumnDefinitions;
 import com.wops.receiptsgo.persistence.DatabaseHelper;
-import com.wops.receiptsgo.persistence.database.controllers.grouping.GroupingController;
 import com.wops.receiptsgo.persistence.database.controllers.grouping.results.CategoryGroupingResult;
 import com.wops.receiptsgo.persistence.database.controllers.grouping.results.SumCategoryGroupingResult;
 import com.wops.receiptsgo.purchases.wallet.PurchaseWallet;
 import com.wops.receiptsgo.settings.UserPreferenceManager;
 import com.wops.receiptsgo.settings.catalog.UserPreference;
+import com.wops.receiptsgo.workers.EmailAssistant;
 import com.wops.receiptsgo.workers.reports.ReportResourcesManager;
+import com.wops.receiptsgo.workers.reports.ReportSnapshot;
 import com.wops.receiptsgo.workers.reports.pdf.pdfbox.PdfBoxReportFile;
 import wb.android.storage.StorageManager;
 
 public class PdfBoxFullPdfReport extends PdfBoxAbstractReport {
 
-    private final GroupingController groupingController;
     private final PurchaseWallet purchaseWallet;
 
     public PdfBoxFullPdfReport(ReportResourcesManager reportResourcesManager,
@@ -36,23 +36,24 @@ public class PdfBoxFullPdfReport extends PdfBoxAbstractReport {
                                PurchaseWallet purchaseWallet,
                                DateFormatter dateFormatter) {
         super(reportResourcesManager, db, preferences, storageManager, dateFormatter);
-        this.groupingController = new GroupingController(db, reportResourcesManager.getLocalizedContext(), preferences);
         this.purchaseWallet = purchaseWallet;
     }
 
     @Override
-    public void createSections(@NonNull Trip trip, PdfBoxReportFile pdfBoxReportFile) {
+    public void createSections(@NonNull ReportSnapshot snapshot, PdfBoxReportFile pdfBoxReportFile) {
+        final Trip trip = snapshot.getTrip();
+
         // Receipts Table
-        final List<Receipt> receipts = new ArrayList<>(getDatabase().getReceiptsTable().getBlocking(trip, false));
-        final List<Column<Receipt>> columns = getDatabase().getPDFTable().get().blockingGet();
+        final List<Receipt> receipts = new ArrayList<>(snapshot.getAscendingReceipts());
+        final List<Column<Receipt>> columns = new ArrayList<>(snapshot.getPdfColumns());
 
         // Distance Table
         final ColumnDefinitions<Distance> distanceColumnDefinitions = new DistanceColumnDefinitions(getReportResourcesManager(), getPreferences(), getDateFormatter(), true);
-        final List<Distance> distances = new ArrayList<>(getDatabase().getDistanceTable().getBlocking(trip, false));
+        final List<Distance> distances = new ArrayList<>(snapshot.getAscendingDistances());
         final List<Column<Distance>> distanceColumns = distanceColumnDefinitions.getAllColumns();
 
         // Categories Summation Table
-        final List<SumCategoryGroupingResult> categories = groupingController.getSummationByCategory(trip).toList().blockingGet();
+        final List<SumCategoryGroupingResult> categories = new ArrayList<>(snapshot.getCategorySummations());
 
         boolean isMultiCurrency = false;
         for (SumCategoryGroupingResult categorySummation : categories) {
@@ -68,7 +69,7 @@ public class PdfBoxFullPdfReport extends PdfBoxAbstractReport {
                 .getAllColumns();
 
         // Grouping by Category Receipts Tables
-        final List<CategoryGroupingResult> groupingResults = groupingController.getReceiptsGroupedByCategory(trip).toList().blockingGet();
+        final List<CategoryGroupingResult> groupingResults = new ArrayList<>(snapshot.getCategoryGroupings());
 
         pdfBoxReportFile.addSection(pdfBoxReportFile.createReceiptsTableSection(trip,
                 receipts, columns, distances, distanceColumns, categories, categoryColumns,
@@ -76,4 +77,10 @@ public class PdfBoxFullPdfReport extends PdfBoxAbstractReport {
         pdfBoxReportFile.addSection(pdfBoxReportFile.createReceiptsImagesSection(trip, receipts, distances));
     }
 
+    @NonNull
+    @Override
+    protected EmailAssistant.EmailOptions getEmailOption() {
+        return EmailAssistant.EmailOptions.PDF_FULL;
+    }
+
 }
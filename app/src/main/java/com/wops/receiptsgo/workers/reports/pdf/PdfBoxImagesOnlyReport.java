@@ -3,15 +3,14 @@ package com.wops.receiptsgo.workers.reports.pdf;
 import androidx.annotation.NonNull;
 
 import java.util.ArrayList;
-import java.util.List;
 
 import com.wops.receiptsgo.date.DateFormatter;
-import com.wops.receiptsgo.model.Distance;
-import com.wops.receiptsgo.model.Receipt;
 import com.wops.receiptsgo.model.Trip;
 import com.wops.receiptsgo.persistence.DatabaseHelper;
 import com.wops.receiptsgo.settings.UserPreferenceManager;
+import com.wops.receiptsgo.workers.EmailAssistant;
 import com.wops.receiptsgo.workers.reports.ReportResourcesManager;
+import com.wops.receiptsgo.workers.reports.ReportSnapshot;
 import com.wops.receiptsgo.workers.reports.pdf.pdfbox.PdfBoxReportFile;
 import wb.android.storage.StorageManager;
 
@@ -26,10 +25,15 @@ public class PdfBoxImagesOnlyReport extends PdfBoxAbstractReport {
     }
 
     @Override
-    public void createSections(@NonNull Trip trip, @NonNull PdfBoxReportFile pdfBoxReportFile) {
-        final List<Receipt> receipts = new ArrayList<>(getDatabase().getReceiptsTable().getBlocking(trip, false));
-        final List<Distance> distances = new ArrayList<>(getDatabase().getDistanceTable().getBlocking(trip, false));
-        pdfBoxReportFile.addSection(pdfBoxReportFile.createReceiptsImagesSection(trip, receipts, distances));
+    public void createSections(@NonNull ReportSnapshot snapshot, @NonNull PdfBoxReportFile pdfBoxReportFile) {
+        pdfBoxReportFile.addSection(pdfBoxReportFile.createReceiptsImagesSection(snapshot.getTrip(),
+                new ArrayList<>(snapshot.getAscendingReceipts()), new ArrayList<>(snapshot.getAscendingDistances())));
+    }
+
+    @NonNull
+    @Override
+    protected EmailAssistant.EmailOptions getEmailOption() {
+        return EmailAssistant.EmailOptions.PDF_IMAGES_ONLY;
     }
 
     @Override
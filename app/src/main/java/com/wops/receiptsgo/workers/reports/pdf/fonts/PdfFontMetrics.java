@@ -0,0 +1,295 @@
+package com.wops.receiptsgo.workers.reports.pdf.fonts;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.google.common.base.Preconditions;
+import com.tom_roush.pdfbox.pdmodel.font.PDFont;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+/**
+ * Caches the text measurements for a particular {@link PdfFontSpec}. PDFBox encodes each string and walks the glyph
+ * tables of our font whenever we ask it for a width, and we otherwise measure the same cells several times while
+ * building a report (ie once to size our columns, once to measure each row, and once more to render it).
+ * <p>
+ * As {@link PDFont#getStringWidth(String)} simply sums the advance of each encoded code point, we instead look up the
+ * advance of each code point once and then sum these ourselves (in the same order, so our results remain identical).
+ * We additionally memoize the widths of complete strings and the lines that we break each string into for a given
+ * width, since our table cells are measured and then rendered with the same values.
+ * </p>
+ * <p>
+ * Each {@link PdfFontSpec} (and hence each report) owns its own instance of this class, so these caches are released
+ * alongside the document that they were created for.
+ * </p>
+ */
+public class PdfFontMetrics {
+
+    private static final int MAX_CACHED_STRING_WIDTHS = 4096;
+    private static final int MAX_CACHED_LAYOUTS = 1024;
+
+    /**
+     * We store the advances of the Latin-1 code points in an array, since these account for the bulk of our text
+     */
+    private static final int DIRECT_ADVANCES_SIZE = 256;
+    private static final int BASIC_LATIN_END = 0x7F;
+    private static final int REPLACEMENT_CHARACTER = 0xFFFD;
+
+    private static final float UNMEASURED = Float.NaN;
+    private static final float UNENCODABLE = -1f;
+
+    private final PDFont font;
+    private final int size;
+
+    private final float[] directAdvances = new float[DIRECT_ADVANCES_SIZE];
+    private final Map<Integer, Float> otherAdvances = new HashMap<>();
+    private final Map<String, Float> stringWidths = new BoundedCache<>(MAX_CACHED_STRING_WIDTHS);
+    private final Map<LayoutKey, List<String>> layouts = new BoundedCache<>(MAX_CACHED_LAYOUTS);
+
+    private Float fontHeight;
+
+    public PdfFontMetrics(@NonNull PDFont font, int size) {
+        this.font = Preconditions.checkNotNull(font);
+        this.size = size;
+        Arrays.fill(directAdvances, UNMEASURED);
+    }
+
+    /**
+     * Returns the width of a string, when rendered with this font. As with our previous approach, strings that this
+     * font cannot encode are measured as if each non-latin code point were a pair of "?"/tofu characters
+     *
+     * @param text the text to measure
+     * @return the width of this text
+     * @throws IOException              if we failed to read the font
+     * @throws IllegalArgumentException if we cannot measure this text, even with our replacement characters
+     */
+    public synchronized float getStringWidth(@NonNull String text) throws IOException {
+        final Float cachedWidth = stringWidths.get(text);
+        if (cachedWidth != null) {
+            return cachedWidth;
+        }
+
+        final Measurement measurement = new Measurement();
+        measurement.add(text);
+        final float width = measurement.getWidth();
+        stringWidths.put(text, width);
+        return width;
+    }
+
+    /**
+     * Returns the min string width to display the string broken up into various lines by spaces, which is the width
+     * of the widest word
+     *
+     * @param text the text to measure
+     * @return the width of the widest word in this text
+     * @throws IOException if we failed to read the font
+     */
+    public synchronized float getMaxWordWidth(@NonNull String text) throws IOException {
+        float max = 0.0f;
+        final StringTokenizer tokenizer = new StringTokenizer(text, " ");
+        while (tokenizer.hasMoreTokens()) {
+            final Measurement measurement = new Measurement();
+            measurement.add(tokenizer.nextToken());
+            final float width = measurement.getWidth();
+            if (width > max) {
+                max = width;
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return the full height of this font (including the bounding box)
+     */
+    public synchronized float getFontHeight() {
+        if (fontHeight == null) {
+            fontHeight = font.getFontDescriptor().getFontBoundingBox().getHeight() / 1000 * size;
+        }
+        return fontHeight;
+    }
+
+    /**
+     * Breaks a string up into lines (at its spaces), such that each line fits within a particular width where
+     * possible. Words that are wider than this are placed on a line of their own.
+     *
+     * @param text         the text to break up
+     * @param maxLineWidth the maximum width of each line
+     * @return an unmodifiable {@link List} of the lines for this text
+     * @throws IOException if we failed to read the font
+     */
+    @NonNull
+    public synchronized List<String> getLines(@NonNull String text, float maxLineWidth) throws IOException {
+        final LayoutKey key = new LayoutKey(text, maxLineWidth);
+        final List<String> cachedLines = layouts.get(key);
+        if (cachedLines != null) {
+            return cachedLines;
+        }
+
+        final List<String> lines = new ArrayList<>();
+        final StringTokenizer tokenizer = new StringTokenizer(text, " ");
+        StringBuilder sb = new StringBuilder();
+        Measurement lineMeasurement = new Measurement();
+        while (tokenizer.hasMoreTokens()) {
+            final String token = tokenizer.nextToken();
+            final boolean isFirstToken = sb.length() == 0;
+            sb.append(token).append(" ");
+
+            // Note: We extend the measurement of our current line instead of re-measuring it from the start
+            lineMeasurement.add(token);
+            lineMeasurement.add(" ");
+            if (lineMeasurement.getWidth() > maxLineWidth) {
+                if (!isFirstToken) {
+                    // Remove the token (i.e. last word) from the current line and place it as the start of the next
+                    lines.add(sb.substring(0, sb.length() - token.length() - 1));
+                    sb = new StringBuilder();
+                    sb.append(token).append(" ");
+                    lineMeasurement = new Measurement();
+                    lineMeasurement.add(token);
+                    lineMeasurement.add(" ");
+                } else {
+                    // If the token takes up the entire line, use it as the entire line
+                    lines.add(sb.toString().trim());
+                    sb = new StringBuilder();
+                    lineMeasurement = new Measurement();
+                }
+            }
+        }
+        if (sb.length() > 0) {
+            lines.add(sb.toString().trim());
+        }
+
+        final List<String> result = Collections.unmodifiableList(lines);
+        layouts.put(key, result);
+        return result;
+    }
+
+    /**
+     * Returns the advance of a single code point in glyph space (ie before scaling it by our font size), or
+     * {@link #UNENCODABLE} if our font cannot encode it
+     */
+    private float getAdvance(int codePoint) throws IOException {
+        if (codePoint < DIRECT_ADVANCES_SIZE) {
+            float advance = directAdvances[codePoint];
+            if (Float.isNaN(advance)) {
+                advance = measureAdvance(codePoint);
+                directAdvances[codePoint] = advance;
+            }
+            return advance;
+        } else {
+            Float advance = otherAdvances.get(codePoint);
+            if (advance == null) {
+                advance = measureAdvance(codePoint);
+                otherAdvances.put(codePoint, advance);
+            }
+            return advance;
+        }
+    }
+
+    private float measureAdvance(int codePoint) throws IOException {
+        try {
+            return font.getStringWidth(new String(Character.toChars(codePoint)));
+        } catch (IllegalArgumentException e) {
+            return UNENCODABLE;
+        }
+    }
+
+    /**
+     * Accumulates the width of a string, one code point at a time. We track both the width of the original text and
+     * the width of our "tofu" replacement, so we can fall back to the latter without having to measure anything again
+     */
+    private final class Measurement {
+
+        private float width = 0;
+        private float replacementWidth = 0;
+        private boolean isEncodable = true;
+        private boolean isReplacementEncodable = true;
+
+        void add(@NonNull String text) throws IOException {
+            for (int i = 0; i < text.length(); ) {
+                final int codePoint = text.codePointAt(i);
+                final float advance = getAdvance(codePoint);
+                if (advance == UNENCODABLE) {
+                    isEncodable = false;
+                } else {
+                    width += advance;
+                }
+
+                if (codePoint <= BASIC_LATIN_END) {
+                    addReplacement(advance);
+                } else {
+                    final float replacementAdvance = getAdvance(REPLACEMENT_CHARACTER);
+                    addReplacement(replacementAdvance);
+                    addReplacement(replacementAdvance);
+                }
+                i += Character.charCount(codePoint);
+            }
+        }
+
+        private void addReplacement(float advance) {
+            if (advance == UNENCODABLE) {
+                isReplacementEncodable = false;
+            } else {
+                replacementWidth += advance;
+            }
+        }
+
+        float getWidth() {
+            if (isEncodable) {
+                return width * size / 1000F;
+            } else if (isReplacementEncodable) {
+                return replacementWidth * size / 1000F;
+            } else {
+                throw new IllegalArgumentException("Unable to encode this text with our font or its replacement characters");
+            }
+        }
+    }
+
+    @VisibleForTesting
+    static final class LayoutKey {
+
+        private final String text;
+        private final float maxLineWidth;
+
+        LayoutKey(@NonNull String text, float maxLineWidth) {
+            this.text = text;
+            this.maxLineWidth = maxLineWidth;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof LayoutKey)) return false;
+
+            final LayoutKey that = (LayoutKey) o;
+            return Float.compare(that.maxLineWidth, maxLineWidth) == 0 && text.equals(that.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * text.hashCode() + Float.floatToIntBits(maxLineWidth);
+        }
+    }
+
+    private static final class BoundedCache<K, V> extends LinkedHashMap<K, V> {
+
+        private final int maxEntries;
+
+        BoundedCache(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxEntries;
+        }
+    }
+}
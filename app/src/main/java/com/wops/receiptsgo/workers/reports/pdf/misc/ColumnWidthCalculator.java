@@ -5,10 +5,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 import com.wops.receiptsgo.model.Column;
+import com.wops.receiptsgo.workers.reports.ReportTable;
 import com.wops.receiptsgo.workers.reports.pdf.fonts.PdfFontSpec;
 import com.wops.receiptsgo.workers.reports.pdf.fonts.PdfFontStyle;
 import com.wops.receiptsgo.workers.reports.pdf.pdfbox.PdfBoxContext;
-import com.wops.receiptsgo.workers.reports.pdf.utils.HeavyHandedReplaceIllegalCharacters;
 import com.wops.receiptsgo.workers.reports.pdf.utils.PdfBoxUtils;
 
 
@@ -16,7 +16,7 @@ public class ColumnWidthCalculator<DataType> {
 
     private static final float EPSILON = 0.00001f;
 
-    private final List<DataType> mList;
+    private final ReportTable<DataType> mTable;
     private final List<Column<DataType>> mColumns;
     private final float mAvailableWidth;
     private final float mCellPadding;
@@ -24,20 +24,18 @@ public class ColumnWidthCalculator<DataType> {
 
     /**
      * @param pdfBoxContext
-     * @param list
-     * @param columns
+     * @param table          the sanitized {@link ReportTable} to measure
      * @param availableWidth
      * @param cellPadding
      */
     public ColumnWidthCalculator(PdfBoxContext pdfBoxContext,
-                                 List<DataType> list,
-                                 List<Column<DataType>> columns,
+                                 ReportTable<DataType> table,
                                  float availableWidth,
                                  float cellPadding) {
 
         this.pdfBoxContext = pdfBoxContext;
-        mList = list;
-        mColumns = columns;
+        mTable = table;
+        mColumns = table.getColumns();
         mAvailableWidth = availableWidth;
         mCellPadding = cellPadding;
     }
@@ -51,7 +49,7 @@ public class ColumnWidthCalculator<DataType> {
         ArrayList<ColumnAttributes> attrs = new ArrayList<ColumnAttributes>(mColumns.size());
 
         for (int i = 0; i < mColumns.size(); i++) {
-            attrs.add(new ColumnAttributes(pdfBoxContext.getString(mColumns.get(i).getHeaderStringResId()), mList, i));
+            attrs.add(new ColumnAttributes(pdfBoxContext.getString(mColumns.get(i).getHeaderStringResId()), i));
         }
 
         // TOO MANY COLUMNS CHECK
@@ -156,7 +154,7 @@ public class ColumnWidthCalculator<DataType> {
         float mContentMaxWidth;
         boolean mHeaderBreakable;
 
-        public ColumnAttributes(String header, List<DataType> list, int i) throws IOException {
+        public ColumnAttributes(String header, int i) throws IOException {
 
             final PdfFontSpec headerFont = pdfBoxContext.getFontManager().getFont(PdfFontStyle.TableHeader);
             final PdfFontSpec contentFont = pdfBoxContext.getFontManager().getFont(PdfFontStyle.Default);
@@ -169,8 +167,8 @@ public class ColumnWidthCalculator<DataType> {
             float maxOfMaxWordWidths = 0.0f;    // the global max of the
 
 
-            for (DataType dataType : list) {
-                final String value = HeavyHandedReplaceIllegalCharacters.getSafeString(mColumns.get(i).getValue(dataType));
+            for (int j = 0; j < mTable.getRowCount(); j++) {
+                final String value = mTable.getValue(j, i);
 
                 float vWidth = PdfBoxUtils.getStringWidth(value, contentFont);
                 float vMaxWordWidth = PdfBoxUtils.getMaxWordWidth(value, contentFont);
@@ -190,7 +188,7 @@ public class ColumnWidthCalculator<DataType> {
             // For the footer, we measure the max length of the largest string without a space
             // We do this as a means of preferring that the footer has page breaks in it's text (especially for currency lists)
             // rather than performing breaks on the main content
-            final String footer = HeavyHandedReplaceIllegalCharacters.getSafeString(mColumns.get(i).getFooter(list));
+            final String footer = mTable.hasFooters() ? mTable.getFooter(i) : "";
             final String[] footerSplitByWords = footer.trim().split("\\s+");
             for (String footerSplitByWord : footerSplitByWords) {
                 float vWidth = PdfBoxUtils.getStringWidth(footerSplitByWord, contentFont);
@@ -5,9 +5,7 @@ import androidx.annotation.NonNull;
 import com.tom_roush.harmony.awt.AWTColor;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.StringTokenizer;
 
 import com.wops.receiptsgo.workers.reports.pdf.utils.PdfBoxUtils;
 import com.wops.receiptsgo.workers.reports.pdf.fonts.PdfFontSpec;
@@ -34,30 +32,8 @@ public class FixedWidthTextCell implements FixedWidthCell {
     }
 
     private void breakUpString(String text) throws IOException {
-        lines = new ArrayList<>();
-
-        StringTokenizer tokenizer = new StringTokenizer(text, " ");
-        StringBuilder sb = new StringBuilder();
-        while (tokenizer.hasMoreTokens()) {
-            String token = tokenizer.nextToken();
-            sb.append(token).append(" ");
-            String currentLine = sb.toString();
-            if (PdfBoxUtils.getStringWidth(currentLine, mFontSpec) > mWidth - mCellPadding * 2) {
-                if (sb.lastIndexOf(token) > 0) {
-                    // Remove the token (i.e. last word) from the current line and place it as the start of the next
-                    lines.add(sb.substring(0, sb.lastIndexOf(token)));
-                    sb = new StringBuilder();
-                    sb.append(token).append(" ");
-                } else {
-                    // If the token takes up the entire line, use it as the entire line
-                    lines.add(sb.toString().trim());
-                    sb = new StringBuilder();
-                }
-            }
-        }
-        if (!sb.toString().isEmpty()) {
-            lines.add(sb.toString().trim());
-        }
+        // Note: Our metrics cache these lines, so we can re-use them when the same text is rendered at this width
+        lines = mFontSpec.getMetrics().getLines(text, mWidth - mCellPadding * 2);
     }
 
 
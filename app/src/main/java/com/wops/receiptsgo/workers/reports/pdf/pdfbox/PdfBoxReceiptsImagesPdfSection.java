@@ -14,7 +14,7 @@ import com.wops.receiptsgo.model.Receipt;
 import com.wops.receiptsgo.model.Trip;
 import com.wops.receiptsgo.settings.UserPreferenceManager;
 import com.wops.analytics.log.Logger;
-import com.wops.receiptsgo.workers.reports.pdf.renderer.Renderer;
+import com.wops.receiptsgo.workers.reports.pdf.renderer.imagex.ImagePreparationPipeline;
 import com.wops.receiptsgo.workers.reports.pdf.renderer.impl.PdfGridGenerator;
 
 
@@ -45,17 +45,18 @@ public class PdfBoxReceiptsImagesPdfSection extends PdfBoxSection {
         float availableHeight = pdfBoxContext.getPageSize().getHeight() - 2 * pdfBoxContext.getPageMarginVertical()
                 - pageDecorations.getHeaderHeight() - pageDecorations.getFooterHeight();
 
-        final PdfGridGenerator gridGenerator = new PdfGridGenerator(pdfBoxContext, pdDocument, new LegacyReceiptFilter(userPreferenceManager),
-                pageDecorations, availableWidth, availableHeight);
-
-        final List<Renderer> renderers = gridGenerator.generate(receipts);
-        for (final Renderer renderer : renderers) {
-            Logger.debug(this, "Performing measure of {} at {}.", renderer.getClass().getSimpleName(), System.currentTimeMillis());
-            renderer.measure();
-        }
-        for (final Renderer renderer : renderers) {
-            Logger.debug(this, "Performing render of {} at {}.", renderer.getClass().getSimpleName(), System.currentTimeMillis());
-            renderer.render(writer);
+        // Note: Our pipeline prepares each image on a background thread, while we lay out and render our pages here
+        try (ImagePreparationPipeline imagePreparationPipeline = new ImagePreparationPipeline(pdfBoxContext.getAndroidContext())) {
+            final PdfGridGenerator gridGenerator = new PdfGridGenerator(pdfBoxContext, pdDocument, new LegacyReceiptFilter(userPreferenceManager),
+                    pageDecorations, availableWidth, availableHeight, imagePreparationPipeline);
+
+            // Note: We measure and render each page as soon as it's generated, so we only ever hold a single page in memory
+            gridGenerator.generate(receipts, renderer -> {
+                Logger.debug(this, "Performing measure of {} at {}.", renderer.getClass().getSimpleName(), System.currentTimeMillis());
+                renderer.measure();
+                Logger.debug(this, "Performing render of {} at {}.", renderer.getClass().getSimpleName(), System.currentTimeMillis());
+                renderer.render(writer);
+            });
         }
     }
 }
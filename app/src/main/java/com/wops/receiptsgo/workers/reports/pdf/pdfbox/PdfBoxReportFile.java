@@ -1,8 +1,11 @@
 package com.wops.receiptsgo.workers.reports.pdf.pdfbox;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
 
 import com.google.common.base.Preconditions;
+import com.hadisatrio.optional.Optional;
+import com.tom_roush.pdfbox.io.MemoryUsageSetting;
 import com.tom_roush.pdfbox.pdmodel.PDDocument;
 
 import java.io.IOException;
@@ -27,6 +30,12 @@ import com.wops.receiptsgo.workers.reports.pdf.fonts.PdfFontManager;
 
 public class PdfBoxReportFile implements PdfReportFile, PdfBoxSectionFactory {
 
+    /**
+     * When streaming, this is the number of bytes of our document streams (eg embedded images) that we'll hold in
+     * memory before spilling the rest to a scratch file on disk
+     */
+    private static final long STREAMING_MAX_MAIN_MEMORY_BYTES = 8 * 1024 * 1024;
+
     private final DefaultPdfBoxContext pdfBoxContext;
     private final ReportResourcesManager reportResourcesManager;
     private final PDDocument pdDocument;
@@ -35,10 +44,51 @@ public class PdfBoxReportFile implements PdfReportFile, PdfBoxSectionFactory {
     public PdfBoxReportFile(@NonNull ReportResourcesManager reportResourcesManager,
                             @NonNull UserPreferenceManager preferences,
                             @NonNull DateFormatter dateFormatter) throws IOException {
+        this(reportResourcesManager, preferences, dateFormatter, false);
+    }
+
+    /**
+     * @param reportResourcesManager the {@link ReportResourcesManager} for this report
+     * @param preferences            the {@link UserPreferenceManager} for this report
+     * @param dateFormatter          the {@link DateFormatter} for this report
+     * @param streaming              {@code true} if we should limit the amount of the document that we hold in
+     *                               memory, spilling its streams (eg our embedded images) to a scratch file in our
+     *                               cache directory instead. This allows us to build reports with hundreds of
+     *                               images without exhausting our heap. {@code false} to keep the whole document in
+     *                               memory
+     * @throws IOException if we failed to create our document
+     */
+    public PdfBoxReportFile(@NonNull ReportResourcesManager reportResourcesManager,
+                            @NonNull UserPreferenceManager preferences,
+                            @NonNull DateFormatter dateFormatter,
+                            boolean streaming) throws IOException {
+        this(reportResourcesManager, preferences, dateFormatter, streaming ? Optional.of(STREAMING_MAX_MAIN_MEMORY_BYTES) : Optional.<Long>absent());
+    }
+
+    /**
+     * @param reportResourcesManager      the {@link ReportResourcesManager} for this report
+     * @param preferences                 the {@link UserPreferenceManager} for this report
+     * @param dateFormatter               the {@link DateFormatter} for this report
+     * @param streamingMaxMainMemoryBytes the number of bytes of our document streams to hold in memory before spilling
+     *                                    the rest to a scratch file or {@link Optional#absent()} to keep the whole
+     *                                    document in memory
+     * @throws IOException if we failed to create our document
+     */
+    @VisibleForTesting
+    public PdfBoxReportFile(@NonNull ReportResourcesManager reportResourcesManager,
+                            @NonNull UserPreferenceManager preferences,
+                            @NonNull DateFormatter dateFormatter,
+                            @NonNull Optional<Long> streamingMaxMainMemoryBytes) throws IOException {
 
         this.reportResourcesManager = Preconditions.checkNotNull(reportResourcesManager);
 
-        pdDocument = new PDDocument();
+        if (streamingMaxMainMemoryBytes.isPresent()) {
+            final MemoryUsageSetting memoryUsageSetting = MemoryUsageSetting.setupMixed(streamingMaxMainMemoryBytes.get())
+                    .setTempDir(reportResourcesManager.getLocalizedContext().getCacheDir());
+            pdDocument = new PDDocument(memoryUsageSetting);
+        } else {
+            pdDocument = new PDDocument();
+        }
         sections = new ArrayList<>();
 
         final PdfColorManager colorManager = new PdfColorManager();
@@ -69,6 +119,15 @@ public class PdfBoxReportFile implements PdfReportFile, PdfBoxSectionFactory {
         }
     }
 
+    /**
+     * @return the {@link PDDocument} that we're building
+     */
+    @VisibleForTesting
+    @NonNull
+    public PDDocument getDocument() {
+        return pdDocument;
+    }
+
     public void addSection(PdfBoxSection section) {
         sections.add(section);
     }
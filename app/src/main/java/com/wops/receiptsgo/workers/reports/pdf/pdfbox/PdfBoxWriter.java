@@ -11,8 +11,6 @@ import com.tom_roush.pdfbox.pdmodel.graphics.image.PDImageXObject;
 import com.tom_roush.harmony.awt.AWTColor;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 
 import com.wops.receiptsgo.workers.reports.pdf.colors.PdfColorStyle;
 import com.wops.receiptsgo.workers.reports.pdf.fonts.PdfFontSpec;
@@ -30,7 +28,6 @@ public class PdfBoxWriter {
     private final PDDocument mDocument;
     private final PdfBoxContext mContext;
     private final PdfBoxPageDecorations mPageDecorations;
-    private final List<PDPage> mPages;
 
     private float currentYPosition;
     private float topOfPageYPosition = -1;
@@ -43,11 +40,11 @@ public class PdfBoxWriter {
         mDocument = doc;
         mContext = context;
         mPageDecorations = pageDecorations;
-        mPages = new ArrayList<>();
     }
 
     /**
-     * Creates a new PDF page with the decorated header and footer
+     * Creates a new PDF page with the decorated header and footer. Our previous page (if any) is flushed at this point,
+     * so we no longer hold a reference to its content or any images that were drawn on it
      *
      * @throws IOException if this operation fails
      */
@@ -56,8 +53,10 @@ public class PdfBoxWriter {
             contentStream.close();
         }
 
+        // Note: We add each page to our document immediately, allowing its streams to be spilled to the document's
+        // scratch file (if configured) instead of holding every page until we're done
         PDPage page = new PDPage(mContext.getPageSize());
-        mPages.add(page);
+        mDocument.addPage(page);
         contentStream = new PDPageContentStream(mDocument, page);
         mPageDecorations.writeHeader(contentStream);
         currentYPosition = page.getMediaBox().getHeight() - mContext.getPageMarginVertical() - mPageDecorations.getHeaderHeight();
@@ -124,17 +123,14 @@ public class PdfBoxWriter {
     }
 
     /**
-     * Writes the file and closes our stream
+     * Flushes our final page and closes our stream
      *
      * @throws IOException if we fail to write this item
      */
     public void writeAndClose() throws IOException {
         if (contentStream != null) {
             contentStream.close();
-        }
-
-        for (PDPage page : mPages) {
-            mDocument.addPage(page);
+            contentStream = null;
         }
     }
 
@@ -4,6 +4,7 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.google.common.base.Preconditions;
 import com.tom_roush.pdfbox.pdmodel.PDDocument;
@@ -11,6 +12,7 @@ import com.tom_roush.pdfbox.pdmodel.graphics.image.JPEGFactory;
 import com.tom_roush.pdfbox.pdmodel.graphics.image.LosslessFactory;
 import com.tom_roush.pdfbox.pdmodel.graphics.image.PDImageXObject;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -22,15 +24,36 @@ public class ImagePDImageXFactory implements PDImageXFactory {
     private final Context context;
     private final PDDocument pdDocument;
     private final File file;
+    private final ImagePreparationPipeline imagePreparationPipeline;
 
     public ImagePDImageXFactory(@NonNull Context context, @NonNull PDDocument pdDocument, @NonNull File file) {
+        this(context, pdDocument, file, null);
+    }
+
+    /**
+     * @param context                  the application {@link Context}
+     * @param pdDocument               the {@link PDDocument} that we'll embed this image in
+     * @param file                     the image {@link File}
+     * @param imagePreparationPipeline an optional {@link ImagePreparationPipeline}, which has already been asked to
+     *                                 prepare this image in the background
+     */
+    public ImagePDImageXFactory(@NonNull Context context, @NonNull PDDocument pdDocument, @NonNull File file,
+                                @Nullable ImagePreparationPipeline imagePreparationPipeline) {
         this.context = Preconditions.checkNotNull(context.getApplicationContext());
         this.pdDocument = Preconditions.checkNotNull(pdDocument);
         this.file = Preconditions.checkNotNull(file);
+        this.imagePreparationPipeline = imagePreparationPipeline;
     }
 
     @NonNull
     public PDImageXObject get() throws IOException {
+        if (imagePreparationPipeline != null) {
+            final ImagePreparationPipeline.PreparedImage preparedImage = imagePreparationPipeline.take(file);
+            if (preparedImage != null) {
+                return JPEGFactory.createFromStream(pdDocument, new ByteArrayInputStream(preparedImage.getJpegBytes()));
+            }
+        }
+
         final String fileExtension = UriUtils.getExtension(file, context);
         Preconditions.checkNotNull(fileExtension, "This file does not have a valid extension: " + file);
 
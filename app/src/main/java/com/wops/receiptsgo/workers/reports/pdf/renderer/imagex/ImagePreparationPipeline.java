@@ -0,0 +1,363 @@
+package com.wops.receiptsgo.workers.reports.pdf.renderer.imagex;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.google.common.base.Preconditions;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.wops.analytics.log.Logger;
+import com.wops.core.utils.UriUtils;
+import com.wops.receiptsgo.utils.ImageUtils;
+import com.wops.receiptsgo.utils.PreFixedThreadFactory;
+import com.wops.receiptsgo.workers.stamping.MemoryBudget;
+
+/**
+ * Prepares the receipt images of a PDF report on a set of worker threads, while our writer thread lays out and renders
+ * each page. Each image is decoded, downsampled to the size of the cell that it will be drawn in, and encoded as a
+ * JPEG, so our writer only needs to embed the resulting bytes.
+ * <p>
+ * Images must be enqueued in the order that they will be consumed via {@link #take(File)}. We only prepare a limited
+ * number of images ahead of our writer, and each worker must reserve the memory for its decoded bitmap from a
+ * {@link MemoryBudget} before decoding it. As such, our memory usage is capped at this budget plus the encoded bytes
+ * of the images that are waiting to be taken.
+ * </p>
+ * <p>
+ * Note: PDFBox documents are not thread-safe, so we never touch our document from these workers.
+ * </p>
+ */
+public class ImagePreparationPipeline implements Closeable {
+
+    /**
+     * Receives the timings of each image that passes through our pipeline
+     */
+    public interface Metrics {
+
+        /**
+         * Called from our writer thread as each prepared image is taken
+         *
+         * @param file          the source image {@link File}
+         * @param prepareMillis the time that a worker spent decoding, downsampling, and encoding this image
+         * @param waitMillis    the time that our writer spent waiting for this image to become available
+         * @param preparedBytes the size of the prepared JPEG
+         */
+        void onImagePrepared(@NonNull File file, long prepareMillis, long waitMillis, int preparedBytes);
+    }
+
+    /**
+     * A {@link Metrics} implementation, which simply logs the timings of each image
+     */
+    public static final Metrics LOGGING_METRICS = new Metrics() {
+        @Override
+        public void onImagePrepared(@NonNull File file, long prepareMillis, long waitMillis, int preparedBytes) {
+            Logger.debug(this, "Prepared {} ({} bytes) in {}ms, after waiting {}ms for it", file.getName(), preparedBytes, prepareMillis, waitMillis);
+        }
+    };
+
+    /**
+     * We render our images at the same resolution as our PDF pages (ie ~200 dpi), so they remain legible when printed
+     */
+    private static final float IMAGE_QUALITY_SCALING_FACTOR = 2.75f;
+    private static final int JPEG_QUALITY = 90;
+    private static final int MAX_PARALLELISM = 4;
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final Context context;
+    private final ExecutorService executor;
+    private final MemoryBudget memoryBudget;
+    private final Metrics metrics;
+    private final int maxQueuedImages;
+    private final LinkedList<Job> jobs = new LinkedList<>();
+
+    public ImagePreparationPipeline(@NonNull Context context) {
+        this(context, Math.max(1, Math.min(MAX_PARALLELISM, Runtime.getRuntime().availableProcessors() - 1)),
+                new MemoryBudget(Runtime.getRuntime().maxMemory() / 8), LOGGING_METRICS);
+    }
+
+    /**
+     * @param context      the application {@link Context}
+     * @param parallelism  the number of worker threads to prepare our images on
+     * @param memoryBudget the {@link MemoryBudget} for our decoded bitmaps
+     * @param metrics      the {@link Metrics} to report each image to
+     */
+    public ImagePreparationPipeline(@NonNull Context context, int parallelism, @NonNull MemoryBudget memoryBudget,
+                                    @NonNull Metrics metrics) {
+        Preconditions.checkArgument(parallelism > 0, "We require at least one worker thread");
+        this.context = Preconditions.checkNotNull(context.getApplicationContext());
+        this.executor = Executors.newFixedThreadPool(parallelism, new PreFixedThreadFactory(getClass().getSimpleName()));
+        this.memoryBudget = Preconditions.checkNotNull(memoryBudget);
+        this.metrics = Preconditions.checkNotNull(metrics);
+        this.maxQueuedImages = 2 * parallelism;
+    }
+
+    /**
+     * Adds an image to the end of our pipeline
+     *
+     * @param file   the image {@link File} to prepare
+     * @param width  the width (in PDF points) of the cell that this image will be drawn in
+     * @param height the height (in PDF points) of the cell that this image will be drawn in
+     */
+    public synchronized void enqueue(@NonNull File file, float width, float height) {
+        jobs.add(new Job(Preconditions.checkNotNull(file), Math.max(1, (int) (width * IMAGE_QUALITY_SCALING_FACTOR)),
+                Math.max(1, (int) (height * IMAGE_QUALITY_SCALING_FACTOR))));
+        submitQueuedImages();
+    }
+
+    /**
+     * Takes the next prepared image for a particular file, blocking until it becomes available. As we expect images
+     * to be consumed in order, any images that were enqueued ahead of this one are assumed to have been skipped and
+     * are discarded.
+     *
+     * @param file the image {@link File} to take
+     * @return the {@link PreparedImage} or {@code null} if this file was never enqueued
+     * @throws IOException if we failed to prepare this image
+     */
+    @Nullable
+    public PreparedImage take(@NonNull File file) throws IOException {
+        final Job job;
+        synchronized (this) {
+            job = removeJob(file);
+            if (job == null) {
+                return null;
+            }
+            submitQueuedImages();
+        }
+
+        final long waitStartTime = System.currentTimeMillis();
+        try {
+            final PreparedImage preparedImage = job.future.get();
+            metrics.onImagePrepared(file, preparedImage.getPrepareMillis(), System.currentTimeMillis() - waitStartTime,
+                    preparedImage.getJpegBytes().length);
+            return preparedImage;
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new IOException("Failed to prepare " + file.getName(), cause);
+            }
+        } catch (CancellationException e) {
+            throw new IOException("Our pipeline was closed before we prepared " + file.getName(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + file.getName());
+        }
+    }
+
+    /**
+     * Cancels any images that have yet to be taken and stops our worker threads
+     */
+    @Override
+    public synchronized void close() {
+        for (final Job job : jobs) {
+            if (job.future != null) {
+                job.future.cancel(true);
+            }
+        }
+        jobs.clear();
+        executor.shutdownNow();
+    }
+
+    @Nullable
+    private Job removeJob(@NonNull File file) {
+        boolean found = false;
+        for (final Job job : jobs) {
+            if (job.file.equals(file)) {
+                found = true;
+                break;
+            }
+        }
+        if (!found) {
+            return null;
+        }
+
+        final Iterator<Job> iterator = jobs.iterator();
+        while (iterator.hasNext()) {
+            final Job job = iterator.next();
+            iterator.remove();
+            if (job.file.equals(file)) {
+                if (job.future == null) {
+                    job.future = executor.submit(job);
+                }
+                return job;
+            } else if (job.future != null) {
+                Logger.warn(this, "Discarding {}, since it was skipped", job.file.getName());
+                job.future.cancel(true);
+            }
+        }
+        return null;
+    }
+
+    private void submitQueuedImages() {
+        int queuedImages = 0;
+        for (final Job job : jobs) {
+            if (queuedImages++ >= maxQueuedImages) {
+                break;
+            }
+            if (job.future == null) {
+                job.future = executor.submit(job);
+            }
+        }
+    }
+
+    /**
+     * Calculates the largest power of two that we can downsample an image by, while retaining enough pixels to fill
+     * our target cell
+     *
+     * @param width        the width of the source image
+     * @param height       the height of the source image
+     * @param targetWidth  the width (in pixels) of the cell that this image will be scaled to fit inside
+     * @param targetHeight the height (in pixels) of the cell that this image will be scaled to fit inside
+     * @return the sample size to decode this image with
+     */
+    @VisibleForTesting
+    static int calculateSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        // Note: As we scale our images to fit within their cell, the limiting dimension determines how many pixels we need
+        final float maxScale = Math.max((float) width / targetWidth, (float) height / targetHeight);
+        int sampleSize = 1;
+        while (sampleSize * 2 <= maxScale) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    @NonNull
+    private PreparedImage prepare(@NonNull File file, int targetWidth, int targetHeight) throws IOException, InterruptedException {
+        final long startTime = System.currentTimeMillis();
+
+        final String fileExtension = UriUtils.getExtension(file, context);
+        Preconditions.checkNotNull(fileExtension, "This file does not have a valid extension: " + file);
+        final String extension = fileExtension.toLowerCase(Locale.US);
+        final boolean isJpeg = extension.equals("jpg") || extension.equals("jpeg") || "image/jpeg".equals(UriUtils.getMimeType(file, context));
+        if (!isJpeg && !extension.equals("png")) {
+            throw new IllegalArgumentException("Unknown file extension: " + fileExtension);
+        }
+
+        final BitmapFactory.Options boundsOptions = new BitmapFactory.Options();
+        boundsOptions.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getAbsolutePath(), boundsOptions);
+        if (boundsOptions.outWidth <= 0 || boundsOptions.outHeight <= 0) {
+            throw new IOException("Failed to decode the bounds of " + file.getName());
+        }
+
+        final int sampleSize = calculateSampleSize(boundsOptions.outWidth, boundsOptions.outHeight, targetWidth, targetHeight);
+        final byte[] jpegBytes;
+        if (isJpeg && sampleSize == 1) {
+            // This is already a JPEG at (or below) our target size, so we can embed it as-is
+            try (FileInputStream fileInputStream = new FileInputStream(file)) {
+                jpegBytes = IOUtils.toByteArray(fileInputStream);
+            }
+        } else {
+            // Note: We reserve enough for both the decoded bitmap and its white background (for transparent PNGs)
+            final long decodedBytes = 2L * BYTES_PER_PIXEL * ceilDivide(boundsOptions.outWidth, sampleSize) * ceilDivide(boundsOptions.outHeight, sampleSize);
+            memoryBudget.acquire(decodedBytes);
+            try {
+                jpegBytes = decodeAndEncode(file, sampleSize);
+            } finally {
+                memoryBudget.release(decodedBytes);
+            }
+        }
+        return new PreparedImage(jpegBytes, System.currentTimeMillis() - startTime);
+    }
+
+    @NonNull
+    private byte[] decodeAndEncode(@NonNull File file, int sampleSize) throws IOException {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        if (bitmap == null) {
+            throw new IOException("Failed to decode " + file.getName());
+        }
+
+        try {
+            if (bitmap.hasAlpha()) {
+                // JPEGs are opaque, so we draw any transparent images over a white background (as they appear in our PDF)
+                bitmap = ImageUtils.applyWhiteBackground(bitmap);
+            }
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, outputStream)) {
+                throw new IOException("Failed to encode " + file.getName());
+            }
+            return outputStream.toByteArray();
+        } catch (OutOfMemoryError e) {
+            throw new IOException("Insufficient application memory to prepare " + file.getName());
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    private static int ceilDivide(int dividend, int divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+
+    /**
+     * An image that has been prepared for embedding in our PDF
+     */
+    public static final class PreparedImage {
+
+        private final byte[] jpegBytes;
+        private final long prepareMillis;
+
+        PreparedImage(@NonNull byte[] jpegBytes, long prepareMillis) {
+            this.jpegBytes = Preconditions.checkNotNull(jpegBytes);
+            this.prepareMillis = prepareMillis;
+        }
+
+        /**
+         * @return the JPEG encoded bytes of this image
+         */
+        @NonNull
+        public byte[] getJpegBytes() {
+            return jpegBytes;
+        }
+
+        /**
+         * @return the time that we spent preparing this image
+         */
+        public long getPrepareMillis() {
+            return prepareMillis;
+        }
+    }
+
+    private final class Job implements Callable<PreparedImage> {
+
+        private final File file;
+        private final int targetWidth;
+        private final int targetHeight;
+        private Future<PreparedImage> future;
+
+        Job(@NonNull File file, int targetWidth, int targetHeight) {
+            this.file = file;
+            this.targetWidth = targetWidth;
+            this.targetHeight = targetHeight;
+        }
+
+        @Override
+        public PreparedImage call() throws Exception {
+            return prepare(file, targetWidth, targetHeight);
+        }
+    }
+}
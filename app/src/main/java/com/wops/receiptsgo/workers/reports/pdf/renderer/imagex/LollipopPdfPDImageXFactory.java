@@ -16,6 +16,8 @@ import com.tom_roush.pdfbox.pdmodel.graphics.image.PDImageXObject;
 
 import org.apache.commons.io.IOUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 
@@ -29,6 +31,11 @@ public class LollipopPdfPDImageXFactory implements PdfPDImageXFactory {
 
     private static final float IMAGE_QUALITY_SCALING_FACTOR = 2.75f;
 
+    /**
+     * The default quality that {@link JPEGFactory#createFromImage(PDDocument, Bitmap)} uses
+     */
+    private static final int JPEG_QUALITY = 75;
+
     private final PDDocument pdDocument;
     private final File file;
 
@@ -66,10 +73,16 @@ public class LollipopPdfPDImageXFactory implements PdfPDImageXFactory {
 
             try {
                 bitmap = ImageUtils.applyWhiteBackground(bitmap);
-                bitmap = ImageUtils.changeCodec(bitmap, Bitmap.CompressFormat.JPEG, 100);
+
+                // Note: We encode this page once at the quality that PDFBox would use, rather than round-tripping it
+                // through a lossless JPEG (ie encoding and decoding it) before PDFBox encodes it again
+                final ByteArrayOutputStream jpegStream = new ByteArrayOutputStream();
+                if (!bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, jpegStream)) {
+                    throw new IOException("Failed to convert the bitmap codec");
+                }
                 Logger.debug(this, "Creating pdf image from converted JPEG to speed up processing time");
-                return JPEGFactory.createFromImage(pdDocument, bitmap);
-            } catch (IOException e) {
+                return JPEGFactory.createFromStream(pdDocument, new ByteArrayInputStream(jpegStream.toByteArray()));
+            } catch (IOException | OutOfMemoryError e) {
                 // For some reason, the Lossless factory takes 15-20s per page whereas JPGs are vastly quicker
                 Logger.warn(this, "Failed to convert to JPG to speed up our processing. Creating the bitmap from our lossless factory of PDF page {} at {}", currentPage, System.currentTimeMillis());
                 return LosslessFactory.createFromImage(pdDocument, bitmap);
@@ -2,6 +2,7 @@ package com.wops.receiptsgo.workers.reports.pdf.renderer.impl;
 
 import android.content.Context;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.google.common.base.Preconditions;
 import com.tom_roush.pdfbox.pdmodel.PDDocument;
@@ -22,19 +23,21 @@ import com.wops.receiptsgo.workers.reports.pdf.renderer.formatting.Padding;
 import com.wops.receiptsgo.workers.reports.pdf.renderer.grid.GridRenderer;
 import com.wops.receiptsgo.workers.reports.pdf.renderer.grid.GridRowRenderer;
 import com.wops.receiptsgo.workers.reports.pdf.renderer.imagex.ImagePDImageXFactory;
+import com.wops.receiptsgo.workers.reports.pdf.renderer.imagex.ImagePreparationPipeline;
 import com.wops.receiptsgo.workers.reports.pdf.renderer.imagex.PDImageXRenderer;
 import com.wops.receiptsgo.workers.reports.pdf.renderer.pages.SinglePageRenderer;
 
 public class GridReceiptsRendererFactory {
 
-    private static final int DEFAULT_NUMBER_COLUMNS = 2;
-    private static final int DEFAULT_NUMBER_ROWS = 2;
+    static final int DEFAULT_NUMBER_COLUMNS = 2;
+    static final int DEFAULT_NUMBER_ROWS = 2;
 
     private final Context context;
     private final UserPreferenceManager userPreferenceManager;
     private final DateFormatter dateFormatter;
     private final PDDocument pdDocument;
     private final PdfBoxPageDecorations decorations;
+    private final ImagePreparationPipeline imagePreparationPipeline;
     private final List<Receipt> receipts = new ArrayList<>();
     private final int columns;
     private final int rows;
@@ -43,8 +46,10 @@ public class GridReceiptsRendererFactory {
                                        @NonNull UserPreferenceManager userPreferenceManager,
                                        @NonNull DateFormatter dateFormatter,
                                        @NonNull PDDocument pdDocument,
-                                       @NonNull PdfBoxPageDecorations decorations) {
-        this(context, userPreferenceManager, dateFormatter, pdDocument, decorations, DEFAULT_NUMBER_COLUMNS, DEFAULT_NUMBER_ROWS);
+                                       @NonNull PdfBoxPageDecorations decorations,
+                                       @Nullable ImagePreparationPipeline imagePreparationPipeline) {
+        this(context, userPreferenceManager, dateFormatter, pdDocument, decorations, imagePreparationPipeline,
+                DEFAULT_NUMBER_COLUMNS, DEFAULT_NUMBER_ROWS);
     }
 
     public GridReceiptsRendererFactory(@NonNull Context context,
@@ -52,6 +57,7 @@ public class GridReceiptsRendererFactory {
                                        @NonNull DateFormatter dateFormatter,
                                        @NonNull PDDocument pdDocument,
                                        @NonNull PdfBoxPageDecorations decorations,
+                                       @Nullable ImagePreparationPipeline imagePreparationPipeline,
                                        int columns,
                                        int rows) {
         this.context = Preconditions.checkNotNull(context.getApplicationContext());
@@ -59,6 +65,7 @@ public class GridReceiptsRendererFactory {
         this.dateFormatter = Preconditions.checkNotNull(dateFormatter);
         this.pdDocument = Preconditions.checkNotNull(pdDocument);
         this.decorations = Preconditions.checkNotNull(decorations);
+        this.imagePreparationPipeline = imagePreparationPipeline;
         this.columns = columns;
         this.rows = rows;
     }
@@ -93,7 +100,7 @@ public class GridReceiptsRendererFactory {
 
                     labelRows.add(new ReceiptLabelTextRenderer(receipt, context, pdDocument, userPreferenceManager, dateFormatter, color, fontSpec));
                     if (receipt.hasImage()) {
-                        imageRows.add(new PDImageXRenderer(new ImagePDImageXFactory(context, pdDocument, receipt.getFile())));
+                        imageRows.add(new PDImageXRenderer(new ImagePDImageXFactory(context, pdDocument, receipt.getFile(), imagePreparationPipeline)));
                     } else {
                         throw new IllegalArgumentException("Unsupported file type: " + receipt.getFile());
                     }
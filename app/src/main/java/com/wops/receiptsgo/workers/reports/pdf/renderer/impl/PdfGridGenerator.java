@@ -1,11 +1,13 @@
 package com.wops.receiptsgo.workers.reports.pdf.renderer.impl;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.google.common.base.Preconditions;
 import com.tom_roush.pdfbox.pdmodel.PDDocument;
 import com.tom_roush.harmony.awt.AWTColor;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -24,6 +26,7 @@ import com.wops.receiptsgo.workers.reports.pdf.renderer.Renderer;
 import com.wops.receiptsgo.workers.reports.pdf.renderer.formatting.Padding;
 import com.wops.receiptsgo.workers.reports.pdf.renderer.grid.GridRowRenderer;
 import com.wops.receiptsgo.workers.reports.pdf.renderer.grid.PdfGridRenderer;
+import com.wops.receiptsgo.workers.reports.pdf.renderer.imagex.ImagePreparationPipeline;
 import com.wops.receiptsgo.workers.reports.pdf.renderer.imagex.PDImageXRenderer;
 import com.wops.receiptsgo.workers.reports.pdf.renderer.imagex.PdfPDImageXFactory;
 import com.wops.receiptsgo.workers.reports.pdf.renderer.imagex.PdfPDImageXFactoryFactory;
@@ -34,6 +37,18 @@ import com.wops.receiptsgo.workers.reports.pdf.renderer.imagex.PdfPDImageXFactor
  */
 public class PdfGridGenerator implements TableGenerator<List<Renderer>, Receipt> {
 
+    /**
+     * Receives each page {@link Renderer} as soon as we've generated it
+     */
+    public interface RendererConsumer {
+
+        /**
+         * @param renderer the {@link Renderer} for the next page(s) of our grid
+         * @throws IOException if we failed to consume this renderer
+         */
+        void accept(@NonNull Renderer renderer) throws IOException;
+    }
+
     private static final Padding DEFAULT_PADDING = new Padding(4f);
     private static final int FULL_PAGE_ROWS_COLS = 1;
 
@@ -46,6 +61,7 @@ public class PdfGridGenerator implements TableGenerator<List<Renderer>, Receipt>
     private final AWTColor color;
     private final PdfFontSpec fontSpec;
     private final Padding padding;
+    private final ImagePreparationPipeline imagePreparationPipeline;
 
     private final float availableWidth;
     private final float availableHeight;
@@ -56,8 +72,23 @@ public class PdfGridGenerator implements TableGenerator<List<Renderer>, Receipt>
                             @NonNull PdfBoxPageDecorations decorations,
                             float availableWidth,
                             float availableHeight) {
+        this(pdfBoxContext, pdDocument, filter, decorations, availableWidth, availableHeight, null);
+    }
+
+    /**
+     * @param imagePreparationPipeline an optional {@link ImagePreparationPipeline}, which we'll use to prepare all of
+     *                                 our receipt images in the background ahead of their pages being rendered
+     */
+    public PdfGridGenerator(@NonNull PdfBoxContext pdfBoxContext,
+                            @NonNull PDDocument pdDocument,
+                            @NonNull Filter<Receipt> filter,
+                            @NonNull PdfBoxPageDecorations decorations,
+                            float availableWidth,
+                            float availableHeight,
+                            @Nullable ImagePreparationPipeline imagePreparationPipeline) {
         this(pdfBoxContext, pdDocument, filter, decorations, pdfBoxContext.getColorManager().getColor(PdfColorStyle.Default),
-                pdfBoxContext.getFontManager().getFont(PdfFontStyle.Small), DEFAULT_PADDING, availableWidth, availableHeight);
+                pdfBoxContext.getFontManager().getFont(PdfFontStyle.Small), DEFAULT_PADDING, availableWidth, availableHeight,
+                imagePreparationPipeline);
     }
 
     public PdfGridGenerator(@NonNull PdfBoxContext pdfBoxContext,
@@ -68,7 +99,8 @@ public class PdfGridGenerator implements TableGenerator<List<Renderer>, Receipt>
                             @NonNull PdfFontSpec fontSpec,
                             @NonNull Padding padding,
                             float availableWidth,
-                            float availableHeight) {
+                            float availableHeight,
+                            @Nullable ImagePreparationPipeline imagePreparationPipeline) {
         this.pdfBoxContext = Preconditions.checkNotNull(pdfBoxContext);
         this.pdDocument = Preconditions.checkNotNull(pdDocument);
         this.filter = Preconditions.checkNotNull(filter);
@@ -78,6 +110,7 @@ public class PdfGridGenerator implements TableGenerator<List<Renderer>, Receipt>
         this.color = Preconditions.checkNotNull(color);
         this.fontSpec = Preconditions.checkNotNull(fontSpec);
         this.padding = Preconditions.checkNotNull(padding);
+        this.imagePreparationPipeline = imagePreparationPipeline;
         this.availableWidth = availableWidth;
         this.availableHeight = availableHeight;
     }
@@ -86,10 +119,32 @@ public class PdfGridGenerator implements TableGenerator<List<Renderer>, Receipt>
     @NonNull
     @Override
     public List<Renderer> generate(@NonNull List<Receipt> receipts) {
-
         final List<Renderer> renderers = new ArrayList<>();
-        GridReceiptsRendererFactory rendererFactory = null;
+        try {
+            generate(receipts, renderers::add);
+        } catch (IOException e) {
+            // Note: This should never happen, since adding to our list cannot fail
+            throw new IllegalStateException(e);
+        }
+        return renderers;
+    }
+
+    /**
+     * Generates the renderers for our grid, one page at a time. Unlike {@link #generate(List)}, this allows our
+     * callers to measure and render each page before we generate the next one, so we never need to hold the entire
+     * grid in memory at once
+     *
+     * @param receipts the {@link List} of {@link Receipt}s to generate our grid for
+     * @param consumer the {@link RendererConsumer}, which will receive each page renderer in order
+     * @throws IOException if the consumer fails
+     */
+    public void generate(@NonNull List<Receipt> receipts, @NonNull RendererConsumer consumer) throws IOException {
+        Preconditions.checkNotNull(consumer);
+        if (imagePreparationPipeline != null) {
+            enqueueImages(receipts);
+        }
 
+        GridReceiptsRendererFactory rendererFactory = null;
         for (final Receipt receipt : receipts) {
 
             if (!filter.accept(receipt) || receipt.getFile() == null || !receipt.getFile().exists()) {
@@ -105,7 +160,7 @@ public class PdfGridGenerator implements TableGenerator<List<Renderer>, Receipt>
             if (receipt.isFullPage() || receipt.hasPDF()) {
                 if (rendererFactory != null && !rendererFactory.isEmpty()) {
                     Logger.debug(this, "Completing possible partial page as we have a full page entry");
-                    constructRendererAndAddToList(rendererFactory, renderers);
+                    consumer.accept(constructRenderer(rendererFactory));
                     rendererFactory = null;
                 }
 
@@ -118,25 +173,25 @@ public class PdfGridGenerator implements TableGenerator<List<Renderer>, Receipt>
                     pdfGridRenderer.addRow(new GridRowRenderer(textRenderer));
                     pdfGridRenderer.addRow(new GridRowRenderer(imageRenderer));
                     pdfGridRenderer.getRenderingFormatting().addFormatting(DEFAULT_PADDING);
-                    renderers.add(pdfGridRenderer);
+                    consumer.accept(pdfGridRenderer);
                 } else {
                     Logger.debug(this, "Creating page for full page receipt.");
                     final GridReceiptsRendererFactory fullPageFactory = new GridReceiptsRendererFactory(pdfBoxContext.getAndroidContext(),
-                            pdfBoxContext.getPreferences(), dateFormatter, pdDocument, decorations, FULL_PAGE_ROWS_COLS, FULL_PAGE_ROWS_COLS);
+                            pdfBoxContext.getPreferences(), dateFormatter, pdDocument, decorations, imagePreparationPipeline, FULL_PAGE_ROWS_COLS, FULL_PAGE_ROWS_COLS);
                     fullPageFactory.addReceipt(receipt);
-                    constructRendererAndAddToList(fullPageFactory, renderers);
+                    consumer.accept(constructRenderer(fullPageFactory));
                 }
             } else {
                 if (rendererFactory == null) {
                     Logger.debug(this, "Creating new receipt grid for this pdf");
                     rendererFactory = new GridReceiptsRendererFactory(pdfBoxContext.getAndroidContext(),
-                            pdfBoxContext.getPreferences(), dateFormatter, pdDocument, decorations);
+                            pdfBoxContext.getPreferences(), dateFormatter, pdDocument, decorations, imagePreparationPipeline);
                 }
 
                 rendererFactory.addReceipt(receipt);
                 if (rendererFactory.isComplete()) {
                     Logger.debug(this, "NxN grid complete -- completing page");
-                    constructRendererAndAddToList(rendererFactory, renderers);
+                    consumer.accept(constructRenderer(rendererFactory));
                     rendererFactory = null;
                 }
             }
@@ -145,19 +200,32 @@ public class PdfGridGenerator implements TableGenerator<List<Renderer>, Receipt>
         // Add remaining cells (incomplete row)
         if (rendererFactory != null) {
             Logger.debug(this, "Writing final, incomplete page");
-            constructRendererAndAddToList(rendererFactory, renderers);
+            consumer.accept(constructRenderer(rendererFactory));
         }
+    }
 
-        return renderers;
+    /**
+     * Enqueues each receipt image in the order that we'll render them, so our pipeline can prepare these ahead of us.
+     * Since our cells don't yet know their exact size, we target the full grid cell (or page) that each image will
+     * be drawn in
+     */
+    private void enqueueImages(@NonNull List<Receipt> receipts) {
+        for (final Receipt receipt : receipts) {
+            if (filter.accept(receipt) && receipt.getFile() != null && receipt.getFile().exists() && !receipt.hasPDF() && receipt.hasImage()) {
+                if (receipt.isFullPage()) {
+                    imagePreparationPipeline.enqueue(receipt.getFile(), availableWidth, availableHeight);
+                } else {
+                    imagePreparationPipeline.enqueue(receipt.getFile(), availableWidth / GridReceiptsRendererFactory.DEFAULT_NUMBER_COLUMNS,
+                            availableHeight / GridReceiptsRendererFactory.DEFAULT_NUMBER_ROWS);
+                }
+            }
+        }
     }
 
-    private void constructRendererAndAddToList(@NonNull GridReceiptsRendererFactory rendererFactory, @NonNull List<Renderer> list) {
+    @NonNull
+    private Renderer constructRenderer(@NonNull GridReceiptsRendererFactory rendererFactory) {
         Preconditions.checkNotNull(rendererFactory);
-        Preconditions.checkNotNull(list);
-
-        list.add(
-            rendererFactory.buildSinglePageGrid(availableWidth, availableHeight, color, fontSpec, padding)
-        );
+        return rendererFactory.buildSinglePageGrid(availableWidth, availableHeight, color, fontSpec, padding);
     }
 
 }
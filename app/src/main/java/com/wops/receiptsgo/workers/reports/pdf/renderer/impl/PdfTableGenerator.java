@@ -13,6 +13,7 @@ import java.util.List;
 import com.wops.receiptsgo.filters.Filter;
 import com.wops.receiptsgo.model.Column;
 import com.wops.receiptsgo.workers.reports.ReportResourcesManager;
+import com.wops.receiptsgo.workers.reports.ReportTable;
 import com.wops.receiptsgo.workers.reports.TableGenerator;
 import com.wops.receiptsgo.workers.reports.pdf.colors.PdfColorStyle;
 import com.wops.receiptsgo.workers.reports.pdf.fonts.PdfFontStyle;
@@ -23,7 +24,6 @@ import com.wops.receiptsgo.workers.reports.pdf.renderer.formatting.BackgroundCol
 import com.wops.receiptsgo.workers.reports.pdf.renderer.formatting.Padding;
 import com.wops.receiptsgo.workers.reports.pdf.renderer.grid.GridRowRenderer;
 import com.wops.receiptsgo.workers.reports.pdf.renderer.text.TextRenderer;
-import com.wops.receiptsgo.workers.reports.pdf.utils.HeavyHandedReplaceIllegalCharacters;
 
 public class PdfTableGenerator<DataType> implements TableGenerator<List<GridRowRenderer>, DataType> {
 
@@ -58,15 +58,17 @@ public class PdfTableGenerator<DataType> implements TableGenerator<List<GridRowR
     public List<GridRowRenderer> generate(@NonNull List<DataType> list) throws IOException {
         final List<GridRowRenderer> gridRows = new ArrayList<>();
         final int colCount = columns.size();
-        final List<DataType> filteredList = new ArrayList<>(list.size());
+
+        // Evaluate (and sanitize) each cell once, since we both measure and render it
+        final ReportTable<DataType> table = ReportTable.create(columns, list, filter, printFooters).sanitized();
 
         float availableWidth = pdfBoxContext.getPageSize().getWidth() - 2 * pdfBoxContext.getPageMarginHorizontal();
 
         // calculate column widths
         // TODO: Include this as part of the measure pass
         float[] colWidths;
-        ColumnWidthCalculator columnWidthCalculator = new ColumnWidthCalculator<>(pdfBoxContext,
-                list, columns, availableWidth, DEFAULT_PADDING.value());
+        ColumnWidthCalculator<DataType> columnWidthCalculator = new ColumnWidthCalculator<>(pdfBoxContext,
+                table, availableWidth, DEFAULT_PADDING.value());
         colWidths = columnWidthCalculator.calculate();
 
         // Add the header
@@ -91,33 +93,26 @@ public class PdfTableGenerator<DataType> implements TableGenerator<List<GridRowR
             headerRow = null;
         }
 
-        if (!list.isEmpty()) {
-
-            // Add each row
-            for (int j = 0; j < list.size(); j++) {
-                final DataType data = list.get(j);
-                if (filter == null || filter.accept(data)) {
-                    filteredList.add(data);
-                    final List<TextRenderer> columnRenderers = new ArrayList<>();
-                    for (int i = 0; i < colCount; i++) {
-                        final TextRenderer textRenderer = new TextRenderer(
-                                pdfBoxContext.getAndroidContext(),
-                                pdDocument,
-                                HeavyHandedReplaceIllegalCharacters.getSafeString(columns.get(i).getValue(data)),
-                                pdfBoxContext.getColorManager().getColor(PdfColorStyle.Default),
-                                pdfBoxContext.getFontManager().getFont(PdfFontStyle.Default));
-                        textRenderer.getRenderingFormatting().addFormatting(DEFAULT_PADDING);
-                        textRenderer.getRenderingConstraints().addConstraint(new WidthConstraint(colWidths[i]));
-                        columnRenderers.add(textRenderer);
-                    }
-                    final GridRowRenderer rowRenderer = new GridRowRenderer(columnRenderers);
-                    if (j % 2 == 0) {
-                        rowRenderer.getRenderingFormatting().addFormatting(new BackgroundColor(pdfBoxContext.getColorManager().getColor(PdfColorStyle.TableCell)));
-                    }
-                    rowRenderer.associateHeaderRow(headerRow);
-                    gridRows.add(rowRenderer);
-                }
+        // Add each row
+        for (int j = 0; j < table.getRowCount(); j++) {
+            final List<TextRenderer> columnRenderers = new ArrayList<>();
+            for (int i = 0; i < colCount; i++) {
+                final TextRenderer textRenderer = new TextRenderer(
+                        pdfBoxContext.getAndroidContext(),
+                        pdDocument,
+                        table.getValue(j, i),
+                        pdfBoxContext.getColorManager().getColor(PdfColorStyle.Default),
+                        pdfBoxContext.getFontManager().getFont(PdfFontStyle.Default));
+                textRenderer.getRenderingFormatting().addFormatting(DEFAULT_PADDING);
+                textRenderer.getRenderingConstraints().addConstraint(new WidthConstraint(colWidths[i]));
+                columnRenderers.add(textRenderer);
+            }
+            final GridRowRenderer rowRenderer = new GridRowRenderer(columnRenderers);
+            if (table.getSourceIndex(j) % 2 == 0) {
+                rowRenderer.getRenderingFormatting().addFormatting(new BackgroundColor(pdfBoxContext.getColorManager().getColor(PdfColorStyle.TableCell)));
             }
+            rowRenderer.associateHeaderRow(headerRow);
+            gridRows.add(rowRenderer);
         }
 
         // Add the footer
@@ -127,7 +122,7 @@ public class PdfTableGenerator<DataType> implements TableGenerator<List<GridRowR
                 final TextRenderer textRenderer = new TextRenderer(
                         pdfBoxContext.getAndroidContext(),
                         pdDocument,
-                        columns.get(i).getFooter(filteredList),
+                        table.getFooter(i),
                         pdfBoxContext.getColorManager().getColor(PdfColorStyle.Outline),
                         pdfBoxContext.getFontManager().getFont(PdfFontStyle.Default));
                 textRenderer.getRenderingFormatting().addFormatting(DEFAULT_PADDING);
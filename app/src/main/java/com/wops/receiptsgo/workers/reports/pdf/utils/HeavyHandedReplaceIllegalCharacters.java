@@ -3,6 +3,8 @@ package com.wops.receiptsgo.workers.reports.pdf.utils;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.util.regex.Pattern;
+
 /**
  * If PDFBox does not support a particular character, we straight-up crash. As a short-term fix,
  * we're just going to replace these illegal characters with "?" ones. As we grow, we should look
@@ -11,13 +13,42 @@ import androidx.annotation.Nullable;
  */
 public class HeavyHandedReplaceIllegalCharacters {
 
+    private static final Pattern ILLEGAL_CHARACTERS = Pattern.compile("\\p{C}");
+
     @NonNull
     public static String getSafeString(@Nullable String string) {
         if (string != null) {
-            return string.replaceAll("\\p{C}", "").replace("(", "{").replace(")", "}");
+            if (isSafe(string)) {
+                // Note: Most of our strings are already safe, so we avoid both the regex and any copies for these
+                return string;
+            }
+            return ILLEGAL_CHARACTERS.matcher(string).replaceAll("").replace("(", "{").replace(")", "}");
         } else {
             return "";
         }
     }
 
+    /**
+     * Checks if a string contains neither parentheses nor any "other" (ie \p{C}) code points in a single pass
+     */
+    private static boolean isSafe(@NonNull String string) {
+        for (int i = 0; i < string.length(); ) {
+            final int codePoint = string.codePointAt(i);
+            if (codePoint == '(' || codePoint == ')') {
+                return false;
+            }
+            switch (Character.getType(codePoint)) {
+                case Character.CONTROL:
+                case Character.FORMAT:
+                case Character.PRIVATE_USE:
+                case Character.SURROGATE:
+                case Character.UNASSIGNED:
+                    return false;
+                default:
+                    i += Character.charCount(codePoint);
+            }
+        }
+        return true;
+    }
+
 }
@@ -4,7 +4,6 @@ package com.wops.receiptsgo.workers.reports.pdf.utils;
 import androidx.annotation.NonNull;
 
 import java.io.IOException;
-import java.util.StringTokenizer;
 
 import com.wops.receiptsgo.workers.reports.pdf.fonts.PdfFontSpec;
 
@@ -19,13 +18,8 @@ public class PdfBoxUtils {
      */
     public static float getStringWidth(@NonNull String text, @NonNull PdfFontSpec fontSpec)
             throws IOException {
-        try {
-            return fontSpec.getFont().getStringWidth(text) * fontSpec.getSize() / 1000F;
-        } catch (IllegalArgumentException e) {
-            // If we cannot encode, try it again with the unicode "?"/tofu character
-            // We just use latin chars for a best guess here
-            return fontSpec.getFont().getStringWidth(text.replaceAll("\\P{InBasic_Latin}", "\uFFFD\uFFFD")) * fontSpec.getSize() / 1000F;
-        }
+        // Note: If we cannot encode this text, our metrics measure it with the unicode "?"/tofu character instead
+        return fontSpec.getMetrics().getStringWidth(text);
     }
 
     /**
@@ -35,8 +29,7 @@ public class PdfBoxUtils {
      * @throws IOException
      */
     public static float getFontHeight(@NonNull PdfFontSpec fontSpec) {
-        return fontSpec.getFont().getFontDescriptor().getFontBoundingBox().getHeight() / 1000
-                * fontSpec.getSize();
+        return fontSpec.getMetrics().getFontHeight();
     }
 
 
@@ -62,17 +55,7 @@ public class PdfBoxUtils {
      * @throws IOException
      */
     public static float getMaxWordWidth(@NonNull String text, @NonNull PdfFontSpec fontSpec) throws IOException {
-        float min = 0.0f;
-
-        StringTokenizer tokenizer = new StringTokenizer(text, " ");
-        while (tokenizer.hasMoreTokens()) {
-            String s = tokenizer.nextToken();
-            float w = getStringWidth(s, fontSpec);
-            if (w > min) {
-                min = w;
-            }
-        }
-        return min;
+        return fontSpec.getMetrics().getMaxWordWidth(text);
     }
 
 }
@@ -0,0 +1,160 @@
+package com.wops.receiptsgo.workers.reports.zip;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.google.common.base.Preconditions;
+import com.wops.analytics.log.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Builds a zip archive by streaming each source file directly into a {@link ZipOutputStream}, which allows us to
+ * avoid both reading each file fully into memory and copying it into a temporary staging directory first.
+ * <p>
+ * Files are transferred via their {@link FileChannel} using a large buffer. As the majority of our files (ie JPEGs
+ * and PDFs) are already compressed, we write these as {@link ZipEntry#STORED} entries instead of spending time
+ * attempting to deflate them again. This requires that we calculate the CRC of these files before writing them,
+ * but this second read is typically served from the page cache and is far cheaper than the compression work.
+ * </p>
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ */
+public class StreamingZipArchiveBuilder implements Closeable {
+
+    @VisibleForTesting
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final List<String> ALREADY_COMPRESSED_EXTENSIONS = Arrays.asList("jpg", "jpeg", "png", "gif", "webp", "pdf", "zip");
+
+    private final ZipOutputStream zipOutputStream;
+    private final WritableByteChannel zipOutputChannel;
+    private final Set<String> entryNames = new HashSet<>();
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    public StreamingZipArchiveBuilder(@NonNull File zipFile) throws IOException {
+        Preconditions.checkNotNull(zipFile);
+        this.zipOutputStream = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(zipFile), BUFFER_SIZE));
+        this.zipOutputChannel = Channels.newChannel(zipOutputStream);
+    }
+
+    /**
+     * Streams a file into this archive
+     *
+     * @param file the {@link File} to add
+     * @param entryName the name of the entry for this file in our archive
+     * @return {@code true} if this file was added. {@code false} if it does not exist or if an entry with this name
+     * was already added to this archive
+     * @throws IOException if we failed to read the file or write to the archive
+     */
+    public boolean addFile(@NonNull File file, @NonNull String entryName) throws IOException {
+        Preconditions.checkNotNull(file);
+        Preconditions.checkNotNull(entryName);
+
+        if (!file.isFile()) {
+            Logger.warn(this, "Skipping {}, as it is not a file.", file.getName());
+            return false;
+        }
+        if (!entryNames.add(entryName)) {
+            Logger.warn(this, "Skipping {}, as an entry with this name already exists.", entryName);
+            return false;
+        }
+
+        try (FileInputStream fileInputStream = new FileInputStream(file)) {
+            final FileChannel fileChannel = fileInputStream.getChannel();
+            final long size = fileChannel.size();
+
+            final ZipEntry entry = new ZipEntry(entryName);
+            entry.setTime(file.lastModified());
+            if (isAlreadyCompressed(entryName)) {
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(size);
+                entry.setCompressedSize(size);
+                entry.setCrc(calculateCrc(fileChannel));
+            }
+
+            zipOutputStream.putNextEntry(entry);
+            long position = 0;
+            while (position < size) {
+                final long transferred = fileChannel.transferTo(position, size - position, zipOutputChannel);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+            zipOutputStream.closeEntry();
+        }
+        return true;
+    }
+
+    /**
+     * Recursively streams all files within a directory into this archive. Each entry is named via its path relative
+     * to this directory
+     *
+     * @param directory the directory {@link File} to add
+     * @throws IOException if we failed to read any file or write to the archive
+     */
+    public void addDirectory(@NonNull File directory) throws IOException {
+        addDirectoryRecursively(Preconditions.checkNotNull(directory), directory.getPath().length() + 1);
+    }
+
+    @Override
+    public void close() throws IOException {
+        zipOutputStream.close();
+    }
+
+    @VisibleForTesting
+    static boolean isAlreadyCompressed(@NonNull String entryName) {
+        final int extensionIndex = entryName.lastIndexOf('.');
+        if (extensionIndex < 0) {
+            return false;
+        }
+        final String extension = entryName.substring(extensionIndex + 1).toLowerCase(Locale.US);
+        return ALREADY_COMPRESSED_EXTENSIONS.contains(extension);
+    }
+
+    private void addDirectoryRecursively(@NonNull File file, int basePathLength) throws IOException {
+        if (file.isDirectory()) {
+            final File[] children = file.listFiles();
+            if (children != null) {
+                for (final File child : children) {
+                    addDirectoryRecursively(child, basePathLength);
+                }
+            }
+        } else {
+            addFile(file, file.getPath().substring(basePathLength));
+        }
+    }
+
+    private long calculateCrc(@NonNull FileChannel fileChannel) throws IOException {
+        final CRC32 crc = new CRC32();
+        final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        long position = 0;
+        int read;
+        while ((read = fileChannel.read(byteBuffer, position)) > 0) {
+            crc.update(buffer, 0, read);
+            position += read;
+            byteBuffer.clear();
+        }
+        return crc.getValue();
+    }
+
+}
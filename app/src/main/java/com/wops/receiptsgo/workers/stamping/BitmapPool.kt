@@ -0,0 +1,187 @@
+package com.wops.receiptsgo.workers.stamping
+
+import android.graphics.Bitmap
+import java.util.*
+
+/**
+ * A size-bounded pool of mutable [Bitmap]s, which allows us to reuse the pixel buffers of previously stamped images
+ * instead of allocating new ones for each receipt. Pooled bitmaps are handed out either via [acquire], which
+ * reconfigures an existing buffer to the desired dimensions, or via [take], which provides a buffer that can be
+ * passed to [android.graphics.BitmapFactory.Options.inBitmap].
+ *
+ * When given a [MemoryBudget], our pooled buffers count against it: a bitmap that is released to this pool brings
+ * the reservation for its [Bitmap.getAllocationByteCount] along with it, a bitmap that is taken from this pool hands
+ * that reservation over to the caller, and we release it whenever we recycle a pooled bitmap.
+ *
+ * This class is thread-safe.
+ */
+class BitmapPool @JvmOverloads constructor(
+    private val maxPooledBytes: Long,
+    private val memoryBudget: MemoryBudget? = null
+) {
+
+    private val freeBitmaps = ArrayList<Bitmap>()
+    private var pooledBytes = 0L
+
+    private var allocationCount = 0
+    private var reuseCount = 0
+
+    /**
+     * Gets a mutable [Bitmap] of the desired size and config, either by reconfiguring a pooled buffer that is large
+     * enough or by allocating a new one. Note that the content of a reused [Bitmap] is undefined.
+     */
+    fun acquire(width: Int, height: Int, config: Bitmap.Config): Bitmap =
+        acquire(width, height, config, take(getByteCount(width, height, config)))
+
+    /**
+     * Gets a mutable [Bitmap] of the desired size and config by reconfiguring a bitmap that was previously taken
+     * from this pool via [take] or by allocating a new one. If the pooled bitmap cannot be reconfigured, it will be
+     * recycled instead and its reservation (if any) remains with the caller to cover the newly allocated bitmap.
+     */
+    fun acquire(width: Int, height: Int, config: Bitmap.Config, pooledBitmap: Bitmap?): Bitmap {
+        if (pooledBitmap != null) {
+            try {
+                pooledBitmap.reconfigure(width, height, config)
+                recordReuse()
+                return pooledBitmap
+            } catch (e: IllegalArgumentException) {
+                // This buffer cannot be reconfigured to our desired size, so we'll allocate a new one instead
+                pooledBitmap.recycle()
+            }
+        }
+        recordAllocation()
+        return Bitmap.createBitmap(width, height, config)
+    }
+
+    /**
+     * Takes the smallest pooled bitmap that can hold the required number of bytes, so our larger buffers remain
+     * available for larger images. This may be passed to [android.graphics.BitmapFactory.Options.inBitmap] or
+     * reconfigured via [acquire].
+     *
+     * @param requiredBytes the number of bytes that the bitmap will require
+     * @return a pooled [Bitmap] or `null` if no pooled buffer is large enough
+     */
+    fun take(requiredBytes: Long): Bitmap? {
+        synchronized(this) {
+            var bestIndex = -1
+            for (i in freeBitmaps.indices) {
+                val byteCount = freeBitmaps[i].allocationByteCount
+                if (byteCount >= requiredBytes && (bestIndex < 0 || byteCount < freeBitmaps[bestIndex].allocationByteCount)) {
+                    bestIndex = i
+                }
+            }
+            if (bestIndex < 0) {
+                return null
+            }
+            val bitmap = freeBitmaps.removeAt(bestIndex)
+            pooledBytes -= bitmap.allocationByteCount
+            return bitmap
+        }
+    }
+
+    /**
+     * Returns a [Bitmap] to this pool, so its buffer may be reused. If this pool is already full (or the bitmap is
+     * immutable), the bitmap will be recycled instead
+     */
+    fun release(bitmap: Bitmap) {
+        if (bitmap.isRecycled) {
+            return
+        }
+        val byteCount = bitmap.allocationByteCount.toLong()
+        if (bitmap.isMutable) {
+            synchronized(this) {
+                if (pooledBytes + byteCount <= maxPooledBytes) {
+                    freeBitmaps.add(bitmap)
+                    pooledBytes += byteCount
+                    return
+                }
+            }
+        }
+        recycle(bitmap, byteCount)
+    }
+
+    /**
+     * Recycles our largest pooled bitmap, so its memory may be used for something else
+     *
+     * @return `true` if a bitmap was recycled. `false` if this pool was empty
+     */
+    fun evict(): Boolean {
+        val bitmap = synchronized(this) {
+            if (freeBitmaps.isEmpty()) {
+                return false
+            }
+            var largestIndex = 0
+            for (i in freeBitmaps.indices) {
+                if (freeBitmaps[i].allocationByteCount > freeBitmaps[largestIndex].allocationByteCount) {
+                    largestIndex = i
+                }
+            }
+            val largest = freeBitmaps.removeAt(largestIndex)
+            pooledBytes -= largest.allocationByteCount
+            largest
+        }
+        recycle(bitmap, bitmap.allocationByteCount.toLong())
+        return true
+    }
+
+    /**
+     * Recycles all pooled bitmaps
+     */
+    fun clear() {
+        val bitmapsToRecycle = synchronized(this) {
+            val bitmaps = ArrayList(freeBitmaps)
+            freeBitmaps.clear()
+            pooledBytes = 0
+            bitmaps
+        }
+        bitmapsToRecycle.forEach { recycle(it, it.allocationByteCount.toLong()) }
+    }
+
+    @Synchronized
+    fun recordAllocation() {
+        allocationCount++
+    }
+
+    @Synchronized
+    fun recordReuse() {
+        reuseCount++
+    }
+
+    /**
+     * @return the number of bitmaps that were allocated, because no pooled buffer could be reused
+     */
+    @Synchronized
+    fun getAllocationCount(): Int = allocationCount
+
+    /**
+     * @return the number of times that we reused a pooled buffer instead of allocating a new one
+     */
+    @Synchronized
+    fun getReuseCount(): Int = reuseCount
+
+    @Synchronized
+    fun getPooledBytes(): Long = pooledBytes
+
+    /**
+     * Recycles a bitmap that is no longer pooled and releases its reservation. Note that we never call into our
+     * [MemoryBudget] while holding our own lock, since it may reclaim our buffers while holding its lock
+     */
+    private fun recycle(bitmap: Bitmap, byteCount: Long) {
+        bitmap.recycle()
+        memoryBudget?.release(byteCount)
+    }
+
+    companion object {
+
+        @JvmStatic
+        fun getByteCount(width: Int, height: Int, config: Bitmap.Config): Long =
+            width.toLong() * height.toLong() * getBytesPerPixel(config)
+
+        @JvmStatic
+        fun getBytesPerPixel(config: Bitmap.Config): Int = when (config) {
+            Bitmap.Config.ALPHA_8 -> 1
+            Bitmap.Config.RGB_565, Bitmap.Config.ARGB_4444 -> 2
+            else -> 4
+        }
+    }
+}
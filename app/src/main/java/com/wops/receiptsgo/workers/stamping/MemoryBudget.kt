@@ -0,0 +1,91 @@
+package com.wops.receiptsgo.workers.stamping
+
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * Bounds the amount of memory that a set of concurrent operations may reserve at once. Callers block in [acquire]
+ * until enough of the budget has been released by others, so the effective concurrency adapts to the size of each
+ * operation rather than being a fixed thread count.
+ *
+ * To guarantee progress, a single request that exceeds the entire budget is still granted once no other
+ * reservations are outstanding.
+ */
+class MemoryBudget(val budgetBytes: Long) {
+
+    private val lock = ReentrantLock()
+    private val released = lock.newCondition()
+
+    private var reservedBytes = 0L
+
+    /**
+     * The largest number of bytes that were reserved at any one time
+     */
+    var peakReservedBytes = 0L
+        get() = lock.withLock { field }
+        private set
+
+    init {
+        require(budgetBytes > 0) { "The memory budget must be positive" }
+    }
+
+    /**
+     * Reserves a number of bytes from this budget, blocking until they become available
+     *
+     * @param bytes the number of bytes to reserve
+     * @param reclaim called while we wait, with our lock held, to release bytes that are held by idle consumers (eg
+     * a pool of reusable buffers). This must not block and returns `false` once there is nothing left to reclaim
+     * @throws InterruptedException if we were interrupted while waiting
+     */
+    @JvmOverloads
+    @Throws(InterruptedException::class)
+    fun acquire(bytes: Long, reclaim: () -> Boolean = { false }) {
+        require(bytes >= 0) { "Cannot reserve a negative number of bytes" }
+        lock.withLock {
+            while (!canAcquire(bytes)) {
+                if (!reclaim()) {
+                    released.await()
+                }
+            }
+            reserve(bytes)
+        }
+    }
+
+    /**
+     * Reserves a number of bytes from this budget if they are available right now
+     *
+     * @param bytes the number of bytes to reserve
+     * @return `true` if the bytes were reserved. `false` otherwise
+     */
+    fun tryAcquire(bytes: Long): Boolean {
+        require(bytes >= 0) { "Cannot reserve a negative number of bytes" }
+        lock.withLock {
+            if (!canAcquire(bytes)) {
+                return false
+            }
+            reserve(bytes)
+            return true
+        }
+    }
+
+    /**
+     * Releases a number of bytes that were previously reserved via [acquire]
+     *
+     * @param bytes the number of bytes to release
+     */
+    fun release(bytes: Long) {
+        lock.withLock {
+            reservedBytes = Math.max(0, reservedBytes - bytes)
+            released.signalAll()
+        }
+    }
+
+    fun getReservedBytes(): Long = lock.withLock { reservedBytes }
+
+    private fun canAcquire(bytes: Long): Boolean = bytes == 0L || reservedBytes == 0L || reservedBytes + bytes <= budgetBytes
+
+    private fun reserve(bytes: Long) {
+        reservedBytes += bytes
+        peakReservedBytes = Math.max(peakReservedBytes, reservedBytes)
+    }
+}
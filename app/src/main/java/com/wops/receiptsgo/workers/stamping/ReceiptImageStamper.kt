@@ -0,0 +1,461 @@
+package com.wops.receiptsgo.workers.stamping
+
+import android.graphics.*
+import android.graphics.Bitmap.CompressFormat
+import android.graphics.Paint.Align
+import androidx.annotation.VisibleForTesting
+import com.wops.analytics.log.Logger
+import com.wops.receiptsgo.R
+import com.wops.receiptsgo.date.DateFormatter
+import com.wops.receiptsgo.model.Receipt
+import com.wops.receiptsgo.model.Trip
+import com.wops.receiptsgo.model.factory.PriceBuilderFactory
+import com.wops.receiptsgo.settings.UserPreferenceManager
+import com.wops.receiptsgo.settings.catalog.UserPreference
+import com.wops.receiptsgo.utils.PreFixedThreadFactory
+import com.wops.receiptsgo.workers.reports.ReportResourcesManager
+import wb.android.storage.StorageManager
+import java.io.File
+import java.util.*
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Stamps receipt images with their trip and receipt metadata, as used for our "ZIP with metadata" reports.
+ *
+ * Unlike our previous approach (which decoded each image, copied it to make it mutable and then allocated a new
+ * background for it), this decodes each image directly into a mutable [Bitmap] and reuses the pixel buffers of
+ * previously stamped images from a [BitmapPool]. Images are stamped in parallel, but each one must first reserve its
+ * estimated memory usage from a [MemoryBudget], so we only stamp as many images at once as our heap can hold. Our
+ * pooled buffers count against the same budget, so we reclaim them before waiting on other images.
+ */
+class ReceiptImageStamper @JvmOverloads constructor(
+    private val storageManager: StorageManager,
+    private val reportResourcesManager: ReportResourcesManager,
+    private val preferenceManager: UserPreferenceManager,
+    private val dateFormatter: DateFormatter,
+    private val memoryBudget: MemoryBudget = MemoryBudget(Runtime.getRuntime().maxMemory() / 4),
+    private val bitmapPool: BitmapPool = BitmapPool(memoryBudget.budgetBytes / 2, memoryBudget),
+    private val parallelism: Int = Math.max(1, Math.min(MAX_PARALLELISM, Runtime.getRuntime().availableProcessors()))
+) {
+
+    companion object {
+        private const val IMG_SCALE_FACTOR = 2.1f
+        private const val HW_RATIO = 0.75f
+        private const val MAX_FOREGROUND_DIMENSION = 1024
+        private const val MAX_PARALLELISM = 4
+        private const val JPEG_QUALITY = 85
+
+        private val FOREGROUND_CONFIG = Bitmap.Config.RGB_565
+
+        @VisibleForTesting
+        @JvmStatic
+        fun calculateSampleSize(width: Int, height: Int): Int {
+            var scale = 1
+            while (width / scale / 2 >= MAX_FOREGROUND_DIMENSION && height / scale / 2 >= MAX_FOREGROUND_DIMENSION) {
+                scale *= 2
+            }
+            return scale
+        }
+    }
+
+    /**
+     * A single image to stamp
+     *
+     * @param receipt the [Receipt] whose image we will stamp
+     * @param userComment the comment to include in the EXIF data of the stamped image
+     */
+    class StampRequest(val receipt: Receipt, val userComment: String)
+
+    class StampResults {
+        private val stampedCount = AtomicInteger()
+        private val failedCount = AtomicInteger()
+        private val memoryErrorOccurred = AtomicBoolean()
+
+        fun getStampedCount(): Int = stampedCount.get()
+
+        fun getFailedCount(): Int = failedCount.get()
+
+        fun didMemoryErrorOccur(): Boolean = memoryErrorOccurred.get()
+
+        internal fun onStamped() = stampedCount.incrementAndGet()
+
+        internal fun onFailed() = failedCount.incrementAndGet()
+
+        internal fun onMemoryError() = memoryErrorOccurred.set(true)
+    }
+
+    /**
+     * Stamps each of the requested images and writes them to an output directory (using the same file names as the
+     * original images). This blocks until all images have been stamped. If we run out of memory (even after
+     * retrying with a smaller bitmap config), we stop stamping any further images.
+     *
+     * @param trip the parent [Trip] of these receipts
+     * @param requests the [List] of [StampRequest]s to process
+     * @param outputDirectory the directory to write each stamped image into
+     * @return the [StampResults] of this operation
+     */
+    fun stampAll(trip: Trip, requests: List<StampRequest>, outputDirectory: File): StampResults {
+        val results = StampResults()
+        if (requests.isEmpty()) {
+            return results
+        }
+
+        val executor = Executors.newFixedThreadPool(Math.min(parallelism, requests.size), PreFixedThreadFactory(javaClass.simpleName))
+        try {
+            val futures = ArrayList<Future<*>>(requests.size)
+            for (request in requests) {
+                futures.add(executor.submit(Runnable {
+                    if (results.didMemoryErrorOccur()) {
+                        return@Runnable // Don't attempt any further images once we've run out of memory
+                    }
+                    try {
+                        if (stamp(trip, request, outputDirectory)) {
+                            results.onStamped()
+                        } else {
+                            results.onFailed()
+                        }
+                    } catch (e: OutOfMemoryError) {
+                        Logger.error(this, "Failed to recover from OOM", e)
+                        results.onMemoryError()
+                        results.onFailed()
+                    } catch (e: InterruptedException) {
+                        Thread.currentThread().interrupt()
+                        results.onFailed()
+                    }
+                }))
+            }
+            for (future in futures) {
+                try {
+                    future.get()
+                } catch (e: ExecutionException) {
+                    Logger.error(this, "Failed to stamp an image", e.cause ?: e)
+                    results.onFailed()
+                }
+            }
+        } catch (e: InterruptedException) {
+            Logger.warn(this, "Interrupted while stamping our images", e)
+            Thread.currentThread().interrupt()
+        } finally {
+            executor.shutdownNow()
+            bitmapPool.clear()
+        }
+        return results
+    }
+
+    /**
+     * Stamps a single image, reserving its estimated memory usage from our budget for the duration
+     *
+     * @return `true` if the image was stamped and written. `false` otherwise
+     */
+    @Throws(InterruptedException::class)
+    private fun stamp(trip: Trip, request: StampRequest, outputDirectory: File): Boolean {
+        val file = request.receipt.file
+        if (!request.receipt.hasImage() || file == null) {
+            return false
+        }
+
+        // Decode the image bounds first, so we can estimate our memory requirements before allocating anything
+        val boundsOptions = BitmapFactory.Options()
+        boundsOptions.inJustDecodeBounds = true
+        BitmapFactory.decodeFile(file.absolutePath, boundsOptions)
+        if (boundsOptions.outWidth <= 0 || boundsOptions.outHeight <= 0) {
+            Logger.warn(this, "Failed to decode the bounds of {}", file.name)
+            return false
+        }
+
+        val sampleSize = calculateSampleSize(boundsOptions.outWidth, boundsOptions.outHeight)
+        val foregroundWidth = ceilDivide(boundsOptions.outWidth, sampleSize)
+        val foregroundHeight = ceilDivide(boundsOptions.outHeight, sampleSize)
+        return try {
+            stamp(trip, request, file, sampleSize, foregroundWidth, foregroundHeight, Bitmap.Config.ARGB_8888, outputDirectory)
+        } catch (e: OutOfMemoryError) {
+            // Release our pooled buffers and retry with a background that requires half the memory
+            Logger.warn(this, "Trying to recover from OOM", e)
+            bitmapPool.clear()
+            stamp(trip, request, file, sampleSize, foregroundWidth, foregroundHeight, Bitmap.Config.RGB_565, outputDirectory)
+        }
+    }
+
+    @Throws(InterruptedException::class)
+    private fun stamp(
+        trip: Trip, request: StampRequest, file: File, sampleSize: Int, foregroundWidth: Int, foregroundHeight: Int,
+        backgroundConfig: Bitmap.Config, outputDirectory: File
+    ): Boolean {
+        val reservation = reserve(
+            BitmapPool.getByteCount(foregroundWidth, foregroundHeight, FOREGROUND_CONFIG),
+            getBackgroundByteCount(foregroundWidth, foregroundHeight, backgroundConfig)
+        )
+        try {
+            val foreground = decode(file, sampleSize, reservation) ?: return false
+            try {
+                val backgroundLayout = getBackgroundLayout(foreground.width, foreground.height)
+                val background = bitmapPool.acquire(backgroundLayout.width, backgroundLayout.height, backgroundConfig, reservation.takePooledBackground())
+                try {
+                    draw(trip, request.receipt, foreground, background, backgroundLayout)
+                    return storageManager.writeBitmap(outputDirectory, background, file.name, CompressFormat.JPEG, JPEG_QUALITY, request.userComment)
+                } finally {
+                    reservation.release(background)
+                }
+            } finally {
+                reservation.release(foreground)
+            }
+        } finally {
+            reservation.close()
+        }
+    }
+
+    /**
+     * Reserves the memory for an image's foreground and background, taking pooled buffers for either when possible.
+     * Our pool holds its buffers against the same budget, so we only need to reserve the bytes that we'll allocate.
+     */
+    @Throws(InterruptedException::class)
+    private fun reserve(foregroundBytes: Long, backgroundBytes: Long): Reservation {
+        // Note: We take our (larger) background first, so our foreground doesn't claim the only buffer that can hold it
+        var pooledBackground = bitmapPool.take(backgroundBytes)
+        var pooledForeground = bitmapPool.take(foregroundBytes)
+        val missingBytes = (if (pooledForeground == null) foregroundBytes else 0L) + (if (pooledBackground == null) backgroundBytes else 0L)
+        if (memoryBudget.tryAcquire(missingBytes)) {
+            return Reservation(pooledForeground, pooledBackground, missingBytes)
+        }
+
+        // Return these to our pool while we wait, so we never block while holding buffers that others could reclaim
+        pooledForeground?.let { bitmapPool.release(it) }
+        pooledBackground?.let { bitmapPool.release(it) }
+        memoryBudget.acquire(foregroundBytes + backgroundBytes) { bitmapPool.evict() }
+
+        // Any pooled buffers that remain bring their own reservation with them, so we no longer need ours for those
+        pooledBackground = bitmapPool.take(backgroundBytes)
+        pooledForeground = bitmapPool.take(foregroundBytes)
+        val unusedBytes = (if (pooledForeground != null) foregroundBytes else 0L) + (if (pooledBackground != null) backgroundBytes else 0L)
+        memoryBudget.release(unusedBytes)
+        return Reservation(pooledForeground, pooledBackground, foregroundBytes + backgroundBytes - unusedBytes)
+    }
+
+    /**
+     * Decodes an image directly into a mutable [Bitmap], reusing a pooled buffer via
+     * [BitmapFactory.Options.inBitmap] when possible
+     */
+    private fun decode(file: File, sampleSize: Int, reservation: Reservation): Bitmap? {
+        val options = BitmapFactory.Options()
+        options.inSampleSize = sampleSize
+        options.inPreferredConfig = FOREGROUND_CONFIG
+        options.inDither = true
+        options.inMutable = true
+
+        val reusableBitmap = reservation.takePooledForeground()
+        options.inBitmap = reusableBitmap
+        val bitmap = try {
+            BitmapFactory.decodeFile(file.absolutePath, options)
+        } catch (e: IllegalArgumentException) {
+            // The pooled buffer was incompatible with this image, so decode it into a new one instead
+            options.inBitmap = null
+            BitmapFactory.decodeFile(file.absolutePath, options)
+        }
+
+        if (reusableBitmap != null && bitmap === reusableBitmap) {
+            bitmapPool.recordReuse()
+        } else if (bitmap != null) {
+            // Note: The reservation of an unused pooled buffer covers the bitmap that we allocated instead
+            reusableBitmap?.recycle()
+            bitmapPool.recordAllocation()
+        } else {
+            reusableBitmap?.let { reservation.release(it) }
+        }
+        return bitmap
+    }
+
+    private fun getBackgroundLayout(foregroundWidth: Int, foregroundHeight: Int): BackgroundLayout {
+        // Size the image
+        var foreWidth = foregroundWidth
+        var foreHeight = foregroundHeight
+        if (foreHeight > foreWidth) {
+            foreWidth = (foreHeight * HW_RATIO).toInt()
+        } else {
+            foreHeight = (foreWidth / HW_RATIO).toInt()
+        }
+
+        // Set up the padding
+        val xPad = (foreWidth / IMG_SCALE_FACTOR).toInt()
+        val yPad = (foreHeight / IMG_SCALE_FACTOR).toInt()
+        return BackgroundLayout(foreWidth + xPad, foreHeight + yPad, xPad, yPad)
+    }
+
+    private fun getBackgroundByteCount(foregroundWidth: Int, foregroundHeight: Int, config: Bitmap.Config): Long {
+        val backgroundLayout = getBackgroundLayout(foregroundWidth, foregroundHeight)
+        return BitmapPool.getByteCount(backgroundLayout.width, backgroundLayout.height, config)
+    }
+
+    private fun draw(trip: Trip, receipt: Receipt, foreground: Bitmap, background: Bitmap, backgroundLayout: BackgroundLayout) {
+        val xPad = backgroundLayout.xPad
+        val yPad = backgroundLayout.yPad
+
+        // Set up an all white background for our canvas. This also clears any content from a reused buffer
+        val canvas = Canvas(background)
+        canvas.drawARGB(0xFF, 0xFF, 0xFF, 0xFF) //This represents White color
+
+        // Set up the paint
+        val dither = Paint()
+        dither.isDither = true
+        dither.isFilterBitmap = false
+        canvas.drawBitmap(
+            foreground,
+            (background.width - foreground.width) / 2.toFloat(),
+            (background.height - foreground.height) / 2.toFloat(),
+            dither
+        )
+        val brush = Paint()
+        brush.isAntiAlias = true
+        brush.typeface = Typeface.SANS_SERIF
+        brush.color = Color.BLACK
+        brush.style = Paint.Style.FILL
+        brush.textAlign = Align.LEFT
+
+        // Set up the number of items to draw
+        var num = 5
+        if (preferenceManager.get(UserPreference.Receipts.IncludeTaxField)) {
+            num++
+        }
+        if (receipt.hasExtraEditText1()) {
+            num++
+        }
+        if (receipt.hasExtraEditText2()) {
+            num++
+        }
+        if (receipt.hasExtraEditText3()) {
+            num++
+        }
+        val spacing: Float = getOptimalSpacing(num, yPad / 2, brush)
+        var y = spacing * 4
+        canvas.drawText(trip.name, xPad / 2.toFloat(), y, brush)
+        y += spacing
+        canvas.drawText(
+            dateFormatter.getFormattedDate(trip.startDisplayableDate) + " -- " + dateFormatter.getFormattedDate(trip.endDisplayableDate),
+            xPad / 2.toFloat(),
+            y,
+            brush
+        )
+        y = background.height - yPad / 2 + spacing * 2
+        canvas.drawText(
+            reportResourcesManager.getFlexString(R.string.RECEIPTMENU_FIELD_NAME) + ": " + receipt.name,
+            xPad / 2.toFloat(),
+            y,
+            brush
+        )
+        y += spacing
+        canvas.drawText(
+            reportResourcesManager.getFlexString(R.string.RECEIPTMENU_FIELD_PRICE) + ": " + receipt.price.decimalFormattedPrice + " " + receipt.price.currencyCode,
+            xPad / 2.toFloat(),
+            y,
+            brush
+        )
+        y += spacing
+        if (preferenceManager.get(UserPreference.Receipts.IncludeTaxField)) {
+            val totalTax = PriceBuilderFactory(receipt.tax).setPrice(receipt.tax.price.add(receipt.tax2.price)).build()
+            canvas.drawText(
+                reportResourcesManager.getFlexString(R.string.RECEIPTMENU_FIELD_TAX) + ": " + totalTax.decimalFormattedPrice + " " + receipt.price.currencyCode,
+                xPad / 2.toFloat(),
+                y,
+                brush
+            )
+            y += spacing
+        }
+        canvas.drawText(
+            reportResourcesManager.getFlexString(R.string.RECEIPTMENU_FIELD_DATE) + ": " + dateFormatter.getFormattedDate(
+                receipt.date,
+                receipt.timeZone
+            ), xPad / 2.toFloat(), y, brush
+        )
+        y += spacing
+        canvas.drawText(
+            reportResourcesManager.getFlexString(R.string.RECEIPTMENU_FIELD_CATEGORY) + ": " + receipt.category.name,
+            xPad / 2.toFloat(),
+            y,
+            brush
+        )
+        y += spacing
+        canvas.drawText(
+            reportResourcesManager.getFlexString(R.string.RECEIPTMENU_FIELD_COMMENT) + ": " + receipt.comment,
+            xPad / 2.toFloat(),
+            y,
+            brush
+        )
+        y += spacing
+        if (receipt.hasExtraEditText1()) {
+            canvas.drawText(
+                reportResourcesManager.getFlexString(R.string.RECEIPTMENU_FIELD_EXTRA_EDITTEXT_1) + ": " + receipt.extraEditText1,
+                xPad / 2.toFloat(),
+                y,
+                brush
+            )
+            y += spacing
+        }
+        if (receipt.hasExtraEditText2()) {
+            canvas.drawText(
+                reportResourcesManager.getFlexString(R.string.RECEIPTMENU_FIELD_EXTRA_EDITTEXT_2) + ": " + receipt.extraEditText2,
+                xPad / 2.toFloat(),
+                y,
+                brush
+            )
+            y += spacing
+        }
+        if (receipt.hasExtraEditText3()) {
+            canvas.drawText(
+                reportResourcesManager.getFlexString(R.string.RECEIPTMENU_FIELD_EXTRA_EDITTEXT_3) + ": " + receipt.extraEditText3,
+                xPad / 2.toFloat(),
+                y,
+                brush
+            )
+        }
+    }
+
+    private fun getOptimalSpacing(count: Int, space: Int, brush: Paint): Float {
+        var fontSize = 8f //Seed
+        brush.textSize = fontSize
+        while (space > (count + 2) * brush.fontSpacing) {
+            brush.textSize = ++fontSize
+        }
+        brush.textSize = --fontSize
+        return brush.fontSpacing
+    }
+
+    private fun ceilDivide(value: Int, divisor: Int): Int = (value + divisor - 1) / divisor
+
+    private class BackgroundLayout(val width: Int, val height: Int, val xPad: Int, val yPad: Int)
+
+    /**
+     * The bytes that a single image holds from our memory budget, including those of any pooled buffers that it took.
+     * Each bitmap that we release to our pool takes its share of this reservation along with it.
+     */
+    private inner class Reservation(
+        private var pooledForeground: Bitmap?,
+        private var pooledBackground: Bitmap?,
+        reservedBytes: Long
+    ) {
+        private var reservedBytes = reservedBytes +
+                (pooledForeground?.allocationByteCount ?: 0) + (pooledBackground?.allocationByteCount ?: 0)
+
+        fun takePooledForeground(): Bitmap? = pooledForeground.also { pooledForeground = null }
+
+        fun takePooledBackground(): Bitmap? = pooledBackground.also { pooledBackground = null }
+
+        fun release(bitmap: Bitmap) {
+            reservedBytes -= bitmap.allocationByteCount
+            bitmapPool.release(bitmap)
+        }
+
+        /**
+         * Returns any pooled buffers that we didn't use and releases the rest of our reservation
+         */
+        fun close() {
+            takePooledForeground()?.let { release(it) }
+            takePooledBackground()?.let { release(it) }
+            memoryBudget.release(Math.max(0, reservedBytes))
+            reservedBytes = 0
+        }
+    }
+
+}
@@ -0,0 +1,179 @@
+package com.wops.receiptsgo.autocomplete
+
+import com.wops.receiptsgo.DefaultObjects
+import com.wops.receiptsgo.autocomplete.receipt.ReceiptAutoCompleteField
+import com.wops.receiptsgo.autocomplete.receipt.ReceiptAutoCompleteResultsChecker
+import com.wops.receiptsgo.benchmark.Benchmark
+import com.wops.receiptsgo.benchmark.BenchmarkReporter
+import com.wops.receiptsgo.model.Receipt
+import com.wops.receiptsgo.model.factory.ReceiptBuilderFactory
+import com.wops.receiptsgo.persistence.database.operations.DatabaseOperationMetadata
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.experimental.categories.Category
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import java.util.*
+
+@RunWith(RobolectricTestRunner::class)
+class AutoCompleteIndexTest {
+
+    companion object {
+        private const val DAY = 24 * 60 * 60 * 1000L
+        private const val BENCHMARK_RECEIPT_COUNT = 100_000
+        private const val BENCHMARK_DISTINCT_NAMES = 5_000
+        private const val BENCHMARK_QUERIES = 1_000
+    }
+
+    // Class under test
+    private lateinit var index: AutoCompleteIndex<Receipt>
+
+    private val trip = DefaultObjects.newDefaultTrip()
+
+    private val metadata = DatabaseOperationMetadata()
+
+    @Before
+    fun setUp() {
+        index = AutoCompleteIndex(ReceiptAutoCompleteResultsChecker(), listOf(ReceiptAutoCompleteField.Name, ReceiptAutoCompleteField.Comment))
+    }
+
+    @Test
+    fun queryRanksByFrequencyThenRecency() {
+        val taxi1 = newReceipt(1, "Taxi", date = 1 * DAY)
+        val taxi2 = newReceipt(2, "Taxi", date = 2 * DAY)
+        val train = newReceipt(3, "Train", date = 5 * DAY)
+        val tea = newReceipt(4, "Tea", date = 4 * DAY)
+        val lunch = newReceipt(5, "Lunch", date = 6 * DAY)
+        index.build(listOf(taxi1, train, taxi2, tea, lunch))
+
+        assertTrue(index.isBuilt)
+        assertEquals(listOf(AutoCompleteResult("Taxi", taxi1, mutableListOf(taxi2)), AutoCompleteResult("Train", train), AutoCompleteResult("Tea", tea)),
+                index.query(ReceiptAutoCompleteField.Name, "T", 10))
+        assertEquals(listOf(AutoCompleteResult("Taxi", taxi1, mutableListOf(taxi2))), index.query(ReceiptAutoCompleteField.Name, "Ta", 10))
+        assertEquals(listOf(AutoCompleteResult("Taxi", taxi1, mutableListOf(taxi2)), AutoCompleteResult("Train", train)),
+                index.query(ReceiptAutoCompleteField.Name, "T", 2))
+        assertEquals(emptyList<AutoCompleteResult<Receipt>>(), index.query(ReceiptAutoCompleteField.Name, "t", 10))
+    }
+
+    @Test
+    fun queryIgnoresBlankAndHiddenValues() {
+        val blank = newReceipt(1, "  ")
+        val hidden = ReceiptBuilderFactory(2).setTrip(trip).setName("Hidden").setNameHiddenFromAutoComplete(true).build()
+        index.build(listOf(blank, hidden))
+
+        assertEquals(emptyList<AutoCompleteResult<Receipt>>(), index.query(ReceiptAutoCompleteField.Name, " ", 10))
+        assertEquals(emptyList<AutoCompleteResult<Receipt>>(), index.query(ReceiptAutoCompleteField.Name, "H", 10))
+    }
+
+    @Test
+    fun queryIndexesEachFieldSeparately() {
+        val receipt = newReceipt(1, "Dinner", comment = "Client meeting")
+        index.build(listOf(receipt))
+
+        assertEquals(listOf(AutoCompleteResult("Client meeting", receipt)), index.query(ReceiptAutoCompleteField.Comment, "C", 10))
+        assertEquals(emptyList<AutoCompleteResult<Receipt>>(), index.query(ReceiptAutoCompleteField.Name, "C", 10))
+    }
+
+    @Test
+    fun tableEventsAreIgnoredUntilTheIndexIsBuilt() {
+        index.onInsertSuccess(newReceipt(1, "Taxi"), metadata)
+
+        assertEquals(emptyList<AutoCompleteResult<Receipt>>(), index.query(ReceiptAutoCompleteField.Name, "T", 10))
+    }
+
+    @Test
+    fun tableEventsUpdateTheIndexIncrementally() {
+        val taxi = newReceipt(1, "Taxi", date = 1 * DAY)
+        val train = newReceipt(2, "Train", date = 2 * DAY)
+        index.onGetSuccess(listOf(taxi, train))
+
+        // Insert
+        val anotherTaxi = newReceipt(3, "Taxi", date = 3 * DAY)
+        index.onInsertSuccess(anotherTaxi, metadata)
+        assertEquals(listOf(AutoCompleteResult("Taxi", taxi, mutableListOf(anotherTaxi)), AutoCompleteResult("Train", train)),
+                index.query(ReceiptAutoCompleteField.Name, "T", 10))
+
+        // Update (with an equivalent instance of the old receipt)
+        val renamedTaxi = ReceiptBuilderFactory(taxi).setName("Tram").build()
+        index.onUpdateSuccess(ReceiptBuilderFactory(taxi).setComment("").build(), renamedTaxi, metadata)
+        assertEquals(listOf(AutoCompleteResult("Taxi", anotherTaxi), AutoCompleteResult("Train", train), AutoCompleteResult("Tram", renamedTaxi)),
+                index.query(ReceiptAutoCompleteField.Name, "T", 10))
+
+        // Hide
+        val hiddenTrain = ReceiptBuilderFactory(2).setTrip(trip).setName("Train").setDate(2 * DAY).setNameHiddenFromAutoComplete(true).build()
+        index.onUpdateSuccess(train, hiddenTrain, metadata)
+        assertEquals(listOf(AutoCompleteResult("Taxi", anotherTaxi), AutoCompleteResult("Tram", renamedTaxi)),
+                index.query(ReceiptAutoCompleteField.Name, "T", 10))
+
+        // Delete
+        index.onDeleteSuccess(anotherTaxi, metadata)
+        assertEquals(listOf(AutoCompleteResult("Tram", renamedTaxi)), index.query(ReceiptAutoCompleteField.Name, "T", 10))
+    }
+
+    /**
+     * A lightweight benchmark over 100k receipts, which compares our index against our previous approach of scanning
+     * (and de-duplicating) every receipt in the table on each query
+     */
+    @Test
+    @Category(Benchmark::class)
+    fun benchmarkQueriesOverOneHundredThousandReceipts() {
+        val random = Random(42)
+        val names = (0 until BENCHMARK_DISTINCT_NAMES).map { i -> randomWord(random) + " " + i }
+        val receipts = (0 until BENCHMARK_RECEIPT_COUNT).map { i ->
+            // Note: We skew our names towards the start of the list, since a few merchants tend to dominate
+            val nameIndex = Math.min(names.size - 1, (names.size * Math.pow(random.nextDouble(), 3.0)).toInt())
+            newReceipt(i + 1, names[nameIndex], date = i * 60_000L)
+        }
+        val prefixes = (0 until BENCHMARK_QUERIES).map { i ->
+            val name = names[random.nextInt(names.size)]
+            name.substring(0, 1 + i % 3)
+        }
+        val resultsChecker = ReceiptAutoCompleteResultsChecker()
+
+        val buildStart = System.nanoTime()
+        index.build(receipts)
+        val buildMillis = (System.nanoTime() - buildStart) / 1_000_000
+
+        var indexResults = 0
+        val indexStart = System.nanoTime()
+        prefixes.forEach { prefix ->
+            indexResults += index.query(ReceiptAutoCompleteField.Name, prefix, AutoCompleteInteractor.MAX_RESULTS).size
+        }
+        val indexMicros = (System.nanoTime() - indexStart) / 1000 / BENCHMARK_QUERIES
+
+        var scanResults = 0
+        val scanStart = System.nanoTime()
+        prefixes.take(BENCHMARK_QUERIES / 10).forEach { prefix ->
+            val resultsSet = mutableMapOf<CharSequence, AutoCompleteResult<Receipt>>()
+            receipts.forEach {
+                if (resultsChecker.matchesInput(prefix, ReceiptAutoCompleteField.Name, it)) {
+                    val displayName = resultsChecker.getValue(ReceiptAutoCompleteField.Name, it)
+                    resultsSet[displayName]?.additionalItems?.add(it) ?: resultsSet.put(displayName, AutoCompleteResult(displayName, it))
+                }
+            }
+            scanResults += resultsSet.size
+        }
+        val scanMicros = (System.nanoTime() - scanStart) / 1000 / (BENCHMARK_QUERIES / 10)
+
+        BenchmarkReporter.report(javaClass, "AutoCompleteIndex: built over $BENCHMARK_RECEIPT_COUNT receipts in ${buildMillis}ms")
+        BenchmarkReporter.report(javaClass, "AutoCompleteIndex: ${indexMicros}us per indexed query vs ${scanMicros}us per full scan")
+        assertTrue(indexResults > 0)
+        assertTrue(scanResults > 0)
+    }
+
+    private fun newReceipt(id: Int, name: String, comment: String = "", date: Long = 0L): Receipt {
+        return ReceiptBuilderFactory(id).setTrip(trip).setName(name).setComment(comment).setDate(date).build()
+    }
+
+    private fun randomWord(random: Random): String {
+        val length = 3 + random.nextInt(8)
+        val word = StringBuilder(length)
+        word.append('A' + random.nextInt(26))
+        for (i in 1 until length) {
+            word.append('a' + random.nextInt(26))
+        }
+        return word.toString()
+    }
+}
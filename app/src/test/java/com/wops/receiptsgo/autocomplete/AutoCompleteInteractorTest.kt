@@ -1,17 +1,23 @@
 package com.wops.receiptsgo.autocomplete
 
 import com.wops.receiptsgo.persistence.database.controllers.TableController
+import com.wops.receiptsgo.persistence.database.controllers.TableEventsListener
 import com.wops.receiptsgo.settings.UserPreferenceManager
 import com.wops.receiptsgo.settings.catalog.UserPreference
 import com.nhaarman.mockitokotlin2.any
 import com.nhaarman.mockitokotlin2.eq
+import com.nhaarman.mockitokotlin2.times
+import com.nhaarman.mockitokotlin2.verify
 import com.nhaarman.mockitokotlin2.whenever
+import com.wops.receiptsgo.persistence.database.operations.DatabaseOperationMetadata
 import io.reactivex.Single
+import io.reactivex.subjects.PublishSubject
 import io.reactivex.schedulers.Schedulers
 
 import org.junit.Before
 import org.junit.Test
 import org.junit.runner.RunWith
+import org.mockito.ArgumentCaptor
 import org.mockito.Mock
 import org.mockito.MockitoAnnotations
 import org.robolectric.RobolectricTestRunner
@@ -46,10 +52,14 @@ class AutoCompleteInteractorTest {
     @Mock
     private lateinit var nonMatchingResult: Any
 
+    private val cacheClearedSubject = PublishSubject.create<Any>()
+
     @Before
     fun setUp() {
         MockitoAnnotations.initMocks(this)
+        whenever(tableController.cacheClearedStream()).thenReturn(cacheClearedSubject)
         whenever(provider.tableController).thenReturn(tableController)
+        whenever(provider.supportedAutoCompleteFields).thenReturn(listOf(autoCompleteField))
         whenever(tableController.get()).thenReturn(Single.just(listOf(matchingResult1, matchingResult2, nonMatchingResult)))
         whenever(userPreferenceManager[UserPreference.Receipts.EnableAutoCompleteSuggestions]).thenReturn(true)
         whenever(resultsChecker.matchesInput(any(), eq(autoCompleteField), eq(matchingResult1))).thenReturn(true)
@@ -110,4 +120,56 @@ class AutoCompleteInteractorTest {
                 .assertNoErrors()
                 .assertComplete()
     }
-}
\ No newline at end of file
+
+    @Test
+    fun getAutoCompleteResultsOnlyReadsTheTableOnce() {
+        whenever(resultsChecker.getValue(autoCompleteField, matchingResult1)).thenReturn("Test")
+        whenever(resultsChecker.getValue(autoCompleteField, matchingResult2)).thenReturn("Test2")
+        interactor.getAutoCompleteResults(autoCompleteField, "T").test().assertComplete()
+        interactor.getAutoCompleteResults(autoCompleteField, "Te").test().assertComplete()
+        interactor.getAutoCompleteResults(autoCompleteField, "Tes").test().assertComplete()
+        verify(tableController, times(1)).get()
+    }
+
+    @Test
+    fun getAutoCompleteResultsIncludesItemsFromTableEvents() {
+        val newResult = Any()
+        whenever(resultsChecker.getValue(autoCompleteField, matchingResult1)).thenReturn("Test")
+        whenever(resultsChecker.getValue(autoCompleteField, matchingResult2)).thenReturn("Test2")
+        whenever(resultsChecker.getValue(autoCompleteField, newResult)).thenReturn("Test3")
+        interactor.getAutoCompleteResults(autoCompleteField, "T").test().assertComplete()
+
+        @Suppress("UNCHECKED_CAST")
+        val listenerCaptor = ArgumentCaptor.forClass(TableEventsListener::class.java) as ArgumentCaptor<TableEventsListener<Any>>
+        verify(tableController).subscribe(listenerCaptor.capture())
+        listenerCaptor.value.onInsertSuccess(newResult, DatabaseOperationMetadata())
+        listenerCaptor.value.onDeleteSuccess(matchingResult1, DatabaseOperationMetadata())
+
+        interactor.getAutoCompleteResults(autoCompleteField, "T")
+                .test()
+                .assertValues(mutableListOf(AutoCompleteResult("Test2", matchingResult2), AutoCompleteResult("Test3", newResult)))
+                .assertNoErrors()
+                .assertComplete()
+    }
+
+    @Test
+    fun getAutoCompleteResultsAfterARestore() {
+        val restoredResult = Any()
+        whenever(resultsChecker.getValue(autoCompleteField, matchingResult1)).thenReturn("Test")
+        whenever(resultsChecker.getValue(autoCompleteField, matchingResult2)).thenReturn("Test2")
+        whenever(resultsChecker.getValue(autoCompleteField, restoredResult)).thenReturn("Test3")
+        whenever(resultsChecker.matchesInput(any(), eq(autoCompleteField), eq(restoredResult))).thenReturn(true)
+        interactor.getAutoCompleteResults(autoCompleteField, "T").test().assertComplete()
+
+        // Restores write to the table directly and then clear its cache
+        whenever(tableController.get()).thenReturn(Single.just(listOf(restoredResult)))
+        cacheClearedSubject.onNext(Any())
+
+        interactor.getAutoCompleteResults(autoCompleteField, "T")
+                .test()
+                .assertValues(mutableListOf(AutoCompleteResult("Test3", restoredResult)))
+                .assertNoErrors()
+                .assertComplete()
+        verify(tableController, times(2)).get()
+    }
+}
@@ -0,0 +1,9 @@
+package com.wops.receiptsgo.benchmark;
+
+/**
+ * A JUnit category for our timing benchmarks, which are too slow (and too noisy) to include in our regular unit tests.
+ * Tests in this category are excluded by default and can be run via {@code ./gradlew testDebugUnitTest -Pbenchmarks}.
+ * Their results should be recorded with the {@link BenchmarkReporter}
+ */
+public interface Benchmark {
+}
@@ -0,0 +1,48 @@
+package com.wops.receiptsgo.benchmark;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+/**
+ * Records the results of our {@link Benchmark} tests, appending each one to a per-class report file in the directory
+ * that is configured by our build (ie {@code build/reports/benchmarks})
+ */
+public final class BenchmarkReporter {
+
+    private static final String REPORT_DIRECTORY_PROPERTY = "benchmark.reportDirectory";
+    private static final String DEFAULT_REPORT_DIRECTORY = "build/reports/benchmarks";
+
+    private BenchmarkReporter() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Records a single benchmark result
+     *
+     * @param benchmarkClass the test class that ran this benchmark, which determines the report file
+     * @param format         the result message, formatted via {@link String#format(Locale, String, Object...)}
+     * @param args           the format arguments
+     */
+    public static synchronized void report(@NonNull Class<?> benchmarkClass, @NonNull String format, Object... args) {
+        final File directory = new File(System.getProperty(REPORT_DIRECTORY_PROPERTY, DEFAULT_REPORT_DIRECTORY));
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IllegalStateException("Failed to create " + directory);
+        }
+
+        final String result = args.length == 0 ? format : String.format(Locale.US, format, args);
+        final File report = new File(directory, benchmarkClass.getSimpleName() + ".txt");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(report, true), Charset.forName("UTF-8"))) {
+            writer.write(result);
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write to " + report, e);
+        }
+    }
+}
@@ -9,6 +9,7 @@ import com.wops.receiptsgo.persistence.database.controllers.impl.ColumnTableCont
 import com.wops.receiptsgo.persistence.database.operations.DatabaseOperationMetadata
 import com.wops.receiptsgo.persistence.database.operations.OperationFamilyType
 import com.wops.receiptsgo.settings.UserPreferenceManager
+import com.wops.receiptsgo.utils.cache.FileHashStore
 import com.wops.receiptsgo.workers.reports.ReportResourcesManager
 import com.hadisatrio.optional.Optional
 import com.nhaarman.mockitokotlin2.any
@@ -48,6 +49,9 @@ class AbstractColumnsOrdererTest {
     @Mock
     private lateinit var dateFormatter: DateFormatter
 
+    @Mock
+    private lateinit var fileHashStore: FileHashStore
+
     private lateinit var column0 : Column<Receipt>
 
     private lateinit var column1 : Column<Receipt>
@@ -67,7 +71,7 @@ class AbstractColumnsOrdererTest {
     @Before
     fun setUp() {
         MockitoAnnotations.initMocks(this)
-        definitions = ReceiptColumnDefinitions(reportResourcesManager, preferences, dateFormatter)
+        definitions = ReceiptColumnDefinitions(reportResourcesManager, preferences, dateFormatter, fileHashStore)
         column0 = ColumnBuilderFactory(definitions).setCustomOrderId(0).setColumnType(ReceiptColumnDefinitions.ActualDefinition.NAME.columnType).build()
         column1 = ColumnBuilderFactory(definitions).setCustomOrderId(1).setColumnType(ReceiptColumnDefinitions.ActualDefinition.PRICE.columnType).build()
         column2 = ColumnBuilderFactory(definitions).setCustomOrderId(2).setColumnType(ReceiptColumnDefinitions.ActualDefinition.TAX.columnType).build()
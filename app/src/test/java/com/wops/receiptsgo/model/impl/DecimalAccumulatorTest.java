@@ -0,0 +1,81 @@
+package com.wops.receiptsgo.model.impl;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+
+public class DecimalAccumulatorTest {
+
+    @Test
+    public void emptySumIsZero() {
+        final DecimalAccumulator accumulator = new DecimalAccumulator();
+        assertEquals(BigDecimal.ZERO, accumulator.toBigDecimal());
+        assertEquals(0, accumulator.getCount());
+    }
+
+    @Test
+    public void addUsesTheLargestScale() {
+        final DecimalAccumulator accumulator = new DecimalAccumulator();
+        accumulator.add(new BigDecimal("1.5"));
+        accumulator.add(new BigDecimal("2.25"));
+        accumulator.add(new BigDecimal("-10"));
+
+        final BigDecimal expected = new BigDecimal("1.5").add(new BigDecimal("2.25")).add(new BigDecimal("-10"));
+        assertEquals(expected, accumulator.toBigDecimal());
+        assertEquals(2, accumulator.toBigDecimal().scale());
+        assertEquals(3, accumulator.getCount());
+    }
+
+    @Test
+    public void addProductMatchesMultiply() {
+        final BigDecimal rate = BigDecimal.valueOf(0.8765);
+        final DecimalAccumulator accumulator = new DecimalAccumulator();
+        accumulator.addProduct(new BigDecimal("12.34"), rate);
+        accumulator.addProduct(new BigDecimal("-0.99"), rate);
+
+        final BigDecimal expected = new BigDecimal("12.34").multiply(rate).add(new BigDecimal("-0.99").multiply(rate));
+        assertEquals(expected, accumulator.toBigDecimal());
+    }
+
+    @Test
+    public void highScaleValuesFallBackToExactSum() {
+        final BigDecimal tiny = new BigDecimal("0.000000000001");
+        final DecimalAccumulator accumulator = new DecimalAccumulator();
+        accumulator.add(BigDecimal.ONE);
+        accumulator.add(tiny);
+        accumulator.addProduct(tiny, BigDecimal.valueOf(0.5));
+
+        final BigDecimal expected = BigDecimal.ONE.add(tiny).add(tiny.multiply(BigDecimal.valueOf(0.5)));
+        assertEquals(expected, accumulator.toBigDecimal());
+    }
+
+    @Test
+    public void overflowFallsBackToExactSum() {
+        // Each of these fits at our compact scale, but their sum overflows a long
+        final BigDecimal large = BigDecimal.valueOf(Long.MAX_VALUE / 1_000_000_000L);
+        final DecimalAccumulator accumulator = new DecimalAccumulator();
+        BigDecimal expected = BigDecimal.ZERO;
+        for (int i = 0; i < 5; i++) {
+            accumulator.add(large);
+            expected = expected.add(large);
+        }
+        accumulator.add(new BigDecimal("99999999999999999999999.99"));
+        expected = expected.add(new BigDecimal("99999999999999999999999.99"));
+        accumulator.addProduct(new BigDecimal("99999999999999.99"), new BigDecimal("12345.6789"));
+        expected = expected.add(new BigDecimal("99999999999999.99").multiply(new BigDecimal("12345.6789")));
+
+        assertEquals(expected, accumulator.toBigDecimal());
+    }
+
+    @Test
+    public void negativeScaleValuesAreSupported() {
+        final BigDecimal value = new BigDecimal("1E+3");
+        final DecimalAccumulator accumulator = new DecimalAccumulator();
+        accumulator.add(value);
+        accumulator.add(new BigDecimal("0.5"));
+
+        assertEquals(new BigDecimal("1000.5"), accumulator.toBigDecimal());
+    }
+}
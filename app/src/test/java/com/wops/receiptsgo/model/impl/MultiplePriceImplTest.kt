@@ -1,19 +1,25 @@
 package com.wops.receiptsgo.model.impl
 
 import android.os.Parcel
+import com.wops.receiptsgo.benchmark.Benchmark
+import com.wops.receiptsgo.benchmark.BenchmarkReporter
 import com.wops.receiptsgo.model.Distance
+import com.wops.receiptsgo.model.Price
 import com.wops.receiptsgo.model.factory.ExchangeRateBuilderFactory
 import com.wops.receiptsgo.utils.TestLocaleToggler
 import com.wops.receiptsgo.utils.TestUtils
+import org.joda.money.BigMoney
 import org.joda.money.CurrencyUnit
 import org.junit.After
 import org.junit.Assert.*
 import org.junit.Before
 import org.junit.Test
+import org.junit.experimental.categories.Category
 import org.junit.runner.RunWith
 import org.mockito.Mockito.mock
 import org.robolectric.RobolectricTestRunner
 import java.math.BigDecimal
+import java.math.RoundingMode
 import java.util.*
 
 @RunWith(RobolectricTestRunner::class)
@@ -221,4 +227,82 @@ class MultiplePriceImplTest {
         assertEquals("\$US1 002,50", multiplePriceFrance.currencyFormattedPrice)
     }
 
-}
\ No newline at end of file
+    @Test
+    fun mixedCurrencySummationMatchesBigMoney() {
+        val prices = newMixedCurrencyPrices(300)
+
+        val multiplePrice = MultiplePriceImpl(USD_CURRENCY, prices)
+
+        assertEquals(sumViaBigMoney(USD_CURRENCY, prices), multiplePrice.money)
+        assertFalse(multiplePrice.isSingleCurrency)
+    }
+
+    @Test
+    @Category(Benchmark::class)
+    fun benchmarkMixedCurrencySummation() {
+        // Note: This is a simple timing harness, which compares against the previous BigMoney-based summation
+        val prices = newMixedCurrencyPrices(10_000)
+
+        val iterations = 20
+        // Warm up both paths first
+        repeat(5) {
+            sumViaBigMoney(USD_CURRENCY, prices)
+            MultiplePriceImpl(USD_CURRENCY, prices).currencyFormattedPrice
+        }
+
+        var legacyTotal: BigMoney? = null
+        var start = System.nanoTime()
+        repeat(iterations) { legacyTotal = sumViaBigMoney(USD_CURRENCY, prices) }
+        val legacyMillis = (System.nanoTime() - start) / 1_000_000.0 / iterations
+
+        var multiplePrice: MultiplePriceImpl? = null
+        start = System.nanoTime()
+        repeat(iterations) { multiplePrice = MultiplePriceImpl(USD_CURRENCY, prices).also { it.currencyFormattedPrice } }
+        val accumulatorMillis = (System.nanoTime() - start) / 1_000_000.0 / iterations
+
+        BenchmarkReporter.report(javaClass, "Summed 10k mixed-currency prices: BigMoney = ${legacyMillis}ms, accumulator = ${accumulatorMillis}ms")
+        assertEquals(legacyTotal, multiplePrice!!.money)
+        assertFalse(multiplePrice!!.isSingleCurrency)
+    }
+
+    private fun newMixedCurrencyPrices(count: Int): List<Price> {
+        val random = Random(7)
+        val prices = ArrayList<Price>(count)
+        for (i in 0 until count) {
+            val amount = BigDecimal.valueOf(random.nextInt(1_000_000).toLong() - 100_000, 2)
+            prices.add(
+                when (i % 3) {
+                    0 -> SinglePriceImpl(amount, USD_CURRENCY, USD_EXCHANGE_RATE)
+                    1 -> SinglePriceImpl(amount, EUR_CURRENCY, EUR_EXCHANGE_RATE)
+                    else -> SinglePriceImpl(amount.setScale(0, RoundingMode.HALF_EVEN), JPY_CURRENCY, JPY_EXCHANGE_RATE)
+                }
+            )
+        }
+        return prices
+    }
+
+    /**
+     * A copy of our previous summation approach (which created intermediate BigMoney objects for each price and
+     * eagerly formatted the result), which we use as a baseline for our benchmark
+     */
+    private fun sumViaBigMoney(baseCurrency: CurrencyUnit, prices: List<Price>): BigMoney {
+        val notExchangedPriceMap = HashMap<CurrencyUnit, BigMoney>()
+        val currencyToPriceMap = HashMap<CurrencyUnit, BigMoney>()
+        var total = BigMoney.zero(baseCurrency)
+        for (price in prices) {
+            notExchangedPriceMap[price.currency] = notExchangedPriceMap[price.currency]?.plus(price.money) ?: price.money
+            val moneyToAdd = if (price.exchangeRate.supportsExchangeRateFor(baseCurrency)) {
+                val rate = price.exchangeRate.getExchangeRate(baseCurrency.code)
+                if (price.currency == baseCurrency) price.money else price.money.convertedTo(baseCurrency, rate)
+            } else {
+                price.money
+            }
+            total = total.plus(moneyToAdd.amount)
+            currencyToPriceMap[moneyToAdd.currencyUnit] = currencyToPriceMap[moneyToAdd.currencyUnit]?.plus(moneyToAdd) ?: moneyToAdd
+        }
+        val result = total.withCurrencyScale(RoundingMode.HALF_EVEN)
+        Price.moneyFormatter.print(result)
+        return result
+    }
+
+}
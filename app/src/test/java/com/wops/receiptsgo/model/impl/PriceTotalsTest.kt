@@ -0,0 +1,125 @@
+package com.wops.receiptsgo.model.impl
+
+import com.wops.receiptsgo.model.Price
+import com.wops.receiptsgo.model.factory.ExchangeRateBuilderFactory
+import com.wops.receiptsgo.utils.TestLocaleToggler
+import org.joda.money.CurrencyUnit
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import java.math.BigDecimal
+import java.util.*
+
+@RunWith(RobolectricTestRunner::class)
+class PriceTotalsTest {
+
+    companion object {
+        private val USD_CURRENCY = CurrencyUnit.USD
+        private val EUR_CURRENCY = CurrencyUnit.EUR
+        private val JPY_CURRENCY = CurrencyUnit.JPY
+
+        private val USD_EXCHANGE_RATE =
+            ExchangeRateBuilderFactory().setBaseCurrency(USD_CURRENCY).setRate(EUR_CURRENCY, BigDecimal(0.5)).build()
+        private val EUR_EXCHANGE_RATE =
+            ExchangeRateBuilderFactory().setBaseCurrency(EUR_CURRENCY).setRate(USD_CURRENCY, BigDecimal(2.0)).build()
+        private val JPY_EXCHANGE_RATE = ExchangeRateBuilderFactory().setBaseCurrency(JPY_CURRENCY).build()
+    }
+
+    private val priceUsd1 = SinglePriceImpl(BigDecimal.ONE, USD_CURRENCY, USD_EXCHANGE_RATE)
+    private val priceUsd2 = SinglePriceImpl(BigDecimal("2.005"), USD_CURRENCY, USD_EXCHANGE_RATE)
+    private val priceEur1 = SinglePriceImpl(BigDecimal.ONE, EUR_CURRENCY, EUR_EXCHANGE_RATE)
+    private val priceJpy1 = SinglePriceImpl(BigDecimal.ONE, JPY_CURRENCY, JPY_EXCHANGE_RATE)
+
+    @Before
+    fun setUp() {
+        TestLocaleToggler.setDefaultLocale(Locale.US)
+    }
+
+    @After
+    fun tearDown() {
+        TestLocaleToggler.resetDefaultLocale()
+    }
+
+    @Test
+    fun emptyTotalsProduceAZeroPrice() {
+        val priceTotals = PriceTotals(USD_CURRENCY)
+
+        assertTrue(priceTotals.isEmpty)
+        assertEquals(SinglePriceImpl(BigDecimal.ZERO, USD_CURRENCY, ExchangeRateBuilderFactory().setBaseCurrency(USD_CURRENCY).build()), priceTotals.toPrice())
+    }
+
+    @Test
+    fun toPriceMatchesMultiplePriceImpl() {
+        assertMatchesMultiplePrice(listOf(priceUsd1, priceUsd2))
+        assertMatchesMultiplePrice(listOf(priceUsd1, priceUsd2, priceEur1))
+        assertMatchesMultiplePrice(listOf(priceUsd1, priceEur1, priceJpy1))
+    }
+
+    @Test
+    fun subtractRemovesPreviouslyAddedPrices() {
+        val priceTotals = PriceTotals(USD_CURRENCY)
+        listOf(priceUsd1, priceUsd2, priceEur1, priceJpy1).forEach { priceTotals.add(it) }
+
+        priceTotals.subtract(priceJpy1)
+        priceTotals.subtract(priceUsd2)
+
+        assertEquals(2, priceTotals.count)
+        assertMatches(MultiplePriceImpl(USD_CURRENCY, listOf(priceUsd1, priceEur1)), priceTotals.toPrice())
+
+        priceTotals.subtract(priceUsd1)
+        priceTotals.subtract(priceEur1)
+        assertTrue(priceTotals.isEmpty)
+        assertEquals(0, BigDecimal.ZERO.compareTo(priceTotals.toPrice().price))
+    }
+
+    @Test
+    fun addAllCombinesTotals() {
+        val first = PriceTotals(USD_CURRENCY)
+        first.add(priceUsd1)
+        first.add(priceJpy1)
+        val second = PriceTotals(USD_CURRENCY)
+        second.add(priceEur1)
+
+        first.addAll(second)
+
+        assertEquals(3, first.count)
+        assertMatches(MultiplePriceImpl(USD_CURRENCY, listOf(priceUsd1, priceJpy1, priceEur1)), first.toPrice())
+        assertEquals(1, second.count)
+    }
+
+    @Test
+    fun copyIsIndependent() {
+        val priceTotals = PriceTotals(USD_CURRENCY)
+        priceTotals.add(priceUsd1)
+
+        val copy = priceTotals.copy()
+        copy.add(priceUsd2)
+
+        assertEquals(1, priceTotals.count)
+        assertEquals(2, copy.count)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun addAllRequiresTheSameBaseCurrency() {
+        PriceTotals(USD_CURRENCY).addAll(PriceTotals(EUR_CURRENCY))
+    }
+
+    private fun assertMatchesMultiplePrice(prices: List<Price>) {
+        val priceTotals = PriceTotals(USD_CURRENCY)
+        prices.forEach { priceTotals.add(it) }
+        assertMatches(MultiplePriceImpl(USD_CURRENCY, prices), priceTotals.toPrice())
+    }
+
+    private fun assertMatches(expected: Price, actual: Price) {
+        assertEquals(expected, actual)
+        assertEquals(expected.price, actual.price)
+        assertEquals(expected.decimalFormattedPrice, actual.decimalFormattedPrice)
+        assertEquals(expected.currencyFormattedPrice, actual.currencyFormattedPrice)
+        assertEquals(expected.currencyCodeFormattedPrice, actual.currencyCodeFormattedPrice)
+        assertEquals(expected.currencyCode, actual.currencyCode)
+        assertEquals(expected.isSingleCurrency, actual.isSingleCurrency)
+    }
+}
@@ -0,0 +1,137 @@
+package com.wops.receiptsgo.model.impl.columns.receipts
+
+import androidx.test.core.app.ApplicationProvider
+import com.wops.core.sync.model.impl.DefaultSyncState
+import com.wops.receiptsgo.DefaultObjects
+import com.wops.receiptsgo.benchmark.Benchmark
+import com.wops.receiptsgo.benchmark.BenchmarkReporter
+import com.wops.receiptsgo.model.Column
+import com.wops.receiptsgo.model.Receipt
+import com.wops.receiptsgo.model.factory.ReceiptBuilderFactory
+import com.wops.receiptsgo.model.impl.columns.AbstractColumnImpl
+import com.wops.receiptsgo.utils.cache.FileHashStore
+import com.wops.receiptsgo.workers.reports.ReportResourcesManager
+import com.wops.receiptsgo.workers.reports.csv.CsvTableGenerator
+import com.nhaarman.mockitokotlin2.mock
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.experimental.categories.Category
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import java.io.File
+import java.util.*
+
+@RunWith(RobolectricTestRunner::class)
+class ReceiptFileHashColumnTest {
+
+    companion object {
+        private const val BENCHMARK_RECEIPT_COUNT = 50
+        private const val BENCHMARK_FILE_SIZE = 512 * 1024
+
+        /**
+         * We read each cell once to measure our PDF column widths, once to render the PDF, and once more for the CSV
+         */
+        private const val BENCHMARK_PASSES = 3
+    }
+
+    @Rule
+    @JvmField
+    val temporaryFolder = TemporaryFolder()
+
+    // Class under test
+    private lateinit var column: ReceiptFileHashColumn
+
+    private lateinit var fileHashStore: FileHashStore
+
+    private val trip = DefaultObjects.newDefaultTrip()
+
+    @Before
+    fun setUp() {
+        fileHashStore = FileHashStore(ApplicationProvider.getApplicationContext())
+        column = ReceiptFileHashColumn(1, DefaultSyncState(), fileHashStore, 0, UUID.randomUUID())
+    }
+
+    @Test
+    fun getValueWithoutAFile() {
+        assertEquals("", column.getValue(ReceiptBuilderFactory().setTrip(trip).build()))
+    }
+
+    @Test
+    fun getValueReturnsTheEndOfTheFileHash() {
+        val file = temporaryFolder.newFile("receipt.jpg")
+        file.writeText("abc")
+
+        // Note: The SHA-256 hash of "abc" is ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad
+        assertEquals("B410FF61F20015AD", column.getValue(ReceiptBuilderFactory().setTrip(trip).setFile(file).build()))
+    }
+
+    @Test
+    fun reportsMatchReHashingEachFile() {
+        val receipts = newReceipts(5, 1024)
+        val reportResourcesManager = mock<ReportResourcesManager>()
+
+        // Note: We generate two reports, so the second one reads our stored hashes
+        val storedReport = CsvTableGenerator(reportResourcesManager, listOf<Column<Receipt>>(column), false, false).generate(receipts)
+        assertEquals(storedReport, CsvTableGenerator(reportResourcesManager, listOf<Column<Receipt>>(column), false, false).generate(receipts))
+        assertEquals(CsvTableGenerator(reportResourcesManager, listOf<Column<Receipt>>(RehashingFileHashColumn()), false, false).generate(receipts), storedReport)
+    }
+
+    /**
+     * A lightweight benchmark of a report with the hash column, which compares our stored hashes against our previous
+     * approach of re-hashing the entire file each time that a cell is read
+     */
+    @Test
+    @Category(Benchmark::class)
+    fun benchmarkReportGenerationWithTheHashColumn() {
+        val receipts = newReceipts(BENCHMARK_RECEIPT_COUNT, BENCHMARK_FILE_SIZE)
+        val reportResourcesManager = mock<ReportResourcesManager>()
+        val rehashingColumn = RehashingFileHashColumn()
+
+        val rehashingStart = System.nanoTime()
+        var rehashingReport = ""
+        for (i in 0 until BENCHMARK_PASSES) {
+            rehashingReport = CsvTableGenerator(reportResourcesManager, listOf<Column<Receipt>>(rehashingColumn), false, false).generate(receipts)
+        }
+        val rehashingMillis = (System.nanoTime() - rehashingStart) / 1_000_000
+
+        val storedStart = System.nanoTime()
+        var storedReport = ""
+        for (i in 0 until BENCHMARK_PASSES) {
+            storedReport = CsvTableGenerator(reportResourcesManager, listOf<Column<Receipt>>(column), false, false).generate(receipts)
+        }
+        val storedMillis = (System.nanoTime() - storedStart) / 1_000_000
+
+        val warmStart = System.nanoTime()
+        CsvTableGenerator(reportResourcesManager, listOf<Column<Receipt>>(column), false, false).generate(receipts)
+        val warmMillis = (System.nanoTime() - warmStart) / 1_000_000
+
+        BenchmarkReporter.report(javaClass, "ReceiptFileHashColumn: $BENCHMARK_PASSES passes over $BENCHMARK_RECEIPT_COUNT receipts took ${rehashingMillis}ms " +
+                "when re-hashing vs ${storedMillis}ms with our store (${warmMillis}ms for a later report)")
+        assertEquals(rehashingReport, storedReport)
+    }
+
+    private fun newReceipts(count: Int, fileSize: Int): List<Receipt> {
+        val random = Random(42)
+        return (0 until count).map { i ->
+            val file = temporaryFolder.newFile("receipt_$i.jpg")
+            val content = ByteArray(fileSize)
+            random.nextBytes(content)
+            file.writeBytes(content)
+            ReceiptBuilderFactory(i).setTrip(trip).setFile(file).build()
+        }
+    }
+
+    /**
+     * Our previous implementation, which hashed the entire file on each call
+     */
+    private class RehashingFileHashColumn : AbstractColumnImpl<Receipt>(2, ReceiptColumnDefinitions.ActualDefinition.IMAGE_HASH, DefaultSyncState()) {
+
+        override fun getValue(rowItem: Receipt): String {
+            val file: File? = rowItem.file
+            return if (file != null) FileHashStore.hash(file).takeLast(16).toUpperCase(Locale.ENGLISH) else ""
+        }
+    }
+}
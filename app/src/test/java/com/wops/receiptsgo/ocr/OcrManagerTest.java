@@ -21,6 +21,7 @@ import com.wops.receiptsgo.ocr.apis.OcrService;
 import com.wops.receiptsgo.ocr.apis.model.OcrResponse;
 import com.wops.receiptsgo.ocr.apis.model.RecognitionRequest;
 import com.wops.receiptsgo.ocr.apis.model.RecognitionResponse;
+import com.wops.receiptsgo.ocr.preprocessing.OcrImagePreprocessor;
 import com.wops.receiptsgo.ocr.purchases.OcrPurchaseTracker;
 import com.wops.push.ocr.OcrPushMessageReceiver;
 import com.wops.push.ocr.OcrPushMessageReceiverFactory;
@@ -29,9 +30,12 @@ import com.wops.receiptsgo.settings.UserPreferenceManager;
 import com.wops.receiptsgo.settings.catalog.UserPreference;
 import com.wops.receiptsgo.utils.ConfigurableResourceFeature;
 import com.wops.aws.s3.S3Manager;
+import com.wops.aws.s3.S3UploadProgress;
 import com.wops.core.identity.IdentityManager;
 import io.reactivex.Observable;
+import io.reactivex.Single;
 import io.reactivex.observers.TestObserver;
+import io.reactivex.subjects.PublishSubject;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -84,9 +88,15 @@ public class OcrManagerTest {
     @Mock
     ConfigurationManager configurationManager;
 
+    @Mock
+    OcrImagePreprocessor ocrImagePreprocessor;
+
     @Mock
     File file;
 
+    @Mock
+    File preprocessedFile;
+
     @Mock
     OcrService ocrService;
 
@@ -113,6 +123,7 @@ public class OcrManagerTest {
         when(identityManager.isLoggedIn()).thenReturn(true);
         when(ocrPurchaseTracker.hasAvailableScans()).thenReturn(true);
         when(ocrPushMessageReceiverFactory.get()).thenReturn(pushMessageReceiver);
+        when(ocrImagePreprocessor.process(file)).thenReturn(Single.just(file));
         when(s3Manager.upload(file, "ocr/")).thenReturn(Observable.just("https://aws.amazon.com/smartreceipts/ocr/" + IMG_NAME));
         when(ocrWebServiceManager.getService(OcrService.class)).thenReturn(ocrService);
         when(recognitionResponse.getRecognition()).thenReturn(recognition);
@@ -127,7 +138,7 @@ public class OcrManagerTest {
         when(userPreferenceManager.get(UserPreference.Misc.OcrIncognitoMode)).thenReturn(false);
 
         ocrManager = new OcrManagerImpl(s3Manager, identityManager, ocrWebServiceManager, pushManager, ocrPurchaseTracker,
-                ocrInformationalTooltipInteractor, userPreferenceManager, analytics, ocrPushMessageReceiverFactory, configurationManager);
+                ocrInformationalTooltipInteractor, userPreferenceManager, analytics, ocrPushMessageReceiverFactory, configurationManager, ocrImagePreprocessor);
     }
 
     @Test
@@ -146,7 +157,7 @@ public class OcrManagerTest {
         testObserver.assertValue(new OcrResponse());
         testObserver.onComplete();
         testObserver.assertNoErrors();
-        verifyZeroInteractions(s3Manager, ocrWebServiceManager, pushManager, pushMessageReceiver);
+        verifyZeroInteractions(s3Manager, ocrWebServiceManager, pushManager, pushMessageReceiver, ocrImagePreprocessor);
         verify(ocrPurchaseTracker, never()).decrementRemainingScans();
     }
 
@@ -159,7 +170,7 @@ public class OcrManagerTest {
         testObserver.assertValue(new OcrResponse());
         testObserver.onComplete();
         testObserver.assertNoErrors();
-        verifyZeroInteractions(s3Manager, ocrWebServiceManager, pushManager, pushMessageReceiver);
+        verifyZeroInteractions(s3Manager, ocrWebServiceManager, pushManager, pushMessageReceiver, ocrImagePreprocessor);
         verify(ocrPurchaseTracker, never()).decrementRemainingScans();
     }
 
@@ -172,7 +183,7 @@ public class OcrManagerTest {
         testObserver.assertValue(new OcrResponse());
         testObserver.onComplete();
         testObserver.assertNoErrors();
-        verifyZeroInteractions(s3Manager, ocrWebServiceManager, pushManager, pushMessageReceiver);
+        verifyZeroInteractions(s3Manager, ocrWebServiceManager, pushManager, pushMessageReceiver, ocrImagePreprocessor);
         verify(ocrPurchaseTracker, never()).decrementRemainingScans();
     }
 
@@ -185,7 +196,7 @@ public class OcrManagerTest {
         testObserver.assertValue(new OcrResponse());
         testObserver.onComplete();
         testObserver.assertNoErrors();
-        verifyZeroInteractions(s3Manager, ocrWebServiceManager, pushManager, pushMessageReceiver);
+        verifyZeroInteractions(s3Manager, ocrWebServiceManager, pushManager, pushMessageReceiver, ocrImagePreprocessor);
         verify(ocrPurchaseTracker, never()).decrementRemainingScans();
     }
 
@@ -327,4 +338,43 @@ public class OcrManagerTest {
         verify(pushManager).unregisterReceiver(pushMessageReceiver);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void scanUploadsThePreprocessedImage() {
+        when(ocrImagePreprocessor.process(file)).thenReturn(Single.just(preprocessedFile));
+        when(s3Manager.upload(preprocessedFile, "ocr/")).thenReturn(Observable.just("https://aws.amazon.com/smartreceipts/ocr/" + IMG_NAME));
+        ocrManager.scan(file).subscribe(testObserver);
+
+        testObserver.awaitTerminalEvent();
+        testObserver.assertValue(ocrResponse);
+        testObserver.assertComplete();
+        testObserver.assertNoErrors();
+        verify(ocrImagePreprocessor).process(file);
+        verify(s3Manager).upload(preprocessedFile, "ocr/");
+        verify(s3Manager, never()).upload(file, "ocr/");
+        verify(ocrPurchaseTracker).decrementRemainingScans();
+    }
+
+    @Test
+    public void scanReportsTheUploadProgressOfItsImage() {
+        final PublishSubject<S3UploadProgress> uploadProgressSubject = PublishSubject.create();
+        final S3UploadProgress halfway = new S3UploadProgress(file, 50, 100);
+        final S3UploadProgress otherFile = new S3UploadProgress(new File("other.jpg"), 50, 100);
+        final S3UploadProgress complete = new S3UploadProgress(file, 100, 100);
+        when(s3Manager.getUploadProgress()).thenReturn(uploadProgressSubject);
+        when(s3Manager.upload(file, "ocr/")).thenReturn(Observable.defer(() -> {
+            uploadProgressSubject.onNext(halfway);
+            uploadProgressSubject.onNext(otherFile);
+            uploadProgressSubject.onNext(complete);
+            return Observable.just("https://aws.amazon.com/smartreceipts/ocr/" + IMG_NAME);
+        }));
+        final TestObserver<S3UploadProgress> progressObserver = ocrManager.getOcrUploadProgress().test();
+
+        ocrManager.scan(file).subscribe(testObserver);
+        testObserver.awaitTerminalEvent();
+        uploadProgressSubject.onNext(halfway);
+
+        testObserver.assertValue(ocrResponse);
+        progressObserver.assertValues(halfway, complete);
+        progressObserver.assertNotComplete();
+    }
+}
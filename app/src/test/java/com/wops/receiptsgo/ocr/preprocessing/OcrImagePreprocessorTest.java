@@ -0,0 +1,174 @@
+package com.wops.receiptsgo.ocr.preprocessing;
+
+import android.graphics.BitmapFactory;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowBitmapFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+
+import com.wops.receiptsgo.TestResourceReader;
+import com.wops.receiptsgo.benchmark.Benchmark;
+import com.wops.receiptsgo.benchmark.BenchmarkReporter;
+import com.wops.receiptsgo.utils.cache.FileHashStore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class OcrImagePreprocessorTest {
+
+    private static final int MAX_DIMENSION = 1024;
+    private static final long MAX_BYTES = 200 * 1024;
+    private static final int MAX_CACHED_FILES = 2;
+
+    /**
+     * The images in our test corpus. Robolectric cannot render PDFs, so we only benchmark images here
+     */
+    private static final List<String> CORPUS = Arrays.asList(TestResourceReader.RECEIPT_JPG, TestResourceReader.RECEIPT_PNG,
+            TestResourceReader.LONG_RECEIPT_JPG, TestResourceReader.WIDE_RECEIPT_JPG, "sample.jpg", "sample_big.jpg", "sample_with_exif_to_rotate.jpg");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    // Class under test
+    OcrImagePreprocessor preprocessor;
+
+    File cacheDirectory;
+
+    TestResourceReader testResourceReader = new TestResourceReader();
+
+    @Before
+    public void setUp() throws Exception {
+        cacheDirectory = temporaryFolder.newFolder("ocr");
+        preprocessor = new OcrImagePreprocessor(cacheDirectory, MAX_DIMENSION, MAX_BYTES, MAX_CACHED_FILES, new FileHashStore(ApplicationProvider.getApplicationContext()));
+    }
+
+    @Test
+    public void calculateSampleSize() {
+        assertEquals(1, OcrImagePreprocessor.calculateSampleSize(550, 400, MAX_DIMENSION));
+        assertEquals(1, OcrImagePreprocessor.calculateSampleSize(2047, 1000, MAX_DIMENSION));
+        assertEquals(2, OcrImagePreprocessor.calculateSampleSize(2200, 1600, MAX_DIMENSION));
+        assertEquals(2, OcrImagePreprocessor.calculateSampleSize(1600, 4000, MAX_DIMENSION));
+        assertEquals(4, OcrImagePreprocessor.calculateSampleSize(4096, 3072, MAX_DIMENSION));
+    }
+
+    @Test
+    public void processWritesAJpegToOurCache() throws Exception {
+        final File source = copyResource("sample_big.jpg", "source.jpg");
+
+        final File result = preprocessor.process(source).blockingGet();
+
+        assertNotEquals(source, result);
+        assertEquals(cacheDirectory, result.getParentFile());
+        assertTrue(result.getName().endsWith(".jpg"));
+        assertTrue(result.exists());
+    }
+
+    @Test
+    public void processIsCachedByFileContents() throws Exception {
+        final File source = copyResource("sample.jpg", "source.jpg");
+        final File copy = copyResource("sample.jpg", "copy.jpg");
+        final File other = copyResource("sample_big.jpg", "other.jpg");
+
+        final File result = preprocessor.process(source).blockingGet();
+        final long lastModified = result.lastModified();
+
+        assertEquals(result, preprocessor.process(source).blockingGet());
+        assertEquals(result, preprocessor.process(copy).blockingGet());
+        assertNotEquals(result, preprocessor.process(other).blockingGet());
+        assertTrue(result.lastModified() >= lastModified);
+    }
+
+    @Test
+    public void processPrunesTheLeastRecentlyUsedFiles() throws Exception {
+        final File first = preprocessor.process(copyResource("sample.jpg", "1.jpg")).blockingGet();
+        final File second = preprocessor.process(copyResource("sample_big.jpg", "2.jpg")).blockingGet();
+        //noinspection ResultOfMethodCallIgnored
+        first.setLastModified(second.lastModified() - 10_000);
+        final File third = preprocessor.process(copyResource(TestResourceReader.RECEIPT_JPG, "3.jpg")).blockingGet();
+
+        assertFalse(first.exists());
+        assertTrue(second.exists());
+        assertTrue(third.exists());
+        assertEquals(MAX_CACHED_FILES, cacheDirectory.listFiles().length);
+    }
+
+    @Test
+    public void processFallsBackToTheOriginalFileIfItCannotBeDecoded() throws Exception {
+        final File source = temporaryFolder.newFile("invalid.jpg");
+        ShadowBitmapFactory.provideWidthAndHeightHints(source.getAbsolutePath(), 0, 0);
+
+        assertEquals(source, preprocessor.process(source).blockingGet());
+        assertEquals(0, cacheDirectory.listFiles().length);
+    }
+
+    @Test
+    public void processFallsBackToTheOriginalFileIfItDoesNotExist() {
+        final File source = new File(temporaryFolder.getRoot(), "missing.jpg");
+
+        assertEquals(source, preprocessor.process(source).blockingGet());
+    }
+
+    /**
+     * A lightweight benchmark over our sample receipt images, which records the upload size and resolution before and
+     * after pre-processing, as well as the cost of a cache miss and a cache hit. Robolectric does not run the real
+     * JPEG encoder, so the output sizes are only meaningful on a device, but the resolution (and hence pixel) reduction
+     * and the cache behaviour hold everywhere
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void benchmarkPreprocessingOverOurSampleImages() throws Exception {
+        final OcrImagePreprocessor benchmarkPreprocessor = new OcrImagePreprocessor(cacheDirectory, MAX_DIMENSION, MAX_BYTES, CORPUS.size(), new FileHashStore(ApplicationProvider.getApplicationContext()));
+        long totalSourceBytes = 0, totalResultBytes = 0, totalSourcePixels = 0, totalResultPixels = 0;
+        for (final String resource : CORPUS) {
+            final File source = copyResource(resource, resource);
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(source.getAbsolutePath(), options);
+            final long sourcePixels = (long) options.outWidth * options.outHeight;
+            final float scale = Math.min(1f, (float) MAX_DIMENSION / Math.max(options.outWidth, options.outHeight));
+            final long resultPixels = Math.round(options.outWidth * scale) * (long) Math.round(options.outHeight * scale);
+
+            final long missStart = System.nanoTime();
+            final File result = benchmarkPreprocessor.processBlocking(source);
+            final long missMicros = (System.nanoTime() - missStart) / 1000;
+
+            final long hitStart = System.nanoTime();
+            assertEquals(result, benchmarkPreprocessor.processBlocking(source));
+            final long hitMicros = (System.nanoTime() - hitStart) / 1000;
+
+            BenchmarkReporter.report(getClass(), "OcrImagePreprocessor[%s]: %d -> %d bytes, %d -> %d pixels, miss=%dus, hit=%dus",
+                    resource, source.length(), result.length(), sourcePixels, resultPixels, missMicros, hitMicros);
+            totalSourceBytes += source.length();
+            totalResultBytes += result.length();
+            totalSourcePixels += sourcePixels;
+            totalResultPixels += resultPixels;
+            assertTrue(resultPixels <= sourcePixels);
+        }
+        BenchmarkReporter.report(getClass(), "OcrImagePreprocessor[total]: %d -> %d bytes, %d -> %d pixels",
+                totalSourceBytes, totalResultBytes, totalSourcePixels, totalResultPixels);
+        assertEquals(CORPUS.size(), cacheDirectory.listFiles().length);
+    }
+
+    private File copyResource(String resource, String name) throws IOException {
+        final File destination = new File(temporaryFolder.getRoot(), name);
+        Files.copy(testResourceReader.openFile(resource).toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return destination;
+    }
+}
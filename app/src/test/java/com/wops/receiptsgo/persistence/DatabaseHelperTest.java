@@ -0,0 +1,142 @@
+package com.wops.receiptsgo.persistence;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.hadisatrio.optional.Optional;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.util.TimeZone;
+
+import com.wops.receiptsgo.database.DatabaseContext;
+import com.wops.receiptsgo.model.Category;
+import com.wops.receiptsgo.model.PaymentMethod;
+import com.wops.receiptsgo.model.Receipt;
+import com.wops.receiptsgo.model.Trip;
+import com.wops.receiptsgo.model.factory.CategoryBuilderFactory;
+import com.wops.receiptsgo.model.factory.PaymentMethodBuilderFactory;
+import com.wops.receiptsgo.model.factory.ReceiptBuilderFactory;
+import com.wops.receiptsgo.model.impl.columns.receipts.ReceiptColumnDefinitions;
+import com.wops.receiptsgo.persistence.database.defaults.TableDefaultsCustomizer;
+import com.wops.receiptsgo.persistence.database.operations.DatabaseOperationMetadata;
+import com.wops.receiptsgo.persistence.database.tables.ReceiptsTable;
+import com.wops.receiptsgo.persistence.database.tables.ordering.OrderingPreferencesManager;
+import com.wops.receiptsgo.settings.UserPreferenceManager;
+import com.wops.receiptsgo.settings.catalog.UserPreference;
+import com.wops.receiptsgo.utils.TripUtils;
+import wb.android.storage.StorageManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class DatabaseHelperTest {
+
+    private static final double PRICE = 10.25;
+    private static final double DIVERGED_PRICE = 20.5;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    // Class under test
+    DatabaseHelper databaseHelper;
+
+    @Mock
+    StorageManager storageManager;
+
+    @Mock
+    UserPreferenceManager preferences;
+
+    @Mock
+    ReceiptColumnDefinitions receiptColumnDefinitions;
+
+    @Mock
+    TableDefaultsCustomizer tableDefaultsCustomizer;
+
+    @Mock
+    OrderingPreferencesManager orderingPreferencesManager;
+
+    Trip trip;
+
+    Receipt receipt;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(preferences.get(UserPreference.General.DefaultCurrency)).thenReturn("USD");
+        when(preferences.get(UserPreference.Receipts.OnlyIncludeReimbursable)).thenReturn(false);
+        when(preferences.get(UserPreference.Distance.IncludeDistancePriceInReports)).thenReturn(false);
+        when(storageManager.mkdir(anyString())).thenAnswer(invocation -> new File(temporaryFolder.getRoot(), invocation.getArgument(0)));
+
+        final String path = new File(temporaryFolder.getRoot(), "receipts.db").getAbsolutePath();
+        databaseHelper = new DatabaseHelper(new DatabaseContext(ApplicationProvider.getApplicationContext()), storageManager, preferences,
+                receiptColumnDefinitions, tableDefaultsCustomizer, orderingPreferencesManager, Optional.of(path));
+
+        final DatabaseOperationMetadata databaseOperationMetadata = new DatabaseOperationMetadata();
+        final Category category = databaseHelper.getCategoriesTable().insertBlocking(
+                new CategoryBuilderFactory().setName("Meals").setCode("ML").build(), databaseOperationMetadata).get();
+        final PaymentMethod paymentMethod = databaseHelper.getPaymentMethodsTable().insertBlocking(
+                new PaymentMethodBuilderFactory().setMethod("Cash").build(), databaseOperationMetadata).get();
+        trip = databaseHelper.getTripsTable().insertBlocking(TripUtils.newDefaultTripBuilderFactory()
+                .setDirectory(new File(temporaryFolder.getRoot(), "Trip"))
+                .build(), databaseOperationMetadata).get();
+        receipt = databaseHelper.getReceiptsTable().insertBlocking(new ReceiptBuilderFactory()
+                .setTrip(trip)
+                .setName("Receipt")
+                .setCategory(category)
+                .setPaymentMethod(paymentMethod)
+                .setPrice(PRICE)
+                .setCurrency("USD")
+                .setDate(System.currentTimeMillis())
+                .setTimeZone(TimeZone.getDefault())
+                .setComment("")
+                .build(), databaseOperationMetadata).get();
+    }
+
+    @After
+    public void tearDown() {
+        databaseHelper.close();
+    }
+
+    @Test
+    public void verifyTripPriceAndDailyPriceWhenConsistent() {
+        assertTrue(databaseHelper.verifyTripPriceAndDailyPrice(trip));
+        assertEquals(PRICE, trip.getPrice().getPrice().doubleValue(), 0.001);
+        assertEquals(PRICE, trip.getDailySubTotal().getPrice().doubleValue(), 0.001);
+    }
+
+    @Test
+    public void verifyTripPriceAndDailyPriceRebuildsDivergedTotals() {
+        databaseHelper.getTripPriceAndDailyPrice(trip);
+        assertEquals(PRICE, trip.getPrice().getPrice().doubleValue(), 0.001);
+
+        // Change this price behind the back of our running totals
+        databaseHelper.getWritableDatabase().execSQL("UPDATE " + ReceiptsTable.TABLE_NAME + " SET " + ReceiptsTable.COLUMN_PRICE + " = ? WHERE "
+                + ReceiptsTable.COLUMN_ID + " = ?", new Object[]{DIVERGED_PRICE, receipt.getId()});
+        databaseHelper.getTripPriceAndDailyPrice(trip);
+        assertEquals(PRICE, trip.getPrice().getPrice().doubleValue(), 0.001);
+
+        assertFalse(databaseHelper.verifyTripPriceAndDailyPrice(trip));
+        assertEquals(DIVERGED_PRICE, trip.getPrice().getPrice().doubleValue(), 0.001);
+        assertEquals(DIVERGED_PRICE, trip.getDailySubTotal().getPrice().doubleValue(), 0.001);
+
+        // Our running totals were rebuilt, so these remain consistent from now on
+        databaseHelper.getTripPriceAndDailyPrice(trip);
+        assertEquals(DIVERGED_PRICE, trip.getPrice().getPrice().doubleValue(), 0.001);
+        assertEquals(DIVERGED_PRICE, trip.getDailySubTotal().getPrice().doubleValue(), 0.001);
+        assertTrue(databaseHelper.verifyTripPriceAndDailyPrice(trip));
+    }
+
+}
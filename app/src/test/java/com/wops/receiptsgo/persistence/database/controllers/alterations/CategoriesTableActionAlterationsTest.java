@@ -39,6 +39,7 @@ public class CategoriesTableActionAlterationsTest {
                 .assertValue(category2)
                 .assertComplete()
                 .assertNoErrors();
+        verify(receiptsTable).reindexCategoryBlocking(category2);
         verify(receiptsTable).clearCache();
     }
 
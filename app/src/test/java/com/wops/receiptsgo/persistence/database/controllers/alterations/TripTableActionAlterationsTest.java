@@ -72,6 +72,17 @@ public class TripTableActionAlterationsTest {
     public void postGet() throws Exception {
         final List<Trip> trips = Arrays.asList(mTrip1, mTrip2);
 
+        mTripTableActionAlterations.postGet(trips)
+                .test()
+                .assertValue(trips)
+                .assertComplete()
+                .assertNoErrors();
+
+        // Note: We verify our running totals on the first load
+        verify(mDatabaseHelper).verifyTripPriceAndDailyPrice(mTrip1);
+        verify(mDatabaseHelper).verifyTripPriceAndDailyPrice(mTrip2);
+        verify(mDatabaseHelper, never()).getTripPriceAndDailyPrice(mTrip1);
+
         mTripTableActionAlterations.postGet(trips)
                 .test()
                 .assertValue(trips)
@@ -80,6 +91,7 @@ public class TripTableActionAlterationsTest {
 
         verify(mDatabaseHelper).getTripPriceAndDailyPrice(mTrip1);
         verify(mDatabaseHelper).getTripPriceAndDailyPrice(mTrip2);
+        verify(mDatabaseHelper).verifyTripPriceAndDailyPrice(mTrip1);
     }
 
     @Test
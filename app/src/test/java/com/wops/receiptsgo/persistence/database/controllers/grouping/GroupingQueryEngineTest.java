@@ -0,0 +1,266 @@
+package com.wops.receiptsgo.persistence.database.controllers.grouping;
+
+import android.database.sqlite.SQLiteOpenHelper;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.joda.money.CurrencyUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import com.wops.receiptsgo.model.Category;
+import com.wops.receiptsgo.model.PaymentMethod;
+import com.wops.receiptsgo.model.Price;
+import com.wops.receiptsgo.model.Receipt;
+import com.wops.receiptsgo.model.Trip;
+import com.wops.receiptsgo.model.factory.CategoryBuilderFactory;
+import com.wops.receiptsgo.model.factory.ExchangeRateBuilderFactory;
+import com.wops.receiptsgo.model.factory.PriceBuilderFactory;
+import com.wops.receiptsgo.model.factory.ReceiptBuilderFactory;
+import com.wops.receiptsgo.persistence.DatabaseHelper;
+import com.wops.receiptsgo.persistence.database.defaults.TableDefaultsCustomizer;
+import com.wops.receiptsgo.persistence.database.operations.DatabaseOperationMetadata;
+import com.wops.receiptsgo.persistence.database.tables.ReceiptsTable;
+import com.wops.receiptsgo.persistence.database.tables.Table;
+import com.wops.receiptsgo.persistence.database.tables.TestSQLiteOpenHelper;
+import com.wops.receiptsgo.persistence.database.tables.ordering.OrderingPreferencesManager;
+import com.wops.receiptsgo.settings.UserPreferenceManager;
+import io.reactivex.Single;
+import wb.android.storage.StorageManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class GroupingQueryEngineTest {
+
+    private static final int TRIP_ID = 5;
+    private static final String USD = "USD";
+    private static final String EUR = "EUR";
+    private static final long DAY_1 = 1200000000000L;
+    private static final long DAY_2 = DAY_1 + TimeUnit.DAYS.toMillis(3);
+
+    // Class under test
+    GroupingQueryEngine queryEngine;
+
+    @Mock
+    DatabaseHelper databaseHelper;
+
+    @Mock
+    TableDefaultsCustomizer tableDefaultsCustomizer;
+
+    @Mock
+    Table<Trip> tripsTable;
+
+    @Mock
+    Table<PaymentMethod> paymentMethodTable;
+
+    @Mock
+    Table<Category> categoryTable;
+
+    @Mock
+    OrderingPreferencesManager orderingPreferencesManager;
+
+    @Mock
+    StorageManager storageManager;
+
+    @Mock
+    UserPreferenceManager preferences;
+
+    @Mock
+    Trip trip;
+
+    @Mock
+    Trip otherTrip;
+
+    @Mock
+    PaymentMethod paymentMethod;
+
+    SQLiteOpenHelper sqLiteOpenHelper;
+
+    ReceiptsTable receiptsTable;
+
+    Category category1, category2;
+
+    List<Receipt> receipts;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+
+        when(trip.getId()).thenReturn(TRIP_ID);
+        when(trip.getDefaultCurrencyCode()).thenReturn(USD);
+        when(trip.getTripCurrency()).thenReturn(CurrencyUnit.USD);
+        when(tripsTable.findByPrimaryKey(TRIP_ID)).thenReturn(Single.just(trip));
+        when(paymentMethodTable.findByPrimaryKey(anyInt())).thenReturn(Single.just(paymentMethod));
+
+        category1 = new CategoryBuilderFactory().setId(1).setName("Meals").build();
+        category2 = new CategoryBuilderFactory().setId(2).setName("Lodging").build();
+        when(categoryTable.findByPrimaryKey(1)).thenReturn(Single.just(category1));
+        when(categoryTable.findByPrimaryKey(2)).thenReturn(Single.just(category2));
+
+        sqLiteOpenHelper = new TestSQLiteOpenHelper(ApplicationProvider.getApplicationContext());
+        receiptsTable = new ReceiptsTable(sqLiteOpenHelper, tripsTable, paymentMethodTable, categoryTable, storageManager,
+                preferences, orderingPreferencesManager);
+        receiptsTable.onCreate(sqLiteOpenHelper.getWritableDatabase(), tableDefaultsCustomizer);
+        when(databaseHelper.getReceiptsTable()).thenReturn(receiptsTable);
+
+        receipts = new ArrayList<>();
+        receipts.add(insert(category1, USD, "10.00", DAY_1, true));
+        receipts.add(insert(category1, USD, "5.25", DAY_1, false));
+        receipts.add(insert(category2, EUR, "4.00", DAY_2, true));
+        receipts.add(insert(category1, EUR, "1.00", DAY_2, true));
+        receipts.add(insert(category2, USD, "-0.50", DAY_2, false));
+
+        queryEngine = new GroupingQueryEngine(databaseHelper);
+    }
+
+    @After
+    public void tearDown() {
+        sqLiteOpenHelper.getWritableDatabase().execSQL("DROP TABLE IF EXISTS " + receiptsTable.getTableName());
+    }
+
+    @Test
+    public void groupByCategory() {
+        final List<GroupingQueryEngine.GroupedPrices> groups = queryEngine.getGroupedPrices(trip, GroupingQueryEngine.GroupBy.Category, false);
+
+        assertEquals(2, groups.size());
+        for (final GroupingQueryEngine.GroupedPrices group : groups) {
+            final List<Receipt> categoryReceipts = new ArrayList<>();
+            for (final Receipt receipt : receipts) {
+                if (receipt.getCategory().getId() == group.getKey()) {
+                    categoryReceipts.add(receipt);
+                }
+            }
+            assertEquals(categoryReceipts.size(), group.getReceiptCount());
+            assertEquals(sumOfReceipts(categoryReceipts), sum(group.getPrices()));
+            assertEquals(sumOfTaxes(categoryReceipts), sum(group.getTaxes()));
+        }
+    }
+
+    @Test
+    public void groupByCategoryOnlyIncludesReimbursableReceiptsWhenRequested() {
+        final List<GroupingQueryEngine.GroupedPrices> groups = queryEngine.getGroupedPrices(trip, GroupingQueryEngine.GroupBy.Category, true);
+
+        assertEquals(2, groups.size());
+        final GroupingQueryEngine.GroupedPrices category1Group = groups.get(0).getKey() == 1 ? groups.get(0) : groups.get(1);
+        assertEquals(2, category1Group.getReceiptCount());
+        assertEquals(new BigDecimal("12.00"), sum(category1Group.getPrices()));
+    }
+
+    @Test
+    public void groupByDay() {
+        final List<GroupingQueryEngine.GroupedPrices> groups = queryEngine.getGroupedPrices(trip, GroupingQueryEngine.GroupBy.Day, false);
+
+        assertEquals(2, groups.size());
+        for (final GroupingQueryEngine.GroupedPrices group : groups) {
+            if (group.getKey() == TimeUnit.MILLISECONDS.toDays(DAY_1)) {
+                assertEquals(new BigDecimal("15.25"), sum(group.getPrices()));
+            } else {
+                assertEquals(TimeUnit.MILLISECONDS.toDays(DAY_2), group.getKey());
+                assertEquals(new BigDecimal("9.50"), sum(group.getPrices()));
+            }
+        }
+    }
+
+    @Test
+    public void groupByReimbursement() {
+        final List<GroupingQueryEngine.GroupedPrices> groups = queryEngine.getGroupedPrices(trip, GroupingQueryEngine.GroupBy.Reimbursement, false);
+
+        assertEquals(2, groups.size());
+        for (final GroupingQueryEngine.GroupedPrices group : groups) {
+            if (group.getKey() > 0) {
+                assertEquals(3, group.getReceiptCount());
+                assertEquals(new BigDecimal("20.00"), sum(group.getPrices()));
+            } else {
+                assertEquals(2, group.getReceiptCount());
+                assertEquals(new BigDecimal("4.75"), sum(group.getPrices()));
+            }
+        }
+    }
+
+    @Test
+    public void groupedSumsAreRoundedToTheirCurrencyPrecision() {
+        for (int i = 0; i < 10; i++) {
+            receipts.add(insert(category2, USD, "0.10", DAY_2, false));
+            receipts.add(insert(category2, USD, "0.20", DAY_2, false));
+        }
+
+        final List<GroupingQueryEngine.GroupedPrices> groups = queryEngine.getGroupedPrices(trip, GroupingQueryEngine.GroupBy.Category, false);
+
+        assertEquals(2, groups.size());
+        for (final GroupingQueryEngine.GroupedPrices group : groups) {
+            final List<Receipt> categoryReceipts = new ArrayList<>();
+            for (final Receipt receipt : receipts) {
+                if (receipt.getCategory().getId() == group.getKey()) {
+                    categoryReceipts.add(receipt);
+                }
+            }
+            assertEquals(sumOfReceipts(categoryReceipts), sum(group.getPrices()));
+            assertEquals(sumOfTaxes(categoryReceipts), sum(group.getTaxes()));
+            for (final Price price : group.getPrices()) {
+                if (group.getKey() == category2.getId() && USD.equals(price.getCurrencyCode())) {
+                    // -0.50 + 10 * (0.10 + 0.20)
+                    assertEquals(new BigDecimal("2.50"), price.getPrice());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void groupByIgnoresOtherTrips() {
+        when(otherTrip.getId()).thenReturn(TRIP_ID + 1);
+        assertEquals(0, queryEngine.getGroupedPrices(otherTrip, GroupingQueryEngine.GroupBy.Category, false).size());
+    }
+
+    private Receipt insert(Category category, String currency, String price, long date, boolean isReimbursable) {
+        final Receipt receipt = new ReceiptBuilderFactory()
+                .setTrip(trip)
+                .setName("Receipt")
+                .setCategory(category)
+                .setPaymentMethod(paymentMethod)
+                .setDate(date)
+                .setTimeZone(TimeZone.getDefault())
+                .setComment("")
+                .setIsReimbursable(isReimbursable)
+                .setCurrency(currency)
+                .setPrice(price)
+                .setTax("0.10")
+                .setExchangeRate(new ExchangeRateBuilderFactory().setBaseCurrency(currency).setRate(USD, EUR.equals(currency) ? 2.0 : 1.0).build())
+                .build();
+        return receiptsTable.insert(receipt, new DatabaseOperationMetadata()).blockingGet();
+    }
+
+    private BigDecimal sumOfReceipts(List<Receipt> receipts) {
+        final List<Price> prices = new ArrayList<>();
+        for (final Receipt receipt : receipts) {
+            prices.add(receipt.getPrice());
+        }
+        return sum(prices);
+    }
+
+    private BigDecimal sumOfTaxes(List<Receipt> receipts) {
+        final List<Price> taxes = new ArrayList<>();
+        for (final Receipt receipt : receipts) {
+            taxes.add(receipt.getTax());
+            taxes.add(receipt.getTax2());
+        }
+        return sum(taxes);
+    }
+
+    private BigDecimal sum(List<Price> prices) {
+        return new PriceBuilderFactory().setPrices(prices, CurrencyUnit.USD).build().getPrice();
+    }
+}
@@ -10,6 +10,7 @@ import org.mockito.MockitoAnnotations;
 import org.robolectric.RobolectricTestRunner;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import com.wops.receiptsgo.KeyedObject;
@@ -18,6 +19,7 @@ import com.wops.analytics.events.ErrorEvent;
 import com.wops.receiptsgo.persistence.database.controllers.TableEventsListener;
 import com.wops.receiptsgo.persistence.database.controllers.alterations.TableActionAlterations;
 import com.wops.receiptsgo.persistence.database.operations.DatabaseOperationMetadata;
+import com.wops.receiptsgo.persistence.database.operations.OperationFamilyType;
 import com.wops.receiptsgo.persistence.database.tables.Table;
 import io.reactivex.Completable;
 import io.reactivex.Scheduler;
@@ -26,6 +28,7 @@ import io.reactivex.schedulers.Schedulers;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -360,4 +363,104 @@ public class AbstractTableControllerTest {
         verifyZeroInteractions(mListener2);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void onInsertAllSuccess() throws Exception {
+        final KeyedObject insertItem1 = new KeyedObject();
+        final KeyedObject insertItem2 = new KeyedObject();
+        final List<KeyedObject> insertItems = Arrays.asList(insertItem1, insertItem2);
+        final DatabaseOperationMetadata databaseOperationMetadata = new DatabaseOperationMetadata();
+        when(mTableActionAlterations.preInsert(any(KeyedObject.class))).thenAnswer(invocation -> Single.just(invocation.getArgument(0)));
+        when(mTable.insertAll(insertItems, databaseOperationMetadata)).thenReturn(Single.just(insertItems));
+        when(mTableActionAlterations.postInsert(any(KeyedObject.class))).thenAnswer(invocation -> Single.just(invocation.getArgument(0)));
+
+        mAbstractTableController.unsubscribe(mListener2);
+        mAbstractTableController.insertAll(insertItems, databaseOperationMetadata)
+                .test()
+                .assertValue(insertItems)
+                .assertComplete();
+
+        verify(mListener1).onInsertAllSuccess(insertItems, databaseOperationMetadata);
+        verify(mListener3).onInsertAllSuccess(insertItems, databaseOperationMetadata);
+        verify(mListener1, never()).onInsertSuccess(any(KeyedObject.class), any(DatabaseOperationMetadata.class));
+        verifyZeroInteractions(mListener2);
+    }
+
+    @Test
+    public void onInsertAllException() throws Exception {
+        final List<KeyedObject> insertItems = Arrays.asList(new KeyedObject(), new KeyedObject());
+        final Exception e = new Exception();
+        final DatabaseOperationMetadata databaseOperationMetadata = new DatabaseOperationMetadata();
+        when(mTableActionAlterations.preInsert(any(KeyedObject.class))).thenAnswer(invocation -> Single.just(invocation.getArgument(0)));
+        when(mTable.insertAll(insertItems, databaseOperationMetadata)).thenReturn(Single.error(e));
+
+        mAbstractTableController.unsubscribe(mListener2);
+        mAbstractTableController.insertAll(insertItems, databaseOperationMetadata)
+                .test()
+                .assertError(e);
+
+        verify(mAnalytics).record(any(ErrorEvent.class));
+        verify(mListener1).onInsertAllFailure(insertItems, e, databaseOperationMetadata);
+        verify(mListener3).onInsertAllFailure(insertItems, e, databaseOperationMetadata);
+        verifyZeroInteractions(mListener2);
+    }
+
+    @Test
+    public void onUpdateAllSuccess() throws Exception {
+        final List<KeyedObject> oldItems = Arrays.asList(new KeyedObject(), new KeyedObject());
+        final KeyedObject newItem1 = new KeyedObject();
+        final KeyedObject newItem2 = new KeyedObject();
+        final List<KeyedObject> newItems = Arrays.asList(newItem1, newItem2);
+        final DatabaseOperationMetadata databaseOperationMetadata = new DatabaseOperationMetadata();
+        when(mTableActionAlterations.preUpdate(oldItems.get(0), newItem1)).thenReturn(Single.just(newItem1));
+        when(mTableActionAlterations.preUpdate(oldItems.get(1), newItem2)).thenReturn(Single.just(newItem2));
+        when(mTable.updateAll(oldItems, newItems, databaseOperationMetadata)).thenReturn(Single.just(newItems));
+        when(mTableActionAlterations.postUpdate(oldItems.get(0), newItem1)).thenReturn(Single.just(newItem1));
+        when(mTableActionAlterations.postUpdate(oldItems.get(1), newItem2)).thenReturn(Single.just(newItem2));
+
+        mAbstractTableController.unsubscribe(mListener2);
+        mAbstractTableController.updateAll(oldItems, newItems, databaseOperationMetadata)
+                .test()
+                .assertValue(newItems)
+                .assertComplete();
+
+        verify(mListener1).onUpdateAllSuccess(oldItems, newItems, databaseOperationMetadata);
+        verify(mListener3).onUpdateAllSuccess(oldItems, newItems, databaseOperationMetadata);
+        verifyZeroInteractions(mListener2);
+    }
+
+    @Test
+    public void onUpdateAllSilentSuccessDoesNotNotifyListeners() throws Exception {
+        final KeyedObject oldItem = new KeyedObject();
+        final KeyedObject newItem = new KeyedObject();
+        final DatabaseOperationMetadata databaseOperationMetadata = new DatabaseOperationMetadata(OperationFamilyType.Silent);
+        when(mTableActionAlterations.preUpdate(oldItem, newItem)).thenReturn(Single.just(newItem));
+        when(mTable.updateAll(Collections.singletonList(oldItem), Collections.singletonList(newItem), databaseOperationMetadata)).thenReturn(Single.just(Collections.singletonList(newItem)));
+        when(mTableActionAlterations.postUpdate(oldItem, newItem)).thenReturn(Single.just(newItem));
+
+        mAbstractTableController.updateAll(Collections.singletonList(oldItem), Collections.singletonList(newItem), databaseOperationMetadata)
+                .test()
+                .assertValue(Collections.singletonList(newItem));
+
+        verifyZeroInteractions(mListener1, mListener2, mListener3);
+    }
+
+    @Test
+    public void onDeleteAllSuccess() throws Exception {
+        final List<KeyedObject> deleteItems = Arrays.asList(new KeyedObject(), new KeyedObject());
+        final DatabaseOperationMetadata databaseOperationMetadata = new DatabaseOperationMetadata();
+        when(mTableActionAlterations.preDelete(any(KeyedObject.class))).thenAnswer(invocation -> Single.just(invocation.getArgument(0)));
+        when(mTable.deleteAll(deleteItems, databaseOperationMetadata)).thenReturn(Single.just(deleteItems));
+        when(mTableActionAlterations.postDelete(any(KeyedObject.class))).thenAnswer(invocation -> Single.just(invocation.getArgument(0)));
+
+        mAbstractTableController.unsubscribe(mListener2);
+        mAbstractTableController.deleteAll(deleteItems, databaseOperationMetadata)
+                .test()
+                .assertValue(deleteItems)
+                .assertComplete();
+
+        verify(mListener1).onDeleteAllSuccess(deleteItems, databaseOperationMetadata);
+        verify(mListener3).onDeleteAllSuccess(deleteItems, databaseOperationMetadata);
+        verifyZeroInteractions(mListener2);
+    }
+
+}
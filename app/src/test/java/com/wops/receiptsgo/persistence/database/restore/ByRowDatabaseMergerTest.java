@@ -0,0 +1,213 @@
+package com.wops.receiptsgo.persistence.database.restore;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.hadisatrio.optional.Optional;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.UUID;
+
+import com.wops.receiptsgo.benchmark.Benchmark;
+import com.wops.receiptsgo.benchmark.BenchmarkReporter;
+import com.wops.receiptsgo.database.DatabaseContext;
+import com.wops.receiptsgo.model.Category;
+import com.wops.receiptsgo.model.PaymentMethod;
+import com.wops.receiptsgo.model.Receipt;
+import com.wops.receiptsgo.model.Trip;
+import com.wops.receiptsgo.model.factory.CategoryBuilderFactory;
+import com.wops.receiptsgo.model.factory.PaymentMethodBuilderFactory;
+import com.wops.receiptsgo.model.factory.ReceiptBuilderFactory;
+import com.wops.receiptsgo.model.impl.columns.receipts.ReceiptColumnDefinitions;
+import com.wops.receiptsgo.persistence.DatabaseHelper;
+import com.wops.receiptsgo.persistence.database.defaults.TableDefaultsCustomizer;
+import com.wops.receiptsgo.persistence.database.operations.DatabaseOperationMetadata;
+import com.wops.receiptsgo.persistence.database.tables.ordering.OrderingPreferencesManager;
+import com.wops.receiptsgo.settings.UserPreferenceManager;
+import com.wops.receiptsgo.settings.catalog.UserPreference;
+import com.wops.receiptsgo.utils.TripUtils;
+import wb.android.storage.StorageManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class ByRowDatabaseMergerTest {
+
+    private static final int RECEIPTS_PER_TRIP = 250;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    // Class under test
+    ByRowDatabaseMerger merger;
+
+    @Mock
+    StorageManager storageManager;
+
+    @Mock
+    UserPreferenceManager preferences;
+
+    @Mock
+    ReceiptColumnDefinitions receiptColumnDefinitions;
+
+    @Mock
+    TableDefaultsCustomizer tableDefaultsCustomizer;
+
+    @Mock
+    OrderingPreferencesManager orderingPreferencesManager;
+
+    DatabaseContext databaseContext;
+
+    final List<DatabaseHelper> databaseHelpers = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(preferences.get(UserPreference.General.DefaultCurrency)).thenReturn("USD");
+        when(storageManager.mkdir(anyString())).thenAnswer(invocation -> new File(temporaryFolder.getRoot(), invocation.getArgument(0)));
+        databaseContext = new DatabaseContext(ApplicationProvider.getApplicationContext());
+        merger = new ByRowDatabaseMerger();
+    }
+
+    @After
+    public void tearDown() {
+        for (final DatabaseHelper databaseHelper : databaseHelpers) {
+            databaseHelper.close();
+        }
+    }
+
+    @Test
+    public void mergeImportsNewRowsAndSkipsDuplicates() {
+        final DatabaseHelper currentDatabase = newDatabase("current.db");
+        final DatabaseHelper importedDatabase = newDatabase("imported.db");
+        populate(importedDatabase, 500);
+        populate(currentDatabase, 250);
+
+        merger.merge(currentDatabase, importedDatabase).blockingAwait();
+
+        assertEquals(2, currentDatabase.getTripsTable().getBlocking().size());
+        assertEquals(500, currentDatabase.getReceiptsTable().getBlocking().size());
+        assertEquals(2, currentDatabase.getCategoriesTable().getBlocking().size());
+        assertEquals(2, currentDatabase.getPaymentMethodsTable().getBlocking().size());
+
+        // Merging the same backup again should not change anything
+        merger.merge(currentDatabase, importedDatabase).blockingAwait();
+        assertEquals(500, currentDatabase.getReceiptsTable().getBlocking().size());
+        assertEquals(2, currentDatabase.getTripsTable().getBlocking().size());
+    }
+
+    @Test
+    public void mergeMapsImportedReceiptsToTheCurrentTripsAndCategories() {
+        final DatabaseHelper currentDatabase = newDatabase("current.db");
+        final DatabaseHelper importedDatabase = newDatabase("imported.db");
+        populate(importedDatabase, 10);
+        final Trip currentTrip = currentDatabase.getTripsTable().insertBlocking(newTrip(0), new DatabaseOperationMetadata()).get();
+
+        merger.merge(currentDatabase, importedDatabase).blockingAwait();
+
+        final List<Receipt> receipts = currentDatabase.getReceiptsTable().getBlocking(currentTrip, true);
+        assertEquals(10, receipts.size());
+        final List<Category> categories = currentDatabase.getCategoriesTable().getBlocking();
+        for (final Receipt receipt : receipts) {
+            assertEquals(currentTrip.getId(), receipt.getTrip().getId());
+            assertEquals(true, categories.contains(receipt.getCategory()));
+        }
+    }
+
+    @Test
+    @Category(Benchmark.class)
+    public void restoreBenchmark() {
+        // Note: This is a simple timing harness, which restores half-overlapping backups of increasing sizes
+        for (final int size : new int[]{1_000, 5_000, 10_000}) {
+            final DatabaseHelper currentDatabase = newDatabase("current_" + size + ".db");
+            final DatabaseHelper importedDatabase = newDatabase("imported_" + size + ".db");
+            populate(importedDatabase, size);
+            populate(currentDatabase, size / 2);
+
+            final long start = System.nanoTime();
+            merger.merge(currentDatabase, importedDatabase).blockingAwait();
+            final long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            BenchmarkReporter.report(getClass(), "Restored a %d receipt backup into a %d receipt database in %dms", size, size / 2, elapsedMillis);
+            assertEquals(size, currentDatabase.getReceiptsTable().getBlocking().size());
+        }
+    }
+
+    private DatabaseHelper newDatabase(String name) {
+        final String path = new File(temporaryFolder.getRoot(), name).getAbsolutePath();
+        final DatabaseHelper databaseHelper = new DatabaseHelper(databaseContext, storageManager, preferences, receiptColumnDefinitions,
+                tableDefaultsCustomizer, orderingPreferencesManager, Optional.of(path));
+        databaseHelper.getWritableDatabase(); // Create all of our tables
+        databaseHelpers.add(databaseHelper);
+        return databaseHelper;
+    }
+
+    /**
+     * Populates a database with a deterministic set of receipts, so that two databases share the same trips, categories,
+     * payment methods, and receipt uuids for their first {@code receiptCount} receipts
+     */
+    private void populate(DatabaseHelper databaseHelper, int receiptCount) {
+        final DatabaseOperationMetadata databaseOperationMetadata = new DatabaseOperationMetadata();
+
+        final List<Category> categories = databaseHelper.getCategoriesTable().insertAllBlocking(listOf(
+                new CategoryBuilderFactory().setName("Meals").setCode("ML").build(),
+                new CategoryBuilderFactory().setName("Lodging").setCode("LG").build()), databaseOperationMetadata);
+        final List<PaymentMethod> paymentMethods = databaseHelper.getPaymentMethodsTable().insertAllBlocking(listOf(
+                new PaymentMethodBuilderFactory().setMethod("Cash").build(),
+                new PaymentMethodBuilderFactory().setMethod("Card").build()), databaseOperationMetadata);
+
+        final List<Trip> trips = new ArrayList<>();
+        for (int i = 0; i * RECEIPTS_PER_TRIP < receiptCount; i++) {
+            trips.add(newTrip(i));
+        }
+        final List<Trip> insertedTrips = databaseHelper.getTripsTable().insertAllBlocking(trips, databaseOperationMetadata);
+
+        final List<Receipt> receipts = new ArrayList<>(receiptCount);
+        for (int i = 0; i < receiptCount; i++) {
+            receipts.add(new ReceiptBuilderFactory()
+                    .setUuid(new UUID(0, i))
+                    .setTrip(insertedTrips.get(i / RECEIPTS_PER_TRIP))
+                    .setName("Receipt " + i)
+                    .setCategory(categories.get(i % categories.size()))
+                    .setPaymentMethod(paymentMethods.get(i % paymentMethods.size()))
+                    .setPrice(i % 100 + 0.25)
+                    .setCurrency("USD")
+                    .setDate(1500000000000L + i * 60000L)
+                    .setTimeZone(TimeZone.getDefault())
+                    .setComment("")
+                    .build());
+        }
+        databaseHelper.getReceiptsTable().insertAllBlocking(receipts, databaseOperationMetadata);
+    }
+
+    private Trip newTrip(int index) {
+        return TripUtils.newDefaultTripBuilderFactory()
+                .setUuid(new UUID(1, index))
+                .setDirectory(new File(temporaryFolder.getRoot(), "Trip " + index))
+                .build();
+    }
+
+    @SafeVarargs
+    private static <T> List<T> listOf(T... items) {
+        final List<T> list = new ArrayList<>();
+        for (final T item : items) {
+            list.add(item);
+        }
+        return list;
+    }
+}
@@ -1,5 +1,6 @@
 package com.wops.receiptsgo.persistence.database.tables;
 
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.text.TextUtils;
@@ -27,6 +28,7 @@ import com.wops.receiptsgo.persistence.DatabaseHelper;
 import com.wops.receiptsgo.persistence.database.defaults.TableDefaultsCustomizer;
 import com.wops.receiptsgo.persistence.database.operations.DatabaseOperationMetadata;
 import com.wops.receiptsgo.persistence.database.tables.ordering.OrderingPreferencesManager;
+import io.reactivex.observers.TestObserver;
 
 import static com.wops.receiptsgo.persistence.database.tables.AbstractSqlTable.COLUMN_CUSTOM_ORDER_ID;
 import static com.wops.receiptsgo.persistence.database.tables.AbstractSqlTable.COLUMN_DRIVE_IS_SYNCED;
@@ -323,4 +325,74 @@ public class CategoriesTableTest {
         assertTrue(newCategories.isEmpty());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void insertAll() {
+        final Category category3 = new CategoryBuilderFactory().setName("name3").setCode("code3").setCustomOrderId(3).build();
+        final Category category4 = new CategoryBuilderFactory().setName("name4").setCode("code4").setCustomOrderId(4).build();
+
+        final List<Category> insertedCategories = mCategoriesTable.insertAll(Arrays.asList(category3, category4), new DatabaseOperationMetadata()).blockingGet();
+        assertEquals(2, insertedCategories.size());
+        assertEquals("name3", insertedCategories.get(0).getName());
+        assertEquals("name4", insertedCategories.get(1).getName());
+        assertTrue(insertedCategories.get(0).getId() > mCategory2.getId());
+        assertTrue(insertedCategories.get(1).getId() > insertedCategories.get(0).getId());
+
+        final List<Category> categories = mCategoriesTable.get().blockingGet();
+        assertEquals(Arrays.asList(mCategory1, mCategory2, insertedCategories.get(0), insertedCategories.get(1)), categories);
+        assertEquals(insertedCategories.get(1), mCategoriesTable.findByPrimaryKey(insertedCategories.get(1).getId()).blockingGet());
+    }
+
+    @Test
+    public void updateAll() {
+        final Category updateCategory1 = new CategoryBuilderFactory(mCategory1).setName("NewName1").build();
+        final Category updateCategory2 = new CategoryBuilderFactory(mCategory2).setName("NewName2").build();
+
+        final List<Category> updatedCategories = mCategoriesTable.updateAll(Arrays.asList(mCategory1, mCategory2),
+                Arrays.asList(updateCategory1, updateCategory2), new DatabaseOperationMetadata()).blockingGet();
+        assertEquals(2, updatedCategories.size());
+        assertEquals(mCategory1.getId(), updatedCategories.get(0).getId());
+        assertEquals(mCategory1.getUuid(), updatedCategories.get(0).getUuid());
+        assertEquals("NewName1", updatedCategories.get(0).getName());
+        assertEquals("NewName2", updatedCategories.get(1).getName());
+
+        // Confirm that both the cache and the underlying database reflect these changes
+        assertEquals(updatedCategories, mCategoriesTable.get().blockingGet());
+        mCategoriesTable.clearCache();
+        assertEquals(updatedCategories, mCategoriesTable.get().blockingGet());
+    }
+
+    @Test
+    public void clearCacheNotifiesTheCacheClearedStream() {
+        final TestObserver<Object> testObserver = mCategoriesTable.cacheClearedStream().test();
+        mCategoriesTable.clearCache();
+
+        testObserver.assertValueCount(1);
+        testObserver.assertNoErrors();
+        testObserver.assertNotComplete();
+    }
+
+    @Test
+    public void deleteAll() {
+        final List<Category> deletedCategories = mCategoriesTable.deleteAll(Arrays.asList(mCategory1, mCategory2), new DatabaseOperationMetadata()).blockingGet();
+        assertEquals(Arrays.asList(mCategory1, mCategory2), deletedCategories);
+
+        assertTrue(mCategoriesTable.get().blockingGet().isEmpty());
+        mCategoriesTable.clearCache();
+        assertTrue(mCategoriesTable.get().blockingGet().isEmpty());
+    }
+
+    @Test
+    public void deleteAllRollsBackWhenAnyDeleteFails() {
+        final Category missingCategory = new CategoryBuilderFactory().setId(999).setName("missing").build();
+
+        mCategoriesTable.deleteAll(Arrays.asList(mCategory1, missingCategory), new DatabaseOperationMetadata())
+                .test()
+                .assertError(SQLException.class);
+
+        mCategoriesTable.clearCache();
+        final List<Category> categories = mCategoriesTable.get().blockingGet();
+        assertTrue(categories.contains(mCategory1));
+        assertTrue(categories.contains(mCategory2));
+    }
+
+}
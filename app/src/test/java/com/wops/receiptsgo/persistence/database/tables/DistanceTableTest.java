@@ -152,26 +152,27 @@ public class DistanceTableTest {
     public void onCreate() {
         final TableDefaultsCustomizer customizer = mock(TableDefaultsCustomizer.class);
         mDistanceTable.onCreate(mSQLiteDatabase, customizer);
-        verify(mSQLiteDatabase).execSQL(mSqlCaptor.capture());
+        verify(mSQLiteDatabase, atLeastOnce()).execSQL(mSqlCaptor.capture());
         verifyZeroInteractions(customizer);
 
-        assertTrue(mSqlCaptor.getValue().contains("CREATE TABLE distance")); // Table name
-        assertTrue(mSqlCaptor.getValue().contains("id INTEGER PRIMARY KEY AUTOINCREMENT"));
-        assertTrue(mSqlCaptor.getValue().contains("parentKey INTEGER"));
-        assertTrue(mSqlCaptor.getValue().contains("distance DECIMAL(10, 2)"));
-        assertTrue(mSqlCaptor.getValue().contains("location TEXT"));
-        assertTrue(mSqlCaptor.getValue().contains("date DATE"));
-        assertTrue(mSqlCaptor.getValue().contains("timezone TEXT"));
-        assertTrue(mSqlCaptor.getValue().contains("comment TEXT"));
-        assertTrue(mSqlCaptor.getValue().contains("rate DECIMAL(10, 2)"));
-        assertTrue(mSqlCaptor.getValue().contains("rate_currency TEXT"));
-        assertTrue(mSqlCaptor.getValue().contains("drive_sync_id TEXT"));
-        assertTrue(mSqlCaptor.getValue().contains("drive_is_synced BOOLEAN DEFAULT 0"));
-        assertTrue(mSqlCaptor.getValue().contains("drive_marked_for_deletion BOOLEAN DEFAULT 0"));
-        assertTrue(mSqlCaptor.getValue().contains("last_local_modification_time DATE"));
-        assertTrue(mSqlCaptor.getValue().contains("entity_uuid TEXT"));
-        assertTrue(mSqlCaptor.getValue().contains("location_hidden_auto_complete BOOLEAN DEFAULT 0"));
-        assertTrue(mSqlCaptor.getValue().contains("comment_hidden_auto_complete BOOLEAN DEFAULT 0"));
+        assertTrue(mSqlCaptor.getAllValues().get(0).contains("CREATE TABLE distance")); // Table name
+        assertTrue(mSqlCaptor.getAllValues().get(0).contains("id INTEGER PRIMARY KEY AUTOINCREMENT"));
+        assertTrue(mSqlCaptor.getAllValues().get(0).contains("parentKey INTEGER"));
+        assertTrue(mSqlCaptor.getAllValues().get(0).contains("distance DECIMAL(10, 2)"));
+        assertTrue(mSqlCaptor.getAllValues().get(0).contains("location TEXT"));
+        assertTrue(mSqlCaptor.getAllValues().get(0).contains("date DATE"));
+        assertTrue(mSqlCaptor.getAllValues().get(0).contains("timezone TEXT"));
+        assertTrue(mSqlCaptor.getAllValues().get(0).contains("comment TEXT"));
+        assertTrue(mSqlCaptor.getAllValues().get(0).contains("rate DECIMAL(10, 2)"));
+        assertTrue(mSqlCaptor.getAllValues().get(0).contains("rate_currency TEXT"));
+        assertTrue(mSqlCaptor.getAllValues().get(0).contains("drive_sync_id TEXT"));
+        assertTrue(mSqlCaptor.getAllValues().get(0).contains("drive_is_synced BOOLEAN DEFAULT 0"));
+        assertTrue(mSqlCaptor.getAllValues().get(0).contains("drive_marked_for_deletion BOOLEAN DEFAULT 0"));
+        assertTrue(mSqlCaptor.getAllValues().get(0).contains("last_local_modification_time DATE"));
+        assertTrue(mSqlCaptor.getAllValues().get(0).contains("entity_uuid TEXT"));
+        assertTrue(mSqlCaptor.getAllValues().get(0).contains("location_hidden_auto_complete BOOLEAN DEFAULT 0"));
+        assertTrue(mSqlCaptor.getAllValues().get(0).contains("comment_hidden_auto_complete BOOLEAN DEFAULT 0"));
+        assertTrue(mSqlCaptor.getAllValues().contains("CREATE VIRTUAL TABLE IF NOT EXISTS distance_fts USING fts4(location, comment, tokenize=unicode61);"));
     }
 
     @Test
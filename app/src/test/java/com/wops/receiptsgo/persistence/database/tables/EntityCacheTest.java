@@ -0,0 +1,237 @@
+package com.wops.receiptsgo.persistence.database.tables;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import com.wops.receiptsgo.benchmark.Benchmark;
+import com.wops.receiptsgo.benchmark.BenchmarkReporter;
+import com.wops.receiptsgo.model.Keyed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EntityCacheTest {
+
+    private static final int[] BENCHMARK_TABLE_SIZES = new int[]{1_000, 5_000, 20_000};
+    private static final int BENCHMARK_OPERATIONS = 1_000;
+
+    // Class under test
+    EntityCache<TestEntity> cache;
+
+    TestEntity entity1, entity2, entity3;
+
+    @Before
+    public void setUp() {
+        entity1 = new TestEntity(1, 30);
+        entity2 = new TestEntity(2, 10);
+        entity3 = new TestEntity(3, 20);
+        cache = new EntityCache<>(Arrays.asList(entity1, entity2, entity3));
+    }
+
+    @Test
+    public void initialEntitiesAreSorted() {
+        assertEquals(Arrays.asList(entity2, entity3, entity1), cache.toList());
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void presortedEntitiesAreIndexedInTheirGivenOrder() {
+        final EntityCache<TestEntity> presortedCache = EntityCache.fromSorted(Arrays.asList(entity2, entity3, entity1));
+        assertEquals(Arrays.asList(entity2, entity3, entity1), presortedCache.toList());
+        assertEquals(entity3, presortedCache.findByPrimaryKey(3));
+        assertEquals(entity1, presortedCache.findByUuid(entity1.getUuid()));
+
+        final TestEntity entity4 = new TestEntity(4, 15);
+        presortedCache.add(entity4);
+        assertEquals(Arrays.asList(entity2, entity4, entity3, entity1), presortedCache.toList());
+    }
+
+    @Test
+    public void addInsertsInSortedPosition() {
+        final TestEntity entity4 = new TestEntity(4, 15);
+        cache.add(entity4);
+        assertEquals(Arrays.asList(entity2, entity4, entity3, entity1), cache.toList());
+    }
+
+    @Test
+    public void addEqualItemsPreservesInsertionOrder() {
+        final TestEntity entity4 = new TestEntity(4, 20);
+        final TestEntity entity5 = new TestEntity(5, 20);
+        cache.add(entity4);
+        cache.add(entity5);
+        assertEquals(Arrays.asList(entity2, entity3, entity4, entity5, entity1), cache.toList());
+    }
+
+    @Test
+    public void addWithExistingPrimaryKeyReplacesItem() {
+        final TestEntity updatedEntity1 = new TestEntity(1, 5);
+        cache.add(updatedEntity1);
+        assertEquals(Arrays.asList(updatedEntity1, entity2, entity3), cache.toList());
+        assertSame(updatedEntity1, cache.findByPrimaryKey(1));
+    }
+
+    @Test
+    public void findByPrimaryKeyAndUuid() {
+        assertSame(entity3, cache.findByPrimaryKey(3));
+        assertSame(entity3, cache.findByUuid(entity3.getUuid()));
+        assertNull(cache.findByPrimaryKey(99));
+        assertNull(cache.findByUuid(UUID.randomUUID()));
+    }
+
+    @Test
+    public void removeUsesPrimaryKeyForStaleInstances() {
+        final TestEntity staleEntity3 = new TestEntity(3, 99);
+        assertTrue(cache.remove(staleEntity3));
+        assertEquals(Arrays.asList(entity2, entity1), cache.toList());
+        assertNull(cache.findByPrimaryKey(3));
+        assertNull(cache.findByUuid(entity3.getUuid()));
+        assertFalse(cache.remove(staleEntity3));
+    }
+
+    @Test
+    public void removeByPrimaryKey() {
+        assertSame(entity1, cache.removeByPrimaryKey(1));
+        assertNull(cache.removeByPrimaryKey(1));
+        assertEquals(Arrays.asList(entity2, entity3), cache.toList());
+    }
+
+    @Test
+    public void toListReturnsDefensiveCopy() {
+        cache.toList().clear();
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void clear() {
+        cache.clear();
+        assertTrue(cache.isEmpty());
+        assertNull(cache.findByPrimaryKey(1));
+        assertNull(cache.findByUuid(entity1.getUuid()));
+    }
+
+    @Test
+    public void nonComparableEntitiesRetainInsertionOrder() {
+        final UnsortedEntity first = new UnsortedEntity(1);
+        final UnsortedEntity second = new UnsortedEntity(2);
+        final EntityCache<UnsortedEntity> unsortedCache = new EntityCache<>(Arrays.asList(second, first));
+        final UnsortedEntity third = new UnsortedEntity(3);
+        unsortedCache.add(third);
+        assertEquals(Arrays.asList(second, first, third), unsortedCache.toList());
+        assertTrue(unsortedCache.remove(first));
+        assertEquals(Arrays.asList(second, third), unsortedCache.toList());
+    }
+
+    @Test
+    public void randomOperationsMatchFullySortedList() {
+        final Random random = new Random(42);
+        final List<TestEntity> expected = new ArrayList<>();
+        final EntityCache<TestEntity> randomCache = new EntityCache<>();
+        for (int i = 0; i < 2_000; i++) {
+            final TestEntity entity = new TestEntity(i, random.nextInt(200));
+            randomCache.add(entity);
+            expected.add(entity);
+            if (i % 3 == 0) {
+                final TestEntity toRemove = expected.remove(random.nextInt(expected.size()));
+                assertTrue(randomCache.remove(toRemove));
+            }
+        }
+        Collections.sort(expected);
+        assertEquals(expected, randomCache.toList());
+    }
+
+    /**
+     * A lightweight benchmark, which records the per-operation cost of the update and lookup operations that our
+     * tables perform as the table grows. These should remain (roughly) flat instead of growing with the table size
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void benchmarkPerOperationCostAsTableGrows() {
+        final Random random = new Random(7);
+        for (final int tableSize : BENCHMARK_TABLE_SIZES) {
+            final List<TestEntity> entities = new ArrayList<>(tableSize);
+            for (int i = 0; i < tableSize; i++) {
+                entities.add(new TestEntity(i, random.nextInt(tableSize)));
+            }
+            final EntityCache<TestEntity> benchmarkCache = new EntityCache<>(entities);
+
+            final long updateStart = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_OPERATIONS; i++) {
+                final int primaryKey = random.nextInt(tableSize);
+                benchmarkCache.remove(benchmarkCache.findByPrimaryKey(primaryKey));
+                benchmarkCache.add(new TestEntity(primaryKey, random.nextInt(tableSize)));
+            }
+            final long updateNanos = (System.nanoTime() - updateStart) / BENCHMARK_OPERATIONS;
+
+            final long lookupStart = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_OPERATIONS; i++) {
+                benchmarkCache.findByPrimaryKey(random.nextInt(tableSize));
+            }
+            final long lookupNanos = (System.nanoTime() - lookupStart) / BENCHMARK_OPERATIONS;
+
+            BenchmarkReporter.report(getClass(), "EntityCache[size=%d]: update=%dns/op, findByPrimaryKey=%dns/op", tableSize, updateNanos, lookupNanos);
+            assertEquals(tableSize, benchmarkCache.size());
+        }
+    }
+
+    private static class TestEntity implements Keyed, Comparable<TestEntity> {
+
+        private final int id;
+        private final UUID uuid = UUID.randomUUID();
+        private final int sortValue;
+
+        TestEntity(int id, int sortValue) {
+            this.id = id;
+            this.sortValue = sortValue;
+        }
+
+        @Override
+        public int getId() {
+            return id;
+        }
+
+        @NonNull
+        @Override
+        public UUID getUuid() {
+            return uuid;
+        }
+
+        @Override
+        public int compareTo(@NonNull TestEntity other) {
+            return Integer.compare(sortValue, other.sortValue);
+        }
+    }
+
+    private static class UnsortedEntity implements Keyed {
+
+        private final int id;
+        private final UUID uuid = UUID.randomUUID();
+
+        UnsortedEntity(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int getId() {
+            return id;
+        }
+
+        @NonNull
+        @Override
+        public UUID getUuid() {
+            return uuid;
+        }
+    }
+}
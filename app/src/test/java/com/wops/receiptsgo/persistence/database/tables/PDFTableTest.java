@@ -32,6 +32,7 @@ import com.wops.receiptsgo.persistence.database.defaults.TableDefaultsCustomizer
 import com.wops.receiptsgo.persistence.database.operations.DatabaseOperationMetadata;
 import com.wops.receiptsgo.persistence.database.tables.ordering.OrderingPreferencesManager;
 import com.wops.receiptsgo.settings.UserPreferenceManager;
+import com.wops.receiptsgo.utils.cache.FileHashStore;
 import com.wops.core.sync.model.impl.DefaultSyncState;
 import com.wops.receiptsgo.workers.reports.ReportResourcesManager;
 
@@ -60,6 +61,9 @@ public class PDFTableTest {
     @Mock
     DateFormatter dateFormatter;
 
+    @Mock
+    FileHashStore fileHashStore;
+
     @Mock
     SQLiteDatabase sqliteDatabase;
 
@@ -82,7 +86,7 @@ public class PDFTableTest {
         MockitoAnnotations.initMocks(this);
 
         sqliteOpenHelper = new TestSQLiteOpenHelper(ApplicationProvider.getApplicationContext());
-        final ReceiptColumnDefinitions receiptColumnDefinitions = new ReceiptColumnDefinitions(reportResourcesManager, preferences, dateFormatter);
+        final ReceiptColumnDefinitions receiptColumnDefinitions = new ReceiptColumnDefinitions(reportResourcesManager, preferences, dateFormatter, fileHashStore);
         pdfTable = new PDFTable(sqliteOpenHelper, receiptColumnDefinitions, orderingPreferencesManager);
 
         // Now create the table and insert some defaults
@@ -1,5 +1,8 @@
 package com.wops.receiptsgo.persistence.database.tables;
 
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.text.TextUtils;
@@ -19,17 +22,24 @@ import org.mockito.MockitoAnnotations;
 import org.mockito.verification.VerificationMode;
 import org.robolectric.RobolectricTestRunner;
 
+import java.io.File;
+import java.math.BigDecimal;
 import java.sql.Date;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.TimeZone;
 import java.util.UUID;
 
+import com.wops.automatic_backups.drive.journal.DatabaseChangeJournal;
 import com.wops.receiptsgo.model.Category;
 import com.wops.receiptsgo.model.PaymentMethod;
+import com.wops.receiptsgo.model.Price;
+import com.wops.receiptsgo.model.Priceable;
 import com.wops.receiptsgo.model.Receipt;
 import com.wops.receiptsgo.model.Trip;
+import com.wops.receiptsgo.model.factory.PriceBuilderFactory;
 import com.wops.receiptsgo.model.factory.ReceiptBuilderFactory;
 import com.wops.receiptsgo.persistence.DatabaseHelper;
 import com.wops.receiptsgo.persistence.PersistenceManager;
@@ -53,8 +63,10 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -202,10 +214,10 @@ public class ReceiptsTableTest {
     public void onCreate() {
         final TableDefaultsCustomizer customizer = mock(TableDefaultsCustomizer.class);
         mReceiptsTable.onCreate(mSQLiteDatabase, customizer);
-        verify(mSQLiteDatabase).execSQL(mSqlCaptor.capture());
+        verify(mSQLiteDatabase, atLeastOnce()).execSQL(mSqlCaptor.capture());
         verifyZeroInteractions(customizer);
 
-        final String creatingTable = mSqlCaptor.getValue();
+        final String creatingTable = mSqlCaptor.getAllValues().get(0);
         assertTrue(creatingTable.contains("CREATE TABLE receipts"));
         assertTrue(creatingTable.contains("id INTEGER PRIMARY KEY AUTOINCREMENT"));
         assertTrue(creatingTable.contains("path TEXT"));
@@ -235,6 +247,7 @@ public class ReceiptsTableTest {
         assertTrue(creatingTable.contains("uuid TEXT"));
         assertTrue(creatingTable.contains("name_hidden_auto_complete BOOLEAN DEFAULT 0"));
         assertTrue(creatingTable.contains("comment_hidden_auto_complete BOOLEAN DEFAULT 0"));
+        assertTrue(mSqlCaptor.getAllValues().contains("CREATE VIRTUAL TABLE IF NOT EXISTS receipts_fts USING fts4(name, comment, category, price, tokenize=unicode61);"));
     }
 
     @Test
@@ -257,6 +270,7 @@ public class ReceiptsTableTest {
         verifyV18Upgrade(times(1));
         verifyV19Upgrade(times(1));
         verifyV20Upgrade(times(1));
+        verifyV21Upgrade(times(1));
     }
 
     @Test
@@ -279,6 +293,7 @@ public class ReceiptsTableTest {
         verifyV18Upgrade(times(1));
         verifyV19Upgrade(times(1));
         verifyV20Upgrade(times(1));
+        verifyV21Upgrade(times(1));
     }
 
     @Test
@@ -301,6 +316,7 @@ public class ReceiptsTableTest {
         verifyV18Upgrade(times(1));
         verifyV19Upgrade(times(1));
         verifyV20Upgrade(times(1));
+        verifyV21Upgrade(times(1));
     }
 
     @Test
@@ -323,6 +339,7 @@ public class ReceiptsTableTest {
         verifyV18Upgrade(times(1));
         verifyV19Upgrade(times(1));
         verifyV20Upgrade(times(1));
+        verifyV21Upgrade(times(1));
     }
 
     @Test
@@ -345,6 +362,7 @@ public class ReceiptsTableTest {
         verifyV18Upgrade(times(1));
         verifyV19Upgrade(times(1));
         verifyV20Upgrade(times(1));
+        verifyV21Upgrade(times(1));
     }
 
     @Test
@@ -367,6 +385,7 @@ public class ReceiptsTableTest {
         verifyV18Upgrade(times(1));
         verifyV19Upgrade(times(1));
         verifyV20Upgrade(times(1));
+        verifyV21Upgrade(times(1));
     }
 
     @Test
@@ -389,6 +408,7 @@ public class ReceiptsTableTest {
         verifyV18Upgrade(times(1));
         verifyV19Upgrade(times(1));
         verifyV20Upgrade(times(1));
+        verifyV21Upgrade(times(1));
     }
 
     @Test
@@ -411,6 +431,7 @@ public class ReceiptsTableTest {
         verifyV18Upgrade(times(1));
         verifyV19Upgrade(times(1));
         verifyV20Upgrade(times(1));
+        verifyV21Upgrade(times(1));
     }
 
     @Test
@@ -433,6 +454,7 @@ public class ReceiptsTableTest {
         verifyV18Upgrade(times(1));
         verifyV19Upgrade(times(1));
         verifyV20Upgrade(times(1));
+        verifyV21Upgrade(times(1));
     }
 
     @Test
@@ -455,6 +477,7 @@ public class ReceiptsTableTest {
         verifyV18Upgrade(times(1));
         verifyV19Upgrade(times(1));
         verifyV20Upgrade(times(1));
+        verifyV21Upgrade(times(1));
     }
 
     @Test
@@ -477,6 +500,7 @@ public class ReceiptsTableTest {
         verifyV18Upgrade(never());
         verifyV19Upgrade(times(1));
         verifyV20Upgrade(times(1));
+        verifyV21Upgrade(times(1));
     }
 
     @Test
@@ -521,6 +545,12 @@ public class ReceiptsTableTest {
         verifyV18Upgrade(never());
         verifyV19Upgrade(never());
         verifyV20Upgrade(never());
+        verifyV21Upgrade(never());
+    }
+
+    private void verifyV21Upgrade(@NonNull VerificationMode verificationMode) {
+        verify(mSQLiteDatabase, verificationMode).execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS receipts_fts USING fts4(name, comment, category, price, tokenize=unicode61);");
+        verify(mSQLiteDatabase, verificationMode).execSQL("DELETE FROM receipts_fts;");
     }
 
     private void verifyV1Upgrade(@NonNull VerificationMode verificationMode) {
@@ -772,6 +802,31 @@ public class ReceiptsTableTest {
         assertEquals(receipts, Arrays.asList(mReceipt2, updatedReceipt)); // Note: The receipt with the more recent date appears first
     }
 
+    @Test
+    public void updateIsIncludedInOurDriveJournal() throws Exception {
+        // Treat our existing receipts as if they were modified before our last snapshot
+        final SQLiteDatabase database = mSQLiteOpenHelper.getWritableDatabase();
+        final ContentValues values = new ContentValues();
+        values.put(AbstractSqlTable.COLUMN_LAST_LOCAL_MODIFICATION_TIME, 0L);
+        database.update(mReceiptsTable.getTableName(), values, null, null);
+        mReceiptsTable.clearCache();
+        final Receipt receipt = mReceiptsTable.findByPrimaryKey(mReceipt1.getId()).blockingGet();
+        assertEquals(0L, receipt.getSyncState().getLastLocalModificationTime().getTime());
+        final long snapshotTime = System.currentTimeMillis();
+
+        // Note: This copies the sync state (and therefore the modification time) of the original receipt
+        mReceiptsTable.update(receipt, new ReceiptBuilderFactory(receipt).setName(NAME_3).build(), new DatabaseOperationMetadata()).blockingGet();
+
+        final File journal = new File(ApplicationProvider.getApplicationContext().getCacheDir(), DatabaseChangeJournal.FILE_NAME);
+        assertEquals(1, DatabaseChangeJournal.write(database, snapshotTime, journal));
+        try (Cursor cursor = database.rawQuery("SELECT " + ReceiptsTable.COLUMN_NAME + " FROM " + mReceiptsTable.getTableName() + " WHERE "
+                + AbstractSqlTable.COLUMN_LAST_LOCAL_MODIFICATION_TIME + " >= ?", new String[]{Long.toString(snapshotTime)})) {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(NAME_3, cursor.getString(0));
+            assertEquals(1, cursor.getCount());
+        }
+    }
+
     @Test
     public void getAllMarkedReceipts() {
         final SyncState syncState = new DefaultSyncState(new IdentifierMap(Collections.singletonMap(SyncProvider.GoogleDrive, new Identifier("id"))),
@@ -859,4 +914,198 @@ public class ReceiptsTableTest {
         assertEquals(trip3Receipts, Collections.<Receipt>emptyList());
     }
 
+
+    @Test
+    public void searchByPrefix() {
+        assertEquals(Arrays.asList(mReceipt2.getId(), mReceipt1.getId()), getIds(mReceiptsTable.search("nam", null, 10).blockingGet()));
+        assertEquals(Collections.singletonList(mReceipt1.getId()), getIds(mReceiptsTable.search("NAME1", null, 10).blockingGet()));
+        assertEquals(Collections.<Integer>emptyList(), getIds(mReceiptsTable.search("ame", null, 10).blockingGet()));
+    }
+
+    @Test
+    public void searchRanksPrimaryColumnMatchesFirst() {
+        final Receipt receipt3 = mReceiptsTable.insert(mBuilder.setName("Lunch").setComment("Name of the restaurant").setPrice(PRICE_3).setTrip(mTrip3).setDate(DATE_3).setIndex(3).setUuid(UUID_3).build(),
+                new DatabaseOperationMetadata()).blockingGet();
+
+        // Note: Name matches come first (most recent first), followed by the comment match
+        assertEquals(Arrays.asList(mReceipt2.getId(), mReceipt1.getId(), receipt3.getId()), getIds(mReceiptsTable.search("name", null, 10).blockingGet()));
+        assertEquals(Collections.singletonList(receipt3.getId()), getIds(mReceiptsTable.search("name", ReceiptsTable.SEARCH_COLUMN_COMMENT, 10).blockingGet()));
+        assertEquals(Collections.singletonList(receipt3.getId()), getIds(mReceiptsTable.search("name rest", null, 10).blockingGet()));
+    }
+
+    @Test
+    public void searchRespectsLimit() {
+        assertEquals(Collections.singletonList(mReceipt2.getId()), getIds(mReceiptsTable.search("name", null, 1).blockingGet()));
+    }
+
+    @Test
+    public void searchIgnoresQuerySyntax() {
+        assertEquals(Collections.singletonList(mReceipt1.getId()), getIds(mReceiptsTable.search("\"name1*'", null, 10).blockingGet()));
+        assertEquals(Collections.<Integer>emptyList(), getIds(mReceiptsTable.search("name1 OR name2", null, 10).blockingGet()));
+        assertEquals(Collections.<Integer>emptyList(), getIds(mReceiptsTable.search("*\"()", null, 10).blockingGet()));
+    }
+
+    @Test
+    public void searchReflectsUpdatesAndDeletes() {
+        final Receipt updatedReceipt = mReceiptsTable.update(mReceipt1, mBuilder.setName("Dinner").setPrice(PRICE_1).setTrip(mTrip1).setDate(DATE_1).setIndex(1).build(),
+                new DatabaseOperationMetadata()).blockingGet();
+        assertEquals(Collections.<Integer>emptyList(), getIds(mReceiptsTable.search("name1", null, 10).blockingGet()));
+        assertEquals(Collections.singletonList(updatedReceipt.getId()), getIds(mReceiptsTable.search("dinner", null, 10).blockingGet()));
+
+        mReceiptsTable.delete(mReceipt2, new DatabaseOperationMetadata()).blockingGet();
+        assertEquals(Collections.<Integer>emptyList(), getIds(mReceiptsTable.search("name2", null, 10).blockingGet()));
+    }
+
+    @Test
+    public void searchReflectsBatchOperations() {
+        final List<Receipt> insertedReceipts = mReceiptsTable.insertAll(Arrays.asList(
+                mBuilder.setName("Taxi").setPrice(PRICE_3).setTrip(mTrip3).setDate(DATE_3).setIndex(3).setUuid(UUID.randomUUID()).build(),
+                mBuilder.setName("Taxi Tip").setPrice(PRICE_3).setTrip(mTrip3).setDate(DATE_3).setIndex(4).setUuid(UUID.randomUUID()).build()),
+                new DatabaseOperationMetadata()).blockingGet();
+        assertEquals(Arrays.asList(insertedReceipts.get(1).getId(), insertedReceipts.get(0).getId()), getIds(mReceiptsTable.search("tax", null, 10).blockingGet()));
+
+        mReceiptsTable.deleteAll(insertedReceipts, new DatabaseOperationMetadata()).blockingGet();
+        assertEquals(Collections.<Integer>emptyList(), getIds(mReceiptsTable.search("tax", null, 10).blockingGet()));
+    }
+
+    @Test
+    public void searchExcludesReceiptsMarkedForDeletion() {
+        final SyncState syncState = new DefaultSyncState(new IdentifierMap(Collections.singletonMap(SyncProvider.GoogleDrive, new Identifier("id"))),
+                new SyncStatusMap(Collections.singletonMap(SyncProvider.GoogleDrive, false)),
+                new MarkedForDeletionMap(Collections.singletonMap(SyncProvider.GoogleDrive, false)),
+                new Date(System.currentTimeMillis()));
+        final Receipt receipt = mReceiptsTable.insert(mBuilder.setName("Hotel").setPrice(PRICE_3).setTrip(mTrip3).setSyncState(syncState).build(), new DatabaseOperationMetadata()).blockingGet();
+        assertEquals(Collections.singletonList(receipt.getId()), getIds(mReceiptsTable.search("hotel", null, 10).blockingGet()));
+
+        // Note: Since this receipt has been synced, this will only mark it for deletion
+        mReceiptsTable.delete(receipt, new DatabaseOperationMetadata()).blockingGet();
+        assertEquals(Collections.<Integer>emptyList(), getIds(mReceiptsTable.search("hotel", null, 10).blockingGet()));
+    }
+
+    @Test
+    public void searchIndexesPricesTheSameWayWhenWritingAndRebuilding() {
+        final SQLiteDatabase db = mSQLiteOpenHelper.getWritableDatabase();
+        // Note: Our rebuild statement joins against the categories table, which isn't otherwise created here
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + CategoriesTable.TABLE_NAME + " (" + CategoriesTable.COLUMN_ID + " INTEGER PRIMARY KEY, "
+                + CategoriesTable.COLUMN_NAME + " TEXT, " + CategoriesTable.COLUMN_CODE + " TEXT)");
+        try {
+            mReceiptsTable.insert(mBuilder.setName(NAME_3).setPrice(PRICE_3).setTrip(mTrip3).setUuid(UUID_3).build(), new DatabaseOperationMetadata()).blockingGet();
+            final List<String> writtenPrices = getIndexedPrices(db);
+            assertEquals(Arrays.asList("12.55", "140.00", "12.12"), writtenPrices);
+
+            mReceiptsTable.reindexCategoryBlocking(mCategory);
+            assertEquals(writtenPrices, getIndexedPrices(db));
+
+            // Older rows may have been stored with a locale-specific separator
+            db.execSQL("UPDATE " + ReceiptsTable.TABLE_NAME + " SET " + ReceiptsTable.COLUMN_PRICE + " = '12,50' WHERE " + ReceiptsTable.COLUMN_ID + " = ?",
+                    new Object[]{mReceipt1.getId()});
+            mReceiptsTable.reindexCategoryBlocking(mCategory);
+            assertEquals(ReceiptsTable.formatSearchPrice(new BigDecimal("12.50")), getIndexedPrices(db).get(0));
+            assertEquals(Collections.singletonList(mReceipt1.getId()), getIds(mReceiptsTable.search("12.50", ReceiptsTable.SEARCH_COLUMN_PRICE, 10).blockingGet()));
+        } finally {
+            db.execSQL("DROP TABLE IF EXISTS " + CategoriesTable.TABLE_NAME);
+        }
+    }
+
+    @Test
+    public void priceTotalsAreUpdatedIncrementally() {
+        assertEquals(PRICE_1, mReceiptsTable.getPriceTotalsBlocking(mTrip1, false).toPrice().getPrice().doubleValue(), 0.001);
+        assertTrue(mReceiptsTable.getDailyPriceTotalsBlocking(mTrip1, false).isEmpty());
+
+        // Add a non-reimbursable receipt for today
+        final Receipt receipt = mReceiptsTable.insert(mBuilder.setName(NAME_3).setPrice(PRICE_3).setTrip(mTrip1).setDate(System.currentTimeMillis()).setIsReimbursable(false).build(),
+                new DatabaseOperationMetadata()).blockingGet();
+        assertEquals(24.67, mReceiptsTable.getPriceTotalsBlocking(mTrip1, false).toPrice().getPrice().doubleValue(), 0.001);
+        assertEquals(PRICE_1, mReceiptsTable.getPriceTotalsBlocking(mTrip1, true).toPrice().getPrice().doubleValue(), 0.001);
+        assertEquals(12.12, mReceiptsTable.getDailyPriceTotalsBlocking(mTrip1, false).toPrice().getPrice().doubleValue(), 0.001);
+        assertTrue(mReceiptsTable.getDailyPriceTotalsBlocking(mTrip1, true).isEmpty());
+        assertEquals(calculatePriceFromScratch(mTrip1), mReceiptsTable.getPriceTotalsBlocking(mTrip1, false).toPrice());
+
+        // Update it to be reimbursable with a different price
+        final Receipt updatedReceipt = mReceiptsTable.update(receipt, new ReceiptBuilderFactory(receipt).setPrice(PRICE_2).setIsReimbursable(true).build(),
+                new DatabaseOperationMetadata()).blockingGet();
+        assertEquals(152.55, mReceiptsTable.getPriceTotalsBlocking(mTrip1, true).toPrice().getPrice().doubleValue(), 0.001);
+        assertEquals(PRICE_2, mReceiptsTable.getDailyPriceTotalsBlocking(mTrip1, true).toPrice().getPrice().doubleValue(), 0.001);
+        assertEquals(calculatePriceFromScratch(mTrip1), mReceiptsTable.getPriceTotalsBlocking(mTrip1, false).toPrice());
+
+        // And delete it again
+        mReceiptsTable.delete(updatedReceipt, new DatabaseOperationMetadata()).blockingGet();
+        assertEquals(PRICE_1, mReceiptsTable.getPriceTotalsBlocking(mTrip1, false).toPrice().getPrice().doubleValue(), 0.001);
+        assertTrue(mReceiptsTable.getDailyPriceTotalsBlocking(mTrip1, false).isEmpty());
+        assertEquals(calculatePriceFromScratch(mTrip1), mReceiptsTable.getPriceTotalsBlocking(mTrip1, false).toPrice());
+
+        // The other trips remain unaffected
+        assertEquals(PRICE_2, mReceiptsTable.getPriceTotalsBlocking(mTrip2, false).toPrice().getPrice().doubleValue(), 0.001);
+        assertTrue(mReceiptsTable.getPriceTotalsBlocking(mTrip3, false).isEmpty());
+    }
+
+    @Test
+    public void priceTotalsAreUpdatedForBatchOperations() {
+        assertEquals(PRICE_1, mReceiptsTable.getPriceTotalsBlocking(mTrip1, false).toPrice().getPrice().doubleValue(), 0.001);
+
+        final List<Receipt> insertedReceipts = mReceiptsTable.insertAll(Arrays.asList(
+                mBuilder.setName(NAME_2).setPrice(PRICE_2).setTrip(mTrip1).setUuid(UUID.randomUUID()).build(),
+                mBuilder.setName(NAME_3).setPrice(PRICE_3).setTrip(mTrip1).setUuid(UUID.randomUUID()).build()),
+                new DatabaseOperationMetadata()).blockingGet();
+        assertEquals(164.67, mReceiptsTable.getPriceTotalsBlocking(mTrip1, false).toPrice().getPrice().doubleValue(), 0.001);
+
+        mReceiptsTable.deleteAll(insertedReceipts, new DatabaseOperationMetadata()).blockingGet();
+        assertEquals(PRICE_1, mReceiptsTable.getPriceTotalsBlocking(mTrip1, false).toPrice().getPrice().doubleValue(), 0.001);
+        assertEquals(calculatePriceFromScratch(mTrip1), mReceiptsTable.getPriceTotalsBlocking(mTrip1, false).toPrice());
+    }
+
+    @Test
+    public void deleteAllLeavesOurCachesUntouchedWhenRolledBack() {
+        // Populate our caches
+        assertEquals(Collections.singletonList(mReceipt1), mReceiptsTable.getBlocking(mTrip1, true));
+        assertEquals(PRICE_1, mReceiptsTable.getPriceTotalsBlocking(mTrip1, false).toPrice().getPrice().doubleValue(), 0.001);
+
+        // Note: The first receipt is deleted outright, but the second one fails to be marked for deletion
+        final SyncState markedForDeletion = new DefaultSyncState(new IdentifierMap(Collections.singletonMap(SyncProvider.GoogleDrive, new Identifier("id"))),
+                new SyncStatusMap(Collections.singletonMap(SyncProvider.GoogleDrive, false)),
+                new MarkedForDeletionMap(Collections.singletonMap(SyncProvider.GoogleDrive, true)),
+                new Date(System.currentTimeMillis()));
+        final Receipt receiptToDelete = new ReceiptBuilderFactory(mReceipt1).setSyncState(markedForDeletion).build();
+        final Receipt missingReceipt = new ReceiptBuilderFactory(Integer.MAX_VALUE, mReceipt2).build();
+        try {
+            mReceiptsTable.deleteAllBlocking(Arrays.asList(receiptToDelete, missingReceipt), new DatabaseOperationMetadata());
+            fail("Marking a missing receipt for deletion should fail");
+        } catch (SQLException e) {
+            // Expected
+        }
+
+        assertEquals(mReceipt1, mReceiptsTable.findByPrimaryKey(mReceipt1.getId()).blockingGet());
+        assertEquals(Collections.singletonList(mReceipt1), mReceiptsTable.getBlocking(mTrip1, true));
+        assertEquals(PRICE_1, mReceiptsTable.getPriceTotalsBlocking(mTrip1, false).toPrice().getPrice().doubleValue(), 0.001);
+
+        // And our database was rolled back too
+        mReceiptsTable.clearCache();
+        assertEquals(mReceipt1, mReceiptsTable.findByPrimaryKey(mReceipt1.getId()).blockingGet());
+    }
+
+    @NonNull
+    private Price calculatePriceFromScratch(@NonNull Trip trip) {
+        return new PriceBuilderFactory().setPriceables(new ArrayList<Priceable>(mReceiptsTable.getBlocking(trip, true)), trip.getTripCurrency()).build();
+    }
+
+    @NonNull
+    private static List<String> getIndexedPrices(@NonNull SQLiteDatabase db) {
+        final List<String> prices = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("SELECT " + ReceiptsTable.SEARCH_COLUMN_PRICE + " FROM " + ReceiptsTable.TABLE_NAME + "_fts ORDER BY docid", null)) {
+            while (cursor.moveToNext()) {
+                prices.add(cursor.getString(0));
+            }
+        }
+        return prices;
+    }
+
+    @NonNull
+    private static List<Integer> getIds(@NonNull List<Receipt> receipts) {
+        final List<Integer> ids = new ArrayList<>();
+        for (final Receipt receipt : receipts) {
+            ids.add(receipt.getId());
+        }
+        return ids;
+    }
+
 }
\ No newline at end of file
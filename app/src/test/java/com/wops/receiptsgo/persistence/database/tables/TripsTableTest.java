@@ -56,6 +56,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -159,10 +160,10 @@ public class TripsTableTest {
     public void onCreate() {
         final TableDefaultsCustomizer customizer = mock(TableDefaultsCustomizer.class);
         mTripsTable.onCreate(mSQLiteDatabase, customizer);
-        verify(mSQLiteDatabase).execSQL(mSqlCaptor.capture());
+        verify(mSQLiteDatabase, atLeastOnce()).execSQL(mSqlCaptor.capture());
         verifyZeroInteractions(customizer);
 
-        final String creatingTable = mSqlCaptor.getValue();
+        final String creatingTable = mSqlCaptor.getAllValues().get(0);
         assertTrue(creatingTable.contains("CREATE TABLE trips")); // Table name
         assertTrue(creatingTable.contains("id INTEGER PRIMARY KEY AUTOINCREMENT"));
         assertTrue(creatingTable.contains("name TEXT UNIQUE"));
@@ -183,6 +184,7 @@ public class TripsTableTest {
         assertTrue(creatingTable.contains("name_hidden_auto_complete BOOLEAN DEFAULT 0"));
         assertTrue(creatingTable.contains("comment_hidden_auto_complete BOOLEAN DEFAULT 0"));
         assertTrue(creatingTable.contains("costcenter_hidden_auto_complete BOOLEAN DEFAULT 0"));
+        assertTrue(mSqlCaptor.getAllValues().contains("CREATE VIRTUAL TABLE IF NOT EXISTS trips_fts USING fts4(name, comment, cost_center, tokenize=unicode61);"));
     }
 
     @Test
@@ -23,6 +23,7 @@ import com.wops.receiptsgo.persistence.database.operations.OperationFamilyType;
 import com.wops.receiptsgo.persistence.database.tables.AbstractColumnTable;
 import com.wops.receiptsgo.persistence.database.tables.AbstractSqlTable;
 import com.wops.receiptsgo.settings.UserPreferenceManager;
+import com.wops.receiptsgo.utils.cache.FileHashStore;
 import com.wops.core.sync.model.SyncState;
 import com.wops.receiptsgo.workers.reports.ReportResourcesManager;
 
@@ -58,6 +59,9 @@ public class ColumnDatabaseAdapterTest {
     @Mock
     DateFormatter dateFormatter;
 
+    @Mock
+    FileHashStore fileHashStore;
+
     @Mock
     SyncStateAdapter syncStateAdapter;
 
@@ -76,7 +80,7 @@ public class ColumnDatabaseAdapterTest {
         final int uuidIndex = 4;
 
         receiptNameColumn = new ReceiptNameColumn(ID, getSyncState, CUSTOM_ORDER_ID, COLUMN_UUID);
-        ReceiptColumnDefinitions receiptColumnDefinitions = new ReceiptColumnDefinitions(reportResourcesManager, preferences, dateFormatter);
+        ReceiptColumnDefinitions receiptColumnDefinitions = new ReceiptColumnDefinitions(reportResourcesManager, preferences, dateFormatter, fileHashStore);
 
         when(reportResourcesManager.getLocalizedContext()).thenReturn(RuntimeEnvironment.systemContext);
 
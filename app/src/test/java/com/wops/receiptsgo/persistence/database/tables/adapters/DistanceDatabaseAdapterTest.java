@@ -13,6 +13,7 @@ import org.robolectric.RobolectricTestRunner;
 
 import java.math.BigDecimal;
 import java.sql.Date;
+import java.util.Collections;
 import java.util.TimeZone;
 import java.util.UUID;
 
@@ -220,6 +221,28 @@ public class DistanceDatabaseAdapterTest {
         assertEquals(distance, mDistanceDatabaseAdapter.readForSelection(mCursor, mTrip, false));
     }
 
+    @Test
+    public void readAllForSelection() throws Exception {
+        when(mCursor.moveToFirst()).thenReturn(true);
+        when(mCursor.moveToNext()).thenReturn(false);
+        final Distance distance = new DistanceBuilderFactory(ID)
+                .setUuid(DIST_UUID)
+                .setTrip(mTrip)
+                .setLocation(LOCATION)
+                .setDistance(DISTANCE)
+                .setDate(DATE)
+                .setTimezone(TIMEZONE)
+                .setRate(RATE)
+                .setCurrency(CURRENCY_CODE)
+                .setComment(COMMENT)
+                .setSyncState(mSyncState)
+                .setPaymentMethod(PAYMENT_METHOD)
+                .setLocationHiddenFromAutoComplete(LOCATION_HIDDEN_FROM_AUTO_COMPLETE)
+                .setCommentHiddenFromAutoComplete(COMMENT_HIDDEN_FROM_AUTO_COMPLETE)
+                .build();
+        assertEquals(Collections.singletonList(distance), mDistanceDatabaseAdapter.readAllForSelection(mCursor, mTrip, true));
+    }
+
     @Test
     public void writeUnsynced() throws Exception {
         final String sync = "sync";
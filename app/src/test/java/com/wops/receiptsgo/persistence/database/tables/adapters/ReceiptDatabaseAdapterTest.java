@@ -2,11 +2,15 @@ package com.wops.receiptsgo.persistence.database.tables.adapters;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 
 import org.joda.money.CurrencyUnit;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
@@ -15,10 +19,16 @@ import org.robolectric.RobolectricTestRunner;
 import java.io.File;
 import java.math.BigDecimal;
 import java.sql.Date;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.TimeZone;
 import java.util.UUID;
 
+import com.wops.receiptsgo.benchmark.Benchmark;
+import com.wops.receiptsgo.benchmark.BenchmarkReporter;
 import com.wops.receiptsgo.model.AutoCompleteMetadata;
 import com.wops.receiptsgo.model.Category;
 import com.wops.receiptsgo.model.PaymentMethod;
@@ -37,9 +47,17 @@ import wb.android.storage.StorageManager;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 @RunWith(RobolectricTestRunner.class)
@@ -79,8 +97,13 @@ public class ReceiptDatabaseAdapterTest {
     private static final String EXTRA1 = "extra1";
     private static final String EXTRA2 = "extra2";
     private static final String EXTRA3 = "extra3";
+    private static final int BENCHMARK_RECEIPT_COUNT = 5_000;
+    private static final int BENCHMARK_CATEGORY_COUNT = 20;
 
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     // Class under test
     ReceiptDatabaseAdapter mReceiptDatabaseAdapter;
 
@@ -494,6 +517,152 @@ public class ReceiptDatabaseAdapterTest {
         assertEquals(receipt, mReceiptDatabaseAdapter.read(mCursor));
     }
 
+    @Test
+    public void readAllForSelection() throws Exception {
+        when(mCursor.moveToFirst()).thenReturn(true);
+        when(mCursor.moveToNext()).thenReturn(false);
+        when(mCategoriesTable.get()).thenReturn(Single.just(Collections.singletonList(CATEGORY)));
+        when(mPaymentMethodsTable.get()).thenReturn(Single.just(Collections.singletonList(PAYMENT_METHOD)));
+
+        // Note: Full page is backwards in the database
+        final Receipt receipt = new ReceiptBuilderFactory(ID)
+                .setUuid(RECEIPT_UUID)
+                .setTrip(mTrip)
+                .setName(NAME)
+                .setPrice(PRICE)
+                .setTax(TAX)
+                .setTax2(TAX2)
+                .setExchangeRate(EXCHANGE_RATE)
+                .setCategory(CATEGORY)
+                .setFile(RECEIPT_FILE)
+                .setDate(DATE)
+                .setCustomOrderId(CUSTOM_ORDER_ID)
+                .setTimeZone(TIMEZONE)
+                .setComment(COMMENT)
+                .setIsReimbursable(REIMBURSABLE)
+                .setCurrency(CURRENCY_CODE)
+                .setIsFullPage(!FULL_PAGE)
+                .setIndex(DESCENDING_INDEX)
+                .setPaymentMethod(PAYMENT_METHOD)
+                .setNameHiddenFromAutoComplete(NAME_HIDDEN_FROM_AUTO_COMPLETE)
+                .setCommentHiddenFromAutoComplete(COMMENT_HIDDEN_FROM_AUTO_COMPLETE)
+                .setExtraEditText1(EXTRA1)
+                .setExtraEditText2(EXTRA2)
+                .setExtraEditText3(EXTRA3)
+                .setSyncState(mSyncState)
+                .build();
+        assertEquals(Collections.singletonList(receipt), mReceiptDatabaseAdapter.readAllForSelection(mCursor, mTrip, true));
+        verify(mCategoriesTable, never()).findByPrimaryKey(anyInt());
+        verify(mPaymentMethodsTable, never()).findByPrimaryKey(anyInt());
+    }
+
+    @Test
+    public void readAllForSelectionWithFilesThatDoNotExistAndUnmappedCategories() throws Exception {
+        assertTrue(RECEIPT_FILE.delete());
+        when(mCursor.moveToFirst()).thenReturn(true);
+        when(mCursor.moveToNext()).thenReturn(false);
+        when(mCategoriesTable.get()).thenReturn(Single.error(new Exception()));
+        when(mPaymentMethodsTable.get()).thenReturn(Single.just(Collections.<PaymentMethod>emptyList()));
+
+        final List<Receipt> receipts = mReceiptDatabaseAdapter.readAllForSelection(mCursor, mTrip, false);
+
+        assertEquals(1, receipts.size());
+        assertNull(receipts.get(0).getFile());
+        assertEquals(ASCENDING_INDEX, receipts.get(0).getIndex());
+        assertNotEquals(CATEGORY, receipts.get(0).getCategory());
+        assertEquals(PaymentMethod.Companion.getNONE(), receipts.get(0).getPaymentMethod());
+    }
+
+    @Test
+    public void readAllForSelectionWithAnEmptyCursor() throws Exception {
+        when(mCursor.moveToFirst()).thenReturn(false);
+
+        assertEquals(Collections.emptyList(), mReceiptDatabaseAdapter.readAllForSelection(mCursor, mTrip, true));
+        verifyZeroInteractions(mCategoriesTable, mPaymentMethodsTable, mStorageManager);
+    }
+
+    @Test
+    public void readAllForSelectionMatchesReadingEachRow() throws Exception {
+        final MatrixCursor cursor = newTripCursor(temporaryFolder.newFolder("Trip"), 50);
+
+        final List<Receipt> perRowReceipts = readEachRow(cursor);
+        final List<Receipt> bulkReceipts = mReceiptDatabaseAdapter.readAllForSelection(cursor, mTrip, true);
+
+        assertEquals(50, bulkReceipts.size());
+        assertEquals(perRowReceipts, bulkReceipts);
+        assertNotNull(bulkReceipts.get(0).getFile());
+        assertNull(bulkReceipts.get(1).getFile());
+    }
+
+    /**
+     * A lightweight benchmark, which compares the time required to load a large trip one row at a time (as we did
+     * previously) against our bulk read, in which we resolve our column indices, categories, payment methods, and
+     * existing files once per query
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void benchmarkTripLoadTimes() throws Exception {
+        final MatrixCursor cursor = newTripCursor(temporaryFolder.newFolder("Benchmark"), BENCHMARK_RECEIPT_COUNT);
+
+        final long perRowStart = System.nanoTime();
+        final List<Receipt> perRowReceipts = readEachRow(cursor);
+        final long perRowMillis = (System.nanoTime() - perRowStart) / 1_000_000;
+
+        final long bulkStart = System.nanoTime();
+        final List<Receipt> bulkReceipts = mReceiptDatabaseAdapter.readAllForSelection(cursor, mTrip, true);
+        final long bulkMillis = (System.nanoTime() - bulkStart) / 1_000_000;
+
+        BenchmarkReporter.report(getClass(), "ReceiptDatabaseAdapter[receipts=%d]: perRow=%dms, bulk=%dms", BENCHMARK_RECEIPT_COUNT, perRowMillis, bulkMillis);
+        assertEquals(perRowReceipts, bulkReceipts);
+    }
+
+    /**
+     * Builds a cursor over a trip with {@code receiptCount} receipts, in which only the even receipts have a file
+     */
+    private MatrixCursor newTripCursor(File tripDirectory, int receiptCount) throws Exception {
+        when(mTrip.getDirectory()).thenReturn(tripDirectory);
+        when(mStorageManager.getFile(any(File.class), anyString())).thenAnswer(invocation -> new File((File) invocation.getArgument(0), (String) invocation.getArgument(1)));
+        when(mSyncStateAdapter.read(any(Cursor.class))).thenReturn(mSyncState);
+
+        final Map<Integer, Category> categories = new HashMap<>();
+        for (int i = 0; i < BENCHMARK_CATEGORY_COUNT; i++) {
+            categories.put(i, new Category(i, UUID.randomUUID(), "Category " + i, "code" + i));
+        }
+        when(mCategoriesTable.get()).thenReturn(Single.just(new ArrayList<>(categories.values())));
+        when(mCategoriesTable.findByPrimaryKey(anyInt())).thenAnswer(invocation -> Single.just(categories.get(invocation.<Integer>getArgument(0))));
+        when(mPaymentMethodsTable.get()).thenReturn(Single.just(Collections.singletonList(PAYMENT_METHOD)));
+
+        final String[] columns = new String[]{ReceiptsTable.COLUMN_ID, ReceiptsTable.COLUMN_UUID, ReceiptsTable.COLUMN_PATH,
+                ReceiptsTable.COLUMN_NAME, ReceiptsTable.COLUMN_CATEGORY_ID, ReceiptsTable.COLUMN_PRICE, ReceiptsTable.COLUMN_TAX,
+                ReceiptsTable.COLUMN_TAX2, ReceiptsTable.COLUMN_EXCHANGE_RATE, ReceiptsTable.COLUMN_DATE, ReceiptsTable.COLUMN_TIMEZONE,
+                ReceiptsTable.COLUMN_COMMENT, ReceiptsTable.COLUMN_REIMBURSABLE, ReceiptsTable.COLUMN_ISO4217,
+                ReceiptsTable.COLUMN_NOTFULLPAGEIMAGE, ReceiptsTable.COLUMN_PAYMENT_METHOD_ID, ReceiptsTable.COLUMN_NAME_HIDDEN_AUTO_COMPLETE,
+                ReceiptsTable.COLUMN_COMMENT_HIDDEN_AUTO_COMPLETE, ReceiptsTable.COLUMN_EXTRA_EDITTEXT_1, ReceiptsTable.COLUMN_EXTRA_EDITTEXT_2,
+                ReceiptsTable.COLUMN_EXTRA_EDITTEXT_3, ReceiptsTable.COLUMN_CUSTOM_ORDER_ID};
+        final MatrixCursor cursor = new MatrixCursor(columns, receiptCount);
+        for (int i = 0; i < receiptCount; i++) {
+            final String path = i + ".jpg";
+            if (i % 2 == 0) {
+                assertTrue(new File(tripDirectory, path).createNewFile());
+            }
+            cursor.addRow(new Object[]{i, UUID.randomUUID().toString(), path, NAME + i, i % BENCHMARK_CATEGORY_COUNT, PRICE, TAX, TAX2,
+                    EXCHANGE_RATE_FOR_USD, DATE + i, TIMEZONE, COMMENT, 1, CURRENCY_CODE, 0, PAYMENT_METHOD_ID, 0, 0, EXTRA1, EXTRA2,
+                    EXTRA3, CUSTOM_ORDER_ID + i});
+        }
+        return cursor;
+    }
+
+    private List<Receipt> readEachRow(Cursor cursor) {
+        final List<Receipt> receipts = new ArrayList<>(cursor.getCount());
+        if (cursor.moveToFirst()) {
+            do {
+                receipts.add(mReceiptDatabaseAdapter.readForSelection(cursor, mTrip, true));
+            }
+            while (cursor.moveToNext());
+        }
+        return receipts;
+    }
+
     @Test
     public void writeUnsynced() throws Exception {
         final String sync = "sync";
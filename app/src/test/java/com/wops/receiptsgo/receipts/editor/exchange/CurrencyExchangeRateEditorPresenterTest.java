@@ -17,6 +17,7 @@ import org.robolectric.RobolectricTestRunner;
 import java.math.BigDecimal;
 import java.sql.Date;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 
@@ -28,17 +29,21 @@ import com.wops.receiptsgo.model.factory.ExchangeRateBuilderFactory;
 import com.wops.receiptsgo.model.factory.PriceBuilderFactory;
 import com.wops.receiptsgo.model.gson.ExchangeRate;
 import com.wops.receiptsgo.persistence.DatabaseHelper;
+import com.wops.receiptsgo.persistence.database.tables.ReceiptsTable;
 import com.wops.receiptsgo.receipts.editor.date.ReceiptDateView;
 import com.wops.receiptsgo.receipts.editor.pricing.EditableReceiptPricingView;
 import com.wops.receiptsgo.utils.TestLocaleToggler;
 import com.wops.receiptsgo.widget.model.UiIndicator;
+import io.reactivex.Completable;
 import io.reactivex.Observable;
+import io.reactivex.Single;
 import io.reactivex.functions.Consumer;
 import io.reactivex.schedulers.Schedulers;
 import io.reactivex.subjects.BehaviorSubject;
 import io.reactivex.subjects.PublishSubject;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doReturn;
@@ -76,6 +81,9 @@ public class CurrencyExchangeRateEditorPresenterTest {
     @Mock
     DatabaseHelper databaseHelper;
 
+    @Mock
+    ReceiptsTable receiptsTable;
+
     @Mock
     Trip trip;
 
@@ -131,6 +139,9 @@ public class CurrencyExchangeRateEditorPresenterTest {
         when(currencyListEditorView.currencyClicks()).thenReturn(currencyClicks);
         when(receiptDateView.getReceiptDateChanges()).thenReturn(receiptDateChanges);
         when(databaseHelper.getCurrenciesList()).thenReturn(CURRENCIES);
+        when(databaseHelper.getReceiptsTable()).thenReturn(receiptsTable);
+        when(receiptsTable.get(trip)).thenReturn(Single.just(Collections.singletonList(editableReceipt)));
+        when(exchangeRateServiceManager.prefetchExchangeRates(anyCollection(), anyString())).thenReturn(Completable.complete());
         when(editableReceipt.getPrice()).thenReturn(price);
         when(price.getExchangeRate()).thenReturn(EXCHANGE_RATE);
         when(exchangeRateServiceManager.getExchangeRate(any(Date.class), anyString(), anyString())).thenReturn(Observable.just(UiIndicator.success(EXCHANGE_RATE)));
@@ -149,6 +160,13 @@ public class CurrencyExchangeRateEditorPresenterTest {
         verify(displayBaseCurrencyConsumer).accept(CurrencyUnit.of(TRIP_CURRENCY));
     }
 
+    @Test
+    public void subscribePrefetchesTheExchangeRatesForThisTrip() {
+        presenter = new CurrencyExchangeRateEditorPresenter(currencyExchangeRateEditorView, receiptPricingView, currencyListEditorView, receiptDateView, exchangeRateServiceManager, databaseHelper, trip, null, null, Schedulers.trampoline(), Schedulers.trampoline(), Schedulers.trampoline());
+        presenter.subscribe();
+        verify(exchangeRateServiceManager).prefetchExchangeRates(Collections.singletonList(editableReceipt), TRIP_CURRENCY);
+    }
+
     @Test
     public void subscribeDoesNotDisplayExchangeRateForNullReceipt() throws Exception {
         presenter = new CurrencyExchangeRateEditorPresenter(currencyExchangeRateEditorView, receiptPricingView, currencyListEditorView, receiptDateView, exchangeRateServiceManager, databaseHelper, trip, null, null, Schedulers.trampoline(), Schedulers.trampoline(), Schedulers.trampoline());
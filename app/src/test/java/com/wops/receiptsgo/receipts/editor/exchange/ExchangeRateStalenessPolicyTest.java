@@ -0,0 +1,67 @@
+package com.wops.receiptsgo.receipts.editor.exchange;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Date;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import com.wops.receiptsgo.utils.TestTimezoneToggler;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExchangeRateStalenessPolicyTest {
+
+    /**
+     * 2016-12-17 20:00 in New York
+     */
+    private static final Date DATE = new Date(1482022800000L);
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    // Class under test
+    ExchangeRateStalenessPolicy policy;
+
+    @Before
+    public void setUp() {
+        TestTimezoneToggler.setDefaultTimeZone(TimeZone.getTimeZone("America/New_York"));
+        policy = new ExchangeRateStalenessPolicy(HOUR, 30 * DAY);
+    }
+
+    @After
+    public void tearDown() {
+        TestTimezoneToggler.resetDefaultTimeZone();
+    }
+
+    @Test
+    public void ratesFetchedBeforeTheirDayClosedExpireQuickly() {
+        final long fetchedAt = DATE.getTime();
+        assertFalse(policy.isStale(DATE, fetchedAt, fetchedAt + HOUR / 2));
+        assertTrue(policy.isStale(DATE, fetchedAt, fetchedAt + 2 * HOUR));
+    }
+
+    @Test
+    public void ratesFetchedAfterTheirDayClosedAreKeptLonger() {
+        final long fetchedAt = DATE.getTime() + 3 * DAY;
+        assertFalse(policy.isStale(DATE, fetchedAt, fetchedAt + 2 * HOUR));
+        assertFalse(policy.isStale(DATE, fetchedAt, fetchedAt + 29 * DAY));
+        assertTrue(policy.isStale(DATE, fetchedAt, fetchedAt + 31 * DAY));
+    }
+
+    @Test
+    public void ratesFromTheFutureAreStale() {
+        final long fetchedAt = DATE.getTime() + 3 * DAY;
+        assertTrue(policy.isStale(DATE, fetchedAt, fetchedAt - HOUR));
+    }
+
+    @Test
+    public void theDefaultPolicyKeepsClosedDaysForever() {
+        final ExchangeRateStalenessPolicy defaultPolicy = new ExchangeRateStalenessPolicy();
+        final long fetchedAt = DATE.getTime() + 3 * DAY;
+        assertFalse(defaultPolicy.isStale(DATE, fetchedAt, fetchedAt + 3650 * DAY));
+        assertTrue(defaultPolicy.isStale(DATE, DATE.getTime(), DATE.getTime() + 2 * HOUR));
+    }
+}
@@ -0,0 +1,98 @@
+package com.wops.receiptsgo.receipts.editor.exchange;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.sql.Date;
+
+import com.wops.receiptsgo.model.factory.ExchangeRateBuilderFactory;
+import com.wops.receiptsgo.model.gson.ExchangeRate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class ExchangeRateStoreTest {
+
+    private static final Date DATE = new Date(1482022800000L);
+    private static final Date OTHER_DATE = new Date(1482109200000L);
+    private static final long FETCHED_AT = 1482030000000L;
+    private static final int MAX_STORED_RATES = 2;
+
+    private static final ExchangeRate EUR_EXCHANGE_RATE = new ExchangeRateBuilderFactory().setBaseCurrency("EUR").setRate("USD", 1.05).setRate("GBP", 0.85).build();
+    private static final ExchangeRate GBP_EXCHANGE_RATE = new ExchangeRateBuilderFactory().setBaseCurrency("GBP").setRate("USD", 1.25).build();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    // Class under test
+    ExchangeRateStore exchangeRateStore;
+
+    File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = temporaryFolder.newFolder("exchange_rates");
+        exchangeRateStore = new ExchangeRateStore(directory, MAX_STORED_RATES);
+    }
+
+    @Test
+    public void getWithoutAStoredRate() {
+        assertFalse(exchangeRateStore.get(DATE, "EUR").isPresent());
+    }
+
+    @Test
+    public void putAndGetAreKeyedByDateAndBaseCurrency() {
+        exchangeRateStore.put(DATE, EUR_EXCHANGE_RATE, FETCHED_AT);
+
+        assertEquals(EUR_EXCHANGE_RATE, exchangeRateStore.get(DATE, "EUR").get().getExchangeRate());
+        assertEquals(EUR_EXCHANGE_RATE, exchangeRateStore.get(new Date(DATE.getTime() + 60_000L), "eur").get().getExchangeRate());
+        assertEquals(FETCHED_AT, exchangeRateStore.get(DATE, "EUR").get().getFetchedAtMillis());
+        assertFalse(exchangeRateStore.get(OTHER_DATE, "EUR").isPresent());
+        assertFalse(exchangeRateStore.get(DATE, "GBP").isPresent());
+    }
+
+    @Test
+    public void storedRatesArePersistedAcrossInstances() {
+        exchangeRateStore.put(DATE, EUR_EXCHANGE_RATE, FETCHED_AT);
+
+        final ExchangeRateStore otherExchangeRateStore = new ExchangeRateStore(directory, MAX_STORED_RATES);
+        final ExchangeRateStore.Entry entry = otherExchangeRateStore.get(DATE, "EUR").get();
+        assertEquals(EUR_EXCHANGE_RATE, entry.getExchangeRate());
+        assertEquals(FETCHED_AT, entry.getFetchedAtMillis());
+        assertTrue(entry.getExchangeRate().supportsExchangeRateFor("GBP"));
+    }
+
+    @Test
+    public void corruptRatesAreDiscarded() throws Exception {
+        exchangeRateStore.put(DATE, EUR_EXCHANGE_RATE, FETCHED_AT);
+        final File[] files = directory.listFiles();
+        assertEquals(1, files.length);
+        try (FileOutputStream outputStream = new FileOutputStream(files[0])) {
+            outputStream.write("{ not json".getBytes("UTF-8"));
+        }
+
+        assertFalse(new ExchangeRateStore(directory, MAX_STORED_RATES).get(DATE, "EUR").isPresent());
+        assertFalse(files[0].exists());
+    }
+
+    @Test
+    public void putPrunesTheOldestRates() {
+        exchangeRateStore.put(DATE, EUR_EXCHANGE_RATE, FETCHED_AT);
+        final File oldestFile = directory.listFiles()[0];
+        //noinspection ResultOfMethodCallIgnored
+        oldestFile.setLastModified(oldestFile.lastModified() - 10_000);
+        exchangeRateStore.put(OTHER_DATE, EUR_EXCHANGE_RATE, FETCHED_AT);
+        exchangeRateStore.put(DATE, GBP_EXCHANGE_RATE, FETCHED_AT);
+
+        assertFalse(oldestFile.exists());
+        assertEquals(MAX_STORED_RATES, directory.listFiles().length);
+    }
+}
@@ -1,7 +1,13 @@
 package com.wops.receiptsgo.receipts.editor.exchange;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -10,13 +16,17 @@ import android.content.Context;
 
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.RobolectricTestRunner;
 
 import java.sql.Date;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Locale;
 import java.util.TimeZone;
 
@@ -24,6 +34,8 @@ import com.wops.analytics.Analytics;
 import com.wops.analytics.events.Events;
 import com.wops.receiptsgo.apis.ExchangeRateService;
 import com.wops.receiptsgo.config.ConfigurationManager;
+import com.wops.receiptsgo.model.Price;
+import com.wops.receiptsgo.model.Receipt;
 import com.wops.receiptsgo.model.factory.ExchangeRateBuilderFactory;
 import com.wops.receiptsgo.model.gson.ExchangeRate;
 import com.wops.receiptsgo.purchases.PurchaseManager;
@@ -35,12 +47,14 @@ import com.wops.receiptsgo.utils.TestLocaleToggler;
 import com.wops.receiptsgo.utils.TestTimezoneToggler;
 import com.wops.receiptsgo.widget.model.UiIndicator;
 import io.reactivex.Observable;
+import io.reactivex.schedulers.Schedulers;
 
 @SuppressWarnings("unchecked")
 @RunWith(RobolectricTestRunner.class)
 public class ExchangeRateWebServiceManagerTest {
 
     private static final Date DATE = new Date(1482022800000L);
+    private static final Date OTHER_DATE = new Date(1482109200000L);
     private static final String BASE_CURRENCY = "EUR";
     private static final String QUOTE_CURRENCY = "USD";
     private static final String APP_ID = "app_id";
@@ -48,6 +62,11 @@ public class ExchangeRateWebServiceManagerTest {
     // Class under test
     ExchangeRateServiceManager exchangeRateServiceManager;
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    ExchangeRateStore exchangeRateStore;
+
     @Mock
     Context context;
 
@@ -74,7 +93,9 @@ public class ExchangeRateWebServiceManagerTest {
 
         when(context.getApplicationContext()).thenReturn(context);
         when(context.getString(anyInt())).thenReturn(APP_ID);
-        exchangeRateServiceManager = new ExchangeRateServiceManager(context, purchaseManager, purchaseWallet, analytics, configurationManager, exchangeRateService);
+        exchangeRateStore = new ExchangeRateStore(temporaryFolder.newFolder("exchange_rates"), ExchangeRateStore.DEFAULT_MAX_STORED_RATES);
+        exchangeRateServiceManager = new ExchangeRateServiceManager(context, purchaseManager, purchaseWallet, analytics, configurationManager,
+                exchangeRateService, exchangeRateStore, new ExchangeRateStalenessPolicy(), Schedulers.trampoline());
     }
 
     @After
@@ -157,4 +178,87 @@ public class ExchangeRateWebServiceManagerTest {
         verify(analytics).record(Events.Receipts.RequestExchangeRateSuccess);
         verifyZeroInteractions(analytics);
     }
+
+    @Test
+    public void getExchangeRateServesFreshStoredRatesWithoutTheNetwork() {
+        final ExchangeRate exchangeRate = newExchangeRate(BASE_CURRENCY);
+        when(purchaseWallet.hasActivePurchase(InAppPurchase.SmartReceiptsPlus)).thenReturn(true);
+        when(exchangeRateService.getExchangeRate(DATE, APP_ID, BASE_CURRENCY)).thenReturn(Observable.just(exchangeRate));
+
+        exchangeRateServiceManager.getExchangeRate(DATE, BASE_CURRENCY, QUOTE_CURRENCY)
+                .test()
+                .assertValues(UiIndicator.loading(), UiIndicator.success(exchangeRate));
+        exchangeRateServiceManager.getExchangeRate(DATE, BASE_CURRENCY, QUOTE_CURRENCY)
+                .test()
+                .assertValues(UiIndicator.success(exchangeRate))
+                .assertNoErrors();
+        verify(exchangeRateService, times(1)).getExchangeRate(DATE, APP_ID, BASE_CURRENCY);
+    }
+
+    @Test
+    public void getExchangeRateFallsBackToStaleRatesIfTheNetworkFails() {
+        final ExchangeRate exchangeRate = newExchangeRate(BASE_CURRENCY);
+        exchangeRateStore.put(DATE, exchangeRate, DATE.getTime());
+        exchangeRateServiceManager = new ExchangeRateServiceManager(context, purchaseManager, purchaseWallet, analytics, configurationManager,
+                exchangeRateService, exchangeRateStore, new ExchangeRateStalenessPolicy(0, 0), Schedulers.trampoline());
+        when(purchaseWallet.hasActivePurchase(InAppPurchase.SmartReceiptsPlus)).thenReturn(true);
+        when(exchangeRateService.getExchangeRate(DATE, APP_ID, BASE_CURRENCY)).thenReturn(Observable.error(new Exception("test")));
+
+        exchangeRateServiceManager.getExchangeRate(DATE, BASE_CURRENCY, QUOTE_CURRENCY)
+                .test()
+                .assertValues(UiIndicator.loading(), UiIndicator.success(exchangeRate))
+                .assertNoErrors();
+        verify(analytics).record(Events.Receipts.RequestExchangeRateFailed);
+    }
+
+    @Test
+    public void prefetchExchangeRatesWithoutSubscription() {
+        when(purchaseWallet.hasActivePurchase(InAppPurchase.SmartReceiptsPlus)).thenReturn(false);
+
+        exchangeRateServiceManager.prefetchExchangeRates(Collections.singletonList(newReceipt(DATE, BASE_CURRENCY)), QUOTE_CURRENCY)
+                .test()
+                .assertComplete();
+        verifyZeroInteractions(exchangeRateService);
+    }
+
+    @Test
+    public void prefetchExchangeRatesFetchesEachDistinctDateAndCurrencyOnce() {
+        final ExchangeRate eurExchangeRate = newExchangeRate(BASE_CURRENCY);
+        final ExchangeRate gbpExchangeRate = newExchangeRate("GBP");
+        exchangeRateStore.put(OTHER_DATE, gbpExchangeRate, System.currentTimeMillis());
+        when(purchaseWallet.hasActivePurchase(InAppPurchase.SmartReceiptsPlus)).thenReturn(true);
+        when(exchangeRateService.getExchangeRate(any(Date.class), anyString(), anyString())).thenReturn(Observable.error(new Exception("test")));
+        when(exchangeRateService.getExchangeRate(DATE, APP_ID, BASE_CURRENCY)).thenReturn(Observable.just(eurExchangeRate));
+
+        exchangeRateServiceManager.prefetchExchangeRates(Arrays.asList(
+                newReceipt(DATE, BASE_CURRENCY),
+                newReceipt(new Date(DATE.getTime() + 60_000L), BASE_CURRENCY),
+                newReceipt(DATE, "GBP"),
+                newReceipt(OTHER_DATE, "GBP"),
+                newReceipt(DATE, QUOTE_CURRENCY)), QUOTE_CURRENCY)
+                .test()
+                .assertComplete()
+                .assertNoErrors();
+
+        verify(exchangeRateService, times(1)).getExchangeRate(DATE, APP_ID, BASE_CURRENCY);
+        verify(exchangeRateService, times(1)).getExchangeRate(DATE, APP_ID, "GBP");
+        verify(exchangeRateService, never()).getExchangeRate(OTHER_DATE, APP_ID, "GBP");
+        verify(exchangeRateService, never()).getExchangeRate(DATE, APP_ID, QUOTE_CURRENCY);
+        assertEquals(eurExchangeRate, exchangeRateStore.get(DATE, BASE_CURRENCY).get().getExchangeRate());
+        assertFalse(exchangeRateStore.get(DATE, "GBP").isPresent());
+        verifyZeroInteractions(analytics);
+    }
+
+    private static ExchangeRate newExchangeRate(String baseCurrency) {
+        return new ExchangeRateBuilderFactory().setBaseCurrency(baseCurrency).setRate(QUOTE_CURRENCY, 1.25).build();
+    }
+
+    private static Receipt newReceipt(Date date, String currencyCode) {
+        final Receipt receipt = mock(Receipt.class);
+        final Price price = mock(Price.class);
+        when(receipt.getDate()).thenReturn(date);
+        when(receipt.getPrice()).thenReturn(price);
+        when(price.getCurrencyCode()).thenReturn(currencyCode);
+        return receipt;
+    }
 }
\ No newline at end of file
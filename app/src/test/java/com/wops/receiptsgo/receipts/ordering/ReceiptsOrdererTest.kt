@@ -7,15 +7,14 @@ import com.wops.receiptsgo.model.factory.TripBuilderFactory
 import com.wops.receiptsgo.persistence.database.controllers.impl.ReceiptTableController
 import com.wops.receiptsgo.persistence.database.controllers.impl.TripTableController
 import com.wops.receiptsgo.persistence.database.operations.DatabaseOperationMetadata
-import com.wops.receiptsgo.persistence.database.operations.OperationFamilyType
 import com.wops.receiptsgo.persistence.database.tables.ordering.OrderingPreferencesManager
 import com.wops.core.sync.model.impl.DefaultSyncState
-import com.hadisatrio.optional.Optional
 import com.nhaarman.mockitokotlin2.*
-import io.reactivex.Observable
 import io.reactivex.Single
 import io.reactivex.schedulers.Schedulers
 import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
 
 import org.junit.Before
 import org.junit.Test
@@ -147,6 +146,11 @@ class ReceiptsOrdererTest {
     @Mock
     lateinit var updatedReceipt8: Receipt
 
+    /**
+     * Tracks all old/new pairs that were submitted to [ReceiptTableController.updateAll]
+     */
+    private val updatedPairs = mutableListOf<Pair<Receipt, Receipt>>()
+
     @Before
     fun setUp() {
         MockitoAnnotations.initMocks(this)
@@ -167,15 +171,23 @@ class ReceiptsOrdererTest {
         whenever(receiptTableController.get(otherOrderedTrip)).thenReturn(Single.just(listOf(OTHER_ORDERED_RECEIPT_1, OTHER_ORDERED_RECEIPT_2, OTHER_ORDERED_RECEIPT_3, OTHER_ORDERED_RECEIPT_4)))
 
         // Note: Stub return here to keep the flow working
-        whenever(receiptTableController.update(any(), any(), any())).thenReturn(Observable.just(Optional.of(receipt)))
-        whenever(receiptTableController.update(eq(ORDERED_RECEIPT_1), any(), any())).thenReturn(Observable.just(Optional.of(updatedReceipt1)))
-        whenever(receiptTableController.update(eq(ORDERED_RECEIPT_2), any(), any())).thenReturn(Observable.just(Optional.of(updatedReceipt2)))
-        whenever(receiptTableController.update(eq(ORDERED_RECEIPT_3), any(), any())).thenReturn(Observable.just(Optional.of(updatedReceipt3)))
-        whenever(receiptTableController.update(eq(ORDERED_RECEIPT_4), any(), any())).thenReturn(Observable.just(Optional.of(updatedReceipt4)))
-        whenever(receiptTableController.update(eq(OTHER_ORDERED_RECEIPT_1), any(), any())).thenReturn(Observable.just(Optional.of(updatedReceipt5)))
-        whenever(receiptTableController.update(eq(OTHER_ORDERED_RECEIPT_2), any(), any())).thenReturn(Observable.just(Optional.of(updatedReceipt6)))
-        whenever(receiptTableController.update(eq(OTHER_ORDERED_RECEIPT_3), any(), any())).thenReturn(Observable.just(Optional.of(updatedReceipt7)))
-        whenever(receiptTableController.update(eq(OTHER_ORDERED_RECEIPT_4), any(), any())).thenReturn(Observable.just(Optional.of(updatedReceipt8)))
+        val updateResults = mapOf(
+            ORDERED_RECEIPT_1 to updatedReceipt1,
+            ORDERED_RECEIPT_2 to updatedReceipt2,
+            ORDERED_RECEIPT_3 to updatedReceipt3,
+            ORDERED_RECEIPT_4 to updatedReceipt4,
+            OTHER_ORDERED_RECEIPT_1 to updatedReceipt5,
+            OTHER_ORDERED_RECEIPT_2 to updatedReceipt6,
+            OTHER_ORDERED_RECEIPT_3 to updatedReceipt7,
+            OTHER_ORDERED_RECEIPT_4 to updatedReceipt8
+        )
+        updatedPairs.clear()
+        whenever(receiptTableController.updateAll(any(), any(), any())).thenAnswer { invocation ->
+            val oldReceipts = invocation.getArgument<List<Receipt>>(0)
+            val newReceipts = invocation.getArgument<List<Receipt>>(1)
+            updatedPairs.addAll(oldReceipts.zip(newReceipts))
+            Single.just(oldReceipts.map { updateResults[it] ?: receipt })
+        }
 
         receiptsOrderer = ReceiptsOrderer(tripTableController, receiptTableController, orderingMigrationStore, orderingPreferencesManager, Schedulers.trampoline())
     }
@@ -194,30 +206,30 @@ class ReceiptsOrdererTest {
     fun initializeWhenWeHaveNotPreviouslyMigrated() {
         whenever(orderingMigrationStore.getMigrationVersion()).thenReturn(Single.just(ReceiptsOrderingMigrationStore.MigrationVersion.NotMigrated))
         receiptsOrderer.initialize()
-        verify(receiptTableController).update(eq(NO_ORDERING_RECEIPT_1), eq(ORDERED_RECEIPT_1), any())
-        verify(receiptTableController).update(eq(NO_ORDERING_RECEIPT_2), eq(ORDERED_RECEIPT_2), any())
-        verify(receiptTableController).update(eq(NO_ORDERING_RECEIPT_3), eq(ORDERED_RECEIPT_3), any())
-        verify(receiptTableController).update(eq(NO_ORDERING_RECEIPT_4), eq(ORDERED_RECEIPT_4), any())
-        verify(receiptTableController).update(eq(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_1), eq(ORDERED_RECEIPT_1), any())
-        verify(receiptTableController).update(eq(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_2), eq(ORDERED_RECEIPT_2), any())
-        verify(receiptTableController).update(eq(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_3), eq(ORDERED_RECEIPT_3), any())
-        verify(receiptTableController).update(eq(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_4), eq(ORDERED_RECEIPT_4), any())
-        verify(receiptTableController, never()).update(eq(PARTIALLY_ORDERED_RECEIPT_1), any(), any())
-        verify(receiptTableController).update(eq(PARTIALLY_ORDERED_RECEIPT_2), eq(ORDERED_RECEIPT_2), any())
-        verify(receiptTableController).update(eq(PARTIALLY_ORDERED_RECEIPT_3), eq(ORDERED_RECEIPT_3), any())
-        verify(receiptTableController, never()).update(eq(PARTIALLY_ORDERED_RECEIPT_4), any(), any())
-        verify(receiptTableController, never()).update(eq(ORDERED_RECEIPT_1), any(), any())
-        verify(receiptTableController, never()).update(eq(ORDERED_RECEIPT_2), any(), any())
-        verify(receiptTableController, never()).update(eq(ORDERED_RECEIPT_3), any(), any())
-        verify(receiptTableController, never()).update(eq(ORDERED_RECEIPT_4), any(), any())
-        verify(receiptTableController, never()).update(eq(OTHER_PARTIALLY_ORDERED_RECEIPT_1), any(), any())
-        verify(receiptTableController).update(eq(OTHER_PARTIALLY_ORDERED_RECEIPT_2), eq(OTHER_ORDERED_RECEIPT_2), any())
-        verify(receiptTableController).update(eq(OTHER_PARTIALLY_ORDERED_RECEIPT_3), eq(OTHER_ORDERED_RECEIPT_3), any())
-        verify(receiptTableController, never()).update(eq(OTHER_PARTIALLY_ORDERED_RECEIPT_4), any(), any())
-        verify(receiptTableController, never()).update(eq(OTHER_ORDERED_RECEIPT_1), any(), any())
-        verify(receiptTableController, never()).update(eq(OTHER_ORDERED_RECEIPT_2), any(), any())
-        verify(receiptTableController, never()).update(eq(OTHER_ORDERED_RECEIPT_3), any(), any())
-        verify(receiptTableController, never()).update(eq(OTHER_ORDERED_RECEIPT_4), any(), any())
+        verifyUpdated(NO_ORDERING_RECEIPT_1, ORDERED_RECEIPT_1)
+        verifyUpdated(NO_ORDERING_RECEIPT_2, ORDERED_RECEIPT_2)
+        verifyUpdated(NO_ORDERING_RECEIPT_3, ORDERED_RECEIPT_3)
+        verifyUpdated(NO_ORDERING_RECEIPT_4, ORDERED_RECEIPT_4)
+        verifyUpdated(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_1, ORDERED_RECEIPT_1)
+        verifyUpdated(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_2, ORDERED_RECEIPT_2)
+        verifyUpdated(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_3, ORDERED_RECEIPT_3)
+        verifyUpdated(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_4, ORDERED_RECEIPT_4)
+        verifyNeverUpdated(PARTIALLY_ORDERED_RECEIPT_1)
+        verifyUpdated(PARTIALLY_ORDERED_RECEIPT_2, ORDERED_RECEIPT_2)
+        verifyUpdated(PARTIALLY_ORDERED_RECEIPT_3, ORDERED_RECEIPT_3)
+        verifyNeverUpdated(PARTIALLY_ORDERED_RECEIPT_4)
+        verifyNeverUpdated(ORDERED_RECEIPT_1)
+        verifyNeverUpdated(ORDERED_RECEIPT_2)
+        verifyNeverUpdated(ORDERED_RECEIPT_3)
+        verifyNeverUpdated(ORDERED_RECEIPT_4)
+        verifyNeverUpdated(OTHER_PARTIALLY_ORDERED_RECEIPT_1)
+        verifyUpdated(OTHER_PARTIALLY_ORDERED_RECEIPT_2, OTHER_ORDERED_RECEIPT_2)
+        verifyUpdated(OTHER_PARTIALLY_ORDERED_RECEIPT_3, OTHER_ORDERED_RECEIPT_3)
+        verifyNeverUpdated(OTHER_PARTIALLY_ORDERED_RECEIPT_4)
+        verifyNeverUpdated(OTHER_ORDERED_RECEIPT_1)
+        verifyNeverUpdated(OTHER_ORDERED_RECEIPT_2)
+        verifyNeverUpdated(OTHER_ORDERED_RECEIPT_3)
+        verifyNeverUpdated(OTHER_ORDERED_RECEIPT_4)
         verify(orderingMigrationStore).setOrderingMigrationHasOccurred(true)
         verify(orderingPreferencesManager).saveReceiptsTableOrdering()
     }
@@ -226,30 +238,30 @@ class ReceiptsOrdererTest {
     fun initializeWhenWeHavePreviouslyMigratedToV1() {
         whenever(orderingMigrationStore.getMigrationVersion()).thenReturn(Single.just(ReceiptsOrderingMigrationStore.MigrationVersion.V1))
         receiptsOrderer.initialize()
-        verify(receiptTableController).update(eq(NO_ORDERING_RECEIPT_4), eq(ORDERED_RECEIPT_4), any())
-        verify(receiptTableController).update(eq(NO_ORDERING_RECEIPT_3), eq(ORDERED_RECEIPT_3), any())
-        verify(receiptTableController).update(eq(NO_ORDERING_RECEIPT_2), eq(ORDERED_RECEIPT_2), any())
-        verify(receiptTableController).update(eq(NO_ORDERING_RECEIPT_1), eq(ORDERED_RECEIPT_1), any())
-        verify(receiptTableController).update(eq(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_4), eq(ORDERED_RECEIPT_4), any())
-        verify(receiptTableController).update(eq(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_3), eq(ORDERED_RECEIPT_3), any())
-        verify(receiptTableController).update(eq(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_2), eq(ORDERED_RECEIPT_2), any())
-        verify(receiptTableController).update(eq(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_1), eq(ORDERED_RECEIPT_1), any())
-        verify(receiptTableController, never()).update(eq(PARTIALLY_ORDERED_RECEIPT_1), any(), any())
-        verify(receiptTableController).update(eq(PARTIALLY_ORDERED_RECEIPT_2), eq(ORDERED_RECEIPT_2), any())
-        verify(receiptTableController).update(eq(PARTIALLY_ORDERED_RECEIPT_3), eq(ORDERED_RECEIPT_3), any())
-        verify(receiptTableController, never()).update(eq(PARTIALLY_ORDERED_RECEIPT_4), any(), any())
-        verify(receiptTableController, never()).update(eq(ORDERED_RECEIPT_4), any(), any())
-        verify(receiptTableController, never()).update(eq(ORDERED_RECEIPT_3), any(), any())
-        verify(receiptTableController, never()).update(eq(ORDERED_RECEIPT_2), any(), any())
-        verify(receiptTableController, never()).update(eq(ORDERED_RECEIPT_1), any(), any())
-        verify(receiptTableController, never()).update(eq(OTHER_PARTIALLY_ORDERED_RECEIPT_1), any(), any())
-        verify(receiptTableController).update(eq(OTHER_PARTIALLY_ORDERED_RECEIPT_2), eq(OTHER_ORDERED_RECEIPT_2), any())
-        verify(receiptTableController).update(eq(OTHER_PARTIALLY_ORDERED_RECEIPT_3), eq(OTHER_ORDERED_RECEIPT_3), any())
-        verify(receiptTableController, never()).update(eq(OTHER_PARTIALLY_ORDERED_RECEIPT_4), any(), any())
-        verify(receiptTableController, never()).update(eq(OTHER_ORDERED_RECEIPT_1), any(), any())
-        verify(receiptTableController, never()).update(eq(OTHER_ORDERED_RECEIPT_2), any(), any())
-        verify(receiptTableController, never()).update(eq(OTHER_ORDERED_RECEIPT_3), any(), any())
-        verify(receiptTableController, never()).update(eq(OTHER_ORDERED_RECEIPT_4), any(), any())
+        verifyUpdated(NO_ORDERING_RECEIPT_4, ORDERED_RECEIPT_4)
+        verifyUpdated(NO_ORDERING_RECEIPT_3, ORDERED_RECEIPT_3)
+        verifyUpdated(NO_ORDERING_RECEIPT_2, ORDERED_RECEIPT_2)
+        verifyUpdated(NO_ORDERING_RECEIPT_1, ORDERED_RECEIPT_1)
+        verifyUpdated(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_4, ORDERED_RECEIPT_4)
+        verifyUpdated(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_3, ORDERED_RECEIPT_3)
+        verifyUpdated(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_2, ORDERED_RECEIPT_2)
+        verifyUpdated(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_1, ORDERED_RECEIPT_1)
+        verifyNeverUpdated(PARTIALLY_ORDERED_RECEIPT_1)
+        verifyUpdated(PARTIALLY_ORDERED_RECEIPT_2, ORDERED_RECEIPT_2)
+        verifyUpdated(PARTIALLY_ORDERED_RECEIPT_3, ORDERED_RECEIPT_3)
+        verifyNeverUpdated(PARTIALLY_ORDERED_RECEIPT_4)
+        verifyNeverUpdated(ORDERED_RECEIPT_4)
+        verifyNeverUpdated(ORDERED_RECEIPT_3)
+        verifyNeverUpdated(ORDERED_RECEIPT_2)
+        verifyNeverUpdated(ORDERED_RECEIPT_1)
+        verifyNeverUpdated(OTHER_PARTIALLY_ORDERED_RECEIPT_1)
+        verifyUpdated(OTHER_PARTIALLY_ORDERED_RECEIPT_2, OTHER_ORDERED_RECEIPT_2)
+        verifyUpdated(OTHER_PARTIALLY_ORDERED_RECEIPT_3, OTHER_ORDERED_RECEIPT_3)
+        verifyNeverUpdated(OTHER_PARTIALLY_ORDERED_RECEIPT_4)
+        verifyNeverUpdated(OTHER_ORDERED_RECEIPT_1)
+        verifyNeverUpdated(OTHER_ORDERED_RECEIPT_2)
+        verifyNeverUpdated(OTHER_ORDERED_RECEIPT_3)
+        verifyNeverUpdated(OTHER_ORDERED_RECEIPT_4)
         verify(orderingMigrationStore).setOrderingMigrationHasOccurred(true)
         verify(orderingPreferencesManager).saveReceiptsTableOrdering()
     }
@@ -258,30 +270,30 @@ class ReceiptsOrdererTest {
     fun initializeWhenWeHavePreviouslyMigratedToV2() {
         whenever(orderingMigrationStore.getMigrationVersion()).thenReturn(Single.just(ReceiptsOrderingMigrationStore.MigrationVersion.V2))
         receiptsOrderer.initialize()
-        verify(receiptTableController).update(eq(NO_ORDERING_RECEIPT_4), eq(ORDERED_RECEIPT_4), any())
-        verify(receiptTableController).update(eq(NO_ORDERING_RECEIPT_3), eq(ORDERED_RECEIPT_3), any())
-        verify(receiptTableController).update(eq(NO_ORDERING_RECEIPT_2), eq(ORDERED_RECEIPT_2), any())
-        verify(receiptTableController).update(eq(NO_ORDERING_RECEIPT_1), eq(ORDERED_RECEIPT_1), any())
-        verify(receiptTableController).update(eq(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_4), eq(ORDERED_RECEIPT_4), any())
-        verify(receiptTableController).update(eq(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_3), eq(ORDERED_RECEIPT_3), any())
-        verify(receiptTableController).update(eq(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_2), eq(ORDERED_RECEIPT_2), any())
-        verify(receiptTableController).update(eq(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_1), eq(ORDERED_RECEIPT_1), any())
-        verify(receiptTableController, never()).update(eq(PARTIALLY_ORDERED_RECEIPT_1), any(), any())
-        verify(receiptTableController).update(eq(PARTIALLY_ORDERED_RECEIPT_2), eq(ORDERED_RECEIPT_2), any())
-        verify(receiptTableController).update(eq(PARTIALLY_ORDERED_RECEIPT_3), eq(ORDERED_RECEIPT_3), any())
-        verify(receiptTableController, never()).update(eq(PARTIALLY_ORDERED_RECEIPT_4), any(), any())
-        verify(receiptTableController, never()).update(eq(ORDERED_RECEIPT_4), any(), any())
-        verify(receiptTableController, never()).update(eq(ORDERED_RECEIPT_3), any(), any())
-        verify(receiptTableController, never()).update(eq(ORDERED_RECEIPT_2), any(), any())
-        verify(receiptTableController, never()).update(eq(ORDERED_RECEIPT_1), any(), any())
-        verify(receiptTableController, never()).update(eq(OTHER_PARTIALLY_ORDERED_RECEIPT_1), any(), any())
-        verify(receiptTableController).update(eq(OTHER_PARTIALLY_ORDERED_RECEIPT_2), eq(OTHER_ORDERED_RECEIPT_2), any())
-        verify(receiptTableController).update(eq(OTHER_PARTIALLY_ORDERED_RECEIPT_3), eq(OTHER_ORDERED_RECEIPT_3), any())
-        verify(receiptTableController, never()).update(eq(OTHER_PARTIALLY_ORDERED_RECEIPT_4), any(), any())
-        verify(receiptTableController, never()).update(eq(OTHER_ORDERED_RECEIPT_1), any(), any())
-        verify(receiptTableController, never()).update(eq(OTHER_ORDERED_RECEIPT_2), any(), any())
-        verify(receiptTableController, never()).update(eq(OTHER_ORDERED_RECEIPT_3), any(), any())
-        verify(receiptTableController, never()).update(eq(OTHER_ORDERED_RECEIPT_4), any(), any())
+        verifyUpdated(NO_ORDERING_RECEIPT_4, ORDERED_RECEIPT_4)
+        verifyUpdated(NO_ORDERING_RECEIPT_3, ORDERED_RECEIPT_3)
+        verifyUpdated(NO_ORDERING_RECEIPT_2, ORDERED_RECEIPT_2)
+        verifyUpdated(NO_ORDERING_RECEIPT_1, ORDERED_RECEIPT_1)
+        verifyUpdated(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_4, ORDERED_RECEIPT_4)
+        verifyUpdated(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_3, ORDERED_RECEIPT_3)
+        verifyUpdated(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_2, ORDERED_RECEIPT_2)
+        verifyUpdated(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_1, ORDERED_RECEIPT_1)
+        verifyNeverUpdated(PARTIALLY_ORDERED_RECEIPT_1)
+        verifyUpdated(PARTIALLY_ORDERED_RECEIPT_2, ORDERED_RECEIPT_2)
+        verifyUpdated(PARTIALLY_ORDERED_RECEIPT_3, ORDERED_RECEIPT_3)
+        verifyNeverUpdated(PARTIALLY_ORDERED_RECEIPT_4)
+        verifyNeverUpdated(ORDERED_RECEIPT_4)
+        verifyNeverUpdated(ORDERED_RECEIPT_3)
+        verifyNeverUpdated(ORDERED_RECEIPT_2)
+        verifyNeverUpdated(ORDERED_RECEIPT_1)
+        verifyNeverUpdated(OTHER_PARTIALLY_ORDERED_RECEIPT_1)
+        verifyUpdated(OTHER_PARTIALLY_ORDERED_RECEIPT_2, OTHER_ORDERED_RECEIPT_2)
+        verifyUpdated(OTHER_PARTIALLY_ORDERED_RECEIPT_3, OTHER_ORDERED_RECEIPT_3)
+        verifyNeverUpdated(OTHER_PARTIALLY_ORDERED_RECEIPT_4)
+        verifyNeverUpdated(OTHER_ORDERED_RECEIPT_1)
+        verifyNeverUpdated(OTHER_ORDERED_RECEIPT_2)
+        verifyNeverUpdated(OTHER_ORDERED_RECEIPT_3)
+        verifyNeverUpdated(OTHER_ORDERED_RECEIPT_4)
         verify(orderingMigrationStore).setOrderingMigrationHasOccurred(true)
         verify(orderingPreferencesManager).saveReceiptsTableOrdering()
     }
@@ -294,37 +306,37 @@ class ReceiptsOrdererTest {
         ))
         whenever(orderingMigrationStore.getMigrationVersion()).thenReturn(Single.just(ReceiptsOrderingMigrationStore.MigrationVersion.V1))
         receiptsOrderer.initialize()
-        verify(receiptTableController).update(eq(NO_ORDERING_RECEIPT_4), eq(ORDERED_RECEIPT_4), any())
-        verify(receiptTableController).update(eq(NO_ORDERING_RECEIPT_3), eq(ORDERED_RECEIPT_3), any())
-        verify(receiptTableController).update(eq(NO_ORDERING_RECEIPT_2), eq(ORDERED_RECEIPT_2), any())
-        verify(receiptTableController).update(eq(NO_ORDERING_RECEIPT_1), eq(ORDERED_RECEIPT_1), any())
-        verify(receiptTableController).update(eq(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_4), eq(ORDERED_RECEIPT_4), any())
-        verify(receiptTableController).update(eq(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_3), eq(ORDERED_RECEIPT_3), any())
-        verify(receiptTableController).update(eq(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_2), eq(ORDERED_RECEIPT_2), any())
-        verify(receiptTableController).update(eq(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_1), eq(ORDERED_RECEIPT_1), any())
-        verify(receiptTableController, never()).update(eq(PARTIALLY_ORDERED_RECEIPT_1), any(), any())
-        verify(receiptTableController).update(eq(PARTIALLY_ORDERED_RECEIPT_3), eq(ORDERED_RECEIPT_3), any())
-        verify(receiptTableController).update(eq(PARTIALLY_ORDERED_RECEIPT_2), eq(ORDERED_RECEIPT_2), any())
-        verify(receiptTableController, never()).update(eq(PARTIALLY_ORDERED_RECEIPT_4), any(), any())
-        verify(receiptTableController, never()).update(eq(ORDERED_RECEIPT_4), any(), any())
-        verify(receiptTableController, never()).update(eq(ORDERED_RECEIPT_3), any(), any())
-        verify(receiptTableController, never()).update(eq(ORDERED_RECEIPT_2), any(), any())
-        verify(receiptTableController, never()).update(eq(ORDERED_RECEIPT_1), any(), any())
-        verify(receiptTableController, never()).update(eq(OTHER_PARTIALLY_ORDERED_RECEIPT_1), any(), any())
-        verify(receiptTableController).update(eq(OTHER_PARTIALLY_ORDERED_RECEIPT_3), eq(OTHER_ORDERED_RECEIPT_3), any())
-        verify(receiptTableController).update(eq(OTHER_PARTIALLY_ORDERED_RECEIPT_2), eq(OTHER_ORDERED_RECEIPT_2), any())
-        verify(receiptTableController, never()).update(eq(OTHER_PARTIALLY_ORDERED_RECEIPT_4), any(), any())
-        verify(receiptTableController, never()).update(eq(OTHER_ORDERED_RECEIPT_1), any(), any())
-        verify(receiptTableController, never()).update(eq(OTHER_ORDERED_RECEIPT_2), any(), any())
-        verify(receiptTableController, never()).update(eq(OTHER_ORDERED_RECEIPT_3), any(), any())
-        verify(receiptTableController, never()).update(eq(OTHER_ORDERED_RECEIPT_4), any(), any())
+        verifyUpdated(NO_ORDERING_RECEIPT_4, ORDERED_RECEIPT_4)
+        verifyUpdated(NO_ORDERING_RECEIPT_3, ORDERED_RECEIPT_3)
+        verifyUpdated(NO_ORDERING_RECEIPT_2, ORDERED_RECEIPT_2)
+        verifyUpdated(NO_ORDERING_RECEIPT_1, ORDERED_RECEIPT_1)
+        verifyUpdated(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_4, ORDERED_RECEIPT_4)
+        verifyUpdated(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_3, ORDERED_RECEIPT_3)
+        verifyUpdated(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_2, ORDERED_RECEIPT_2)
+        verifyUpdated(LEGACY_ORDERING_BY_UNIX_DATE_RECEIPT_1, ORDERED_RECEIPT_1)
+        verifyNeverUpdated(PARTIALLY_ORDERED_RECEIPT_1)
+        verifyUpdated(PARTIALLY_ORDERED_RECEIPT_3, ORDERED_RECEIPT_3)
+        verifyUpdated(PARTIALLY_ORDERED_RECEIPT_2, ORDERED_RECEIPT_2)
+        verifyNeverUpdated(PARTIALLY_ORDERED_RECEIPT_4)
+        verifyNeverUpdated(ORDERED_RECEIPT_4)
+        verifyNeverUpdated(ORDERED_RECEIPT_3)
+        verifyNeverUpdated(ORDERED_RECEIPT_2)
+        verifyNeverUpdated(ORDERED_RECEIPT_1)
+        verifyNeverUpdated(OTHER_PARTIALLY_ORDERED_RECEIPT_1)
+        verifyUpdated(OTHER_PARTIALLY_ORDERED_RECEIPT_3, OTHER_ORDERED_RECEIPT_3)
+        verifyUpdated(OTHER_PARTIALLY_ORDERED_RECEIPT_2, OTHER_ORDERED_RECEIPT_2)
+        verifyNeverUpdated(OTHER_PARTIALLY_ORDERED_RECEIPT_4)
+        verifyNeverUpdated(OTHER_ORDERED_RECEIPT_1)
+        verifyNeverUpdated(OTHER_ORDERED_RECEIPT_2)
+        verifyNeverUpdated(OTHER_ORDERED_RECEIPT_3)
+        verifyNeverUpdated(OTHER_ORDERED_RECEIPT_4)
         verify(orderingMigrationStore).setOrderingMigrationHasOccurred(true)
         verify(orderingPreferencesManager).saveReceiptsTableOrdering()
     }
 
     @Test
     fun initializeWhenAnUpdateFailureOccurs() {
-        whenever(receiptTableController.update(any(), any(), any())).thenReturn(Observable.error(Exception("Test")))
+        whenever(receiptTableController.updateAll(any(), any(), any())).thenReturn(Single.error(Exception("Test")))
 
         receiptsOrderer.initialize()
 
@@ -340,10 +352,16 @@ class ReceiptsOrdererTest {
                 .assertValue(listOf(updatedReceipt2, updatedReceipt3, updatedReceipt4, updatedReceipt1))
                 .assertNoErrors()
                 .assertComplete()
-        verify(receiptTableController).update(ORDERED_RECEIPT_2, ReceiptBuilderFactory(ORDERED_RECEIPT_2).setCustomOrderId(17509003L).build(), DatabaseOperationMetadata(OperationFamilyType.Silent))
-        verify(receiptTableController).update(ORDERED_RECEIPT_3, ReceiptBuilderFactory(ORDERED_RECEIPT_3).setCustomOrderId(17509002L).build(), DatabaseOperationMetadata(OperationFamilyType.Silent))
-        verify(receiptTableController).update(ORDERED_RECEIPT_4, ReceiptBuilderFactory(ORDERED_RECEIPT_4).setCustomOrderId(17509001L).build(), DatabaseOperationMetadata(OperationFamilyType.Silent))
-        verify(receiptTableController).update(ORDERED_RECEIPT_1, ReceiptBuilderFactory(ORDERED_RECEIPT_1).setCustomOrderId(17509000L).build(), DatabaseOperationMetadata())
+        verify(receiptTableController).updateAll(
+                listOf(ORDERED_RECEIPT_2, ORDERED_RECEIPT_3, ORDERED_RECEIPT_4, ORDERED_RECEIPT_1),
+                listOf(
+                    ReceiptBuilderFactory(ORDERED_RECEIPT_2).setCustomOrderId(17509003L).build(),
+                    ReceiptBuilderFactory(ORDERED_RECEIPT_3).setCustomOrderId(17509002L).build(),
+                    ReceiptBuilderFactory(ORDERED_RECEIPT_4).setCustomOrderId(17509001L).build(),
+                    ReceiptBuilderFactory(ORDERED_RECEIPT_1).setCustomOrderId(17509000L).build()
+                ),
+                DatabaseOperationMetadata()
+        )
     }
 
     @Test
@@ -354,10 +372,16 @@ class ReceiptsOrdererTest {
                 .assertValue(listOf(updatedReceipt2, updatedReceipt1, ORDERED_RECEIPT_3, ORDERED_RECEIPT_4))
                 .assertNoErrors()
                 .assertComplete()
-        verify(receiptTableController).update(ORDERED_RECEIPT_2, ReceiptBuilderFactory(ORDERED_RECEIPT_2).setCustomOrderId(17509003L).build(), DatabaseOperationMetadata(OperationFamilyType.Silent))
-        verify(receiptTableController).update(ORDERED_RECEIPT_1, ReceiptBuilderFactory(ORDERED_RECEIPT_1).setCustomOrderId(17509002L).build(), DatabaseOperationMetadata())
-        verify(receiptTableController, never()).update(eq(ORDERED_RECEIPT_3), any(), any())
-        verify(receiptTableController, never()).update(eq(ORDERED_RECEIPT_4), any(), any())
+        verify(receiptTableController).updateAll(
+                listOf(ORDERED_RECEIPT_2, ORDERED_RECEIPT_1),
+                listOf(
+                    ReceiptBuilderFactory(ORDERED_RECEIPT_2).setCustomOrderId(17509003L).build(),
+                    ReceiptBuilderFactory(ORDERED_RECEIPT_1).setCustomOrderId(17509002L).build()
+                ),
+                DatabaseOperationMetadata()
+        )
+        verifyNeverUpdated(ORDERED_RECEIPT_3)
+        verifyNeverUpdated(ORDERED_RECEIPT_4)
     }
 
     @Test
@@ -368,10 +392,16 @@ class ReceiptsOrdererTest {
                 .assertValue(listOf(updatedReceipt4, ORDERED_RECEIPT_1, updatedReceipt2, updatedReceipt3))
                 .assertNoErrors()
                 .assertComplete()
-        verify(receiptTableController, never()).update(eq(ORDERED_RECEIPT_1), any(), any())
-        verify(receiptTableController).update(ORDERED_RECEIPT_4, ReceiptBuilderFactory(ORDERED_RECEIPT_4).setCustomOrderId(17518001L).build(), DatabaseOperationMetadata(OperationFamilyType.Silent))
-        verify(receiptTableController).update(ORDERED_RECEIPT_2, ReceiptBuilderFactory(ORDERED_RECEIPT_2).setCustomOrderId(17509001L).build(), DatabaseOperationMetadata(OperationFamilyType.Silent))
-        verify(receiptTableController).update(ORDERED_RECEIPT_3, ReceiptBuilderFactory(ORDERED_RECEIPT_3).setCustomOrderId(17509000L).build(), DatabaseOperationMetadata())
+        verifyNeverUpdated(ORDERED_RECEIPT_1)
+        verify(receiptTableController).updateAll(
+                listOf(ORDERED_RECEIPT_4, ORDERED_RECEIPT_2, ORDERED_RECEIPT_3),
+                listOf(
+                    ReceiptBuilderFactory(ORDERED_RECEIPT_4).setCustomOrderId(17518001L).build(),
+                    ReceiptBuilderFactory(ORDERED_RECEIPT_2).setCustomOrderId(17509001L).build(),
+                    ReceiptBuilderFactory(ORDERED_RECEIPT_3).setCustomOrderId(17509000L).build()
+                ),
+                DatabaseOperationMetadata()
+        )
     }
 
     @Test
@@ -382,10 +412,16 @@ class ReceiptsOrdererTest {
                 .assertValue(listOf(ORDERED_RECEIPT_1, ORDERED_RECEIPT_2, updatedReceipt4, updatedReceipt3))
                 .assertNoErrors()
                 .assertComplete()
-        verify(receiptTableController, never()).update(eq(ORDERED_RECEIPT_1), any(), any())
-        verify(receiptTableController, never()).update(eq(ORDERED_RECEIPT_2), any(), any())
-        verify(receiptTableController).update(ORDERED_RECEIPT_4, ReceiptBuilderFactory(ORDERED_RECEIPT_4).setCustomOrderId(17509001L).build(), DatabaseOperationMetadata(OperationFamilyType.Silent))
-        verify(receiptTableController).update(ORDERED_RECEIPT_3, ReceiptBuilderFactory(ORDERED_RECEIPT_3).setCustomOrderId(17509000L).build(), DatabaseOperationMetadata())
+        verifyNeverUpdated(ORDERED_RECEIPT_1)
+        verifyNeverUpdated(ORDERED_RECEIPT_2)
+        verify(receiptTableController).updateAll(
+                listOf(ORDERED_RECEIPT_4, ORDERED_RECEIPT_3),
+                listOf(
+                    ReceiptBuilderFactory(ORDERED_RECEIPT_4).setCustomOrderId(17509001L).build(),
+                    ReceiptBuilderFactory(ORDERED_RECEIPT_3).setCustomOrderId(17509000L).build()
+                ),
+                DatabaseOperationMetadata()
+        )
     }
 
     @Test
@@ -396,10 +432,16 @@ class ReceiptsOrdererTest {
                 .assertValue(listOf(ORDERED_RECEIPT_1, updatedReceipt3, updatedReceipt4, updatedReceipt2))
                 .assertNoErrors()
                 .assertComplete()
-        verify(receiptTableController, never()).update(eq(ORDERED_RECEIPT_1), any(), any())
-        verify(receiptTableController).update(ORDERED_RECEIPT_3, ReceiptBuilderFactory(ORDERED_RECEIPT_3).setCustomOrderId(17509002L).build(), DatabaseOperationMetadata(OperationFamilyType.Silent))
-        verify(receiptTableController).update(ORDERED_RECEIPT_4, ReceiptBuilderFactory(ORDERED_RECEIPT_4).setCustomOrderId(17509001L).build(), DatabaseOperationMetadata(OperationFamilyType.Silent))
-        verify(receiptTableController).update(ORDERED_RECEIPT_2, ReceiptBuilderFactory(ORDERED_RECEIPT_2).setCustomOrderId(17509000L).build(), DatabaseOperationMetadata())
+        verifyNeverUpdated(ORDERED_RECEIPT_1)
+        verify(receiptTableController).updateAll(
+                listOf(ORDERED_RECEIPT_3, ORDERED_RECEIPT_4, ORDERED_RECEIPT_2),
+                listOf(
+                    ReceiptBuilderFactory(ORDERED_RECEIPT_3).setCustomOrderId(17509002L).build(),
+                    ReceiptBuilderFactory(ORDERED_RECEIPT_4).setCustomOrderId(17509001L).build(),
+                    ReceiptBuilderFactory(ORDERED_RECEIPT_2).setCustomOrderId(17509000L).build()
+                ),
+                DatabaseOperationMetadata()
+        )
     }
 
     @Test
@@ -410,10 +452,16 @@ class ReceiptsOrdererTest {
                 .assertValue(listOf(ORDERED_RECEIPT_1, updatedReceipt4, updatedReceipt2, updatedReceipt3))
                 .assertNoErrors()
                 .assertComplete()
-        verify(receiptTableController, never()).update(eq(ORDERED_RECEIPT_1), any(), any())
-        verify(receiptTableController).update(ORDERED_RECEIPT_4, ReceiptBuilderFactory(ORDERED_RECEIPT_4).setCustomOrderId(17509002L).build(), DatabaseOperationMetadata(OperationFamilyType.Silent))
-        verify(receiptTableController).update(ORDERED_RECEIPT_2, ReceiptBuilderFactory(ORDERED_RECEIPT_2).setCustomOrderId(17509001L).build(), DatabaseOperationMetadata(OperationFamilyType.Silent))
-        verify(receiptTableController).update(ORDERED_RECEIPT_3, ReceiptBuilderFactory(ORDERED_RECEIPT_3).setCustomOrderId(17509000L).build(), DatabaseOperationMetadata())
+        verifyNeverUpdated(ORDERED_RECEIPT_1)
+        verify(receiptTableController).updateAll(
+                listOf(ORDERED_RECEIPT_4, ORDERED_RECEIPT_2, ORDERED_RECEIPT_3),
+                listOf(
+                    ReceiptBuilderFactory(ORDERED_RECEIPT_4).setCustomOrderId(17509002L).build(),
+                    ReceiptBuilderFactory(ORDERED_RECEIPT_2).setCustomOrderId(17509001L).build(),
+                    ReceiptBuilderFactory(ORDERED_RECEIPT_3).setCustomOrderId(17509000L).build()
+                ),
+                DatabaseOperationMetadata()
+        )
     }
 
     @Test
@@ -424,10 +472,16 @@ class ReceiptsOrdererTest {
                 .assertValue(listOf(ORDERED_RECEIPT_1, ORDERED_RECEIPT_2, updatedReceipt4, updatedReceipt3))
                 .assertNoErrors()
                 .assertComplete()
-        verify(receiptTableController, never()).update(eq(ORDERED_RECEIPT_1), any(), any())
-        verify(receiptTableController, never()).update(eq(ORDERED_RECEIPT_2), any(), any())
-        verify(receiptTableController).update(ORDERED_RECEIPT_4, ReceiptBuilderFactory(ORDERED_RECEIPT_4).setCustomOrderId(17509001L).build(), DatabaseOperationMetadata(OperationFamilyType.Silent))
-        verify(receiptTableController).update(ORDERED_RECEIPT_3, ReceiptBuilderFactory(ORDERED_RECEIPT_3).setCustomOrderId(17509000L).build(), DatabaseOperationMetadata())
+        verifyNeverUpdated(ORDERED_RECEIPT_1)
+        verifyNeverUpdated(ORDERED_RECEIPT_2)
+        verify(receiptTableController).updateAll(
+                listOf(ORDERED_RECEIPT_4, ORDERED_RECEIPT_3),
+                listOf(
+                    ReceiptBuilderFactory(ORDERED_RECEIPT_4).setCustomOrderId(17509001L).build(),
+                    ReceiptBuilderFactory(ORDERED_RECEIPT_3).setCustomOrderId(17509000L).build()
+                ),
+                DatabaseOperationMetadata()
+        )
     }
 
     @Test
@@ -450,4 +504,12 @@ class ReceiptsOrdererTest {
         val nextCustomOrderID = ReceiptsOrderer.getCustomOrderId(ORDERED_RECEIPT_4, receipts)
         assertEquals(ORDERED_RECEIPT_4.customOrderId, nextCustomOrderID)
     }
-}
\ No newline at end of file
+
+    private fun verifyUpdated(oldReceipt: Receipt, newReceipt: Receipt) {
+        assertTrue("Expected $oldReceipt to be updated to $newReceipt", updatedPairs.contains(Pair(oldReceipt, newReceipt)))
+    }
+
+    private fun verifyNeverUpdated(oldReceipt: Receipt) {
+        assertFalse("Expected $oldReceipt to not be updated", updatedPairs.any { it.first == oldReceipt })
+    }
+}
@@ -6,6 +6,7 @@ import android.view.View;
 import androidx.annotation.NonNull;
 import androidx.test.core.app.ApplicationProvider;
 
+import com.hadisatrio.optional.Optional;
 import com.tom_roush.pdfbox.cos.COSName;
 import com.tom_roush.pdfbox.pdmodel.PDDocument;
 import com.tom_roush.pdfbox.pdmodel.PDPage;
@@ -17,6 +18,7 @@ import com.tom_roush.pdfbox.pdmodel.graphics.image.PDImageXObject;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.junit.experimental.categories.Category;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
@@ -26,13 +28,21 @@ import org.robolectric.annotation.LooperMode;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 
 import com.wops.receiptsgo.TestResourceReader;
+import com.wops.receiptsgo.benchmark.Benchmark;
+import com.wops.receiptsgo.benchmark.BenchmarkReporter;
 import com.wops.receiptsgo.date.DateFormatter;
 import com.wops.receiptsgo.model.Column;
 import com.wops.receiptsgo.model.Distance;
@@ -73,6 +83,8 @@ import com.wops.core.sync.model.impl.DefaultSyncState;
 import io.reactivex.schedulers.Schedulers;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.when;
 
@@ -90,6 +102,11 @@ import static org.mockito.Mockito.when;
 @Config(shadows = {ShadowFontFileFinder.class})
 public class InteractivePdfBoxTest {
 
+    /**
+     * Less than the size of a single receipt image, so streaming reports always spill to a scratch file
+     */
+    private static final long STREAMING_TEST_MAX_MAIN_MEMORY_BYTES = 16 * 1024;
+
     Context context;
 
     TestResourceReader testResourceReader;
@@ -502,6 +519,89 @@ public class InteractivePdfBoxTest {
         verifyImageCount(pdDocument, count);
     }
 
+    @Test
+    public void createStreamingImageGridWith48JpgReceiptsBoundsItsMainMemory() throws Exception {
+
+        // Configure test data
+        final int count = 48;
+        final File imgFile = testResourceReader.openFile(TestResourceReader.RECEIPT_JPG);
+        final List<Receipt> receipts = createReceiptsWithFile(imgFile, count);
+        final List<Distance> distances = createDistances(count);
+        final Trip trip = TripUtils.newDefaultTrip();
+        final PdfBoxReportFile pdfBoxReportFile = new PdfBoxReportFile(reportResourcesManager, userPreferenceManager, dateFormatter,
+                Optional.of(STREAMING_TEST_MAX_MAIN_MEMORY_BYTES));
+        pdfBoxReportFile.addSection(pdfBoxReportFile.createReceiptsImagesSection(trip, receipts, distances));
+
+        // Write the file, noting the state of our scratch file once we start saving (ie after all images were added)
+        final List<File> scratchFilesWhileSaving = new ArrayList<>();
+        final long[] mainMemoryBytesWhileSaving = new long[1];
+        try (OutputStream outputStream = new FilterOutputStream(new FileOutputStream(outputFile)) {
+            @Override
+            public void write(int b) throws IOException {
+                if (scratchFilesWhileSaving.isEmpty()) {
+                    scratchFilesWhileSaving.addAll(getScratchFiles());
+                    mainMemoryBytesWhileSaving[0] = getScratchFileMainMemoryBytes(pdfBoxReportFile.getDocument());
+                }
+                super.write(b);
+            }
+        }) {
+            pdfBoxReportFile.writeFile(outputStream, trip, receipts, distances);
+        }
+
+        // Verify the results
+        assertFalse("Our images were never spilled to a scratch file", scratchFilesWhileSaving.isEmpty());
+        long scratchFileBytes = 0;
+        for (final File scratchFile : scratchFilesWhileSaving) {
+            scratchFileBytes += scratchFile.length();
+        }
+        assertTrue("Our scratch file did not grow beyond our main memory limit", scratchFileBytes > STREAMING_TEST_MAX_MAIN_MEMORY_BYTES);
+        assertTrue("We held " + mainMemoryBytesWhileSaving[0] + " bytes in main memory",
+                mainMemoryBytesWhileSaving[0] > 0 && mainMemoryBytesWhileSaving[0] <= STREAMING_TEST_MAX_MAIN_MEMORY_BYTES);
+        assertTrue("We failed to clean up our scratch files", getScratchFiles().isEmpty());
+        final PDDocument pdDocument = PDDocument.load(outputFile);
+        assertEquals(count / 4, pdDocument.getNumberOfPages());
+        verifyImageCount(pdDocument, count);
+        pdDocument.close();
+    }
+
+    @Test
+    @Category(Benchmark.class)
+    public void benchmarkStreamingImageGridWith1000JpgReceipts() throws Exception {
+
+        // Configure test data
+        final int count = 1000;
+        final File imgFile = testResourceReader.openFile(TestResourceReader.RECEIPT_JPG);
+        final List<Receipt> receipts = createReceiptsWithFile(imgFile, count);
+        final List<Distance> distances = createDistances(count);
+
+        // Note: We track the old generation, since this is where anything that we retain across pages ends up
+        final List<MemoryPoolMXBean> oldGenerationPools = getOldGenerationPools();
+        System.gc();
+        long baselineBytes = 0;
+        for (final MemoryPoolMXBean pool : oldGenerationPools) {
+            baselineBytes += pool.getUsage().getUsed();
+            pool.resetPeakUsage();
+        }
+
+        // Write the file
+        final long startMillis = System.currentTimeMillis();
+        writeImagesOnlyReport(TripUtils.newDefaultTrip(), receipts, distances, true);
+        final long elapsedMillis = System.currentTimeMillis() - startMillis;
+
+        long peakBytes = 0;
+        for (final MemoryPoolMXBean pool : oldGenerationPools) {
+            peakBytes += pool.getPeakUsage().getUsed();
+        }
+        BenchmarkReporter.report(getClass(), "Streamed %d images (%dKB) in %dms. Old generation growth at its peak: %dKB (%d pools tracked)",
+                count, count * imgFile.length() / 1024, elapsedMillis, (peakBytes - baselineBytes) / 1024, oldGenerationPools.size());
+
+        // Verify the results
+        final PDDocument pdDocument = PDDocument.load(outputFile);
+        assertEquals(count / 4, pdDocument.getNumberOfPages());
+        verifyImageCount(pdDocument, count);
+        pdDocument.close();
+    }
+
     @NonNull
     private List<Receipt> createReceiptsWithFile(@NonNull File file, int count) {
         return createReceiptsWithFile(file, count, false);
@@ -567,7 +667,12 @@ public class InteractivePdfBoxTest {
     }
 
     private void writeImagesOnlyReport(@NonNull Trip trip, @NonNull List<Receipt> receipts, @NonNull List<Distance> distances) throws Exception {
-        final PdfBoxReportFile pdfBoxReportFile = new PdfBoxReportFile(reportResourcesManager, userPreferenceManager, dateFormatter);
+        writeImagesOnlyReport(trip, receipts, distances, false);
+    }
+
+    private void writeImagesOnlyReport(@NonNull Trip trip, @NonNull List<Receipt> receipts, @NonNull List<Distance> distances,
+                                       boolean streaming) throws Exception {
+        final PdfBoxReportFile pdfBoxReportFile = new PdfBoxReportFile(reportResourcesManager, userPreferenceManager, dateFormatter, streaming);
         pdfBoxReportFile.addSection(pdfBoxReportFile.createReceiptsImagesSection(trip, receipts, distances));
 
         try (OutputStream outputStream = new FileOutputStream(outputFile)) {
@@ -575,6 +680,59 @@ public class InteractivePdfBoxTest {
         }
     }
 
+    @NonNull
+    private List<File> getScratchFiles() {
+        final List<File> scratchFiles = new ArrayList<>();
+        final File[] files = context.getCacheDir().listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                if (file.getName().startsWith("PDFBox") && file.getName().endsWith(".tmp")) {
+                    scratchFiles.add(file);
+                }
+            }
+        }
+        return scratchFiles;
+    }
+
+    /**
+     * PDFBox does not expose how much of its scratch file is held in memory, so we count the in-memory pages of the
+     * document's ScratchFile directly
+     *
+     * @return the number of bytes of this document's scratch file that are held in main memory
+     */
+    private static long getScratchFileMainMemoryBytes(@NonNull PDDocument pdDocument) {
+        try {
+            final Object scratchFile = getField(pdDocument.getDocument(), "scratchFile");
+            final byte[][] inMemoryPages = (byte[][]) getField(scratchFile, "inMemoryPages");
+            long bytes = 0;
+            for (final byte[] page : inMemoryPages) {
+                if (page != null) {
+                    bytes += page.length;
+                }
+            }
+            return bytes;
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError("Failed to read our scratch file", e);
+        }
+    }
+
+    private static Object getField(@NonNull Object object, @NonNull String name) throws ReflectiveOperationException {
+        final Field field = object.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(object);
+    }
+
+    @NonNull
+    private static List<MemoryPoolMXBean> getOldGenerationPools() {
+        final List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && (pool.getName().contains("Old") || pool.getName().contains("Tenured"))) {
+                pools.add(pool);
+            }
+        }
+        return pools;
+    }
+
     private static void verifyImageCount(@NonNull PDDocument pdDocument, int expectedImageCount) throws Exception {
         int actualImageCount = 0;
         for (final PDPage page : pdDocument.getPages()) {
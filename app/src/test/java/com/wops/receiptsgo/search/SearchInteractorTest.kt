@@ -56,16 +56,10 @@ class SearchInteractorTest {
         whenever(receiptsTable.get()).thenReturn(Single.just(listOf(receipt1, receipt2)))
 
         // trips
-        whenever(databaseHelper.search(input, TripsTable.TABLE_NAME, TripsTable.COLUMN_ID, TripsTable.COLUMN_FROM,
-            TripsTable.COLUMN_NAME, TripsTable.COLUMN_COMMENT)).thenReturn(Single.just(listOf(tripId1.toString())))
+        whenever(tripsTable.search(eq(input), isNull(), any())).thenReturn(Single.just(listOf(trip1)))
 
         // receipts
-        whenever(databaseHelper.search(input, ReceiptsTable.TABLE_NAME, ReceiptsTable.COLUMN_ID, ReceiptsTable.COLUMN_DATE,
-            ReceiptsTable.COLUMN_NAME, ReceiptsTable.COLUMN_COMMENT, ReceiptsTable.COLUMN_PRICE)).thenReturn(Single.just(listOf(receiptId1.toString(), receiptId2.toString())))
-
-        // categories
-        whenever(databaseHelper.search(input, CategoriesTable.TABLE_NAME, CategoriesTable.COLUMN_ID, null,
-            CategoriesTable.COLUMN_NAME, CategoriesTable.COLUMN_CODE)).thenReturn(Single.just(emptyList()))
+        whenever(receiptsTable.search(eq(input), isNull(), any())).thenReturn(Single.just(listOf(receipt1, receipt2)))
 
         // payment methods
         whenever(databaseHelper.search(input, PaymentMethodsTable.TABLE_NAME, PaymentMethodsTable.COLUMN_ID, null,
@@ -90,10 +84,23 @@ class SearchInteractorTest {
             .assertComplete()
             .assertResult(SearchInteractor.SearchResults(listOf(trip1), listOf(receipt1, receipt2).sorted() ))
 
-        verify(databaseHelper).search(eq(input), eq(CategoriesTable.TABLE_NAME), any(), anyOrNull(), anyVararg())
         verify(databaseHelper).search(eq(input), eq(PaymentMethodsTable.TABLE_NAME), any(), anyOrNull(), anyVararg())
-        verify(databaseHelper).search(eq(input), eq(ReceiptsTable.TABLE_NAME), any(), anyOrNull(), anyVararg())
-        verify(databaseHelper).search(eq(input), eq(TripsTable.TABLE_NAME), any(), anyOrNull(), anyVararg())
+        verify(databaseHelper.receiptsTable).search(eq(input), isNull(), any())
+        verify(databaseHelper.tripsTable).search(eq(input), isNull(), any())
+    }
+
+    @Test
+    fun getSearchResultsIncludesReceiptsFoundByPaymentMethodTest() {
+        val paymentMethodId = "7"
+        whenever(databaseHelper.receiptsTable.search(eq(input), isNull(), any())).thenReturn(Single.just(listOf(receipt1)))
+        whenever(databaseHelper.search(input, PaymentMethodsTable.TABLE_NAME, PaymentMethodsTable.COLUMN_ID, null,
+            PaymentMethodsTable.COLUMN_METHOD)).thenReturn(Single.just(listOf(paymentMethodId)))
+        whenever(databaseHelper.search(paymentMethodId, ReceiptsTable.TABLE_NAME, ReceiptsTable.COLUMN_ID, null,
+            ReceiptsTable.COLUMN_PAYMENT_METHOD_ID)).thenReturn(Single.just(listOf(receiptId1.toString(), receiptId2.toString())))
+
+        interactor.getSearchResults(input).test()
+            .assertComplete()
+            .assertResult(SearchInteractor.SearchResults(listOf(trip1), listOf(receipt1, receipt2).sorted()))
     }
 
 }
\ No newline at end of file
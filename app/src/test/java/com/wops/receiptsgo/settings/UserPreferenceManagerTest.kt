@@ -5,6 +5,8 @@ import android.content.SharedPreferences
 import android.preference.PreferenceManager
 import android.util.TypedValue
 import androidx.test.core.app.ApplicationProvider
+import com.wops.receiptsgo.benchmark.Benchmark
+import com.wops.receiptsgo.benchmark.BenchmarkReporter
 import com.wops.receiptsgo.settings.catalog.UserPreference
 import com.wops.receiptsgo.utils.TestUtils
 import com.nhaarman.mockitokotlin2.whenever
@@ -14,6 +16,7 @@ import org.junit.After
 import org.junit.Assert.*
 import org.junit.Before
 import org.junit.Test
+import org.junit.experimental.categories.Category
 import org.junit.runner.RunWith
 import org.mockito.Mock
 import org.mockito.MockitoAnnotations
@@ -211,4 +214,93 @@ class UserPreferenceManagerTest {
         testObserver.assertNoErrors()
     }
 
-}
\ No newline at end of file
+    @Test
+    fun externalPreferenceChangesAreReflected() {
+        val booleanPreference = UserPreference.Receipts.UsePaymentMethods
+        val stringPreference = UserPreference.PlusSubscription.PdfFooterString
+        val snapshot = userPreferenceManager.snapshot
+        val originalBoolean = snapshot[booleanPreference]
+
+        // Write to our shared preferences directly (e.g. as our settings screen does)
+        val context = ApplicationProvider.getApplicationContext<Context>()
+        preferences.edit().putBoolean(context.getString(booleanPreference.name), !originalBoolean).apply()
+        preferences.edit().putString(context.getString(stringPreference.name), "test").apply()
+
+        assertEquals(!originalBoolean, userPreferenceManager[booleanPreference])
+        assertEquals("test", userPreferenceManager[stringPreference])
+
+        // Confirm that existing snapshots are left unchanged
+        assertEquals(originalBoolean, snapshot[booleanPreference])
+    }
+
+    @Test
+    fun nameUsesThePreferenceKey() {
+        val context = ApplicationProvider.getApplicationContext<Context>()
+        UserPreference.values().forEach {
+            assertEquals(context.getString(it.name), userPreferenceManager.name(it))
+        }
+    }
+
+    @Test
+    fun getMatchesResolvingEachPreferenceFromOurResources() {
+        val context = ApplicationProvider.getApplicationContext<Context>()
+        assertEquals(legacyGet(context, UserPreference.Receipts.MinimumReceiptPrice), userPreferenceManager[UserPreference.Receipts.MinimumReceiptPrice])
+        assertEquals(legacyGet(context, UserPreference.Receipts.OnlyIncludeReimbursable), userPreferenceManager[UserPreference.Receipts.OnlyIncludeReimbursable])
+    }
+
+    /**
+     * A lightweight benchmark, which compares our snapshot reads against our previous approach of resolving the key
+     * and default value of each preference from our resources on every call
+     */
+    @Test
+    @Category(Benchmark::class)
+    fun benchmarkGetThroughput() {
+        val context = ApplicationProvider.getApplicationContext<Context>()
+        val floatPreference = UserPreference.Receipts.MinimumReceiptPrice
+        val booleanPreference = UserPreference.Receipts.OnlyIncludeReimbursable
+        val iterations = 100_000
+
+        // Warm up both approaches
+        assertEquals(legacyGet(context, floatPreference), userPreferenceManager[floatPreference])
+        assertEquals(legacyGet(context, booleanPreference), userPreferenceManager[booleanPreference])
+
+        var legacyHits = 0
+        val legacyStart = System.nanoTime()
+        for (i in 0 until iterations) {
+            if (legacyGet(context, floatPreference) < 0f && !legacyGet(context, booleanPreference)) {
+                legacyHits++
+            }
+        }
+        val legacyNanos = System.nanoTime() - legacyStart
+
+        var snapshotHits = 0
+        val snapshotStart = System.nanoTime()
+        for (i in 0 until iterations) {
+            if (userPreferenceManager[floatPreference] < 0f && !userPreferenceManager[booleanPreference]) {
+                snapshotHits++
+            }
+        }
+        val snapshotNanos = System.nanoTime() - snapshotStart
+
+        BenchmarkReporter.report(javaClass, "UserPreferenceManager: ${legacyNanos / (2 * iterations)}ns per resolved get vs ${snapshotNanos / (2 * iterations)}ns per snapshot get")
+        assertEquals(legacyHits, snapshotHits)
+    }
+
+    /**
+     * Our previous implementation of [UserPreferenceManager.get], which we retain here as a reference and for benchmarking
+     */
+    @Suppress("UNCHECKED_CAST")
+    private fun <T> legacyGet(context: Context, preference: UserPreference<T>): T {
+        val name = context.getString(preference.name)
+        return when {
+            java.lang.Boolean::class.java == preference.type -> java.lang.Boolean.valueOf(preferences.getBoolean(name, context.resources.getBoolean(preference.defaultValue))) as T
+            java.lang.Float::class.java == preference.type -> {
+                val typedValue = TypedValue()
+                context.resources.getValue(preference.defaultValue, typedValue, true)
+                java.lang.Float.valueOf(preferences.getFloat(name, typedValue.float)) as T
+            }
+            else -> throw IllegalArgumentException("Unsupported preference type: " + preference.type)
+        }
+    }
+
+}
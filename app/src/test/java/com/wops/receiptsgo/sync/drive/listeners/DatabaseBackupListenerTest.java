@@ -7,11 +7,14 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.RobolectricTestRunner;
 
+import java.util.Arrays;
+
 import com.wops.receiptsgo.persistence.database.operations.DatabaseOperationMetadata;
 import com.wops.receiptsgo.persistence.database.operations.OperationFamilyType;
 import com.wops.automatic_backups.drive.managers.DriveDatabaseManager;
 
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 @RunWith(RobolectricTestRunner.class)
@@ -65,4 +68,30 @@ public class DatabaseBackupListenerTest {
         verify(mDriveDatabaseManager, never()).syncDatabase();
     }
 
-}
\ No newline at end of file
+    @Test
+    public void onInsertAllSuccess() {
+        mListener.onInsertAllSuccess(Arrays.asList(new Object(), new Object(), new Object()), new DatabaseOperationMetadata());
+        verify(mDriveDatabaseManager, times(1)).syncDatabase();
+    }
+
+    @Test
+    public void onUpdateAllSuccess() {
+        mListener.onUpdateAllSuccess(Arrays.asList(new Object(), new Object(), new Object()),
+                Arrays.asList(new Object(), new Object(), new Object()), new DatabaseOperationMetadata());
+        verify(mDriveDatabaseManager, times(1)).syncDatabase();
+    }
+
+    @Test
+    public void onSyncUpdateAllSuccess() {
+        mListener.onUpdateAllSuccess(Arrays.asList(new Object(), new Object()), Arrays.asList(new Object(), new Object()),
+                new DatabaseOperationMetadata(OperationFamilyType.Sync));
+        verify(mDriveDatabaseManager, never()).syncDatabase();
+    }
+
+    @Test
+    public void onDeleteAllSuccess() {
+        mListener.onDeleteAllSuccess(Arrays.asList(new Object(), new Object(), new Object()), new DatabaseOperationMetadata());
+        verify(mDriveDatabaseManager, times(1)).syncDatabase();
+    }
+
+}
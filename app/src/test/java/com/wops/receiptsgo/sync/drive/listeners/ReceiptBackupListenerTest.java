@@ -8,6 +8,8 @@ import org.mockito.MockitoAnnotations;
 import org.robolectric.RobolectricTestRunner;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.List;
 
 import com.wops.receiptsgo.model.Receipt;
 import com.wops.receiptsgo.persistence.database.operations.DatabaseOperationMetadata;
@@ -16,8 +18,10 @@ import com.wops.automatic_backups.drive.managers.DriveDatabaseManager;
 import com.wops.receiptsgo.sync.drive.managers.DriveReceiptsManager;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -96,4 +100,43 @@ public class ReceiptBackupListenerTest {
         verify(mDriveReceiptsManager, never()).handleDelete(any(Receipt.class));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void onInsertAllSuccess() {
+        final List<Receipt> receipts = Arrays.asList(mReceipt, mOldReceipt, mock(Receipt.class));
+        mListener.onInsertAllSuccess(receipts, new DatabaseOperationMetadata());
+        verify(mDriveDatabaseManager, times(1)).syncDatabase();
+        verify(mDriveReceiptsManager, times(1)).handleInsertOrUpdateAll(receipts);
+        verify(mDriveReceiptsManager, never()).handleInsertOrUpdate(any(Receipt.class));
+    }
+
+    @Test
+    public void onUpdateAllSuccess() {
+        final List<Receipt> oldReceipts = Arrays.asList(mOldReceipt, mock(Receipt.class), mock(Receipt.class));
+        final List<Receipt> newReceipts = Arrays.asList(mReceipt, mock(Receipt.class), mock(Receipt.class));
+        mListener.onUpdateAllSuccess(oldReceipts, newReceipts, new DatabaseOperationMetadata());
+        verify(mDriveDatabaseManager, never()).syncDatabase();
+        verify(mDriveReceiptsManager, times(1)).handleInsertOrUpdateAll(newReceipts);
+        verify(mDriveReceiptsManager, never()).handleInsertOrUpdate(any(Receipt.class));
+    }
+
+    @Test
+    public void onSyncUpdateAllSuccessForReceiptsWithFiles() {
+        final Receipt otherReceipt = mock(Receipt.class);
+        when(mReceipt.getFile()).thenReturn(mock(File.class));
+        when(otherReceipt.getFile()).thenReturn(mock(File.class));
+        mListener.onUpdateAllSuccess(Arrays.asList(mOldReceipt, mock(Receipt.class)), Arrays.asList(mReceipt, otherReceipt),
+                new DatabaseOperationMetadata(OperationFamilyType.Sync));
+        verify(mDriveDatabaseManager, times(1)).syncDatabase();
+        verify(mDriveReceiptsManager, never()).handleInsertOrUpdateAll(anyList());
+    }
+
+    @Test
+    public void onDeleteAllSuccess() {
+        final Receipt otherReceipt = mock(Receipt.class);
+        mListener.onDeleteAllSuccess(Arrays.asList(mReceipt, otherReceipt), new DatabaseOperationMetadata());
+        verify(mDriveDatabaseManager, times(1)).syncDatabase();
+        verify(mDriveReceiptsManager).handleDelete(mReceipt);
+        verify(mDriveReceiptsManager).handleDelete(otherReceipt);
+    }
+
+}
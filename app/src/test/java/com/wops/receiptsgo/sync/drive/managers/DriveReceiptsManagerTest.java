@@ -38,6 +38,8 @@ import io.reactivex.schedulers.Schedulers;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNotNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
@@ -398,22 +400,65 @@ public class DriveReceiptsManagerTest {
     }
 
     @Test
-    public void initialize() {
-        final DriveReceiptsManager spiedManager = spy(driveReceiptsManager);
-        doNothing().when(spiedManager).handleInsertOrUpdateInternal(any(Receipt.class));
-        doNothing().when(spiedManager).handleDeleteInternal(any(Receipt.class));
+    public void handleInsertOrUpdateAllCommitsOnce() {
+        when(driveStreamMappings.postInsertSyncState()).thenReturn(newSyncState1);
+        when(syncState1.getSyncId(SyncProvider.GoogleDrive)).thenReturn(null);
+        when(syncState1.isSynced(SyncProvider.GoogleDrive)).thenReturn(false);
+        when(syncState1.isMarkedForDeletion(SyncProvider.GoogleDrive)).thenReturn(false);
+        when(syncState2.getSyncId(SyncProvider.GoogleDrive)).thenReturn(null);
+        when(syncState2.isSynced(SyncProvider.GoogleDrive)).thenReturn(false);
+        when(syncState2.isMarkedForDeletion(SyncProvider.GoogleDrive)).thenReturn(false);
+        when(receipt1.getFile()).thenReturn(null);
+        when(receipt2.getFile()).thenReturn(null);
+        when(receiptTableController.updateAll(anyList(), anyList(), any(DatabaseOperationMetadata.class)))
+                .thenAnswer(invocation -> Single.just(invocation.getArgument(1)));
 
+        driveReceiptsManager.handleInsertOrUpdateAll(Arrays.asList(receipt1, receipt2));
+
+        verify(receiptTableController).updateAll(eq(Arrays.asList(receipt1, receipt2)), eq(Arrays.asList(receipt1, receipt2)), operationMetadataCaptor.capture());
+        assertEquals(OperationFamilyType.Sync, operationMetadataCaptor.getValue().getOperationFamilyType());
+        verify(receiptTableController, never()).update(any(Receipt.class), any(Receipt.class), any(DatabaseOperationMetadata.class));
+        assertEquals(newSyncState1, receipt1.getSyncState());
+        assertEquals(newSyncState1, receipt2.getSyncState());
+    }
+
+    @Test
+    public void handleInsertOrUpdateAllWithoutNetwork() {
+        when(syncState1.isSynced(SyncProvider.GoogleDrive)).thenReturn(false);
+        when(syncState1.isMarkedForDeletion(SyncProvider.GoogleDrive)).thenReturn(false);
+        when(networkManager.isNetworkAvailable()).thenReturn(false);
+
+        driveReceiptsManager.handleInsertOrUpdateAll(Collections.singletonList(receipt1));
+
+        verify(receiptTableController, never()).updateAll(anyList(), anyList(), any(DatabaseOperationMetadata.class));
+    }
+
+    @Test
+    public void initialize() {
+        when(driveStreamMappings.postInsertSyncState()).thenReturn(newSyncState1);
+        when(driveStreamsManager.deleteDriveFile(syncState2, true)).thenReturn(Single.just(newSyncState2));
+        when(syncState1.getSyncId(SyncProvider.GoogleDrive)).thenReturn(null);
         when(syncState1.isSynced(SyncProvider.GoogleDrive)).thenReturn(false);
         when(syncState1.isMarkedForDeletion(SyncProvider.GoogleDrive)).thenReturn(false);
         when(syncState2.isSynced(SyncProvider.GoogleDrive)).thenReturn(false);
         when(syncState2.isMarkedForDeletion(SyncProvider.GoogleDrive)).thenReturn(true);
+        when(receipt1.getFile()).thenReturn(null);
         when(receiptsTable.getUnsynced(trip, SyncProvider.GoogleDrive)).thenReturn(Single.just(Arrays.asList(receipt1, receipt2)));
+        when(receiptTableController.updateAll(anyList(), anyList(), any(DatabaseOperationMetadata.class)))
+                .thenAnswer(invocation -> Single.just(invocation.getArgument(1)));
+        when(receiptTableController.deleteAll(anyList(), any(DatabaseOperationMetadata.class)))
+                .thenAnswer(invocation -> Single.just(invocation.getArgument(0)));
 
-        spiedManager.syncReceipts();
+        driveReceiptsManager.syncReceipts();
 
-        verify(spiedManager).handleInsertOrUpdateInternal(receipt1);
-        verify(spiedManager).handleDeleteInternal(receipt2);
+        verify(receiptTableController).updateAll(eq(Collections.singletonList(receipt1)), eq(Collections.singletonList(receipt1)), operationMetadataCaptor.capture());
+        assertEquals(OperationFamilyType.Sync, operationMetadataCaptor.getValue().getOperationFamilyType());
+        assertEquals(newSyncState1, receipt1.getSyncState());
+        verify(receiptTableController).deleteAll(eq(Collections.singletonList(receipt2)), any(DatabaseOperationMetadata.class));
+        assertEquals(newSyncState2, receipt2.getSyncState());
         verify(driveDatabaseManager).syncDatabase();
+        assertEquals(2, driveReceiptsManager.getSyncProgress().getDone());
+        assertEquals(0, driveReceiptsManager.getSyncProgress().getFailed());
     }
 
     @Test
@@ -433,6 +478,7 @@ public class DriveReceiptsManagerTest {
 
         verify(spiedManager, never()).handleInsertOrUpdateInternal(receipt1);
         verify(spiedManager, never()).handleDeleteInternal(receipt2);
+        verify(receiptTableController, never()).updateAll(anyList(), anyList(), any(DatabaseOperationMetadata.class));
         verify(driveDatabaseManager, never()).syncDatabase();
     }
 
@@ -0,0 +1,289 @@
+package com.wops.receiptsgo.sync.drive.managers;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.wops.analytics.Analytics;
+import com.wops.automatic_backups.drive.rx.DriveStreamMappings;
+import com.wops.automatic_backups.drive.rx.DriveStreamsManager;
+import com.wops.core.sync.model.SyncState;
+import com.wops.core.sync.model.impl.DefaultSyncState;
+import com.wops.core.sync.model.impl.Identifier;
+import com.wops.core.sync.model.impl.IdentifierMap;
+import com.wops.core.sync.model.impl.MarkedForDeletionMap;
+import com.wops.core.sync.model.impl.SyncStatusMap;
+import com.wops.core.sync.provider.SyncProvider;
+import com.wops.receiptsgo.DefaultObjects;
+import com.wops.receiptsgo.model.Receipt;
+import com.wops.receiptsgo.model.factory.ReceiptBuilderFactory;
+import com.wops.receiptsgo.model.factory.ReceiptBuilderFactoryFactory;
+import com.wops.receiptsgo.persistence.database.controllers.TableController;
+import com.wops.receiptsgo.persistence.database.operations.DatabaseOperationMetadata;
+import com.wops.receiptsgo.persistence.database.tables.ReceiptsTable;
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.schedulers.TestScheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class DriveReceiptsSyncSchedulerTest {
+
+    private static final long BACKOFF_MILLIS = 100;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    TableController<Receipt> receiptTableController;
+
+    @Mock
+    ReceiptsTable receiptsTable;
+
+    @Mock
+    DriveStreamsManager driveStreamsManager;
+
+    @Mock
+    DriveStreamMappings driveStreamMappings;
+
+    @Mock
+    Analytics analytics;
+
+    LocalDrive localDrive;
+
+    Map<Integer, Receipt> receipts;
+
+    List<Integer> committedBatchSizes;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        localDrive = new LocalDrive();
+        receipts = new ConcurrentHashMap<>();
+        committedBatchSizes = Collections.synchronizedList(new ArrayList<>());
+
+        when(driveStreamsManager.uploadFileToDrive(any(SyncState.class), any(File.class)))
+                .thenAnswer(invocation -> Single.fromCallable(() -> localDrive.upload(invocation.getArgument(0))));
+        when(receiptsTable.findByPrimaryKey(anyInt()))
+                .thenAnswer(invocation -> Single.just(receipts.get((Integer) invocation.getArgument(0))));
+        when(receiptTableController.updateAll(anyList(), anyList(), any(DatabaseOperationMetadata.class)))
+                .thenAnswer(invocation -> {
+                    final List<Receipt> newReceipts = invocation.getArgument(1);
+                    committedBatchSizes.add(newReceipts.size());
+                    return Single.just(newReceipts);
+                });
+    }
+
+    @Test
+    public void commitsSyncStatesInBatches() throws Exception {
+        final DriveReceiptsSyncScheduler scheduler = newScheduler(Schedulers.trampoline(), Schedulers.trampoline(), 2, 4);
+
+        scheduler.sync(newReceipts(10)).blockingAwait();
+
+        assertEquals(10, localDrive.getUploadCount());
+        verify(receiptTableController, times(3)).updateAll(anyList(), anyList(), any(DatabaseOperationMetadata.class));
+        assertEquals(4, (int) committedBatchSizes.get(0));
+        assertEquals(4, (int) committedBatchSizes.get(1));
+        assertEquals(2, (int) committedBatchSizes.get(2));
+        assertProgress(scheduler.getProgress(), 0, 0, 10, 0);
+    }
+
+    @Test
+    public void limitsTheNumberOfConcurrentUploads() throws Exception {
+        localDrive.latencyMillis = 20;
+        final DriveReceiptsSyncScheduler scheduler = newScheduler(Schedulers.io(), Schedulers.computation(), 3, 25);
+
+        scheduler.sync(newReceipts(30)).blockingAwait();
+
+        assertEquals(30, localDrive.getUploadCount());
+        assertTrue("Peak concurrency: " + localDrive.peakConcurrentUploads.get(), localDrive.peakConcurrentUploads.get() <= 3);
+        assertProgress(scheduler.getProgress(), 0, 0, 30, 0);
+    }
+
+    @Test
+    public void retriesFailedUploadsWithABackoff() throws Exception {
+        localDrive.failuresRemaining.set(2);
+        final TestScheduler timerScheduler = new TestScheduler();
+        final DriveReceiptsSyncScheduler scheduler = newScheduler(Schedulers.trampoline(), timerScheduler, 1, 25);
+
+        final TestObserver<Void> testObserver = scheduler.sync(newReceipts(1)).test();
+        testObserver.assertNotComplete();
+        assertProgress(scheduler.getProgress(), 0, 1, 0, 0);
+
+        timerScheduler.advanceTimeBy(BACKOFF_MILLIS, TimeUnit.MILLISECONDS);
+        testObserver.assertNotComplete();
+
+        // Our second retry waits twice as long as the first
+        timerScheduler.advanceTimeBy(2 * BACKOFF_MILLIS, TimeUnit.MILLISECONDS);
+        testObserver.assertComplete();
+        assertEquals(3, localDrive.getAttemptCount());
+        assertProgress(scheduler.getProgress(), 0, 0, 1, 0);
+    }
+
+    @Test
+    public void countsReceiptsAsFailedOnceOutOfRetries() throws Exception {
+        localDrive.failuresRemaining.set(Integer.MAX_VALUE);
+        final TestScheduler timerScheduler = new TestScheduler();
+        final DriveReceiptsSyncScheduler scheduler = newScheduler(Schedulers.trampoline(), timerScheduler, 1, 25);
+
+        final TestObserver<Void> testObserver = scheduler.sync(newReceipts(2)).test();
+        timerScheduler.advanceTimeBy(1, TimeUnit.MINUTES);
+
+        testObserver.assertComplete();
+        assertEquals(8, localDrive.getAttemptCount());
+        verify(receiptTableController, never()).updateAll(anyList(), anyList(), any(DatabaseOperationMetadata.class));
+        assertProgress(scheduler.getProgress(), 0, 0, 0, 2);
+    }
+
+    @Test
+    public void skipsStaleReceiptsWithoutRetrying() throws Exception {
+        final DriveReceiptsSyncScheduler scheduler = newScheduler(Schedulers.trampoline(), Schedulers.trampoline(), 1, 25);
+        final Observable<Receipt> unsyncedReceipts = newReceipts(2);
+        receipts.put(1, new ReceiptBuilderFactory(receipts.get(1)).setName("Edited").build());
+
+        scheduler.sync(unsyncedReceipts).blockingAwait();
+
+        assertEquals(1, localDrive.getAttemptCount());
+        assertProgress(scheduler.getProgress(), 0, 0, 1, 1);
+    }
+
+    @Test
+    public void commitsEachReceiptIndividuallyIfABatchFails() throws Exception {
+        when(receiptTableController.updateAll(anyList(), anyList(), any(DatabaseOperationMetadata.class)))
+                .thenAnswer(invocation -> {
+                    final List<Receipt> newReceipts = invocation.getArgument(1);
+                    if (newReceipts.size() > 1 || newReceipts.get(0).getId() == 1) {
+                        return Single.error(new Exception("Test"));
+                    }
+                    committedBatchSizes.add(newReceipts.size());
+                    return Single.just(newReceipts);
+                });
+        final DriveReceiptsSyncScheduler scheduler = newScheduler(Schedulers.trampoline(), Schedulers.trampoline(), 1, 25);
+
+        scheduler.sync(newReceipts(3)).blockingAwait();
+
+        verify(receiptTableController, times(4)).updateAll(anyList(), anyList(), any(DatabaseOperationMetadata.class));
+        assertProgress(scheduler.getProgress(), 0, 0, 2, 1);
+    }
+
+    @Test
+    public void overlappingSyncsTrackTheirProgressSeparately() throws Exception {
+        localDrive.failuresRemaining.set(1);
+        final TestScheduler timerScheduler = new TestScheduler();
+        final DriveReceiptsSyncScheduler scheduler = newScheduler(Schedulers.trampoline(), timerScheduler, 1, 25);
+
+        final TestObserver<Void> firstSync = scheduler.sync(newReceipts(1)).test();
+        assertProgress(scheduler.getProgress(), 0, 1, 0, 0);
+
+        // A second sync (eg for a batched update) must not reset the counts of the one that is still running
+        final TestObserver<Void> secondSync = scheduler.sync(Observable.just(receipts.get(1))).test();
+        assertProgress(scheduler.getProgress(), 0, 2, 0, 0);
+
+        timerScheduler.advanceTimeBy(1, TimeUnit.MINUTES);
+        firstSync.assertComplete();
+        secondSync.assertComplete();
+        assertProgress(scheduler.getProgress(), 0, 0, 1, 0);
+    }
+
+    private DriveReceiptsSyncScheduler newScheduler(Scheduler uploadScheduler, Scheduler timerScheduler, int maxConcurrentUploads, int batchSize) {
+        return new DriveReceiptsSyncScheduler(receiptTableController, receiptsTable, driveStreamsManager, driveStreamMappings,
+                new ReceiptBuilderFactoryFactory(), analytics, uploadScheduler, timerScheduler, maxConcurrentUploads, 3, BACKOFF_MILLIS,
+                batchSize, TimeUnit.MINUTES.toMillis(1));
+    }
+
+    private Observable<Receipt> newReceipts(int count) throws IOException {
+        final List<Receipt> unsyncedReceipts = new ArrayList<>(count);
+        for (int id = 1; id <= count; id++) {
+            final Receipt receipt = new ReceiptBuilderFactory(id)
+                    .setTrip(DefaultObjects.newDefaultTrip())
+                    .setName("Receipt " + id)
+                    .setFile(temporaryFolder.newFile("receipt_" + id + ".jpg"))
+                    .build();
+            receipts.put(id, receipt);
+            unsyncedReceipts.add(receipt);
+        }
+        return Observable.fromIterable(unsyncedReceipts);
+    }
+
+    private static void assertProgress(DriveReceiptsSyncScheduler.Progress progress, int queued, int inFlight, int done, int failed) {
+        assertEquals(queued, progress.getQueued());
+        assertEquals(inFlight, progress.getInFlight());
+        assertEquals(done, progress.getDone());
+        assertEquals(failed, progress.getFailed());
+    }
+
+    /**
+     * A local stand-in for our Drive folder, which tracks how many uploads are in flight at once
+     */
+    private static final class LocalDrive {
+
+        private final Map<String, SyncState> files = new ConcurrentHashMap<>();
+        private final AtomicInteger attempts = new AtomicInteger();
+        private final AtomicInteger concurrentUploads = new AtomicInteger();
+        private final AtomicInteger peakConcurrentUploads = new AtomicInteger();
+        private final AtomicInteger failuresRemaining = new AtomicInteger();
+        private volatile long latencyMillis = 0;
+
+        SyncState upload(SyncState currentSyncState) throws Exception {
+            attempts.incrementAndGet();
+            final int concurrent = concurrentUploads.incrementAndGet();
+            try {
+                int peak;
+                while (concurrent > (peak = peakConcurrentUploads.get()) && !peakConcurrentUploads.compareAndSet(peak, concurrent)) {
+                    // Retry until our peak is up to date
+                }
+                if (latencyMillis > 0) {
+                    Thread.sleep(latencyMillis);
+                }
+                if (failuresRemaining.getAndDecrement() > 0) {
+                    throw new IOException("Simulated Drive failure");
+                }
+
+                final String id = "drive_id_" + attempts.get();
+                final SyncState syncState = new DefaultSyncState(new IdentifierMap(Collections.singletonMap(SyncProvider.GoogleDrive, new Identifier(id))),
+                        new SyncStatusMap(Collections.singletonMap(SyncProvider.GoogleDrive, true)),
+                        new MarkedForDeletionMap(Collections.singletonMap(SyncProvider.GoogleDrive, false)),
+                        currentSyncState.getLastLocalModificationTime());
+                files.put(id, syncState);
+                return syncState;
+            } finally {
+                concurrentUploads.decrementAndGet();
+            }
+        }
+
+        int getUploadCount() {
+            return files.size();
+        }
+
+        int getAttemptCount() {
+            return attempts.get();
+        }
+    }
+}
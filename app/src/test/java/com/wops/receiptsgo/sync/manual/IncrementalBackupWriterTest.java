@@ -0,0 +1,168 @@
+package com.wops.receiptsgo.sync.manual;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.hadisatrio.optional.Optional;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.wops.core.persistence.DatabaseConstants;
+import com.wops.receiptsgo.persistence.database.restore.BackupManifest;
+import com.wops.receiptsgo.persistence.database.restore.IncrementalBackupChain;
+import com.wops.receiptsgo.utils.cache.FileHashStore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class IncrementalBackupWriterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    File database;
+    File image1;
+    File image2;
+
+    FileHashStore fileHashStore;
+
+    @Before
+    public void setUp() throws Exception {
+        fileHashStore = new FileHashStore(ApplicationProvider.getApplicationContext());
+        database = write(temporaryFolder.newFile("receipts.db"), "database");
+        image1 = write(temporaryFolder.newFile("image1.jpg"), "image 1");
+        image2 = write(temporaryFolder.newFile("image2.jpg"), "image 2");
+    }
+
+    @Test
+    public void firstBackupIsFull() throws Exception {
+        final File archive = temporaryFolder.newFile("backup.smr");
+        final BackupManifest manifest = new IncrementalBackupWriter(Optional.absent(), 10, fileHashStore).write(sources(), archive);
+
+        assertFalse(manifest.getParentId().isPresent());
+        assertEquals(1, manifest.getChainLength());
+        assertEquals(3, manifest.getEntries().size());
+        assertEquals(3, countBlobs(archive));
+    }
+
+    @Test
+    public void incrementalBackupOnlyWritesChangedFiles() throws Exception {
+        final BackupManifest first = new IncrementalBackupWriter(Optional.absent(), 10, fileHashStore).write(sources(), temporaryFolder.newFile("first.smr"));
+
+        write(image2, "image 2 (edited)");
+        //noinspection ResultOfMethodCallIgnored
+        image2.setLastModified(image2.lastModified() + 1000);
+        final File archive = temporaryFolder.newFile("second.smr");
+        final BackupManifest second = new IncrementalBackupWriter(Optional.of(first), 10, fileHashStore).write(sources(), archive);
+
+        assertEquals(first.getId(), second.getParentId().get());
+        assertEquals(2, second.getChainLength());
+        assertEquals(3, second.getEntries().size());
+        assertEquals(1, countBlobs(archive));
+    }
+
+    @Test
+    public void identicalFilesShareOneBlob() throws Exception {
+        write(image2, "image 1");
+        final File archive = temporaryFolder.newFile("backup.smr");
+        new IncrementalBackupWriter(Optional.absent(), 10, fileHashStore).write(sources(), archive);
+
+        assertEquals(2, countBlobs(archive));
+    }
+
+    @Test
+    public void writesAFullBackupOnceTheChainIsTooLong() throws Exception {
+        final BackupManifest first = new IncrementalBackupWriter(Optional.absent(), 2, fileHashStore).write(sources(), temporaryFolder.newFile("first.smr"));
+        final BackupManifest second = new IncrementalBackupWriter(Optional.of(first), 2, fileHashStore).write(sources(), temporaryFolder.newFile("second.smr"));
+        final File archive = temporaryFolder.newFile("third.smr");
+        final BackupManifest third = new IncrementalBackupWriter(Optional.of(second), 2, fileHashStore).write(sources(), archive);
+
+        assertEquals(2, second.getChainLength());
+        assertFalse(third.getParentId().isPresent());
+        assertEquals(1, third.getChainLength());
+        assertEquals(3, countBlobs(archive));
+    }
+
+    @Test
+    public void chainRestoresTheLatestFiles() throws Exception {
+        final File firstArchive = temporaryFolder.newFile("first.smr");
+        final BackupManifest first = new IncrementalBackupWriter(Optional.absent(), 10, fileHashStore).write(sources(), firstArchive);
+        write(image2, "image 2 (edited)");
+        //noinspection ResultOfMethodCallIgnored
+        image2.setLastModified(image2.lastModified() + 1000);
+        final File secondArchive = temporaryFolder.newFile("second.smr");
+        new IncrementalBackupWriter(Optional.of(first), 10, fileHashStore).write(sources(), secondArchive);
+
+        assertTrue(IncrementalBackupChain.isIncrementalBackup(secondArchive));
+        final File restoreRoot = temporaryFolder.newFolder("restore");
+        try (IncrementalBackupChain chain = IncrementalBackupChain.open(Arrays.asList(secondArchive, firstArchive))) {
+            assertEquals(2, chain.extractFiles(restoreRoot, true));
+            chain.extractDatabase(new File(restoreRoot, DatabaseConstants.DATABASE_EXPORT_NAME));
+        }
+
+        assertEquals("image 1", read(new File(restoreRoot, "trip/image1.jpg")));
+        assertEquals("image 2 (edited)", read(new File(restoreRoot, "trip/image2.jpg")));
+        assertEquals("database", read(new File(restoreRoot, DatabaseConstants.DATABASE_EXPORT_NAME)));
+    }
+
+    @Test(expected = IOException.class)
+    public void incompleteChainFailsToRestore() throws Exception {
+        final BackupManifest first = new IncrementalBackupWriter(Optional.absent(), 10, fileHashStore).write(sources(), temporaryFolder.newFile("first.smr"));
+        write(image2, "image 2 (edited)");
+        final File secondArchive = temporaryFolder.newFile("second.smr");
+        new IncrementalBackupWriter(Optional.of(first), 10, fileHashStore).write(sources(), secondArchive);
+
+        try (IncrementalBackupChain chain = IncrementalBackupChain.open(Collections.singletonList(secondArchive))) {
+            chain.extractFiles(temporaryFolder.newFolder("restore"), true);
+        }
+    }
+
+    private List<IncrementalBackupWriter.Source> sources() {
+        return Arrays.asList(
+                new IncrementalBackupWriter.Source(DatabaseConstants.DATABASE_EXPORT_NAME, database),
+                new IncrementalBackupWriter.Source("trip/image1.jpg", image1),
+                new IncrementalBackupWriter.Source("trip/image2.jpg", image2));
+    }
+
+    private static File write(File file, String content) throws IOException {
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(content.getBytes(Charset.forName("UTF-8")));
+        }
+        return file;
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), Charset.forName("UTF-8"));
+    }
+
+    private static int countBlobs(File archive) throws IOException {
+        int count = 0;
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                if (entries.nextElement().getName().startsWith(BackupManifest.BLOB_PREFIX)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+}
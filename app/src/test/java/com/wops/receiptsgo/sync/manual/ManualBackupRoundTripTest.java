@@ -0,0 +1,188 @@
+package com.wops.receiptsgo.sync.manual;
+
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.wops.core.persistence.DatabaseConstants;
+import com.wops.receiptsgo.persistence.PersistenceManager;
+import com.wops.receiptsgo.persistence.database.restore.DatabaseRestorer;
+import com.wops.receiptsgo.persistence.database.restore.IncrementalBackupChain;
+import com.wops.receiptsgo.utils.cache.FileHashStore;
+import com.wops.receiptsgo.utils.cache.SmartReceiptsTemporaryFileCache;
+import io.reactivex.Completable;
+import io.reactivex.schedulers.Schedulers;
+import wb.android.storage.InternalStorageManager;
+import wb.android.storage.SDCardFileManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Exports and then restores our backups via the same {@link ManualBackupTask#backupData()} and
+ * {@link ManualRestoreTask#restoreData(List, boolean)} calls that our export and import dialogs use
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ManualBackupRoundTripTest {
+
+    private static final String RECEIPT_IMAGE = "Trip/receipt.jpg";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    PersistenceManager persistenceManager;
+
+    @Mock
+    SmartReceiptsTemporaryFileCache smartReceiptsTemporaryFileCache;
+
+    @Mock
+    DatabaseRestorer databaseRestorer;
+
+    SDCardFileManager external;
+
+    InternalStorageManager internal;
+
+    List<String> restoredDatabases;
+
+    ManualBackupTask manualBackupTask;
+
+    ManualRestoreTask manualRestoreTask;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        final Context context = ApplicationProvider.getApplicationContext();
+        external = mock(SDCardFileManager.class, withSettings().useConstructor(context).defaultAnswer(CALLS_REAL_METHODS));
+        internal = mock(InternalStorageManager.class, withSettings().useConstructor(context).defaultAnswer(CALLS_REAL_METHODS));
+        restoredDatabases = new ArrayList<>();
+
+        when(persistenceManager.getExternalStorageManager()).thenReturn(external);
+        when(persistenceManager.getInternalStorageManager()).thenReturn(internal);
+        when(smartReceiptsTemporaryFileCache.getInternalCacheFile(any(String.class))).thenAnswer(invocation ->
+                new File(temporaryFolder.getRoot(), invocation.<String>getArgument(0)));
+        when(databaseRestorer.restoreDatabase(any(IncrementalBackupChain.class), anyBoolean())).thenAnswer(invocation -> {
+            final IncrementalBackupChain backupChain = invocation.getArgument(0);
+            return Completable.fromAction(() -> {
+                final File database = new File(temporaryFolder.getRoot(), "restored_" + restoredDatabases.size() + ".db");
+                backupChain.extractDatabase(database);
+                restoredDatabases.add(read(database));
+            });
+        });
+
+        final File preferencesFolder = new File(internal.getRoot().getParentFile(), "shared_prefs");
+        //noinspection ResultOfMethodCallIgnored
+        preferencesFolder.mkdirs();
+        write(new File(preferencesFolder, "SmartReceiptsPrefFile.xml"), "<map />");
+
+        manualBackupTask = new ManualBackupTask(() -> smartReceiptsTemporaryFileCache, persistenceManager,
+                new FileHashStore(context), Schedulers.trampoline(), Schedulers.trampoline());
+        manualRestoreTask = new ManualRestoreTask(context, persistenceManager, databaseRestorer,
+                Schedulers.trampoline(), Schedulers.trampoline());
+    }
+
+    @Test
+    public void laterExportsRestoreAlongsideTheBackupsThatTheyWereBuiltOn() throws Exception {
+        write(external.getFile(DatabaseConstants.DATABASE_NAME), "database 1");
+        write(receiptImage(), "image 1");
+        final File firstBackup = exportBackup("first.smr");
+
+        // Note: We change the size of each file, since our hashes are cached by path, size and modification time
+        write(external.getFile(DatabaseConstants.DATABASE_NAME), "database 2 (edited)");
+        write(receiptImage(), "image 2 (edited)");
+        final File secondBackup = exportBackup("second.smr");
+
+        restoreBackup(firstBackup);
+        assertEquals("database 1", restoredDatabases.get(0));
+        assertEquals("image 1", read(receiptImage()));
+
+        restoreBackup(secondBackup, firstBackup);
+        assertEquals("database 2 (edited)", restoredDatabases.get(1));
+        assertEquals("image 2 (edited)", read(receiptImage()));
+    }
+
+    @Test
+    public void laterExportsDoNotRestoreWithoutTheBackupsThatTheyWereBuiltOn() throws Exception {
+        write(external.getFile(DatabaseConstants.DATABASE_NAME), "database 1");
+        write(receiptImage(), "image 1");
+        exportBackup("first.smr");
+
+        write(external.getFile(DatabaseConstants.DATABASE_NAME), "database 2 (edited)");
+        final File secondBackup = exportBackup("second.smr");
+        write(receiptImage(), "image 2 (local)");
+
+        try {
+            restoreBackup(secondBackup);
+            fail("An incomplete backup chain should not restore");
+        } catch (RuntimeException e) {
+            assertTrue(restoredDatabases.isEmpty());
+            assertEquals("image 2 (local)", read(receiptImage()));
+        }
+    }
+
+    /**
+     * Exports a backup and then copies it elsewhere, as the user would when saving or sharing it
+     */
+    private File exportBackup(String savedName) throws IOException {
+        final File backup = manualBackupTask.backupData().blockingFirst();
+        manualBackupTask.markBackupAsComplete();
+
+        final File savedBackup = new File(temporaryFolder.newFolder(), savedName);
+        Files.copy(backup.toPath(), savedBackup.toPath());
+        return savedBackup;
+    }
+
+    /**
+     * Restores a backup via the same {@link ManualRestoreTask#restoreData(List, boolean)} call that our import dialog
+     * uses, alongside any older backups that it was built on top of
+     */
+    private void restoreBackup(File... backups) {
+        final List<Uri> uris = new ArrayList<>();
+        for (final File backup : backups) {
+            uris.add(Uri.fromFile(backup));
+        }
+        manualRestoreTask.restoreData(uris, true).blockingAwait();
+        manualRestoreTask.markRestorationAsComplete(uris, true);
+    }
+
+    private File receiptImage() {
+        return new File(external.getRoot(), RECEIPT_IMAGE);
+    }
+
+    private static void write(File file, String content) throws IOException {
+        //noinspection ResultOfMethodCallIgnored
+        file.getParentFile().mkdirs();
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(content.getBytes(Charset.forName("UTF-8")));
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), Charset.forName("UTF-8"));
+    }
+}
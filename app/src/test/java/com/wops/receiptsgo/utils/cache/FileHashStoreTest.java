@@ -0,0 +1,126 @@
+package com.wops.receiptsgo.utils.cache;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class FileHashStoreTest {
+
+    private static final String ABC_HASH = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+    private static final String XYZ_HASH = "3608bca1e44ea6c4d268eb6db02260269892c0b42b86bbf1e77a6fa16c3c9282";
+    private static final int MAX_ENTRIES = 2;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    // Class under test
+    FileHashStore fileHashStore;
+
+    File storeFile;
+
+    @Before
+    public void setUp() throws Exception {
+        storeFile = new File(temporaryFolder.getRoot(), "file_hashes");
+        fileHashStore = new FileHashStore(storeFile, MAX_ENTRIES);
+    }
+
+    @Test
+    public void hash() throws Exception {
+        assertEquals(ABC_HASH, FileHashStore.hash(write(temporaryFolder.newFile("abc.jpg"), "abc")));
+        assertEquals(XYZ_HASH, FileHashStore.hash(write(temporaryFolder.newFile("xyz.jpg"), "xyz")));
+    }
+
+    @Test
+    public void getHashReusesTheHashOfAnUnchangedFile() throws Exception {
+        final File file = write(temporaryFolder.newFile("receipt.jpg"), "abc");
+        assertEquals(ABC_HASH, fileHashStore.getHash(file));
+
+        // Swap the content, while keeping the same size and modification time, to confirm that we don't re-read it
+        rewriteInPlace(file, "xyz");
+
+        assertEquals(ABC_HASH, fileHashStore.getHash(file));
+    }
+
+    @Test
+    public void getHashRehashesAChangedFile() throws Exception {
+        final File file = write(temporaryFolder.newFile("receipt.jpg"), "abc");
+        assertEquals(ABC_HASH, fileHashStore.getHash(file));
+
+        write(file, "xyz");
+        //noinspection ResultOfMethodCallIgnored
+        file.setLastModified(file.lastModified() + 1000);
+
+        assertEquals(XYZ_HASH, fileHashStore.getHash(file));
+    }
+
+    @Test
+    public void hashesArePersisted() throws Exception {
+        final File file = write(temporaryFolder.newFile("receipt.jpg"), "abc");
+        assertEquals(ABC_HASH, fileHashStore.getHash(file));
+        rewriteInPlace(file, "xyz");
+
+        assertEquals(ABC_HASH, new FileHashStore(storeFile, MAX_ENTRIES).getHash(file));
+    }
+
+    @Test
+    public void leastRecentlyUsedHashesAreEvicted() throws Exception {
+        final File first = write(temporaryFolder.newFile("1.jpg"), "abc");
+        final File second = write(temporaryFolder.newFile("2.jpg"), "abc");
+        final File third = write(temporaryFolder.newFile("3.jpg"), "abc");
+        fileHashStore.getHash(first);
+        fileHashStore.getHash(second);
+        fileHashStore.getHash(first);
+        fileHashStore.getHash(third);
+        rewriteInPlace(first, "xyz");
+        rewriteInPlace(second, "xyz");
+
+        assertEquals(ABC_HASH, fileHashStore.getHash(first));
+        assertEquals(XYZ_HASH, fileHashStore.getHash(second));
+    }
+
+    @Test
+    public void ourLogIsCompacted() throws Exception {
+        final File file = write(temporaryFolder.newFile("receipt.jpg"), "abc");
+        for (int i = 0; i < 500; i++) {
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(1_000_000L * (i + 1));
+            fileHashStore.getHash(file);
+        }
+        rewriteInPlace(file, "xyz");
+
+        assertTrue(Files.readAllLines(storeFile.toPath()).size() < 100);
+        assertEquals(ABC_HASH, new FileHashStore(storeFile, MAX_ENTRIES).getHash(file));
+    }
+
+    @Test(expected = IOException.class)
+    public void getHashForAMissingFile() throws Exception {
+        fileHashStore.getHash(new File(temporaryFolder.getRoot(), "missing.jpg"));
+    }
+
+    private static File write(File file, String content) throws IOException {
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(content.getBytes(Charset.forName("UTF-8")));
+        }
+        return file;
+    }
+
+    private static void rewriteInPlace(File file, String content) throws IOException {
+        final long lastModified = file.lastModified();
+        write(file, content);
+        //noinspection ResultOfMethodCallIgnored
+        file.setLastModified(lastModified);
+    }
+}
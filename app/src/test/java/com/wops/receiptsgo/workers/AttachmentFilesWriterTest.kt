@@ -0,0 +1,175 @@
+package com.wops.receiptsgo.workers
+
+import android.content.Context
+import com.nhaarman.mockitokotlin2.inOrder
+import com.nhaarman.mockitokotlin2.mock
+import com.nhaarman.mockitokotlin2.whenever
+import com.wops.receiptsgo.date.DateFormatter
+import com.wops.receiptsgo.model.Receipt
+import com.wops.receiptsgo.model.Trip
+import com.wops.receiptsgo.model.factory.ReceiptBuilderFactory
+import com.wops.receiptsgo.persistence.DatabaseHelper
+import com.wops.receiptsgo.persistence.database.tables.CSVTable
+import com.wops.receiptsgo.purchases.wallet.PurchaseWallet
+import com.wops.receiptsgo.settings.UserPreferenceManager
+import com.wops.receiptsgo.settings.catalog.UserPreference
+import com.wops.receiptsgo.utils.TripUtils
+import com.wops.receiptsgo.workers.AttachmentFilesWriter.ReportStatus
+import com.wops.receiptsgo.workers.EmailAssistant.EmailOptions
+import com.wops.receiptsgo.workers.reports.ReportResourcesManager
+import io.reactivex.Single
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import wb.android.storage.StorageManager
+import java.io.File
+import java.io.IOException
+import java.util.*
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.zip.ZipFile
+
+@RunWith(RobolectricTestRunner::class)
+class AttachmentFilesWriterTest {
+
+    @get:Rule
+    val temporaryFolder = TemporaryFolder()
+
+    // Class under test
+    private lateinit var attachmentFilesWriter: AttachmentFilesWriter
+
+    private val context = mock<Context>()
+    private val databaseHelper = mock<DatabaseHelper>()
+    private val preferenceManager = mock<UserPreferenceManager>()
+    private val storageManager = mock<StorageManager>()
+    private val reportResourcesManager = mock<ReportResourcesManager>()
+    private val purchaseWallet = mock<PurchaseWallet>()
+    private val dateFormatter = mock<DateFormatter>()
+    private val csvTable = mock<CSVTable>()
+    private val progressListener = mock<AttachmentFilesWriter.ProgressListener>()
+
+    private lateinit var trip: Trip
+    private lateinit var receipts: List<Receipt>
+
+    @Before
+    fun setUp() {
+        val tripDirectory = temporaryFolder.newFolder("Report")
+        trip = TripUtils.newDefaultTripBuilderFactory().setDirectory(tripDirectory).build()
+
+        val image = File(temporaryFolder.root, "img.jpg")
+        image.writeBytes(byteArrayOf(1, 2, 3, 4))
+        receipts = listOf(ReceiptBuilderFactory(1).setTrip(trip).setName("Name").setPrice(5.0).setFile(image).build())
+
+        whenever(databaseHelper.csvTable).thenReturn(csvTable)
+        whenever(csvTable.get()).thenReturn(Single.just(emptyList()))
+
+        whenever(preferenceManager.get(UserPreference.Receipts.MinimumReceiptPrice)).thenReturn(-Float.MAX_VALUE)
+        whenever(preferenceManager.get(UserPreference.Receipts.OnlyIncludeReimbursable)).thenReturn(false)
+        whenever(preferenceManager.get(UserPreference.ReportOutput.ShowTotalOnCSV)).thenReturn(false)
+        whenever(preferenceManager.get(UserPreference.Distance.PrintDistanceAsDailyReceiptInReports)).thenReturn(false)
+        whenever(preferenceManager.get(UserPreference.Distance.PrintDistanceTableInReports)).thenReturn(false)
+        whenever(preferenceManager.get(UserPreference.PlusSubscription.CategoricalSummationInReports)).thenReturn(false)
+        whenever(preferenceManager.get(UserPreference.PlusSubscription.SeparateByCategoryInReports)).thenReturn(false)
+
+        attachmentFilesWriter = AttachmentFilesWriter(
+            context, databaseHelper, preferenceManager, storageManager, reportResourcesManager, purchaseWallet, dateFormatter
+        )
+    }
+
+    @Test
+    fun writeGeneratesEachRequestedFormat() {
+        val options = EnumSet.of(EmailOptions.CSV, EmailOptions.ZIP)
+
+        val results = attachmentFilesWriter.write(trip, receipts, emptyList(), options, progressListener)
+
+        assertEquals(ReportStatus.SUCCEEDED, results.getStatus(EmailOptions.CSV))
+        assertEquals(ReportStatus.SUCCEEDED, results.getStatus(EmailOptions.ZIP))
+        assertEquals(ReportStatus.NOT_REQUESTED, results.getStatus(EmailOptions.PDF_FULL))
+        assertTrue(results.getFailedOptions().isEmpty())
+        assertFalse(results.didCSVFailCompletely)
+        assertFalse(results.didZIPFailCompletely)
+
+        assertTrue(results.files[EmailOptions.CSV.index]!!.exists())
+        ZipFile(results.files[EmailOptions.ZIP.index]).use { zipFile ->
+            assertNotNull(zipFile.getEntry("img.jpg"))
+        }
+
+        inOrder(progressListener) {
+            verify(progressListener).onReportStatusChanged(EmailOptions.ZIP, ReportStatus.PENDING)
+            verify(progressListener).onReportStatusChanged(EmailOptions.ZIP, ReportStatus.RUNNING)
+            verify(progressListener).onReportStatusChanged(EmailOptions.ZIP, ReportStatus.SUCCEEDED)
+        }
+    }
+
+    @Test
+    fun writeReportsFailuresPerFormat() {
+        // Block the csv from being written by creating a directory with its name
+        assertTrue(File(trip.directory, trip.directory.name + ".csv").mkdirs())
+        val options = EnumSet.of(EmailOptions.CSV, EmailOptions.ZIP)
+
+        val results = attachmentFilesWriter.write(trip, receipts, emptyList(), options, progressListener)
+
+        assertEquals(ReportStatus.FAILED, results.getStatus(EmailOptions.CSV))
+        assertTrue(results.getFailure(EmailOptions.CSV) is IOException)
+        assertTrue(results.didCSVFailCompletely)
+        assertEquals(EnumSet.of(EmailOptions.CSV), results.getFailedOptions())
+
+        // The zip should be unaffected by the csv failure
+        assertEquals(ReportStatus.SUCCEEDED, results.getStatus(EmailOptions.ZIP))
+        assertTrue(results.files[EmailOptions.ZIP.index]!!.exists())
+    }
+
+    @Test
+    fun writeSkipsReceiptFormatsWithoutReceipts() {
+        val options = EnumSet.of(EmailOptions.ZIP, EmailOptions.ZIP_WITH_METADATA, EmailOptions.PDF_IMAGES_ONLY)
+
+        val results = attachmentFilesWriter.write(trip, emptyList(), emptyList(), options)
+
+        for (option in options) {
+            assertEquals(ReportStatus.NOT_REQUESTED, results.getStatus(option))
+            assertNull(results.files[option.index])
+        }
+    }
+
+    @Test
+    fun writeGeneratesImageHeavyFormatsOneAtATime() {
+        val imageHeavyOptions = EnumSet.of(EmailOptions.PDF_FULL, EmailOptions.PDF_IMAGES_ONLY, EmailOptions.ZIP_WITH_METADATA)
+        val running = AtomicInteger()
+        val maxRunning = AtomicInteger()
+        val listener = object : AttachmentFilesWriter.ProgressListener {
+            override fun onReportStatusChanged(option: EmailOptions, status: ReportStatus) {
+                if (imageHeavyOptions.contains(option)) {
+                    if (status == ReportStatus.RUNNING) {
+                        maxRunning.accumulateAndGet(running.incrementAndGet()) { a, b -> Math.max(a, b) }
+                    } else if (status == ReportStatus.SUCCEEDED || status == ReportStatus.FAILED) {
+                        running.decrementAndGet()
+                    }
+                }
+            }
+        }
+
+        val results = attachmentFilesWriter.write(trip, receipts, emptyList(), EnumSet.copyOf(imageHeavyOptions), listener)
+
+        for (option in imageHeavyOptions) {
+            assertNotEquals(ReportStatus.PENDING, results.getStatus(option))
+            assertNotEquals(ReportStatus.RUNNING, results.getStatus(option))
+        }
+        assertEquals(1, maxRunning.get())
+    }
+
+    @Test
+    fun failedStatusesAreTerminal() {
+        val results = AttachmentFilesWriter.WriterResults(progressListener)
+        val failure = IOException("test")
+
+        results.setStatus(EmailOptions.CSV, ReportStatus.RUNNING)
+        results.setFailed(EmailOptions.CSV, failure)
+        results.setStatus(EmailOptions.CSV, ReportStatus.SUCCEEDED)
+
+        assertEquals(ReportStatus.FAILED, results.getStatus(EmailOptions.CSV))
+        assertEquals(failure, results.getFailure(EmailOptions.CSV))
+    }
+}
@@ -0,0 +1,178 @@
+package com.wops.receiptsgo.workers.reports
+
+import com.wops.core.sync.model.impl.DefaultSyncState
+import com.wops.receiptsgo.benchmark.Benchmark
+import com.wops.receiptsgo.benchmark.BenchmarkReporter
+import com.wops.receiptsgo.filters.Filter
+import com.wops.receiptsgo.model.Column
+import com.wops.receiptsgo.model.Receipt
+import com.wops.receiptsgo.model.factory.ReceiptBuilderFactory
+import com.wops.receiptsgo.model.impl.columns.receipts.ReceiptCategoryNameColumn
+import com.wops.receiptsgo.model.impl.columns.receipts.ReceiptCommentColumn
+import com.wops.receiptsgo.model.impl.columns.receipts.ReceiptNameColumn
+import com.wops.receiptsgo.model.impl.columns.receipts.ReceiptPriceColumn
+import com.wops.receiptsgo.model.impl.columns.receipts.ReceiptTaxColumn
+import com.wops.receiptsgo.utils.ReceiptUtils
+import com.wops.receiptsgo.utils.TripUtils
+import com.wops.receiptsgo.workers.reports.pdf.utils.HeavyHandedReplaceIllegalCharacters
+import com.nhaarman.mockitokotlin2.any
+import com.nhaarman.mockitokotlin2.mock
+import com.nhaarman.mockitokotlin2.times
+import com.nhaarman.mockitokotlin2.verify
+import com.nhaarman.mockitokotlin2.whenever
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.experimental.categories.Category
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import java.util.*
+
+@RunWith(RobolectricTestRunner::class)
+class ReportTableTest {
+
+    companion object {
+        private const val BENCHMARK_RECEIPT_COUNT = 5_000
+    }
+
+    private val column1 = mock<Column<String>>()
+
+    private val column2 = mock<Column<String>>()
+
+    private val columns = listOf(column1, column2)
+
+    private val evenFilter = mock<Filter<String>>()
+
+    @Before
+    fun setUp() {
+        whenever(column1.getValue(any())).thenAnswer { "a(" + it.arguments[0] + ")" }
+        whenever(column2.getValue(any())).thenAnswer { "b\u0000" + it.arguments[0] }
+        whenever(column1.getFooter(any())).thenReturn("total(1)")
+        whenever(column2.getFooter(any())).thenReturn("total\u00002")
+        whenever(evenFilter.accept(any())).thenAnswer { (it.arguments[0] as String).toInt() % 2 == 0 }
+    }
+
+    @Test
+    fun createEvaluatesEachCellAndFooterOnce() {
+        val table = ReportTable.create(columns, listOf("1", "2", "3"), null, true)
+
+        assertEquals(2, table.columnCount)
+        assertEquals(3, table.rowCount)
+        assertEquals("a(2)", table.getValue(1, 0))
+        assertEquals("b\u00003", table.getValue(2, 1))
+        assertEquals("total(1)", table.getFooter(0))
+
+        // Read every cell again, and confirm that we don't re-evaluate anything
+        for (j in 0 until table.rowCount) {
+            for (i in 0 until table.columnCount) {
+                table.getValue(j, i)
+            }
+        }
+        verify(column1, times(3)).getValue(any())
+        verify(column2, times(3)).getValue(any())
+        verify(column1).getFooter(listOf("1", "2", "3"))
+        verify(column2).getFooter(listOf("1", "2", "3"))
+    }
+
+    @Test
+    fun createOnlyIncludesFilteredRows() {
+        val table = ReportTable.create(columns, listOf("1", "2", "3", "4"), evenFilter, true)
+
+        assertEquals(listOf("2", "4"), table.rows)
+        assertEquals("a(4)", table.getValue(1, 0))
+        assertEquals(1, table.getSourceIndex(0))
+        assertEquals(3, table.getSourceIndex(1))
+        verify(column1, times(2)).getValue(any())
+        verify(column1).getFooter(listOf("2", "4"))
+    }
+
+    @Test
+    fun createWithoutFooters() {
+        val table = ReportTable.create(columns, listOf("1"), null, false)
+
+        assertFalse(table.hasFooters())
+        verify(column1, times(0)).getFooter(any())
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun getFooterWithoutFooters() {
+        ReportTable.create(columns, listOf("1"), null, false).getFooter(0)
+    }
+
+    @Test
+    fun sanitized() {
+        val table = ReportTable.create(columns, listOf("1", "2"), null, true).sanitized()
+
+        assertTrue(table.hasFooters())
+        assertEquals(listOf("1", "2"), table.rows)
+        assertEquals("a{1}", table.getValue(0, 0))
+        assertEquals("b2", table.getValue(1, 1))
+        assertEquals("total{1}", table.getFooter(0))
+        assertEquals("total2", table.getFooter(1))
+    }
+
+    /**
+     * A lightweight benchmark of the cell evaluation for a PDF receipts table, which compares our [ReportTable] against
+     * our previous approach of evaluating (and sanitizing) each cell and footer once to measure our column widths and
+     * then again to render each cell
+     */
+    @Test
+    @Category(Benchmark::class)
+    fun benchmarkCellEvaluationForLargeTrips() {
+        val trip = TripUtils.newDefaultTrip()
+        val receipts = (0 until BENCHMARK_RECEIPT_COUNT).map { i ->
+            ReceiptBuilderFactory(i)
+                .setTrip(trip)
+                .setName("Receipt $i")
+                .setComment(if (i % 2 == 0) "" else "Comment (line $i)")
+                .setCategory(ReceiptUtils.Constants.CATEGORY)
+                .setPrice(i / 100.0)
+                .setTax(i / 1000.0)
+                .setCurrency(ReceiptUtils.Constants.CURRENCY)
+                .build()
+        }
+        val receiptColumns = Arrays.asList<Column<Receipt>>(
+            ReceiptNameColumn(1, DefaultSyncState(), 0, UUID.randomUUID()),
+            ReceiptPriceColumn(2, DefaultSyncState(), 0, UUID.randomUUID()),
+            ReceiptTaxColumn(3, DefaultSyncState(), 0, UUID.randomUUID()),
+            ReceiptCategoryNameColumn(4, DefaultSyncState(), 0, UUID.randomUUID()),
+            ReceiptCommentColumn(5, DefaultSyncState(), 0, UUID.randomUUID())
+        )
+
+        val previousStart = System.nanoTime()
+        var previousChars = 0L
+        for (pass in 0 until 2) {
+            receiptColumns.forEach { column ->
+                receipts.forEach { previousChars += legacySafeString(column.getValue(it)).length }
+                previousChars += legacySafeString(column.getFooter(receipts)).length
+            }
+        }
+        val previousMillis = (System.nanoTime() - previousStart) / 1_000_000
+
+        val tableStart = System.nanoTime()
+        val table = ReportTable.create(receiptColumns, receipts, null, true).sanitized()
+        var tableChars = 0L
+        for (pass in 0 until 2) {
+            for (i in 0 until table.columnCount) {
+                for (j in 0 until table.rowCount) {
+                    tableChars += table.getValue(j, i).length
+                }
+                tableChars += table.getFooter(i).length
+            }
+        }
+        val tableMillis = (System.nanoTime() - tableStart) / 1_000_000
+
+        BenchmarkReporter.report(javaClass, "ReportTable[receipts=$BENCHMARK_RECEIPT_COUNT]: ${previousMillis}ms when evaluating each cell per pass vs ${tableMillis}ms with our table")
+        assertEquals(previousChars, tableChars)
+    }
+
+    /**
+     * Our previous implementation of [HeavyHandedReplaceIllegalCharacters.getSafeString], which we retain here for
+     * benchmarking
+     */
+    private fun legacySafeString(string: String): String {
+        return string.replace("\\p{C}".toRegex(), "").replace("(", "{").replace(")", "}")
+    }
+}
@@ -10,6 +10,7 @@ import org.robolectric.RobolectricTestRunner;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.Writer;
 
 import static org.junit.Assert.*;
 
@@ -44,4 +45,18 @@ public class CsvReportWriterTest {
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    public void openWriter() throws Exception {
+        try (Writer streamingWriter = writer.openWriter()) {
+            streamingWriter.write("column1, column2,\n");
+            streamingWriter.write("hello, שלום,");
+        }
+
+        try (BOMInputStream bomInputStream = new BOMInputStream(new FileInputStream(outputFile))) {
+            final String fileString = IOUtils.toString(bomInputStream, "UTF-8");
+            assertEquals("column1, column2,\nhello, שלום,", fileString);
+            assertTrue(bomInputStream.hasBOM());
+        }
+    }
+
+}
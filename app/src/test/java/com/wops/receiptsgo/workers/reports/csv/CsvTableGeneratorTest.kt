@@ -1,17 +1,32 @@
 package com.wops.receiptsgo.workers.reports.csv
 
+import com.wops.core.sync.model.impl.DefaultSyncState
+import com.wops.receiptsgo.benchmark.Benchmark
+import com.wops.receiptsgo.benchmark.BenchmarkReporter
 import com.wops.receiptsgo.model.Column
+import com.wops.receiptsgo.model.Receipt
+import com.wops.receiptsgo.model.factory.ReceiptBuilderFactory
+import com.wops.receiptsgo.model.impl.columns.receipts.ReceiptCategoryNameColumn
+import com.wops.receiptsgo.model.impl.columns.receipts.ReceiptCommentColumn
+import com.wops.receiptsgo.model.impl.columns.receipts.ReceiptNameColumn
+import com.wops.receiptsgo.model.impl.columns.receipts.ReceiptPriceColumn
+import com.wops.receiptsgo.utils.ReceiptUtils
+import com.wops.receiptsgo.utils.TripUtils
 import com.wops.receiptsgo.workers.reports.ReportResourcesManager
+import com.nhaarman.mockitokotlin2.mock
 import com.nhaarman.mockitokotlin2.whenever
 import org.junit.Assert.assertEquals
 import org.junit.Before
 import org.junit.Test
+import org.junit.experimental.categories.Category
 import org.junit.runner.RunWith
 import org.mockito.ArgumentMatchers.anyListOf
 import org.mockito.ArgumentMatchers.anyString
 import org.mockito.Mock
 import org.mockito.MockitoAnnotations
 import org.robolectric.RobolectricTestRunner
+import java.io.StringWriter
+import java.io.Writer
 import java.util.*
 
 @RunWith(RobolectricTestRunner::class)
@@ -90,7 +105,114 @@ class CsvTableGeneratorTest {
         assertEquals(expected, csvTableGenerator.generate(Arrays.asList("1", "2")))
     }
 
+    @Test
+    fun buildCsvWithCarriageReturnNewLineAndCommaCharacters() {
+        val expected = "" +
+                "header,header,header\n" +
+                "\"va\r\nlue\",\"a,b\",\"\"\"\"\n" +
+                "footer,footer,footer\n"
+        val column2 = mock<Column<String>>()
+        val column3 = mock<Column<String>>()
+        whenever(column.getValue(anyString())).thenReturn("va\r\nlue")
+        whenever(column2.headerStringResId).thenReturn(HEADER_ID)
+        whenever(column2.getValue(anyString())).thenReturn("a,b")
+        whenever(column2.getFooter(anyListOf(String::class.java))).thenReturn(FOOTER)
+        whenever(column3.headerStringResId).thenReturn(HEADER_ID)
+        whenever(column3.getValue(anyString())).thenReturn("\"")
+        whenever(column3.getFooter(anyListOf(String::class.java))).thenReturn(FOOTER)
+        csvTableGenerator = CsvTableGenerator(reportResourceManager, Arrays.asList(column, column2, column3), true, true)
+        assertEquals(expected, csvTableGenerator.generate(Arrays.asList("1")))
+    }
+
+    @Test
+    fun writeStreamsTheSameCsvAsGenerate() {
+        val writer = StringWriter()
+        csvTableGenerator.write(Arrays.asList("1", "2"), writer)
+        assertEquals(csvTableGenerator.generate(Arrays.asList("1", "2")), writer.toString())
+    }
+
+    @Test
+    fun writeAppendsToExistingWriterContent() {
+        val writer = StringWriter()
+        writer.write("prefix\n")
+        csvTableGenerator.write(emptyList(), writer)
+        csvTableGenerator.write(Arrays.asList("1"), writer)
+        val expected = "" +
+                "prefix\n" +
+                "header,header,header\n" +
+                "value,value,value\n" +
+                "footer,footer,footer\n"
+        assertEquals(expected, writer.toString())
+    }
+
+    /**
+     * A lightweight benchmark, which records the cost of generating a csv for a large trip in both the in-memory
+     * and streaming modes. The streaming mode writes to a no-op [Writer], so we only measure the generation cost
+     */
+    @Test
+    @Category(Benchmark::class)
+    fun benchmarkCsvGenerationForLargeTrips() {
+        val trip = TripUtils.newDefaultTrip()
+        val receipts = ArrayList<Receipt>(BENCHMARK_RECEIPT_COUNT)
+        for (i in 0 until BENCHMARK_RECEIPT_COUNT) {
+            receipts.add(
+                ReceiptBuilderFactory(i)
+                    .setTrip(trip)
+                    .setName("Receipt, \"$i\"")
+                    .setComment(if (i % 2 == 0) "" else "Comment\nline $i")
+                    .setCategory(ReceiptUtils.Constants.CATEGORY)
+                    .setPrice(i / 100.0)
+                    .setCurrency(ReceiptUtils.Constants.CURRENCY)
+                    .build()
+            )
+        }
+        val receiptColumns = Arrays.asList<Column<Receipt>>(
+            ReceiptNameColumn(1, DefaultSyncState(), 0, UUID.randomUUID()),
+            ReceiptPriceColumn(2, DefaultSyncState(), 0, UUID.randomUUID()),
+            ReceiptCategoryNameColumn(3, DefaultSyncState(), 0, UUID.randomUUID()),
+            ReceiptCommentColumn(4, DefaultSyncState(), 0, UUID.randomUUID())
+        )
+        val receiptsCsvTableGenerator = CsvTableGenerator(reportResourceManager, receiptColumns, true, true)
+
+        val generateStart = System.nanoTime()
+        val csv = receiptsCsvTableGenerator.generate(receipts)
+        val generateMillis = (System.nanoTime() - generateStart) / 1_000_000
+
+        val countingWriter = CountingWriter()
+        val writeStart = System.nanoTime()
+        receiptsCsvTableGenerator.write(receipts, countingWriter)
+        val writeMillis = (System.nanoTime() - writeStart) / 1_000_000
+
+        BenchmarkReporter.report(
+            javaClass, "CsvTableGenerator[receipts=%d]: generate=%dms, write=%dms, chars=%d",
+            BENCHMARK_RECEIPT_COUNT, generateMillis, writeMillis, countingWriter.count
+        )
+        assertEquals(csv.length.toLong(), countingWriter.count)
+    }
+
+    private class CountingWriter : Writer() {
+
+        var count = 0L
+
+        override fun write(cbuf: CharArray, off: Int, len: Int) {
+            count += len
+        }
+
+        override fun write(c: Int) {
+            count++
+        }
+
+        override fun write(str: String, off: Int, len: Int) {
+            count += len
+        }
+
+        override fun flush() {}
+
+        override fun close() {}
+    }
+
     companion object {
+        private const val BENCHMARK_RECEIPT_COUNT = 50_000
         private const val HEADER_ID = 1
         private const val HEADER = "header"
         private const val VALUE = "value"
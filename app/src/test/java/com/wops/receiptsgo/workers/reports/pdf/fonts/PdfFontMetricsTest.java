@@ -0,0 +1,207 @@
+package com.wops.receiptsgo.workers.reports.pdf.fonts;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.tom_roush.pdfbox.pdmodel.PDDocument;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.StringTokenizer;
+
+import com.wops.receiptsgo.benchmark.Benchmark;
+import com.wops.receiptsgo.benchmark.BenchmarkReporter;
+import com.wops.receiptsgo.utils.shadows.ShadowFontFileFinder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = {ShadowFontFileFinder.class})
+public class PdfFontMetricsTest {
+
+    private static final int BENCHMARK_ROW_COUNT = 2000;
+    private static final float BENCHMARK_COLUMN_WIDTH = 60f;
+
+    private static final List<String> STRINGS = Arrays.asList("", " ", "Receipt", "Dinner with the team",
+            "Caf\u00E9 \u2013 \u20AC12.50", "Taxi \uD83D\uDE95 to the airport", "\u4E2D\u6587", "  leading and trailing  ");
+
+    PDDocument document;
+
+    PdfFontSpec fontSpec;
+
+    // Class under test
+    PdfFontMetrics metrics;
+
+    @Before
+    public void setUp() throws Exception {
+        document = new PDDocument();
+        final PdfFontManager fontManager = new PdfFontManager(ApplicationProvider.getApplicationContext(), document);
+        fontManager.initialize();
+        fontSpec = fontManager.getFont(PdfFontStyle.Default);
+        metrics = fontSpec.getMetrics();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        document.close();
+    }
+
+    @Test
+    public void getStringWidthMatchesPdfBox() throws Exception {
+        for (final String string : STRINGS) {
+            try {
+                final float expected = legacyStringWidth(string);
+                assertEquals(string, expected, metrics.getStringWidth(string), 0f);
+
+                // Confirm that our memoized result is identical too
+                assertEquals(string, expected, metrics.getStringWidth(string), 0f);
+            } catch (IllegalArgumentException e) {
+                assertGetStringWidthThrows(string);
+            }
+        }
+    }
+
+    @Test
+    public void getMaxWordWidthMatchesPdfBox() throws Exception {
+        for (final String string : STRINGS) {
+            try {
+                assertEquals(string, legacyMaxWordWidth(string), metrics.getMaxWordWidth(string), 0f);
+            } catch (IllegalArgumentException e) {
+                // Expected if we cannot encode this text with either our font or its replacement characters
+            }
+        }
+    }
+
+    @Test
+    public void getFontHeight() {
+        final float expected = fontSpec.getFont().getFontDescriptor().getFontBoundingBox().getHeight() / 1000 * fontSpec.getSize();
+        assertEquals(expected, metrics.getFontHeight(), 0f);
+    }
+
+    @Test
+    public void getLinesMatchesOurPreviousLineBreaks() throws Exception {
+        final String text = "This receipt was for a rather long dinner with the entire team at a restaurant downtown";
+        for (float width = 5f; width < 500f; width += 15f) {
+            assertEquals(legacyLines(text, width), metrics.getLines(text, width));
+        }
+        assertEquals(legacyLines("", 100f), metrics.getLines("", 100f));
+        assertEquals(legacyLines("   ", 100f), metrics.getLines("   ", 100f));
+    }
+
+    @Test
+    public void getLinesIsCached() throws Exception {
+        final String text = "Dinner with the team";
+        assertSame(metrics.getLines(text, 40f), metrics.getLines(text, 40f));
+    }
+
+    /**
+     * A lightweight benchmark, which replays the text measurements that we perform for each cell of a full PDF report
+     * (ie sizing our columns, measuring each row, and then rendering each line) against our previous approach of
+     * asking PDFBox to measure each string whenever we need it
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void benchmarkTableTextMeasurement() throws Exception {
+        final List<String> cells = new ArrayList<>(BENCHMARK_ROW_COUNT);
+        for (int i = 0; i < BENCHMARK_ROW_COUNT; i++) {
+            cells.add("Receipt " + i + " for lunch with client " + (i % 17));
+            cells.add("$" + (i % 250) + ".00");
+            cells.add(i % 3 == 0 ? "Meals" : "Travel");
+        }
+
+        final long legacyStart = System.nanoTime();
+        float legacyTotal = 0;
+        for (final String cell : cells) {
+            legacyTotal += legacyStringWidth(cell) + legacyMaxWordWidth(cell);
+            legacyTotal += legacyLines(cell, BENCHMARK_COLUMN_WIDTH).size();
+            for (final String line : legacyLines(cell, BENCHMARK_COLUMN_WIDTH)) {
+                legacyTotal += legacyStringWidth(line);
+            }
+        }
+        final long legacyMillis = (System.nanoTime() - legacyStart) / 1_000_000;
+
+        final long cachedStart = System.nanoTime();
+        float cachedTotal = 0;
+        for (final String cell : cells) {
+            cachedTotal += metrics.getStringWidth(cell) + metrics.getMaxWordWidth(cell);
+            cachedTotal += metrics.getLines(cell, BENCHMARK_COLUMN_WIDTH).size();
+            for (final String line : metrics.getLines(cell, BENCHMARK_COLUMN_WIDTH)) {
+                cachedTotal += metrics.getStringWidth(line);
+            }
+        }
+        final long cachedMillis = (System.nanoTime() - cachedStart) / 1_000_000;
+
+        BenchmarkReporter.report(getClass(), "PdfFontMetrics[cells=%d]: %dms when measuring with PDFBox vs %dms with our metrics", cells.size(), legacyMillis, cachedMillis);
+        assertEquals(legacyTotal, cachedTotal, 0f);
+    }
+
+    private void assertGetStringWidthThrows(String string) throws IOException {
+        try {
+            metrics.getStringWidth(string);
+            fail("Expected an IllegalArgumentException for: " + string);
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Our previous implementation of {@link com.wops.receiptsgo.workers.reports.pdf.utils.PdfBoxUtils#getStringWidth}
+     */
+    private float legacyStringWidth(String text) throws IOException {
+        try {
+            return fontSpec.getFont().getStringWidth(text) * fontSpec.getSize() / 1000F;
+        } catch (IllegalArgumentException e) {
+            return fontSpec.getFont().getStringWidth(text.replaceAll("\\P{InBasic_Latin}", "\uFFFD\uFFFD")) * fontSpec.getSize() / 1000F;
+        }
+    }
+
+    /**
+     * Our previous implementation of {@link com.wops.receiptsgo.workers.reports.pdf.utils.PdfBoxUtils#getMaxWordWidth}
+     */
+    private float legacyMaxWordWidth(String text) throws IOException {
+        float max = 0.0f;
+        final StringTokenizer tokenizer = new StringTokenizer(text, " ");
+        while (tokenizer.hasMoreTokens()) {
+            max = Math.max(max, legacyStringWidth(tokenizer.nextToken()));
+        }
+        return max;
+    }
+
+    /**
+     * Our previous implementation of the line breaks in {@link com.wops.receiptsgo.workers.reports.pdf.misc.FixedWidthTextCell}
+     */
+    private List<String> legacyLines(String text, float maxLineWidth) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        final StringTokenizer tokenizer = new StringTokenizer(text, " ");
+        StringBuilder sb = new StringBuilder();
+        while (tokenizer.hasMoreTokens()) {
+            final String token = tokenizer.nextToken();
+            sb.append(token).append(" ");
+            if (legacyStringWidth(sb.toString()) > maxLineWidth) {
+                if (sb.lastIndexOf(token) > 0) {
+                    lines.add(sb.substring(0, sb.lastIndexOf(token)));
+                    sb = new StringBuilder();
+                    sb.append(token).append(" ");
+                } else {
+                    lines.add(sb.toString().trim());
+                    sb = new StringBuilder();
+                }
+            }
+        }
+        if (!sb.toString().isEmpty()) {
+            lines.add(sb.toString().trim());
+        }
+        return lines;
+    }
+}
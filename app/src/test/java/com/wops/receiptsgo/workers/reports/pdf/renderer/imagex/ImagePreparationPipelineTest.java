@@ -0,0 +1,124 @@
+package com.wops.receiptsgo.workers.reports.pdf.renderer.imagex;
+
+import androidx.annotation.NonNull;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.wops.receiptsgo.TestResourceReader;
+import com.wops.receiptsgo.workers.stamping.MemoryBudget;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class ImagePreparationPipelineTest {
+
+    private static final float LARGE_CELL_SIZE = 10_000f;
+    private static final float SMALL_CELL_SIZE = 10f;
+
+    // Class under test
+    ImagePreparationPipeline pipeline;
+
+    MemoryBudget memoryBudget;
+
+    List<File> preparedFiles;
+
+    File jpgFile;
+
+    File pngFile;
+
+    @Before
+    public void setUp() {
+        final TestResourceReader testResourceReader = new TestResourceReader();
+        jpgFile = testResourceReader.openFile(TestResourceReader.RECEIPT_JPG);
+        pngFile = testResourceReader.openFile(TestResourceReader.RECEIPT_PNG);
+        preparedFiles = new ArrayList<>();
+        memoryBudget = new MemoryBudget(1024 * 1024);
+        pipeline = new ImagePreparationPipeline(ApplicationProvider.getApplicationContext(), 2, memoryBudget, new ImagePreparationPipeline.Metrics() {
+            @Override
+            public void onImagePrepared(@NonNull File file, long prepareMillis, long waitMillis, int preparedBytes) {
+                preparedFiles.add(file);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        pipeline.close();
+    }
+
+    @Test
+    public void calculateSampleSize() {
+        assertEquals(1, ImagePreparationPipeline.calculateSampleSize(100, 100, 200, 200));
+        assertEquals(1, ImagePreparationPipeline.calculateSampleSize(399, 100, 200, 200));
+        assertEquals(2, ImagePreparationPipeline.calculateSampleSize(400, 100, 200, 200));
+        assertEquals(4, ImagePreparationPipeline.calculateSampleSize(4000, 3000, 1000, 1000));
+        assertEquals(8, ImagePreparationPipeline.calculateSampleSize(100, 1600, 100, 200));
+    }
+
+    @Test
+    public void takeWithoutEnqueueing() throws Exception {
+        assertNull(pipeline.take(jpgFile));
+        assertTrue(preparedFiles.isEmpty());
+    }
+
+    @Test
+    public void takeEmbedsSmallJpegsAsIs() throws Exception {
+        pipeline.enqueue(jpgFile, LARGE_CELL_SIZE, LARGE_CELL_SIZE);
+
+        final ImagePreparationPipeline.PreparedImage preparedImage = pipeline.take(jpgFile);
+
+        assertNotNull(preparedImage);
+        assertArrayEquals(FileUtils.readFileToByteArray(jpgFile), preparedImage.getJpegBytes());
+        assertEquals(1, preparedFiles.size());
+        assertEquals(jpgFile, preparedFiles.get(0));
+    }
+
+    @Test
+    public void takeEncodesPngsAsJpegsWithinOurMemoryBudget() throws Exception {
+        pipeline.enqueue(pngFile, SMALL_CELL_SIZE, SMALL_CELL_SIZE);
+
+        final ImagePreparationPipeline.PreparedImage preparedImage = pipeline.take(pngFile);
+
+        assertNotNull(preparedImage);
+        assertTrue(preparedImage.getJpegBytes().length > 0);
+        assertEquals(0, memoryBudget.getReservedBytes());
+        assertTrue(memoryBudget.getPeakReservedBytes() > 0);
+    }
+
+    @Test
+    public void takeTheSameFileMultipleTimes() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            pipeline.enqueue(jpgFile, LARGE_CELL_SIZE, LARGE_CELL_SIZE);
+        }
+
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(pipeline.take(jpgFile));
+        }
+        assertNull(pipeline.take(jpgFile));
+        assertEquals(10, preparedFiles.size());
+    }
+
+    @Test
+    public void takeDiscardsSkippedImages() throws Exception {
+        pipeline.enqueue(jpgFile, LARGE_CELL_SIZE, LARGE_CELL_SIZE);
+        pipeline.enqueue(pngFile, SMALL_CELL_SIZE, SMALL_CELL_SIZE);
+
+        assertNotNull(pipeline.take(pngFile));
+        assertNull(pipeline.take(jpgFile));
+        assertEquals(1, preparedFiles.size());
+    }
+}
@@ -0,0 +1,36 @@
+package com.wops.receiptsgo.workers.reports.pdf.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class HeavyHandedReplaceIllegalCharactersTest {
+
+    @Test
+    public void getSafeStringForNull() {
+        assertEquals("", HeavyHandedReplaceIllegalCharacters.getSafeString(null));
+    }
+
+    @Test
+    public void getSafeStringReturnsSafeStringsAsIs() {
+        final String string = "Receipt 1, $12.50 - Caf\u00E9";
+        assertSame(string, HeavyHandedReplaceIllegalCharacters.getSafeString(string));
+    }
+
+    @Test
+    public void getSafeStringReplacesParentheses() {
+        assertEquals("Dinner {Team}", HeavyHandedReplaceIllegalCharacters.getSafeString("Dinner (Team)"));
+    }
+
+    @Test
+    public void getSafeStringRemovesOtherCharacters() {
+        assertEquals("ab", HeavyHandedReplaceIllegalCharacters.getSafeString("a\u0000\u200Bb"));
+    }
+
+    @Test
+    public void getSafeStringKeepsSupplementaryCharacters() {
+        final String string = "Taxi \uD83D\uDE95";
+        assertSame(string, HeavyHandedReplaceIllegalCharacters.getSafeString(string));
+    }
+}
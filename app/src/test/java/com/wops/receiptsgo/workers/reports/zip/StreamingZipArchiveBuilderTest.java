@@ -0,0 +1,140 @@
+package com.wops.receiptsgo.workers.reports.zip;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class StreamingZipArchiveBuilderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    File zipFile;
+
+    byte[] imageBytes, textBytes;
+
+    @Before
+    public void setUp() throws Exception {
+        zipFile = new File(temporaryFolder.getRoot(), "archive.zip");
+
+        // Use a file that is larger than our buffer to ensure that we handle multiple reads
+        imageBytes = new byte[StreamingZipArchiveBuilder.BUFFER_SIZE * 3 + 17];
+        new Random(5).nextBytes(imageBytes);
+        textBytes = "column1,column2\nvalue1,value2\n".getBytes("UTF-8");
+    }
+
+    @Test
+    public void addFileStoresAlreadyCompressedFiles() throws Exception {
+        final File image = writeFile("img.jpg", imageBytes);
+        try (StreamingZipArchiveBuilder builder = new StreamingZipArchiveBuilder(zipFile)) {
+            assertTrue(builder.addFile(image, "img.jpg"));
+        }
+
+        try (ZipFile archive = new ZipFile(zipFile)) {
+            final ZipEntry entry = archive.getEntry("img.jpg");
+            assertNotNull(entry);
+            assertEquals(ZipEntry.STORED, entry.getMethod());
+            assertEquals(imageBytes.length, entry.getSize());
+            assertArrayEquals(imageBytes, read(archive, entry));
+        }
+    }
+
+    @Test
+    public void addFileDeflatesOtherFiles() throws Exception {
+        final File text = writeFile("data.csv", textBytes);
+        try (StreamingZipArchiveBuilder builder = new StreamingZipArchiveBuilder(zipFile)) {
+            assertTrue(builder.addFile(text, "data.csv"));
+        }
+
+        try (ZipFile archive = new ZipFile(zipFile)) {
+            final ZipEntry entry = archive.getEntry("data.csv");
+            assertNotNull(entry);
+            assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+            assertArrayEquals(textBytes, read(archive, entry));
+            assertEquals(1, archive.size());
+        }
+    }
+
+    @Test
+    public void addFileSkipsMissingFilesAndDuplicateEntries() throws Exception {
+        final File image = writeFile("img.jpg", imageBytes);
+        final File text = writeFile("data.csv", textBytes);
+        try (StreamingZipArchiveBuilder builder = new StreamingZipArchiveBuilder(zipFile)) {
+            assertTrue(builder.addFile(image, "img.jpg"));
+            assertFalse(builder.addFile(text, "img.jpg"));
+            assertFalse(builder.addFile(new File(temporaryFolder.getRoot(), "missing.pdf"), "missing.pdf"));
+        }
+
+        try (ZipFile archive = new ZipFile(zipFile)) {
+            assertEquals(1, archive.size());
+            assertArrayEquals(imageBytes, read(archive, archive.getEntry("img.jpg")));
+            assertNull(archive.getEntry("missing.pdf"));
+        }
+    }
+
+    @Test
+    public void addDirectoryUsesRelativeEntryNames() throws Exception {
+        final File directory = temporaryFolder.newFolder("trip");
+        final File nestedDirectory = new File(directory, "nested");
+        assertTrue(nestedDirectory.mkdirs());
+        writeFile(new File(directory, "img.jpg"), imageBytes);
+        writeFile(new File(nestedDirectory, "doc.pdf"), textBytes);
+
+        try (StreamingZipArchiveBuilder builder = new StreamingZipArchiveBuilder(zipFile)) {
+            builder.addDirectory(directory);
+        }
+
+        try (ZipFile archive = new ZipFile(zipFile)) {
+            assertEquals(2, archive.size());
+            assertArrayEquals(imageBytes, read(archive, archive.getEntry("img.jpg")));
+            assertArrayEquals(textBytes, read(archive, archive.getEntry("nested" + File.separator + "doc.pdf")));
+        }
+    }
+
+    @Test
+    public void isAlreadyCompressed() {
+        assertTrue(StreamingZipArchiveBuilder.isAlreadyCompressed("img.jpg"));
+        assertTrue(StreamingZipArchiveBuilder.isAlreadyCompressed("IMG.JPEG"));
+        assertTrue(StreamingZipArchiveBuilder.isAlreadyCompressed("doc.pdf"));
+        assertTrue(StreamingZipArchiveBuilder.isAlreadyCompressed("img.png"));
+        assertFalse(StreamingZipArchiveBuilder.isAlreadyCompressed("data.csv"));
+        assertFalse(StreamingZipArchiveBuilder.isAlreadyCompressed("jpg"));
+    }
+
+    private File writeFile(String name, byte[] bytes) throws IOException {
+        return writeFile(new File(temporaryFolder.getRoot(), name), bytes);
+    }
+
+    private File writeFile(File file, byte[] bytes) throws IOException {
+        try (FileOutputStream fileOutputStream = new FileOutputStream(file)) {
+            fileOutputStream.write(bytes);
+        }
+        return file;
+    }
+
+    private byte[] read(ZipFile archive, ZipEntry entry) throws IOException {
+        try (InputStream inputStream = archive.getInputStream(entry)) {
+            return IOUtils.toByteArray(inputStream);
+        }
+    }
+}
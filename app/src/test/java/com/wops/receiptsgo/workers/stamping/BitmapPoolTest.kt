@@ -0,0 +1,131 @@
+package com.wops.receiptsgo.workers.stamping
+
+import android.graphics.Bitmap
+import org.junit.Assert.*
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class BitmapPoolTest {
+
+    private val bitmapPool = BitmapPool(Long.MAX_VALUE)
+
+    @Test
+    fun acquireAllocatesWhenEmpty() {
+        val bitmap = bitmapPool.acquire(100, 50, Bitmap.Config.ARGB_8888)
+
+        assertEquals(100, bitmap.width)
+        assertEquals(50, bitmap.height)
+        assertEquals(1, bitmapPool.getAllocationCount())
+        assertEquals(0, bitmapPool.getReuseCount())
+    }
+
+    @Test
+    fun acquireReusesReleasedBitmaps() {
+        val bitmap = bitmapPool.acquire(100, 100, Bitmap.Config.ARGB_8888)
+        bitmapPool.release(bitmap)
+        assertEquals(BitmapPool.getByteCount(100, 100, Bitmap.Config.ARGB_8888), bitmapPool.getPooledBytes())
+
+        val reused = bitmapPool.acquire(50, 80, Bitmap.Config.ARGB_8888)
+
+        assertSame(bitmap, reused)
+        assertEquals(50, reused.width)
+        assertEquals(80, reused.height)
+        assertEquals(1, bitmapPool.getAllocationCount())
+        assertEquals(1, bitmapPool.getReuseCount())
+        assertEquals(0, bitmapPool.getPooledBytes())
+    }
+
+    @Test
+    fun takePrefersTheSmallestSufficientBitmap() {
+        val large = bitmapPool.acquire(200, 200, Bitmap.Config.ARGB_8888)
+        val small = bitmapPool.acquire(100, 100, Bitmap.Config.ARGB_8888)
+        bitmapPool.release(large)
+        bitmapPool.release(small)
+
+        assertSame(small, bitmapPool.take(BitmapPool.getByteCount(50, 50, Bitmap.Config.ARGB_8888)))
+        assertSame(large, bitmapPool.take(BitmapPool.getByteCount(50, 50, Bitmap.Config.ARGB_8888)))
+        assertNull(bitmapPool.take(1))
+    }
+
+    @Test
+    fun releaseRecyclesBitmapsOnceFull() {
+        val boundedPool = BitmapPool(BitmapPool.getByteCount(100, 100, Bitmap.Config.ARGB_8888))
+        val first = boundedPool.acquire(100, 100, Bitmap.Config.ARGB_8888)
+        val second = boundedPool.acquire(100, 100, Bitmap.Config.ARGB_8888)
+
+        boundedPool.release(first)
+        boundedPool.release(second)
+
+        assertFalse(first.isRecycled)
+        assertTrue(second.isRecycled)
+    }
+
+    @Test
+    fun clearRecyclesPooledBitmaps() {
+        val bitmap = bitmapPool.acquire(100, 100, Bitmap.Config.ARGB_8888)
+        bitmapPool.release(bitmap)
+
+        bitmapPool.clear()
+
+        assertTrue(bitmap.isRecycled)
+        assertEquals(0, bitmapPool.getPooledBytes())
+        assertNull(bitmapPool.take(1))
+    }
+
+    @Test
+    fun pooledBitmapsKeepTheirReservationUntilRecycled() {
+        val memoryBudget = MemoryBudget(Long.MAX_VALUE)
+        val budgetedPool = BitmapPool(Long.MAX_VALUE, memoryBudget)
+        val smallBytes = BitmapPool.getByteCount(100, 100, Bitmap.Config.ARGB_8888)
+        val largeBytes = BitmapPool.getByteCount(200, 200, Bitmap.Config.ARGB_8888)
+        memoryBudget.acquire(smallBytes + largeBytes)
+        val small = budgetedPool.acquire(100, 100, Bitmap.Config.ARGB_8888)
+        val large = budgetedPool.acquire(200, 200, Bitmap.Config.ARGB_8888)
+
+        // Releasing our bitmaps hands their reservations to the pool
+        budgetedPool.release(small)
+        budgetedPool.release(large)
+        assertEquals(smallBytes + largeBytes, memoryBudget.getReservedBytes())
+
+        // Taking a bitmap hands its reservation back to us
+        assertSame(small, budgetedPool.take(smallBytes))
+        assertEquals(smallBytes + largeBytes, memoryBudget.getReservedBytes())
+        budgetedPool.release(small)
+
+        // Evicting recycles our largest bitmap first
+        assertTrue(budgetedPool.evict())
+        assertTrue(large.isRecycled)
+        assertFalse(small.isRecycled)
+        assertEquals(smallBytes, memoryBudget.getReservedBytes())
+
+        budgetedPool.clear()
+        assertTrue(small.isRecycled)
+        assertEquals(0, memoryBudget.getReservedBytes())
+        assertFalse(budgetedPool.evict())
+    }
+
+    @Test
+    fun releaseReleasesTheReservationOfBitmapsThatDoNotFit() {
+        val memoryBudget = MemoryBudget(Long.MAX_VALUE)
+        val byteCount = BitmapPool.getByteCount(100, 100, Bitmap.Config.ARGB_8888)
+        val boundedPool = BitmapPool(byteCount, memoryBudget)
+        memoryBudget.acquire(byteCount * 2)
+        val first = boundedPool.acquire(100, 100, Bitmap.Config.ARGB_8888)
+        val second = boundedPool.acquire(100, 100, Bitmap.Config.ARGB_8888)
+
+        boundedPool.release(first)
+        boundedPool.release(second)
+
+        assertTrue(second.isRecycled)
+        assertEquals(byteCount, memoryBudget.getReservedBytes())
+    }
+
+    @Test
+    fun getByteCount() {
+        assertEquals(20000L, BitmapPool.getByteCount(100, 50, Bitmap.Config.ARGB_8888))
+        assertEquals(10000L, BitmapPool.getByteCount(100, 50, Bitmap.Config.RGB_565))
+        assertEquals(5000L, BitmapPool.getByteCount(100, 50, Bitmap.Config.ALPHA_8))
+    }
+}
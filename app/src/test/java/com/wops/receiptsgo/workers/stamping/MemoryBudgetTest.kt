@@ -0,0 +1,82 @@
+package com.wops.receiptsgo.workers.stamping
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class MemoryBudgetTest {
+
+    private val memoryBudget = MemoryBudget(100)
+
+    @Test
+    fun acquireAndRelease() {
+        memoryBudget.acquire(40)
+        memoryBudget.acquire(60)
+        assertEquals(100, memoryBudget.getReservedBytes())
+
+        memoryBudget.release(60)
+        memoryBudget.release(40)
+        assertEquals(0, memoryBudget.getReservedBytes())
+        assertEquals(100, memoryBudget.peakReservedBytes)
+    }
+
+    @Test
+    fun acquireAllowsOversizedRequestsWhenIdle() {
+        memoryBudget.acquire(250)
+        assertEquals(250, memoryBudget.getReservedBytes())
+    }
+
+    @Test
+    fun acquireBlocksUntilEnoughBytesAreReleased() {
+        memoryBudget.acquire(80)
+        val acquired = CountDownLatch(1)
+        val thread = Thread {
+            memoryBudget.acquire(30)
+            acquired.countDown()
+        }
+        thread.start()
+
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS))
+
+        memoryBudget.release(80)
+        assertTrue(acquired.await(5, TimeUnit.SECONDS))
+        assertEquals(30, memoryBudget.getReservedBytes())
+        assertEquals(80, memoryBudget.peakReservedBytes)
+        thread.join()
+    }
+
+    @Test
+    fun tryAcquireDoesNotBlock() {
+        assertTrue(memoryBudget.tryAcquire(80))
+        assertFalse(memoryBudget.tryAcquire(30))
+        assertTrue(memoryBudget.tryAcquire(20))
+        assertTrue(memoryBudget.tryAcquire(0))
+        assertEquals(100, memoryBudget.getReservedBytes())
+    }
+
+    @Test
+    fun acquireReclaimsBeforeWaiting() {
+        memoryBudget.acquire(80)
+        var reclaimableBytes = 60L
+
+        memoryBudget.acquire(30) {
+            if (reclaimableBytes > 0) {
+                memoryBudget.release(20)
+                reclaimableBytes -= 20
+                true
+            } else {
+                false
+            }
+        }
+
+        // We should only reclaim as much as we need
+        assertEquals(40, reclaimableBytes)
+        assertEquals(90, memoryBudget.getReservedBytes())
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun budgetMustBePositive() {
+        MemoryBudget(0)
+    }
+}
@@ -0,0 +1,179 @@
+package com.wops.receiptsgo.workers.stamping
+
+import android.graphics.Bitmap
+import com.nhaarman.mockitokotlin2.any
+import com.nhaarman.mockitokotlin2.anyOrNull
+import com.nhaarman.mockitokotlin2.eq
+import com.nhaarman.mockitokotlin2.mock
+import com.nhaarman.mockitokotlin2.whenever
+import com.wops.receiptsgo.benchmark.Benchmark
+import com.wops.receiptsgo.benchmark.BenchmarkReporter
+import com.wops.receiptsgo.date.DateFormatter
+import com.wops.receiptsgo.model.Receipt
+import com.wops.receiptsgo.model.Trip
+import com.wops.receiptsgo.model.factory.ReceiptBuilderFactory
+import com.wops.receiptsgo.settings.UserPreferenceManager
+import com.wops.receiptsgo.settings.catalog.UserPreference
+import com.wops.receiptsgo.utils.TripUtils
+import com.wops.receiptsgo.workers.reports.ReportResourcesManager
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.experimental.categories.Category
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.shadows.ShadowBitmapFactory
+import wb.android.storage.StorageManager
+import java.io.File
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+@RunWith(RobolectricTestRunner::class)
+class ReceiptImageStamperTest {
+
+    companion object {
+        private const val IMAGE_COUNT = 5
+        private const val BENCHMARK_IMAGE_COUNT = 300
+        private const val IMAGE_WIDTH = 4000
+        private const val IMAGE_HEIGHT = 3000
+    }
+
+    @get:Rule
+    val temporaryFolder = TemporaryFolder()
+
+    private val storageManager = mock<StorageManager>()
+    private val reportResourcesManager = mock<ReportResourcesManager>()
+    private val preferenceManager = mock<UserPreferenceManager>()
+    private val dateFormatter = mock<DateFormatter>()
+
+    private lateinit var trip: Trip
+    private lateinit var outputDirectory: File
+
+    @Before
+    fun setUp() {
+        trip = TripUtils.newDefaultTrip()
+        outputDirectory = temporaryFolder.newFolder("stamped")
+
+        whenever(reportResourcesManager.getFlexString(any())).thenReturn("Field")
+        whenever(preferenceManager.get(UserPreference.Receipts.IncludeTaxField)).thenReturn(false)
+        whenever(dateFormatter.getFormattedDate(any())).thenReturn("date")
+        whenever(storageManager.writeBitmap(eq(outputDirectory), any(), any(), any(), any(), anyOrNull())).thenReturn(true)
+    }
+
+    @Test
+    fun calculateSampleSize() {
+        assertEquals(1, ReceiptImageStamper.calculateSampleSize(1024, 768))
+        assertEquals(1, ReceiptImageStamper.calculateSampleSize(2047, 4000))
+        assertEquals(2, ReceiptImageStamper.calculateSampleSize(2048, 2048))
+        assertEquals(2, ReceiptImageStamper.calculateSampleSize(IMAGE_WIDTH, IMAGE_HEIGHT))
+        assertEquals(4, ReceiptImageStamper.calculateSampleSize(8192, 4096))
+    }
+
+    @Test
+    fun stampAllSkipsUndecodableImages() {
+        val file = File(temporaryFolder.root, "empty.jpg")
+        file.createNewFile()
+        ShadowBitmapFactory.provideWidthAndHeightHints(file.absolutePath, 0, 0)
+        val stamper = ReceiptImageStamper(storageManager, reportResourcesManager, preferenceManager, dateFormatter)
+
+        val results = stamper.stampAll(trip, listOf(ReceiptImageStamper.StampRequest(newReceipt(1, file), "")), outputDirectory)
+
+        assertEquals(0, results.getStampedCount())
+        assertEquals(1, results.getFailedCount())
+        assertFalse(results.didMemoryErrorOccur())
+    }
+
+    @Test
+    fun stampAllReusesBitmapsWithinTheMemoryBudget() {
+        val requests = newStampRequests(IMAGE_COUNT)
+
+        // Stamp one image at a time, so each image after the first can reuse the buffers of the one before it
+        val memoryBudget = MemoryBudget(getImageBytes() * 2)
+        val bitmapPool = BitmapPool(memoryBudget.budgetBytes, memoryBudget)
+        val stamper = ReceiptImageStamper(storageManager, reportResourcesManager, preferenceManager, dateFormatter, memoryBudget, bitmapPool, 1)
+
+        val results = stamper.stampAll(trip, requests, outputDirectory)
+
+        assertEquals(IMAGE_COUNT, results.getStampedCount())
+        assertEquals(0, results.getFailedCount())
+        assertFalse(results.didMemoryErrorOccur())
+
+        // Our pooled buffers are reserved from the same budget as the images that we're stamping
+        assertTrue(memoryBudget.peakReservedBytes <= memoryBudget.budgetBytes)
+        assertEquals(0, memoryBudget.getReservedBytes())
+
+        // Each image requires a foreground and a background, but we should at least reuse each background
+        assertTrue(bitmapPool.getReuseCount() >= IMAGE_COUNT - 1)
+        assertTrue(bitmapPool.getAllocationCount() <= IMAGE_COUNT + 1)
+        assertEquals(0, bitmapPool.getPooledBytes())
+    }
+
+    /**
+     * Stamps a few hundred large images in parallel to measure how many bitmaps we allocate and how much memory we hold
+     * at once. Robolectric's bitmaps are not backed by real pixel buffers, so the heap figures are only indicative, but
+     * the allocation counts and reserved bytes reflect the behaviour of our pool and budget.
+     */
+    @Test
+    @Category(Benchmark::class)
+    fun benchmarkStampAll() {
+        val requests = newStampRequests(BENCHMARK_IMAGE_COUNT)
+
+        // Allow roughly two images to be stamped at once
+        val memoryBudget = MemoryBudget(getImageBytes() * 2)
+        val bitmapPool = BitmapPool(memoryBudget.budgetBytes / 2, memoryBudget)
+        val stamper = ReceiptImageStamper(storageManager, reportResourcesManager, preferenceManager, dateFormatter, memoryBudget, bitmapPool, 4)
+
+        val peakHeapBytes = AtomicLong()
+        val heapSampler = Executors.newSingleThreadScheduledExecutor()
+        heapSampler.scheduleAtFixedRate({
+            val runtime = Runtime.getRuntime()
+            val usedBytes = runtime.totalMemory() - runtime.freeMemory()
+            peakHeapBytes.accumulateAndGet(usedBytes) { a, b -> Math.max(a, b) }
+        }, 0, 5, TimeUnit.MILLISECONDS)
+
+        val start = System.nanoTime()
+        val results = try {
+            stamper.stampAll(trip, requests, outputDirectory)
+        } finally {
+            heapSampler.shutdownNow()
+        }
+        val elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+
+        BenchmarkReporter.report(
+            javaClass, "Stamped %d images in %dms with %d allocations, %d reuses, %d peak reserved bytes and %d peak heap bytes",
+            results.getStampedCount(), elapsedMillis, bitmapPool.getAllocationCount(), bitmapPool.getReuseCount(),
+            memoryBudget.peakReservedBytes, peakHeapBytes.get()
+        )
+
+        assertEquals(BENCHMARK_IMAGE_COUNT, results.getStampedCount())
+        assertEquals(0, results.getFailedCount())
+        assertTrue(memoryBudget.peakReservedBytes <= memoryBudget.budgetBytes)
+        assertEquals(0, memoryBudget.getReservedBytes())
+    }
+
+    private fun newStampRequests(count: Int): List<ReceiptImageStamper.StampRequest> {
+        val requests = ArrayList<ReceiptImageStamper.StampRequest>(count)
+        for (i in 0 until count) {
+            val file = File(temporaryFolder.root, "$i.jpg")
+            file.writeBytes(byteArrayOf(1, 2, 3, 4))
+            ShadowBitmapFactory.provideWidthAndHeightHints(file.absolutePath, IMAGE_WIDTH, IMAGE_HEIGHT)
+            requests.add(ReceiptImageStamper.StampRequest(newReceipt(i, file), "Comment $i"))
+        }
+        return requests
+    }
+
+    /**
+     * @return a rough upper bound for the number of bytes that we require to stamp a single image
+     */
+    private fun getImageBytes(): Long {
+        val sampleSize = ReceiptImageStamper.calculateSampleSize(IMAGE_WIDTH, IMAGE_HEIGHT)
+        return BitmapPool.getByteCount(IMAGE_WIDTH / sampleSize, IMAGE_HEIGHT / sampleSize, Bitmap.Config.ARGB_8888) * 4
+    }
+
+    private fun newReceipt(id: Int, file: File): Receipt {
+        return ReceiptBuilderFactory(id).setTrip(trip).setName("Name $id").setPrice(5.0).setFile(file).build()
+    }
+}
@@ -15,5 +15,7 @@ class DriveDownloader(private val driveStreamsManager: DriveStreamsManager) {
 
     fun downloadTmpDatabaseFile(remoteBackupMetadata: RemoteBackupMetadata, downloadLocation: File): Single<Optional<File>> = Single.never()
 
+    fun downloadTmpDatabaseJournalFile(remoteBackupMetadata: RemoteBackupMetadata, downloadLocation: File): Single<Optional<File>> = Single.never()
+
     fun downloadFile(fileId: String, downloadLocationFile: File): Single<Optional<File>> = Single.never()
 }
\ No newline at end of file
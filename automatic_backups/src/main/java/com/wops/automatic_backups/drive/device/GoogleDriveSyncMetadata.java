@@ -18,6 +18,9 @@ public class GoogleDriveSyncMetadata {
     private static final String KEY_DEVICE_IDENTIFIER = "key_device_identifier";
     private static final String KEY_DRIVE_DATABASE_IDENTIFIER = "key_drive_database_identifier";
     private static final String KEY_DRIVE_LAST_SYNC = "key_drive_last_sync";
+    private static final String KEY_DRIVE_DATABASE_JOURNAL_IDENTIFIER = "key_drive_database_journal_identifier";
+    private static final String KEY_DRIVE_LAST_SNAPSHOT = "key_drive_last_snapshot";
+    private static final String KEY_DRIVE_SNAPSHOT_DATABASE_VERSION = "key_drive_snapshot_database_version";
 
     private final SharedPreferences mSharedPreferences;
     private final DeviceMetadata mDeviceMetadata;
@@ -65,6 +68,45 @@ public class GoogleDriveSyncMetadata {
         return new Date(syncTime);
     }
 
+    @Nullable
+    public synchronized Identifier getDatabaseJournalSyncIdentifier() {
+        final String id = mSharedPreferences.getString(KEY_DRIVE_DATABASE_JOURNAL_IDENTIFIER, null);
+        if (id != null) {
+            return new Identifier(id);
+        } else {
+            return null;
+        }
+    }
+
+    public synchronized void setDatabaseJournalSyncIdentifier(@Nullable Identifier databaseJournalSyncIdentifier) {
+        if (databaseJournalSyncIdentifier != null) {
+            mSharedPreferences.edit().putString(KEY_DRIVE_DATABASE_JOURNAL_IDENTIFIER, databaseJournalSyncIdentifier.getId()).apply();
+        } else {
+            mSharedPreferences.edit().remove(KEY_DRIVE_DATABASE_JOURNAL_IDENTIFIER).apply();
+        }
+    }
+
+    /**
+     * @return the time (in millis) at which we started to upload our last full database snapshot or 0 if none
+     */
+    public synchronized long getLastDatabaseSnapshotTime() {
+        return mSharedPreferences.getLong(KEY_DRIVE_LAST_SNAPSHOT, 0L);
+    }
+
+    /**
+     * @return the schema version of our last full database snapshot or -1 if none
+     */
+    public synchronized int getDatabaseSnapshotVersion() {
+        return mSharedPreferences.getInt(KEY_DRIVE_SNAPSHOT_DATABASE_VERSION, -1);
+    }
+
+    public synchronized void setDatabaseSnapshot(long snapshotTime, int databaseVersion) {
+        mSharedPreferences.edit()
+                .putLong(KEY_DRIVE_LAST_SNAPSHOT, snapshotTime)
+                .putInt(KEY_DRIVE_SNAPSHOT_DATABASE_VERSION, databaseVersion)
+                .apply();
+    }
+
     public void clear() {
         mSharedPreferences.edit().clear().apply();
     }
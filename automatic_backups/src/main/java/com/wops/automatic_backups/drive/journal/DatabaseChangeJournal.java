@@ -0,0 +1,415 @@
+package com.wops.automatic_backups.drive.journal;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Base64;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.wops.analytics.log.Logger;
+
+/**
+ * A compact, gzipped journal of the changes that were made to our database since a full snapshot of it was uploaded.
+ * This allows us to sync small deltas instead of re-uploading the entire database after each change.
+ * <p>
+ * For each of our sync-able tables (ie those with both an id and a last local modification time column), the journal
+ * contains:
+ * <ul>
+ * <li>Every column of each row that was modified since the snapshot</li>
+ * <li>The id and Drive sync state of every row, since sync state changes do not update the modification time and
+ * since any rows that are missing from this list were deleted</li>
+ * </ul>
+ * </p>
+ * <p>
+ * As a journal is cumulative (ie it always contains all changes since its snapshot), a restore only needs to replay
+ * the latest journal on top of the latest snapshot.
+ * </p>
+ */
+public final class DatabaseChangeJournal {
+
+    /**
+     * The name of our journal file (both locally and in Drive)
+     */
+    public static final String FILE_NAME = "receipts_changes.journal";
+
+    // Note: These mirror the column names in the app's AbstractSqlTable
+    static final String COLUMN_ID = "id";
+    static final String COLUMN_DRIVE_SYNC_ID = "drive_sync_id";
+    static final String COLUMN_DRIVE_IS_SYNCED = "drive_is_synced";
+    static final String COLUMN_DRIVE_MARKED_FOR_DELETION = "drive_marked_for_deletion";
+    static final String COLUMN_LAST_LOCAL_MODIFICATION_TIME = "last_local_modification_time";
+
+    private static final int VERSION = 1;
+
+    private static final String KEY_VERSION = "version";
+    private static final String KEY_DATABASE_VERSION = "database_version";
+    private static final String KEY_BASE_SNAPSHOT_TIME = "base_snapshot_time";
+    private static final String KEY_CREATED_AT = "created_at";
+    private static final String KEY_TABLES = "tables";
+    private static final String KEY_NAME = "name";
+    private static final String KEY_ROWS = "rows";
+    private static final String KEY_STATES = "states";
+    private static final String KEY_BLOB = "blob";
+
+    private DatabaseChangeJournal() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Writes a journal of all changes since our last snapshot
+     *
+     * @param database         the {@link SQLiteDatabase} to journal
+     * @param baseSnapshotTime the time at which we started to upload our last snapshot
+     * @param destination      the {@link File} to write the journal to
+     * @return the number of modified rows that were written to this journal
+     * @throws IOException if we failed to write the journal
+     */
+    public static int write(@NonNull SQLiteDatabase database, long baseSnapshotTime, @NonNull File destination) throws IOException {
+        int rowCount = 0;
+        try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(destination))), "UTF-8"))) {
+            writer.beginObject();
+            writer.name(KEY_VERSION).value(VERSION);
+            writer.name(KEY_DATABASE_VERSION).value(database.getVersion());
+            writer.name(KEY_BASE_SNAPSHOT_TIME).value(baseSnapshotTime);
+            writer.name(KEY_CREATED_AT).value(System.currentTimeMillis());
+            writer.name(KEY_TABLES).beginArray();
+            for (final JournaledTable table : getJournaledTables(database)) {
+                writer.beginObject();
+                writer.name(KEY_NAME).value(table.name);
+
+                writer.name(KEY_ROWS).beginArray();
+                try (Cursor cursor = database.rawQuery("SELECT * FROM " + table.name + " WHERE " + COLUMN_LAST_LOCAL_MODIFICATION_TIME + " >= ?",
+                        new String[]{Long.toString(baseSnapshotTime)})) {
+                    while (cursor.moveToNext()) {
+                        writeRow(writer, cursor);
+                        rowCount++;
+                    }
+                }
+                writer.endArray();
+
+                if (table.hasSyncState) {
+                    writer.name(KEY_STATES).beginArray();
+                    try (Cursor cursor = database.rawQuery("SELECT " + COLUMN_ID + ", " + COLUMN_DRIVE_SYNC_ID + ", " + COLUMN_DRIVE_IS_SYNCED + ", "
+                            + COLUMN_DRIVE_MARKED_FOR_DELETION + " FROM " + table.name, null)) {
+                        while (cursor.moveToNext()) {
+                            writer.beginArray();
+                            writer.value(cursor.getLong(0));
+                            writer.value(cursor.isNull(1) ? null : cursor.getString(1));
+                            writer.value(cursor.getInt(2));
+                            writer.value(cursor.getInt(3));
+                            writer.endArray();
+                        }
+                    }
+                    writer.endArray();
+                }
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+        return rowCount;
+    }
+
+    /**
+     * Replays a journal on top of the snapshot that it was built from
+     *
+     * @param journal  the journal {@link File}
+     * @param database the writable {@link SQLiteDatabase} of our snapshot
+     * @return {@code true} if the journal was replayed. {@code false} if it did not belong to this snapshot
+     * @throws IOException if we failed to read the journal
+     */
+    public static boolean replay(@NonNull File journal, @NonNull SQLiteDatabase database) throws IOException {
+        try (JsonReader reader = new JsonReader(new InputStreamReader(new GZIPInputStream(new BufferedInputStream(new FileInputStream(journal))), "UTF-8"))) {
+            int databaseVersion = -1;
+            long createdAt = Long.MAX_VALUE;
+            boolean didReplay = false;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                final String name = reader.nextName();
+                if (KEY_VERSION.equals(name)) {
+                    final int version = reader.nextInt();
+                    if (version > VERSION) {
+                        throw new IOException("Unsupported journal version: " + version);
+                    }
+                } else if (KEY_DATABASE_VERSION.equals(name)) {
+                    databaseVersion = reader.nextInt();
+                } else if (KEY_CREATED_AT.equals(name)) {
+                    createdAt = reader.nextLong();
+                } else if (KEY_TABLES.equals(name)) {
+                    // Note: We always write our header fields before our tables
+                    if (databaseVersion != database.getVersion()) {
+                        Logger.warn(DatabaseChangeJournal.class, "Ignoring a journal for database version {} on version {}", databaseVersion, database.getVersion());
+                        return false;
+                    }
+                    if (isSnapshotNewerThan(database, createdAt)) {
+                        Logger.warn(DatabaseChangeJournal.class, "Ignoring a stale journal from {}", createdAt);
+                        return false;
+                    }
+                    database.beginTransaction();
+                    try {
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            replayTable(reader, database, createdAt);
+                        }
+                        reader.endArray();
+                        database.setTransactionSuccessful();
+                        didReplay = true;
+                    } finally {
+                        database.endTransaction();
+                    }
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return didReplay;
+        }
+    }
+
+    private static void writeRow(@NonNull JsonWriter writer, @NonNull Cursor cursor) throws IOException {
+        writer.beginObject();
+        for (int i = 0; i < cursor.getColumnCount(); i++) {
+            writer.name(cursor.getColumnName(i));
+            switch (cursor.getType(i)) {
+                case Cursor.FIELD_TYPE_NULL:
+                    writer.nullValue();
+                    break;
+                case Cursor.FIELD_TYPE_INTEGER:
+                    writer.value(cursor.getLong(i));
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    writer.value(cursor.getDouble(i));
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    writer.beginObject();
+                    writer.name(KEY_BLOB).value(Base64.encodeToString(cursor.getBlob(i), Base64.NO_WRAP));
+                    writer.endObject();
+                    break;
+                default:
+                    writer.value(cursor.getString(i));
+                    break;
+            }
+        }
+        writer.endObject();
+    }
+
+    private static void replayTable(@NonNull JsonReader reader, @NonNull SQLiteDatabase database, long createdAt) throws IOException {
+        String tableName = null;
+        int rowCount = 0;
+        Set<Long> liveIds = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (KEY_NAME.equals(name)) {
+                tableName = reader.nextString();
+            } else if (KEY_ROWS.equals(name)) {
+                requireTableName(tableName);
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (replayRow(database, tableName, readRow(reader))) {
+                        rowCount++;
+                    }
+                }
+                reader.endArray();
+            } else if (KEY_STATES.equals(name)) {
+                requireTableName(tableName);
+                liveIds = replayStates(reader, database, tableName);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        int deletedCount = 0;
+        if (liveIds != null) {
+            // Any rows that are missing from our states were deleted after our snapshot
+            final List<Long> deletedIds = new ArrayList<>();
+            try (Cursor cursor = database.rawQuery("SELECT " + COLUMN_ID + " FROM " + tableName + " WHERE " + COLUMN_LAST_LOCAL_MODIFICATION_TIME + " <= ?",
+                    new String[]{Long.toString(createdAt)})) {
+                while (cursor.moveToNext()) {
+                    if (!liveIds.contains(cursor.getLong(0))) {
+                        deletedIds.add(cursor.getLong(0));
+                    }
+                }
+            }
+            for (final Long id : deletedIds) {
+                deletedCount += database.delete(tableName, COLUMN_ID + " = ?", new String[]{Long.toString(id)});
+            }
+        }
+        Logger.debug(DatabaseChangeJournal.class, "Replayed {} rows and {} deletions for {}", rowCount, deletedCount, tableName);
+    }
+
+    @NonNull
+    private static ContentValues readRow(@NonNull JsonReader reader) throws IOException {
+        final ContentValues values = new ContentValues();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String column = reader.nextName();
+            final JsonToken token = reader.peek();
+            if (token == JsonToken.NULL) {
+                reader.nextNull();
+                values.putNull(column);
+            } else if (token == JsonToken.NUMBER) {
+                // Note: JsonReader does not expose the original type, so we preserve integers where possible
+                final String number = reader.nextString();
+                if (number.indexOf('.') >= 0 || number.indexOf('e') >= 0 || number.indexOf('E') >= 0) {
+                    values.put(column, Double.parseDouble(number));
+                } else {
+                    values.put(column, Long.parseLong(number));
+                }
+            } else if (token == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                byte[] blob = null;
+                while (reader.hasNext()) {
+                    if (KEY_BLOB.equals(reader.nextName())) {
+                        blob = Base64.decode(reader.nextString(), Base64.NO_WRAP);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                values.put(column, blob);
+            } else {
+                values.put(column, reader.nextString());
+            }
+        }
+        reader.endObject();
+        return values;
+    }
+
+    private static boolean replayRow(@NonNull SQLiteDatabase database, @NonNull String tableName, @NonNull ContentValues values) {
+        final Long id = values.getAsLong(COLUMN_ID);
+        final Long modificationTime = values.getAsLong(COLUMN_LAST_LOCAL_MODIFICATION_TIME);
+        if (id == null) {
+            return false;
+        }
+        try (Cursor cursor = database.rawQuery("SELECT " + COLUMN_LAST_LOCAL_MODIFICATION_TIME + " FROM " + tableName + " WHERE " + COLUMN_ID + " = ?",
+                new String[]{Long.toString(id)})) {
+            if (cursor.moveToFirst() && modificationTime != null && !cursor.isNull(0) && cursor.getLong(0) >= modificationTime) {
+                return false; // Our snapshot already contains this version (or a newer one)
+            }
+        }
+        return database.insertWithOnConflict(tableName, null, values, SQLiteDatabase.CONFLICT_REPLACE) != -1;
+    }
+
+    @NonNull
+    private static Set<Long> replayStates(@NonNull JsonReader reader, @NonNull SQLiteDatabase database, @NonNull String tableName) throws IOException {
+        final Set<Long> liveIds = new HashSet<>();
+        final SQLiteStatement statement = database.compileStatement("UPDATE " + tableName + " SET " + COLUMN_DRIVE_SYNC_ID + " = ?, "
+                + COLUMN_DRIVE_IS_SYNCED + " = ?, " + COLUMN_DRIVE_MARKED_FOR_DELETION + " = ? WHERE " + COLUMN_ID + " = ?");
+        try {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                reader.beginArray();
+                final long id = reader.nextLong();
+                final String driveSyncId;
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    driveSyncId = null;
+                } else {
+                    driveSyncId = reader.nextString();
+                }
+                final int isSynced = reader.nextInt();
+                final int isMarkedForDeletion = reader.nextInt();
+                reader.endArray();
+
+                liveIds.add(id);
+                statement.clearBindings();
+                if (driveSyncId != null) {
+                    statement.bindString(1, driveSyncId);
+                } else {
+                    statement.bindNull(1);
+                }
+                statement.bindLong(2, isSynced);
+                statement.bindLong(3, isMarkedForDeletion);
+                statement.bindLong(4, id);
+                statement.executeUpdateDelete();
+            }
+            reader.endArray();
+        } finally {
+            statement.close();
+        }
+        return liveIds;
+    }
+
+    /**
+     * If our snapshot contains any changes that were made after this journal was created, the journal was written for
+     * an older snapshot (ie we failed to remove it after uploading a new one), so we should not replay it
+     */
+    private static boolean isSnapshotNewerThan(@NonNull SQLiteDatabase database, long journalCreatedAt) {
+        for (final JournaledTable table : getJournaledTables(database)) {
+            try (Cursor cursor = database.rawQuery("SELECT MAX(" + COLUMN_LAST_LOCAL_MODIFICATION_TIME + ") FROM " + table.name, null)) {
+                if (cursor.moveToFirst() && !cursor.isNull(0) && cursor.getLong(0) > journalCreatedAt) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @NonNull
+    private static List<JournaledTable> getJournaledTables(@NonNull SQLiteDatabase database) {
+        final List<String> tableNames = new ArrayList<>();
+        try (Cursor cursor = database.rawQuery("SELECT name FROM sqlite_master WHERE type = 'table' AND name NOT LIKE 'sqlite_%' AND name != 'android_metadata'", null)) {
+            while (cursor.moveToNext()) {
+                tableNames.add(cursor.getString(0));
+            }
+        }
+
+        final List<JournaledTable> tables = new ArrayList<>();
+        for (final String tableName : tableNames) {
+            final Set<String> columns = new HashSet<>();
+            try (Cursor cursor = database.rawQuery("PRAGMA table_info(" + tableName + ")", null)) {
+                final int nameIndex = cursor.getColumnIndex("name");
+                while (cursor.moveToNext()) {
+                    columns.add(cursor.getString(nameIndex));
+                }
+            }
+            if (columns.contains(COLUMN_ID) && columns.contains(COLUMN_LAST_LOCAL_MODIFICATION_TIME)) {
+                final boolean hasSyncState = columns.contains(COLUMN_DRIVE_SYNC_ID) && columns.contains(COLUMN_DRIVE_IS_SYNCED)
+                        && columns.contains(COLUMN_DRIVE_MARKED_FOR_DELETION);
+                tables.add(new JournaledTable(tableName, hasSyncState));
+            }
+        }
+        return tables;
+    }
+
+    private static void requireTableName(String tableName) throws IOException {
+        if (tableName == null) {
+            throw new IOException("Malformed journal: Missing table name");
+        }
+    }
+
+    private static final class JournaledTable {
+
+        private final String name;
+        private final boolean hasSyncState;
+
+        JournaledTable(@NonNull String name, boolean hasSyncState) {
+            this.name = name;
+            this.hasSyncState = hasSyncState;
+        }
+    }
+}
@@ -2,18 +2,25 @@ package com.wops.automatic_backups.drive.managers;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.google.common.base.Preconditions;
+import com.hadisatrio.optional.Optional;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.wops.analytics.Analytics;
 import com.wops.analytics.events.ErrorEvent;
 import com.wops.analytics.log.Logger;
 import com.wops.automatic_backups.drive.device.GoogleDriveSyncMetadata;
+import com.wops.automatic_backups.drive.journal.DatabaseChangeJournal;
 import com.wops.automatic_backups.drive.rx.DriveStreamsManager;
 import com.wops.core.persistence.DatabaseConstants;
 import com.wops.core.sync.model.impl.Identifier;
@@ -23,6 +30,16 @@ import io.reactivex.schedulers.Schedulers;
 
 public class DriveDatabaseManager {
 
+    /**
+     * The maximum amount of time that we'll upload journals for, before uploading a new full snapshot
+     */
+    private static final long SNAPSHOT_INTERVAL_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    /**
+     * Once our journal grows beyond this fraction of our database size, we upload a new full snapshot instead
+     */
+    private static final double MAX_JOURNAL_TO_DATABASE_SIZE_RATIO = 0.25;
+
     private final Context mContext;
     private final DriveStreamsManager mDriveTaskManager;
     private final GoogleDriveSyncMetadata mGoogleDriveSyncMetadata;
@@ -83,9 +100,98 @@ public class DriveDatabaseManager {
     private Single<Identifier> getSyncDatabaseObservable(@NonNull final File dbFile) {
         final Identifier driveDatabaseId = mGoogleDriveSyncMetadata.getDatabaseSyncIdentifier();
         if (driveDatabaseId != null) {
-            return mDriveTaskManager.updateDriveFile(driveDatabaseId, dbFile);
+            return Single.fromCallable(() -> writeJournalIfEligible(dbFile))
+                    .flatMap(journal -> {
+                        if (journal.isPresent()) {
+                            return uploadJournal(journal.get()).map(ignored -> driveDatabaseId);
+                        } else {
+                            return uploadSnapshot(dbFile, driveDatabaseId);
+                        }
+                    });
         } else {
-            return mDriveTaskManager.uploadFileToDrive(dbFile);
+            return uploadSnapshot(dbFile, null);
+        }
+    }
+
+    /**
+     * Writes a journal of the changes since our last snapshot, unless it's time to upload a new snapshot instead (ie
+     * because our last one is too old, the database schema changed, or the journal grew too large)
+     *
+     * @param dbFile our database {@link File}
+     * @return the journal {@link File} or {@link Optional#absent()} if we should upload a full snapshot
+     */
+    @NonNull
+    private Optional<File> writeJournalIfEligible(@NonNull File dbFile) throws IOException {
+        final long lastSnapshotTime = mGoogleDriveSyncMetadata.getLastDatabaseSnapshotTime();
+        if (lastSnapshotTime <= 0 || System.currentTimeMillis() - lastSnapshotTime > SNAPSHOT_INTERVAL_MILLIS) {
+            return Optional.absent();
+        }
+
+        final File journal = new File(mContext.getCacheDir(), DatabaseChangeJournal.FILE_NAME);
+        try (SQLiteDatabase database = SQLiteDatabase.openDatabase(dbFile.getAbsolutePath(), null, SQLiteDatabase.OPEN_READONLY)) {
+            if (database.getVersion() != mGoogleDriveSyncMetadata.getDatabaseSnapshotVersion()) {
+                Logger.info(DriveDatabaseManager.this, "Our database version changed. Uploading a new snapshot");
+                return Optional.absent();
+            }
+            final int rowCount = DatabaseChangeJournal.write(database, lastSnapshotTime, journal);
+            Logger.debug(DriveDatabaseManager.this, "Wrote a journal of {} modified rows ({} bytes)", rowCount, journal.length());
+        }
+
+        if (journal.length() > dbFile.length() * MAX_JOURNAL_TO_DATABASE_SIZE_RATIO) {
+            Logger.info(DriveDatabaseManager.this, "Our journal is too large relative to our database. Uploading a new snapshot");
+            //noinspection ResultOfMethodCallIgnored
+            journal.delete();
+            return Optional.absent();
+        }
+        return Optional.of(journal);
+    }
+
+    @NonNull
+    private Single<Identifier> uploadJournal(@NonNull File journal) {
+        final Identifier driveJournalId = mGoogleDriveSyncMetadata.getDatabaseJournalSyncIdentifier();
+        final Single<Identifier> upload;
+        if (driveJournalId != null) {
+            upload = mDriveTaskManager.updateDriveFile(driveJournalId, journal);
+        } else {
+            upload = mDriveTaskManager.uploadFileToDrive(journal);
+        }
+        return upload.doOnSuccess(identifier -> {
+            Logger.info(DriveDatabaseManager.this, "Successfully synced our database journal");
+            mGoogleDriveSyncMetadata.setDatabaseJournalSyncIdentifier(identifier);
+        });
+    }
+
+    @NonNull
+    private Single<Identifier> uploadSnapshot(@NonNull File dbFile, @Nullable Identifier driveDatabaseId) {
+        // Note: We capture this before uploading, so our next journal includes any changes made during the upload
+        final long snapshotTime = System.currentTimeMillis();
+        final Single<Identifier> upload;
+        if (driveDatabaseId != null) {
+            upload = mDriveTaskManager.updateDriveFile(driveDatabaseId, dbFile);
+        } else {
+            upload = mDriveTaskManager.uploadFileToDrive(dbFile);
+        }
+        return upload.flatMap(identifier -> {
+            mGoogleDriveSyncMetadata.setDatabaseSnapshot(snapshotTime, getDatabaseVersion(dbFile));
+            final Identifier driveJournalId = mGoogleDriveSyncMetadata.getDatabaseJournalSyncIdentifier();
+            if (driveJournalId != null) {
+                // Our previous journal no longer applies to this snapshot
+                return mDriveTaskManager.delete(driveJournalId)
+                        .doOnSuccess(ignored -> mGoogleDriveSyncMetadata.setDatabaseJournalSyncIdentifier(null))
+                        .onErrorReturnItem(false)
+                        .map(ignored -> identifier);
+            } else {
+                return Single.just(identifier);
+            }
+        });
+    }
+
+    private int getDatabaseVersion(@NonNull File dbFile) {
+        try (SQLiteDatabase database = SQLiteDatabase.openDatabase(dbFile.getAbsolutePath(), null, SQLiteDatabase.OPEN_READONLY)) {
+            return database.getVersion();
+        } catch (SQLiteException e) {
+            Logger.warn(DriveDatabaseManager.this, "Failed to read our database version", e);
+            return -1;
         }
     }
 }
@@ -1,6 +1,7 @@
 package com.wops.automatic_backups.drive.managers
 
 import com.wops.analytics.log.Logger
+import com.wops.automatic_backups.drive.journal.DatabaseChangeJournal
 import com.wops.automatic_backups.drive.rx.DriveStreamsManager
 import com.wops.core.persistence.DatabaseConstants
 import com.wops.core.sync.model.RemoteBackupMetadata
@@ -42,6 +43,24 @@ class DriveDownloader(private val driveStreamsManager: DriveStreamsManager) {
             }
     }
 
+    /**
+     * Downloads the change journal for this backup's database, which may not exist if the database was never synced
+     * via a journal
+     */
+    fun downloadTmpDatabaseJournalFile(remoteBackupMetadata: RemoteBackupMetadata, downloadLocation: File): Single<Optional<File>> {
+        Logger.debug(this, "Fetching database journal in drive for this folder")
+
+        return driveStreamsManager.getFilesInFolder(remoteBackupMetadata.id.id, DatabaseChangeJournal.FILE_NAME)
+            .flatMap { fileList ->
+                if (fileList.files.isNullOrEmpty()) {
+                    Single.just(Optional.absent())
+                } else {
+                    Logger.debug(this@DriveDownloader, "Downloading database journal file")
+                    driveStreamsManager.download(fileList.files[0].id, File(downloadLocation, DatabaseChangeJournal.FILE_NAME))
+                }
+            }
+    }
+
     fun downloadFile(fileId: String, downloadLocationFile: File): Single<Optional<File>> {
         return driveStreamsManager.download(fileId, downloadLocationFile)
     }
@@ -0,0 +1,202 @@
+package com.wops.automatic_backups.drive.managers;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import com.wops.analytics.Analytics;
+import com.wops.automatic_backups.drive.device.GoogleDriveSyncMetadata;
+import com.wops.automatic_backups.drive.journal.DatabaseChangeJournal;
+import com.wops.automatic_backups.drive.rx.FakeDriveStreamsManager;
+import com.wops.core.persistence.DatabaseConstants;
+import io.reactivex.schedulers.Schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class DriveDatabaseManagerJournalTest {
+
+    private static final String TABLE_NAME = "receipts";
+    private static final int ROW_COUNT = 1000;
+    private static final long SNAPSHOT_MODIFICATION_TIME = 1000L;
+
+    // Class under test
+    DriveDatabaseManager driveDatabaseManager;
+
+    FakeDriveStreamsManager driveStreamsManager;
+
+    GoogleDriveSyncMetadata googleDriveSyncMetadata;
+
+    File databaseFile;
+
+    @Mock
+    Analytics analytics;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        final Context context = ApplicationProvider.getApplicationContext();
+
+        databaseFile = new File(context.getExternalFilesDir(null), DatabaseConstants.DATABASE_NAME);
+        try (SQLiteDatabase database = SQLiteDatabase.openOrCreateDatabase(databaseFile, null)) {
+            database.execSQL("CREATE TABLE " + TABLE_NAME + " (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT, price REAL, "
+                    + "drive_sync_id TEXT, drive_is_synced BOOLEAN DEFAULT 0, drive_marked_for_deletion BOOLEAN DEFAULT 0, "
+                    + "last_local_modification_time DATE)");
+            database.setVersion(22);
+            for (int i = 1; i <= ROW_COUNT; i++) {
+                final ContentValues values = new ContentValues();
+                values.put("id", i);
+                values.put("name", "Receipt " + i);
+                values.put("price", i + 0.5);
+                values.put("last_local_modification_time", SNAPSHOT_MODIFICATION_TIME);
+                database.insert(TABLE_NAME, null, values);
+            }
+        }
+
+        driveStreamsManager = new FakeDriveStreamsManager();
+        googleDriveSyncMetadata = new GoogleDriveSyncMetadata(context);
+        driveDatabaseManager = new DriveDatabaseManager(context, driveStreamsManager, googleDriveSyncMetadata, analytics,
+                Schedulers.trampoline(), Schedulers.trampoline());
+    }
+
+    @After
+    public void tearDown() {
+        googleDriveSyncMetadata.clear();
+        SQLiteDatabase.deleteDatabase(databaseFile);
+    }
+
+    @Test
+    public void firstSyncUploadsASnapshot() {
+        driveDatabaseManager.syncDatabase();
+
+        assertEquals(1, driveStreamsManager.getUploadCount(DatabaseConstants.DATABASE_NAME));
+        assertEquals(0, driveStreamsManager.getUploadCount(DatabaseChangeJournal.FILE_NAME));
+        assertTrue(googleDriveSyncMetadata.getLastDatabaseSnapshotTime() > 0);
+        assertEquals(22, googleDriveSyncMetadata.getDatabaseSnapshotVersion());
+    }
+
+    @Test
+    public void subsequentSyncsUploadAJournalThatReplaysOntoTheSnapshot() throws Exception {
+        driveDatabaseManager.syncDatabase();
+        final byte[] snapshot = driveStreamsManager.getContent(DatabaseConstants.DATABASE_NAME);
+        makeChanges();
+
+        driveDatabaseManager.syncDatabase();
+        assertEquals(1, driveStreamsManager.getUploadCount(DatabaseConstants.DATABASE_NAME));
+        assertEquals(1, driveStreamsManager.getUploadCount(DatabaseChangeJournal.FILE_NAME));
+        assertNotNull(googleDriveSyncMetadata.getDatabaseJournalSyncIdentifier());
+        final byte[] journal = driveStreamsManager.getContent(DatabaseChangeJournal.FILE_NAME);
+        assertTrue(journal.length < snapshot.length);
+
+        final File restoredDatabaseFile = write(snapshot, DatabaseConstants.DATABASE_EXPORT_NAME);
+        try (SQLiteDatabase restoredDatabase = SQLiteDatabase.openDatabase(restoredDatabaseFile.getPath(), null, SQLiteDatabase.OPEN_READWRITE)) {
+            assertTrue(DatabaseChangeJournal.replay(write(journal, DatabaseChangeJournal.FILE_NAME), restoredDatabase));
+
+            assertEquals(ROW_COUNT, count(restoredDatabase));
+            assertEquals("Edited", getString(restoredDatabase, "name", 1));
+            assertEquals("drive_id", getString(restoredDatabase, "drive_sync_id", 2));
+            assertNull(getString(restoredDatabase, "name", 3));
+            assertEquals("Inserted", getString(restoredDatabase, "name", ROW_COUNT + 1));
+        }
+    }
+
+    @Test
+    public void staleJournalsAreNotReplayed() throws Exception {
+        driveDatabaseManager.syncDatabase();
+        makeChanges();
+        driveDatabaseManager.syncDatabase();
+        final byte[] journal = driveStreamsManager.getContent(DatabaseChangeJournal.FILE_NAME);
+
+        // Simulate a newer snapshot, which already includes later changes
+        try (SQLiteDatabase database = SQLiteDatabase.openDatabase(databaseFile.getPath(), null, SQLiteDatabase.OPEN_READWRITE)) {
+            final ContentValues values = new ContentValues();
+            values.put("name", "Newer");
+            values.put("last_local_modification_time", System.currentTimeMillis() + 60000);
+            database.update(TABLE_NAME, values, "id = ?", new String[]{"1"});
+            assertFalse(DatabaseChangeJournal.replay(write(journal, DatabaseChangeJournal.FILE_NAME), database));
+            assertEquals("Newer", getString(database, "name", 1));
+        }
+    }
+
+    @Test
+    public void schemaChangesUploadANewSnapshot() {
+        driveDatabaseManager.syncDatabase();
+        try (SQLiteDatabase database = SQLiteDatabase.openDatabase(databaseFile.getPath(), null, SQLiteDatabase.OPEN_READWRITE)) {
+            database.setVersion(23);
+        }
+
+        driveDatabaseManager.syncDatabase();
+        assertEquals(2, driveStreamsManager.getUploadCount(DatabaseConstants.DATABASE_NAME));
+        assertEquals(0, driveStreamsManager.getUploadCount(DatabaseChangeJournal.FILE_NAME));
+        assertEquals(23, googleDriveSyncMetadata.getDatabaseSnapshotVersion());
+    }
+
+    /**
+     * Makes changes via raw SQL, stamping the modification time as the app's tables do for each local insert and update
+     * (see ReceiptsTableTest#updateIsIncludedInOurDriveJournal for a change that is made through a real table)
+     */
+    private void makeChanges() {
+        final long now = System.currentTimeMillis();
+        try (SQLiteDatabase database = SQLiteDatabase.openDatabase(databaseFile.getPath(), null, SQLiteDatabase.OPEN_READWRITE)) {
+            final ContentValues edit = new ContentValues();
+            edit.put("name", "Edited");
+            edit.put("last_local_modification_time", now);
+            database.update(TABLE_NAME, edit, "id = ?", new String[]{"1"});
+
+            // Sync state changes do not update the modification time
+            final ContentValues syncState = new ContentValues();
+            syncState.put("drive_sync_id", "drive_id");
+            syncState.put("drive_is_synced", 1);
+            database.update(TABLE_NAME, syncState, "id = ?", new String[]{"2"});
+
+            database.delete(TABLE_NAME, "id = ?", new String[]{"3"});
+
+            final ContentValues insert = new ContentValues();
+            insert.put("id", ROW_COUNT + 1);
+            insert.put("name", "Inserted");
+            insert.put("price", 1.25);
+            insert.put("last_local_modification_time", now);
+            database.insert(TABLE_NAME, null, insert);
+        }
+    }
+
+    private File write(byte[] content, String name) throws IOException {
+        final File file = new File(ApplicationProvider.getApplicationContext().getCacheDir(), "restored_" + name);
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(content);
+        }
+        return file;
+    }
+
+    private static int count(SQLiteDatabase database) {
+        try (Cursor cursor = database.rawQuery("SELECT COUNT(*) FROM " + TABLE_NAME, null)) {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        }
+    }
+
+    private static String getString(SQLiteDatabase database, String column, int id) {
+        try (Cursor cursor = database.rawQuery("SELECT " + column + " FROM " + TABLE_NAME + " WHERE id = ?", new String[]{Integer.toString(id)})) {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        }
+    }
+}
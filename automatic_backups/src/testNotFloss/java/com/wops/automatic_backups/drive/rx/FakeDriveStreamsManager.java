@@ -0,0 +1,127 @@
+package com.wops.automatic_backups.drive.rx;
+
+import androidx.annotation.NonNull;
+
+import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.FileList;
+import com.hadisatrio.optional.Optional;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.wops.automatic_backups.drive.error.DriveThrowableToSyncErrorTranslator;
+import com.wops.core.sync.model.impl.Identifier;
+import io.reactivex.Single;
+import io.reactivex.subjects.PublishSubject;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * A local, in-memory fake of our Drive folder, which records the content of each file that we upload
+ */
+public class FakeDriveStreamsManager extends DriveStreamsManager {
+
+    private final Map<String, String> names = new LinkedHashMap<>();
+    private final Map<String, byte[]> contents = new LinkedHashMap<>();
+    private final Map<String, Integer> uploadCounts = new LinkedHashMap<>();
+    private long uploadedBytes = 0;
+    private int nextId = 0;
+
+    public FakeDriveStreamsManager() {
+        super(mock(DriveDataStreams.class), mock(DriveStreamMappings.class), PublishSubject.create(), mock(DriveThrowableToSyncErrorTranslator.class));
+    }
+
+    @NonNull
+    @Override
+    public Single<Identifier> uploadFileToDrive(@NonNull java.io.File file) {
+        return Single.fromCallable(() -> {
+            final String id = "drive_id_" + nextId++;
+            store(id, file);
+            return new Identifier(id);
+        });
+    }
+
+    @NonNull
+    @Override
+    public Single<Identifier> updateDriveFile(@NonNull Identifier currentIdentifier, @NonNull java.io.File file) {
+        return Single.fromCallable(() -> {
+            if (!contents.containsKey(currentIdentifier.getId())) {
+                throw new IOException("Unknown file: " + currentIdentifier);
+            }
+            store(currentIdentifier.getId(), file);
+            return currentIdentifier;
+        });
+    }
+
+    @NonNull
+    @Override
+    public Single<Boolean> delete(@NonNull Identifier identifier) {
+        return Single.fromCallable(() -> {
+            names.remove(identifier.getId());
+            return contents.remove(identifier.getId()) != null;
+        });
+    }
+
+    @NonNull
+    @Override
+    public synchronized Single<FileList> getFilesInFolder(@NonNull String driveFolderId, @NonNull String fileName) {
+        return Single.fromCallable(() -> {
+            final List<File> files = new ArrayList<>();
+            for (final Map.Entry<String, String> entry : names.entrySet()) {
+                if (entry.getValue().equals(fileName)) {
+                    files.add(new File().setId(entry.getKey()).setName(entry.getValue()));
+                }
+            }
+            return new FileList().setFiles(files);
+        });
+    }
+
+    @NonNull
+    @Override
+    public Single<Optional<java.io.File>> download(@NonNull String fileId, @NonNull java.io.File downloadLocationFile) {
+        return Single.fromCallable(() -> {
+            final byte[] content = contents.get(fileId);
+            if (content == null) {
+                return Optional.absent();
+            }
+            try (FileOutputStream outputStream = new FileOutputStream(downloadLocationFile)) {
+                outputStream.write(content);
+            }
+            return Optional.of(downloadLocationFile);
+        });
+    }
+
+    /**
+     * @return the content of the file with this name or {@code null} if none exists
+     */
+    public byte[] getContent(@NonNull String fileName) {
+        for (final Map.Entry<String, String> entry : names.entrySet()) {
+            if (entry.getValue().equals(fileName)) {
+                return contents.get(entry.getKey());
+            }
+        }
+        return null;
+    }
+
+    public int getUploadCount(@NonNull String fileName) {
+        final Integer count = uploadCounts.get(fileName);
+        return count != null ? count : 0;
+    }
+
+    public long getUploadedBytes() {
+        return uploadedBytes;
+    }
+
+    private void store(@NonNull String id, @NonNull java.io.File file) throws IOException {
+        final byte[] content = Files.readAllBytes(file.toPath());
+        names.put(id, file.getName());
+        contents.put(id, content);
+        uploadCounts.put(file.getName(), getUploadCount(file.getName()) + 1);
+        uploadedBytes += content.length;
+    }
+}
@@ -1,5 +1,7 @@
 package com.wops.aws.s3;
 
+import android.content.Context;
+
 import androidx.annotation.NonNull;
 import androidx.annotation.VisibleForTesting;
 
@@ -13,29 +15,38 @@ import javax.inject.Inject;
 import com.wops.aws.cognito.CognitoManager;
 import com.wops.core.di.scopes.ApplicationScope;
 import io.reactivex.Observable;
+import io.reactivex.subjects.PublishSubject;
+import io.reactivex.subjects.Subject;
 
 
 @ApplicationScope
 public class S3Manager {
 
     private static final String BUCKET = "smartreceipts";
+    private static final String UPLOAD_STATE_DIRECTORY = "s3_uploads";
 
     private final S3ClientFactory s3ClientFactory;
     private final S3KeyGeneratorFactory s3KeyGeneratorFactory;
+    private final S3MultipartUploader s3MultipartUploader;
+    private final Subject<S3UploadProgress> uploadProgressSubject = PublishSubject.<S3UploadProgress>create().toSerialized();
 
     @Inject
-    public S3Manager(CognitoManager cognitoManager) {
-        this(new S3ClientFactory(cognitoManager), new S3KeyGeneratorFactory());
+    public S3Manager(Context context, CognitoManager cognitoManager) {
+        this(new S3ClientFactory(cognitoManager), new S3KeyGeneratorFactory(),
+                new S3MultipartUploader(new S3UploadStateStore(new File(context.getFilesDir(), UPLOAD_STATE_DIRECTORY))));
     }
 
     @VisibleForTesting
-    S3Manager(@NonNull S3ClientFactory s3ClientFactory, @NonNull S3KeyGeneratorFactory s3KeyGeneratorFactory) {
+    S3Manager(@NonNull S3ClientFactory s3ClientFactory, @NonNull S3KeyGeneratorFactory s3KeyGeneratorFactory,
+              @NonNull S3MultipartUploader s3MultipartUploader) {
         this.s3ClientFactory = Preconditions.checkNotNull(s3ClientFactory);
         this.s3KeyGeneratorFactory = Preconditions.checkNotNull(s3KeyGeneratorFactory);
+        this.s3MultipartUploader = Preconditions.checkNotNull(s3MultipartUploader);
     }
 
     /**
-     * Uploads a file to this user's S3 cognito account
+     * Uploads a file to this user's S3 cognito account. Large files are uploaded in parts, so a failed upload of the same
+     * file will resume from the last part that we uploaded when this is next called.
      *
      * @param file             the {@link File} to upload
      * @param subDirectoryPath the subdirectory path to load to (either an empty string for the bucket or something more complex as desired)
@@ -49,9 +60,9 @@ public class S3Manager {
                         return s3KeyGeneratorFactory.get()
                                 .flatMap(s3KeyGenerator -> Observable.fromCallable(() -> {
                                     final String key = subDirectoryPath + s3KeyGenerator.getS3Key() + file.getName();
-                                    amazonS3.get().putObject(BUCKET, key, file);
+                                    final String uploadedKey = s3MultipartUploader.upload(amazonS3.get(), BUCKET, key, file, uploadProgressSubject::onNext);
                                     try {
-                                        return amazonS3.get().getResourceUrl(BUCKET, key);
+                                        return amazonS3.get().getResourceUrl(BUCKET, uploadedKey);
                                     } catch (Exception e) {
                                         throw new IOException("Caught Amazon S3 exception", e);
                                     }
@@ -61,4 +72,13 @@ public class S3Manager {
                     }
                 });
     }
+
+    /**
+     * @return an {@link Observable} that emits the {@link S3UploadProgress} of each upload. Please note that this will
+     * never call {@link io.reactivex.Observer#onComplete()}, so that listeners may observe it for the app lifetime
+     */
+    @NonNull
+    public Observable<S3UploadProgress> getUploadProgress() {
+        return uploadProgressSubject;
+    }
 }
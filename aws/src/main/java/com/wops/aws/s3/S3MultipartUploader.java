@@ -0,0 +1,214 @@
+package com.wops.aws.s3;
+
+import androidx.annotation.NonNull;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.google.common.base.Preconditions;
+import com.hadisatrio.optional.Optional;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+import com.wops.analytics.log.Logger;
+import io.reactivex.functions.Consumer;
+
+/**
+ * Uploads files to S3 in a resumable manner. Any file that is larger than our part size is sent as a multipart upload,
+ * in which each part is retried on its own (with an exponential backoff) and the state of the upload is persisted
+ * after each part. If the upload still fails, the next attempt to upload the same (unchanged) file picks up from the
+ * last part that S3 acknowledged instead of starting from zero.
+ * <p>
+ * Please note that S3 requires each part (except the last) to be at least {@link #MIN_PART_SIZE} bytes, so smaller
+ * files are still sent as a single put request (albeit with the same retry policy).
+ * </p>
+ */
+class S3MultipartUploader {
+
+    static final long MIN_PART_SIZE = 5 * 1024 * 1024;
+    static final int DEFAULT_MAX_RETRIES = 3;
+    static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 1000;
+
+    private static final String NO_SUCH_UPLOAD = "NoSuchUpload";
+
+    private final S3UploadStateStore stateStore;
+    private final long partSize;
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+
+    S3MultipartUploader(@NonNull S3UploadStateStore stateStore) {
+        this(stateStore, MIN_PART_SIZE, DEFAULT_MAX_RETRIES, DEFAULT_INITIAL_BACKOFF_MILLIS);
+    }
+
+    /**
+     * @param stateStore           the {@link S3UploadStateStore} that persists our in-progress uploads
+     * @param partSize             the size of each part of a multipart upload
+     * @param maxRetries           the number of times that we will retry a failed request before giving up
+     * @param initialBackoffMillis the delay before our first retry, which doubles for each subsequent one
+     */
+    S3MultipartUploader(@NonNull S3UploadStateStore stateStore, long partSize, int maxRetries, long initialBackoffMillis) {
+        Preconditions.checkArgument(partSize > 0, "The part size must be positive");
+        Preconditions.checkArgument(maxRetries >= 0, "The retry count cannot be negative");
+        this.stateStore = Preconditions.checkNotNull(stateStore);
+        this.partSize = partSize;
+        this.maxRetries = maxRetries;
+        this.initialBackoffMillis = initialBackoffMillis;
+    }
+
+    /**
+     * Uploads a file to S3, resuming a previously interrupted upload of this same file if possible. This method blocks
+     * until the upload completes, so it should only be called from a background thread.
+     *
+     * @param amazonS3         the {@link AmazonS3} client to upload with
+     * @param bucket           the bucket to upload to
+     * @param key              the key to upload this file to (unless we're resuming an upload to an existing key)
+     * @param file             the {@link File} to upload
+     * @param progressConsumer a {@link Consumer}, which will be notified each time that S3 acknowledges more of our file
+     * @return the key that this file was uploaded to
+     * @throws Exception if the upload failed (in which case, we can resume it later)
+     */
+    @NonNull
+    String upload(@NonNull AmazonS3 amazonS3, @NonNull String bucket, @NonNull String key, @NonNull File file,
+                  @NonNull Consumer<S3UploadProgress> progressConsumer) throws Exception {
+        final long length = file.length();
+        if (length <= partSize) {
+            progressConsumer.accept(new S3UploadProgress(file, 0, length));
+            withRetries(() -> amazonS3.putObject(bucket, key, file));
+            progressConsumer.accept(new S3UploadProgress(file, length, length));
+            return key;
+        }
+
+        final Optional<S3UploadStateStore.State> resumedState = resume(amazonS3, bucket, file);
+        final S3UploadStateStore.State state;
+        if (resumedState.isPresent()) {
+            state = resumedState.get();
+            Logger.info(this, "Resuming the upload of {} with {} parts already uploaded", file.getName(), state.getPartETags().size());
+        } else {
+            final String uploadId = withRetries(() -> amazonS3.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucket, key)).getUploadId());
+            state = new S3UploadStateStore.State(file, partSize, bucket, key, uploadId);
+            stateStore.put(state);
+            Logger.info(this, "Started a multipart upload of {}", file.getName());
+        }
+
+        final int partCount = (int) ((length + partSize - 1) / partSize);
+        long bytesUploaded = 0;
+        for (final Integer partNumber : state.getPartETags().keySet()) {
+            bytesUploaded += getPartLength(partNumber, length);
+        }
+        progressConsumer.accept(new S3UploadProgress(file, bytesUploaded, length));
+
+        for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+            if (state.getPartETags().containsKey(partNumber)) {
+                continue;
+            }
+
+            final long partLength = getPartLength(partNumber, length);
+            final UploadPartRequest request = new UploadPartRequest()
+                    .withBucketName(bucket)
+                    .withKey(state.getKey())
+                    .withUploadId(state.getUploadId())
+                    .withPartNumber(partNumber)
+                    .withFile(file)
+                    .withFileOffset((partNumber - 1) * partSize)
+                    .withPartSize(partLength);
+            final String eTag = withRetries(() -> amazonS3.uploadPart(request).getETag());
+            state.putPartETag(partNumber, eTag);
+            stateStore.put(state);
+
+            bytesUploaded += partLength;
+            progressConsumer.accept(new S3UploadProgress(file, bytesUploaded, length));
+        }
+
+        final List<PartETag> partETags = new ArrayList<>(partCount);
+        for (final Map.Entry<Integer, String> entry : state.getPartETags().entrySet()) {
+            partETags.add(new PartETag(entry.getKey(), entry.getValue()));
+        }
+        withRetries(() -> amazonS3.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, state.getKey(), state.getUploadId(), partETags)));
+        stateStore.remove(file);
+        Logger.info(this, "Completed the multipart upload of {} in {} parts", file.getName(), partCount);
+        return state.getKey();
+    }
+
+    @NonNull
+    private Optional<S3UploadStateStore.State> resume(@NonNull AmazonS3 amazonS3, @NonNull String bucket, @NonNull File file) throws Exception {
+        final Optional<S3UploadStateStore.State> savedState = stateStore.get(file);
+        if (!savedState.isPresent()) {
+            return Optional.absent();
+        }
+
+        final S3UploadStateStore.State state = savedState.get();
+        if (!state.matches(file) || state.getPartSize() != partSize || !state.getBucket().equals(bucket)) {
+            Logger.info(this, "{} has changed since our last upload attempt. Starting over", file.getName());
+            abortQuietly(amazonS3, state);
+            stateStore.remove(file);
+            return Optional.absent();
+        }
+
+        try {
+            // Note: S3 is the source of truth for which parts were received, since we may have failed before persisting an ETag
+            final PartListing partListing = withRetries(() -> amazonS3.listParts(new ListPartsRequest(bucket, state.getKey(), state.getUploadId())));
+            final SortedMap<Integer, String> eTags = new TreeMap<>();
+            for (final PartSummary partSummary : partListing.getParts()) {
+                eTags.put(partSummary.getPartNumber(), partSummary.getETag());
+            }
+            state.setPartETags(eTags);
+            return Optional.of(state);
+        } catch (AmazonS3Exception e) {
+            if (NO_SUCH_UPLOAD.equals(e.getErrorCode())) {
+                Logger.info(this, "Our previous upload of {} has expired. Starting over", file.getName());
+                stateStore.remove(file);
+                return Optional.absent();
+            } else {
+                throw e;
+            }
+        }
+    }
+
+    private long getPartLength(int partNumber, long fileLength) {
+        return Math.min(partSize, fileLength - (partNumber - 1) * partSize);
+    }
+
+    private void abortQuietly(@NonNull AmazonS3 amazonS3, @NonNull S3UploadStateStore.State state) {
+        try {
+            amazonS3.abortMultipartUpload(new AbortMultipartUploadRequest(state.getBucket(), state.getKey(), state.getUploadId()));
+        } catch (AmazonClientException e) {
+            Logger.warn(this, "Failed to abort a stale multipart upload", e);
+        }
+    }
+
+    private <T> T withRetries(@NonNull Callable<T> callable) throws Exception {
+        int attempt = 0;
+        while (true) {
+            try {
+                return callable.call();
+            } catch (AmazonClientException e) {
+                final boolean isClientError = e instanceof AmazonServiceException
+                        && ((AmazonServiceException) e).getErrorType() == AmazonServiceException.ErrorType.Client;
+                if (isClientError || attempt >= maxRetries) {
+                    throw e;
+                }
+                final long backoffMillis = initialBackoffMillis << attempt;
+                attempt++;
+                Logger.warn(this, "S3 request failed. Retrying in {}ms (attempt {} of {})", backoffMillis, attempt, maxRetries, e);
+                if (backoffMillis > 0) {
+                    Thread.sleep(backoffMillis);
+                }
+            }
+        }
+    }
+}
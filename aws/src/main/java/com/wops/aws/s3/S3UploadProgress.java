@@ -0,0 +1,82 @@
+package com.wops.aws.s3;
+
+import androidx.annotation.NonNull;
+
+import com.google.common.base.Preconditions;
+
+import java.io.File;
+
+/**
+ * Tracks how much of a particular {@link File} has been uploaded to S3
+ */
+public final class S3UploadProgress {
+
+    private final File file;
+    private final long bytesUploaded;
+    private final long totalBytes;
+
+    public S3UploadProgress(@NonNull File file, long bytesUploaded, long totalBytes) {
+        this.file = Preconditions.checkNotNull(file);
+        this.bytesUploaded = bytesUploaded;
+        this.totalBytes = totalBytes;
+    }
+
+    /**
+     * @return the {@link File} that is being uploaded
+     */
+    @NonNull
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of bytes that S3 has acknowledged
+     */
+    public long getBytesUploaded() {
+        return bytesUploaded;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return the percentage of this file that has been uploaded (from 0 to 100)
+     */
+    public int getPercent() {
+        return totalBytes > 0 ? (int) (bytesUploaded * 100 / totalBytes) : 100;
+    }
+
+    public boolean isComplete() {
+        return bytesUploaded >= totalBytes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof S3UploadProgress)) return false;
+
+        S3UploadProgress that = (S3UploadProgress) o;
+
+        if (bytesUploaded != that.bytesUploaded) return false;
+        if (totalBytes != that.totalBytes) return false;
+        return file.equals(that.file);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = file.hashCode();
+        result = 31 * result + (int) (bytesUploaded ^ (bytesUploaded >>> 32));
+        result = 31 * result + (int) (totalBytes ^ (totalBytes >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "S3UploadProgress{" +
+                "file=" + file.getName() +
+                ", bytesUploaded=" + bytesUploaded +
+                ", totalBytes=" + totalBytes +
+                '}';
+    }
+}
@@ -0,0 +1,214 @@
+package com.wops.aws.s3;
+
+import androidx.annotation.NonNull;
+
+import com.google.common.base.Preconditions;
+import com.hadisatrio.optional.Optional;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.wops.analytics.log.Logger;
+
+/**
+ * Persists the state of each in-progress multipart upload, so that we can resume it after a failure (or even after
+ * the app restarts) instead of uploading the entire file again.
+ * <p>
+ * Each upload is written to its own small json file, which is replaced after every part that S3 acknowledges.
+ * </p>
+ */
+class S3UploadStateStore {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File directory;
+
+    /**
+     * @param directory the directory in which we persist our upload states
+     */
+    S3UploadStateStore(@NonNull File directory) {
+        this.directory = Preconditions.checkNotNull(directory);
+    }
+
+    /**
+     * @param file the {@link File} that is being uploaded
+     * @return the persisted {@link State} of this file's upload or {@link Optional#absent()} if none exists
+     */
+    @NonNull
+    synchronized Optional<State> get(@NonNull File file) {
+        final File stateFile = getStateFile(file);
+        if (!stateFile.exists()) {
+            return Optional.absent();
+        }
+
+        try (InputStream inputStream = new FileInputStream(stateFile)) {
+            final byte[] bytes = new byte[(int) stateFile.length()];
+            int offset = 0;
+            int read;
+            while (offset < bytes.length && (read = inputStream.read(bytes, offset, bytes.length - offset)) != -1) {
+                offset += read;
+            }
+            final State state = State.fromJson(new String(bytes, 0, offset, UTF_8));
+            if (state.getFilePath().equals(file.getAbsolutePath())) {
+                return Optional.of(state);
+            } else {
+                return Optional.absent();
+            }
+        } catch (IOException | JSONException e) {
+            Logger.warn(this, "Failed to read the upload state of {}. Starting over", file.getName(), e);
+            //noinspection ResultOfMethodCallIgnored
+            stateFile.delete();
+            return Optional.absent();
+        }
+    }
+
+    synchronized void put(@NonNull State state) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Failed to create " + directory);
+        }
+
+        final File stateFile = getStateFile(new File(state.getFilePath()));
+        final File tempFile = new File(directory, stateFile.getName() + ".tmp");
+        try (OutputStream outputStream = new FileOutputStream(tempFile)) {
+            outputStream.write(state.toJson().getBytes(UTF_8));
+        } catch (JSONException e) {
+            throw new IOException("Failed to serialize our upload state", e);
+        }
+        if (!tempFile.renameTo(stateFile)) {
+            throw new IOException("Failed to persist our upload state to " + stateFile);
+        }
+    }
+
+    synchronized void remove(@NonNull File file) {
+        //noinspection ResultOfMethodCallIgnored
+        getStateFile(file).delete();
+    }
+
+    @NonNull
+    private File getStateFile(@NonNull File file) {
+        return new File(directory, Integer.toHexString(file.getAbsolutePath().hashCode()) + ".json");
+    }
+
+    /**
+     * The state of a single multipart upload
+     */
+    static final class State {
+
+        private final String filePath;
+        private final long fileLength;
+        private final long lastModified;
+        private final long partSize;
+        private final String bucket;
+        private final String key;
+        private final String uploadId;
+        private final SortedMap<Integer, String> partETags;
+
+        State(@NonNull File file, long partSize, @NonNull String bucket, @NonNull String key, @NonNull String uploadId) {
+            this(file.getAbsolutePath(), file.length(), file.lastModified(), partSize, bucket, key, uploadId, new TreeMap<>());
+        }
+
+        private State(@NonNull String filePath, long fileLength, long lastModified, long partSize, @NonNull String bucket,
+                      @NonNull String key, @NonNull String uploadId, @NonNull SortedMap<Integer, String> partETags) {
+            this.filePath = Preconditions.checkNotNull(filePath);
+            this.fileLength = fileLength;
+            this.lastModified = lastModified;
+            this.partSize = partSize;
+            this.bucket = Preconditions.checkNotNull(bucket);
+            this.key = Preconditions.checkNotNull(key);
+            this.uploadId = Preconditions.checkNotNull(uploadId);
+            this.partETags = Preconditions.checkNotNull(partETags);
+        }
+
+        @NonNull
+        String getFilePath() {
+            return filePath;
+        }
+
+        long getPartSize() {
+            return partSize;
+        }
+
+        @NonNull
+        String getBucket() {
+            return bucket;
+        }
+
+        @NonNull
+        String getKey() {
+            return key;
+        }
+
+        @NonNull
+        String getUploadId() {
+            return uploadId;
+        }
+
+        /**
+         * @return {@code true} if this file has not changed since we started uploading it
+         */
+        boolean matches(@NonNull File file) {
+            return filePath.equals(file.getAbsolutePath()) && fileLength == file.length() && lastModified == file.lastModified();
+        }
+
+        /**
+         * @return a sorted {@link Map} of each uploaded part number to its ETag
+         */
+        @NonNull
+        synchronized SortedMap<Integer, String> getPartETags() {
+            return Collections.unmodifiableSortedMap(new TreeMap<>(partETags));
+        }
+
+        synchronized void putPartETag(int partNumber, @NonNull String eTag) {
+            partETags.put(partNumber, eTag);
+        }
+
+        synchronized void setPartETags(@NonNull Map<Integer, String> eTags) {
+            partETags.clear();
+            partETags.putAll(eTags);
+        }
+
+        @NonNull
+        synchronized String toJson() throws JSONException {
+            final JSONArray parts = new JSONArray();
+            for (final Map.Entry<Integer, String> entry : partETags.entrySet()) {
+                parts.put(new JSONObject().put("number", entry.getKey()).put("etag", entry.getValue()));
+            }
+            return new JSONObject()
+                    .put("file_path", filePath)
+                    .put("file_length", fileLength)
+                    .put("last_modified", lastModified)
+                    .put("part_size", partSize)
+                    .put("bucket", bucket)
+                    .put("key", key)
+                    .put("upload_id", uploadId)
+                    .put("parts", parts)
+                    .toString();
+        }
+
+        @NonNull
+        static State fromJson(@NonNull String json) throws JSONException {
+            final JSONObject object = new JSONObject(json);
+            final JSONArray parts = object.getJSONArray("parts");
+            final SortedMap<Integer, String> partETags = new TreeMap<>();
+            for (int i = 0; i < parts.length(); i++) {
+                final JSONObject part = parts.getJSONObject(i);
+                partETags.put(part.getInt("number"), part.getString("etag"));
+            }
+            return new State(object.getString("file_path"), object.getLong("file_length"), object.getLong("last_modified"),
+                    object.getLong("part_size"), object.getString("bucket"), object.getString("key"), object.getString("upload_id"), partETags);
+        }
+    }
+}
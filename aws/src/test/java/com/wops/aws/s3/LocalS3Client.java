@@ -0,0 +1,201 @@
+package com.wops.aws.s3;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartSummary;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A local, in-memory stand-in for S3, which supports single puts and multipart uploads (without the minimum part size)
+ * and allows us to simulate network failures for individual parts
+ */
+class LocalS3Client extends AmazonS3Client {
+
+    private final Map<String, byte[]> objects = new HashMap<>();
+    private final Map<String, TreeMap<Integer, byte[]>> multipartUploads = new HashMap<>();
+    private final Map<Integer, Integer> partUploadAttempts = new HashMap<>();
+    private int nextUploadId = 0;
+    private int failuresRemaining = 0;
+    private int failingPartNumber = -1;
+    private int abortCount = 0;
+
+    LocalS3Client() {
+        super(new BasicAWSCredentials("access", "secret"));
+    }
+
+    /**
+     * Causes the next {@code count} part uploads to fail with a (retryable) network error
+     */
+    synchronized void failNextPartUploads(int count) {
+        failuresRemaining = count;
+    }
+
+    /**
+     * Causes every upload of this part to fail with a (retryable) network error until we call this with -1
+     */
+    synchronized void failPart(int partNumber) {
+        failingPartNumber = partNumber;
+    }
+
+    /**
+     * Expires all in-progress multipart uploads
+     */
+    synchronized void expireUploads() {
+        multipartUploads.clear();
+    }
+
+    synchronized byte[] getObject(String key) {
+        return objects.get(key);
+    }
+
+    synchronized int getPartUploadAttempts(int partNumber) {
+        final Integer attempts = partUploadAttempts.get(partNumber);
+        return attempts != null ? attempts : 0;
+    }
+
+    synchronized int getInProgressUploadCount() {
+        return multipartUploads.size();
+    }
+
+    synchronized int getAbortCount() {
+        return abortCount;
+    }
+
+    @Override
+    public synchronized PutObjectResult putObject(String bucketName, String key, File file) {
+        try {
+            objects.put(key, Files.readAllBytes(file.toPath()));
+        } catch (IOException e) {
+            throw new AmazonClientException("Failed to read " + file, e);
+        }
+        return new PutObjectResult();
+    }
+
+    @Override
+    public synchronized InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+        final String uploadId = "upload_" + nextUploadId++;
+        multipartUploads.put(uploadId, new TreeMap<>());
+        final InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        result.setUploadId(uploadId);
+        return result;
+    }
+
+    @Override
+    public synchronized UploadPartResult uploadPart(UploadPartRequest request) {
+        final Integer attempts = partUploadAttempts.get(request.getPartNumber());
+        partUploadAttempts.put(request.getPartNumber(), attempts != null ? attempts + 1 : 1);
+        if (request.getPartNumber() == failingPartNumber) {
+            throw new AmazonClientException("Simulated network failure for part " + failingPartNumber);
+        }
+        maybeFail();
+
+        final byte[] part = new byte[(int) request.getPartSize()];
+        try (RandomAccessFile file = new RandomAccessFile(request.getFile(), "r")) {
+            file.seek(request.getFileOffset());
+            file.readFully(part);
+        } catch (IOException e) {
+            throw new AmazonClientException("Failed to read " + request.getFile(), e);
+        }
+        getUpload(request.getUploadId()).put(request.getPartNumber(), part);
+
+        final UploadPartResult result = new UploadPartResult();
+        result.setPartNumber(request.getPartNumber());
+        result.setETag("etag_" + request.getPartNumber());
+        return result;
+    }
+
+    @Override
+    public synchronized PartListing listParts(ListPartsRequest request) {
+        final List<PartSummary> partSummaries = new ArrayList<>();
+        for (final Map.Entry<Integer, byte[]> entry : getUpload(request.getUploadId()).entrySet()) {
+            final PartSummary partSummary = new PartSummary();
+            partSummary.setPartNumber(entry.getKey());
+            partSummary.setETag("etag_" + entry.getKey());
+            partSummary.setSize(entry.getValue().length);
+            partSummaries.add(partSummary);
+        }
+        final PartListing partListing = new PartListing();
+        partListing.setParts(partSummaries);
+        return partListing;
+    }
+
+    @Override
+    public synchronized CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+        final TreeMap<Integer, byte[]> parts = getUpload(request.getUploadId());
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        for (final PartETag partETag : request.getPartETags()) {
+            final byte[] part = parts.get(partETag.getPartNumber());
+            if (part == null || !partETag.getETag().equals("etag_" + partETag.getPartNumber())) {
+                throw newServiceException("InvalidPart", 400);
+            }
+            outputStream.write(part, 0, part.length);
+        }
+        multipartUploads.remove(request.getUploadId());
+        objects.put(request.getKey(), outputStream.toByteArray());
+
+        final CompleteMultipartUploadResult result = new CompleteMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        return result;
+    }
+
+    @Override
+    public synchronized void abortMultipartUpload(AbortMultipartUploadRequest request) {
+        abortCount++;
+        multipartUploads.remove(request.getUploadId());
+    }
+
+    @Override
+    public String getResourceUrl(String bucketName, String key) {
+        return "https://" + bucketName + ".local/" + key;
+    }
+
+    private TreeMap<Integer, byte[]> getUpload(String uploadId) {
+        final TreeMap<Integer, byte[]> upload = multipartUploads.get(uploadId);
+        if (upload == null) {
+            throw newServiceException("NoSuchUpload", 404);
+        }
+        return upload;
+    }
+
+    private void maybeFail() {
+        if (failuresRemaining > 0) {
+            failuresRemaining--;
+            throw new AmazonClientException("Simulated network failure");
+        }
+    }
+
+    private static AmazonS3Exception newServiceException(String errorCode, int statusCode) {
+        final AmazonS3Exception exception = new AmazonS3Exception(errorCode);
+        exception.setErrorCode(errorCode);
+        exception.setStatusCode(statusCode);
+        exception.setErrorType(AmazonServiceException.ErrorType.Client);
+        return exception;
+    }
+}
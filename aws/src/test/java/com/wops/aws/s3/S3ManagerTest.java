@@ -2,6 +2,7 @@ package com.wops.aws.s3;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -11,7 +12,9 @@ import com.amazonaws.services.s3.model.PutObjectResult;
 import com.hadisatrio.optional.Optional;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
@@ -32,6 +35,10 @@ public class S3ManagerTest {
     private static final String FILE_NAME = "img.jpg";
     private static final String FULL_KEY_PATH = PATH + RANDOM_KEY + FILE_NAME;
     private static final String URL = "https://smartreceipts.co/download";
+    private static final int MAX_RETRIES = 2;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
 
     // Class under test
     S3Manager s3Manager;
@@ -63,7 +70,9 @@ public class S3ManagerTest {
         when(amazonS3Client.putObject("smartreceipts", FULL_KEY_PATH, file)).thenReturn(mock(PutObjectResult.class));
         when(amazonS3Client.getResourceUrl("smartreceipts", FULL_KEY_PATH)).thenReturn(URL);
 
-        s3Manager = new S3Manager(s3ClientFactory, keyGeneratorFactory);
+        final S3MultipartUploader uploader = new S3MultipartUploader(new S3UploadStateStore(temporaryFolder.newFolder()),
+                S3MultipartUploader.MIN_PART_SIZE, MAX_RETRIES, 0);
+        s3Manager = new S3Manager(s3ClientFactory, keyGeneratorFactory, uploader);
     }
 
     @Test
@@ -85,7 +94,7 @@ public class S3ManagerTest {
 
         TestObserver<String> testObserver = s3Manager.upload(file, PATH).test();
 
-        verify(amazonS3Client).putObject("smartreceipts", FULL_KEY_PATH, file);
+        verify(amazonS3Client, times(MAX_RETRIES + 1)).putObject("smartreceipts", FULL_KEY_PATH, file);
         testObserver.assertNoValues();
         testObserver.assertNotComplete();
         testObserver.assertError(exception);
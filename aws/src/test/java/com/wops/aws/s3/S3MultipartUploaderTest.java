@@ -0,0 +1,179 @@
+package com.wops.aws.s3;
+
+import com.amazonaws.AmazonClientException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class S3MultipartUploaderTest {
+
+    private static final String BUCKET = "bucket";
+    private static final String KEY = "ocr/key_img.jpg";
+    private static final long PART_SIZE = 1024;
+    private static final int MAX_RETRIES = 2;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    LocalS3Client localS3Client;
+
+    S3UploadStateStore stateStore;
+
+    List<S3UploadProgress> progress;
+
+    @Before
+    public void setUp() throws Exception {
+        localS3Client = new LocalS3Client();
+        stateStore = new S3UploadStateStore(temporaryFolder.newFolder("s3_uploads"));
+        progress = new ArrayList<>();
+    }
+
+    @Test
+    public void smallFilesAreUploadedWithASinglePut() throws Exception {
+        final File file = newFile("small.jpg", 1000);
+
+        assertEquals(KEY, newUploader().upload(localS3Client, BUCKET, KEY, file, progress::add));
+
+        assertArrayEquals(read(file), localS3Client.getObject(KEY));
+        assertEquals(0, localS3Client.getPartUploadAttempts(1));
+        assertEquals(Arrays.asList(new S3UploadProgress(file, 0, 1000), new S3UploadProgress(file, 1000, 1000)), progress);
+    }
+
+    @Test
+    public void largeFilesAreUploadedInParts() throws Exception {
+        final File file = newFile("large.jpg", 3000);
+
+        assertEquals(KEY, newUploader().upload(localS3Client, BUCKET, KEY, file, progress::add));
+
+        assertArrayEquals(read(file), localS3Client.getObject(KEY));
+        assertEquals(1, localS3Client.getPartUploadAttempts(1));
+        assertEquals(1, localS3Client.getPartUploadAttempts(2));
+        assertEquals(1, localS3Client.getPartUploadAttempts(3));
+        assertEquals(Arrays.asList(new S3UploadProgress(file, 0, 3000), new S3UploadProgress(file, 1024, 3000),
+                new S3UploadProgress(file, 2048, 3000), new S3UploadProgress(file, 3000, 3000)), progress);
+        assertFalse(stateStore.get(file).isPresent());
+        assertEquals(0, localS3Client.getInProgressUploadCount());
+    }
+
+    @Test
+    public void failedPartsAreRetried() throws Exception {
+        final File file = newFile("large.jpg", 3000);
+        localS3Client.failNextPartUploads(MAX_RETRIES);
+
+        newUploader().upload(localS3Client, BUCKET, KEY, file, progress::add);
+
+        assertArrayEquals(read(file), localS3Client.getObject(KEY));
+        assertEquals(MAX_RETRIES + 1, localS3Client.getPartUploadAttempts(1));
+        assertEquals(1, localS3Client.getPartUploadAttempts(2));
+    }
+
+    @Test
+    public void failedUploadsResumeFromTheLastUploadedPart() throws Exception {
+        final File file = newFile("large.jpg", 5000);
+        localS3Client.failPart(3);
+        try {
+            newUploader().upload(localS3Client, BUCKET, KEY, file, progress::add);
+            fail("The upload of part 3 should have failed");
+        } catch (AmazonClientException e) {
+            assertEquals(MAX_RETRIES + 1, localS3Client.getPartUploadAttempts(3));
+            assertTrue(stateStore.get(file).isPresent());
+        }
+
+        // Note: We re-use the key of the interrupted upload, even if a new one was generated
+        localS3Client.failPart(-1);
+        progress.clear();
+        assertEquals(KEY, newUploader().upload(localS3Client, BUCKET, "ocr/another_key_img.jpg", file, progress::add));
+
+        assertArrayEquals(read(file), localS3Client.getObject(KEY));
+        assertNull(localS3Client.getObject("ocr/another_key_img.jpg"));
+        assertEquals(1, localS3Client.getPartUploadAttempts(1));
+        assertEquals(1, localS3Client.getPartUploadAttempts(2));
+        assertEquals(new S3UploadProgress(file, 2048, 5000), progress.get(0));
+        assertFalse(stateStore.get(file).isPresent());
+    }
+
+    @Test
+    public void changedFilesAreUploadedFromTheStart() throws Exception {
+        final File file = newFile("large.jpg", 5000);
+        localS3Client.failPart(3);
+        try {
+            newUploader().upload(localS3Client, BUCKET, KEY, file, progress::add);
+            fail("The upload of part 3 should have failed");
+        } catch (AmazonClientException e) {
+            // Expected
+        }
+
+        localS3Client.failPart(-1);
+        write(file, 4000);
+        //noinspection ResultOfMethodCallIgnored
+        file.setLastModified(file.lastModified() + 1000);
+        final String key = "ocr/another_key_img.jpg";
+        assertEquals(key, newUploader().upload(localS3Client, BUCKET, key, file, progress::add));
+
+        assertArrayEquals(read(file), localS3Client.getObject(key));
+        assertEquals(1, localS3Client.getAbortCount());
+        assertEquals(0, localS3Client.getInProgressUploadCount());
+    }
+
+    @Test
+    public void expiredUploadsAreUploadedFromTheStart() throws Exception {
+        final File file = newFile("large.jpg", 5000);
+        localS3Client.failPart(3);
+        try {
+            newUploader().upload(localS3Client, BUCKET, KEY, file, progress::add);
+            fail("The upload of part 3 should have failed");
+        } catch (AmazonClientException e) {
+            // Expected
+        }
+
+        localS3Client.failPart(-1);
+        localS3Client.expireUploads();
+        final String key = "ocr/another_key_img.jpg";
+        assertEquals(key, newUploader().upload(localS3Client, BUCKET, key, file, progress::add));
+
+        assertArrayEquals(read(file), localS3Client.getObject(key));
+        assertEquals(2, localS3Client.getPartUploadAttempts(1));
+    }
+
+    private S3MultipartUploader newUploader() {
+        return new S3MultipartUploader(stateStore, PART_SIZE, MAX_RETRIES, 0);
+    }
+
+    private File newFile(String name, int length) throws IOException {
+        return write(temporaryFolder.newFile(name), length);
+    }
+
+    private static File write(File file, int length) throws IOException {
+        final byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(bytes);
+        }
+        return file;
+    }
+
+    private static byte[] read(File file) throws IOException {
+        return Files.readAllBytes(file.toPath());
+    }
+}
@@ -643,7 +643,6 @@ public class StorageManager {
 				while ((count = reader.read(bytes, 0, buffer)) != -1) {
 					zipStream.write(bytes, 0, count);
 				}
-				zipStream.write(bytes);
 				reader.close();
 			}
 			finally {